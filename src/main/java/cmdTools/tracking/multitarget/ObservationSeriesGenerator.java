@@ -384,7 +384,8 @@ public class ObservationSeriesGenerator {
 				"    observations_file:\n" +
 				"             Output-file of the series of observations that were generated.\n" +
 				"             The file contains data according to the MTBXMLMultiStateMMIDVector XML-schema\n" +
-				"             found in MiToBo's share/xmlschemata/mtbxml directory.\n\n" +
+				"             found in MiToBo's share/xmlschemata/mtbxml directory. If the filename ends with\n" +
+				"             " + MultiStateIO.BINARY_SUFFIX + ", the compact binary format of MultiStateBinaryFile is written instead.\n\n" +
 				"    observations_info_file:\n" +
 				"             Output-textfile with information about the generated data.\n\n" +
 				"    observations_image_file:\n" +
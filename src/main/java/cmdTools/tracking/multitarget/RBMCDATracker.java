@@ -98,8 +98,10 @@ public class RBMCDATracker {
 					   "        [{--MaxNumNeighbors} maximumNumberOfNeighboringObservations]\n" +
 					   "        [{--MaxDistNeighbors} maximumDistanceOfNeighboringObservations]\n" +
 					   "        [{--NoNeighborsOldAlgo}]\n" +
+					   "        [{--UnionFindPartitioning}]\n" +
 					   "        [{--ESSPercentage} percentageOfNumberOfSampleBelowESSforResampling]\n" +
 					   "        [{--DotGraphFile} dotGraphOutputFile]\n" +
+					   "        [{--BinaryOutput}]\n" +
 					   "        [{-i,--InputImage} inputImage]\n" +
 //					   "        [{-g,--GroundTruth}]\n" +
 					   "        inputobservations_file output_basename"; 
@@ -115,6 +117,7 @@ public class RBMCDATracker {
 	 	// ---- tracker parameters
 
 	 	CmdLineParser.Option dotGraphFile = parser.addStringOption("DotGraphFile");
+	 	CmdLineParser.Option binaryOutput = parser.addBooleanOption("BinaryOutput");
 	 	CmdLineParser.Option numSamples = parser.addIntegerOption("NumSamples");
 	 	
 	 	// seed for random generator
@@ -151,6 +154,9 @@ public class RBMCDATracker {
 	 	
 	 	// consider neighbor observations
 	 	CmdLineParser.Option noNeighborsOldAlgo = parser.addBooleanOption("NoNeighborsOldAlgo");
+	 	
+	 	// track extraction
+	 	CmdLineParser.Option unionFindPartitioning = parser.addBooleanOption("UnionFindPartitioning");
 	 	CmdLineParser.Option maxNumNeighbors = parser.addIntegerOption("MaxNumNeighbors");
 	 	CmdLineParser.Option maxDistNeighbors = parser.addDoubleOption("MaxDistNeighbors");
 	 	
@@ -187,6 +193,10 @@ public class RBMCDATracker {
         
         Boolean groundTruthValue = (Boolean)parser.getOptionValue(groundTruth, Boolean.FALSE);
         
+        // suffix of observation output files, binary files are detected by MultiStateIO
+        String obsSuffix = ((Boolean)parser.getOptionValue(binaryOutput, Boolean.FALSE)) ? 
+        		".observations" + MultiStateIO.BINARY_SUFFIX : ".observations.xml";
+        
         
         // read input observations/tracks
 		Vector<MultiState<MotionModelID>> inObservations = null;
@@ -299,6 +309,7 @@ public class RBMCDATracker {
 			tracker.essPercentage = (Double) parser.getOptionValue(essPercentage, 0.5);
 			
 			tracker.noNeighborsOldAlgo = (Boolean) parser.getOptionValue(noNeighborsOldAlgo, false);
+			tracker.unionFindPartitioning = (Boolean) parser.getOptionValue(unionFindPartitioning, false);
 			tracker.maxNumNeighbors = (Integer) parser.getOptionValue(maxNumNeighbors, 0);
 			tracker.maxDistNeighbors = (Double) parser.getOptionValue(maxDistNeighbors, 0.0);
 
@@ -358,7 +369,7 @@ public class RBMCDATracker {
 				num = "0"+num;
 			
 			try {
-				MultiStateIO.writeMultiStates(labeledObs, outBasename + ".sample" + num + ".observations.xml");
+				MultiStateIO.writeMultiStates(labeledObs, outBasename + ".sample" + num + obsSuffix);
 			} catch (ALDProcessingDAGException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -398,7 +409,7 @@ public class RBMCDATracker {
 		
 
 		try {
-			MultiStateIO.writeMultiStates(labeledObs, outBasename + ".gpp.observations.xml");
+			MultiStateIO.writeMultiStates(labeledObs, outBasename + ".gpp" + obsSuffix);
 		} catch (ALDProcessingDAGException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -502,7 +513,8 @@ public class RBMCDATracker {
 				"    inputobservations_file:\n" +
 				"             The observations used for tracking.\n" +
 				"             The observations-file must contain data according to the MTBXMLMultiStateMMIDVector XML-schema\n" +
-				"             found in MiToBo's share/xmlschemata/mtbxml directory.\n\n" +
+				"             found in MiToBo's share/xmlschemata/mtbxml directory or in the binary format written\n" +
+				"             with --BinaryOutput.\n\n" +
 				"  Optional Input Data:\n\n" +
 				"    -i,--InputImage inputImage:\n" +
 				"             Optional image to draw observations and trajectories in the context of image data.\n\n" +
@@ -565,6 +577,9 @@ public class RBMCDATracker {
 //				"             If this flag is specified, then the target-IDs associated to the observations in the\n" +
 //				"             input-observations file are interpreted as groundtruth and used to evaluate tracking results.\n" +
 //				"             Results are store.\n\n" +
+				"    --UnionFindPartitioning:\n" +
+				"             Extract tracks from the RBMCDA samples by merging observations along the association weights\n" +
+				"             in descending order (union-find) instead of greedyGourmet-partitioning. Much faster for long sequences.\n\n" +
 				"  Output:\n\n" +
 				"    output_basename:\n" +
 				"             Basename for output files. Output files comprise observation-files with associations\n" +
@@ -573,7 +588,10 @@ public class RBMCDATracker {
 				"             and images of observations and trajectories are written to file.\n\n" +			
 				"  Optional Output:\n\n" +
 				"    --DotGraphFile dotGraphOutputFile:\n" +
-				"             Optional output of the track graph used for greedyGourmet-partitioning in the dot-language.\n\n");		
+				"             Optional output of the track graph used for greedyGourmet-partitioning in the dot-language.\n\n" +
+				"    --BinaryOutput:\n" +
+				"             Write observation-files in the compact binary format (" + MultiStateIO.BINARY_SUFFIX + ") instead of xml.\n" +
+				"             Binary files are memory-mapped and allow to read single frames.\n\n");		
 	}
 
 }
@@ -849,30 +849,23 @@ public class CellBoundaryExtractor2D extends MTBOperator {
 					++ny;
 				}
 
+				// search paths to all candidates at once, take the cheapest one
 				Vector<Point2D.Double> minPath = null;
-				double cost, minCost = Double.MAX_VALUE;
-				for (Point2D.Double c: candidates) {
-					int cx = (int)c.x;
-					int cy = (int)c.y;
-					
-					epIntensity = smoothedVesselImg.getValueDouble(cx, cy);
-					
-					nodeT = 150;
-					if (spIntensity < nodeT)
-						nodeT = spIntensity-10;
-					if (epIntensity < nodeT)
-						nodeT = epIntensity-10;
-					
+				double minCost = Double.MAX_VALUE;
+				if (!candidates.isEmpty()) {
+					Vector<Point2D.Double> clipCandidates = new Vector<>();
+					for (Point2D.Double c: candidates) {
+						clipCandidates.add(new Point2D.Double(c.x-minX, c.y-minY));
+					}
 					ip.setInputImage(clip);
 					ip.setStartPixel(new Point2D.Double(px-minX, py-minY));
-					ip.setEndPixel(new Point2D.Double(cx-minX, cy-minY));
+					ip.setEndPixels(clipCandidates);
 					ip.runOp();
-					path = ip.getResultPath();
-					cost = ip.getResultCosts();
-					if (cost < minCost) {
-						minCost = cost;
-						minPath = path;
+					if (ip.getResultPath() != null) {
+						minPath = ip.getResultPath();
+						minCost = ip.getResultCosts();
 					}
+					ip.setEndPixels(null);
 				}
 				if (minPath != null && minCost/minPath.size() < 1500000) {
 					for (Point2D.Double pp: minPath) {
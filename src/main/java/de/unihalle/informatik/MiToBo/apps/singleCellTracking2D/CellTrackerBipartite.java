@@ -28,21 +28,34 @@ package de.unihalle.informatik.MiToBo.apps.singleCellTracking2D;
 import ij.IJ;
 
 import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import de.unihalle.informatik.Alida.annotations.ALDAOperator;
 import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
+import de.unihalle.informatik.Alida.exceptions.ALDOperatorException.OperatorExceptionType;
 import de.unihalle.informatik.Alida.exceptions.ALDProcessingDAGException;
 import de.unihalle.informatik.Alida.exceptions.ALDWorkflowException;
 import de.unihalle.informatik.Alida.annotations.Parameter;
 import de.unihalle.informatik.Alida.annotations.ALDAOperator.Level;
+import de.unihalle.informatik.Alida.annotations.Parameter.ExpertMode;
 import de.unihalle.informatik.Alida.annotations.Parameter.ParameterModificationMode;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBRegion2D;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBRegion2DSet;
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBSpatialGridIndex2D;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage;
 import de.unihalle.informatik.MiToBo.core.operator.MTBOperator;
+import de.unihalle.informatik.MiToBo.math.graphs.UnionFind;
 import de.unihalle.informatik.MiToBo.math.optimization.MatchingBipartite_HungarianAlgorithm;
 import de.unihalle.informatik.MiToBo.math.optimization.MatchingBipartite_HungarianAlgorithm.ScoreInterpretation;
+import de.unihalle.informatik.MiToBo.math.optimization.MTBSparseLinearAssignment;
 import de.unihalle.informatik.MiToBo.segmentation.regions.labeling.LabelComponentsSequential;
 
 /**
@@ -72,11 +85,17 @@ public class CellTrackerBipartite extends MTBOperator
 	@Parameter(label = "are objects 8-connected", required = false, direction = Parameter.Direction.IN, supplemental = false, description = "are objects 8-connected", dataIOOrder = 4)
 	private Boolean objects8Connected = false;
 	
+	@Parameter(label = "gated sparse assignment", required = false, direction = Parameter.Direction.IN, supplemental = false, mode = ExpertMode.ADVANCED,
+			description = "only consider pairs within the maximum distance and solve the assignment per connected component of candidate pairs", dataIOOrder = 5)
+	private boolean useGatedAssignment = false;
+	
+	@Parameter(label = "number of threads", required = false, direction = Parameter.Direction.IN, supplemental = false, mode = ExpertMode.ADVANCED,
+			description = "number of threads for gated assignment, if <= 0 all available cores are used", dataIOOrder = 6)
+	private int threadNum = 1;
+	
 	@Parameter(label = "result image", required = true, direction = Parameter.Direction.OUT, supplemental = false, description = "result image")
 	private transient MTBImage resultImg = null;
 	
-	private final int DISAPPEARED = -1;			// value indicating, that an object has disappeared
-	
 	private static double inf = Double.MAX_VALUE;
 	
 	private int sizeX;	// number of pixels in x-dimension
@@ -87,8 +106,9 @@ public class CellTrackerBipartite extends MTBOperator
 	
 	MTBImage labelImg;
 	
-	private Vector<Integer> objectLabels;	// holds correspondencies from already collected tracks to labels from currently
-											// found connected components
+	private MTBRegion2DSet streamRegions = null;	// regions of the last tracked frame, their ids are the track ids
+	private int streamFrame = -1;				// index of the next frame to be tracked, -1 if no tracking is in progress
+	private TrajectoryStreamWriter streamWriter = null;	// receives the tracked regions of every frame (may be null)
 	
 	private double currentMax = 0;	// maximum distance between two objects in the current considered frames
 	
@@ -144,46 +164,28 @@ public class CellTrackerBipartite extends MTBOperator
 		
 		verbosePrintln("start tracking of " + inImg.getTitle() + ", number of frames: " + n);
 		
-		// initialize neccessary objects
-		objectLabels = new Vector<Integer>();
-		
 		labelImg = MTBImage.createMTBImage(sizeX, sizeY, 1, n, 1, MTBImage.MTBImageType.MTB_SHORT);
 		labelImg.setCalibration(inImg.getCalibration());	// keep pixel dimensions and units
 		
-		MTBRegion2DSet currentRegions = label(inImg.getImagePart(0, 0, 0, 0, 0, sizeX, sizeY, 1, 1, 1));	// determine connected components from the first frame
-		totalNumberOfObjects = currentRegions.size();
-		
-		// assign ids and correspondencies to the initial regions
-		for(int i = 0; i < totalNumberOfObjects; i++)
-		{
-			currentRegions.elementAt(i).setID(i);
-			objectLabels.add(i);
-		}
-		
-		labelImg.setCurrentSliceIndex(0);
-		labelImg.setCurrentSlice(drawRegions(currentRegions));
+		startStream(sizeX, sizeY, null);
 		
 		// label and track individual regions in every frame
-		for(int t = 1; t < n; t++)
+		for(int t = 0; t < n; t++)
 		{
 			verbosePrintln("processing frame " + t);
 			
 			MTBImage nextFrame = inImg.getImagePart(0, 0, 0, t, 0, sizeX, sizeY, 1, 1, 1);	// extract next frame
 			
-			MTBRegion2DSet nextRegions = label(nextFrame);	// extract connected components from the next frame
-			
-			byte[][] a = assign(currentRegions, nextRegions);	// associate regions from the current frame to regions from the next one
-			
-			MTBImage resultSlice = relabel(a, currentRegions.size(), nextRegions.size(), nextRegions);	// match current assignments to existing tracks
+			MTBImage resultSlice = trackNextFrame(nextFrame);	// match regions of the next frame to existing tracks
 			
 			labelImg.setCurrentSliceIndex(t);
 			labelImg.setCurrentSlice(resultSlice);	// insert labeled frame to the result image
-
-			currentRegions = nextRegions;
 			
 			IJ.showProgress(t, n);
 		}
 		
+		finishStream();
+		
 		this.resultImg = labelImg;
 		this.resultImg.setTitle("tracking result");
 		
@@ -192,41 +194,157 @@ public class CellTrackerBipartite extends MTBOperator
 	
 	
 	/**
-	 * assign regions from one frame to regions from another frame
+	 * start online tracking, frames are then passed one after another to {@link #trackNextFrame(MTBImage)} or
+	 * {@link #trackNextRegions(MTBRegion2DSet)} as soon as they are segmented<br/>
+	 * <br/>
+	 * Only the regions of the last tracked frame are kept, hence, arbitrarily long sequences can be tracked.
+	 * The gating distance is not determined automatically in this mode, the maximum distance set for the
+	 * operator is used.
 	 * 
-	 * @param currentRegions	vector containing the n regions from one frame
-	 * @param nextRegions    	vector containing the m regions from another frame
-	 * @return 				 	((n+m) x (n+m))-table containing assignments (entry == 1) of the input regions<br/>
-	 * 							rows: regions from the first frame, columns: regions from the second frame 
+	 * @param sizeX width of the frames
+	 * @param sizeY height of the frames
+	 * @param writer receives the labeled regions of every tracked frame and persists completed trajectories,
+	 * 		  may be null
+	 */
+	public void startStream(int sizeX, int sizeY, TrajectoryStreamWriter writer)
+	{
+		this.verbose = getVerbose();
+		
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		
+		this.totalNumberOfObjects = 0;
+		this.streamRegions = null;
+		this.streamFrame = 0;
+		this.streamWriter = writer;
+	}
+	
+	
+	/**
+	 * track the next frame of an online tracking started by {@link #startStream(int, int, TrajectoryStreamWriter)}
+	 * 
+	 * @param frame binary or label image of the next frame, all non-background pixels are considered as foreground
+	 * @return frame where the regions are labeled with their track ids + 1
 	 * @throws ALDOperatorException
 	 * @throws ALDProcessingDAGException
 	 */
-	private byte[][] assign(MTBRegion2DSet currentRegions, MTBRegion2DSet nextRegions) throws ALDOperatorException, ALDProcessingDAGException
+	public MTBImage trackNextFrame(MTBImage frame) throws ALDOperatorException, ALDProcessingDAGException
 	{
-		int n = currentRegions.size();
-		int m = nextRegions.size();
+		MTBRegion2DSet nextRegions = label(frame);	// extract connected components from the next frame
+		
+		return drawRegions(trackNextRegions(nextRegions));
+	}
+	
+	
+	/**
+	 * track the next frame of an online tracking started by {@link #startStream(int, int, TrajectoryStreamWriter)}
+	 * 
+	 * @param nextRegions regions segmented in the next frame, their ids are set to the ids of the tracks they
+	 * 		  are assigned to
+	 * @return the given regions with updated ids
+	 * @throws ALDOperatorException
+	 * @throws ALDProcessingDAGException
+	 */
+	public MTBRegion2DSet trackNextRegions(MTBRegion2DSet nextRegions) throws ALDOperatorException, ALDProcessingDAGException
+	{
+		if(streamFrame < 0)
+		{
+			throw new ALDOperatorException(OperatorExceptionType.OPERATE_FAILED, "[CellTrackerBipartite] tracking not started, call startStream() first!");
+		}
 		
-		// no objects in the current frame
-		if(n == 0)
+		if(streamRegions == null)	// first frame, every region starts a new track
 		{
-			byte[][] a = new byte[m][m];
+			for(int i = 0; i < nextRegions.size(); i++)
+			{
+				nextRegions.elementAt(i).setID(totalNumberOfObjects);
+				totalNumberOfObjects++;
+			}
+		}
+		else
+		{
+			int[] a;	// associate regions from the current frame to regions from the next one
 			
-			for(int i = 0; i < m; i++)
+			if(useGatedAssignment)
+			{
+				a = assignGated(streamRegions, nextRegions);
+			}
+			else
 			{
-				a[i][i] = 1;
+				a = assign(streamRegions, nextRegions);
 			}
 			
-			return a;
+			relabel(a, streamRegions, nextRegions);	// match current assignments to existing tracks
+		}
+		
+		if(streamWriter != null)
+		{
+			try
+			{
+				streamWriter.addFrame(streamFrame, nextRegions);
+			}
+			catch(IOException e)
+			{
+				throw new ALDOperatorException(OperatorExceptionType.OPERATE_FAILED, "[CellTrackerBipartite] could not write trajectories: " + e.getMessage());
+			}
+		}
+		
+		streamRegions = nextRegions;
+		streamFrame++;
+		
+		return nextRegions;
+	}
+	
+	
+	/**
+	 * finish online tracking, remaining open trajectories are written and the writer is closed
+	 * 
+	 * @throws ALDOperatorException
+	 */
+	public void finishStream() throws ALDOperatorException
+	{
+		try
+		{
+			if(streamWriter != null)
+			{
+				streamWriter.close();
+			}
+		}
+		catch(IOException e)
+		{
+			throw new ALDOperatorException(OperatorExceptionType.OPERATE_FAILED, "[CellTrackerBipartite] could not write trajectories: " + e.getMessage());
 		}
+		finally
+		{
+			streamRegions = null;
+			streamFrame = -1;
+			streamWriter = null;
+		}
+	}
+	
+	
+	/**
+	 * assign regions from one frame to regions from another frame
+	 * 
+	 * @param currentRegions	vector containing the n regions from one frame
+	 * @param nextRegions    	vector containing the m regions from another frame
+	 * @return 				 	assignments of the rows of the ((n+m) x (n+m)) cost table to its columns (-1 if unassigned)<br/>
+	 * 							rows: regions from the first frame, columns: regions from the second frame 
+	 * @throws ALDOperatorException
+	 * @throws ALDProcessingDAGException
+	 */
+	int[] assign(MTBRegion2DSet currentRegions, MTBRegion2DSet nextRegions) throws ALDOperatorException, ALDProcessingDAGException
+	{
+		int n = currentRegions.size();
+		int m = nextRegions.size();
 		
-		// no objects in the next frame
-		if(m == 0)
+		// no objects in the current or in the next frame
+		if(n == 0 || m == 0)
 		{
-			byte[][] a = new byte[n][n];
+			int[] a = new int[n + m];
 			
-			for(int i = 0; i < n; i++)
+			for(int i = 0; i < n + m; i++)
 			{
-				a[i][i] = 1;
+				a[i] = i;
 			}
 			
 			return a;
@@ -305,8 +423,417 @@ public class CellTrackerBipartite extends MTBOperator
 		
 		MatchingBipartite_HungarianAlgorithm matching = new MatchingBipartite_HungarianAlgorithm(costs, ScoreInterpretation.MINIMUM_IS_BEST);
 		matching.runOp();
-
-		return matching.getMatching();
+		
+		return matching.getAssignment();
+	}
+	
+	
+	/**
+	 * assign regions from one frame to regions from another frame considering only pairs within the gate<br/>
+	 * <br/>
+	 * Candidate pairs, i.e. pairs with a centroid distance of at most maxDist and an area change of at most
+	 * maxAreaChange, are found with a grid index over the centroids of the next frame. The costs of the full
+	 * problem solved by {@link #assign(MTBRegion2DSet, MTBRegion2DSet)} are kept, but only entries required for
+	 * a feasible assignment are set up: every region gets a dummy partner of its own, and the dummies of two
+	 * candidate partners may be assigned to each other. Hence, the optimal assignments of both problems have
+	 * the same costs. The sparse problem decomposes into the connected components of the candidate pairs, 
+	 * which are solved independently and in parallel.
+	 * 
+	 * @param currentRegions	vector containing the n regions from one frame
+	 * @param nextRegions    	vector containing the m regions from another frame
+	 * @return 				 	assignments in the same layout as returned by {@link #assign(MTBRegion2DSet, MTBRegion2DSet)}
+	 * @throws ALDOperatorException
+	 */
+	int[] assignGated(MTBRegion2DSet currentRegions, MTBRegion2DSet nextRegions) throws ALDOperatorException
+	{
+		int n = currentRegions.size();
+		int m = nextRegions.size();
+		
+		// regions are unassigned unless matched within their component
+		int[] a = new int[n + m];
+		
+		for(int i = 0; i < n; i++)
+		{
+			a[i] = m + i;
+		}
+		
+		for(int j = 0; j < m; j++)
+		{
+			a[n + j] = j;
+		}
+		
+		if(n == 0 || m == 0)
+		{
+			return a;
+		}
+		
+		// dummy costs as in the full problem, i.e. higher than the distance of any pair of regions
+		currentMax = getMaxDistance(currentRegions, nextRegions);
+		double dummyCost = currentMax + 1;
+		
+		// grid index over the centroids of the next frame
+		double[][] centers = new double[m][2];
+		double[][] boxes = new double[m][4];
+		
+		for(int j = 0; j < m; j++)
+		{
+			MTBRegion2D s = nextRegions.elementAt(j);
+			
+			centers[j][0] = boxes[j][0] = boxes[j][2] = s.getCenterOfMass_X();
+			centers[j][1] = boxes[j][1] = boxes[j][3] = s.getCenterOfMass_Y();
+		}
+		
+		MTBSpatialGridIndex2D grid = new MTBSpatialGridIndex2D(boxes, centers, maxDist);
+		
+		// collect candidate pairs and join them to components, nodes are the current regions followed by the next ones
+		int edgeNum = 0;
+		int[] edgeCurr = new int[n];
+		int[] edgeNext = new int[n];
+		double[] edgeDist = new double[n];
+		int[] parents = new int[n + m];
+		
+		for(int i = 0; i < n + m; i++)
+		{
+			parents[i] = i;
+		}
+		
+		for(int i = 0; i < n; i++)
+		{
+			MTBRegion2D r = currentRegions.elementAt(i);
+			double x = r.getCenterOfMass_X();
+			double y = r.getCenterOfMass_Y();
+			
+			int[] candidates = grid.getBoxesOverlapping(x - maxDist, y - maxDist, x + maxDist, y + maxDist);
+			
+			for(int j : candidates)
+			{
+				MTBRegion2D s = nextRegions.elementAt(j);
+				double d = getDistance(r, s);
+				
+				if(d > maxDist)
+				{
+					continue;
+				}
+				
+				double f = getAreaFraction(r, s);
+				double frac = f;
+				
+				if(frac < 1)
+				{
+					frac = 1 / frac;
+				}
+				
+				if(frac > (1 + maxAreaChange))
+				{
+					// merging
+					if(d < maxDist && f > 1 + maxAreaChange)
+					{
+						verbosePrintln("possible merging of " + (r.getID() + 1));
+					}
+					
+					// splitting
+					if(d < maxDist && f < 1 - maxAreaChange)
+					{
+						// cell division
+						if(r.getCircularity() > 0.9)
+						{
+							verbosePrintln("possible division of " + (r.getID() + 1));
+						}
+						else
+						{
+							verbosePrintln("possible splitting of " + (r.getID() + 1));
+						}
+					}
+					
+					continue;
+				}
+				
+				if(edgeNum == edgeCurr.length)
+				{
+					edgeCurr = Arrays.copyOf(edgeCurr, 2 * edgeNum);
+					edgeNext = Arrays.copyOf(edgeNext, 2 * edgeNum);
+					edgeDist = Arrays.copyOf(edgeDist, 2 * edgeNum);
+				}
+				
+				edgeCurr[edgeNum] = i;
+				edgeNext[edgeNum] = j;
+				edgeDist[edgeNum] = d;
+				edgeNum++;
+				
+				int rootCurr = UnionFind.findRoot(parents, i);
+				int rootNext = UnionFind.findRoot(parents, n + j);
+				
+				if(rootCurr != rootNext)
+				{
+					parents[rootNext] = rootCurr;
+				}
+			}
+		}
+		
+		// enumerate components with candidate pairs and assign local indices to their regions
+		int[] componentIDs = new int[n + m];
+		int[] localIndices = new int[n + m];
+		int componentNum = 0;
+		
+		Arrays.fill(componentIDs, -1);
+		
+		for(int e = 0; e < edgeNum; e++)
+		{
+			int root = UnionFind.findRoot(parents, edgeCurr[e]);
+			
+			if(componentIDs[root] == -1)
+			{
+				componentIDs[root] = componentNum;
+				componentNum++;
+			}
+		}
+		
+		int[] currNum = new int[componentNum];
+		int[] nextNum = new int[componentNum];
+		int[] edgeCount = new int[componentNum];
+		
+		for(int i = 0; i < n + m; i++)
+		{
+			int c = componentIDs[UnionFind.findRoot(parents, i)];
+			componentIDs[i] = c;
+			
+			if(c == -1)
+			{
+				continue;
+			}
+			
+			if(i < n)
+			{
+				localIndices[i] = currNum[c]++;
+			}
+			else
+			{
+				localIndices[i] = nextNum[c]++;
+			}
+		}
+		
+		for(int e = 0; e < edgeNum; e++)
+		{
+			edgeCount[componentIDs[edgeCurr[e]]]++;
+		}
+		
+		// distribute regions and candidate pairs to components, pairs keep their order by current region
+		final GatedComponent[] components = new GatedComponent[componentNum];
+		
+		for(int c = 0; c < componentNum; c++)
+		{
+			components[c] = new GatedComponent(currNum[c], nextNum[c], edgeCount[c]);
+		}
+		
+		for(int i = 0; i < n + m; i++)
+		{
+			int c = componentIDs[i];
+			
+			if(c == -1)
+			{
+				continue;
+			}
+			
+			if(i < n)
+			{
+				components[c].curr[localIndices[i]] = i;
+			}
+			else
+			{
+				components[c].next[localIndices[i]] = i - n;
+			}
+		}
+		
+		Arrays.fill(edgeCount, 0);
+		
+		for(int e = 0; e < edgeNum; e++)
+		{
+			int c = componentIDs[edgeCurr[e]];
+			int k = edgeCount[c]++;
+			
+			components[c].edgeCurr[k] = localIndices[edgeCurr[e]];
+			components[c].edgeNext[k] = localIndices[n + edgeNext[e]];
+			components[c].edgeDist[k] = edgeDist[e];
+		}
+		
+		solveComponents(components, dummyCost, n, a);
+		
+		return a;
+	}
+	
+	
+	/**
+	 * solve the assignment problems of the given components, in parallel if requested
+	 * 
+	 * @param components	components of candidate pairs
+	 * @param dummyCost		cost of assignments to dummy objects
+	 * @param n				number of regions from the current frame
+	 * @param a				assignment table to fill in, see {@link #assignGated(MTBRegion2DSet, MTBRegion2DSet)}
+	 * @throws ALDOperatorException
+	 */
+	private void solveComponents(final GatedComponent[] components, final double dummyCost, final int n, final int[] a) throws ALDOperatorException
+	{
+		int threads = (threadNum <= 0) ? Runtime.getRuntime().availableProcessors() : threadNum;
+		threads = Math.max(1, Math.min(threads, components.length));
+		
+		if(threads == 1)
+		{
+			for(int c = 0; c < components.length; c++)
+			{
+				components[c].solve(dummyCost, n, a);
+			}
+			
+			return;
+		}
+		
+		final int workerNum = threads;
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		
+		for(int k = 0; k < workerNum; k++)
+		{
+			final int worker = k;
+			
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call()
+				{
+					for(int c = worker; c < components.length; c += workerNum)
+					{
+						components[c].solve(dummyCost, n, a);
+					}
+					
+					return null;
+				}
+			});
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(workerNum);
+		
+		try
+		{
+			for(Future<Void> f : pool.invokeAll(tasks))
+			{
+				f.get();
+			}
+		}
+		catch(ExecutionException e)
+		{
+			throw new ALDOperatorException(OperatorExceptionType.OPERATE_FAILED, "[CellTrackerBipartite] gated assignment failed: " + e.getCause());
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ALDOperatorException(OperatorExceptionType.OPERATE_FAILED, "[CellTrackerBipartite] gated assignment interrupted!");
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+	
+	
+	/**
+	 * connected component of candidate pairs for the gated assignment
+	 */
+	private static class GatedComponent
+	{
+		final int[] curr;		// indices of the regions from the current frame
+		final int[] next;		// indices of the regions from the next frame
+		final int[] edgeCurr;	// local index of the current region of each candidate pair
+		final int[] edgeNext;	// local index of the next region of each candidate pair
+		final double[] edgeDist;	// distance of each candidate pair
+		
+		GatedComponent(int currNum, int nextNum, int edgeNum)
+		{
+			this.curr = new int[currNum];
+			this.next = new int[nextNum];
+			this.edgeCurr = new int[edgeNum];
+			this.edgeNext = new int[edgeNum];
+			this.edgeDist = new double[edgeNum];
+		}
+		
+		/**
+		 * solve the sparse assignment problem of this component and enter matched pairs into the assignment table
+		 * 
+		 * @param dummyCost	cost of assignments to dummy objects
+		 * @param n			number of regions from the current frame
+		 * @param a			assignment table, see {@link CellTrackerBipartite#assignGated(MTBRegion2DSet, MTBRegion2DSet)}
+		 */
+		void solve(double dummyCost, int n, int[] a)
+		{
+			int p = curr.length;
+			int q = next.length;
+			int e = edgeCurr.length;
+			
+			// single pair, matching is always cheaper than two dummy assignments
+			if(p == 1 && q == 1)
+			{
+				setMatch(a, n, curr[0], next[0]);
+				return;
+			}
+			
+			// rows: current regions followed by dummies of next regions,
+			// columns: next regions followed by dummies of current regions
+			int l = p + q;
+			int[] rowStart = new int[l + 1];
+			
+			for(int k = 0; k < e; k++)
+			{
+				rowStart[edgeCurr[k] + 1]++;
+				rowStart[p + edgeNext[k] + 1]++;
+			}
+			
+			for(int r = 0; r < l; r++)
+			{
+				rowStart[r + 1] += rowStart[r] + 1;
+			}
+			
+			int[] cols = new int[rowStart[l]];
+			double[] costs = new double[rowStart[l]];
+			int[] fill = Arrays.copyOf(rowStart, l);
+			
+			for(int k = 0; k < e; k++)
+			{
+				int r = edgeCurr[k];
+				cols[fill[r]] = edgeNext[k];
+				costs[fill[r]++] = edgeDist[k];
+				
+				r = p + edgeNext[k];
+				cols[fill[r]] = q + edgeCurr[k];
+				costs[fill[r]++] = dummyCost;
+			}
+			
+			for(int r = 0; r < p; r++)
+			{
+				cols[fill[r]] = q + r;
+				costs[fill[r]++] = dummyCost;
+			}
+			
+			for(int b = 0; b < q; b++)
+			{
+				cols[fill[p + b]] = b;
+				costs[fill[p + b]++] = dummyCost;
+			}
+			
+			int[] sol = new MTBSparseLinearAssignment(l, rowStart, cols, costs).solve();
+			
+			for(int r = 0; r < p; r++)
+			{
+				if(sol[r] < q)
+				{
+					setMatch(a, n, curr[r], next[sol[r]]);
+				}
+			}
+		}
+		
+		/**
+		 * enter a matched pair into the assignment table
+		 */
+		private static void setMatch(int[] a, int n, int i, int j)
+		{
+			a[i] = j;
+			a[n + j] = -1;
+		}
 	}
 	
 	
@@ -331,93 +858,51 @@ public class CellTrackerBipartite extends MTBOperator
 	/**
 	 * find and assign object labels to segmented objects in two frames
 	 * 
-	 * @param a assignment table
-	 * @param n number of objects from the current frame
-	 * @param m number of objects from the next frame
-	 * @param nextRegions regions from the next frame
-	 * @return frame where all connected components are labeled according to the assignments contained in a
+	 * @param a assignment table, entry i holds the column assigned to row i of the ((n+m) x (n+m)) cost table or -1
+	 * @param currentRegions regions from the current frame, their ids are the ids of their tracks
+	 * @param nextRegions regions from the next frame, their ids are set according to the assignments contained in a
 	 */
-	private MTBImage relabel(byte[][] a, int n, int m, MTBRegion2DSet nextRegions)
+	private void relabel(int[] a, MTBRegion2DSet currentRegions, MTBRegion2DSet nextRegions)
 	{
-		// copy content of objectLabels into temporary label vector
-		Vector<Integer> tempLabels = new Vector<Integer>();
-		
-		for(int i = 0; i < objectLabels.size(); i++)
-		{
-			int ol = objectLabels.elementAt(i);
-			tempLabels.add(ol);
-		}
+		int n = currentRegions.size();
+		int m = nextRegions.size();
 		
 		int l = a.length;
 		
 		for(int i = 0; i < l; i++)
 		{
-			for(int j = 0; j < l; j++)
+			int j = a[i];
+			
+			if(j < 0 || (i >= n && j >= m)) // unassigned or assignments between the dummy objects
 			{
-				if(a[i][j] == 1)
+				
+			}
+			else if(i >= n)	// new cell (or cluster of cells) appeared
+			{
+				if(nextRegions.elementAt(j).getCenterOfMass_X() < maxDist || ((sizeX - 1) - nextRegions.elementAt(j).getCenterOfMass_X()) < maxDist
+				 ||nextRegions.elementAt(j).getCenterOfMass_Y() < maxDist || ((sizeY - 1) - nextRegions.elementAt(j).getCenterOfMass_Y()) < maxDist)
 				{
-					if(i >= n && j >= m) //assignments between the dummy objects
-					{
-						
-					}
-					else if(i >= n)	// new cell (or cluster of cells) appeared
-					{
-						if(nextRegions.elementAt(j).getCenterOfMass_X() < maxDist || ((sizeX - 1) - nextRegions.elementAt(j).getCenterOfMass_X()) < maxDist
-						 ||nextRegions.elementAt(j).getCenterOfMass_Y() < maxDist || ((sizeY - 1) - nextRegions.elementAt(j).getCenterOfMass_Y()) < maxDist)
-						{
-							verbosePrintln("new object possibly entered the field of view at (" + (int)nextRegions.elementAt(j).getCenterOfMass_X() + "," + (int)nextRegions.elementAt(j).getCenterOfMass_Y() + ")");
-						}
-						
-						else
-						{
-							verbosePrintln("new object at (" + (int)nextRegions.elementAt(j).getCenterOfMass_X() + "," + (int)nextRegions.elementAt(j).getCenterOfMass_Y() + ") appeared");
-						}
-						
-						tempLabels.add(j);	// add new label at the end of the label list
-						nextRegions.elementAt(j).setID(totalNumberOfObjects);
-										
-						totalNumberOfObjects++;
-						
-						break;
-					}
-					else if(j >= m)	// cell disappeared 
-					{	
-						for(int k = 0; k < objectLabels.size(); k++)
-						{
-							if(objectLabels.elementAt(k) == i)	// get label that the object was assigned to in the last step
-							{
-								tempLabels.set(k, DISAPPEARED);
-								verbosePrintln("object " + (k + 1) + " disappeared");
-								
-								break;
-							}
-						}
-
-						break;
-					}
-					else	// match
-					{
-						// search for object id associated with the current label
-						for(int k = 0; k < objectLabels.size(); k++)
-						{
-							if(objectLabels.elementAt(k) == i)	// get label that the object was assigned to in the last step
-							{
-								tempLabels.set(k, j);
-								nextRegions.elementAt(j).setID(k);
-								
-								break;
-							}
-						}
-						
-						break;
-					}
+					verbosePrintln("new object possibly entered the field of view at (" + (int)nextRegions.elementAt(j).getCenterOfMass_X() + "," + (int)nextRegions.elementAt(j).getCenterOfMass_Y() + ")");
+				}
+				
+				else
+				{
+					verbosePrintln("new object at (" + (int)nextRegions.elementAt(j).getCenterOfMass_X() + "," + (int)nextRegions.elementAt(j).getCenterOfMass_Y() + ") appeared");
 				}
+				
+				nextRegions.elementAt(j).setID(totalNumberOfObjects);
+								
+				totalNumberOfObjects++;
+			}
+			else if(j >= m)	// cell disappeared 
+			{	
+				verbosePrintln("object " + (currentRegions.elementAt(i).getID() + 1) + " disappeared");
+			}
+			else	// match, continue the track of the current region
+			{
+				nextRegions.elementAt(j).setID(currentRegions.elementAt(i).getID());
 			}
 		}
-		
-		objectLabels = tempLabels;
-		
-		return drawRegions(nextRegions);
 	}
 	
 	
@@ -460,6 +945,114 @@ public class CellTrackerBipartite extends MTBOperator
 	}
 	
 	
+	/**
+	 * 
+	 * @param currRegions
+	 * @param nextRegions
+	 * 
+	 * @return maximum distance between the given region sets, without setting up the distance matrix<br/>
+	 * 		   The value has to equal the maximum found by {@link #getDistMatrix(MTBRegion2DSet, MTBRegion2DSet)}, since
+	 * 		   the dummy costs derived from it affect the optimal assignment. The farthest pair of centroids is among the
+	 * 		   vertices of the convex hulls of both sets, hence, only pairs of hull vertices are compared.
+	 */
+	private double getMaxDistance(MTBRegion2DSet currRegions, MTBRegion2DSet nextRegions)
+	{
+		double[][] curr = getHullVertices(currRegions);
+		double[][] next = getHullVertices(nextRegions);
+		
+		// compare squared distances, the square root is monotonic
+		double maxSq = 0;
+		
+		for(int i = 0; i < curr.length; i++)
+		{
+			double crx = curr[i][0];
+			double cry = curr[i][1];
+			
+			for(int j = 0; j < next.length; j++)
+			{
+				double sq = (crx - next[j][0]) * (crx - next[j][0]) + (cry - next[j][1]) * (cry - next[j][1]);
+				
+				if(sq > maxSq)
+				{
+					maxSq = sq;
+				}
+			}
+		}
+		
+		return Math.sqrt(maxSq);
+	}
+	
+	
+	/**
+	 * 
+	 * @param regions
+	 * 
+	 * @return centroids of the given regions that are vertices of their convex hull (monotone chain algorithm)
+	 */
+	private static double[][] getHullVertices(MTBRegion2DSet regions)
+	{
+		int n = regions.size();
+		
+		double[][] points = new double[n][2];
+		
+		for(int i = 0; i < n; i++)
+		{
+			points[i][0] = regions.elementAt(i).getCenterOfMass_X();
+			points[i][1] = regions.elementAt(i).getCenterOfMass_Y();
+		}
+		
+		if(n < 3)
+		{
+			return points;
+		}
+		
+		Arrays.sort(points, new Comparator<double[]>() {
+			@Override
+			public int compare(double[] p, double[] q)
+			{
+				return (p[0] != q[0]) ? Double.compare(p[0], q[0]) : Double.compare(p[1], q[1]);
+			}
+		});
+		
+		// lower and upper chain, collinear points are dropped
+		double[][] hull = new double[2 * n][];
+		int h = 0;
+		
+		for(int i = 0; i < n; i++)
+		{
+			while(h >= 2 && cross(hull[h - 2], hull[h - 1], points[i]) <= 0)
+			{
+				h--;
+			}
+			
+			hull[h++] = points[i];
+		}
+		
+		for(int i = n - 2, lower = h + 1; i >= 0; i--)
+		{
+			while(h >= lower && cross(hull[h - 2], hull[h - 1], points[i]) <= 0)
+			{
+				h--;
+			}
+			
+			hull[h++] = points[i];
+		}
+		
+		// the last vertex equals the first one
+		return Arrays.copyOf(hull, Math.max(1, h - 1));
+	}
+	
+	
+	/**
+	 * 
+	 * @return z-component of the cross product of (q - p) and (r - p), positive if p, q, r turn counter-clockwise
+	 */
+	private static double cross(double[] p, double[] q, double[] r)
+	{
+		return (q[0] - p[0]) * (r[1] - p[1]) - (q[1] - p[1]) * (r[0] - p[0]);
+	}
+	
+	
 	/**
 	 * 
 	 * @param currRegions
@@ -577,6 +1170,18 @@ public class CellTrackerBipartite extends MTBOperator
 	}
 	
 	
+	public void setUseGatedAssignment(boolean useGatedAssignment)
+	{
+		this.useGatedAssignment = useGatedAssignment;
+	}
+	
+	
+	public void setThreadNum(int threadNum)
+	{
+		this.threadNum = threadNum;
+	}
+	
+	
 	/**
 	 * prints the given text if the verbose flag is set
 	 * 
@@ -0,0 +1,191 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.apps.singleCellTracking2D;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBRegion2D;
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBRegion2DSet;
+
+/**
+ * Collects the centroids of tracked regions frame by frame and writes every trajectory to a file
+ * as soon as it is completed, i.e. as soon as its region is missing in a frame.<br/>
+ * <br/>
+ * Only the open trajectories are kept in memory. The file is tab-separated with one line per
+ * trajectory point (line number, track number, frame, x, y) and can be read with
+ * {@link ManualTrackingTrajectoryExtraction}. Track numbers are the region ids + 1, i.e. the
+ * values of the regions in the label images of {@link CellTrackerBipartite}, frames are counted
+ * from 0.
+ * 
+ * @author agent
+ *
+ */
+public class TrajectoryStreamWriter
+{
+	private BufferedWriter writer;
+	private int minTrackLength;
+	
+	private LinkedHashMap<Integer, Trajectory2D> openTracks;	// trajectories that were continued in the last frame
+	
+	private int lineNo = 0;			// number of points written
+	private int writtenTracks = 0;	// number of trajectories written
+	
+	
+	/**
+	 * 
+	 * @param path file the trajectories are written to
+	 * @param minTrackLength trajectories with fewer points are discarded
+	 * @throws IOException
+	 */
+	public TrajectoryStreamWriter(String path, int minTrackLength) throws IOException
+	{
+		this.minTrackLength = minTrackLength;
+		this.openTracks = new LinkedHashMap<Integer, Trajectory2D>();
+		
+		this.writer = new BufferedWriter(new FileWriter(path));
+		this.writer.write("\ttrack\tframe\tx\ty");
+		this.writer.newLine();
+	}
+	
+	
+	/**
+	 * add the regions of the next frame, trajectories without a region in this frame are completed
+	 * and written
+	 * 
+	 * @param t index of the frame
+	 * @param regions tracked regions of frame t, their ids are the track ids
+	 * @throws IOException
+	 */
+	public void addFrame(int t, MTBRegion2DSet regions) throws IOException
+	{
+		for(int i = 0; i < regions.size(); i++)
+		{
+			MTBRegion2D r = regions.elementAt(i);
+			Point2D.Double p = new Point2D.Double(r.getCenterOfMass_X(), r.getCenterOfMass_Y());
+			
+			Trajectory2D trajectory = openTracks.get(r.getID());
+			
+			if(trajectory == null)	// new track
+			{
+				trajectory = new Trajectory2D(r.getID(), t);
+				openTracks.put(r.getID(), trajectory);
+			}
+			
+			trajectory.addPoint(p);
+		}
+		
+		// trajectories that did not receive a point in frame t are completed
+		Iterator<Trajectory2D> iter = openTracks.values().iterator();
+		
+		while(iter.hasNext())
+		{
+			Trajectory2D trajectory = iter.next();
+			
+			if(trajectory.getStartFrame() + trajectory.getPoints().size() - 1 < t)
+			{
+				write(trajectory);
+				iter.remove();
+			}
+		}
+		
+		writer.flush();
+	}
+	
+	
+	/**
+	 * write all open trajectories and close the file
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			for(Trajectory2D trajectory : openTracks.values())
+			{
+				write(trajectory);
+			}
+			
+			openTracks.clear();
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+	
+	
+	/**
+	 * 
+	 * @return number of trajectories that are still kept in memory
+	 */
+	public int getNumberOfOpenTracks()
+	{
+		return openTracks.size();
+	}
+	
+	
+	/**
+	 * 
+	 * @return number of trajectories written to the file so far
+	 */
+	public int getNumberOfWrittenTracks()
+	{
+		return writtenTracks;
+	}
+	
+	
+	/**
+	 * write the points of a trajectory if it is long enough
+	 * 
+	 * @param trajectory
+	 * @throws IOException
+	 */
+	private void write(Trajectory2D trajectory) throws IOException
+	{
+		int n = trajectory.getPoints().size();
+		
+		if(n < minTrackLength)
+		{
+			return;
+		}
+		
+		for(int i = 0; i < n; i++)
+		{
+			Point2D.Double p = trajectory.getPoints().elementAt(i);
+			
+			lineNo++;
+			writer.write(lineNo + "\t" + (trajectory.getID() + 1) + "\t" + (trajectory.getStartFrame() + i) + "\t" + p.x + "\t" + p.y);
+			writer.newLine();
+		}
+		
+		writtenTracks++;
+	}
+}
@@ -79,9 +79,19 @@ public class MTBContour2DSet extends ALDData
 		/**
 		 * The set of contours represented as a Vector.
 		 */
-		@ALDClassParameter(label="Set of contours") 
+		@ALDClassParameter(label="Set of contours", 
+			changeValueHook="hookContoursUpdated") 
 		Vector<MTBContour2D> contourSet;
 
+		/**
+		 * Optional spatial index on the bounding boxes of the contours.
+		 * <p>
+		 * The index is built on demand and invalidated if the set changes.
+		 * Note that modifications of the contours themselves after the index was 
+		 * built are not detected, call {@link #invalidateSpatialIndex()} then.
+		 */
+		private transient MTBSpatialGridIndex2D spatialIndex = null;
+
 		/**
 		 * Standard constructor.
 		 */
@@ -196,6 +206,7 @@ public class MTBContour2DSet extends ALDData
 		 * @return True in case of success.
 		 */
     public boolean add(MTBContour2D contour) {
+    	this.spatialIndex = null;
 			return this.contourSet.add(contour);
 		}
 
@@ -208,6 +219,7 @@ public class MTBContour2DSet extends ALDData
 		 *          index of the new contour
 		 */
     public void setElementAt(MTBContour2D contour, int i) {
+    	this.spatialIndex = null;
 			this.contourSet.setElementAt(contour, i);
 		}
 
@@ -218,9 +230,140 @@ public class MTBContour2DSet extends ALDData
 		 *          index of contour to remove
 		 */
 		public void removeElementAt(int i) {
+				this.spatialIndex = null;
 				this.contourSet.removeElementAt(i);
 		}
 
+		/**
+		 * Get the spatial index on the contours of this set.
+		 * <p>
+		 * The index is built on first request and kept until the set is 
+		 * modified. Bounding boxes and centroids of the contour points are 
+		 * indexed, the indices returned by queries refer to positions in this set.
+		 * 
+		 * @return Spatial index of the set.
+		 */
+		public MTBSpatialGridIndex2D getSpatialIndex() {
+				if (this.spatialIndex == null) {
+						int n = this.contourSet.size();
+						double[][] boxes = new double[n][];
+						double[][] centers = new double[n][];
+						for (int i = 0; i < n; ++i) {
+								MTBContour2D c = this.contourSet.elementAt(i);
+								boxes[i] = c.getBoundingBox();
+								double cx = 0, cy = 0;
+								for (Point2D.Double p: c.getPoints()) {
+										cx += p.x;
+										cy += p.y;
+								}
+								centers[i] = new double[] {
+										cx / c.getPointNum(), cy / c.getPointNum() };
+						}
+						this.spatialIndex = new MTBSpatialGridIndex2D(boxes, centers);
+				}
+				return this.spatialIndex;
+		}
+
+		/**
+		 * Discards the spatial index, e.g., after contours have been modified.
+		 */
+		public void invalidateSpatialIndex() {
+				this.spatialIndex = null;
+		}
+
+		/**
+		 * Find the contour enclosing the given point.
+		 * <p>
+		 * Points on a contour are considered as enclosed, points inside of 
+		 * inner contours, i.e. holes, are not. Only contours with bounding boxes 
+		 * containing the point are tested.
+		 * 
+		 * @param x		x-coordinate of point.
+		 * @param y		y-coordinate of point.
+		 * @return	Index of first contour enclosing the point, -1 if none.
+		 */
+		public int findContourContaining(double x, double y) {
+				for (int i: this.getSpatialIndex().getBoxesContaining(x, y)) {
+						MTBContour2D c = this.contourSet.elementAt(i);
+						if (!encloses(c.getPoints(), x, y))
+								continue;
+						boolean inHole = false;
+						for (int h = 0; !inHole && h < c.getInnerCount(); ++h) {
+								Vector<Point2D.Double> hole = c.getInner(h).getPoints();
+								inHole = encloses(hole, x, y) && !onChain(hole, x, y);
+						}
+						if (!inHole)
+								return i;
+				}
+				return -1;
+		}
+
+		/**
+		 * Find all contours with bounding boxes overlapping the given box.
+		 * 
+		 * @param bbox	Query box, [xmin, ymin, xmax, ymax].
+		 * @return	Indices of contours in ascending order.
+		 */
+		public int[] findContoursOverlapping(double[] bbox) {
+				return this.getSpatialIndex().getBoxesOverlapping(
+						bbox[0], bbox[1], bbox[2], bbox[3]);
+		}
+
+		/**
+		 * Find the contours with centroids closest to the given point.
+		 * 
+		 * @param x		x-coordinate of query point.
+		 * @param y		y-coordinate of query point.
+		 * @param k		Number of contours to find.
+		 * @return	Indices of at most k contours, sorted by ascending distance.
+		 */
+		public int[] findNearestContours(double x, double y, int k) {
+				return this.getSpatialIndex().getNearestCenters(x, y, k);
+		}
+
+		/**
+		 * Checks if a point lies inside of or on a closed point chain.
+		 * <p>
+		 * The test is based on the even-odd rule.
+		 * 
+		 * @param pts	Points of the closed chain.
+		 * @param x		x-coordinate of point.
+		 * @param y		y-coordinate of point.
+		 * @return	True if the point is enclosed by the chain.
+		 */
+		private static boolean encloses(Vector<Point2D.Double> pts, 
+				double x, double y) {
+				if (onChain(pts, x, y))
+						return true;
+				boolean inside = false;
+				int n = pts.size();
+				for (int i = 0, j = n - 1; i < n; j = i++) {
+						Point2D.Double pi = pts.elementAt(i);
+						Point2D.Double pj = pts.elementAt(j);
+						if (   (pi.y > y) != (pj.y > y)
+								&& x < (pj.x - pi.x) * (y - pi.y) / (pj.y - pi.y) + pi.x)
+								inside = !inside;
+				}
+				return inside;
+		}
+
+		/**
+		 * Checks if a point is one of the points of a chain.
+		 * 
+		 * @param pts	Points of the chain.
+		 * @param x		x-coordinate of point.
+		 * @param y		y-coordinate of point.
+		 * @return	True if the point is part of the chain.
+		 */
+		private static boolean onChain(Vector<Point2D.Double> pts, 
+				double x, double y) {
+				for (Point2D.Double p: pts) {
+						if (p.x == x && p.y == y)
+								return true;
+				}
+				return false;
+		}
+
 		/**
 		 * Read a contour set from an xml file <code>filename</code> and set the MTB
 		 * polygon set accordingly. The processing history is read also if available.
@@ -251,6 +394,7 @@ public class MTBContour2DSet extends ALDData
 
 			// resize contour set and copy contours from xml
 			this.contourSet = new Vector<MTBContour2D>();
+			this.spatialIndex = null;
 			this.contourSet.setSize(xmlContourSet.sizeOfContoursArray());
 			for (int idx = 0; idx < xmlContourSet.sizeOfContoursArray(); idx++) {
 				MTBXMLContour2DType xmlContour = xmlContourSet.getContoursArray(idx);
@@ -279,6 +423,7 @@ public class MTBContour2DSet extends ALDData
 
 			// resize contour set and copy contours from xml
 			this.contourSet = new Vector<MTBContour2D>();
+			this.spatialIndex = null;
 			this.contourSet.setSize(xmlContourSet.sizeOfContoursArray());
 			for (int idx = 0; idx < xmlContourSet.sizeOfContoursArray(); idx++) {
 				MTBXMLContour2DType xmlContour = xmlContourSet.getContoursArray(idx);
@@ -448,6 +593,13 @@ public class MTBContour2DSet extends ALDData
 			return rois;		
 		}
 				
+		/**
+		 * Function to update object state after setting new contour list.
+		 */
+		protected void hookContoursUpdated() {
+				this.spatialIndex = null;
+		}
+
 		@Override
 		public Iterator<MTBContour2D> iterator() {
 			Iterator<MTBContour2D> iter = this.contourSet.iterator();
@@ -28,6 +28,11 @@ import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import de.unihalle.informatik.Alida.annotations.ALDClassParameter;
 import de.unihalle.informatik.Alida.annotations.ALDParametrizedClass;
@@ -165,6 +170,152 @@ public class MTBImageHistogram extends ALDData
 		}
 		
 		
+		/**
+		 * Construct a histogram for the given input image in parallel.
+		 * <p>
+		 * The rows of all slices, frames and channels are distributed among 
+		 * the given number of threads, each collecting a partial histogram, 
+		 * and the partial histograms are summed up afterwards. 
+		 * The result is identical to the one of 
+		 * {@link #MTBImageHistogram(MTBImage, int, double, double)}.
+		 * 
+		 * @param img						Input image, RGB images are not supported.
+		 * @param bins					Number of histogram bins.
+		 * @param lowBoundary		Lower boundary of the first bin.
+		 * @param highBoundary	Upper boundary of the last bin.
+		 * @param threads				Number of threads, if <= 0 all cores are used.
+		 * @throws IllegalArgumentException	
+		 * 					If an RGB image is given or boundaries are invalid.
+		 */
+		public MTBImageHistogram(MTBImage img, int bins, 
+				double lowBoundary, double highBoundary, int threads) 
+			throws IllegalArgumentException {
+			if (img.getType() == MTBImageType.MTB_RGB) {
+				throw new IllegalArgumentException(
+					"Histogram creation for RGB images not supported.");
+			}
+			if (lowBoundary >= highBoundary) {
+				throw new IllegalArgumentException(
+					"Histogram  must be larger than lowest value");
+			}
+			this.lowBound = lowBoundary;
+			this.highBound = highBoundary;
+			this.data = new double[bins];
+			this.collect(img, 0, img.getSizeT(), 1.0, threads);
+			initialize();
+		}
+
+		/**
+		 * Add or remove the values of one time frame of an image.
+		 * <p>
+		 * This allows to incrementally maintain a histogram over a sliding 
+		 * window of frames in time-lapse data, i.e. to add each new frame 
+		 * and remove the oldest one without passing over the other frames. 
+		 * Values of all slices and channels of the frame are considered.
+		 * 
+		 * @param img			Image to take the values from.
+		 * @param t				Time frame.
+		 * @param weight	Weight of each value, i.e. 1 to add the frame and -1 to 
+		 * 								remove it.
+		 * @param threads	Number of threads, if <= 0 all cores are used.
+		 * @throws IllegalArgumentException	If an RGB image is given.
+		 */
+		public void updateFrame(MTBImage img, int t, double weight, 
+				int threads) throws IllegalArgumentException {
+			if (img.getType() == MTBImageType.MTB_RGB) {
+				throw new IllegalArgumentException(
+					"Histogram creation for RGB images not supported.");
+			}
+			this.collect(img, t, t+1, weight, threads);
+			initialize();
+		}
+
+		/**
+		 * Collects values of the given range of time frames into the histogram.
+		 * @param img			Image to take the values from.
+		 * @param tMin		First frame.
+		 * @param tMax		Frame after the last frame.
+		 * @param weight	Weight of each value.
+		 * @param threads	Number of threads, if <= 0 all cores are used.
+		 */
+		private void collect(final MTBImage img, final int tMin, final int tMax, 
+				final double weight, int threads) {
+			final int sizeY = img.getSizeY();
+			final int sizeZ = img.getSizeZ();
+			final int sizeC = img.getSizeC();
+			final int rowNum = sizeC * (tMax - tMin) * sizeZ * sizeY;
+			int workers = (threads <= 0) 
+					? Runtime.getRuntime().availableProcessors() : threads;
+			workers = Math.max(1, Math.min(workers, rowNum));
+			if (workers == 1) {
+				this.collectRows(img, tMin, 0, rowNum, 1, weight, this.data);
+				return;
+			}
+			final int workerNum = workers;
+			final double [][] partials = new double[workerNum][];
+			ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int k=0; k<workerNum; ++k) {
+				final int worker = k;
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						double [] partial = new double[MTBImageHistogram.this.data.length];
+						MTBImageHistogram.this.collectRows(img, tMin, worker, rowNum, 
+								workerNum, weight, partial);
+						partials[worker] = partial;
+						return null;
+					}
+				});
+			}
+			ForkJoinPool pool = new ForkJoinPool(workerNum);
+			try {
+				for (Future<Void> f: pool.invokeAll(tasks))
+					f.get();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(
+					"Parallel histogram creation failed: " + e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(
+					"Parallel histogram creation interrupted!");
+			} finally {
+				pool.shutdown();
+			}
+			// sum up partial histograms in fixed order
+			for (double [] partial: partials)
+				for (int i=0; i<this.data.length; ++i)
+					this.data[i] += partial[i];
+		}
+
+		/**
+		 * Collects the values of every n-th image row.
+		 * @param img			Image to take the values from.
+		 * @param tMin		First frame, rows are enumerated from here.
+		 * @param first		Index of first row.
+		 * @param rowNum	Number of rows.
+		 * @param step		Step between rows.
+		 * @param weight	Weight of each value.
+		 * @param bins		Array where to collect the values.
+		 */
+		private void collectRows(MTBImage img, int tMin, int first, int rowNum, 
+				int step, double weight, double [] bins) {
+			int sizeX = img.getSizeX();
+			int sizeY = img.getSizeY();
+			int sizeZ = img.getSizeZ();
+			int sizeC = img.getSizeC();
+			int frames = rowNum / (sizeY * sizeZ * sizeC);
+			// rows are enumerated in the order of channels, frames, slices
+			for (int r = first; r < rowNum; r += step) {
+				int y = r % sizeY;
+				int z = (r / sizeY) % sizeZ;
+				int t = tMin + (r / (sizeY * sizeZ)) % frames;
+				int c = r / (sizeY * sizeZ * frames);
+				for (int x = 0; x < sizeX; x++) {
+					bins[this.getBinIndex(img.getValueDouble(x, y, z, t, c))] += weight;
+				}
+			}
+		}
+		
 		/**
 		 * construct a histogram for the given input image only for the pixels specified by a binary mask</br>
 		 * all MTBImage types except RGB type are supported</br>
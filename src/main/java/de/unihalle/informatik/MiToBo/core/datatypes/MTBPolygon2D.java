@@ -24,13 +24,9 @@
 
 package de.unihalle.informatik.MiToBo.core.datatypes;
 
-import ij.ImagePlus;
-import ij.gui.NewImage;
 import ij.gui.PolygonRoi;
 import ij.gui.Roi;
-import ij.process.ImageProcessor;
 
-import java.awt.Polygon;
 import java.awt.geom.*;
 import java.util.*;
 
@@ -86,6 +82,35 @@ public class MTBPolygon2D extends ALDData
 	@ALDClassParameter(label="Polygon is closed")
   protected boolean isClosed;
 
+  /**
+   * Cached pixel spans of the polygon's interior, might be null.
+   * <p>
+   * The cache is invalidated on explicit updates of the point list. As the 
+   * points themselves may be changed in place, e.g., in snakes, the cache
+   * is in addition validated against {@link #cachedSpanCoords} prior to use.
+   */
+  private transient PixelSpans cachedSpans = null;
+
+  /**
+   * Point coordinates the cached spans were calculated from.
+   */
+  private transient double[] cachedSpanCoords = null;
+
+  /**
+   * Clipping window width the cached spans refer to.
+   */
+  private transient int cachedSpanWidth = -1;
+
+  /**
+   * Clipping window height the cached spans refer to.
+   */
+  private transient int cachedSpanHeight = -1;
+
+  /**
+   * Flag if polygon pixels were added to the cached spans.
+   */
+  private transient boolean cachedSpanPolyPixels = false;
+
   /**
    * Default constructor.
    */
@@ -197,6 +222,7 @@ public class MTBPolygon2D extends ALDData
    */
   public void setPoints(Vector<Point2D.Double> ps) {
     this.points = ps;
+    this.cachedSpans = null;
   }
 
   /**
@@ -248,6 +274,7 @@ public class MTBPolygon2D extends ALDData
    */
   public void addPoint(double x, double y) {
     this.points.add(new Point2D.Double(x, y));
+    this.cachedSpans = null;
   }
 
 		/**
@@ -356,12 +383,13 @@ public class MTBPolygon2D extends ALDData
    * <p>
    * It is important to avoid negative coordinates in the polygon point list.
    * <p>
-   * Note that this method internally uses a sweeping algorithm implemented in 
-   * ImageJ. This algorithm seems to have some problems if the polygon is
-   * represented by a complete point list of all contour pixels, like in case
-   * of contours in MiToBo. In that case some polygon pixels are not
-   * automatically included in the final mask, but have to be added manually.
-   * This can be triggered by setting 'includePolyPixels' to true.
+   * The mask is generated from the pixel spans of the polygon, see
+   * {@link #getPixelSpans(int, int, boolean)}. A pixel belongs to the 
+   * polygon if its center lies inside, i.e. the same convention as in 
+   * ImageJ's polygon filling is applied. If the polygon is represented by a 
+   * complete point list of all contour pixels, like in case of contours in 
+   * MiToBo, some polygon pixels are not automatically included in the final 
+   * mask. They can be added by setting 'includePolyPixels' to true.
    * 
    * @param w Image width.
    * @param h Image height.
@@ -369,40 +397,230 @@ public class MTBPolygon2D extends ALDData
    * @return Binary mask of size height times width, 0= outside / 1=inside.
    */
   public int[][] getBinaryMask(int w, int h, boolean includePolyPixels) {
-    ImagePlus img = NewImage.createByteImage("", w, h, 1, NewImage.FILL_WHITE);
-    ImageProcessor ip = img.getProcessor();
-    int[] xps = new int[this.getPointNum()];
-    int[] yps = new int[this.getPointNum()];
-    int n = 0;
-    for (Point2D.Double p : this.points) {
-      xps[n] = (int) (p.x + 0.5);
-      yps[n] = (int) (p.y + 0.5);
-      n++;
-    }    
-    Polygon awtPoly = new Polygon(xps, yps, this.getPointNum());
-    // background white, polygon black
-    ip.fillPolygon(awtPoly);
-    // transfer region information to result mask
     int[][] mask = new int[h][w];
-    for (int y = 0; y < h; ++y)
-      for (int x = 0; x < w; ++x)
-        if (ip.getPixel(x, y) == 0)
-          mask[y][x] = 1;
-    
-    // safety check: add potentially missing contour pixels
-    // (ImageJ uses scan-line polygon filling, but sometimes apparently
-    //  misses some of the contour pixels themselves which we want to be
-    //  part of the polygon region...)
-    if (includePolyPixels) {
-    	for (int i=0;i<n; ++i) {
-    	// safety check if pixel is inside mask
-    	if (yps[i] >= 0 && yps[i] < h && xps[i] >= 0 && xps[i] < w)
-    		mask[yps[i]][xps[i]] = 1;
-    	} 
-    }	
+    this.getPixelSpans(w, h, includePolyPixels).fillMask(mask, 0, 0, 1);
     return mask;
   }
 
+  /**
+   * Get the pixel spans covered by the polygon within the given window.
+   * <p>
+   * The spans are calculated by a scanline rasterization with edge table,
+   * pixels with centers inside of the polygon according to the even-odd
+   * rule are included. Polygon points are rounded to the nearest pixel 
+   * prior to rasterization. The result is cached and reused as long as the 
+   * polygon does not change, i.e. multiple calls with the same parameters 
+   * are cheap. Note that the returned object must not be modified.
+   * 
+   * @param w Width of clipping window starting at (0,0).
+   * @param h Height of clipping window starting at (0,0).
+   * @param includePolyPixels Ensure that polygon pixels belong to the spans.
+   * @return Row-wise pixel spans of the polygon.
+   */
+  public PixelSpans getPixelSpans(int w, int h, boolean includePolyPixels) {
+    if (   this.cachedSpans != null && this.cachedSpanWidth == w 
+        && this.cachedSpanHeight == h 
+        && this.cachedSpanPolyPixels == includePolyPixels
+        && this.cachedSpanCoordsValid())
+      return this.cachedSpans;
+    int n = this.getPointNum();
+    int[] xps = new int[n];
+    int[] yps = new int[n];
+    double[] coords = new double[2*n];
+    for (int i = 0; i < n; ++i) {
+      Point2D.Double p = this.points.elementAt(i);
+      xps[i] = (int) (p.x + 0.5);
+      yps[i] = (int) (p.y + 0.5);
+      coords[2*i] = p.x;
+      coords[2*i+1] = p.y;
+    }
+    this.cachedSpans = 
+    	rasterize(xps, yps, n, 0, 0, w - 1, h - 1, includePolyPixels);
+    this.cachedSpanCoords = coords;
+    this.cachedSpanWidth = w;
+    this.cachedSpanHeight = h;
+    this.cachedSpanPolyPixels = includePolyPixels;
+    return this.cachedSpans;
+  }
+
+  /**
+   * Checks if the polygon points still match the cached spans.
+   * @return True if the cached spans are up-to-date.
+   */
+  private boolean cachedSpanCoordsValid() {
+    if (this.cachedSpanCoords.length != 2 * this.getPointNum())
+      return false;
+    for (int i = 0; i < this.getPointNum(); ++i) {
+      Point2D.Double p = this.points.elementAt(i);
+      if (   this.cachedSpanCoords[2*i] != p.x 
+          || this.cachedSpanCoords[2*i+1] != p.y)
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Scanline rasterization of a polygon with integer vertex coordinates.
+   * <p>
+   * The polygon is sampled at pixel centers, i.e. a pixel (x,y) belongs to
+   * the polygon if the point (x+0.5,y+0.5) lies inside according to the 
+   * even-odd rule. Edges are organized in an edge table sorted by their 
+   * first row, per row only the active edges are intersected with the 
+   * scanline. The result is clipped to the given window.
+   * 
+   * @param xps	x-coordinates of polygon vertices.
+   * @param yps	y-coordinates of polygon vertices.
+   * @param n		Number of vertices.
+   * @param xMin	Minimal x-coordinate of clipping window.
+   * @param yMin	Minimal y-coordinate of clipping window.
+   * @param xMax	Maximal x-coordinate of clipping window.
+   * @param yMax	Maximal y-coordinate of clipping window.
+   * @param includeVertices	If true, vertex pixels are added to the spans.
+   * @return	Pixel spans of the polygon.
+   */
+  public static PixelSpans rasterize(int[] xps, int[] yps, int n,
+  		int xMin, int yMin, int xMax, int yMax, boolean includeVertices) {
+  	int polyMinY = Integer.MAX_VALUE, polyMaxY = Integer.MIN_VALUE;
+  	for (int i = 0; i < n; ++i) {
+  		polyMinY = Math.min(polyMinY, yps[i]);
+  		polyMaxY = Math.max(polyMaxY, yps[i]);
+  	}
+  	int rowStart = Math.max(yMin, polyMinY);
+  	int rowEnd = Math.min(yMax, polyMaxY);
+  	if (n == 0 || rowStart > rowEnd || xMin > xMax)
+  		return new PixelSpans(0, new int[0][]);
+  	
+  	// edge table, non-horizontal edges sorted by their first row; an edge
+  	// from y0 to y1 (y0 < y1) intersects scanlines y0 to y1-1
+  	int[] edgeX0 = new int[n], edgeY0 = new int[n], edgeY1 = new int[n];
+  	int[] edgeDX = new int[n];
+  	long[] edgeOrder = new long[n];
+  	int edgeNum = 0;
+  	for (int i = 0; i < n; ++i) {
+  		int j = (i + 1) % n;
+  		if (yps[i] == yps[j])
+  			continue;
+  		int a = (yps[i] < yps[j]) ? i : j;
+  		int b = (a == i) ? j : i;
+  		edgeX0[edgeNum] = xps[a];
+  		edgeY0[edgeNum] = yps[a];
+  		edgeY1[edgeNum] = yps[b];
+  		edgeDX[edgeNum] = xps[b] - xps[a];
+  		edgeOrder[edgeNum] = 
+  				((long)(yps[a] - polyMinY) << 32) | edgeNum;
+  		++edgeNum;
+  	}
+  	Arrays.sort(edgeOrder, 0, edgeNum);
+  	
+  	// vertices sorted by row, only required if vertices are to be included
+  	long[] vertexOrder = null;
+  	if (includeVertices) {
+  		vertexOrder = new long[n];
+  		for (int i = 0; i < n; ++i)
+  			vertexOrder[i] = ((long)(yps[i] - polyMinY) << 32) 
+  				| (xps[i] & 0xffffffffL);
+  		Arrays.sort(vertexOrder);
+  	}
+
+  	int[][] rows = new int[rowEnd - rowStart + 1][];
+  	int[] active = new int[edgeNum];
+  	int activeNum = 0;
+  	int nextEdge = 0, nextVertex = 0;
+  	double[] crossings = new double[edgeNum];
+  	int[] spanBuffer = new int[16];
+  	for (int y = rowStart; y <= rowEnd; ++y) {
+  		// activate new edges and remove finished ones
+  		while (   nextEdge < edgeNum 
+  				   && edgeY0[(int)edgeOrder[nextEdge]] <= y) {
+  			active[activeNum++] = (int)edgeOrder[nextEdge++];
+  		}
+  		int kept = 0;
+  		for (int k = 0; k < activeNum; ++k) {
+  			if (edgeY1[active[k]] > y)
+  				active[kept++] = active[k];
+  		}
+  		activeNum = kept;
+  		
+  		// intersect scanline through pixel centers with active edges, the
+  		// numerator is calculated first to get exact results on pixel borders
+  		for (int k = 0; k < activeNum; ++k) {
+  			int e = active[k];
+  			double cx = edgeX0[e] + ((2.0 * (y - edgeY0[e]) + 1) * edgeDX[e])
+  					/ (2.0 * (edgeY1[e] - edgeY0[e]));
+  			// insertion sort, usually there are only a few crossings
+  			int pos = k;
+  			while (pos > 0 && crossings[pos-1] > cx) {
+  				crossings[pos] = crossings[pos-1];
+  				--pos;
+  			}
+  			crossings[pos] = cx;
+  		}
+  		
+  		// pixels with centers between pairs of crossings are inside
+  		int spanNum = 0;
+  		for (int k = 0; k + 1 < activeNum; k += 2) {
+  			int xs = Math.max(xMin, (int)Math.ceil(crossings[k] - 0.5));
+  			int xe = Math.min(xMax, (int)Math.ceil(crossings[k+1] - 0.5) - 1);
+  			if (xs > xe)
+  				continue;
+  			if (spanNum + 2 > spanBuffer.length)
+  				spanBuffer = Arrays.copyOf(spanBuffer, 2 * spanBuffer.length);
+  			spanBuffer[spanNum++] = xs;
+  			spanBuffer[spanNum++] = xe;
+  		}
+  		
+  		// add vertex pixels of this row
+  		boolean unsorted = false;
+  		if (includeVertices) {
+  			while (   nextVertex < n 
+  					   && (int)(vertexOrder[nextVertex] >> 32) + polyMinY < y)
+  				++nextVertex;
+  			while (   nextVertex < n 
+  					   && (int)(vertexOrder[nextVertex] >> 32) + polyMinY == y) {
+  				int vx = (int)vertexOrder[nextVertex++];
+  				if (vx < xMin || vx > xMax)
+  					continue;
+  				if (spanNum + 2 > spanBuffer.length)
+  					spanBuffer = Arrays.copyOf(spanBuffer, 2 * spanBuffer.length);
+  				spanBuffer[spanNum++] = vx;
+  				spanBuffer[spanNum++] = vx;
+  				unsorted = true;
+  			}
+  		}
+  		rows[y - rowStart] = 
+  			unsorted ? mergeSpans(spanBuffer, spanNum) 
+  			         : Arrays.copyOf(spanBuffer, spanNum);
+  	}
+  	return new PixelSpans(rowStart, rows);
+  }
+
+  /**
+   * Sorts and merges overlapping or adjacent spans.
+   * @param spans	Spans as pairs of first and last x-coordinate.
+   * @param num		Number of valid entries in the span array.
+   * @return	Sorted list of disjoint spans.
+   */
+  private static int[] mergeSpans(int[] spans, int num) {
+  	long[] sorted = new long[num / 2];
+  	for (int k = 0; k < num; k += 2)
+  		sorted[k/2] = ((long)spans[k] << 32) | (spans[k+1] & 0xffffffffL);
+  	Arrays.sort(sorted);
+  	int[] result = new int[num];
+  	int m = 0;
+  	for (long s: sorted) {
+  		int xs = (int)(s >> 32);
+  		int xe = (int)s;
+  		if (m > 0 && xs <= result[m-1] + 1) {
+  			result[m-1] = Math.max(result[m-1], xe);
+  		}
+  		else {
+  			result[m++] = xs;
+  			result[m++] = xe;
+  		}
+  	}
+  	return Arrays.copyOf(result, m);
+  }
+
 		/**
 		 * Checks if (simple!) polygon points are sorted counter-clockwise.
 		 * <p>
@@ -566,15 +784,16 @@ public class MTBPolygon2D extends ALDData
       npoints.add(this.points.get(i));
     }
     this.points = npoints;
+    this.cachedSpans = null;
   }
 
   /**
    * Determines if a point lies inside a polygon or on its boundary.
    * <p>
-   * Use this method only for single point testing. If a couple of points should
-   * be tested, use the getBinaryMask method to get the region inside the
-   * polygon and test the points whether they are inside (value = 1) or outside
-   * (value = 0) the polygon.
+   * The point is rounded to the nearest pixel which is then looked up in 
+   * the pixel spans of the polygon including the polygon pixels, see 
+   * {@link #getPixelSpans(int, int, boolean)}. As the spans are cached, 
+   * repeated queries on the same polygon are cheap. 
    * 
    * @param px
    *          x coordinate of point to check
@@ -587,12 +806,70 @@ public class MTBPolygon2D extends ALDData
    * @return True, if point lies on the boundary or inside of the polygon.
    */
   public boolean contains(double px, double py, int w, int h) {
-    int[][] mask = this.getBinaryMask(w, h);
-    // test whether the point is inside the polygon region or not
-    if (mask[(int) Math.round(px)][(int) Math.round(py)] == 1) {
-      return true;
-    }
-		return false;
+  	int x = (int) Math.round(px);
+  	int y = (int) Math.round(py);
+  	if (x < 0 || x >= w || y < 0 || y >= h)
+  		return false;
+  	return this.getPixelSpans(w, h, true).contains(x, y);
+  }
+
+  /**
+   * Checks if a point lies inside of the polygon according to the 
+   * even-odd rule.
+   * <p>
+   * In contrast to {@link #containsPoint(double, double)} no external
+   * library is involved, and the polygon is not required to be simple. 
+   * The test is based on counting crossings of a horizontal ray with the 
+   * polygon's edges. Points on the boundary may be classified either way.
+   * 
+   * @param x		x-coordinate of the point to test.
+   * @param y		y-coordinate of the point to test.
+   * @return	True, if the point lies inside.
+   */
+  public boolean containsPointEvenOdd(double x, double y) {
+  	boolean inside = false;
+  	int n = this.getPointNum();
+  	for (int i = 0, j = n - 1; i < n; j = i++) {
+  		Point2D.Double pi = this.points.elementAt(i);
+  		Point2D.Double pj = this.points.elementAt(j);
+  		if (   (pi.y > y) != (pj.y > y)
+  				&& x < (pj.x - pi.x) * (y - pi.y) / (pj.y - pi.y) + pi.x)
+  			inside = !inside;
+  	}
+  	return inside;
+  }
+
+  /**
+   * Calculates the winding number of the polygon around the given point.
+   * <p>
+   * A non-zero winding number indicates that the point is enclosed by the
+   * polygon according to the non-zero rule. The sign depends on the 
+   * orientation of the polygon, i.e. counter-clockwise ordered polygons 
+   * yield positive numbers in a coordinate system with the y-axis 
+   * pointing upwards.
+   * 
+   * @param x		x-coordinate of the point.
+   * @param y		y-coordinate of the point.
+   * @return	Winding number.
+   */
+  public int getWindingNumber(double x, double y) {
+  	int wn = 0;
+  	int n = this.getPointNum();
+  	for (int i = 0, j = n - 1; i < n; j = i++) {
+  		Point2D.Double a = this.points.elementAt(j);
+  		Point2D.Double b = this.points.elementAt(i);
+  		// sign of the cross product indicates if point is left of edge
+  		double isLeft = (b.x - a.x) * (y - a.y) - (x - a.x) * (b.y - a.y);
+  		if (a.y <= y) {
+  			if (b.y > y && isLeft > 0)
+  				++wn;
+  		}
+  		else {
+  			if (b.y <= y && isLeft < 0)
+  				--wn;
+  		}
+  	}
+  	return wn;
   }
 
   /**
@@ -687,6 +964,7 @@ public class MTBPolygon2D extends ALDData
 		this.points = 
 			MTBPolygon2D_GeoPolygonsWrapper.makePolySimple(this).getPoints();
 		this.isClosed = true;
+		this.cachedSpans = null;
 	}
 
   /**
@@ -1414,4 +1692,187 @@ public class MTBPolygon2D extends ALDData
           - pointToTest.y) < 0.0001);
     }
   }
+
+  /**
+   * Row-wise pixel spans of a rasterized polygon.
+   * <p>
+   * For each row the spans are stored as sorted, disjoint pairs of first and
+   * last x-coordinate of the span, both inclusive.
+   * 
+   * @author moeller
+   */
+  public static class PixelSpans {
+
+  	/**
+  	 * First row with spans.
+  	 */
+  	private final int firstRow;
+  	
+  	/**
+  	 * Spans per row, beginning with {@link #firstRow}.
+  	 */
+  	private final int[][] rowSpans;
+
+  	/**
+  	 * Default constructor.
+  	 * @param yStart	First row.
+  	 * @param spans		Spans per row.
+  	 */
+  	protected PixelSpans(int yStart, int[][] spans) {
+  		this.firstRow = yStart;
+  		this.rowSpans = spans;
+  	}
+  	
+  	/**
+  	 * Get first row covered by the spans.
+  	 * @return	Minimal y-coordinate.
+  	 */
+  	public int getFirstRow() {
+  		return this.firstRow;
+  	}
+
+  	/**
+  	 * Get last row covered by the spans.
+  	 * @return	Maximal y-coordinate, smaller than first row if empty.
+  	 */
+  	public int getLastRow() {
+  		return this.firstRow + this.rowSpans.length - 1;
+  	}
+  	
+  	/**
+  	 * Get spans of a row.
+  	 * <p>
+  	 * The returned array must not be modified.
+  	 * 
+  	 * @param y	Row.
+  	 * @return	Pairs of first and last x-coordinates, empty if row is not 
+  	 * 					covered.
+  	 */
+  	public int[] getSpans(int y) {
+  		if (y < this.firstRow || y > this.getLastRow())
+  			return new int[0];
+  		return this.rowSpans[y - this.firstRow];
+  	}
+
+  	/**
+  	 * Checks if a pixel is covered by the spans.
+  	 * @param x	x-coordinate of pixel.
+  	 * @param y	y-coordinate of pixel.
+  	 * @return	True if pixel is covered.
+  	 */
+  	public boolean contains(int x, int y) {
+  		if (y < this.firstRow || y > this.getLastRow())
+  			return false;
+  		int[] spans = this.rowSpans[y - this.firstRow];
+  		// binary search on span pairs
+  		int lo = 0, hi = spans.length / 2 - 1;
+  		while (lo <= hi) {
+  			int mid = (lo + hi) >>> 1;
+  			if (x < spans[2*mid])
+  				hi = mid - 1;
+  			else if (x > spans[2*mid+1])
+  				lo = mid + 1;
+  			else
+  				return true;
+  		}
+  		return false;
+  	}
+
+  	/**
+  	 * Get number of covered pixels.
+  	 * @return	Pixel count.
+  	 */
+  	public int getArea() {
+  		int area = 0;
+  		for (int[] spans: this.rowSpans)
+  			for (int k = 0; k < spans.length; k += 2)
+  				area += spans[k+1] - spans[k] + 1;
+  		return area;
+  	}
+
+  	/**
+  	 * Sets all covered pixels in a mask to the given value.
+  	 * <p>
+  	 * Pixel (x,y) is mapped to mask entry [y-yoff][x-xoff], entries outside
+  	 * of the mask are ignored.
+  	 * 
+  	 * @param mask	Mask to fill, indexed as [y][x].
+  	 * @param xoff	Offset in x.
+  	 * @param yoff	Offset in y.
+  	 * @param value	Value to set.
+  	 */
+  	public void fillMask(int[][] mask, int xoff, int yoff, int value) {
+  		for (int r = 0; r < this.rowSpans.length; ++r) {
+  			int my = this.firstRow + r - yoff;
+  			if (my < 0 || my >= mask.length)
+  				continue;
+  			int[] maskRow = mask[my];
+  			int[] spans = this.rowSpans[r];
+  			for (int k = 0; k < spans.length; k += 2) {
+  				int xs = Math.max(0, spans[k] - xoff);
+  				int xe = Math.min(maskRow.length - 1, spans[k+1] - xoff);
+  				if (xs <= xe)
+  					Arrays.fill(maskRow, xs, xe + 1, value);
+  			}
+  		}
+  	}
+
+  	/**
+  	 * Merges the spans of several regions into disjoint spans per row.
+  	 * <p>
+  	 * The effort is proportional to the number of spans rather than the 
+  	 * size of the image, apart from allocating one array per row.
+  	 * 
+  	 * @param regions	Spans of the regions, null entries are ignored.
+  	 * @param height	Height of the image, all spans have to lie inside.
+  	 * @return	Array indexed by row, each entry contains start and end 
+  	 * 					x-coordinates of disjoint spans in ascending order, rows not
+  	 * 					covered by any region refer to empty arrays.
+  	 */
+  	public static int[][] union(PixelSpans[] regions, int height) {
+  		// collect spans of all regions per row, start and end are packed 
+  		// into a single value to sort them by their start coordinate
+  		int[] rowCounts = new int[height];
+  		for (PixelSpans s : regions) {
+  			if (s == null)
+  				continue;
+  			for (int y = s.getFirstRow(); y <= s.getLastRow(); ++y)
+  				rowCounts[y] += s.getSpans(y).length / 2;
+  		}
+  		long[][] packed = new long[height][];
+  		for (int y = 0; y < height; ++y)
+  			packed[y] = new long[rowCounts[y]];
+  		Arrays.fill(rowCounts, 0);
+  		for (PixelSpans s : regions) {
+  			if (s == null)
+  				continue;
+  			for (int y = s.getFirstRow(); y <= s.getLastRow(); ++y) {
+  				int[] row = s.getSpans(y);
+  				for (int k = 0; k < row.length; k += 2)
+  					packed[y][rowCounts[y]++] = ((long)row[k] << 32) | row[k+1];
+  			}
+  		}
+  		// merge overlapping and adjacent spans
+  		int[][] merged = new int[height][];
+  		int[] buffer = new int[16];
+  		for (int y = 0; y < height; ++y) {
+  			long[] row = packed[y];
+  			Arrays.sort(row);
+  			int num = 0;
+  			for (long span : row) {
+  				int start = (int)(span >>> 32), end = (int)span;
+  				if (num > 0 && start <= buffer[num-1] + 1) {
+  					buffer[num-1] = Math.max(buffer[num-1], end);
+  					continue;
+  				}
+  				if (num + 2 > buffer.length)
+  					buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+  				buffer[num++] = start;
+  				buffer[num++] = end;
+  			}
+  			merged[y] = Arrays.copyOf(buffer, num);
+  		}
+  		return merged;
+  	}
+  }
 }
@@ -25,6 +25,8 @@
 package de.unihalle.informatik.MiToBo.core.datatypes;
 
 import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Random;
 import java.util.Vector;
@@ -87,6 +89,37 @@ public class MTBRegion2D implements MTBRegionInterface {
 		 */
 		private int area = 0;
 
+		/**
+		 * Maximal order of moments which are accumulated on adding pixels.
+		 */
+		private static final int MAX_CACHED_MOMENT_ORDER = 3;
+
+		/**
+		 * Binomial coefficients required to shift cached moments.
+		 */
+		private static final double[][] BINOMIALS = 
+			{ {1, 0, 0, 0}, {1, 1, 0, 0}, {1, 2, 1, 0}, {1, 3, 3, 1} };
+
+		/**
+		 * Accumulated raw moments up to order {@link #MAX_CACHED_MOMENT_ORDER}.
+		 * <p>
+		 * To avoid numerical cancellation for regions far away from the image 
+		 * origin the moments are taken relative to the first pixel of the region, 
+		 * i.e., relative to ({@link #momentOrigin_x}, {@link #momentOrigin_y}).
+		 * The moment of order (p,q) is stored at index (p+q)*(p+q+1)/2 + q.
+		 */
+		private double[] cachedMoments = new double[10];
+
+		/**
+		 * Reference point of cached moments in x.
+		 */
+		private double momentOrigin_x = 0;
+
+		/**
+		 * Reference point of cached moments in y.
+		 */
+		private double momentOrigin_y = 0;
+
 		/**
 		 * Construct a new empty MTBRegion2D object.
 		 */
@@ -95,6 +128,7 @@ public class MTBRegion2D implements MTBRegionInterface {
 				this.com_x = 0.0f;
 				this.com_y = 0.0f;
 				this.area = 0;
+				this.resetCachedMoments();
 		}
 
 		/**
@@ -265,6 +299,7 @@ public class MTBRegion2D implements MTBRegionInterface {
 				this.com_x = this.com_x + x;
 				this.com_y = this.com_y + y;
 				this.points.addElement(new Point2D.Double(x, y));
+				this.accumulateMoments(x, y);
 		}
 
 		/**
@@ -279,6 +314,7 @@ public class MTBRegion2D implements MTBRegionInterface {
 				this.com_x += p.getX();
 				this.com_y += p.getY();
 				this.points.addElement(p);
+				this.accumulateMoments(p.x, p.y);
 		}
 
 		/**
@@ -294,6 +330,9 @@ public class MTBRegion2D implements MTBRegionInterface {
 		/**
 		 * Join a region with this region. New point objects are created for the new
 		 * region.
+		 * <p>
+		 * The cached moments of the new region are updated while its pixels are 
+		 * added, i.e., no further pass over the point list is required later on.
 		 * 
 		 * @param reg
 		 *          region to join
@@ -301,25 +340,22 @@ public class MTBRegion2D implements MTBRegionInterface {
 		 */
 		public MTBRegion2D join(MTBRegion2D reg) {
 				int x, y;
-				boolean exists;
 				MTBRegion2D r = new MTBRegion2D();
 				r.id = this.id;
+				HashSet<Long> existing = new HashSet<Long>(); 
 				// add pixels of this region
 				for (int i = 0; i < this.points.size(); i++) {
-						r.addPixel((int) this.points.get(i).x, (int) this.points.get(i).y);
+						x = (int) this.points.get(i).x;
+						y = (int) this.points.get(i).y;
+						r.addPixel(x, y);
+						existing.add(Long.valueOf(((long)x << 32) | (y & 0xffffffffL)));
 				}
 				// add pixels of region 'reg' if they do not already exist in this region
 				for (int j = 0; j < reg.points.size(); j++) {
-						exists = false;
 						x = (int) reg.points.get(j).x;
 						y = (int) reg.points.get(j).y;
-						for (int i = 0; i < this.points.size(); i++) {
-								if ((int) this.points.get(i).x == x && (int) this.points.get(i).y == y) {
-										exists = true;
-										break;
-								}
-						}
-						if (!exists) {
+						if (!existing.contains(
+								Long.valueOf(((long)x << 32) | (y & 0xffffffffL)))) {
 								r.addPixel(x, y);
 						}
 				}
@@ -591,30 +627,13 @@ public class MTBRegion2D implements MTBRegionInterface {
 			if (p == 0 && q == 0)
 				return this.area;
 
-			double Mpq = 0.0;
-
-			if (p == 1 && q == 0) {
-				for (int i = 0; i < this.area; i++) {
-					Mpq += this.points.elementAt(i).x;
-				}
-				return Mpq;
-			}
-				
-			if (p == 0 && q == 1) {
-				for (int i = 0; i < this.area; i++) {
-					Mpq += this.points.elementAt(i).y;
-				}
-				return Mpq;				
-			}
-
-			if (p == 1 && q == 1) {
-				for (int i = 0; i < this.area; i++) {
-					Mpq += this.points.elementAt(i).x * this.points.elementAt(i).y;
-				}
-				return Mpq;				
-			}
+			// moments up to order 3 are derived from the cached moments
+			if (p >= 0 && q >= 0 && p + q <= MAX_CACHED_MOMENT_ORDER)
+				return this.shiftCachedMoment(p, q, 
+						this.momentOrigin_x, this.momentOrigin_y);
 
 			// moments of arbitrary order
+			double Mpq = 0.0;
 			Point2D.Double pt;
 			for (int i = 0; i < this.area; i++) {
 				pt = this.points.elementAt(i);
@@ -632,6 +651,9 @@ public class MTBRegion2D implements MTBRegionInterface {
 		 * \\mu_x &=& \\frac{1}{|R|} \\sum_{(x,y) \\in R} x \\\\
 		 * \\mu_y &=& \\frac{1}{|R|} \\sum_{(x,y) \\in R} y
 		 * \\end{eqnarray*}}
+		 * <p>
+		 * Central moments up to order 3 are derived in constant time from the 
+		 * raw moments accumulated while adding pixels to the region.
 		 * 
 		 * @param p
 		 *          order of x-component
@@ -644,52 +666,28 @@ public class MTBRegion2D implements MTBRegionInterface {
 			if (p == 0 && q == 0) {
 				return this.area;
 			}
+			if (this.area == 0) {
+				return 0;
+			}
 
+			// center of mass relative to origin of cached moments
 			double m00 = this.area;
-			double xCtr = this.getMoment(1, 0) / m00;
-			double yCtr = this.getMoment(0, 1) / m00;
+			double xCtrRel = this.cachedMoments[1] / m00;
+			double yCtrRel = this.cachedMoments[2] / m00;
 
-			double cMpq = 0.0;
-			
-			if (p == 1 && q == 0) {
-				for (int i = 0; i < this.area; i++) {
-					cMpq += this.points.elementAt(i).x - xCtr;
-				}
-				return cMpq;
-			}
-			if (p == 0 && q == 1) {
-				for (int i = 0; i < this.area; i++) {
-					cMpq += this.points.elementAt(i).y - yCtr;
-				}
-				return cMpq;
-			}
-			if (p == 1 && q == 1) {
-				for (int i = 0; i < this.area; i++) {
-					cMpq += (this.points.elementAt(i).x - xCtr) * (this.points.elementAt(i).y - yCtr);
-				}
-				return cMpq;
-			}
-			if (p == 2 && q == 0) {
-				for (int i = 0; i < this.area; i++) {
-					cMpq += (this.points.elementAt(i).x - xCtr) * (this.points.elementAt(i).x - xCtr);
-				}
-				return cMpq;
-			}
-			if (p == 0 && q == 2) {
-				for (int i = 0; i < this.area; i++) {
-					cMpq += (this.points.elementAt(i).y - yCtr) * (this.points.elementAt(i).y - yCtr);
-				}
-				return cMpq;
-			}
+			if (p >= 0 && q >= 0 && p + q <= MAX_CACHED_MOMENT_ORDER)
+				return this.shiftCachedMoment(p, q, -xCtrRel, -yCtrRel);
 
 			// central moment of arbitrary order
+			double xCtr = this.momentOrigin_x + xCtrRel;
+			double yCtr = this.momentOrigin_y + yCtrRel;
+			double cMpq = 0.0;
 			Point2D.Double pt;
 			for (int i = 0; i < this.area; i++) {
 				pt = this.points.elementAt(i);
 				cMpq += Math.pow(pt.x - xCtr, p) * Math.pow(pt.y - yCtr, q);
 			}
 			return cMpq;
-
 		}
 
 		/**
@@ -1030,15 +1028,89 @@ public class MTBRegion2D implements MTBRegionInterface {
 		protected void hookPointsUpdated() {
 			this.com_x = 0;
 			this.com_y = 0;
+			this.resetCachedMoments();
 			if (this.points != null) {
 				this.area = this.points.size();
 				for (int i = 0; i < this.points.size(); ++i) {
 					this.com_x += this.points.elementAt(i).x;
 					this.com_y += this.points.elementAt(i).y;
+					this.accumulateMoments(
+							this.points.elementAt(i).x, this.points.elementAt(i).y);
 				}
 			}
 			else {
 				this.area = 0;
 			}
 		}
+
+		/**
+		 * Clears the cached moments.
+		 */
+		private void resetCachedMoments() {
+			if (this.cachedMoments == null)
+				this.cachedMoments = new double[10];
+			else
+				Arrays.fill(this.cachedMoments, 0);
+			this.momentOrigin_x = 0;
+			this.momentOrigin_y = 0;
+		}
+
+		/**
+		 * Adds the contributions of a new pixel to the cached moments.
+		 * <p>
+		 * The first pixel added to an empty moment cache defines the origin
+		 * the moments are taken relative to.
+		 * 
+		 * @param x	x-coordinate of new pixel.
+		 * @param y	y-coordinate of new pixel.
+		 */
+		private void accumulateMoments(double x, double y) {
+			if (this.cachedMoments[0] == 0) {
+				this.momentOrigin_x = x;
+				this.momentOrigin_y = y;
+			}
+			double dx = x - this.momentOrigin_x;
+			double dy = y - this.momentOrigin_y;
+			double dxx = dx * dx;
+			double dyy = dy * dy;
+			double[] m = this.cachedMoments;
+			m[0] += 1;
+			m[1] += dx;
+			m[2] += dy;
+			m[3] += dxx;
+			m[4] += dx * dy;
+			m[5] += dyy;
+			m[6] += dxx * dx;
+			m[7] += dxx * dy;
+			m[8] += dx * dyy;
+			m[9] += dy * dyy;
+		}
+
+		/**
+		 * Computes a moment of order (p,q) with regard to a translated origin.
+		 * <p>
+		 * The moment is derived by binomial expansion from the cached moments, 
+		 * i.e., the result is the sum over all region pixels of the terms 
+		 * (dx + sx)^p * (dy + sy)^q with (dx,dy) being the pixel coordinates 
+		 * relative to the origin of the cache.
+		 * 
+		 * @param p		Order of x-component, p+q must not exceed 3.
+		 * @param q		Order of y-component, p+q must not exceed 3.
+		 * @param sx	Shift in x.
+		 * @param sy	Shift in y.
+		 * @return	Moment with regard to the shifted origin.
+		 */
+		private double shiftCachedMoment(int p, int q, double sx, double sy) {
+			double result = 0;
+			double[] m = this.cachedMoments;
+			for (int i = 0; i <= p; ++i) {
+				double fx = BINOMIALS[p][i] * Math.pow(sx, p - i);
+				for (int j = 0; j <= q; ++j) {
+					int order = i + j;
+					result += fx * BINOMIALS[q][j] * Math.pow(sy, q - j) 
+							* m[order * (order + 1) / 2 + j];
+				}
+			}
+			return result;
+		}
 }
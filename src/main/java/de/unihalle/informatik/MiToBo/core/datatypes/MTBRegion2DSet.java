@@ -24,6 +24,7 @@
 
 package de.unihalle.informatik.MiToBo.core.datatypes;
 
+import java.awt.geom.Point2D;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
@@ -85,7 +86,8 @@ public class MTBRegion2DSet extends ALDData
 		/**
 		 * The set of regions represented as a Vector.
 		 */
-		@ALDClassParameter(label="Set of regions") 
+		@ALDClassParameter(label="Set of regions", 
+			changeValueHook="hookRegionsUpdated") 
 		protected Vector<MTBRegion2D> regionSet;
 
 		/** 
@@ -93,6 +95,15 @@ public class MTBRegion2DSet extends ALDData
 		 */
 		private String info;
 
+		/**
+		 * Optional spatial index on the bounding boxes of the regions.
+		 * <p>
+		 * The index is built on demand and invalidated if the set changes.
+		 * Note that modifications of the regions themselves after the index was 
+		 * built are not detected, call {@link #invalidateSpatialIndex()} then.
+		 */
+		private transient MTBSpatialGridIndex2D spatialIndex = null;
+
 		/**
 		 * Standard constructor.
 		 */
@@ -397,6 +408,7 @@ public class MTBRegion2DSet extends ALDData
 		 */
 		public void clear() {
 				this.regionSet.clear();
+				this.spatialIndex = null;
 		}
 
 		/**
@@ -427,6 +439,7 @@ public class MTBRegion2DSet extends ALDData
 		 *          region to add
 		 */
 		public boolean add(MTBRegion2D region) {
+				this.spatialIndex = null;
 				return this.regionSet.add(region);
 		}
 
@@ -437,6 +450,7 @@ public class MTBRegion2DSet extends ALDData
 		 *          index of region to remove
 		 */
 		public void setElementAt(MTBRegion2D region, int i) {
+				this.spatialIndex = null;
 				this.regionSet.setElementAt(region, i);
 		}
 
@@ -447,6 +461,7 @@ public class MTBRegion2DSet extends ALDData
 		 *          index of region to remove
 		 */
 		public void removeElementAt(int i) {
+				this.spatialIndex = null;
 				this.regionSet.removeElementAt(i);
 		}
 		
@@ -470,6 +485,7 @@ public class MTBRegion2DSet extends ALDData
 				MTBRegion2D reg = iter.next();
 				if ( reg == regionToRemove) {
 					regionSet.remove(regionToRemove);
+					this.spatialIndex = null;
 					break;
 				}
 			}
@@ -531,6 +547,79 @@ public class MTBRegion2DSet extends ALDData
 				return avgSize / this.regionSet.size();
 		}
 
+		/**
+		 * Get the spatial index on the regions of this set.
+		 * <p>
+		 * The index is built on first request and kept until the set is 
+		 * modified. Bounding boxes and centers of mass of the regions are indexed,
+		 * the indices returned by queries refer to positions in this set.
+		 * 
+		 * @return Spatial index of the set.
+		 */
+		public MTBSpatialGridIndex2D getSpatialIndex() {
+				if (this.spatialIndex == null) {
+						int n = this.regionSet.size();
+						double[][] boxes = new double[n][];
+						double[][] centers = new double[n][];
+						for (int i = 0; i < n; ++i) {
+								MTBRegion2D r = this.regionSet.elementAt(i);
+								boxes[i] = r.getBoundingBox();
+								centers[i] = new double[] {
+									r.getCenterOfMass_X(), r.getCenterOfMass_Y() };
+						}
+						this.spatialIndex = new MTBSpatialGridIndex2D(boxes, centers);
+				}
+				return this.spatialIndex;
+		}
+
+		/**
+		 * Discards the spatial index, e.g., after regions have been modified.
+		 */
+		public void invalidateSpatialIndex() {
+				this.spatialIndex = null;
+		}
+
+		/**
+		 * Find the region containing the given pixel.
+		 * <p>
+		 * Only regions with bounding boxes containing the pixel are tested.
+		 * 
+		 * @param x		x-coordinate of pixel.
+		 * @param y		y-coordinate of pixel.
+		 * @return	Index of first region containing the pixel, -1 if none.
+		 */
+		public int findRegionContaining(double x, double y) {
+				Point2D.Double p = new Point2D.Double(x, y);
+				for (int i: this.getSpatialIndex().getBoxesContaining(x, y)) {
+						if (this.regionSet.elementAt(i).contains(p))
+								return i;
+				}
+				return -1;
+		}
+
+		/**
+		 * Find all regions with bounding boxes overlapping the given box.
+		 * 
+		 * @param bbox	Query box, [xmin, ymin, xmax, ymax].
+		 * @return	Indices of regions in ascending order.
+		 */
+		public int[] findRegionsOverlapping(double[] bbox) {
+				return this.getSpatialIndex().getBoxesOverlapping(
+						bbox[0], bbox[1], bbox[2], bbox[3]);
+		}
+
+		/**
+		 * Find the regions with centers of mass closest to the given point.
+		 * 
+		 * @param x		x-coordinate of query point.
+		 * @param y		y-coordinate of query point.
+		 * @param k		Number of regions to find.
+		 * @return	Indices of at most k regions, sorted by ascending distance.
+		 */
+		public int[] findNearestRegions(double x, double y, int k) {
+				return this.getSpatialIndex().getNearestCenters(x, y, k);
+		}
+
 		public MTBRegion2DSet selectLargeRegions(int minSize)
 		    throws ALDOperatorException, ALDProcessingDAGException {
 				RegionSelector rs = new RegionSelector(this, minSize);
@@ -578,6 +667,13 @@ public class MTBRegion2DSet extends ALDData
 				}
 		}
 
+		/**
+		 * Function to update object state after setting new region list.
+		 */
+		protected void hookRegionsUpdated() {
+				this.spatialIndex = null;
+		}
+
 		@Override
 		public Iterator<MTBRegion2D> iterator() {
 			Iterator<MTBRegion2D> iter = regionSet.iterator();
@@ -28,6 +28,7 @@ import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Vector;
 
 import de.unihalle.informatik.Alida.annotations.ALDClassParameter;
@@ -71,6 +72,31 @@ public class MTBRegion3D extends ALDData {
 		private final double compactFactor = 0.2309008;	// = 3^(5/3)/(5*(4*pi)^(2/3))
 		private final double five_thirds = 1.6666667;
 
+		/**
+		 * Maximal order of moments which are accumulated on adding points.
+		 */
+		private static final int MAX_CACHED_MOMENT_ORDER = 3;
+
+		/**
+		 * Binomial coefficients required to shift cached moments.
+		 */
+		private static final double[][] BINOMIALS = 
+			{ {1, 0, 0, 0}, {1, 1, 0, 0}, {1, 2, 1, 0}, {1, 3, 3, 1} };
+
+		/**
+		 * Accumulated raw moments up to order {@link #MAX_CACHED_MOMENT_ORDER}.
+		 * <p>
+		 * The moment of order (p,q,r) is stored at index [p][q][r], entries with
+		 * p+q+r larger than 3 remain unused. To avoid numerical cancellation the 
+		 * moments are taken relative to the first point of the region.
+		 */
+		private double[][][] cachedMoments = new double[4][4][4];
+
+		/**
+		 * Reference point of cached moments, i.e. first point of the region.
+		 */
+		private double[] momentOrigin = new double[3];
+
 		/**
 		 * Construct a new MTBRegion3D object.
 		 */
@@ -80,6 +106,7 @@ public class MTBRegion3D extends ALDData {
 			this.volume = 0;
 			this.centroid = new MTBPoint3D();
 			this.id = 0;
+			this.updateCachedMoments();
 		}
 
 		/**
@@ -94,6 +121,7 @@ public class MTBRegion3D extends ALDData {
 			this.volume = p.size();
 			this.centroid = calcCentre(p);
 			this.id = 0;
+			this.updateCachedMoments();
 		}
 		
 		
@@ -109,6 +137,7 @@ public class MTBRegion3D extends ALDData {
 			this.volume = p.size();
 			this.centroid = calcCentre(p);
 			this.id = id;
+			this.updateCachedMoments();
 		}
 
 		/**
@@ -126,6 +155,7 @@ public class MTBRegion3D extends ALDData {
 			for (int i = 0; i < pts.length; i++) {
 				this.points.add(new MTBPoint3D(pts[i]));
 			}
+			this.updateCachedMoments();
 		}
 		
 		public MTBXMLRegion3DType toXMLType() {
@@ -238,6 +268,7 @@ public class MTBRegion3D extends ALDData {
 				points.addElement(p);
 				volume++;
 				centroid.translate(p.getX(), p.getY(), p.getZ());
+				this.accumulateMoments(p.getX(), p.getY(), p.getZ());
 		}
 
 		/**
@@ -255,6 +286,7 @@ public class MTBRegion3D extends ALDData {
 				points.addElement(new MTBPoint3D(px, py, pz));
 				volume++;
 				centroid.translate(px, py, pz);
+				this.accumulateMoments(px, py, pz);
 		}
 
 		/**
@@ -276,6 +308,10 @@ public class MTBRegion3D extends ALDData {
 
 		
 		/**
+		 * Calculate moment of the region of order p,q,r.
+		 * <p>
+		 * Moments up to order 3 are derived in constant time from moments 
+		 * accumulated while adding points to the region.
 		 * 
 		 * @param p
 		 * @param q
@@ -284,6 +320,12 @@ public class MTBRegion3D extends ALDData {
 		 */
 		public double getMoment(int p, int q, int r)
 		{
+			if (   p >= 0 && q >= 0 && r >= 0 
+					&& p + q + r <= MAX_CACHED_MOMENT_ORDER) {
+				return this.shiftCachedMoment(p, q, r, this.momentOrigin[0],
+						this.momentOrigin[1], this.momentOrigin[2]);
+			}
+			
 			double m = 0;
 			
 			for(int i = 0; i < this.points.size(); i++)
@@ -297,6 +339,10 @@ public class MTBRegion3D extends ALDData {
 		
 		
 		/**
+		 * Calculate central moment of the region of order p,q,r.
+		 * <p>
+		 * Central moments up to order 3 are derived in constant time from 
+		 * moments accumulated while adding points to the region.
 		 * 
 		 * @param p
 		 * @param q
@@ -305,12 +351,24 @@ public class MTBRegion3D extends ALDData {
 		 */
 		public double getCentralMoment(int p, int q, int r)
 		{
-			double cm = 0;
+			double volume = this.cachedMoments[0][0][0];
+			if (volume == 0)
+				return 0;
 			
-			double volume = getMoment(0,0,0);
-			double mx = getMoment(1,0,0) / volume;
-			double my = getMoment(0,1,0) / volume;
-			double mz = getMoment(0,0,1) / volume;
+			// center of mass relative to the origin of the cached moments
+			double mxRel = this.cachedMoments[1][0][0] / volume;
+			double myRel = this.cachedMoments[0][1][0] / volume;
+			double mzRel = this.cachedMoments[0][0][1] / volume;
+
+			if (   p >= 0 && q >= 0 && r >= 0 
+					&& p + q + r <= MAX_CACHED_MOMENT_ORDER) {
+				return this.shiftCachedMoment(p, q, r, -mxRel, -myRel, -mzRel);
+			}
+
+			double cm = 0;
+			double mx = this.momentOrigin[0] + mxRel;
+			double my = this.momentOrigin[1] + myRel;
+			double mz = this.momentOrigin[2] + mzRel;
 			
 			for(int i = 0; i < this.points.size(); i++)
 			{
@@ -501,5 +559,90 @@ public class MTBRegion3D extends ALDData {
 					this.volume = 0;
 					this.centroid = null;
 				}
+				this.updateCachedMoments();
+			}
+
+			/**
+			 * Recomputes the cached moments from the current point list.
+			 */
+			private void updateCachedMoments() {
+				if (this.cachedMoments == null) {
+					this.cachedMoments = new double[4][4][4];
+					this.momentOrigin = new double[3];
+				}
+				for (double[][] mp: this.cachedMoments)
+					for (double[] mq: mp)
+						Arrays.fill(mq, 0);
+				Arrays.fill(this.momentOrigin, 0);
+				if (this.points == null)
+					return;
+				for (MTBPoint3D p: this.points)
+					this.accumulateMoments(p.x, p.y, p.z);
+			}
+
+			/**
+			 * Adds the contributions of a new point to the cached moments.
+			 * <p>
+			 * The first point added to an empty moment cache defines the origin
+			 * the moments are taken relative to.
+			 * 
+			 * @param x	x-coordinate of new point.
+			 * @param y	y-coordinate of new point.
+			 * @param z	z-coordinate of new point.
+			 */
+			private void accumulateMoments(double x, double y, double z) {
+				if (this.cachedMoments[0][0][0] == 0) {
+					this.momentOrigin[0] = x;
+					this.momentOrigin[1] = y;
+					this.momentOrigin[2] = z;
+				}
+				double dx = x - this.momentOrigin[0];
+				double dy = y - this.momentOrigin[1];
+				double dz = z - this.momentOrigin[2];
+				double px = 1;
+				for (int p = 0; p <= MAX_CACHED_MOMENT_ORDER; ++p) {
+					double pxy = px;
+					for (int q = 0; p + q <= MAX_CACHED_MOMENT_ORDER; ++q) {
+						double pxyz = pxy;
+						for (int r = 0; p + q + r <= MAX_CACHED_MOMENT_ORDER; ++r) {
+							this.cachedMoments[p][q][r] += pxyz;
+							pxyz *= dz;
+						}
+						pxy *= dy;
+					}
+					px *= dx;
+				}
+			}
+
+			/**
+			 * Computes a moment of order (p,q,r) with regard to a translated origin.
+			 * <p>
+			 * The moment is derived by binomial expansion from the cached moments, 
+			 * i.e., the result is the sum over all points of the terms 
+			 * (dx+sx)^p * (dy+sy)^q * (dz+sz)^r with (dx,dy,dz) being the point
+			 * coordinates relative to the origin of the cache.
+			 * 
+			 * @param p		Order of x-component, p+q+r must not exceed 3.
+			 * @param q		Order of y-component, p+q+r must not exceed 3.
+			 * @param r		Order of z-component, p+q+r must not exceed 3.
+			 * @param sx	Shift in x.
+			 * @param sy	Shift in y.
+			 * @param sz	Shift in z.
+			 * @return	Moment with regard to the shifted origin.
+			 */
+			private double shiftCachedMoment(int p, int q, int r, 
+					double sx, double sy, double sz) {
+				double result = 0;
+				for (int i = 0; i <= p; ++i) {
+					double fx = BINOMIALS[p][i] * Math.pow(sx, p - i);
+					for (int j = 0; j <= q; ++j) {
+						double fxy = fx * BINOMIALS[q][j] * Math.pow(sy, q - j);
+						for (int k = 0; k <= r; ++k) {
+							result += fxy * BINOMIALS[r][k] * Math.pow(sz, r - k)
+									* this.cachedMoments[i][j][k];
+						}
+					}
+				}
+				return result;
 			}
 }
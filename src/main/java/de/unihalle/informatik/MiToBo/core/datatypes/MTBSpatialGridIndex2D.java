@@ -0,0 +1,443 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.core.datatypes;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid index on axes-parallel bounding boxes of 2D objects.
+ * <p>
+ * The index stores for each object its bounding box and a representative
+ * point, e.g., its centroid. Each object is registered in all grid cells
+ * overlapped by its bounding box and, separately, in the cell containing its
+ * representative point. The index supports the following queries:
+ * <ul>
+ * <li> objects with bounding boxes containing a given point
+ * <li> objects with bounding boxes overlapping a given box
+ * <li> k objects with representative points nearest to a given point
+ * </ul>
+ * Objects are referenced by their index in the arrays passed to the
+ * constructor. The index is immutable, i.e., it has to be rebuilt if the
+ * underlying objects change. Queries are thread-safe. Objects with invalid
+ * bounding boxes or representative points, e.g., empty regions, are not
+ * registered in the grid and never returned by queries.
+ * <p>
+ * Cell lists are stored in compressed form in flat primitive arrays, i.e.,
+ * for each cell the entries of the cell are found in the entry array in the
+ * range from {@code cellStart[c]} to {@code cellStart[c+1]-1}.
+ *
+ * @author agent
+ */
+public class MTBSpatialGridIndex2D {
+
+	/**
+	 * Number of indexed objects.
+	 */
+	private final int objectNum;
+
+	/**
+	 * Bounding boxes of objects, [xmin, ymin, xmax, ymax] for each object.
+	 */
+	private final double[] boxes;
+
+	/**
+	 * Representative points of objects, [x, y] for each object.
+	 */
+	private final double[] centers;
+
+	/**
+	 * Minimal x-coordinate of the grid.
+	 */
+	private double gridMinX;
+
+	/**
+	 * Minimal y-coordinate of the grid.
+	 */
+	private double gridMinY;
+
+	/**
+	 * Side length of a grid cell.
+	 */
+	private double cellSize;
+
+	/**
+	 * Number of cells in x-direction.
+	 */
+	private int cellsX;
+
+	/**
+	 * Number of cells in y-direction.
+	 */
+	private int cellsY;
+
+	/**
+	 * Start positions of cell lists of bounding boxes in {@link #boxEntries}.
+	 */
+	private int[] boxCellStart;
+
+	/**
+	 * Object indices registered in cells due to their bounding boxes.
+	 */
+	private int[] boxEntries;
+
+	/**
+	 * Start positions of cell lists of centers in {@link #centerEntries}.
+	 */
+	private int[] centerCellStart;
+
+	/**
+	 * Object indices registered in cells due to their representative points.
+	 */
+	private int[] centerEntries;
+
+	/**
+	 * Constructor.
+	 * <p>
+	 * If no cell size is given, i.e. if it is non-positive, a size is chosen
+	 * automatically from the average extent of the bounding boxes and the
+	 * density of the objects.
+	 *
+	 * @param bboxes		Bounding boxes of objects, [xmin, ymin, xmax, ymax].
+	 * @param centroids	Representative points of objects, [x, y].
+	 * @param cSize			Side length of grid cells, if non-positive chosen
+	 * 									automatically.
+	 */
+	public MTBSpatialGridIndex2D(double[][] bboxes, double[][] centroids,
+			double cSize) {
+		if (bboxes.length != centroids.length)
+			throw new IllegalArgumentException("[MTBSpatialGridIndex2D] "
+				+ "number of bounding boxes and centroids differ!");
+		this.objectNum = bboxes.length;
+		this.boxes = new double[4 * this.objectNum];
+		this.centers = new double[2 * this.objectNum];
+		for (int i = 0; i < this.objectNum; ++i) {
+			System.arraycopy(bboxes[i], 0, this.boxes, 4 * i, 4);
+			this.centers[2*i] = centroids[i][0];
+			this.centers[2*i+1] = centroids[i][1];
+		}
+		this.initGrid(cSize);
+		this.fillCells();
+	}
+
+	/**
+	 * Constructor with automatic choice of cell size.
+	 *
+	 * @param bboxes		Bounding boxes of objects, [xmin, ymin, xmax, ymax].
+	 * @param centroids	Representative points of objects, [x, y].
+	 */
+	public MTBSpatialGridIndex2D(double[][] bboxes, double[][] centroids) {
+		this(bboxes, centroids, -1);
+	}
+
+	/**
+	 * Get number of indexed objects.
+	 * @return	Number of objects.
+	 */
+	public int size() {
+		return this.objectNum;
+	}
+
+	/**
+	 * Get bounding box of an object.
+	 * @param i	Index of object.
+	 * @return	Bounding box, [xmin, ymin, xmax, ymax].
+	 */
+	public double[] getBoundingBox(int i) {
+		return Arrays.copyOfRange(this.boxes, 4 * i, 4 * i + 4);
+	}
+
+	/**
+	 * Get objects with bounding boxes containing the given point.
+	 *
+	 * @param x	x-coordinate of query point.
+	 * @param y	y-coordinate of query point.
+	 * @return	Indices of objects in ascending order.
+	 */
+	public int[] getBoxesContaining(double x, double y) {
+		if (this.objectNum == 0)
+			return new int[0];
+		int cx = this.cellX(x);
+		int cy = this.cellY(y);
+		if (cx < 0 || cx >= this.cellsX || cy < 0 || cy >= this.cellsY)
+			return new int[0];
+		int cell = cy * this.cellsX + cx;
+		int[] result = new int[
+		   this.boxCellStart[cell+1] - this.boxCellStart[cell]];
+		int n = 0;
+		for (int e = this.boxCellStart[cell]; e < this.boxCellStart[cell+1]; ++e) {
+			int i = this.boxEntries[e];
+			if (   this.boxes[4*i] <= x && x <= this.boxes[4*i+2]
+					&& this.boxes[4*i+1] <= y && y <= this.boxes[4*i+3])
+				result[n++] = i;
+		}
+		// entries within a cell are sorted due to construction order
+		return Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * Get objects with bounding boxes overlapping the given box.
+	 * <p>
+	 * Boxes touching each other are considered as overlapping.
+	 *
+	 * @param xmin	Minimal x-coordinate of query box.
+	 * @param ymin	Minimal y-coordinate of query box.
+	 * @param xmax	Maximal x-coordinate of query box.
+	 * @param ymax	Maximal y-coordinate of query box.
+	 * @return	Indices of objects in ascending order.
+	 */
+	public int[] getBoxesOverlapping(double xmin, double ymin,
+			double xmax, double ymax) {
+		if (this.objectNum == 0)
+			return new int[0];
+		int cxMin = Math.max(0, this.cellX(xmin));
+		int cyMin = Math.max(0, this.cellY(ymin));
+		int cxMax = Math.min(this.cellsX - 1, this.cellX(xmax));
+		int cyMax = Math.min(this.cellsY - 1, this.cellY(ymax));
+		int[] buffer = new int[16];
+		int n = 0;
+		for (int cy = cyMin; cy <= cyMax; ++cy) {
+			for (int cx = cxMin; cx <= cxMax; ++cx) {
+				int cell = cy * this.cellsX + cx;
+				for (int e = this.boxCellStart[cell];
+						e < this.boxCellStart[cell+1]; ++e) {
+					int i = this.boxEntries[e];
+					if (   this.boxes[4*i] <= xmax && xmin <= this.boxes[4*i+2]
+							&& this.boxes[4*i+1] <= ymax && ymin <= this.boxes[4*i+3]) {
+						if (n == buffer.length)
+							buffer = Arrays.copyOf(buffer, 2 * n);
+						buffer[n++] = i;
+					}
+				}
+			}
+		}
+		// remove duplicates of objects registered in several cells
+		Arrays.sort(buffer, 0, n);
+		int unique = 0;
+		for (int j = 0; j < n; ++j) {
+			if (unique == 0 || buffer[unique-1] != buffer[j])
+				buffer[unique++] = buffer[j];
+		}
+		return Arrays.copyOf(buffer, unique);
+	}
+
+	/**
+	 * Get the k objects with representative points closest to given point.
+	 * <p>
+	 * The search starts in the cell containing the query point and expands
+	 * ring-wise until no closer object can be found anymore.
+	 *
+	 * @param x	x-coordinate of query point.
+	 * @param y	y-coordinate of query point.
+	 * @param k	Number of neighbors to find.
+	 * @return	Indices of objects sorted by ascending distance, at most k.
+	 */
+	public int[] getNearestCenters(double x, double y, int k) {
+		k = Math.min(k, this.objectNum);
+		if (k <= 0)
+			return new int[0];
+		// candidates sorted by distance, insertion sort on small arrays
+		int[] bestIDs = new int[k];
+		double[] bestDists = new double[k];
+		int found = 0;
+		int qx = this.cellX(x);
+		int qy = this.cellY(y);
+		// clip the start cell to the grid, all rings outside are empty
+		int sx = Math.min(Math.max(qx, 0), this.cellsX - 1);
+		int sy = Math.min(Math.max(qy, 0), this.cellsY - 1);
+		int maxRing = Math.max(Math.max(sx, this.cellsX - 1 - sx),
+				Math.max(sy, this.cellsY - 1 - sy));
+		for (int ring = 0; ring <= maxRing; ++ring) {
+			// all objects in further rings are at least this far away
+			double minRingDist = Math.max(0,
+					(ring - 1) * this.cellSize + this.distToCellBorder(x, y, sx, sy));
+			if (found == k && minRingDist * minRingDist > bestDists[k-1])
+				break;
+			for (int cy = sy - ring; cy <= sy + ring; ++cy) {
+				if (cy < 0 || cy >= this.cellsY)
+					continue;
+				boolean fullRow = (cy == sy - ring || cy == sy + ring);
+				for (int cx = sx - ring; cx <= sx + ring;
+						cx += (fullRow || ring == 0) ? 1 : 2 * ring) {
+					if (cx < 0 || cx >= this.cellsX)
+						continue;
+					int cell = cy * this.cellsX + cx;
+					for (int e = this.centerCellStart[cell];
+							e < this.centerCellStart[cell+1]; ++e) {
+						int i = this.centerEntries[e];
+						double dx = this.centers[2*i] - x;
+						double dy = this.centers[2*i+1] - y;
+						double d = dx * dx + dy * dy;
+						if (found < k || d < bestDists[found-1]) {
+							int pos = (found < k) ? found++ : found - 1;
+							while (pos > 0 && bestDists[pos-1] > d) {
+								bestDists[pos] = bestDists[pos-1];
+								bestIDs[pos] = bestIDs[pos-1];
+								--pos;
+							}
+							bestDists[pos] = d;
+							bestIDs[pos] = i;
+						}
+					}
+				}
+			}
+		}
+		return Arrays.copyOf(bestIDs, found);
+	}
+
+	/**
+	 * Initializes the grid geometry.
+	 * @param cSize	Requested cell size, non-positive for automatic choice.
+	 */
+	private void initGrid(double cSize) {
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		double extentSum = 0;
+		int validNum = 0;
+		for (int i = 0; i < this.objectNum; ++i) {
+			if (!this.isValid(i))
+				continue;
+			++validNum;
+			minX = Math.min(minX, Math.min(this.boxes[4*i], this.centers[2*i]));
+			minY = Math.min(minY, Math.min(this.boxes[4*i+1], this.centers[2*i+1]));
+			maxX = Math.max(maxX, Math.max(this.boxes[4*i+2], this.centers[2*i]));
+			maxY = Math.max(maxY, Math.max(this.boxes[4*i+3], this.centers[2*i+1]));
+			extentSum += (this.boxes[4*i+2] - this.boxes[4*i])
+					+ (this.boxes[4*i+3] - this.boxes[4*i+1]);
+		}
+		if (validNum == 0) {
+			minX = minY = maxX = maxY = 0;
+		}
+		if (cSize <= 0) {
+			// average box extent, but at most about one object per cell
+			double meanExtent = (validNum > 0) ? extentSum / (2 * validNum) : 1;
+			double density = Math.sqrt((maxX - minX + 1) * (maxY - minY + 1)
+					/ Math.max(1, validNum));
+			cSize = Math.max(1.0, Math.max(meanExtent, density));
+		}
+		this.cellSize = cSize;
+		this.gridMinX = minX;
+		this.gridMinY = minY;
+		this.cellsX = (int)((maxX - minX) / cSize) + 1;
+		this.cellsY = (int)((maxY - minY) / cSize) + 1;
+	}
+
+	/**
+	 * Registers all objects in the grid cells.
+	 */
+	private void fillCells() {
+		int cellNum = this.cellsX * this.cellsY;
+		this.boxCellStart = new int[cellNum + 1];
+		this.centerCellStart = new int[cellNum + 1];
+		// count entries per cell
+		for (int i = 0; i < this.objectNum; ++i) {
+			if (!this.isValid(i))
+				continue;
+			for (int cy = this.cellY(this.boxes[4*i+1]);
+					cy <= this.cellY(this.boxes[4*i+3]); ++cy)
+				for (int cx = this.cellX(this.boxes[4*i]);
+						cx <= this.cellX(this.boxes[4*i+2]); ++cx)
+					++this.boxCellStart[cy * this.cellsX + cx + 1];
+			++this.centerCellStart[this.centerCell(i) + 1];
+		}
+		for (int c = 0; c < cellNum; ++c) {
+			this.boxCellStart[c+1] += this.boxCellStart[c];
+			this.centerCellStart[c+1] += this.centerCellStart[c];
+		}
+		// fill entries, objects are inserted in ascending order
+		this.boxEntries = new int[this.boxCellStart[cellNum]];
+		this.centerEntries = new int[this.centerCellStart[cellNum]];
+		int[] boxFill = Arrays.copyOf(this.boxCellStart, cellNum);
+		int[] centerFill = Arrays.copyOf(this.centerCellStart, cellNum);
+		for (int i = 0; i < this.objectNum; ++i) {
+			if (!this.isValid(i))
+				continue;
+			for (int cy = this.cellY(this.boxes[4*i+1]);
+					cy <= this.cellY(this.boxes[4*i+3]); ++cy)
+				for (int cx = this.cellX(this.boxes[4*i]);
+						cx <= this.cellX(this.boxes[4*i+2]); ++cx)
+					this.boxEntries[boxFill[cy * this.cellsX + cx]++] = i;
+			this.centerEntries[centerFill[this.centerCell(i)]++] = i;
+		}
+	}
+
+	/**
+	 * Checks if an object has a proper bounding box and representative point.
+	 * @param i	Object index.
+	 * @return	True if object can be registered in the grid.
+	 */
+	private boolean isValid(int i) {
+		return    this.boxes[4*i] <= this.boxes[4*i+2]
+					 && this.boxes[4*i+1] <= this.boxes[4*i+3]
+					 && !Double.isNaN(this.centers[2*i]) 
+					 && !Double.isNaN(this.centers[2*i+1]);
+	}
+
+	/**
+	 * Cell index of the representative point of an object.
+	 * @param i	Object index.
+	 * @return	Linear cell index.
+	 */
+	private int centerCell(int i) {
+		return this.cellY(this.centers[2*i+1]) * this.cellsX
+				+ this.cellX(this.centers[2*i]);
+	}
+
+	/**
+	 * Cell column of given x-coordinate, might be outside of the grid.
+	 * @param x	Coordinate.
+	 * @return	Cell column.
+	 */
+	private int cellX(double x) {
+		return (int)Math.floor((x - this.gridMinX) / this.cellSize);
+	}
+
+	/**
+	 * Cell row of given y-coordinate, might be outside of the grid.
+	 * @param y	Coordinate.
+	 * @return	Cell row.
+	 */
+	private int cellY(double y) {
+		return (int)Math.floor((y - this.gridMinY) / this.cellSize);
+	}
+
+	/**
+	 * Distance of a point to the closest border of the given cell.
+	 * <p>
+	 * For points outside of the cell the result is zero.
+	 *
+	 * @param x		x-coordinate of point.
+	 * @param y		y-coordinate of point.
+	 * @param cx	Cell column.
+	 * @param cy	Cell row.
+	 * @return	Minimal distance to cell border.
+	 */
+	private double distToCellBorder(double x, double y, int cx, int cy) {
+		double left = x - (this.gridMinX + cx * this.cellSize);
+		double top = y - (this.gridMinY + cy * this.cellSize);
+		double d = Math.min(Math.min(left, this.cellSize - left),
+				Math.min(top, this.cellSize - top));
+		return Math.max(0, d);
+	}
+}
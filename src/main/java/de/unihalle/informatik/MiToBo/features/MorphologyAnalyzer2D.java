@@ -24,17 +24,14 @@
 
 package de.unihalle.informatik.MiToBo.features;
 
-import ij.ImagePlus;
-import ij.gui.NewImage;
-import ij.process.ImageProcessor;
-
-import java.awt.Polygon;
 import java.awt.geom.Point2D;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import de.unihalle.informatik.Alida.annotations.ALDAOperator;
 import de.unihalle.informatik.Alida.annotations.Parameter;
@@ -46,6 +43,7 @@ import de.unihalle.informatik.Alida.exceptions.ALDProcessingDAGException;
 import de.unihalle.informatik.Alida.operator.events.ALDOperatorExecutionProgressEvent;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBContour2D;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBContour2DSet;
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2D;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBRegion2D;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBRegion2DSet;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage;
@@ -400,6 +398,17 @@ public class MorphologyAnalyzer2D extends MTBOperator
 		supplemental = false, description = "fractional digits", 
 		dataIOOrder = 22, mode=ExpertMode.ADVANCED)
 	private Integer fracDigits = Integer.valueOf(3);
+
+	/**
+	 * Number of worker threads for the per-region feature extraction.
+	 * <p>
+	 * If zero or negative, all available processors are used.
+	 */
+	@Parameter(label = "Number of threads", required = false, 
+		direction = Parameter.Direction.IN, supplemental = false, 
+		description = "Number of threads, if <= 0 all available cores are used.", 
+		dataIOOrder = 23, mode=ExpertMode.ADVANCED)
+	private Integer threadNum = Integer.valueOf(0);
 	
 	/**
 	 * Flag to enable drawing curvature information to info image.
@@ -455,21 +464,24 @@ public class MorphologyAnalyzer2D extends MTBOperator
 	
 	private int bgLabel = 0;			// label value for the background
 			
-	private Vector<Integer> labels;
-	private Vector<Double> areas;
-	private Vector<Double> perimeters;
-	private Vector<Double> lengths;
-	private Vector<Double> widths;
-	private Vector<Double> circularities;
-	private Vector<Double> eccentricities;
-	private Vector<Double> solidities;
-	private Vector<Double> marginRoughnessValues;
-	private Vector<Double> avgConcavities;	
-	private Vector<Double> stdDevConcavities;
-	private Vector<Double> convexHullAreas;
-	private Vector<Double> convexHullPerimeters;
-	private Vector<Double> convexHullConvexities;
-	private Vector<Double> convexHullRoundnessValues;
+	/*
+	 * Per-region feature columns, entry i belongs to region i.
+	 */
+	private int[] labels;
+	private double[] areas;
+	private double[] perimeters;
+	private double[] lengths;
+	private double[] widths;
+	private double[] circularities;
+	private double[] eccentricities;
+	private double[] solidities;
+	private double[] marginRoughnessValues;
+	private double[] avgConcavities;	
+	private double[] stdDevConcavities;
+	private double[] convexHullAreas;
+	private double[] convexHullPerimeters;
+	private double[] convexHullConvexities;
+	private double[] convexHullRoundnessValues;
 	private Vector<Double> branchCounts;
 	private Vector<Double> avgBranchLengths;
 	private Vector<Double> longestPathLengths;
@@ -504,6 +516,12 @@ public class MorphologyAnalyzer2D extends MTBOperator
 	private MTBRegion2DSet regions = null;
 	private MTBImage labelImg = null;
 	
+	/**
+	 * Outer contours of the regions, extracted once and shared by all 
+	 * contour-based features.
+	 */
+	private MTBContour2DSet outerContours = null;
+	
 	/**
 	 * Width of currently processed image.
 	 */
@@ -546,6 +564,7 @@ public class MorphologyAnalyzer2D extends MTBOperator
 		// is run multiple times
 		this.regions = null;
 		this.labelImg = null;
+		this.outerContours = null;
 
 		this.nf.setMaximumFractionDigits(this.fracDigits.intValue());
 		this.nf.setMinimumFractionDigits(this.fracDigits.intValue());
@@ -607,23 +626,25 @@ public class MorphologyAnalyzer2D extends MTBOperator
 	private void getSimpleShapeFeatures() 
 			throws ALDOperatorException, ALDProcessingDAGException
 	{
-		double factor = this.deltaXY.doubleValue() * this.deltaXY.doubleValue();
+		final int regionNum = this.regions.size();
+		final double delta = this.deltaXY.doubleValue();
+		final double factor = delta * delta;
 		
-		this.labels = new Vector<Integer>();
-		this.areas = new Vector<Double>();
-		this.perimeters = new Vector<Double>();
-		this.lengths = new Vector<Double>();
-		this.widths = new Vector<Double>();
-		this.circularities = new Vector<Double>();
-		this.eccentricities = new Vector<Double>();
-		this.solidities = new Vector<Double>();
-		this.marginRoughnessValues = new Vector<Double>();
-		this.avgConcavities = new Vector<Double>();	
-		this.stdDevConcavities = new Vector<Double>();
-		this.convexHullAreas = new Vector<Double>();
-		this.convexHullPerimeters = new Vector<Double>();
-		this.convexHullConvexities = new Vector<Double>();
-		this.convexHullRoundnessValues = new Vector<Double>();
+		this.labels = new int[regionNum];
+		this.areas = new double[regionNum];
+		this.perimeters = new double[regionNum];
+		this.lengths = new double[regionNum];
+		this.widths = new double[regionNum];
+		this.circularities = new double[regionNum];
+		this.eccentricities = new double[regionNum];
+		this.solidities = new double[regionNum];
+		this.marginRoughnessValues = new double[regionNum];
+		this.avgConcavities = new double[regionNum];	
+		this.stdDevConcavities = new double[regionNum];
+		this.convexHullAreas = new double[regionNum];
+		this.convexHullPerimeters = new double[regionNum];
+		this.convexHullConvexities = new double[regionNum];
+		this.convexHullRoundnessValues = new double[regionNum];
 		this.branchCounts = new Vector<Double>();
 		this.avgBranchLengths = new Vector<Double>();
 		this.longestPathLengths = new Vector<Double>();
@@ -653,77 +674,71 @@ public class MorphologyAnalyzer2D extends MTBOperator
 		this.avgLobeDepths = new Vector<Double>();
 		this.avgNeckDepths = new Vector<Double>();
 
-		double areaPixel, perimeterPixel;
-		
 		this.fireOperatorExecutionProgressEvent(
 				new ALDOperatorExecutionProgressEvent(this, operatorID 
 					+ " calculating global features..."));
 
-		for(int j = 0; j < this.regions.size(); j++)
-		{
+		final boolean needArea = 
+			this.calcArea || this.calcSolidity || this.calcConvexHullMeasures;
+		final boolean needPerimeter = 
+			this.calcPerimeter || this.calcConvexHullMeasures;
+		
+		// contour extraction runs an operator, hence, it is done once for all 
+		// regions in advance, the per-region loop itself only reads data
+		final MTBContour2DSet contours = 
+			(needPerimeter || this.calcCircularity) ? 
+					this.getOuterContours() : null;
+		
+		this.processRegions(regionNum, (j, scratch) -> {
 			MTBRegion2D cr = this.regions.elementAt(j);
 			
-			int cid = cr.getID();
-			this.labels.add(new Integer(cid));
+			this.labels[j] = cr.getID();
 			
 			// area
-			areaPixel = -1;
-			if(this.calcArea || this.calcSolidity || this.calcConvexHullMeasures)
+			double areaPixel = -1;
+			if (needArea)
 			{
 				areaPixel = cr.getArea();
-				this.areas.add(areaPixel * factor);
+				this.areas[j] = areaPixel * factor;
 			}
 			
 			// perimeter
-			perimeterPixel = -1;
-			if(this.calcPerimeter || this.calcConvexHullMeasures)
+			double perimeterPixel = -1;
+			if (needPerimeter)
 			{
-				double p = 0;
-				
-				try
-				{
-					perimeterPixel = cr.getContour(ContourType.OUTER_CONTOUR).getContourLength(); 
-					p = perimeterPixel * this.deltaXY.doubleValue();
-				} 
-				catch(ALDOperatorException e1)
-				{
-					e1.printStackTrace();
-				} 
-				catch(ALDProcessingDAGException e1)
-				{
-					e1.printStackTrace();
-				}	
-				this.perimeters.add(p);
+				perimeterPixel = contours.elementAt(j).getContourLength(); 
+				this.perimeters[j] = perimeterPixel * delta;
 			}
 			
 			// length and width
-			if(this.calcLengthWidth)
+			if (this.calcLengthWidth)
 			{
-//				double l = cr.getMajorAxisLength() * this.deltaXY.doubleValue();
-//				this.lengths.add(l);
-//				l = cr.getMinorAxisLength() * this.deltaXY.doubleValue();
-//				this.widths.add(l);			
 				double[] ls = cr.getMajorMinorAxisLengths();
-				this.lengths.add(ls[1] * this.deltaXY.doubleValue());
-				this.widths.add(ls[0] * this.deltaXY.doubleValue());			
+				this.lengths[j] = ls[1] * delta;
+				this.widths[j] = ls[0] * delta;			
 			}
 			
 			// circularity
-			if(this.calcCircularity)
+			if (this.calcCircularity)
 			{
-				if (areaPixel == -1 || perimeterPixel == -1)
-					this.circularities.add(cr.getCircularity());
+				if (areaPixel == -1 || perimeterPixel == -1) {
+					// same as MTBRegion2D.getCircularity(), but without re-running
+					// the contour extraction for each region
+					double per = contours.elementAt(j).getContourLength();
+					this.circularities[j] = (per != 0) ? 
+							(4 * Math.PI * cr.getArea()) / (per * per) : 0;
+				}
 				else
-					this.circularities.add(	(4 * Math.PI * areaPixel) 
-							/ (perimeterPixel * perimeterPixel) );
+					this.circularities[j] = (4 * Math.PI * areaPixel) 
+							/ (perimeterPixel * perimeterPixel);
 			}
 			
 			// eccentricity
-			if(this.calcEccentricity)
+			if (this.calcEccentricity)
 			{
-				this.eccentricities.add(cr.getEccentricity());
+				this.eccentricities[j] = cr.getEccentricity();
 			}
-		}
+		});
 		
 		this.fireOperatorExecutionProgressEvent(
 				new ALDOperatorExecutionProgressEvent(this, operatorID 
@@ -819,6 +834,9 @@ public class MorphologyAnalyzer2D extends MTBOperator
 	
 	/**
 	 * create result table
+	 * <p>
+	 * Features are kept as plain numbers during extraction, formatting 
+	 * is only done here once all regions have been processed.
 	 */
 	private void makeTable()
 	{
@@ -918,44 +936,44 @@ public class MorphologyAnalyzer2D extends MTBOperator
 		{
 			int col = 1;
 			
-			this.table.setValueAt(this.labels.elementAt(i), i, 0);
+			this.table.setValueAt(Integer.valueOf(this.labels[i]), i, 0);
 			
 			if(this.calcArea)
 			{
-				this.table.setValueAt(this.nf.format(this.areas.elementAt(i)), i, col);
+				this.table.setValueAt(this.nf.format(this.areas[i]), i, col);
 				col++;
 			}
 			if(this.calcPerimeter)
 			{
-				this.table.setValueAt(this.nf.format(this.perimeters.elementAt(i)), i, col);
+				this.table.setValueAt(this.nf.format(this.perimeters[i]), i, col);
 				col++;
 			}
 			if(this.calcLengthWidth)
 			{
-				this.table.setValueAt(this.nf.format(this.lengths.elementAt(i)), i, col);
+				this.table.setValueAt(this.nf.format(this.lengths[i]), i, col);
 				col++;
-				this.table.setValueAt(this.nf.format(this.widths.elementAt(i)), i, col);
+				this.table.setValueAt(this.nf.format(this.widths[i]), i, col);
 				col++;
 			}
 			if(this.calcCircularity)
 			{
-				this.table.setValueAt(this.nf.format(this.circularities.elementAt(i)), i, col);
+				this.table.setValueAt(this.nf.format(this.circularities[i]), i, col);
 				col++;
 			}
 			if(this.calcEccentricity)
 			{
-				this.table.setValueAt(this.nf.format(this.eccentricities.elementAt(i)), i, col);
+				this.table.setValueAt(this.nf.format(this.eccentricities[i]), i, col);
 				col++;
 			}
 			if(this.calcSolidity)
 			{
-				this.table.setValueAt(this.nf.format(this.solidities.elementAt(i)), i, col);
+				this.table.setValueAt(this.nf.format(this.solidities[i]), i, col);
 				col++;
 			}
 			if (this.calcMarginRoughness) 
 			{
 				this.table.setValueAt(this.nf.format(
-						this.marginRoughnessValues.elementAt(i)), i, col);
+						this.marginRoughnessValues[i]), i, col);
 				col++;
 			}
 			if (this.calcSkeletonBranchFeatures) 
@@ -985,24 +1003,24 @@ public class MorphologyAnalyzer2D extends MTBOperator
 			if (this.calcConcavityData) 
 			{
 				this.table.setValueAt(this.nf.format(
-						this.avgConcavities.elementAt(i)), i, col);
+						this.avgConcavities[i]), i, col);
 				col++;
 				this.table.setValueAt(this.nf.format(
-						this.stdDevConcavities.elementAt(i)), i, col);
+						this.stdDevConcavities[i]), i, col);
 				col++;
 			}
 			if (this.calcConvexHullMeasures) {
 				this.table.setValueAt(this.nf.format(
-						this.convexHullAreas.elementAt(i)), i, col);
+						this.convexHullAreas[i]), i, col);
 				col++;
 				this.table.setValueAt(this.nf.format(
-						this.convexHullPerimeters.elementAt(i)), i, col);
+						this.convexHullPerimeters[i]), i, col);
 				col++;
 				this.table.setValueAt(this.nf.format(
-						this.convexHullConvexities.elementAt(i)), i, col);
+						this.convexHullConvexities[i]), i, col);
 				col++;
 				this.table.setValueAt(this.nf.format(
-						this.convexHullRoundnessValues.elementAt(i)), i, col);
+						this.convexHullRoundnessValues[i]), i, col);
 				col++;				
 			}
 			if (this.analyzeProtrusionsIndentations) {
@@ -1102,6 +1120,15 @@ public class MorphologyAnalyzer2D extends MTBOperator
 		this.deltaXY = dXY;
 	}
 
+	/**
+	 * Set number of threads used for per-region feature extraction.
+	 * @param num	Number of threads, if zero or negative all cores are used.
+	 */
+	public void setThreadNum(int num)
+	{
+		this.threadNum = Integer.valueOf(num);
+	}
+
 	/**
 	 * @return physical space unit
 	 */
@@ -1527,11 +1554,7 @@ public class MorphologyAnalyzer2D extends MTBOperator
 		}
 		
 		// extract contours
-		ContourOnLabeledComponents contourOp = 
-				new ContourOnLabeledComponents(this.regions, 
-						ContourType.OUTER_CONTOUR, 1);
-		contourOp.runOp(HidingMode.HIDDEN);
-		MTBContour2DSet contours = contourOp.getResultContours();
+		MTBContour2DSet contours = this.getOuterContours();
 
 		// calculate pixel-wise curvatures
 		Contour2DCurvatureCalculator curvOp = 
@@ -1581,20 +1604,22 @@ public class MorphologyAnalyzer2D extends MTBOperator
 		if (this.calcMarginRoughness) {
 			// calculate margin roughness, i.e. the deviation of curvatures 
 			// from curvatures to be found on an optimal circle
-			double curvSum = 0;
-			for (double[] values: curvatureValues) {
+			final Vector<double[]> curvs = curvatureValues;
+			this.processRegions(curvs.size(), (j, scratch) -> {
+				double[] values = curvs.elementAt(j);
 				// if contour is too short, we don't have curvature values,
 				// hence, likewise no margin roughness
 				if (values == null) {
-					this.marginRoughnessValues.add(Double.NaN);
-					continue;
+					this.marginRoughnessValues[j] = Double.NaN;
+					return;
 				}
-				curvSum = 0;
+				double curvSum = 0;
 				for (double d: values)
 					curvSum += Math.abs(d);
 				double expectedValue = 360.0/values.length;
-				this.marginRoughnessValues.add(curvSum/values.length - expectedValue);
-			}
+				this.marginRoughnessValues[j] = 
+						curvSum/values.length - expectedValue;
+			});
 		}
 
 		if (this.analyzeProtrusionsIndentations) {
@@ -1817,39 +1842,29 @@ public class MorphologyAnalyzer2D extends MTBOperator
 //			for (int x=0; x<width; ++x)
 //				if (this.labelImg.getValueInt(x, y) > 0)
 //					binaryLabelImg.putValueInt(x, y, 255);
-		// extract contours
-		ContourOnLabeledComponents contExtractor = new ContourOnLabeledComponents();
-		contExtractor.setInputRegions(this.regions);
-		contExtractor.setContourType(ContourType.OUTER_CONTOUR);
-		contExtractor.runOp(HidingMode.HIDE_CHILDREN);
 		// run concavity operator
 		Contour2DConcavityCalculator concavityOp = 
 				new Contour2DConcavityCalculator(this.labelImg);
-		concavityOp.setContours(contExtractor.getResultContours());
+		concavityOp.setContours(this.getOuterContours());
 		concavityOp.setRadius(this.concavityMaskSize);
 		concavityOp.setNormalize(Boolean.valueOf(this.concavityNormalizeValues));
 		concavityOp.runOp(HidingMode.HIDE_CHILDREN);
 		Vector<double[]> concavities = concavityOp.getConcavenessValues();
 
 		// calculate average concavities and their standard deviations
-		double concavitySum;
-		for (double[] concavityValues: concavities) {
-			concavitySum = 0;
+		this.processRegions(concavities.size(), (id, scratch) -> {
+			double[] concavityValues = concavities.elementAt(id);
+			double concavitySum = 0;
 			for (double d: concavityValues)
 				concavitySum += d;
-			this.avgConcavities.add(
-					Double.valueOf(concavitySum/concavityValues.length));
-		}
-		int id = 0;
-		for (double[] concavityValues: concavities) {
+			double avg = concavitySum/concavityValues.length;
+			this.avgConcavities[id] = avg;
 			concavitySum = 0;
-			double avg = this.avgConcavities.get(id).doubleValue(); 
 			for (double d: concavityValues)
 				concavitySum += (d-avg)*(d-avg);
-			this.stdDevConcavities.add(Double.valueOf(
-					Math.sqrt(concavitySum/concavityValues.length)));
-			++id;
-		}		
+			this.stdDevConcavities[id] = 
+					Math.sqrt(concavitySum/concavityValues.length);
+		});
 	}
 	
 	/**
@@ -1864,61 +1879,44 @@ public class MorphologyAnalyzer2D extends MTBOperator
 		convHullOp.setInputType(InputType.REGIONS);
 		convHullOp.setInputRegions(this.regions);
 		convHullOp.runOp(HidingMode.HIDE_CHILDREN);
-		Vector<Point2D.Double[]> hulls = convHullOp.getResultingConvexHulls();
+		final Vector<Point2D.Double[]> hulls = 
+				convHullOp.getResultingConvexHulls();
 		MTBImage hullImage = convHullOp.getResultingHullImage();
 
-		int width = hullImage.getSizeX();
-		int height = hullImage.getSizeY();
-		ImagePlus img = NewImage.createByteImage("", width, height, 1,
-				NewImage.FILL_WHITE);
-		ImageProcessor ip = img.getProcessor();
-		for (Point2D.Double[] ps: hulls) {
+		final int hullWidth = hullImage.getSizeX();
+		final int hullHeight = hullImage.getSizeY();
+		final double delta = this.deltaXY.doubleValue();
+		this.processRegions(hulls.size(), (i, scratch) -> {
+			Point2D.Double[] ps = hulls.elementAt(i);
+			if (ps == null || ps.length == 0) {
+				this.convexHullAreas[i] = 0;
+				this.convexHullPerimeters[i] = 0;
+				return;
+			}
 
 			// calculate convex hull perimeter
 			double hullPerimeter = 0;
 			double px = ps[ps.length-1].x;
 			double py = ps[ps.length-1].y;
-			for (int i=0; i<ps.length; ++i) {
-				double tx = ps[i].x;
-				double ty = ps[i].y;
+			for (int k=0; k<ps.length; ++k) {
+				double tx = ps[k].x;
+				double ty = ps[k].y;
 				hullPerimeter += Math.sqrt((tx-px)*(tx-px) + (ty-py)*(ty-py));
 				px = tx;
 				py = ty;
 			}
 			
-			// fill image white
-			for (int y=0;y<height; ++y)
-				for (int x=0;x<width; ++x)
-					ip.putPixelValue(x, y, 255);
-
-			int[] xps = new int[ps.length];
-			int[] yps = new int[ps.length];
-			int n = 0;
-			for (Point2D.Double p : ps) {
-				xps[n] = (int) (p.x);
-				yps[n] = (int) (p.y);
-				n++;
-			}
-			Polygon awtPoly = new Polygon(xps, yps, ps.length);
-
-			// plot filled polygon in black on white background
-			ip.fillPolygon(awtPoly);
-
-			// determine size of hull area
-			int hullArea = 0;
-			for (int y = 0; y < height; ++y) {
-				for (int x = 0; x < width; ++x) {
-					if (ip.getPixel(x, y) == 0) {
-						// polygon inner area
-						++hullArea;
-					}
-				}
+			// rasterize the hull polygon to determine size of hull area
+			scratch.ensureCapacity(ps.length);
+			for (int k=0; k<ps.length; ++k) {
+				scratch.xps[k] = (int)(ps[k].x);
+				scratch.yps[k] = (int)(ps[k].y);
 			}
-			this.convexHullAreas.add(new Double(hullArea 
-					* this.deltaXY.doubleValue() * this.deltaXY.doubleValue()));
-			this.convexHullPerimeters.add(
-					new Double(hullPerimeter * this.deltaXY.doubleValue()));
-		}
+			int hullArea = MTBPolygon2D.rasterize(scratch.xps, scratch.yps, 
+				ps.length, 0, 0, hullWidth-1, hullHeight-1, false).getArea();
+			this.convexHullAreas[i] = hullArea * delta * delta;
+			this.convexHullPerimeters[i] = hullPerimeter * delta;
+		});
 	}
 	
 	/**
@@ -1926,14 +1924,11 @@ public class MorphologyAnalyzer2D extends MTBOperator
 	 */
 	private void calculateSolidityValues() {
 		// calculate solidity values for all regions
-		double area, hullArea;
 		for (int i=0; i<this.regions.size(); ++i) {
-			area = this.areas.elementAt(i).doubleValue();
-			hullArea = this.convexHullAreas.elementAt(i).doubleValue();
-			double solidity = area/hullArea;
+			double solidity = this.areas[i] / this.convexHullAreas[i];
 			// make sure that solidity is not larger than 1.0 (which might happen 
 			// in practice due to discritization, but is not possible in theory)
-			this.solidities.add(new Double(solidity > 1.0 ? 1.0 : solidity));
+			this.solidities[i] = (solidity > 1.0 ? 1.0 : solidity);
 		}
 	}
 	
@@ -1942,14 +1937,163 @@ public class MorphologyAnalyzer2D extends MTBOperator
 	 */
 	private void calculateConvexHullMeasures() {
 		// calculate convexities and roundness values
-		double hullPerimeter, perimeter, area;
+		double hullPerimeter;
 		for (int i=0; i<this.regions.size(); ++i) {
-			area = this.areas.elementAt(i).doubleValue();
-			perimeter = this.perimeters.elementAt(i).doubleValue();
-			hullPerimeter = this.convexHullPerimeters.elementAt(i).doubleValue();
-			this.convexHullConvexities.add(new Double(hullPerimeter/perimeter));
-			this.convexHullRoundnessValues.add(
-					new Double(4.0*Math.PI*area/(hullPerimeter*hullPerimeter)));
+			hullPerimeter = this.convexHullPerimeters[i];
+			this.convexHullConvexities[i] = hullPerimeter / this.perimeters[i];
+			this.convexHullRoundnessValues[i] = 
+					4.0*Math.PI*this.areas[i] / (hullPerimeter*hullPerimeter);
+		}
+	}
+
+	/**
+	 * Get outer contours of all regions.
+	 * <p>
+	 * The contours are extracted only once per run of the operator and 
+	 * then shared by perimeter, curvature and concavity calculations.
+	 * 
+	 * @return	Set of outer contours, i-th contour belongs to i-th region.
+	 * @throws ALDOperatorException	Thrown in case of failure.
+	 * @throws ALDProcessingDAGException
+	 * 		Thrown in case of problems with processing history.
+	 */
+	private MTBContour2DSet getOuterContours() 
+			throws ALDOperatorException, ALDProcessingDAGException {
+		if (this.outerContours == null) {
+			ContourOnLabeledComponents contourOp = 
+					new ContourOnLabeledComponents(this.regions, 
+							ContourType.OUTER_CONTOUR, 1);
+			contourOp.runOp(HidingMode.HIDDEN);
+			this.outerContours = contourOp.getResultContours();
+		}
+		return this.outerContours;
+	}
+
+	/**
+	 * Applies the given task to all region indices from 0 to n-1.
+	 * <p>
+	 * The index range is recursively split and processed on a fork/join 
+	 * pool with the configured number of threads. Each worker thread owns 
+	 * its own scratch buffers, and tasks are expected to write their 
+	 * results only to the entries of the given index in the feature 
+	 * columns. Hence, no synchronization is required.
+	 * 
+	 * @param n			Number of regions.
+	 * @param task	Task to apply to each region.
+	 */
+	private void processRegions(int n, RegionTask task) {
+		int threads = (this.threadNum == null || this.threadNum.intValue() <= 0) 
+				? Runtime.getRuntime().availableProcessors() 
+				: this.threadNum.intValue();
+		if (threads == 1 || n <= RegionRangeAction.minChunkSize) {
+			RegionScratch scratch = new RegionScratch();
+			for (int i=0; i<n; ++i)
+				task.process(i, scratch);
+			return;
+		}
+		ThreadLocal<RegionScratch> scratches = 
+				ThreadLocal.withInitial(RegionScratch::new);
+		// aim at a few chunks per thread for load balancing as regions may
+		// differ a lot in size
+		int chunkSize = Math.max(RegionRangeAction.minChunkSize, 
+				n / (8 * threads));
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(
+					new RegionRangeAction(task, scratches, 0, n, chunkSize));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Feature calculation for a single region.
+	 */
+	@FunctionalInterface
+	private interface RegionTask {
+		/**
+		 * Process region with given index.
+		 * @param index		Index of the region.
+		 * @param scratch	Scratch buffers of the calling worker thread.
+		 */
+		void process(int index, RegionScratch scratch);
+	}
+	
+	/**
+	 * Scratch buffers re-used by a worker thread across regions.
+	 */
+	private static class RegionScratch {
+		
+		/**
+		 * Buffer for polygon x-coordinates.
+		 */
+		int[] xps = new int[64];
+		
+		/**
+		 * Buffer for polygon y-coordinates.
+		 */
+		int[] yps = new int[64];
+		
+		/**
+		 * Make sure that coordinate buffers can hold given number of points.
+		 * @param size	Required number of points.
+		 */
+		void ensureCapacity(int size) {
+			if (this.xps.length < size) {
+				int newSize = Math.max(size, 2 * this.xps.length);
+				this.xps = new int[newSize];
+				this.yps = new int[newSize];
+			}
+		}
+	}
+	
+	/**
+	 * Fork/join action processing a range of region indices.
+	 */
+	private static class RegionRangeAction extends RecursiveAction {
+
+		/**
+		 * Minimal number of regions processed by a single action.
+		 */
+		static final int minChunkSize = 16;
+		
+		private final RegionTask task;
+		private final ThreadLocal<RegionScratch> scratches;
+		private final int from;
+		private final int to;
+		private final int chunkSize;
+		
+		/**
+		 * Default constructor.
+		 * @param t		Task to apply.
+		 * @param s		Thread-local scratch buffers.
+		 * @param f		First index of range (inclusive).
+		 * @param e		Last index of range (exclusive).
+		 * @param c		Size of ranges not split further.
+		 */
+		RegionRangeAction(RegionTask t, ThreadLocal<RegionScratch> s, 
+				int f, int e, int c) {
+			this.task = t;
+			this.scratches = s;
+			this.from = f;
+			this.to = e;
+			this.chunkSize = c;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= this.chunkSize) {
+				RegionScratch scratch = this.scratches.get();
+				for (int i=this.from; i<this.to; ++i)
+					this.task.process(i, scratch);
+				return;
+			}
+			int mid = (this.from + this.to) >>> 1;
+			invokeAll(
+				new RegionRangeAction(
+						this.task, this.scratches, this.from, mid, this.chunkSize),
+				new RegionRangeAction(
+						this.task, this.scratches, mid, this.to, this.chunkSize));
 		}
 	}
 
@@ -26,6 +26,7 @@ package de.unihalle.informatik.MiToBo.math;
 import java.util.Random;
 
 import de.unihalle.informatik.MiToBo.math.distributions.impl.GaussianDistribution;
+import de.unihalle.informatik.MiToBo.math.linearalgebra.MTBSmallMatrixKernels;
 
 import Jama.Matrix;
 
@@ -77,10 +78,22 @@ public class LinearTransformGaussNoise {
 	 * Transform the Gaussian distribution <code>gaussian</code> with this transform.
 	 */
 	public GaussianDistribution transform(GaussianDistribution gaussian) {
+		return this.transform(gaussian.getMean(), gaussian.getCovariance());
+	}
+	
+	/**
+	 * Transform the Gaussian distribution with given <code>mean</code> and <code>covariance</code> with this transform,
+	 * i.e. compute the Kalman prediction A*x and A*P*A^T + Q without temporary matrices.
+	 */
+	public GaussianDistribution transform(Matrix mean, Matrix covariance) {
+		
+		int r = this.trafo.getRowDimension();
+		
+		Matrix x = new Matrix(r, 1);
+		MTBSmallMatrixKernels.multiply(this.trafo.getArray(), mean.getArray(), x.getArray());
 		
-		Matrix x = this.trafo.times(gaussian.getMean());
-		Matrix P = this.trafo.times(gaussian.getCovariance().times(this.trafo.transpose()));
-		P.plusEquals(this.noiseCov);
+		Matrix P = new Matrix(r, r);
+		MTBSmallMatrixKernels.congruence(this.trafo.getArray(), covariance.getArray(), this.noiseCov.getArray(), P.getArray());
 		
 		return new GaussianDistribution(x,P);
 	}
@@ -80,17 +80,23 @@ public class GaussMixDistribution extends MixtureDistribution
 	@Override
 	public Matrix getCovariance() {
 		Matrix m = this.getMean();
+		double[][] mu = m.getArray();
+		int n = mu.length;
 		
-		Matrix dm = ((GaussianDistribution)this.pdfs[0]).getMean().minus(m);
+		// P = sum_i w_i * (P_i + (m_i - m)(m_i - m)^T), accumulated in place
+		Matrix P = new Matrix(n, n);
+		double[][] p = P.getArray();
 		
-		Matrix P = ((GaussianDistribution)this.pdfs[0]).getCovariance().copy();
-		P.plusEquals(dm.times(dm.transpose()));
-		P.timesEquals(this.weights[0]);
-		
-		for (int i = 1; i < this.pdfs.length; i++) {
-			dm = ((GaussianDistribution)this.pdfs[i]).getMean().minus(m);
+		for (int i = 0; i < this.pdfs.length; i++) {
+			double[][] mi = ((GaussianDistribution)this.pdfs[i]).getMean().getArray();
+			double[][] Pi = ((GaussianDistribution)this.pdfs[i]).getCovariance().getArray();
+			double w = this.weights[i];
 			
-			P.plusEquals((((GaussianDistribution)this.pdfs[i]).getCovariance().plus(dm.times(dm.transpose()))).times(this.weights[i]));
+			for (int r = 0; r < n; r++) {
+				double dr = mi[r][0] - mu[r][0];
+				for (int c = 0; c < n; c++)
+					p[r][c] += w * (Pi[r][c] + dr * (mi[c][0] - mu[c][0]));
+			}
 		}
 		
 		return P;
@@ -98,11 +104,16 @@ public class GaussMixDistribution extends MixtureDistribution
 
 	@Override
 	public Matrix getMean() {
-		Matrix mean = ((GaussianDistribution)this.pdfs[0]).getMean().copy();
-		mean.timesEquals(this.weights[0]);
+		int n = ((GaussianDistribution)this.pdfs[0]).getMean().getRowDimension();
+		Matrix mean = new Matrix(n, 1);
+		double[][] m = mean.getArray();
 		
-		for (int i = 1; i < this.pdfs.length; i++) {
-			mean.plusEquals(((GaussianDistribution)this.pdfs[i]).getMean().times(this.weights[i]));
+		for (int i = 0; i < this.pdfs.length; i++) {
+			double[][] mi = ((GaussianDistribution)this.pdfs[i]).getMean().getArray();
+			double w = this.weights[i];
+			
+			for (int r = 0; r < n; r++)
+				m[r][0] += w * mi[r][0];
 		}
 		
 		return mean;
@@ -27,6 +27,7 @@ import java.util.Random;
 
 import Jama.CholeskyDecomposition;
 import Jama.Matrix;
+import de.unihalle.informatik.MiToBo.math.linearalgebra.MTBSmallMatrixKernels;
 import de.unihalle.informatik.MiToBo.math.distributions.interfaces.FirstOrderMoment;
 import de.unihalle.informatik.MiToBo.math.distributions.interfaces.LogProbabilityDensityFunction;
 import de.unihalle.informatik.MiToBo.math.distributions.interfaces.ProbabilityDensityFunction;
@@ -36,6 +37,11 @@ import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.interfaces.C
 
 /**
  * A multivariate Gaussian distribution.
+ * <p>
+ * The covariance matrix is represented by its Cholesky factor and the inverse of
+ * this factor, which are computed once when the covariance is set. Densities and
+ * Mahalanobis distances are evaluated by {@link MTBSmallMatrixKernels} without
+ * allocating temporary matrices. The inverse covariance matrix is only computed on demand.
  * 
  * @author Oliver Gress
  *
@@ -49,7 +55,7 @@ public class GaussianDistribution implements ProbabilityDensityFunction, LogProb
 	/** covariance matrix */
 	protected Matrix cov;
 	
-	/** inverse covariance matrix */
+	/** inverse covariance matrix, computed on demand */
 	protected Matrix icov;
 	
 	/** random generator for sampling */
@@ -61,7 +67,11 @@ public class GaussianDistribution implements ProbabilityDensityFunction, LogProb
 	/** log of the normalization factor */
 	protected double logfactor;
 
-	protected Matrix L;
+	/** lower triangular Cholesky factor L of the covariance matrix */
+	protected double[][] L;
+	
+	/** inverse of the Cholesky factor, null if the covariance matrix is not positive definite */
+	protected double[][] iL;
 	
 	/**
 	 * Constructor for a Gaussian distribution of dimension DOF
@@ -87,7 +97,8 @@ public class GaussianDistribution implements ProbabilityDensityFunction, LogProb
 		for (int i = 0; i < DOF; i++)
 			this.cov.set(i, i, 1.0);
 		
-		this.L = this.cov.copy();
+		this.L = this.cov.getArrayCopy();
+		this.iL = this.cov.getArrayCopy();
 		
 		this.icov = this.cov.copy();
 		
@@ -126,16 +137,59 @@ public class GaussianDistribution implements ProbabilityDensityFunction, LogProb
 		this.mean = mean;
 		this.cov = covariance;
 		
-		CholeskyDecomposition chol = new CholeskyDecomposition(this.cov);
-		//if (!chol.isSPD()) {
-		//	throw new IllegalArgumentException("Covariance matrix is not valid: Not positive semi-definite.");
-		//}
-		this.L = chol.getL();
+		this.factorize(false);
+	}
+	
+	/**
+	 * Copy constructor. The covariance factors are never modified in place and therefore shared.
+	 */
+	protected GaussianDistribution(GaussianDistribution g) {
+		this.rand = g.rand;
+		this.mean = g.mean.copy();
+		this.cov = g.cov.copy();
+		this.icov = (g.iL == null) ? g.icov.copy() : null;
+		this.L = g.L;
+		this.iL = g.iL;
+		this.normfactor = g.normfactor;
+		this.logfactor = g.logfactor;
+	}
+	
+	/**
+	 * Compute the Cholesky factor of the covariance matrix, its inverse and the normalization factors.
+	 * If the covariance matrix is not positive definite, the general inverse and determinant are used
+	 * unless <code>requireSPD</code> is set.
+	 * @param requireSPD throw an exception if the covariance matrix is not positive definite
+	 * @throws IllegalArgumentException
+	 */
+	private void factorize(boolean requireSPD) throws IllegalArgumentException {
 		
-		this.icov = this.cov.inverse();
+		double[][] l = this.cov.getArrayCopy();
+		double logdet;
 		
-		this.normfactor = 1.0/(Math.pow(2*Math.PI, mean.getRowDimension()/2.0) * Math.sqrt(this.cov.det()));
-		this.logfactor = - mean.getRowDimension()/2.0*Math.log(2.0*Math.PI) - 0.5*Math.log(this.cov.det());
+		if (MTBSmallMatrixKernels.choleskyInPlace(l)) {
+			this.L = l;
+			
+			this.iL = new double[l.length][];
+			for (int i = 0; i < l.length; i++)
+				this.iL[i] = l[i].clone();
+			MTBSmallMatrixKernels.invertLowerInPlace(this.iL);
+			
+			this.icov = null;
+			logdet = MTBSmallMatrixKernels.logDetCholesky(l);
+		}
+		else if (requireSPD) {
+			throw new IllegalArgumentException("Covariance matrix is not valid: Not positive semi-definite.");
+		}
+		else {
+			this.L = new CholeskyDecomposition(this.cov).getL().getArray();
+			this.iL = null;
+			
+			this.icov = this.cov.inverse();
+			logdet = Math.log(this.cov.det());
+		}
+		
+		this.normfactor = 1.0/(Math.pow(2*Math.PI, mean.getRowDimension()/2.0) * Math.exp(0.5*logdet));
+		this.logfactor = - mean.getRowDimension()/2.0*Math.log(2.0*Math.PI) - 0.5*logdet;
 	}
 	
 	/**
@@ -165,9 +219,23 @@ public class GaussianDistribution implements ProbabilityDensityFunction, LogProb
 	}
 	
 	public Matrix getInverseCovariance() {
+		if (this.icov == null) {
+			Matrix ic = new Matrix(this.iL.length, this.iL.length);
+			MTBSmallMatrixKernels.inverseFromInverseCholesky(this.iL, ic.getArray());
+			this.icov = ic;
+		}
 		return this.icov;
 	}
 	
+	/**
+	 * Returns the inverse W of the Cholesky factor of the covariance matrix, i.e. the inverse
+	 * covariance is W^T W. The array is shared and must not be modified.
+	 * @return inverse Cholesky factor or null if the covariance matrix is not positive definite
+	 */
+	public double[][] getInverseCholeskyFactor() {
+		return this.iL;
+	}
+	
 	public void setCovariance(Matrix covariance) throws IllegalArgumentException {
 		
 		if (covariance.getRowDimension() != this.cov.getRowDimension()) {
@@ -177,34 +245,36 @@ public class GaussianDistribution implements ProbabilityDensityFunction, LogProb
 			throw new IllegalArgumentException("Covariance matrix must be square.");
 		}
 		
-		this.cov = covariance;		
+		Matrix oldcov = this.cov;
+		this.cov = covariance;
 		
-		CholeskyDecomposition chol = new CholeskyDecomposition(this.cov);
-		if (!chol.isSPD()) {
-			throw new IllegalArgumentException("Covariance matrix is not valid: Not positive semi-definite.");
+		try {
+			this.factorize(true);
+		} catch (IllegalArgumentException e) {
+			this.cov = oldcov;
+			throw e;
 		}
-		this.L = chol.getL();
-		
-		this.icov = this.cov.inverse();
+	}
+	
+	/**
+	 * Squared Mahalanobis distance of x to the mean.
+	 */
+	private double mahalanobisSq(Matrix x) {
+		if (this.iL != null)
+			return MTBSmallMatrixKernels.mahalanobisSq(this.iL, x.getArray(), this.mean.getArray());
 		
-		this.normfactor = 1.0/(Math.pow(2*Math.PI, mean.getRowDimension()/2.0) * Math.sqrt(this.cov.det()));
-		this.logfactor = - mean.getRowDimension()/2.0*Math.log(2.0*Math.PI) - 0.5*Math.log(this.cov.det());
+		Matrix x_ = x.minus(this.mean);
+		return x_.transpose().times(this.icov.times(x_)).get(0, 0);
 	}
 	
 	@Override
 	public double log_p(Matrix x) {
-		Matrix x_ = x.plus(mean.times(-1.0));
-		Matrix cx_ = this.icov.times(x_);
-		Matrix xcx_ = x_.transpose().times(cx_);
-		return logfactor - 0.5*xcx_.get(0, 0);
+		return logfactor - 0.5*this.mahalanobisSq(x);
 	}
 
 	@Override
 	public double p(Matrix x) {
-		Matrix x_ = x.plus(mean.times(-1.0));
-		Matrix cx_ = this.icov.times(x_);
-		Matrix xcx_ = x_.transpose().times(cx_);
-		return this.normfactor * Math.exp(-0.5*xcx_.get(0, 0));
+		return this.normfactor * Math.exp(-0.5*this.mahalanobisSq(x));
 	}
 
 	@Override
@@ -216,22 +286,19 @@ public class GaussianDistribution implements ProbabilityDensityFunction, LogProb
 			x.set(i, 0, rand.nextGaussian());
 		}
 		
-		x = L.times(x);
+		MTBSmallMatrixKernels.multiplyLowerInPlace(this.L, x.getArray());
 		x.plusEquals(this.mean);
 		
 		return x;
 	}
 
 	public double mahalanobis(Matrix x) {
-		Matrix x_ = x.plus(mean.times(-1.0));
-		Matrix cx_ = this.icov.times(x_);
-		Matrix xcx_ = x_.transpose().times(cx_);
-		return 0.5*xcx_.get(0, 0);
+		return 0.5*this.mahalanobisSq(x);
 	}
 
 	@Override
 	public GaussianDistribution copy() {
-		return new GaussianDistribution(this.mean.copy(), this.cov.copy(), this.rand);
+		return new GaussianDistribution(this);
 	}
 	
 }
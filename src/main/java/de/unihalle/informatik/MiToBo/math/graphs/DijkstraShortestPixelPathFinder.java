@@ -27,16 +27,15 @@ package de.unihalle.informatik.MiToBo.math.graphs;
 import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
 
 import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Vector;
 
-import org.jgrapht.GraphPath;
-import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
-import org.jgrapht.graph.DefaultEdge;
-import org.jgrapht.graph.DirectedWeightedPseudograph;
-
 import de.unihalle.informatik.Alida.annotations.ALDAOperator;
 import de.unihalle.informatik.Alida.annotations.ALDAOperator.Level;
 import de.unihalle.informatik.Alida.annotations.Parameter;
+import de.unihalle.informatik.Alida.annotations.Parameter.ExpertMode;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.*;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
 import de.unihalle.informatik.MiToBo.core.operator.*;
@@ -51,13 +50,18 @@ import de.unihalle.informatik.MiToBo.core.operator.*;
  * The algorithm seeks to minimize path cost, i.e., is looking for path along
  * dark pixels.
  * <p>
- * The path is found applying the Dijkstra graph search algorithm as 
- * implemented in the JGraphT library released under GPL by Barak Naveh and 
- * contributors. For details refer to the webpage of the library, 
- * <a href="https://jgrapht.org/">https://jgrapht.org/</a>, and to the API 
- * documentation of the 
- * <a href="https://jgrapht.org/javadoc/org/jgrapht/alg/shortestpath/DijkstraShortestPath.html">
- * Dijkstra class</a>.
+ * The graph is not built explicitly. Nodes and edge weights are derived 
+ * from the image on the fly while searching, and distances, predecessors 
+ * and the priority queue, an {@link IndexedMinHeap}, are kept in flat arrays 
+ * indexed by the linear pixel index. Besides Dijkstra's algorithm also an 
+ * A* search can be selected. It uses the minimal edge weight times the 
+ * number of steps still required to reach the end pixel as heuristic which 
+ * never overestimates the true costs, i.e., yields optimal paths as well.
+ * <p>
+ * If a set of end pixels is specified, the paths from the start pixel to
+ * all of them are extracted in a single Dijkstra run. The path with 
+ * minimal costs is then returned as result path, all paths can be 
+ * accessed via {@link #getResultPaths()}.
  * 
  * @author moeller
  */
@@ -88,6 +92,30 @@ public class DijkstraShortestPixelPathFinder extends MTBOperator {
 		INTENSITY_EXPONENTIAL
 	}
 	
+	/**
+	 * Available search algorithms.
+	 */
+	public static enum SearchMode {
+		/**
+		 * Dijkstra's algorithm.
+		 */
+		DIJKSTRA,
+		/**
+		 * A* search, only applied if there is a single end pixel.
+		 */
+		A_STAR
+	}
+	
+	/**
+	 * Offsets of the 8 neighbors in x.
+	 */
+	private static final int[] neighborDx = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+	/**
+	 * Offsets of the 8 neighbors in y.
+	 */
+	private static final int[] neighborDy = {-1, -1, -1, 0, 0, 1, 1, 1};
+
 	/**
 	 * Input gray-scale image.
 	 * <p>
@@ -142,6 +170,26 @@ public class DijkstraShortestPixelPathFinder extends MTBOperator {
 				+ "inverted mode is active) are considered.")
 	protected double nodeThreshold = Double.MAX_VALUE;
 
+	/**
+	 * Search algorithm.
+	 */
+	@Parameter( label= "Search Mode", required = false, dataIOOrder = 4,
+		direction = Parameter.Direction.IN, mode = ExpertMode.ADVANCED,
+		description = "Search algorithm.")
+	protected SearchMode searchMode = SearchMode.DIJKSTRA;
+
+	/**
+	 * Optional set of end pixels.
+	 * <p>
+	 * If given, paths to all of these pixels are extracted and the end pixel 
+	 * {@link #endPoint} is ignored.
+	 */
+	@Parameter( label= "End Pixels", required = false, dataIOOrder = 5,
+		direction = Parameter.Direction.IN, mode = ExpertMode.ADVANCED,
+		description = "Optional set of end pixels, if given the single end "
+				+ "pixel is ignored.")
+	protected Vector<Point2D.Double> endPoints = null;
+
 	/**
 	 * Result image with path overlay, start pixel in green, end pixel in blue.
 	 */
@@ -163,13 +211,37 @@ public class DijkstraShortestPixelPathFinder extends MTBOperator {
 		dataIOOrder = 3, description = "Costs of result path.")
 	protected double resultCosts;
 	
+	/**
+	 * Paths to all end pixels, entries are null if no path was found.
+	 */
+	protected Vector<Vector<Point2D.Double>> resultPaths;
+
+	/**
+	 * Costs of paths to all end pixels, NaN if no path was found.
+	 */
+	protected double[] resultCostsAll;
+
 	// some local helper variables
 	
 	/**
-	 * Maximum intensity value in working image, i.e. after potential inversion
-	 * of image intensity values.
+	 * Width of the input image.
+	 */
+	private int width;
+
+	/**
+	 * Height of the input image.
+	 */
+	private int height;
+
+	/**
+	 * Maximum intensity value of the input image, required for inversion.
+	 */
+	private double inImgMaxVal;
+	
+	/**
+	 * Threshold on work intensities, i.e. after potential inversion.
 	 */
-	private double workImgMaxVal;
+	private double workThresh;
 	
 	/**
 	 * Default constructor.
@@ -219,6 +291,14 @@ public class DijkstraShortestPixelPathFinder extends MTBOperator {
 		this.endPoint = ep;
 	}
 
+	/**
+	 * Specify a set of end pixels.
+	 * @param eps	End pixels, if null the single end pixel is used.
+	 */
+	public void setEndPixels(Vector<Point2D.Double> eps) {
+		this.endPoints = eps;
+	}
+
 	/**
 	 * Set threshold for filtering nodes.
 	 * @param t	Threshold to apply.
@@ -227,6 +307,14 @@ public class DijkstraShortestPixelPathFinder extends MTBOperator {
 		this.nodeThreshold = t;
 	}
 	
+	/**
+	 * Select search algorithm.
+	 * @param m	Search mode.
+	 */
+	public void setSearchMode(SearchMode m) {
+		this.searchMode = m;
+	}
+	
 	/**
 	 * Returns the result image with path overlay.
 	 * @return Overlay image.
@@ -237,6 +325,10 @@ public class DijkstraShortestPixelPathFinder extends MTBOperator {
 
 	/**
 	 * Returns the extracted shortest path as point list.
+	 * <p>
+	 * If several end pixels were given, the path with minimal costs is 
+	 * returned.
+	 * 
 	 * @return	Result path with minimal cost, null if none was found.
 	 */
 	public Vector<Point2D.Double> getResultPath() {
@@ -251,6 +343,22 @@ public class DijkstraShortestPixelPathFinder extends MTBOperator {
 		return this.resultCosts;
 	}
 	
+	/**
+	 * Returns the shortest paths to all end pixels.
+	 * @return	Paths in order of end pixels, null entries if no path exists.
+	 */
+	public Vector<Vector<Point2D.Double>> getResultPaths() {
+		return this.resultPaths;
+	}
+	
+	/**
+	 * Returns the costs of the shortest paths to all end pixels.
+	 * @return	Costs in order of end pixels, NaN if no path exists.
+	 */
+	public double[] getResultCostsAll() {
+		return this.resultCostsAll;
+	}
+	
 	/* (non-Javadoc)
 	 * @see de.unihalle.informatik.Alida.operator.ALDOperator#operate()
 	 */
@@ -258,189 +366,217 @@ public class DijkstraShortestPixelPathFinder extends MTBOperator {
 	protected void operate() {
 
 		// some local variables
-		int width = this.inImg.getSizeX();
-		int height = this.inImg.getSizeY();
+		this.width = this.inImg.getSizeX();
+		this.height = this.inImg.getSizeY();
 
-		// create work image, from now on always small intensity values are good!
-		MTBImage workImage = this.inImg.duplicate();
-		double maxVal = workImage.getMinMaxDouble()[1], newval;
-		this.workImgMaxVal = 0;
-		
-		double workThresh;
+		// from now on always small work intensity values are good!
+		this.inImgMaxVal = this.inImg.getMinMaxDouble()[1];
 		if (this.invertPixelValues) {
-			for (int y=0; y<height; ++y) {
-				for (int x=0; x<width; ++x) {
-					newval = maxVal - workImage.getValueDouble(x, y);
-					workImage.putValueDouble(x, y, newval);
-					if (newval > this.workImgMaxVal) {
-						this.workImgMaxVal = newval;
-					}
-				}
-			}
-			workThresh = maxVal - this.nodeThreshold;
+			this.workThresh = this.inImgMaxVal - this.nodeThreshold;
 		}
 		else {
-			workThresh = this.nodeThreshold;
-			this.workImgMaxVal = maxVal;
+			this.workThresh = this.nodeThreshold;
 		}
 		
-		// graph object
-		DirectedWeightedPseudograph<GraphNode, DefaultEdge> swg = 
-				new DirectedWeightedPseudograph<>(DefaultEdge.class);
-		
-		// array to store the nodes, some entries might be null
-		GraphNode[][] nodes = new GraphNode[height][width];
-
-		// construct graph, include only nodes with values below threshold
-		for (int y=0; y<height; ++y) {
-			for (int x=0; x<width; ++x) {
-				if (workImage.getValueDouble(x, y) <= workThresh) {
-					nodes[y][x] = new GraphNode(x,y); 
-					swg.addVertex(nodes[y][x]);
-				}
-				else
-					nodes[y][x] = null;
-			}
+		// collect end pixels
+		Vector<Point2D.Double> ends = this.endPoints;
+		if (ends == null || ends.isEmpty()) {
+			ends = new Vector<>();
+			ends.add(this.endPoint);
+		}
+		int start = (int)this.startPoint.y * this.width + (int)this.startPoint.x;
+		int[] targets = new int[ends.size()];
+		for (int i=0; i<targets.length; ++i) {
+			targets[i] = (int)ends.get(i).y * this.width + (int)ends.get(i).x;
 		}
 		
-		// add edges
-		DefaultEdge e;
-		double val_1, val_2;
-		for (int y=0; y<height; ++y) {
-			for (int x=0; x<width; ++x) {
-				
-				// absolute value of node too small, skip it
-				if (nodes[y][x] == null)
-					continue;
-				
-				val_1 = workImage.getValueDouble(x, y);
-				if (y+1 < height) {
-					if (x-1 >= 0) {
-						if (nodes[y+1][x-1] != null) {
-							val_2 = workImage.getValueDouble(x-1, y+1);
-							e = swg.addEdge(nodes[y][x], nodes[y+1][x-1]);
-							swg.setEdgeWeight(e, this.getWeight(val_1, val_2));
-							
-							e = swg.addEdge(nodes[y+1][x-1], nodes[y][x]);
-							swg.setEdgeWeight(e, this.getWeight(val_2, val_1));
-						}
-					}
-					if (nodes[y+1][x] != null) {
-						val_2 = workImage.getValueDouble(x, y+1);
-						e = swg.addEdge(nodes[y][x], nodes[y+1][x]);						
-						swg.setEdgeWeight(e, this.getWeight(val_1, val_2));
-						
-						e = swg.addEdge(nodes[y+1][x], nodes[y][x]);	
-						swg.setEdgeWeight(e, this.getWeight(val_2, val_1));
-					}
-					if (x+1 < width) {
-						if (nodes[y+1][x+1] != null) {
-							val_2 = workImage.getValueDouble(x+1, y+1);
-							e = swg.addEdge(nodes[y][x], nodes[y+1][x+1]);						
-							swg.setEdgeWeight(e, this.getWeight(val_1, val_2));
-							
-							e = swg.addEdge(nodes[y+1][x+1], nodes[y][x]);						
-							swg.setEdgeWeight(e, this.getWeight(val_2, val_1));
-						}
-					}
-				}
-				if (x+1 < width) {
-					if (nodes[y][x+1] != null) {
-						val_2 = workImage.getValueDouble(x+1, y);
-						e = swg.addEdge(nodes[y][x], nodes[y][x+1]);
-						swg.setEdgeWeight(e, this.getWeight(val_1, val_2));
-						
-						e = swg.addEdge(nodes[y][x+1], nodes[y][x]);
-						swg.setEdgeWeight(e, this.getWeight(val_2, val_1));
-					}
-				}
+		// search paths, nodes above threshold are ignored
+		double[] dist = new double[this.width * this.height];
+		int[] pred = new int[this.width * this.height];
+		this.searchPaths(start, targets, dist, pred);
+		
+		// extract paths
+		this.resultPaths = new Vector<>();
+		this.resultCostsAll = new double[targets.length];
+		this.resultPath = null;
+		this.resultCosts = Double.NaN;
+		for (int i=0; i<targets.length; ++i) {
+			int t = targets[i];
+			if (Double.isInfinite(dist[t])) {
+				this.resultPaths.add(null);
+				this.resultCostsAll[i] = Double.NaN;
+				continue;
+			}
+			Vector<Point2D.Double> path = new Vector<>();
+			for (int p = t; p != -1; p = pred[p]) {
+				path.add(new Point2D.Double(p % this.width, p / this.width));
+			}
+			Collections.reverse(path);
+			this.resultPaths.add(path);
+			this.resultCostsAll[i] = dist[t];
+			if (this.resultPath == null || dist[t] < this.resultCosts) {
+				this.resultPath = path;
+				this.resultCosts = dist[t];
 			}
 		}
-		
+
 		// init result image
 		this.resultImg = (MTBImageRGB) MTBImage.createMTBImage(
-				width, height, 1, 1, 1, MTBImageType.MTB_RGB);
-		for (int y = 0; y < height; y++) {
-			for (int x = 0; x < width; x++) {
+				this.width, this.height, 1, 1, 1, MTBImageType.MTB_RGB);
+		for (int y = 0; y < this.height; y++) {
+			for (int x = 0; x < this.width; x++) {
 				this.resultImg.putValueR(x, y, this.inImg.getValueInt(x, y));
 				this.resultImg.putValueG(x, y, this.inImg.getValueInt(x, y));
 				this.resultImg.putValueB(x, y, this.inImg.getValueInt(x, y));
 			}
 		}
 
-		// extract path (no radius is applied)
-		DijkstraShortestPath<GraphNode, DefaultEdge> dsp = 
-				new DijkstraShortestPath<>(swg, Double.POSITIVE_INFINITY);
-		GraphPath<GraphNode, DefaultEdge> gp = dsp.getPath(
-			nodes[(int)this.startPoint.y][(int)this.startPoint.x], 
-				nodes[(int)this.endPoint.y][(int)this.endPoint.x]);
-
-		if (gp != null) {
-			this.resultPath = new Vector<>();
-			for (GraphNode n : gp.getVertexList()) {
-				this.resultPath.add(new Point2D.Double(n.xc, n.yc));
-			}
-			this.resultCosts = dsp.getPathWeight(
-				nodes[(int)this.startPoint.y][(int)this.startPoint.x], 
-					nodes[(int)this.endPoint.y][(int)this.endPoint.x]);
-		}
-		else {
-			this.resultPath = null;
-			this.resultCosts = Double.NaN;
-		}
-		
-		// overlay path to output image
-		if (gp != null) {
-			for (GraphNode n : gp.getVertexList()) {
-				int nxc = n.xc;
-				int nyc = n.yc;
+		// overlay paths to output image
+		for (Vector<Point2D.Double> path : this.resultPaths) {
+			if (path == null)
+				continue;
+			for (Point2D.Double n : path) {
+				int nxc = (int)n.x;
+				int nyc = (int)n.y;
 				this.resultImg.putValueR(nxc, nyc, 255);
 				this.resultImg.putValueG(nxc, nyc, 0);
 				this.resultImg.putValueB(nxc, nyc, 0);
 			}
 			// start point in green
-			int sx = gp.getVertexList().get(0).xc;
-			int sy = gp.getVertexList().get(0).yc;
-			for (int dy = -1; dy<=1; ++dy) {
-				for (int dx = -1; dx<=1; ++dx) {
-					if (dx != 0 && dy != 0)
-						continue;
-					if (sx+dx >= 0 && sx+dx < width && sy+dy >= 0 && sy+dy < height) {
-						this.resultImg.putValueR(sx+dx, sy+dy, 0);
-						this.resultImg.putValueG(sx+dx, sy+dy, 255);
-						this.resultImg.putValueB(sx+dx, sy+dy, 0);
-					}
+			this.markPixel((int)path.get(0).x, (int)path.get(0).y, 0, 255, 0);
+			// end point in blue
+			int length = path.size();
+			this.markPixel((int)path.get(length-1).x, (int)path.get(length-1).y, 
+				0, 0, 255);
+		}
+	}
+	
+	/**
+	 * Marks a pixel and its 4-neighbors in the result image.
+	 * @param px	x-coordinate.
+	 * @param py	y-coordinate.
+	 * @param r		Red value.
+	 * @param g		Green value.
+	 * @param b		Blue value.
+	 */
+	private void markPixel(int px, int py, int r, int g, int b) {
+		for (int dy = -1; dy<=1; ++dy) {
+			for (int dx = -1; dx<=1; ++dx) {
+				if (dx != 0 && dy != 0)
+					continue;
+				if (   px+dx >= 0 && px+dx < this.width 
+						&& py+dy >= 0 && py+dy < this.height) {
+					this.resultImg.putValueR(px+dx, py+dy, r);
+					this.resultImg.putValueG(px+dx, py+dy, g);
+					this.resultImg.putValueB(px+dx, py+dy, b);
 				}
 			}
-			// end point in blue
-			int length = gp.getVertexList().size();
-			int ex = gp.getVertexList().get(length-1).xc;
-			int ey = gp.getVertexList().get(length-1).yc;
-			for (int dy = -1; dy<=1; ++dy) {
-				for (int dx = -1; dx<=1; ++dx) {
-					if (dx != 0 && dy != 0)
-						continue;
-					if (ex+dx >= 0 && ex+dx < width && ey+dy >= 0 && ey+dy < height) {
-						this.resultImg.putValueR(ex+dx, ey+dy, 0);
-						this.resultImg.putValueG(ex+dx, ey+dy, 0);
-						this.resultImg.putValueB(ex+dx, ey+dy, 255);
-					}
+		}
+	}
+	
+	/**
+	 * Searches shortest paths from the start pixel to all target pixels.
+	 * <p>
+	 * The search stops as soon as all targets have been reached. A* search 
+	 * is applied if selected and if there is only a single target.
+	 * 
+	 * @param start		Linear index of start pixel.
+	 * @param targets	Linear indices of target pixels.
+	 * @param dist		Array for distances, infinity for pixels not reached.
+	 * @param pred		Array for predecessors on shortest paths.
+	 */
+	private void searchPaths(int start, int[] targets, 
+			double[] dist, int[] pred) {
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		Arrays.fill(pred, -1);
+		
+		int sx = start % this.width, sy = start / this.width;
+		if (   sx < 0 || sx >= this.width || sy < 0 || sy >= this.height
+				|| this.getWorkValue(sx, sy) > this.workThresh)
+			return;
+		
+		BitSet targetSet = new BitSet(dist.length);
+		for (int t: targets)
+			targetSet.set(t);
+		int remaining = targetSet.cardinality();
+
+		// A* heuristic: minimal weight times Chebyshev distance to target
+		boolean useAStar = 
+			(this.searchMode == SearchMode.A_STAR && remaining == 1);
+		double minWeight = 0;
+		int tx = targets[0] % this.width, ty = targets[0] / this.width;
+		double[] keys = dist;
+		if (useAStar) {
+			minWeight = Double.POSITIVE_INFINITY;
+			for (int y = 0; y < this.height; y++) {
+				for (int x = 0; x < this.width; x++) {
+					double v = this.getWorkValue(x, y);
+					if (v <= this.workThresh)
+						minWeight = Math.min(minWeight, this.getWeight(v));
 				}
 			}
+			minWeight = Math.max(0, minWeight);
+			keys = new double[dist.length];
 		}
+		
+		IndexedMinHeap heap = new IndexedMinHeap(dist.length, keys);
+		dist[start] = 0;
+		if (useAStar)
+			keys[start] = minWeight * Math.max(Math.abs(sx-tx), Math.abs(sy-ty));
+		heap.insertOrUpdate(start);
+		while (!heap.isEmpty()) {
+			int p = heap.pop();
+			if (targetSet.get(p)) {
+				--remaining;
+				if (remaining == 0)
+					break;
+			}
+			int x = p % this.width, y = p / this.width;
+			for (int k = 0; k < 8; ++k) {
+				int nx = x + neighborDx[k], ny = y + neighborDy[k];
+				if (nx < 0 || nx >= this.width || ny < 0 || ny >= this.height)
+					continue;
+				int q = ny * this.width + nx;
+				if (heap.isSettled(q))
+					continue;
+				double v = this.getWorkValue(nx, ny);
+				if (v > this.workThresh)
+					continue;
+				double d = dist[p] + this.getWeight(v);
+				if (d < dist[q]) {
+					dist[q] = d;
+					pred[q] = p;
+					if (useAStar)
+						keys[q] = d 
+							+ minWeight * Math.max(Math.abs(nx-tx), Math.abs(ny-ty));
+					heap.insertOrUpdate(q);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the work intensity of a pixel, i.e. after potential inversion.
+	 * @param x	x-coordinate.
+	 * @param y	y-coordinate.
+	 * @return	Work intensity, small values are good.
+	 */
+	private double getWorkValue(int x, int y) {
+		if (this.invertPixelValues)
+			return this.inImgMaxVal - this.inImg.getValueDouble(x, y);
+		return this.inImg.getValueDouble(x, y);
 	}
 	
 	/**
-	 * Return edge weight for edge between given nodes.
+	 * Return edge weight for edge towards the given node.
 	 * <p>
 	 * We assume here that small intensity values of the target node are good,
 	 * i.e., the edge towards the pixel should ge a small weight.
 	 * 
-	 * @param v1	Source node of edge.
-	 * @param v2	Target node of edge.
+	 * @param v2	Work intensity of target node of edge.
 	 * @return	Weight for edge according to selected weight model.
 	 */
-	private double getWeight(@SuppressWarnings("unused") double v1, double v2) {
+	private double getWeight(double v2) {
 		
 		double weight = v2; 
 		
@@ -458,31 +594,4 @@ public class DijkstraShortestPixelPathFinder extends MTBOperator {
 			return weight;
 		}
 	}
-	
-	/**
-	 * Local class to represent the nodes of the graph.
-	 */
-	protected class GraphNode {
-
-		/**
-		 * x-coordinate associated with the node.
-		 */
-		public int xc;
-		
-		/**
-		 * y-coordinate associated with the node.
-		 */
-		public int yc;
-		
-		/**
-		 * Default constructor.
-		 * @param x		Coordinate in x-direction.
-		 * @param y		Coordinate in y-direction.
-		 */
-		public GraphNode(int x, int y) {
-			this.xc = x;
-			this.yc = y;
-		}
-		
-	}
 }
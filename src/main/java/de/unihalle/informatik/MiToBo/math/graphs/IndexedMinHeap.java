@@ -0,0 +1,237 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.math.graphs;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of node indices with keys stored in an external array.
+ * <p>
+ * Nodes are integers from 0 to the number of nodes minus one. The position 
+ * of each node in the heap is tracked which allows to change keys in 
+ * logarithmic time, e.g., for Dijkstra's algorithm or fast marching. 
+ * Nodes with equal keys are returned in the order in which they were last 
+ * inserted or updated. Nodes removed from the heap are marked as settled, 
+ * but may be inserted again.
+ * <p>
+ * The keys are owned by the caller. Whenever the key of a node in the heap 
+ * is changed, {@link #insertOrUpdate(int)} has to be called for the node.
+ * 
+ * @author agent
+ */
+public class IndexedMinHeap {
+
+	/**
+	 * Marker for nodes not in the heap.
+	 */
+	private static final int notInHeap = -1;
+	
+	/**
+	 * Marker for nodes already removed from the heap.
+	 */
+	private static final int settled = -2;
+	
+	/**
+	 * Keys of the nodes.
+	 */
+	private final double[] keys;
+	
+	/**
+	 * Insertion counters of the nodes, used to resolve ties.
+	 */
+	private final long[] stamps;
+
+	/**
+	 * Heap array of node indices.
+	 */
+	private int[] heap;
+	
+	/**
+	 * Position of each node in the heap array.
+	 */
+	private final int[] position;
+	
+	/**
+	 * Number of nodes in the heap.
+	 */
+	private int size = 0;
+	
+	/**
+	 * Number of insertions and updates so far.
+	 */
+	private long counter = 0;
+	
+	/**
+	 * Constructor.
+	 * @param nodeNum	Total number of nodes.
+	 * @param k				Array of node keys, at least of length nodeNum.
+	 */
+	public IndexedMinHeap(int nodeNum, double[] k) {
+		this.keys = k;
+		this.stamps = new long[nodeNum];
+		this.heap = new int[Math.max(1, Math.min(nodeNum, 1024))];
+		this.position = new int[nodeNum];
+		Arrays.fill(this.position, notInHeap);
+	}
+	
+	/**
+	 * Checks if the heap is empty.
+	 * @return	True if there are no nodes in the heap.
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+	
+	/**
+	 * Returns the number of nodes currently in the heap.
+	 * @return	Number of nodes.
+	 */
+	public int size() {
+		return this.size;
+	}
+	
+	/**
+	 * Checks if a node is currently in the heap.
+	 * @param node	Node index.
+	 * @return	True if node is in the heap.
+	 */
+	public boolean contains(int node) {
+		return this.position[node] >= 0;
+	}
+	
+	/**
+	 * Checks if the node was removed from the heap by {@link #pop()}
+	 * and not inserted again afterwards.
+	 * @param node	Node index.
+	 * @return	True if node is settled.
+	 */
+	public boolean isSettled(int node) {
+		return this.position[node] == settled;
+	}
+	
+	/**
+	 * Inserts a node or restores heap order after its key was changed.
+	 * <p>
+	 * The node is treated as most recently inserted among nodes with 
+	 * equal key.
+	 * @param node	Node index.
+	 */
+	public void insertOrUpdate(int node) {
+		int i = this.position[node];
+		if (i < 0) {
+			if (this.size == this.heap.length)
+				this.heap = Arrays.copyOf(this.heap, 2 * this.heap.length);
+			i = this.size++;
+		}
+		this.stamps[node] = this.counter++;
+		int j = this.siftUp(node, i);
+		if (j == i)
+			j = this.siftDown(node, i);
+		this.heap[j] = node;
+		this.position[node] = j;
+	}
+	
+	/**
+	 * Removes the node with minimal key.
+	 * @return	Node index.
+	 */
+	public int pop() {
+		int top = this.heap[0];
+		this.position[top] = settled;
+		--this.size;
+		if (this.size > 0) {
+			int node = this.heap[this.size];
+			int i = this.siftDown(node, 0);
+			this.heap[i] = node;
+			this.position[node] = i;
+		}
+		return top;
+	}
+	
+	/**
+	 * Removes all nodes from the heap.
+	 * <p>
+	 * Settled nodes remain settled.
+	 */
+	public void clear() {
+		for (int k = 0; k < this.size; ++k)
+			this.position[this.heap[k]] = notInHeap;
+		this.size = 0;
+	}
+	
+	/**
+	 * Moves parents down until the position for a node is found.
+	 * @param node	Node to place.
+	 * @param i			Start position.
+	 * @return	Final position of the node, not yet written.
+	 */
+	private int siftUp(int node, int i) {
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			int pn = this.heap[parent];
+			if (!this.less(node, pn))
+				break;
+			this.heap[i] = pn;
+			this.position[pn] = i;
+			i = parent;
+		}
+		return i;
+	}
+	
+	/**
+	 * Moves children up until the position for a node is found.
+	 * @param node	Node to place.
+	 * @param i			Start position.
+	 * @return	Final position of the node, not yet written.
+	 */
+	private int siftDown(int node, int i) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= this.size)
+				break;
+			if (   child + 1 < this.size 
+					&& this.less(this.heap[child + 1], this.heap[child]))
+				++child;
+			int cn = this.heap[child];
+			if (!this.less(cn, node))
+				break;
+			this.heap[i] = cn;
+			this.position[cn] = i;
+			i = child;
+		}
+		return i;
+	}
+	
+	/**
+	 * Compares two nodes.
+	 * @param a	First node.
+	 * @param b	Second node.
+	 * @return	True if a is to be returned before b.
+	 */
+	private boolean less(int a, int b) {
+		return    this.keys[a] < this.keys[b] 
+				   || (this.keys[a] == this.keys[b] && this.stamps[a] < this.stamps[b]);
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.math.graphs;
+
+/**
+ * Helper for union-find forests stored as parent arrays.
+ * <p>
+ * A node is a root if it is its own parent. Trees are merged by the caller 
+ * by setting the parent of one root to the other root.
+ * 
+ * @author agent
+ */
+public class UnionFind {
+
+	/**
+	 * Finds the root of a node in a union-find forest.
+	 * <p>
+	 * Paths are compressed on the fly by path halving, i.e. each visited 
+	 * node is linked to its grandparent.
+	 * 
+	 * @param parents	Parent array of the forest, modified by compression.
+	 * @param node		Node to start from.
+	 * @return	Root of the node's tree.
+	 */
+	public static int findRoot(int[] parents, int node) {
+		int r = node;
+		while (parents[r] != r) {
+			parents[r] = parents[parents[r]];
+			r = parents[r];
+		}
+		return r;
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+
+package de.unihalle.informatik.MiToBo.math.linearalgebra;
+
+/**
+ * LU decomposition of a {@link MTBCyclicBandMatrix}.
+ * <p>
+ * The matrix M of size n x n with half bandwidth k is partitioned into
+ * <pre>
+ *   M = | P  Q |
+ *       | R  S |
+ * </pre>
+ * where P of size (n-k) x (n-k) is an ordinary, non-cyclic band matrix and 
+ * the cyclic corner entries are moved to the border blocks Q, R and S. P is
+ * factorized by banded Gaussian elimination, the border is handled by the
+ * Schur complement S - R P^-1 Q of size k x k, i.e., the cyclic structure
+ * is treated as a low-rank correction of the band system in the spirit of 
+ * the Sherman-Morrison-Woodbury formula.
+ * <p>
+ * The decomposition takes O(n*k^2) time, each subsequent call of 
+ * {@link #solve(double[])} O(n*k), i.e., linear time for tridiagonal and 
+ * pentadiagonal systems. Once computed the decomposition can be reused for 
+ * an arbitrary number of right-hand sides.
+ * <p>
+ * Note that the band part is factorized without pivoting. This is stable 
+ * for diagonally dominant matrices and for matrices which are, up to a 
+ * positive row scaling, symmetric and positive definite, like the system 
+ * matrices of snake optimization. The small dense Schur complement is 
+ * factorized with partial pivoting.
+ *
+ * @author agent
+ */
+public class MTBCyclicBandLUDecomposition {
+
+	/**
+	 * Size of the matrix.
+	 */
+	private final int n;
+
+	/**
+	 * Half bandwidth of the matrix.
+	 */
+	private final int k;
+
+	/**
+	 * Size of band block P, i.e., n-k.
+	 */
+	private final int m;
+
+	/**
+	 * LU decomposition of P in band storage, L has unit diagonal.
+	 */
+	private final double[][] lu;
+
+	/**
+	 * Solution Z = P^-1 Q of size (n-k) x k.
+	 */
+	private final double[][] z;
+
+	/**
+	 * Lower border block R of size k x (n-k).
+	 */
+	private final double[][] r;
+
+	/**
+	 * LU decomposition of the Schur complement, size k x k.
+	 */
+	private final double[][] schur;
+
+	/**
+	 * Row permutation of the Schur complement decomposition.
+	 */
+	private final int[] piv;
+
+	/**
+	 * Flag indicating if the matrix is nonsingular.
+	 */
+	private boolean nonsingular = true;
+
+	/**
+	 * Computes the decomposition of the given matrix.
+	 * <p>
+	 * The matrix is not modified and may be changed afterwards without 
+	 * affecting the decomposition.
+	 * 
+	 * @param M	Matrix to decompose.
+	 */
+	public MTBCyclicBandLUDecomposition(MTBCyclicBandMatrix M) {
+		this.n = M.getSize();
+		this.k = M.getBandwidth();
+		this.m = this.n - this.k;
+		this.lu = new double[this.m][2*this.k + 1];
+		this.z = new double[this.m][this.k];
+		this.r = new double[this.k][this.m];
+		this.schur = new double[this.k][this.k];
+		this.piv = new int[this.k];
+
+		// distribute band entries among the blocks
+		double[][] band = M.getBandArray();
+		for (int i = 0; i < this.n; ++i) {
+			for (int d = 0; d <= 2*this.k; ++d) {
+				int j = i + d - this.k;
+				if (j < 0)
+					j += this.n;
+				else if (j >= this.n)
+					j -= this.n;
+				double v = band[i][d];
+				if (i < this.m) {
+					if (j < this.m)
+						this.lu[i][j - i + this.k] = v;
+					else
+						this.z[i][j - this.m] = v;
+				}
+				else {
+					if (j < this.m)
+						this.r[i - this.m][j] = v;
+					else
+						this.schur[i - this.m][j - this.m] = v;
+				}
+			}
+		}
+		this.factorBand();
+		if (!this.nonsingular)
+			return;
+		// Z = P^-1 Q, column by column
+		double[] col = new double[this.m];
+		for (int c = 0; c < this.k; ++c) {
+			for (int i = 0; i < this.m; ++i)
+				col[i] = this.z[i][c];
+			this.solveBand(col);
+			for (int i = 0; i < this.m; ++i)
+				this.z[i][c] = col[i];
+		}
+		// Schur complement S - R Z
+		for (int a = 0; a < this.k; ++a) {
+			for (int b = 0; b < this.k; ++b) {
+				double sum = 0;
+				for (int t = 0; t < this.m; ++t)
+					sum += this.r[a][t] * this.z[t][b];
+				this.schur[a][b] -= sum;
+			}
+		}
+		this.factorSchur();
+	}
+
+	/**
+	 * Checks if the matrix is nonsingular.
+	 * @return	True if the decomposition can be used for solving.
+	 */
+	public boolean isNonsingular() {
+		return this.nonsingular;
+	}
+
+	/**
+	 * Solves M*x = b.
+	 * 
+	 * @param b	Right-hand side of length n, not modified.
+	 * @return	Solution vector x.
+	 * @throws IllegalArgumentException	If vector length does not match.
+	 * @throws RuntimeException	If matrix is singular.
+	 */
+	public double[] solve(double[] b) {
+		if (b.length != this.n)
+			throw new IllegalArgumentException(
+				"[MTBCyclicBandLUDecomposition] vector lengths must agree!");
+		if (!this.nonsingular)
+			throw new RuntimeException("Matrix is singular.");
+		double[] x = new double[this.n];
+		System.arraycopy(b, 0, x, 0, this.m);
+		this.solveBand(x);
+		if (this.k == 0)
+			return x;
+		// border part: (S - R Z) x2 = b2 - R y
+		double[] t = new double[this.k];
+		for (int a = 0; a < this.k; ++a) {
+			double sum = b[this.m + a];
+			for (int i = 0; i < this.m; ++i)
+				sum -= this.r[a][i] * x[i];
+			t[a] = sum;
+		}
+		this.solveSchur(t);
+		// x1 = y - Z x2
+		for (int i = 0; i < this.m; ++i) {
+			double sum = 0;
+			for (int c = 0; c < this.k; ++c)
+				sum += this.z[i][c] * t[c];
+			x[i] -= sum;
+		}
+		System.arraycopy(t, 0, x, this.m, this.k);
+		return x;
+	}
+
+	/**
+	 * Banded Gaussian elimination without pivoting on block P.
+	 */
+	private void factorBand() {
+		int kk = this.k;
+		for (int p = 0; p < this.m; ++p) {
+			double pivot = this.lu[p][kk];
+			if (pivot == 0) {
+				this.nonsingular = false;
+				return;
+			}
+			int last = Math.min(p + kk, this.m - 1);
+			for (int row = p + 1; row <= last; ++row) {
+				double f = this.lu[row][p - row + kk] / pivot;
+				this.lu[row][p - row + kk] = f;
+				if (f == 0)
+					continue;
+				for (int c = p + 1; c <= last; ++c)
+					this.lu[row][c - row + kk] -= f * this.lu[p][c - p + kk];
+			}
+		}
+	}
+
+	/**
+	 * Solves P*x = b in place using the band decomposition.
+	 * @param x	Right-hand side of length at least n-k, overwritten by x.
+	 */
+	private void solveBand(double[] x) {
+		int kk = this.k;
+		// forward substitution with unit lower triangle
+		for (int i = 0; i < this.m; ++i) {
+			double sum = x[i];
+			for (int j = Math.max(0, i - kk); j < i; ++j)
+				sum -= this.lu[i][j - i + kk] * x[j];
+			x[i] = sum;
+		}
+		// backward substitution with upper triangle
+		for (int i = this.m - 1; i >= 0; --i) {
+			double sum = x[i];
+			int last = Math.min(this.m - 1, i + kk);
+			for (int j = i + 1; j <= last; ++j)
+				sum -= this.lu[i][j - i + kk] * x[j];
+			x[i] = sum / this.lu[i][kk];
+		}
+	}
+
+	/**
+	 * Dense LU decomposition with partial pivoting of the Schur complement.
+	 */
+	private void factorSchur() {
+		double[][] a = this.schur;
+		for (int i = 0; i < this.k; ++i)
+			this.piv[i] = i;
+		for (int j = 0; j < this.k; ++j) {
+			int p = j;
+			for (int i = j + 1; i < this.k; ++i)
+				if (Math.abs(a[i][j]) > Math.abs(a[p][j]))
+					p = i;
+			if (p != j) {
+				double[] tmp = a[p]; a[p] = a[j]; a[j] = tmp;
+				int ti = this.piv[p]; this.piv[p] = this.piv[j]; this.piv[j] = ti;
+			}
+			if (a[j][j] == 0) {
+				this.nonsingular = false;
+				return;
+			}
+			for (int i = j + 1; i < this.k; ++i) {
+				a[i][j] /= a[j][j];
+				for (int c = j + 1; c < this.k; ++c)
+					a[i][c] -= a[i][j] * a[j][c];
+			}
+		}
+	}
+
+	/**
+	 * Solves the Schur complement system in place.
+	 * @param t	Right-hand side of length k, overwritten by solution.
+	 */
+	private void solveSchur(double[] t) {
+		double[][] a = this.schur;
+		double[] x = new double[this.k];
+		for (int i = 0; i < this.k; ++i)
+			x[i] = t[this.piv[i]];
+		for (int i = 0; i < this.k; ++i)
+			for (int j = 0; j < i; ++j)
+				x[i] -= a[i][j] * x[j];
+		for (int i = this.k - 1; i >= 0; --i) {
+			for (int j = i + 1; j < this.k; ++j)
+				x[i] -= a[i][j] * x[j];
+			x[i] /= a[i][i];
+		}
+		System.arraycopy(x, 0, t, 0, this.k);
+	}
+}
@@ -0,0 +1,354 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+
+package de.unihalle.informatik.MiToBo.math.linearalgebra;
+
+import java.util.Arrays;
+
+import Jama.Matrix;
+
+/**
+ * Square matrix with cyclic band structure.
+ * <p>
+ * A matrix of size n x n has a cyclic band structure with half bandwidth k
+ * if entry (i,j) is zero whenever the cyclic distance between i and j, i.e.,
+ * the minimum of |i-j| and n-|i-j|, is larger than k. Such matrices arise,
+ * e.g., from finite differences along closed contours where the first and
+ * the last point are neighbors. Examples are the tridiagonal and 
+ * pentadiagonal systems of the internal energy terms of closed snakes.
+ * <p>
+ * Only the 2k+1 cyclic diagonals are stored, i.e., the matrix requires 
+ * O(n*k) memory. Column indices passed to the access methods are 
+ * interpreted modulo n, i.e., column -1 refers to column n-1. Accessing an 
+ * entry outside of the band yields zero on reading and an 
+ * {@link IllegalArgumentException} on writing.
+ * <p>
+ * Linear systems can be solved by {@link MTBCyclicBandLUDecomposition}.
+ *
+ * @author agent
+ */
+public class MTBCyclicBandMatrix {
+
+	/**
+	 * Size of the matrix.
+	 */
+	private final int size;
+
+	/**
+	 * Half bandwidth of the matrix.
+	 */
+	private final int bandwidth;
+
+	/**
+	 * Band entries, entry (i,j) is stored at {@code band[i][(j-i+k) mod n]}.
+	 */
+	private final double[][] band;
+
+	/**
+	 * Constructs a new zero matrix.
+	 * 
+	 * @param n	Number of rows and columns.
+	 * @param k	Half bandwidth, requires n &gt;= 2k+1.
+	 */
+	public MTBCyclicBandMatrix(int n, int k) {
+		if (k < 0 || n < 2*k + 1)
+			throw new IllegalArgumentException("[MTBCyclicBandMatrix] "
+				+ "size " + n + " too small for half bandwidth " + k + "!");
+		this.size = n;
+		this.bandwidth = k;
+		this.band = new double[n][2*k + 1];
+	}
+
+	/**
+	 * Get size of the matrix.
+	 * @return	Number of rows and columns.
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Get half bandwidth of the matrix.
+	 * @return	Half bandwidth k.
+	 */
+	public int getBandwidth() {
+		return this.bandwidth;
+	}
+
+	/**
+	 * Checks if the given entry is located inside the band.
+	 * 
+	 * @param i	Row index.
+	 * @param j	Column index, interpreted modulo n.
+	 * @return	True if entry may be non-zero.
+	 */
+	public boolean isInBand(int i, int j) {
+		return this.diagonal(i, j) <= 2*this.bandwidth;
+	}
+
+	/**
+	 * Get an entry of the matrix.
+	 * 
+	 * @param i	Row index.
+	 * @param j	Column index, interpreted modulo n.
+	 * @return	Value of entry (i,j).
+	 */
+	public double get(int i, int j) {
+		int d = this.diagonal(i, j);
+		if (d > 2*this.bandwidth)
+			return 0;
+		return this.band[i][d];
+	}
+
+	/**
+	 * Set an entry of the matrix.
+	 * 
+	 * @param i	Row index.
+	 * @param j	Column index, interpreted modulo n.
+	 * @param v	New value.
+	 */
+	public void set(int i, int j, double v) {
+		this.band[i][this.checkedDiagonal(i, j)] = v;
+	}
+
+	/**
+	 * Add a value to an entry of the matrix.
+	 * 
+	 * @param i	Row index.
+	 * @param j	Column index, interpreted modulo n.
+	 * @param v	Value to add.
+	 */
+	public void add(int i, int j, double v) {
+		this.band[i][this.checkedDiagonal(i, j)] += v;
+	}
+
+	/**
+	 * Resets all entries to zero.
+	 */
+	public void clear() {
+		for (double[] row : this.band)
+			Arrays.fill(row, 0);
+	}
+
+	/**
+	 * Multiplies all entries of the given row with a factor.
+	 * 
+	 * @param i				Row index.
+	 * @param factor	Scaling factor.
+	 */
+	public void scaleRow(int i, double factor) {
+		double[] row = this.band[i];
+		for (int d = 0; d < row.length; ++d)
+			row[d] *= factor;
+	}
+
+	/**
+	 * Adds the given value to all diagonal entries, i.e., computes M + s*I.
+	 * 
+	 * @param s	Value to add.
+	 */
+	public void addToDiagonal(double s) {
+		for (int i = 0; i < this.size; ++i)
+			this.band[i][this.bandwidth] += s;
+	}
+
+	/**
+	 * Multiplies the matrix with a vector.
+	 * 
+	 * @param x	Vector of length n.
+	 * @return	Result vector M*x.
+	 */
+	public double[] times(double[] x) {
+		int n = this.size, k = this.bandwidth;
+		double[] y = new double[n];
+		for (int i = 0; i < n; ++i) {
+			double sum = 0;
+			double[] row = this.band[i];
+			for (int d = 0; d <= 2*k; ++d) {
+				int j = i + d - k;
+				if (j < 0)
+					j += n;
+				else if (j >= n)
+					j -= n;
+				sum += row[d] * x[j];
+			}
+			y[i] = sum;
+		}
+		return y;
+	}
+
+	/**
+	 * Computes the maximum absolute row sum norm.
+	 * @return	Infinity norm of the matrix.
+	 */
+	public double normInf() {
+		double norm = 0;
+		for (double[] row : this.band) {
+			double sum = 0;
+			for (double v : row)
+				sum += Math.abs(v);
+			norm = Math.max(norm, sum);
+		}
+		return norm;
+	}
+
+	/**
+	 * Copies the matrix.
+	 * @return	Deep copy of this matrix.
+	 */
+	public MTBCyclicBandMatrix copy() {
+		MTBCyclicBandMatrix c = 
+			new MTBCyclicBandMatrix(this.size, this.bandwidth);
+		for (int i = 0; i < this.size; ++i)
+			System.arraycopy(this.band[i], 0, c.band[i], 0, 2*this.bandwidth + 1);
+		return c;
+	}
+
+	/**
+	 * Converts the matrix to a dense Jama matrix.
+	 * @return	Dense matrix of size n x n.
+	 */
+	public Matrix toMatrix() {
+		Matrix m = new Matrix(this.size, this.size);
+		this.addToMatrix(m, 0, 0, 1.0);
+		return m;
+	}
+
+	/**
+	 * Adds the weighted matrix to a block of a dense Jama matrix.
+	 * 
+	 * @param m				Dense target matrix.
+	 * @param row0		First row of the target block.
+	 * @param col0		First column of the target block.
+	 * @param weight	Weight for the entries of this matrix.
+	 */
+	public void addToMatrix(Matrix m, int row0, int col0, double weight) {
+		int n = this.size, k = this.bandwidth;
+		double[][] a = m.getArray();
+		for (int i = 0; i < n; ++i) {
+			for (int d = 0; d <= 2*k; ++d) {
+				int j = i + d - k;
+				if (j < 0)
+					j += n;
+				else if (j >= n)
+					j -= n;
+				a[row0 + i][col0 + j] += weight * this.band[i][d];
+			}
+		}
+	}
+
+	/**
+	 * Combines a 2 x 2 block matrix of cyclic band matrices into a single
+	 * cyclic band matrix.
+	 * <p>
+	 * Rows and columns of the two block rows and columns are interleaved, 
+	 * i.e., entry (i,j) of block (r,c) becomes entry (2i+r,2j+c) of the 
+	 * result. For blocks of size n with maximal half bandwidth k the result 
+	 * is of size 2n with half bandwidth 2k+1. This allows to solve, e.g., 
+	 * snake systems coupling x- and y-coordinates of neighboring points with 
+	 * {@link MTBCyclicBandLUDecomposition}.
+	 * 
+	 * @param blocks	Blocks of equal size indexed by block row and column, 
+	 * 								the size has to be at least 2k+2.
+	 * @return	Interleaved matrix of size 2n.
+	 */
+	public static MTBCyclicBandMatrix interleave(
+			MTBCyclicBandMatrix[][] blocks) {
+		int n = blocks[0][0].size;
+		int k = 0;
+		for (MTBCyclicBandMatrix[] blockRow : blocks) {
+			for (MTBCyclicBandMatrix b : blockRow) {
+				if (b.size != n)
+					throw new IllegalArgumentException("[MTBCyclicBandMatrix] "
+						+ "blocks of different size cannot be interleaved!");
+				k = Math.max(k, b.bandwidth);
+			}
+		}
+		MTBCyclicBandMatrix m = new MTBCyclicBandMatrix(2*n, 2*k + 1);
+		for (int r = 0; r < 2; ++r) {
+			for (int c = 0; c < 2; ++c) {
+				MTBCyclicBandMatrix b = blocks[r][c];
+				for (int i = 0; i < n; ++i) {
+					for (int d = 0; d <= 2*b.bandwidth; ++d) {
+						double v = b.band[i][d];
+						if (v != 0)
+							m.add(2*i + r, 2*(i + d - b.bandwidth) + c, v);
+					}
+				}
+			}
+		}
+		return m;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof MTBCyclicBandMatrix))
+			return false;
+		MTBCyclicBandMatrix m = (MTBCyclicBandMatrix)obj;
+		return this.size == m.size && this.bandwidth == m.bandwidth 
+			&& Arrays.deepEquals(this.band, m.band);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.deepHashCode(this.band);
+	}
+
+	/**
+	 * Get direct access to the band storage.
+	 * <p>
+	 * Entry (i,j) is located at index (j-i+k) mod n of row i.
+	 * 
+	 * @return	Array of band rows.
+	 */
+	double[][] getBandArray() {
+		return this.band;
+	}
+
+	/**
+	 * Computes the index of the cyclic diagonal of entry (i,j).
+	 * @param i	Row index.
+	 * @param j	Column index.
+	 * @return	Index of diagonal in storage, larger than 2k if outside of band.
+	 */
+	private int diagonal(int i, int j) {
+		int d = (j - i + this.bandwidth) % this.size;
+		return (d < 0) ? d + this.size : d;
+	}
+
+	/**
+	 * Computes the index of the cyclic diagonal and checks band membership.
+	 * @param i	Row index.
+	 * @param j	Column index.
+	 * @return	Index of diagonal in storage.
+	 */
+	private int checkedDiagonal(int i, int j) {
+		int d = this.diagonal(i, j);
+		if (d > 2*this.bandwidth)
+			throw new IllegalArgumentException("[MTBCyclicBandMatrix] "
+				+ "entry (" + i + "," + j + ") is outside of the band!");
+		return d;
+	}
+}
@@ -0,0 +1,337 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.math.linearalgebra;
+
+/**
+ * Allocation-free kernels for small dense matrices as they appear in 
+ * Gaussian densities and Kalman filters.
+ * <p>
+ * All matrices are given in the row-major <code>double[][]</code> layout 
+ * of Jama, vectors as n x 1 column arrays. Hence, the internal arrays 
+ * returned by <code>Jama.Matrix.getArray()</code> can be passed directly
+ * without copying. None of the methods allocates memory, temporary results 
+ * are either avoided by the order of evaluation or written to workspace 
+ * arrays provided by the caller. Dimensions are taken from the arrays and
+ * are not checked.
+ * <p>
+ * Symmetric positive definite matrices are handled by their Cholesky 
+ * factor L with A = L L^T. Most operations of a Gaussian density only 
+ * require the inverse factor W = L^-1, i.e., A^-1 = W^T W and the 
+ * Mahalanobis distance of x is the squared norm of W x.
+ *
+ * @author agent
+ */
+public class MTBSmallMatrixKernels {
+
+	/**
+	 * Hidden constructor, class only provides static methods.
+	 */
+	private MTBSmallMatrixKernels() {
+		// nothing to do here
+	}
+
+	/**
+	 * Computes the Cholesky factor of a symmetric matrix in place.
+	 * <p>
+	 * Only the lower triangle of the matrix is read. On success it is 
+	 * overwritten by the lower triangular factor L, the upper triangle is
+	 * set to zero. If the matrix is not positive definite the content of
+	 * the array is undefined on return.
+	 * 
+	 * @param a	Symmetric n x n matrix, overwritten by L.
+	 * @return	False if the matrix is not positive definite.
+	 */
+	public static boolean choleskyInPlace(double[][] a) {
+		int n = a.length;
+		for (int j = 0; j < n; ++j) {
+			double[] aj = a[j];
+			double d = aj[j];
+			for (int k = 0; k < j; ++k)
+				d -= aj[k] * aj[k];
+			if (!(d > 0))
+				return false;
+			double ljj = Math.sqrt(d);
+			aj[j] = ljj;
+			for (int i = j + 1; i < n; ++i) {
+				double[] ai = a[i];
+				double s = ai[j];
+				for (int k = 0; k < j; ++k)
+					s -= ai[k] * aj[k];
+				ai[j] = s / ljj;
+			}
+			for (int i = j + 1; i < n; ++i)
+				aj[i] = 0;
+		}
+		return true;
+	}
+
+	/**
+	 * Inverts a lower triangular matrix in place.
+	 * <p>
+	 * Columns are processed from left to right. Column j of the inverse 
+	 * only depends on columns of the input with index j or larger, which 
+	 * are not yet overwritten at that point.
+	 * 
+	 * @param l	Lower triangular n x n matrix with non-zero diagonal.
+	 */
+	public static void invertLowerInPlace(double[][] l) {
+		int n = l.length;
+		for (int j = 0; j < n; ++j) {
+			l[j][j] = 1.0 / l[j][j];
+			for (int i = j + 1; i < n; ++i) {
+				double[] li = l[i];
+				double s = 0;
+				for (int k = j; k < i; ++k)
+					s += li[k] * l[k][j];
+				li[j] = -s / li[i];
+			}
+		}
+	}
+
+	/**
+	 * Logarithm of the determinant of A = L L^T.
+	 * 
+	 * @param l	Cholesky factor L of A.
+	 * @return	log(det(A)).
+	 */
+	public static double logDetCholesky(double[][] l) {
+		double logDet = 0;
+		for (int i = 0; i < l.length; ++i)
+			logDet += Math.log(l[i][i]);
+		return 2.0 * logDet;
+	}
+
+	/**
+	 * Computes the inverse A^-1 = W^T W from the inverse Cholesky factor.
+	 * 
+	 * @param w		Inverse W = L^-1 of the Cholesky factor of A.
+	 * @param out	n x n result array, must not be identical to w.
+	 */
+	public static void inverseFromInverseCholesky(double[][] w, 
+			double[][] out) {
+		int n = w.length;
+		for (int i = 0; i < n; ++i) {
+			for (int j = i; j < n; ++j) {
+				double s = 0;
+				for (int k = j; k < n; ++k)
+					s += w[k][i] * w[k][j];
+				out[i][j] = s;
+				out[j][i] = s;
+			}
+		}
+	}
+
+	/**
+	 * Squared Mahalanobis distance (x - mu)^T A^-1 (x - mu).
+	 * <p>
+	 * The whitened vector W (x - mu) is accumulated row by row, the 
+	 * differences are recomputed on the fly instead of being stored.
+	 * 
+	 * @param w		Inverse W = L^-1 of the Cholesky factor of A.
+	 * @param x		Column vector x.
+	 * @param mu	Column vector mu.
+	 * @return	Squared Mahalanobis distance.
+	 */
+	public static double mahalanobisSq(double[][] w, double[][] x, 
+			double[][] mu) {
+		int n = w.length;
+		double q = 0;
+		for (int i = 0; i < n; ++i) {
+			double[] wi = w[i];
+			double s = 0;
+			for (int k = 0; k <= i; ++k)
+				s += wi[k] * (x[k][0] - mu[k][0]);
+			q += s * s;
+		}
+		return q;
+	}
+
+	/**
+	 * Multiplies a lower triangular matrix with a vector in place.
+	 * <p>
+	 * Entries are computed from bottom to top so that each one only 
+	 * depends on entries of the vector that are not yet overwritten.
+	 * 
+	 * @param l	Lower triangular n x n matrix.
+	 * @param x	Column vector, overwritten by L x.
+	 */
+	public static void multiplyLowerInPlace(double[][] l, double[][] x) {
+		for (int i = l.length - 1; i >= 0; --i) {
+			double[] li = l[i];
+			double s = 0;
+			for (int k = 0; k <= i; ++k)
+				s += li[k] * x[k][0];
+			x[i][0] = s;
+		}
+	}
+
+	/**
+	 * Matrix product out = A B.
+	 * 
+	 * @param a		r x n matrix.
+	 * @param b		n x c matrix.
+	 * @param out	r x c result array, must not be identical to a or b.
+	 */
+	public static void multiply(double[][] a, double[][] b, double[][] out) {
+		int n = b.length;
+		int c = b[0].length;
+		for (int i = 0; i < a.length; ++i) {
+			double[] ai = a[i];
+			double[] oi = out[i];
+			for (int j = 0; j < c; ++j) {
+				double s = 0;
+				for (int k = 0; k < n; ++k)
+					s += ai[k] * b[k][j];
+				oi[j] = s;
+			}
+		}
+	}
+
+	/**
+	 * Congruence transform out = A P A^T + Q of a symmetric matrix P.
+	 * <p>
+	 * This is the covariance of a linearly transformed Gaussian with 
+	 * additive noise, i.e., the Kalman prediction of the state covariance 
+	 * or the covariance of the predicted observation. Only the upper 
+	 * triangle is computed and mirrored, so the result is exactly 
+	 * symmetric.
+	 * 
+	 * @param a		r x n transformation matrix.
+	 * @param p		Symmetric n x n matrix.
+	 * @param q		Symmetric r x r matrix, may be null.
+	 * @param out	r x r result array, must not be identical to p or q.
+	 */
+	public static void congruence(double[][] a, double[][] p, double[][] q,
+			double[][] out) {
+		int r = a.length;
+		int n = p.length;
+		for (int i = 0; i < r; ++i) {
+			double[] ai = a[i];
+			for (int j = i; j < r; ++j) {
+				double[] aj = a[j];
+				double s = (q == null) ? 0 : q[i][j];
+				for (int k = 0; k < n; ++k) {
+					if (ai[k] == 0)
+						continue;
+					double[] pk = p[k];
+					double t = 0;
+					for (int l = 0; l < n; ++l)
+						t += pk[l] * aj[l];
+					s += ai[k] * t;
+				}
+				out[i][j] = s;
+				out[j][i] = s;
+			}
+		}
+	}
+
+	/**
+	 * Kalman measurement update of a Gaussian state estimate.
+	 * <p>
+	 * With the innovation covariance S = H P H^T + R and W the inverse of 
+	 * its Cholesky factor, the gain K = P H^T S^-1 factorizes into U W 
+	 * with U = P H^T W^T. Thus, the update reduces to
+	 * <pre>
+	 *   v     = W (z - H x)
+	 *   x_upd = x + U v
+	 *   P_upd = P - U U^T
+	 * </pre>
+	 * which avoids forming S^-1 and K explicitly. The squared norm of the 
+	 * whitened innovation v is the Mahalanobis distance of the observation 
+	 * and returned for free.
+	 * 
+	 * @param x			State mean, n x 1.
+	 * @param p			Symmetric state covariance, n x n.
+	 * @param h			Observation matrix, m x n.
+	 * @param z			Observation, m x 1.
+	 * @param w			Inverse Cholesky factor of S, m x m.
+	 * @param xOut	Updated mean, n x 1, may be identical to x.
+	 * @param pOut	Updated covariance, n x n, may be identical to p.
+	 * @param u			Workspace of size n x m.
+	 * @param v			Workspace of size m.
+	 * @return	Squared Mahalanobis distance of the innovation.
+	 */
+	public static double kalmanUpdate(double[][] x, double[][] p, 
+			double[][] h, double[][] z, double[][] w, double[][] xOut, 
+			double[][] pOut, double[][] u, double[] v) {
+		int n = p.length;
+		int m = h.length;
+
+		// whitened innovation v = W (z - H x), in place from bottom to top
+		for (int i = 0; i < m; ++i) {
+			double[] hi = h[i];
+			double s = z[i][0];
+			for (int k = 0; k < n; ++k)
+				s -= hi[k] * x[k][0];
+			v[i] = s;
+		}
+		double q = 0;
+		for (int i = m - 1; i >= 0; --i) {
+			double[] wi = w[i];
+			double s = 0;
+			for (int k = 0; k <= i; ++k)
+				s += wi[k] * v[k];
+			v[i] = s;
+			q += s * s;
+		}
+
+		// U = (P H^T) W^T, each row multiplied in place from right to left
+		for (int a = 0; a < n; ++a) {
+			double[] pa = p[a];
+			double[] ua = u[a];
+			for (int i = 0; i < m; ++i) {
+				double[] hi = h[i];
+				double s = 0;
+				for (int k = 0; k < n; ++k)
+					s += pa[k] * hi[k];
+				ua[i] = s;
+			}
+			for (int i = m - 1; i >= 0; --i) {
+				double[] wi = w[i];
+				double s = 0;
+				for (int k = 0; k <= i; ++k)
+					s += ua[k] * wi[k];
+				ua[i] = s;
+			}
+		}
+
+		for (int a = 0; a < n; ++a) {
+			double[] ua = u[a];
+			double s = x[a][0];
+			for (int i = 0; i < m; ++i)
+				s += ua[i] * v[i];
+			xOut[a][0] = s;
+			for (int b = a; b < n; ++b) {
+				double[] ub = u[b];
+				double t = p[a][b];
+				for (int i = 0; i < m; ++i)
+					t -= ua[i] * ub[i];
+				pOut[a][b] = t;
+				pOut[b][a] = t;
+			}
+		}
+		return q;
+	}
+}
@@ -0,0 +1,316 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.math.optimization;
+
+import java.util.Arrays;
+
+/**
+ * Solver for sparse linear assignment problems.
+ * <p>
+ * Given a square cost matrix of size n x n where only some of the entries
+ * are defined, the solver computes a perfect assignment of rows to columns
+ * of minimal total cost using only the defined entries. The matrix is 
+ * passed in compressed row format, i.e., the entries of row r are found 
+ * in the arrays of columns and costs in the range from 
+ * {@code rowStart[r]} to {@code rowStart[r+1]-1}.
+ * <p>
+ * The implementation follows the shortest augmenting path approach of
+ * Jonker and Volgenant:
+ * 
+ * R. Jonker and A. Volgenant, "A shortest augmenting path algorithm for 
+ * dense and sparse linear assignment problems", Computing 38, 
+ * pp. 325-340, 1987.
+ * <p>
+ * Rows are initialized with their minimal costs as dual variables and 
+ * assigned greedily to free columns of minimal reduced cost. Remaining 
+ * free rows are assigned one after another along shortest augmenting 
+ * paths with respect to reduced costs, found by Dijkstra's algorithm with 
+ * an indexed binary heap. Each search only touches columns reachable 
+ * from the free row, hence, the effort adapts to the sparsity of the 
+ * problem. Costs may be negative.
+ * 
+ * @author agent
+ */
+public class MTBSparseLinearAssignment {
+
+	/**
+	 * Number of rows and columns.
+	 */
+	private final int size;
+
+	/**
+	 * Start positions of rows in entry arrays, length size+1.
+	 */
+	private final int[] rowStart;
+
+	/**
+	 * Column indices of entries.
+	 */
+	private final int[] cols;
+
+	/**
+	 * Costs of entries.
+	 */
+	private final double[] costs;
+
+	/**
+	 * Column assigned to each row, -1 if free.
+	 */
+	private int[] rowSol;
+
+	/**
+	 * Row assigned to each column, -1 if free.
+	 */
+	private int[] colSol;
+
+	/**
+	 * Dual variables of rows.
+	 */
+	private double[] u;
+
+	/**
+	 * Dual variables of columns.
+	 */
+	private double[] v;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param n					Number of rows and columns.
+	 * @param rStart		Start positions of rows in entry arrays, length n+1.
+	 * @param colIDs		Column indices of entries.
+	 * @param entryCosts	Costs of entries.
+	 */
+	public MTBSparseLinearAssignment(int n, int[] rStart, int[] colIDs, 
+			double[] entryCosts) {
+		if (rStart.length != n + 1 || colIDs.length < rStart[n]
+				|| entryCosts.length < rStart[n])
+			throw new IllegalArgumentException("[MTBSparseLinearAssignment] "
+				+ "sizes of entry arrays do not match!");
+		this.size = n;
+		this.rowStart = rStart;
+		this.cols = colIDs;
+		this.costs = entryCosts;
+	}
+
+	/**
+	 * Computes an optimal assignment.
+	 * 
+	 * @return	Column assigned to each row.
+	 * @throws IllegalArgumentException	If no perfect assignment exists.
+	 */
+	public int[] solve() {
+		int n = this.size;
+		this.rowSol = new int[n];
+		this.colSol = new int[n];
+		this.u = new double[n];
+		this.v = new double[n];
+		Arrays.fill(this.rowSol, -1);
+		Arrays.fill(this.colSol, -1);
+
+		// row reduction and greedy assignment of tight entries
+		for (int r = 0; r < n; ++r) {
+			int best = -1;
+			double min = Double.POSITIVE_INFINITY;
+			for (int e = this.rowStart[r]; e < this.rowStart[r+1]; ++e) {
+				int c = this.cols[e];
+				// on ties prefer free columns
+				if (   this.costs[e] < min 
+						|| (   this.costs[e] == min && best != -1 
+								&& this.colSol[best] != -1 && this.colSol[c] == -1)) {
+					min = this.costs[e];
+					best = c;
+				}
+			}
+			if (best == -1)
+				throw new IllegalArgumentException("[MTBSparseLinearAssignment] "
+					+ "row " + r + " has no entries, no perfect assignment exists!");
+			this.u[r] = min;
+			if (this.colSol[best] == -1) {
+				this.rowSol[r] = best;
+				this.colSol[best] = r;
+			}
+		}
+
+		// augment remaining free rows along shortest paths
+		double[] dist = new double[n];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		int[] pred = new int[n];
+		// 0 = unreached, 1 = in heap, 2 = final
+		byte[] state = new byte[n];
+		int[] touched = new int[n];
+		int[] heap = new int[n];
+		int[] heapPos = new int[n];
+		for (int s = 0; s < n; ++s) {
+			if (this.rowSol[s] != -1)
+				continue;
+			int touchedNum = 0;
+			int heapSize = 0;
+			int sink = -1;
+			int r = s;
+			double label = 0;
+			while (true) {
+				// relax entries of the current row
+				for (int e = this.rowStart[r]; e < this.rowStart[r+1]; ++e) {
+					int c = this.cols[e];
+					if (state[c] == 2)
+						continue;
+					double d = label + this.costs[e] - this.u[r] - this.v[c];
+					if (d < dist[c]) {
+						dist[c] = d;
+						pred[c] = r;
+						if (state[c] == 0) {
+							state[c] = 1;
+							touched[touchedNum++] = c;
+							heapPos[c] = heapSize;
+							heap[heapSize++] = c;
+						}
+						siftUp(heap, heapPos, dist, heapPos[c]);
+					}
+				}
+				if (heapSize == 0)
+					break;
+				// closest column becomes final
+				int c = heap[0];
+				--heapSize;
+				if (heapSize > 0) {
+					heap[0] = heap[heapSize];
+					heapPos[heap[0]] = 0;
+					siftDown(heap, heapPos, dist, heapSize, 0);
+				}
+				state[c] = 2;
+				if (this.colSol[c] == -1) {
+					sink = c;
+					break;
+				}
+				r = this.colSol[c];
+				label = dist[c];
+			}
+			if (sink == -1)
+				throw new IllegalArgumentException("[MTBSparseLinearAssignment] "
+					+ "no augmenting path for row " + s 
+					+ ", no perfect assignment exists!");
+
+			// update dual variables of final columns and their rows
+			double D = dist[sink];
+			this.u[s] += D;
+			for (int t = 0; t < touchedNum; ++t) {
+				int c = touched[t];
+				if (state[c] == 2 && c != sink) {
+					this.v[c] += dist[c] - D;
+					this.u[this.colSol[c]] += D - dist[c];
+				}
+			}
+
+			// augment along the path back to the free row
+			int c = sink;
+			while (true) {
+				int pr = pred[c];
+				int next = this.rowSol[pr];
+				this.rowSol[pr] = c;
+				this.colSol[c] = pr;
+				if (pr == s)
+					break;
+				c = next;
+			}
+
+			// reset touched columns for next search
+			for (int t = 0; t < touchedNum; ++t) {
+				dist[touched[t]] = Double.POSITIVE_INFINITY;
+				state[touched[t]] = 0;
+			}
+		}
+		return this.rowSol;
+	}
+
+	/**
+	 * Get the total cost of the assignment computed last.
+	 * @return	Sum of costs of assigned entries.
+	 */
+	public double getTotalCost() {
+		double sum = 0;
+		for (int r = 0; r < this.size; ++r) {
+			for (int e = this.rowStart[r]; e < this.rowStart[r+1]; ++e) {
+				if (this.cols[e] == this.rowSol[r]) {
+					sum += this.costs[e];
+					break;
+				}
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Moves a heap element up until the heap property is restored.
+	 * @param heap		Heap array of column indices.
+	 * @param pos			Positions of columns in heap.
+	 * @param keys		Keys of columns.
+	 * @param i				Position of element to move.
+	 */
+	private static void siftUp(int[] heap, int[] pos, double[] keys, int i) {
+		int c = heap[i];
+		double key = keys[c];
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			int pc = heap[parent];
+			if (keys[pc] <= key)
+				break;
+			heap[i] = pc;
+			pos[pc] = i;
+			i = parent;
+		}
+		heap[i] = c;
+		pos[c] = i;
+	}
+
+	/**
+	 * Moves a heap element down until the heap property is restored.
+	 * @param heap		Heap array of column indices.
+	 * @param pos			Positions of columns in heap.
+	 * @param keys		Keys of columns.
+	 * @param hsize		Number of elements in heap.
+	 * @param i				Position of element to move.
+	 */
+	private static void siftDown(int[] heap, int[] pos, double[] keys, 
+			int hsize, int i) {
+		int c = heap[i];
+		double key = keys[c];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= hsize)
+				break;
+			if (child + 1 < hsize && keys[heap[child+1]] < keys[heap[child]])
+				++child;
+			int cc = heap[child];
+			if (key <= keys[cc])
+				break;
+			heap[i] = cc;
+			pos[cc] = i;
+			i = child;
+		}
+		heap[i] = c;
+		pos[c] = i;
+	}
+}
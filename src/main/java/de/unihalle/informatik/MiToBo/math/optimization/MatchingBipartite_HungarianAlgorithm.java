@@ -21,34 +21,42 @@
  *    http://www.informatik.uni-halle.de/mitobo/
  *
  */
-
 package de.unihalle.informatik.MiToBo.math.optimization;
 
+import java.util.Arrays;
+
 import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
 import de.unihalle.informatik.Alida.exceptions.ALDOperatorException.*;
-import de.unihalle.informatik.Alida.annotations.ALDAOperator;
 import de.unihalle.informatik.Alida.annotations.Parameter;
-import de.unihalle.informatik.MiToBo.core.datatypes.defines.MTBConstants;
 
 /**
  * Bipartite matching with Hungarian algorithm.
  * <p>
- * This implementation is done according to:
+ * The matching is computed as a linear assignment problem by the shortest 
+ * augmenting path method of Jonker and Volgenant:
  * 
- * Grosche, Ziegler, Ziegler and Zeidler,
- * Teubner-Taschenbuch der Mathematik, Teil II, pp. 219 ff
- * 7th edition, B.G. Teubner Verlagsgesellschaft Leipzig, 1995
- * 
- * It assumes a squared score matrix and tries to find the matching that
- * optimizes the score. The scores should all be positive and per default
- * the algorithm minimizes the overall score. Anyway, the operator can be
- * configured so as to interprete the scores inversely, i.e. searching for
- * the matching that maximizes the sum of scores. 
+ * R. Jonker and A. Volgenant, "A shortest augmenting path algorithm for 
+ * dense and sparse linear assignment problems", Computing 38, 
+ * pp. 325-340, 1987.
+ * <p>
+ * Rows of the score matrix refer to one set of elements, columns to the
+ * other one. Per default the algorithm searches for the matching that 
+ * minimizes the overall score, but the operator can be configured so as 
+ * to interprete the scores inversely, i.e. searching for the matching 
+ * that maximizes the sum of scores. The scores should all be positive.
  * <p>
- * Note, that this implementation is not well-suited for large matrices.
- * The implementation is greedy, so do not expect too much in case of 
- * a large number of elements to be matched...
+ * The score matrix does not need to be square. If there are less rows 
+ * than columns, each row is matched to exactly one column and some columns 
+ * remain unmatched, and vice versa. 
+ * <p>
+ * The scores are copied once into a flat array. Rows are initialized with 
+ * their minimal costs as dual variables and assigned greedily to free 
+ * columns of minimal reduced cost. Remaining free rows are assigned one 
+ * after another along shortest augmenting paths with respect to reduced 
+ * costs, which results in a worst-case complexity of O(n^2 m) for n rows 
+ * and m columns, n &lt;= m.
  * 
+ * @see MTBSparseLinearAssignment
  * @author moeller
  */
 public class MatchingBipartite_HungarianAlgorithm extends MatchingBipartite {
@@ -69,46 +77,6 @@ public class MatchingBipartite_HungarianAlgorithm extends MatchingBipartite {
 		MAXIMUM_IS_BEST
 	}
 	
-	/**
-	 * Array containing row marks.
-	 */
-	protected boolean [] rowMarkers = null;
-	
-	/**
-	 * Array containing column marks.
-	 */
-	protected boolean [] colMarkers = null;
-
-	/**
-	 * Matrix for elements markers: 0 = no mark, 1 = starred, 2 = primed
-	 */
-	protected byte [][] elementMarkers = null;
-	
-	/**
-	 * Local copy of matrix modified during calculations.
-	 */
-	protected double[][] workingMatrix = null;
-	
-	/**
-	 * Number of rows and columns, respectively.
-	 */
-	protected int matrixSize;
-	
-	/**
-	 * Helper matrix for exchange chain extraction: 0 = unselected, 1 = selected.
-	 */
-	protected byte [][] chainMarkers = null;
-
-	/**
-	 * Internal flag for interrupting recursive calls in unit testing.
-	 */
-	protected boolean junitTest = false;
-	
-	/**
-	 * Helper to make matrix minimum in stage three externally accessible.
-	 */
-	protected double stageThreeMin = 0;
-	
 	/**
 	 * Score interpretation.
 	 */
@@ -118,6 +86,11 @@ public class MatchingBipartite_HungarianAlgorithm extends MatchingBipartite {
 	protected ScoreInterpretation matrixScore = 
 		ScoreInterpretation.MINIMUM_IS_BEST;
 
+	/**
+	 * Column assigned to each row of the score matrix, -1 if unassigned.
+	 */
+	protected int[] assignment = null;
+	
 	/**
 	 * Default constructor.
 	 * @throws ALDOperatorException
@@ -132,11 +105,11 @@ public class MatchingBipartite_HungarianAlgorithm extends MatchingBipartite {
 	 * <p>
 	 * The rows of the matrix should refer to one set of elements, and the 
 	 * cols to the second one. Matrix elements then give the matching scores 
-	 * for all pairs of possible matchings. Note that for this technique the
-	 * score matrix needs to be square, otherwise an exception is thrown.
-	 * Also it is assumed that all scores are larger than or equal to zero.
+	 * for all pairs of possible matchings. All rows need to have the same
+	 * length, and it is assumed that all scores are larger than or equal 
+	 * to zero.
 	 * 
-	 * @param smatrix		Square matrix with pairwise scores.
+	 * @param smatrix		Matrix with pairwise scores.
 	 * @throws ALDOperatorException
 	 */
 	public MatchingBipartite_HungarianAlgorithm(double[][] smatrix, 
@@ -148,373 +121,173 @@ public class MatchingBipartite_HungarianAlgorithm extends MatchingBipartite {
 
 	@Override
 	public void validateCustom() throws ALDOperatorException {
-		if (this.scoreMatrix.length != this.scoreMatrix[0].length)
-			throw new ALDOperatorException(OperatorExceptionType.VALIDATION_FAILED,
-					"MatchingBipartite_Hungarian: score matrix is not square!");
-		for (int r=0;r<this.scoreMatrix.length;++r)
-			for (int c=0;c<this.scoreMatrix.length;++c)
+		int cols = 
+			this.scoreMatrix.length > 0 ? this.scoreMatrix[0].length : 0;
+		for (int r=0;r<this.scoreMatrix.length;++r) {
+			if (this.scoreMatrix[r].length != cols)
+				throw new ALDOperatorException(OperatorExceptionType.VALIDATION_FAILED,
+					"MatchingBipartite_Hungarian: rows of score matrix differ in length!");
+			for (int c=0;c<cols;++c)
 				if (this.scoreMatrix[r][c] < 0)
 				throw new ALDOperatorException(OperatorExceptionType.VALIDATION_FAILED,
 				"MatchingBipartite_Hungarian: score matrix contains negative scores!");
+		}
 		return;
 	}
 
-	@Override
-  protected void calcMatching() {
-	
-		// init algorithm
-		this.init();
-		
-		// allocate memory, init working copy of matrix, etc.
-		this.prepareMatching();
-
-		// call main test routine
-		this.calcMatching_mainTest();
-		
-	}
-	
 	/**
-	 * Initializes the operator, i.e. allocates memory.
+	 * Returns the matching as assignment of rows to columns.
+	 * @return	Column matched to each row of the score matrix, -1 if the row
+	 * 					remained unmatched.
 	 */
-	protected void init() {
-		// allocate arrays for row and column markers, and element marker matrix
-		this.matrixSize = this.scoreMatrix.length;
-		
-		this.colMarkers = new boolean[this.matrixSize];
-		for (int i=0;i<this.matrixSize;++i)
-			this.colMarkers[i] = false;
-		this.rowMarkers = new boolean[this.matrixSize];
-		for (int i=0;i<this.matrixSize;++i)
-			this.rowMarkers[i] = false;
-		this.elementMarkers = new byte[this.matrixSize][this.matrixSize];
-		for (int j=0;j<this.matrixSize;++j)
-			for (int i=0;i<this.matrixSize;++i)
-				this.elementMarkers[j][i] = 0;
-		this.workingMatrix = new double[this.matrixSize][this.matrixSize];
-		for (int r=0;r<this.matrixSize;++r)
-			for (int c=0;c<this.matrixSize;++c)
-				this.workingMatrix[r][c]= this.scoreMatrix[r][c];
-		this.chainMarkers = new byte[this.matrixSize][this.matrixSize];		
+	public int[] getAssignment() {
+		return this.assignment;
 	}
-	
-	/**
-	 * Preprocess the matrix.
-	 * <p>
-	 * The method first inverts all entries if large scores are better.
-	 * Subsequently zeros are starred in the matrix, preferably so that each
-	 * row and each column contains exactly one star. If this is possible a 
-	 * solution has already been found.
-	 */
-	protected void prepareMatching() {
-				
-		// check if best score is minimal one, if not, preprocess data
-		if (this.matrixScore == ScoreInterpretation.MAXIMUM_IS_BEST) {
-			double maximum = 0;
-			for (int r= 0; r<this.matrixSize; ++r) {
-				for (int c= 0; c<this.matrixSize; ++c) {
-					if (this.workingMatrix[r][c] > maximum)
-						maximum = this.workingMatrix[r][c];
-				}
-			}			
-			for (int r= 0; r<this.matrixSize; ++r) {
-				for (int c= 0; c<this.matrixSize; ++c) {
-					this.workingMatrix[r][c] = maximum - this.workingMatrix[r][c];
-				}
-			}
-		}
-		// search for minimum in each row and subtract it from each element
-		double minimum = Double.MAX_VALUE;
-		for (int r= 0; r<this.matrixSize; ++r) {
-			minimum = Double.MAX_VALUE;
-			for (int c= 0; c<this.matrixSize; ++c) {
-				if (minimum > this.workingMatrix[r][c]) 
-					minimum = this.workingMatrix[r][c];
-			}
-			for (int c= 0; c<this.matrixSize; ++c) {
-				this.workingMatrix[r][c] -= minimum; 
-			}				
-		}
-		// search for minimum in each col and subtract it from each element
-		minimum = Double.MAX_VALUE;
-		for (int c= 0; c<this.matrixSize; ++c) {
-			minimum = Double.MAX_VALUE;
-			for (int r= 0; r<this.matrixSize; ++r) {
-				if (minimum > this.workingMatrix[r][c]) 
-					minimum = this.workingMatrix[r][c];
-			}
-			for (int r= 0; r<this.matrixSize; ++r) {
-				this.workingMatrix[r][c] -= minimum; 
-			}				
-		}
 
-		// init algorithm: iteratively select zeros and mark rows and cols
-		for (int r=0;r<this.matrixSize;++r) {
-			if (this.rowMarkers[r])
-				continue;
-			for (int c=0;c<this.matrixSize;++c) {
-				if (this.colMarkers[c])
-					continue;
-				// check if we have a zero in the current entry,
-				// if so, then mark row and column and star the element
-				if (   this.workingMatrix[r][c] < MTBConstants.epsilon
-						&& !this.colMarkers[c] && !this.rowMarkers[r]) {
-					this.rowMarkers[r] = true;
-					this.colMarkers[c] = true;
-					this.elementMarkers[r][c] = 1;
-				}
-			}
-		}
-		// reset all row markers
-		for (int r=0;r<this.matrixSize;++r)
-			this.rowMarkers[r] = false;
-	}
-	
-	/**
-	 * Checks whether a valid solution has been found.
-	 */
-	protected void calcMatching_mainTest() {
+	@Override
+  protected void calcMatching() {
+		int rows = this.scoreMatrix.length;
+		int cols = rows > 0 ? this.scoreMatrix[0].length : 0;
 		
-		// main test: all columns marked? 
-		//   -> if so, set result matrix,
-		//      if not, go to stage 1
-		boolean solutionFound = true;
-		for (int c=0;c<this.matrixSize;++c) {
-			if (!this.colMarkers[c]) {
-				solutionFound = false;
-				break;
-			}
-		}
-		if (!solutionFound) {
-			// if we are in junit test mode, do not proceed recursively
-			if (!this.junitTest)
-				this.calcMatching_stageOne();
-			else
-				System.out.println("MATCHER: Would have called stage one...");
+		// copy scores to flat array
+		double[] scores = new double[rows * cols];
+		for (int r=0;r<rows;++r)
+			System.arraycopy(this.scoreMatrix[r], 0, scores, r * cols, cols);
+
+		// solve problem with less rows than columns, transpose otherwise
+		double sign = 
+			(this.matrixScore == ScoreInterpretation.MAXIMUM_IS_BEST) ? -1 : 1;
+		if (rows <= cols) {
+			this.assignment = solve(scores, rows, cols, cols, 1, sign);
 		}
 		else {
-			if (this.junitTest)
-				System.out.println("MATCHER: All work done, going to bed...");
-				
-			// extract all starred entries into the result matrix
-			this.resultMatrix = new byte[this.matrixSize][this.matrixSize];
-			for (int r=0;r<this.matrixSize;++r) {
-				for (int c=0;c<this.matrixSize;++c) {
-					if (this.elementMarkers[r][c] == 1)
-						this.resultMatrix[r][c] = 1;
-					else
-						this.resultMatrix[r][c] = 0;
-				}
-			}
-			return;
+			int[] colAssignment = solve(scores, cols, rows, 1, cols, sign);
+			this.assignment = new int[rows];
+			Arrays.fill(this.assignment, -1);
+			for (int c=0;c<cols;++c)
+				this.assignment[colAssignment[c]] = c;
 		}
-	}
-	
-	/**
-	 * Implements stage one: searching for new candidate matches.
-	 */
-	protected void calcMatching_stageOne() {
 		
-		if (this.junitTest) {
-			System.out.println("Working matrix:");
-			for (int r=0;r<this.matrixSize;++r) {
-				for (int c=0;c<this.matrixSize;++c) {
-					System.out.print(this.workingMatrix[r][c] + "\t");
-				}
-				System.out.println();
-			}
-		}		
-		
-		// check if there are 0's not border-marked
-		boolean zeroFound = false;
-		int r= 0, c= 0;
-		for (r=0;r<this.matrixSize && !zeroFound;++r) {
-			if (this.rowMarkers[r])
-				continue;
-			for (c=0;c<this.matrixSize && !zeroFound;++c) {
-				if (this.colMarkers[c])
-					continue;
-				if (this.workingMatrix[r][c] < MTBConstants.epsilon) 
-					zeroFound = true;
-			}
-		}
-		// decrease row and column counter to get correct position
-		--r; --c;
-		// if no zero is found, go to stage 3
-		if (!zeroFound) {
-			if (!this.junitTest)
-				this.calcMatching_stageThree();
-			else
-				System.out.println("MATCHER: Would have called stage three...");
-		}
-		else {
-			// prime the zero
-			this.elementMarkers[r][c] = 2;
-			// is there is a starred 0 in the same row?
-			boolean starredZeroFound = false;
-			int cc = 0;
-			for (cc=0; cc<this.matrixSize && !starredZeroFound; ++cc) {
-				if (this.elementMarkers[r][cc] == 1)
-					starredZeroFound = true;
-			}
-			// no starred zero in that row, so go to stage 2
-			if (!starredZeroFound) {
-				if (!this.junitTest)
-					this.calcMatching_stageTwo(r, c);
-				else
-					System.out.println("MATCHER: Would have called stage two...");
-			}
-			// starred zero found
-			else {
-				// decrease col count by one to get correct index
-				--cc;
-				// delete column mark of starred zero
-				this.colMarkers[cc] = false;
-				// mark row of starred zero
-				this.rowMarkers[r] = true;
-				// go to stage 1
-				if (!this.junitTest)
-					this.calcMatching_stageOne();
-				else
-					System.out.println("MATCHER: Would have called stage one again...");
-			}
-		}
+		// set result matrix
+		this.resultMatrix = new byte[rows][cols];
+		for (int r=0;r<rows;++r)
+			if (this.assignment[r] != -1)
+				this.resultMatrix[r][this.assignment[r]] = 1;
 	}
 
 	/**
-	 * Implements stage two: extracting exchange chain.
+	 * Computes an assignment of minimal cost for a problem with at most as
+	 * many rows as columns.
+	 * <p>
+	 * The cost of row r and column c is given by 
+	 * {@code sign * scores[r * rowStride + c * colStride]}, which allows to
+	 * solve transposed and maximization problems on the same array.
+	 * 
+	 * @param scores			Flat score array.
+	 * @param n						Number of rows, n &lt;= m.
+	 * @param m						Number of columns.
+	 * @param rowStride		Distance between rows in the score array.
+	 * @param colStride		Distance between columns in the score array.
+	 * @param sign				Factor applied to scores to get costs.
+	 * @return	Column assigned to each row.
 	 */
-	protected void calcMatching_stageTwo(int r, int c) {
+	protected static int[] solve(double[] scores, int n, int m, 
+			int rowStride, int colStride, double sign) {
+		int[] rowSol = new int[n];
+		int[] colSol = new int[m];
+		double[] u = new double[n];
+		double[] v = new double[m];
+		Arrays.fill(rowSol, -1);
+		Arrays.fill(colSol, -1);
 
-		if (this.junitTest)
-			System.out.println(" - called stage two with r= " + r + " , c = " + c);
-		
-		// reset chain matrix
-		for (int rr=0;rr<this.matrixSize;++rr)
-			for (int cc=0;cc<this.matrixSize;++cc)
-				this.chainMarkers[rr][cc] = 0;
-		
-		// mark begin of chain
-		this.chainMarkers[r][c] = 1;
-		
-		// given last primed zero at entry (r,c),
-		// extract exchange chain:
-		// - go from a primed zero to a starred zero in the same column
-		// - go from a starred zero to a primed zero in the same row
-		boolean chainContinuable = true;
-		boolean searchingColumn = true;
-		int currentRow = r;
-		int currentCol = c;
-		while (chainContinuable) {
-			chainContinuable = false;
-			if (searchingColumn) {
-				// check elements in current column
-				for (int rr = 0; rr<this.matrixSize; ++rr) {
-					if (   this.elementMarkers[rr][currentCol] == 1 
-							&& this.chainMarkers[rr][currentCol] != 1) {
-						this.chainMarkers[rr][currentCol] = 1;
-						currentRow = rr;
-						searchingColumn = false;
-						chainContinuable = true;
-						break;
-					}
+		// row reduction and greedy assignment of tight entries
+		for (int r = 0; r < n; ++r) {
+			int base = r * rowStride;
+			int best = -1;
+			double min = Double.POSITIVE_INFINITY;
+			for (int c = 0; c < m; ++c) {
+				double cost = sign * scores[base + c * colStride];
+				// on ties prefer free columns
+				if (   cost < min 
+						|| (   cost == min && best != -1 
+								&& colSol[best] != -1 && colSol[c] == -1)) {
+					min = cost;
+					best = c;
 				}
 			}
-			else {
-				// check elements in current row
-				for (int cc = 0; cc<this.matrixSize; ++cc) {
-					if (   this.elementMarkers[currentRow][cc] == 2 
-							&& this.chainMarkers[currentRow][cc] != 1) {
-						this.chainMarkers[currentRow][cc] = 1;
-						currentCol = cc;
-						searchingColumn = true;
-						chainContinuable = true;
-						break;
-					}
-				}					
+			u[r] = min;
+			if (colSol[best] == -1) {
+				rowSol[r] = best;
+				colSol[best] = r;
 			}
 		}
-		// delete all border marks
-		for (int n = 0; n<this.matrixSize; ++n) {
-			this.rowMarkers[n] = false;
-			this.colMarkers[n] = false;
-		}
-		// process markers
-		for (int rr=0; rr<this.matrixSize; ++rr) {
-			for (int cc=0; cc<this.matrixSize; ++cc) {
-				// safety-check only
-				if (this.chainMarkers[rr][cc] == 1 && this.elementMarkers[rr][cc] == 0)
-					System.err.println("Warning! Element in chain without marker!!!");
 
-				// delete stars of elements in the chain
-				if (   this.chainMarkers[rr][cc] == 1 
-						&& this.elementMarkers[rr][cc] == 1) {
-					this.elementMarkers[rr][cc] = 0;
-				}
-				// change primes into stars 
-				else if (   this.chainMarkers[rr][cc] == 1 
-						     && this.elementMarkers[rr][cc] == 2) {
-					this.elementMarkers[rr][cc] = 1;
-				}
-				// delete primes of elements not in the chain
-				else if (   this.chainMarkers[rr][cc] == 0 
-								 && this.elementMarkers[rr][cc] == 2) {
-					this.elementMarkers[rr][cc] = 0;
+		// augment remaining free rows along shortest paths
+		double[] dist = new double[m];
+		int[] pred = new int[m];
+		boolean[] done = new boolean[m];
+		int[] scanned = new int[m];
+		for (int s = 0; s < n; ++s) {
+			if (rowSol[s] != -1)
+				continue;
+			Arrays.fill(dist, Double.POSITIVE_INFINITY);
+			Arrays.fill(done, false);
+			int scannedNum = 0;
+			int sink = -1;
+			int r = s;
+			double label = 0;
+			while (sink == -1) {
+				// relax entries of the current row and find closest column
+				int base = r * rowStride;
+				double ur = u[r];
+				int next = -1;
+				double min = Double.POSITIVE_INFINITY;
+				for (int c = 0; c < m; ++c) {
+					if (done[c])
+						continue;
+					double d = 
+						label + sign * scores[base + c * colStride] - ur - v[c];
+					if (d < dist[c]) {
+						dist[c] = d;
+						pred[c] = r;
+					}
+					if (dist[c] < min || next == -1) {
+						min = dist[c];
+						next = c;
+					}
 				}
-			}
-		}
-		// mark all cols that contain stars now
-		for (int cc=0; cc<this.matrixSize; ++cc) {
-			for (int rr=0; rr<this.matrixSize; ++rr) {
-				if (this.elementMarkers[rr][cc] == 1) {
-					this.colMarkers[cc] = true;
-					break;
+				// closest column becomes final
+				done[next] = true;
+				scanned[scannedNum++] = next;
+				if (colSol[next] == -1)
+					sink = next;
+				else {
+					r = colSol[next];
+					label = dist[next];
 				}
 			}
-		}
-		// go to main test
-		if (!this.junitTest)
-			this.calcMatching_mainTest();
-		else
-			System.out.println("MATCHER: Would have called main test...");
-	}
 
-	/**
-	 * Implements stage three: decrease scores to generate new zero entries.
-	 */
-	protected void calcMatching_stageThree() {
-		// search minimum h of all non-border-marked elements
-		double h = Double.MAX_VALUE;
-		for (int r=0;r<this.matrixSize;++r) {
-			if (this.rowMarkers[r])
-				continue;
-			for (int c=0;c<this.matrixSize;++c) {
-				if (this.colMarkers[c])
-					continue;
-				if (this.workingMatrix[r][c] < h) 
-					h = this.workingMatrix[r][c];
+			// update dual variables of final columns and their rows
+			double D = dist[sink];
+			u[s] += D;
+			for (int t = 0; t < scannedNum - 1; ++t) {
+				int c = scanned[t];
+				v[c] += dist[c] - D;
+				u[colSol[c]] += D - dist[c];
 			}
-		}
-		this.stageThreeMin = h;
-		// add h to all elements in marked columns
-		for (int c=0;c<this.matrixSize;++c) {
-			if (!this.colMarkers[c])
-				continue;
-			for (int r=0;r<this.matrixSize;++r) {
-				this.workingMatrix[r][c] += h;
-			}
-		}
-		// subtract h from all elements in non-marked rows
-		for (int r=0;r<this.matrixSize;++r) {
-			if (this.rowMarkers[r])
-				continue;
-			for (int c=0;c<this.matrixSize;++c) {
-				this.workingMatrix[r][c] -= h;
+
+			// augment along the path back to the free row
+			int c = sink;
+			while (true) {
+				int pr = pred[c];
+				int prev = rowSol[pr];
+				rowSol[pr] = c;
+				colSol[c] = pr;
+				if (pr == s)
+					break;
+				c = prev;
 			}
 		}
-		// go to stage 1
-		if (!this.junitTest)
-			this.calcMatching_stageOne();
-		else
-			System.out.println("MATCHER: Would have called stage one...");
+		return rowSol;
 	}
 }
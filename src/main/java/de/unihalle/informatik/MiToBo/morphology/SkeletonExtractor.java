@@ -27,10 +27,13 @@ package de.unihalle.informatik.MiToBo.morphology;
 import ij.process.BinaryProcessor;
 import ij.process.ByteProcessor;
 
+import java.util.stream.IntStream;
+
 import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
 import de.unihalle.informatik.Alida.annotations.ALDAOperator;
 import de.unihalle.informatik.Alida.annotations.ALDAOperator.Level;
 import de.unihalle.informatik.Alida.annotations.Parameter;
+import de.unihalle.informatik.Alida.annotations.Parameter.ExpertMode;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.*;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
 import de.unihalle.informatik.MiToBo.core.operator.*;
@@ -41,8 +44,9 @@ import de.unihalle.informatik.MiToBo.core.operator.*;
  * The foreground of the given image is defined by all pixels having
  * values larger than zero.
  * <p>
- * Note that this operator directly uses ImageJ 1.x functionality! In ImageJ
- * the skeletonization is implemented based on this paper: 
+ * Note that in default mode this operator directly uses ImageJ 1.x 
+ * functionality! In ImageJ the skeletonization is implemented based on 
+ * this paper: 
  * <p>
  * <b>Zhang TY, Suen CY (1984) <i>A fast parallel algorithm for thinning digital
  * patterns</i>. Commun ACM 27: 236–239</b>
@@ -50,6 +54,14 @@ import de.unihalle.informatik.MiToBo.core.operator.*;
  * For more details take a look at Section 29.8.9 on this page:<br>
  * <a href="https://imagej.nih.gov/ij/docs/guide/146-29.html#toc-Subsection-29.8">
  * 		https://imagej.nih.gov/ij/docs/guide/146-29.html#toc-Subsection-29.8</a>
+ * <p>
+ * Alternatively, a native implementation of the original Zhang-Suen 
+ * algorithm can be selected, see {@link SkeletonMode#ZHANG_SUEN}. It works 
+ * on bit-packed image rows, decides on deletions with a lookup table and 
+ * in each sub-iteration only visits the current border pixels. 
+ * Sub-iterations are processed in parallel on bands of rows. Note that 
+ * ImageJ applies some modifications to the original algorithm, hence, 
+ * results of both modes may slightly differ.
  * 
  * @author moeller
  */
@@ -57,6 +69,55 @@ import de.unihalle.informatik.MiToBo.core.operator.*;
 		level=Level.APPLICATION)
 public class SkeletonExtractor extends MTBOperator {
 
+	/**
+	 * Available skeletonization modes.
+	 */
+	public static enum SkeletonMode {
+		/**
+		 * Use ImageJ's implementation.
+		 */
+		IMAGEJ,
+		/**
+		 * Use native MiToBo implementation of Zhang-Suen thinning.
+		 */
+		ZHANG_SUEN
+	}
+	
+	/**
+	 * Lookup table for deletion of pixels indexed by the 8-neighborhood.
+	 * <p>
+	 * Bit k of the index refers to neighbor P(k+2) in the notation of
+	 * Zhang and Suen, i.e. the neighbors are numbered clockwise starting
+	 * with the upper one. Bit 0 of an entry is set if the pixel is to be 
+	 * deleted in the first sub-iteration, bit 1 if it is to be deleted in 
+	 * the second one.
+	 */
+	private static final byte[] deletionTable = new byte[256];
+	
+	static {
+		for (int n = 0; n < 256; ++n) {
+			int p2 = n & 1, p4 = (n >> 2) & 1, p6 = (n >> 4) & 1, p8 = (n >> 6) & 1;
+			int b = Integer.bitCount(n);
+			// number of 01 patterns in the sequence P2, P3, ..., P9, P2
+			int a = 0;
+			for (int k = 0; k < 8; ++k) {
+				if (((n >> k) & 1) == 0 && ((n >> ((k+1) % 8)) & 1) == 1)
+					++a;
+			}
+			if (b < 2 || b > 6 || a != 1)
+				continue;
+			if (p2*p4*p6 == 0 && p4*p6*p8 == 0)
+				deletionTable[n] |= 1;
+			if (p2*p4*p8 == 0 && p2*p6*p8 == 0)
+				deletionTable[n] |= 2;
+		}
+	}
+	
+	/**
+	 * Minimal number of rows per band in parallel processing.
+	 */
+	private static final int minRowsPerBand = 32;
+
 	/**
 	 * Binary input image, pixels with value 0 are interpreted as background.
 	 */
@@ -64,6 +125,22 @@ public class SkeletonExtractor extends MTBOperator {
 			direction = Parameter.Direction.IN, description = "Input image.")
 	private transient MTBImage inImg = null;
 
+	/**
+	 * Skeletonization mode.
+	 */
+	@Parameter( label= "Mode", required = false, dataIOOrder = 1,
+			direction = Parameter.Direction.IN, mode=ExpertMode.ADVANCED, 
+			description = "Implementation to use.")
+	private SkeletonMode mode = SkeletonMode.IMAGEJ;
+
+	/**
+	 * Flag to disable/enable parallel processing in native mode.
+	 */
+	@Parameter( label= "Run in Parallel?", required = false, dataIOOrder = 2,
+			direction = Parameter.Direction.IN, mode=ExpertMode.ADVANCED, 
+			description = "Process sub-iterations in parallel (native mode).")
+	private boolean runParallel = true;
+
 	/**
 	 * Binary result image, skeleton in white, background in black.
 	 */
@@ -95,6 +172,22 @@ public class SkeletonExtractor extends MTBOperator {
 		return this.inImg;
 	}
 
+	/**
+	 * Set skeletonization mode.
+	 * @param m	Mode to use.
+	 */
+	public void setSkeletonMode(SkeletonMode m) {
+		this.mode = m;
+	}
+
+	/**
+	 * Enable/disable parallel processing in native mode.
+	 * @param flag	If true, sub-iterations are processed in parallel.
+	 */
+	public void setRunParallel(boolean flag) {
+		this.runParallel = flag;
+	}
+
 	/**
 	 * Returns the skeleton image.
 	 * @return Binary skeleton image.
@@ -108,7 +201,17 @@ public class SkeletonExtractor extends MTBOperator {
 	 */
 	@Override
 	protected void operate() {
-
+		if (this.mode == SkeletonMode.ZHANG_SUEN)
+			this.skeletonizeZhangSuen();
+		else
+			this.skeletonizeImageJ();
+	}
+	
+	/**
+	 * Skeletonization by ImageJ.
+	 */
+	private void skeletonizeImageJ() {
+		
 		int width = this.inImg.getSizeX();
 		int height = this.inImg.getSizeY();
 
@@ -149,4 +252,220 @@ public class SkeletonExtractor extends MTBOperator {
 			}
 		}
 	}
+
+	/**
+	 * Native Zhang-Suen thinning on bit-packed rows.
+	 * <p>
+	 * Each image row is stored in an array of longs with one bit per pixel, 
+	 * rows and columns are padded by one background pixel on each side.
+	 * The pixels to visit are kept in a second bit-packed image of marks 
+	 * which initially contains all foreground pixels with at least one 
+	 * background neighbor. After each sub-iteration only surviving marked 
+	 * pixels and foreground neighbors of deleted pixels remain marked as 
+	 * these are the only ones whose neighborhood may have changed.
+	 * <p>
+	 * Each sub-iteration first decides on all deletions based on the image 
+	 * at the beginning of the sub-iteration, then removes the pixels and 
+	 * updates the marks. Each step is run in parallel on bands of rows 
+	 * and each band writes only to its own rows. Hence, the result does 
+	 * not depend on the number of bands.
+	 */
+	private void skeletonizeZhangSuen() {
+		
+		final int width = this.inImg.getSizeX();
+		final int height = this.inImg.getSizeY();
+		final int words = (width + 2 + 63) >>> 6;
+		
+		// packed image and marks, row y of the image is stored in row y+1 
+		final long[][] img = new long[height+2][words];
+		final long[][] marks = new long[height+2][words];
+		final long[][] deleted = new long[height+2][words];
+		for (int y = 0; y < height; y++) {
+			long[] row = img[y+1];
+			for (int x = 0; x < width; x++) {
+				if (this.inImg.getValueInt(x, y) > 0)
+					row[(x+1) >>> 6] |= 1L << ((x+1) & 63);
+			}
+		}
+		
+		// split rows into bands
+		int bandNum = 1;
+		if (this.runParallel) {
+			bandNum = Math.max(1, Math.min(
+				4 * Runtime.getRuntime().availableProcessors(), 
+				height / minRowsPerBand));
+		}
+		final int[] bandStart = new int[bandNum+1];
+		for (int b = 0; b <= bandNum; ++b)
+			bandStart[b] = 1 + (int)((long)b * height / bandNum);
+		final int[] removed = new int[bandNum];
+		
+		// initially mark all foreground pixels with background neighbors
+		runOnBands(bandNum, (b) -> {
+			long[] tmp = new long[words];
+			for (int y = bandStart[b]; y < bandStart[b+1]; ++y) {
+				// AND of all 8 neighbors
+				andNeighbors(img[y-1], img[y], img[y+1], tmp);
+				for (int w = 0; w < words; ++w)
+					marks[y][w] = img[y][w] & ~tmp[w];
+			}
+		});
+		
+		int pass = 0;
+		int emptyPasses = 0;
+		while (emptyPasses < 2) {
+			final int passBit = 1 << (pass % 2);
+			
+			// decide on deletions
+			runOnBands(bandNum, (b) -> {
+				int count = 0;
+				for (int y = bandStart[b]; y < bandStart[b+1]; ++y) {
+					long[] up = img[y-1], row = img[y], down = img[y+1];
+					long[] mrow = marks[y], drow = deleted[y];
+					for (int w = 0; w < words; ++w) {
+						drow[w] = 0;
+						long bits = mrow[w];
+						while (bits != 0) {
+							int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+							bits &= bits - 1;
+							int n = neighborhood(up, row, down, x);
+							if ((deletionTable[n] & passBit) != 0) {
+								drow[w] |= 1L << (x & 63);
+								++count;
+							}
+						}
+					}
+				}
+				removed[b] = count;
+			});
+			
+			// remove pixels
+			runOnBands(bandNum, (b) -> {
+				for (int y = bandStart[b]; y < bandStart[b+1]; ++y) {
+					long[] row = img[y], drow = deleted[y];
+					for (int w = 0; w < words; ++w)
+						row[w] &= ~drow[w];
+				}
+			});
+			
+			// update marks: surviving marked pixels and neighbors of deleted ones
+			runOnBands(bandNum, (b) -> {
+				long[] tmp = new long[words];
+				for (int y = bandStart[b]; y < bandStart[b+1]; ++y) {
+					dilateRows(deleted[y-1], deleted[y], deleted[y+1], tmp);
+					long[] row = img[y], mrow = marks[y];
+					for (int w = 0; w < words; ++w)
+						mrow[w] = (mrow[w] | tmp[w]) & row[w];
+				}
+			});
+			
+			int total = 0;
+			for (int b = 0; b < bandNum; ++b)
+				total += removed[b];
+			emptyPasses = (total == 0) ? emptyPasses + 1 : 0;
+			++pass;
+		}
+		
+		// create skeleton image of type MTBImageByte
+		this.resultImg = (MTBImageByte) MTBImage.createMTBImage(
+				width, height, 1, 1, 1, MTBImageType.MTB_BYTE);
+		this.resultImg.fillBlack();
+		for (int y = 0; y < height; y++) {
+			long[] row = img[y+1];
+			for (int w = 0; w < words; ++w) {
+				long bits = row[w];
+				while (bits != 0) {
+					int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					this.resultImg.putValueInt(x-1, y, 255);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Runs the given task for all bands, in parallel if more than one band.
+	 * @param bandNum	Number of bands.
+	 * @param task		Task to run per band.
+	 */
+	private static void runOnBands(int bandNum, 
+			java.util.function.IntConsumer task) {
+		if (bandNum == 1)
+			task.accept(0);
+		else
+			IntStream.range(0, bandNum).parallel().forEach(task);
+	}
+
+	/**
+	 * Returns bit of a packed row.
+	 * @param row	Packed row.
+	 * @param x		Padded position.
+	 * @return	Bit value, 0 or 1.
+	 */
+	private static int bit(long[] row, int x) {
+		return (int)(row[x >>> 6] >>> (x & 63)) & 1;
+	}
+	
+	/**
+	 * Encodes 8-neighborhood of a pixel as index into deletion table.
+	 * @param up		Packed row above.
+	 * @param row		Packed row of the pixel.
+	 * @param down	Packed row below.
+	 * @param x			Padded position of the pixel.
+	 * @return	Index with bit k referring to neighbor P(k+2).
+	 */
+	private static int neighborhood(long[] up, long[] row, long[] down, int x) {
+		return   bit(up, x) 
+				| (bit(up, x+1) << 1) 
+				| (bit(row, x+1) << 2) 
+				| (bit(down, x+1) << 3) 
+				| (bit(down, x) << 4) 
+				| (bit(down, x-1) << 5) 
+				| (bit(row, x-1) << 6) 
+				| (bit(up, x-1) << 7);
+	}
+	
+	/**
+	 * Computes the AND of the 8 neighbors of all pixels of a packed row.
+	 * @param up		Packed row above.
+	 * @param row		Packed row.
+	 * @param down	Packed row below.
+	 * @param result	Array for the result.
+	 */
+	private static void andNeighbors(long[] up, long[] row, long[] down, 
+			long[] result) {
+		int words = row.length;
+		for (int w = 0; w < words; ++w) {
+			long v = up[w] & down[w];
+			long vPrev = (w > 0) ? up[w-1] & down[w-1] : 0; 
+			long vNext = (w < words-1) ? up[w+1] & down[w+1] : 0; 
+			long hPrev = (w > 0) ? row[w-1] : 0;
+			long hNext = (w < words-1) ? row[w+1] : 0;
+			long u = up[w] & down[w] & row[w];
+			long uPrev = vPrev & hPrev;
+			long uNext = vNext & hNext;
+			// left neighbors (x-1) and right neighbors (x+1) of the 3 rows
+			long left = (u << 1) | (uPrev >>> 63);
+			long right = (u >>> 1) | (uNext << 63);
+			result[w] = v & left & right;
+		}
+	}
+	
+	/**
+	 * Computes the 8-neighborhood dilation of three packed rows.
+	 * @param up		Packed row above.
+	 * @param row		Packed row.
+	 * @param down	Packed row below.
+	 * @param result	Array for the dilation of the middle row.
+	 */
+	private static void dilateRows(long[] up, long[] row, long[] down, 
+			long[] result) {
+		int words = row.length;
+		for (int w = 0; w < words; ++w) {
+			long u = up[w] | row[w] | down[w];
+			long uPrev = (w > 0) ? up[w-1] | row[w-1] | down[w-1] : 0; 
+			long uNext = (w < words-1) ? up[w+1] | row[w+1] | down[w+1] : 0; 
+			result[w] = u | (u << 1) | (uPrev >>> 63) | (u >>> 1) | (uNext << 63);
+		}
+	}
 }
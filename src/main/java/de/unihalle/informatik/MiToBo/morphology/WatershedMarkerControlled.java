@@ -0,0 +1,1050 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+
+package de.unihalle.informatik.MiToBo.morphology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
+import de.unihalle.informatik.Alida.exceptions.ALDOperatorException.OperatorExceptionType;
+import de.unihalle.informatik.Alida.annotations.ALDAOperator;
+import de.unihalle.informatik.Alida.annotations.ALDAOperator.Level;
+import de.unihalle.informatik.Alida.annotations.Parameter;
+import de.unihalle.informatik.Alida.annotations.Parameter.ExpertMode;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.*;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
+import de.unihalle.informatik.MiToBo.core.operator.*;
+import de.unihalle.informatik.MiToBo.math.graphs.IndexedMinHeap;
+
+/**
+ * Marker-controlled watershed transformation on gray-scale images.
+ * <p>
+ * The image is flooded starting from a set of markers, i.e. each marker
+ * grows into its catchment basin in the order of increasing gray values.
+ * Markers are either given by an additional marker image, or the regional 
+ * minima of the input image are used. The implementation follows the 
+ * flooding algorithm of Meyer:
+ * <p>
+ * <b>F. Meyer, <i>Topographic distance and watershed lines</i>. 
+ * Signal Processing, 38(1):113-125, 1994.</b>
+ * <p>
+ * Images of type byte or short, and integer images with a small range of 
+ * values, are flooded using a hierarchical bucket queue with one FIFO per 
+ * gray value which results in linear runtime. For all other image types 
+ * a binary heap is used in which ties are resolved in FIFO order. 
+ * <p>
+ * The result is a label image either containing the labeled catchment 
+ * basins, or the basins separated by watershed lines with label 0.
+ * 3D stacks are processed as volumes using the 6- or 26-neighborhood, 
+ * for 2D images the 4- or 8-neighborhood is used. Only the first channel 
+ * and time point of the input image are processed.
+ * <p>
+ * If a tile size is specified the image is partitioned into tiles which
+ * are flooded in parallel. Tiles exchange the labels and flooding levels 
+ * along their borders and are re-flooded until no border pixel changes 
+ * anymore. Each pixel then is assigned to a marker reachable on a path 
+ * with minimal maximal gray value, but in case of ties the result may 
+ * differ from sequential flooding. Watershed lines are derived from the
+ * basins in this mode.
+ *
+ * @author agent
+ */
+@ALDAOperator(genericExecutionMode=ALDAOperator.ExecutionMode.ALL,
+		level=Level.APPLICATION, allowBatchMode=true)
+public class WatershedMarkerControlled extends MTBOperator {
+
+	/**
+	 * Type of result.
+	 */
+	public static enum ResultMode {
+		/**
+		 * Label image of catchment basins covering the whole image.
+		 */
+		LABELED_BASINS,
+		/**
+		 * Label image of basins separated by watershed lines with label 0.
+		 */
+		WATERSHED_LINES
+	}
+	
+	/**
+	 * Neighborhood used in flooding.
+	 */
+	public static enum Neighborhood {
+		/**
+		 * 4-neighborhood in 2D, 6-neighborhood in 3D.
+		 */
+		NEIGHBORHOOD_4_6,
+		/**
+		 * 8-neighborhood in 2D, 26-neighborhood in 3D.
+		 */
+		NEIGHBORHOOD_8_26
+	}
+	
+	/**
+	 * Maximal number of gray values for which a bucket queue is used.
+	 */
+	private static final int maxBucketLevels = 1 << 16;
+	
+	/**
+	 * State of pixels not yet reached by the flooding.
+	 */
+	private static final byte stateUnvisited = 0;
+
+	/**
+	 * State of pixels in the queue.
+	 */
+	private static final byte stateQueued = 1;
+
+	/**
+	 * State of pixels already processed.
+	 */
+	private static final byte stateDone = 2;
+
+	/**
+	 * State of marker pixels.
+	 */
+	private static final byte stateMarker = 3;
+
+	/**
+	 * Image to flood, e.g., a gradient magnitude image.
+	 */
+	@Parameter( label= "Input Image", required = true, dataIOOrder = 0,
+			direction = Parameter.Direction.IN, description = "Input image.")
+	private transient MTBImage inImg = null;
+	
+	/**
+	 * Optional marker image, all pixels with values larger than zero are 
+	 * seeds.
+	 */
+	@Parameter( label= "Marker Image", required = false, dataIOOrder = 1,
+			direction = Parameter.Direction.IN, 
+			description = "Optional marker image, if not given regional minima "
+				+ "are used.")
+	private transient MTBImage markerImg = null;
+
+	/**
+	 * Flag to use marker values directly as labels.
+	 * <p>
+	 * If false, connected components of marker pixels are labeled.
+	 */
+	@Parameter( label= "Markers are Labels?", required = false, 
+			dataIOOrder = 2, direction = Parameter.Direction.IN, 
+			mode=ExpertMode.ADVANCED, 
+			description = "If selected, marker values are used as labels.")
+	private boolean markerIsLabelImage = false;
+
+	/**
+	 * Type of result.
+	 */
+	@Parameter( label= "Result Mode", required = false, dataIOOrder = 3,
+			direction = Parameter.Direction.IN, description = "Result type.")
+	private ResultMode resultMode = ResultMode.WATERSHED_LINES;
+
+	/**
+	 * Neighborhood.
+	 */
+	@Parameter( label= "Neighborhood", required = false, dataIOOrder = 4,
+			direction = Parameter.Direction.IN, mode=ExpertMode.ADVANCED, 
+			description = "Neighborhood used in flooding.")
+	private Neighborhood neighborhood = Neighborhood.NEIGHBORHOOD_8_26;
+
+	/**
+	 * Edge length of tiles for parallel flooding, 0 disables tiling.
+	 */
+	@Parameter( label= "Tile Size", required = false, dataIOOrder = 5,
+			direction = Parameter.Direction.IN, mode=ExpertMode.ADVANCED, 
+			description = "Size of tiles for parallel flooding, 0 = disabled.")
+	private int tileSize = 0;
+
+	/**
+	 * Label image of the result.
+	 */
+	@Parameter( label= "Result Image", dataIOOrder = 0,
+			direction = Parameter.Direction.OUT, description = "Result image.")
+	private transient MTBImageInt resultImg = null;
+
+	/**
+	 * Width of the image.
+	 */
+	private int width;
+	
+	/**
+	 * Height of the image.
+	 */
+	private int height;
+	
+	/**
+	 * Depth of the image.
+	 */
+	private int depth;
+	
+	/**
+	 * Gray values of the input image in linear order.
+	 */
+	private double[] values;
+	
+	/**
+	 * Smallest gray value of the input image.
+	 */
+	private double minValue;
+	
+	/**
+	 * Number of buckets, 0 if a heap is to be used.
+	 */
+	private int bucketLevels;
+	
+	/**
+	 * Neighbor offsets in x.
+	 */
+	private int[] dx;
+
+	/**
+	 * Neighbor offsets in y.
+	 */
+	private int[] dy;
+
+	/**
+	 * Neighbor offsets in z.
+	 */
+	private int[] dz;
+	
+	/**
+	 * Linear index offsets of neighbors.
+	 */
+	private int[] offsets;
+
+	/**
+	 * Default constructor.
+	 *  @throws ALDOperatorException Thrown in case of failure.
+	 */
+	public WatershedMarkerControlled() throws ALDOperatorException {
+		// nothing to do here
+	}		
+
+	/**
+	 * Constructor. 
+	 * 
+	 * @param inimg		Input image.
+	 * @param markers	Marker image, may be null.
+	 * @throws ALDOperatorException Thrown in case of failure.
+	 */
+	public WatershedMarkerControlled(MTBImage inimg, MTBImage markers) 
+			throws ALDOperatorException {
+		this.inImg = inimg;
+		this.markerImg = markers;
+	}
+
+	/**
+	 * Set input image.
+	 * @param img	Image to flood.
+	 */
+	public void setInputImage(MTBImage img) {
+		this.inImg = img;
+	}
+
+	/**
+	 * Set marker image.
+	 * @param img	Marker image, if null regional minima are used.
+	 */
+	public void setMarkerImage(MTBImage img) {
+		this.markerImg = img;
+	}
+
+	/**
+	 * Enable/disable usage of marker values as labels.
+	 * @param flag	If true, marker values are used as labels.
+	 */
+	public void setMarkerIsLabelImage(boolean flag) {
+		this.markerIsLabelImage = flag;
+	}
+
+	/**
+	 * Set type of result.
+	 * @param m	Result mode.
+	 */
+	public void setResultMode(ResultMode m) {
+		this.resultMode = m;
+	}
+
+	/**
+	 * Set neighborhood.
+	 * @param n	Neighborhood to use.
+	 */
+	public void setNeighborhood(Neighborhood n) {
+		this.neighborhood = n;
+	}
+
+	/**
+	 * Set tile size for parallel flooding.
+	 * @param size	Edge length of tiles, 0 disables tiling.
+	 */
+	public void setTileSize(int size) {
+		this.tileSize = size;
+	}
+
+	/**
+	 * Returns the result image.
+	 * @return Label image.
+	 */
+	public MTBImageInt getResultImage() {
+		return this.resultImg;
+	}
+
+	@Override
+	public void validateCustom() throws ALDOperatorException {
+		if (this.inImg.getType() == MTBImageType.MTB_RGB)
+			throw new ALDOperatorException(OperatorExceptionType.VALIDATION_FAILED,
+				"[WatershedMarkerControlled] RGB images are not supported!");
+		if (this.tileSize < 0)
+			throw new ALDOperatorException(OperatorExceptionType.VALIDATION_FAILED,
+				"[WatershedMarkerControlled] tile size must not be negative!");
+		if (   this.markerImg != null 
+				&& (   this.markerImg.getSizeX() != this.inImg.getSizeX()
+				    || this.markerImg.getSizeY() != this.inImg.getSizeY()
+				    || this.markerImg.getSizeZ() != this.inImg.getSizeZ()))
+			throw new ALDOperatorException(OperatorExceptionType.VALIDATION_FAILED,
+				"[WatershedMarkerControlled] marker image size does not match!");
+	}
+
+	/* (non-Javadoc)
+	 * @see de.unihalle.informatik.Alida.operator.ALDOperator#operate()
+	 */
+	@Override
+	protected void operate() {
+		this.width = this.inImg.getSizeX();
+		this.height = this.inImg.getSizeY();
+		this.depth = this.inImg.getSizeZ();
+		int n = this.width * this.height * this.depth;
+		
+		// copy gray values, integer images are flooded with a bucket queue
+		this.values = new double[n];
+		double maxValue = Double.NEGATIVE_INFINITY;
+		this.minValue = Double.POSITIVE_INFINITY;
+		int p = 0;
+		for (int z = 0; z < this.depth; ++z) {
+			for (int y = 0; y < this.height; ++y) {
+				for (int x = 0; x < this.width; ++x) {
+					double v = this.inImg.getValueDouble(x, y, z);
+					this.values[p++] = v;
+					if (v < this.minValue)
+						this.minValue = v;
+					if (v > maxValue)
+						maxValue = v;
+				}
+			}
+		}
+		this.bucketLevels = 0;
+		MTBImageType type = this.inImg.getType();
+		if (   (   type == MTBImageType.MTB_BYTE || type == MTBImageType.MTB_SHORT
+				    || type == MTBImageType.MTB_INT)
+				&& maxValue - this.minValue < maxBucketLevels)
+			this.bucketLevels = (int)(maxValue - this.minValue) + 1;
+		this.initNeighborhood();
+		
+		// initialize labels with markers
+		int[] labels = (this.markerImg != null) ? 
+				this.getMarkerLabels() : this.getRegionalMinima();
+		
+		if (this.tileSize > 0 
+				&& (   this.tileSize < this.width || this.tileSize < this.height
+						|| (this.depth > 1 && this.tileSize < this.depth))) {
+			this.floodTiled(labels);
+		}
+		else {
+			this.flood(labels, this.resultMode == ResultMode.WATERSHED_LINES);
+		}
+		
+		// copy result to result image
+		this.resultImg = (MTBImageInt)MTBImage.createMTBImage(
+				this.width, this.height, this.depth, 1, 1, MTBImageType.MTB_INT);
+		p = 0;
+		for (int z = 0; z < this.depth; ++z) {
+			for (int y = 0; y < this.height; ++y) {
+				for (int x = 0; x < this.width; ++x) {
+					this.resultImg.putValueInt(x, y, z, labels[p++]);
+				}
+			}
+		}
+		this.resultImg.setTitle("Watershed result of image <" 
+				+ this.inImg.getTitle() + ">");
+		this.values = null;
+	}
+
+	/**
+	 * Initializes the neighbor offsets according to the neighborhood.
+	 */
+	private void initNeighborhood() {
+		boolean full = (this.neighborhood == Neighborhood.NEIGHBORHOOD_8_26);
+		int zr = (this.depth > 1) ? 1 : 0;
+		int[] ox = new int[26], oy = new int[26], oz = new int[26];
+		int count = 0;
+		for (int z = -zr; z <= zr; ++z) {
+			for (int y = -1; y <= 1; ++y) {
+				for (int x = -1; x <= 1; ++x) {
+					int dist = Math.abs(x) + Math.abs(y) + Math.abs(z);
+					if (dist == 0 || (!full && dist > 1))
+						continue;
+					ox[count] = x;
+					oy[count] = y;
+					oz[count] = z;
+					++count;
+				}
+			}
+		}
+		this.dx = Arrays.copyOf(ox, count);
+		this.dy = Arrays.copyOf(oy, count);
+		this.dz = Arrays.copyOf(oz, count);
+		this.offsets = new int[count];
+		for (int k = 0; k < count; ++k)
+			this.offsets[k] = (this.dz[k] * this.height + this.dy[k]) * this.width 
+				+ this.dx[k];
+	}
+	
+	/**
+	 * Extracts the initial labels from the marker image.
+	 * @return	Label array with markers, all other entries are 0.
+	 */
+	private int[] getMarkerLabels() {
+		int n = this.values.length;
+		int[] labels = new int[n];
+		boolean[] isMarker = new boolean[n];
+		int p = 0;
+		for (int z = 0; z < this.depth; ++z) {
+			for (int y = 0; y < this.height; ++y) {
+				for (int x = 0; x < this.width; ++x) {
+					int v = this.markerImg.getValueInt(x, y, z);
+					if (v > 0) {
+						isMarker[p] = true;
+						if (this.markerIsLabelImage)
+							labels[p] = v;
+					}
+					++p;
+				}
+			}
+		}
+		if (this.markerIsLabelImage)
+			return labels;
+		
+		// label connected components of markers
+		int[] stack = new int[n];
+		int label = 0;
+		for (int s = 0; s < n; ++s) {
+			if (!isMarker[s] || labels[s] != 0)
+				continue;
+			++label;
+			labels[s] = label;
+			int top = 0;
+			stack[top++] = s;
+			while (top > 0) {
+				int q = stack[--top];
+				int x = q % this.width, r = q / this.width;
+				int y = r % this.height, z = r / this.height;
+				boolean interior = this.isInterior(x, y, z);
+				for (int k = 0; k < this.offsets.length; ++k) {
+					if (   !interior
+							&& !this.isInside(x + this.dx[k], y + this.dy[k], z + this.dz[k]))
+						continue;
+					int nq = q + this.offsets[k];
+					if (isMarker[nq] && labels[nq] == 0) {
+						labels[nq] = label;
+						stack[top++] = nq;
+					}
+				}
+			}
+		}
+		return labels;
+	}
+	
+	/**
+	 * Determines the regional minima of the input image.
+	 * <p>
+	 * A regional minimum is a plateau of constant gray value without any 
+	 * neighbor having a smaller value. 
+	 * 
+	 * @return	Label array with one label per regional minimum.
+	 */
+	private int[] getRegionalMinima() {
+		int n = this.values.length;
+		int[] labels = new int[n];
+		boolean[] visited = new boolean[n];
+		int[] plateau = new int[n];
+		int label = 0;
+		for (int s = 0; s < n; ++s) {
+			if (visited[s])
+				continue;
+			double v = this.values[s];
+			boolean isMinimum = true;
+			visited[s] = true;
+			int size = 0;
+			plateau[size++] = s;
+			for (int i = 0; i < size; ++i) {
+				int q = plateau[i];
+				int x = q % this.width, r = q / this.width;
+				int y = r % this.height, z = r / this.height;
+				boolean interior = this.isInterior(x, y, z);
+				for (int k = 0; k < this.offsets.length; ++k) {
+					if (   !interior
+							&& !this.isInside(x + this.dx[k], y + this.dy[k], z + this.dz[k]))
+						continue;
+					int nq = q + this.offsets[k];
+					double nv = this.values[nq];
+					if (nv < v) {
+						isMinimum = false;
+					}
+					else if (nv == v && !visited[nq]) {
+						visited[nq] = true;
+						plateau[size++] = nq;
+					}
+				}
+			}
+			if (isMinimum) {
+				++label;
+				for (int i = 0; i < size; ++i)
+					labels[plateau[i]] = label;
+			}
+		}
+		return labels;
+	}
+	
+	/**
+	 * Checks if the given position lies inside of the image.
+	 * @param x	x-coordinate.
+	 * @param y	y-coordinate.
+	 * @param z	z-coordinate.
+	 * @return	True if position is inside.
+	 */
+	private boolean isInside(int x, int y, int z) {
+		return    x >= 0 && x < this.width && y >= 0 && y < this.height 
+					 && z >= 0 && z < this.depth;
+	}
+	
+	/**
+	 * Checks if all neighbors of the given position lie inside of the image.
+	 * @param x	x-coordinate.
+	 * @param y	y-coordinate.
+	 * @param z	z-coordinate.
+	 * @return	True if position is not located at the image border.
+	 */
+	private boolean isInterior(int x, int y, int z) {
+		return    x > 0 && x < this.width - 1 && y > 0 && y < this.height - 1 
+					 && (this.depth == 1 || (z > 0 && z < this.depth - 1));
+	}
+	
+	/**
+	 * Creates a new priority queue suitable for the input image.
+	 * @param x0	Minimal x-coordinate of pixels to be queued.
+	 * @param y0	Minimal y-coordinate of pixels to be queued.
+	 * @param z0	Minimal z-coordinate of pixels to be queued.
+	 * @param x1	Maximal x-coordinate of pixels to be queued, exclusive.
+	 * @param y1	Maximal y-coordinate of pixels to be queued, exclusive.
+	 * @param z1	Maximal z-coordinate of pixels to be queued, exclusive.
+	 * @return	Bucket queue for integer images, binary heap otherwise.
+	 */
+	private FloodQueue createQueue(int x0, int y0, int z0, 
+			int x1, int y1, int z1) {
+		if (this.bucketLevels > 0)
+			return new BucketQueue(this.bucketLevels, this.minValue);
+		return new HeapQueue(x0, y0, z0, x1, y1, z1);
+	}
+	
+	/**
+	 * Sequentially floods the image starting from the given markers.
+	 * <p>
+	 * Markers are put into the queue with their gray value as priority,
+	 * all other pixels exactly once with a priority equal to the maximum 
+	 * of their gray value and the current flooding level. 
+	 * Without lines a pixel inherits the label of the neighbor from which 
+	 * it was reached. With lines the label of a pixel is determined when it 
+	 * is removed from the queue, and pixels with neighbors of different 
+	 * labels become watershed pixels which do not further propagate.
+	 * 
+	 * @param labels		Marker labels, overwritten with the result.
+	 * @param withLines	If true, watershed lines are generated.
+	 */
+	private void flood(int[] labels, boolean withLines) {
+		int n = labels.length;
+		byte[] state = new byte[n];
+		FloodQueue queue = 
+				this.createQueue(0, 0, 0, this.width, this.height, this.depth);
+		for (int p = 0; p < n; ++p) {
+			if (labels[p] > 0) {
+				state[p] = stateMarker;
+				queue.push(p, this.values[p]);
+			}
+		}
+		while (!queue.isEmpty()) {
+			int p = queue.pop();
+			double level = queue.lastKey();
+			boolean isMarker = (state[p] == stateMarker);
+			state[p] = stateDone;
+			if (withLines && !isMarker) {
+				int x = p % this.width, r = p / this.width;
+				int y = r % this.height, z = r / this.height;
+				boolean interior = this.isInterior(x, y, z);
+				int label = 0;
+				for (int k = 0; k < this.offsets.length; ++k) {
+					if (   !interior
+							&& !this.isInside(x + this.dx[k], y + this.dy[k], z + this.dz[k]))
+						continue;
+					int q = p + this.offsets[k];
+					if (   (state[q] != stateDone && state[q] != stateMarker) 
+							|| labels[q] <= 0)
+						continue;
+					if (label == 0) {
+						label = labels[q];
+					}
+					else if (labels[q] != label) {
+						label = -1;
+						break;
+					}
+				}
+				if (label <= 0) {
+					// watershed pixel
+					labels[p] = 0;
+					continue;
+				}
+				labels[p] = label;
+			}
+			this.pushNeighbors(p, labels, state, queue, level, withLines);
+		}
+	}
+
+	/**
+	 * Puts all unvisited neighbors of a pixel into the queue.
+	 * @param p					Pixel index.
+	 * @param labels		Label array.
+	 * @param state			Pixel states.
+	 * @param queue			Priority queue.
+	 * @param level			Current flooding level.
+	 * @param withLines	If false, neighbors directly inherit the label.
+	 */
+	private void pushNeighbors(int p, int[] labels, byte[] state, 
+			FloodQueue queue, double level, boolean withLines) {
+		int x = p % this.width, r = p / this.width;
+		int y = r % this.height, z = r / this.height;
+		boolean interior = this.isInterior(x, y, z);
+		for (int k = 0; k < this.offsets.length; ++k) {
+			if (   !interior
+					&& !this.isInside(x + this.dx[k], y + this.dy[k], z + this.dz[k]))
+				continue;
+			int q = p + this.offsets[k];
+			if (state[q] != stateUnvisited)
+				continue;
+			state[q] = stateQueued;
+			if (!withLines)
+				labels[q] = labels[p];
+			queue.push(q, Math.max(level, this.values[q]));
+		}
+	}
+	
+	/**
+	 * Floods the image tile-wise in parallel.
+	 * <p>
+	 * Each pixel is assigned a cost, i.e. the maximal gray value on the
+	 * best path from a marker found so far. Tiles are flooded with the 
+	 * markers they contain and the pixels surrounding the tile as seeds, 
+	 * and pixels are updated whenever their cost can be reduced. To avoid 
+	 * synchronization tiles are processed in phases such that tiles of 
+	 * the same phase are never adjacent. Rounds over all phases are 
+	 * repeated until no pixel on a tile border changes anymore.
+	 * 
+	 * @param labels		Marker labels, overwritten with the result.
+	 */
+	private void floodTiled(int[] labels) {
+		int n = labels.length;
+		double[] cost = new double[n];
+		for (int p = 0; p < n; ++p)
+			cost[p] = (labels[p] > 0) ? this.values[p] : Double.POSITIVE_INFINITY;
+		
+		int tilesX = (this.width + this.tileSize - 1) / this.tileSize;
+		int tilesY = (this.height + this.tileSize - 1) / this.tileSize;
+		int tilesZ = (this.depth + this.tileSize - 1) / this.tileSize;
+		int phaseNum = (this.depth > 1) ? 8 : 4;
+		ArrayList<ArrayList<int[]>> phases = new ArrayList<>();
+		for (int i = 0; i < phaseNum; ++i)
+			phases.add(new ArrayList<int[]>());
+		for (int tz = 0; tz < tilesZ; ++tz) {
+			for (int ty = 0; ty < tilesY; ++ty) {
+				for (int tx = 0; tx < tilesX; ++tx) {
+					int phase = (tx % 2) + 2 * (ty % 2) + 4 * (tz % 2);
+					phases.get(phase).add(new int[]{
+						tx * this.tileSize, ty * this.tileSize, tz * this.tileSize,
+						Math.min(this.width, (tx + 1) * this.tileSize),
+						Math.min(this.height, (ty + 1) * this.tileSize),
+						Math.min(this.depth, (tz + 1) * this.tileSize)});
+				}
+			}
+		}
+		boolean changed = true;
+		boolean firstRound = true;
+		while (changed) {
+			changed = false;
+			final boolean seedMarkers = firstRound;
+			for (ArrayList<int[]> tiles: phases) {
+				long changes = IntStream.range(0, tiles.size()).parallel().filter(
+					i -> this.floodTile(tiles.get(i), labels, cost, seedMarkers)).count();
+				if (changes > 0)
+					changed = true;
+			}
+			firstRound = false;
+		}
+		
+		if (this.resultMode == ResultMode.WATERSHED_LINES) {
+			// of two adjacent pixels with different labels the one with larger
+			// cost (or larger label in case of equal costs) becomes a line pixel
+			boolean[] line = new boolean[n];
+			IntStream.range(0, n).parallel().forEach(p -> {
+				if (labels[p] == 0)
+					return;
+				int x = p % this.width, r = p / this.width;
+				int y = r % this.height, z = r / this.height;
+				boolean interior = this.isInterior(x, y, z);
+				for (int k = 0; k < this.offsets.length; ++k) {
+					if (   !interior
+							&& !this.isInside(x + this.dx[k], y + this.dy[k], z + this.dz[k]))
+						continue;
+					int q = p + this.offsets[k];
+					if (   labels[q] != 0 && labels[q] != labels[p] 
+							&& (   cost[p] > cost[q] 
+									|| (cost[p] == cost[q] && labels[p] > labels[q]))) {
+						line[p] = true;
+						return;
+					}
+				}
+			});
+			for (int p = 0; p < n; ++p)
+				if (line[p])
+					labels[p] = 0;
+		}
+	}
+
+	/**
+	 * Floods a single tile.
+	 * @param tile					Tile bounds, minimal coordinates inclusive and 
+	 * 											maximal coordinates exclusive.
+	 * @param labels				Label array.
+	 * @param cost					Cost array.
+	 * @param seedMarkers		If true, markers inside of the tile are used as seeds.
+	 * @return	True if a pixel on the tile border has changed.
+	 */
+	private boolean floodTile(int[] tile, int[] labels, double[] cost, 
+			boolean seedMarkers) {
+		int x0 = tile[0], y0 = tile[1], z0 = tile[2];
+		int x1 = tile[3], y1 = tile[4], z1 = tile[5];
+		FloodQueue queue = this.createQueue(
+				Math.max(0, x0 - 1), Math.max(0, y0 - 1), Math.max(0, z0 - 1), 
+				Math.min(this.width, x1 + 1), Math.min(this.height, y1 + 1), 
+				Math.min(this.depth, z1 + 1));
+		
+		// seeds: markers inside and labeled pixels surrounding the tile 
+		for (int z = Math.max(0, z0 - 1); z < Math.min(this.depth, z1 + 1); ++z) {
+			for (int y = Math.max(0, y0 - 1); y < Math.min(this.height, y1 + 1); ++y) {
+				boolean rowInside = (z >= z0 && z < z1 && y >= y0 && y < y1);
+				for (int x = Math.max(0, x0 - 1); x < Math.min(this.width, x1 + 1); ++x) {
+					boolean inside = rowInside && x >= x0 && x < x1;
+					if (inside && !seedMarkers) {
+						// skip the interior of the tile
+						if (x == x0 && x1 - x0 > 1) 
+							x = x1 - 1;
+						continue;
+					}
+					int p = (z * this.height + y) * this.width + x;
+					if (labels[p] > 0)
+						queue.push(p, cost[p]);
+				}
+			}
+		}
+		
+		boolean borderChanged = false;
+		while (!queue.isEmpty()) {
+			int p = queue.pop();
+			double c = queue.lastKey();
+			if (c > cost[p])
+				continue;
+			int x = p % this.width, r = p / this.width;
+			int y = r % this.height, z = r / this.height;
+			for (int k = 0; k < this.offsets.length; ++k) {
+				int nx = x + this.dx[k], ny = y + this.dy[k], nz = z + this.dz[k];
+				if (   nx < x0 || nx >= x1 || ny < y0 || ny >= y1 
+						|| nz < z0 || nz >= z1)
+					continue;
+				int q = p + this.offsets[k];
+				double nc = Math.max(c, this.values[q]);
+				if (nc < cost[q]) {
+					cost[q] = nc;
+					labels[q] = labels[p];
+					queue.push(q, nc);
+					if (   nx == x0 || nx == x1 - 1 || ny == y0 || ny == y1 - 1 
+							|| nz == z0 || nz == z1 - 1)
+						borderChanged = true;
+				}
+			}
+		}
+		return borderChanged;
+	}
+	
+	/**
+	 * Priority queue of pixel indices used for flooding.
+	 * <p>
+	 * Pixels with equal priority are returned in FIFO order.
+	 */
+	private interface FloodQueue {
+		
+		/**
+		 * Adds a pixel.
+		 * @param p			Pixel index.
+		 * @param key		Priority, smaller values are returned first.
+		 */
+		void push(int p, double key);
+		
+		/**
+		 * Removes the pixel with smallest priority.
+		 * @return	Pixel index.
+		 */
+		int pop();
+		
+		/**
+		 * Returns priority of the pixel returned by last call to {@link #pop()}.
+		 * @return	Priority.
+		 */
+		double lastKey();
+		
+		/**
+		 * Checks if the queue is empty.
+		 * @return	True if queue is empty.
+		 */
+		boolean isEmpty();
+	}
+	
+	/**
+	 * Hierarchical queue with one FIFO for each integer gray value.
+	 * <p>
+	 * Priorities must never be smaller than the priority of the last pixel
+	 * removed from the queue, which holds for flooding.
+	 */
+	private static class BucketQueue implements FloodQueue {
+		
+		/**
+		 * Entries per bucket, allocated on demand.
+		 */
+		private int[][] buckets;
+		
+		/**
+		 * Read positions of buckets.
+		 */
+		private int[] heads;
+		
+		/**
+		 * Write positions of buckets.
+		 */
+		private int[] tails;
+		
+		/**
+		 * Gray value of first bucket.
+		 */
+		private double offset;
+		
+		/**
+		 * Current bucket.
+		 */
+		private int current = 0;
+		
+		/**
+		 * Number of entries.
+		 */
+		private int size = 0;
+		
+		/**
+		 * Constructor.
+		 * @param levels	Number of gray values.
+		 * @param min			Smallest gray value.
+		 */
+		BucketQueue(int levels, double min) {
+			this.buckets = new int[levels][];
+			this.heads = new int[levels];
+			this.tails = new int[levels];
+			this.offset = min;
+		}
+		
+		@Override
+		public void push(int p, double key) {
+			int b = Math.max(this.current, (int)(key - this.offset));
+			int[] bucket = this.buckets[b];
+			if (bucket == null) {
+				bucket = new int[16];
+				this.buckets[b] = bucket;
+			}
+			else if (this.tails[b] == bucket.length) {
+				bucket = Arrays.copyOf(bucket, 2 * bucket.length);
+				this.buckets[b] = bucket;
+			}
+			bucket[this.tails[b]++] = p;
+			++this.size;
+		}
+		
+		@Override
+		public int pop() {
+			while (this.heads[this.current] == this.tails[this.current]) {
+				// release exhausted bucket
+				this.buckets[this.current] = null;
+				this.heads[this.current] = 0;
+				this.tails[this.current] = 0;
+				++this.current;
+			}
+			--this.size;
+			return this.buckets[this.current][this.heads[this.current]++];
+		}
+		
+		@Override
+		public double lastKey() {
+			return this.current + this.offset;
+		}
+		
+		@Override
+		public boolean isEmpty() {
+			return this.size == 0;
+		}
+	}
+	
+	/**
+	 * Binary min-heap on the pixels of a box, ties are resolved by insertion 
+	 * order.
+	 * <p>
+	 * Pixels are mapped to box-local nodes of an {@link IndexedMinHeap}. 
+	 * Pushing a pixel which is already queued decreases its priority if the 
+	 * new one is smaller and is ignored otherwise, i.e. the queue behaves 
+	 * like a heap with lazy deletion of outdated entries.
+	 */
+	private class HeapQueue implements FloodQueue {
+		
+		/**
+		 * Minimal x-coordinate of the box.
+		 */
+		private final int bx;
+		
+		/**
+		 * Minimal y-coordinate of the box.
+		 */
+		private final int by;
+		
+		/**
+		 * Minimal z-coordinate of the box.
+		 */
+		private final int bz;
+		
+		/**
+		 * Width of the box.
+		 */
+		private final int bw;
+		
+		/**
+		 * Height of the box.
+		 */
+		private final int bh;
+		
+		/**
+		 * Flag indicating that the box covers the whole image.
+		 */
+		private final boolean wholeImage;
+		
+		/**
+		 * Priorities of box pixels.
+		 */
+		private final double[] keys;
+		
+		/**
+		 * Heap of box pixels.
+		 */
+		private final IndexedMinHeap heap;
+		
+		/**
+		 * Priority of last removed entry.
+		 */
+		private double last;
+		
+		/**
+		 * Constructor.
+		 * @param x0	Minimal x-coordinate.
+		 * @param y0	Minimal y-coordinate.
+		 * @param z0	Minimal z-coordinate.
+		 * @param x1	Maximal x-coordinate, exclusive.
+		 * @param y1	Maximal y-coordinate, exclusive.
+		 * @param z1	Maximal z-coordinate, exclusive.
+		 */
+		HeapQueue(int x0, int y0, int z0, int x1, int y1, int z1) {
+			this.bx = x0;
+			this.by = y0;
+			this.bz = z0;
+			this.bw = x1 - x0;
+			this.bh = y1 - y0;
+			this.wholeImage = (this.bw == WatershedMarkerControlled.this.width 
+					&& this.bh == WatershedMarkerControlled.this.height
+					&& z1 - z0 == WatershedMarkerControlled.this.depth);
+			this.keys = new double[this.bw * this.bh * (z1 - z0)];
+			this.heap = new IndexedMinHeap(this.keys.length, this.keys);
+		}
+		
+		@Override
+		public void push(int p, double key) {
+			int node = p;
+			if (!this.wholeImage) {
+				int w = WatershedMarkerControlled.this.width;
+				int h = WatershedMarkerControlled.this.height;
+				int x = p % w, r = p / w;
+				int y = r % h, z = r / h;
+				node = ((z - this.bz) * this.bh + (y - this.by)) * this.bw + x - this.bx;
+			}
+			if (this.heap.contains(node) && this.keys[node] <= key)
+				return;
+			this.keys[node] = key;
+			this.heap.insertOrUpdate(node);
+		}
+		
+		@Override
+		public int pop() {
+			int node = this.heap.pop();
+			this.last = this.keys[node];
+			if (this.wholeImage)
+				return node;
+			int x = node % this.bw, r = node / this.bw;
+			int y = r % this.bh, z = r / this.bh;
+			return (  (z + this.bz) * WatershedMarkerControlled.this.height 
+							+ y + this.by) * WatershedMarkerControlled.this.width + x + this.bx;
+		}
+		
+		@Override
+		public double lastKey() {
+			return this.last;
+		}
+		
+		@Override
+		public boolean isEmpty() {
+			return this.heap.isEmpty();
+		}
+	}
+}
@@ -27,15 +27,18 @@ package de.unihalle.informatik.MiToBo.segmentation.evaluation;
 import java.awt.Point;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.stream.IntStream;
 
 import de.unihalle.informatik.Alida.annotations.ALDAOperator;
 import de.unihalle.informatik.Alida.annotations.Parameter;
+import de.unihalle.informatik.Alida.annotations.Parameter.ExpertMode;
 import de.unihalle.informatik.Alida.datatypes.ALDFileString;
 import de.unihalle.informatik.Alida.annotations.ALDAOperator.Level;
 import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
@@ -46,9 +49,11 @@ import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImageShort;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
 import de.unihalle.informatik.MiToBo.core.operator.MTBOperator;
 import de.unihalle.informatik.MiToBo.gui.MTBTableModel;
+import de.unihalle.informatik.MiToBo.math.graphs.UnionFind;
 import de.unihalle.informatik.MiToBo.math.optimization.MatchingBipartite_HungarianAlgorithm;
 import de.unihalle.informatik.MiToBo.math.optimization.MatchingBipartite_HungarianAlgorithm.ScoreInterpretation;
 import de.unihalle.informatik.MiToBo.segmentation.evaluation.measures.*;
+import de.unihalle.informatik.MiToBo.segmentation.evaluation.measures.EvaluationMeasureContours.NearestDistanceMode;
 import de.unihalle.informatik.MiToBo.segmentation.helpers.LabelImageConverter;
 
 /**
@@ -176,6 +181,38 @@ public class GroundtruthEvaluation extends MTBOperator {
 		direction = Parameter.Direction.IN, dataIOOrder = 4)
 	private ALDFileString resultFile = null;
 
+	/**
+	 * Flag to use sparse overlap matching.
+	 * <p>
+	 * If enabled, pairwise overlaps are collected in a sparse map, and the 
+	 * Hungarian algorithm is applied independently to each connected 
+	 * component of the overlap graph instead of the full score matrix.
+	 */
+	@Parameter( label= "Sparse overlap matching", required = false,
+		direction=Parameter.Direction.IN, dataIOOrder = 5, 
+		mode=ExpertMode.ADVANCED,
+		description = "Match regions per connected component of overlaps.")
+	private Boolean sparseMatching = new Boolean(false);
+
+	/**
+	 * Method to calculate nearest distances in contour-based measures.
+	 */
+	@Parameter( label= "Nearest distance mode", required = false,
+		direction=Parameter.Direction.IN, dataIOOrder = 6, 
+		mode=ExpertMode.ADVANCED,
+		description = "Method to calculate nearest contour point distances.")
+	private NearestDistanceMode distanceMode = 
+		NearestDistanceMode.DISTANCE_TRANSFORM;
+
+	/**
+	 * Number of threads to evaluate matched pairs in contour-based measures.
+	 */
+	@Parameter( label= "Number of threads", required = false,
+		direction=Parameter.Direction.IN, dataIOOrder = 7, 
+		mode=ExpertMode.ADVANCED,
+		description = "Number of threads, if <= 0 all available cores are used.")
+	private Integer threadNum = Integer.valueOf(1);
+
 	/**
 	 * Width of label images.
 	 */
@@ -255,6 +292,17 @@ public class GroundtruthEvaluation extends MTBOperator {
 	 */
 	protected byte [][] matchingMatrix = null;
 
+	/**
+	 * Sparse matching, i.e. matched segmentation entry per groundtruth entry.
+	 * <p>
+	 * Only filled in sparse mode, entries are -1 for unmatched regions.
+	 */
+	protected int [] matchedSegEntries = null;
+
+	/**
+	 * Pixel overlaps of sparsely matched pairs per groundtruth entry.
+	 */
+	protected int [] matchedOverlaps = null;
 
 	/**
 	 * Default constructor.
@@ -279,6 +327,30 @@ public class GroundtruthEvaluation extends MTBOperator {
 		this.omitAssignment = noAssignment;
 	}
 
+	/**
+	 * Enable or disable sparse overlap matching.
+	 * @param flag	If true, sparse matching is used.
+	 */
+	public void setSparseMatching(boolean flag) {
+		this.sparseMatching = new Boolean(flag);
+	}
+
+	/**
+	 * Set the method to calculate nearest distances between contours.
+	 * @param mode	Distance calculation mode.
+	 */
+	public void setNearestDistanceMode(NearestDistanceMode mode) {
+		this.distanceMode = mode;
+	}
+
+	/**
+	 * Set the number of threads for contour-based measures.
+	 * @param num	Number of threads, if <= 0 all cores are used.
+	 */
+	public void setThreadNum(int num) {
+		this.threadNum = Integer.valueOf(num);
+	}
+
 	/**
 	 * Get evaluation results.
 	 * @return	Table with evaluation results.
@@ -297,36 +369,16 @@ public class GroundtruthEvaluation extends MTBOperator {
 			// convert images to short images if necessary
 			this.convertLabelImages();
 
-			// extract statistical data about regions
-			this.extractLabelsSizesOverlaps();
-
-			// if not disabled, extract region mappings GT <---> Seg
-			if (this.omitAssignment.booleanValue()) {
-				// labels induce an assignment, i.e. identical labels coincide
-				this.matchingMatrix = new byte[this.maxRegionCount][this.maxRegionCount];
-				for (int r=0;r<this.maxRegionCount;++r)
-					for (int c=0;c<this.maxRegionCount;++c)
-						this.matchingMatrix[r][c] = 0;
-				// fill diagonal with ones, but consider unmatched regions
-				for (int d=0; d<this.minRegionCount;++d)
-					this.matchingMatrix[d][d] = 1;
+			// sparse mode, match regions per component of the overlap graph
+			if (this.sparseMatching.booleanValue()) {
+				OverlapCounter overlaps = this.extractLabelsSizesOverlapsSparse();
+				this.calcSparseMatching(overlaps);
 			}
-			// if labels do not induce a matching, calculate one
 			else {
-				// apply Hungarian algorithm to score matrix
-				MatchingBipartite_HungarianAlgorithm matcher =
-						new MatchingBipartite_HungarianAlgorithm(this.scoreMatrix,
-								ScoreInterpretation.MAXIMUM_IS_BEST);
-				matcher.runOp(false);
-				this.matchingMatrix = matcher.getMatching();
-			}
-
-			// safety check of matching matrix: if there is no overlap, erase match
-			for (int r=0;r<this.maxRegionCount;++r) {
-				for (int c=0;c<this.maxRegionCount;++c) {
-					if (this.matchingMatrix[r][c] == 1 && this.scoreMatrix[r][c] == 0)
-						this.matchingMatrix[r][c] = 0;
-				}
+				// extract statistical data about regions
+				this.extractLabelsSizesOverlaps();
+				// extract region mappings GT <---> Seg
+				this.calcMatchingMatrix();
 			}
 
 			// do the actual evaluation
@@ -345,6 +397,44 @@ public class GroundtruthEvaluation extends MTBOperator {
 		}
 	}
 
+	/**
+	 * Calculates the matching matrix from the dense score matrix.
+	 * @throws ALDOperatorException				Thrown in case of failure.
+	 * @throws ALDProcessingDAGException	Thrown in case of failure.
+	 */
+	protected void calcMatchingMatrix() 
+			throws ALDOperatorException, ALDProcessingDAGException {
+
+		// if not disabled, extract region mappings GT <---> Seg
+		if (this.omitAssignment.booleanValue()) {
+			// labels induce an assignment, i.e. identical labels coincide
+			this.matchingMatrix = new byte[this.maxRegionCount][this.maxRegionCount];
+			for (int r=0;r<this.maxRegionCount;++r)
+				for (int c=0;c<this.maxRegionCount;++c)
+					this.matchingMatrix[r][c] = 0;
+			// fill diagonal with ones, but consider unmatched regions
+			for (int d=0; d<this.minRegionCount;++d)
+				this.matchingMatrix[d][d] = 1;
+		}
+		// if labels do not induce a matching, calculate one
+		else {
+			// apply Hungarian algorithm to score matrix
+			MatchingBipartite_HungarianAlgorithm matcher =
+					new MatchingBipartite_HungarianAlgorithm(this.scoreMatrix,
+							ScoreInterpretation.MAXIMUM_IS_BEST);
+			matcher.runOp(false);
+			this.matchingMatrix = matcher.getMatching();
+		}
+
+		// safety check of matching matrix: if there is no overlap, erase match
+		for (int r=0;r<this.maxRegionCount;++r) {
+			for (int c=0;c<this.maxRegionCount;++c) {
+				if (this.matchingMatrix[r][c] == 1 && this.scoreMatrix[r][c] == 0)
+					this.matchingMatrix[r][c] = 0;
+			}
+		}
+	}
+
 	/**
 	 * Converts input images to short pixel format and optionally inverts them.
 	 * @throws ALDOperatorException				Thrown in case of failure.
@@ -506,6 +596,227 @@ public class GroundtruthEvaluation extends MTBOperator {
 		}
 	}
 
+	/**
+	 * Extracts labels, sizes and overlaps in a single pass with primitive 
+	 * data structures.
+	 * <p>
+	 * Region sizes are counted in arrays indexed by the 16-bit labels, and 
+	 * only pairs of foreground regions that actually overlap are stored. 
+	 * Runs of identical label pairs along an image row are accumulated 
+	 * before they are added to the overlap map.
+	 * 
+	 * @return	Sparse map of pairwise overlaps of foreground regions.
+	 */
+	protected OverlapCounter extractLabelsSizesOverlapsSparse() {
+
+		int [] countsGT = new int[65536];
+		int [] countsSG = new int[65536];
+		OverlapCounter overlaps = new OverlapCounter();
+		for (int y=0;y<this.height;++y) {
+			int runGT = 0, runSG = 0, runLength = 0;
+			for (int x=0;x<this.width;++x) {
+				int gtLabel = this.gtLabelImage.getValueInt(x, y);
+				int sgLabel = this.segLabelImage.getValueInt(x, y);
+				++countsGT[gtLabel];
+				++countsSG[sgLabel];
+				if (gtLabel == runGT && sgLabel == runSG) {
+					++runLength;
+					continue;
+				}
+				// pairs involving background are not required
+				if (runLength > 0 && runGT != 0 && runSG != 0)
+					overlaps.add(runGT, runSG, runLength);
+				runGT = gtLabel;
+				runSG = sgLabel;
+				runLength = 1;
+			}
+			if (runLength > 0 && runGT != 0 && runSG != 0)
+				overlaps.add(runGT, runSG, runLength);
+		}
+
+		// copy data to label sets and lists, background label zero is ignored
+		this.labelSetGT = new TreeSet<Integer>();
+		this.labelSetSG = new TreeSet<Integer>();
+		this.labelListGT = new ArrayList<>();
+		this.labelListSG = new ArrayList<>();
+		this.sizesGT = new HashMap<Integer, Integer>();
+		this.sizesSG = new HashMap<Integer, Integer>();
+		for (int l=0; l<65536; ++l) {
+			if (countsGT[l] > 0) {
+				this.sizesGT.put(new Integer(l), new Integer(countsGT[l]));
+				if (l != 0) {
+					this.labelSetGT.add(new Integer(l));
+					this.labelListGT.add(new Integer(l));
+				}
+			}
+			if (countsSG[l] > 0) {
+				this.sizesSG.put(new Integer(l), new Integer(countsSG[l]));
+				if (l != 0) {
+					this.labelSetSG.add(new Integer(l));
+					this.labelListSG.add(new Integer(l));
+				}
+			}
+		}
+		this.maxRegionCount = Math.max(this.labelSetGT.size(), 
+				this.labelSetSG.size());
+		this.minRegionCount = Math.min(this.labelSetGT.size(), 
+				this.labelSetSG.size());
+
+		// generate array with references (set-index-1) <-> label
+		this.gtIDs = new int[this.labelListGT.size()];
+		for (int i=0; i<this.gtIDs.length; ++i)
+			this.gtIDs[i] = this.labelListGT.get(i).intValue();
+		this.sgIDs = new int[this.labelListSG.size()];
+		for (int i=0; i<this.sgIDs.length; ++i)
+			this.sgIDs[i] = this.labelListSG.get(i).intValue();
+
+		// dense matrices are not available in sparse mode
+		this.scoreMatrix = null;
+		this.matchingMatrix = null;
+		return overlaps;
+	}
+
+	/**
+	 * Calculates a sparse matching from the given overlaps.
+	 * <p>
+	 * Groundtruth and segmented regions form the nodes of a bipartite graph 
+	 * with edges between overlapping regions. An optimal matching of the 
+	 * whole graph is given by optimal matchings of its connected components, 
+	 * hence the Hungarian algorithm is applied to the small score matrix of 
+	 * each component separately, and components are processed in parallel. 
+	 * Components with a single pair of regions are matched directly.
+	 * 
+	 * @param overlaps	Pairwise overlaps of foreground regions.
+	 * @throws ALDOperatorException	Thrown in case of failure.
+	 */
+	protected void calcSparseMatching(OverlapCounter overlaps) 
+			throws ALDOperatorException {
+
+		int gtNum = this.gtIDs.length;
+		int sgNum = this.sgIDs.length;
+		this.matchedSegEntries = new int[gtNum];
+		this.matchedOverlaps = new int[gtNum];
+		for (int i=0; i<gtNum; ++i)
+			this.matchedSegEntries[i] = -1;
+
+		// labels induce an assignment, i.e. identical entries coincide
+		if (this.omitAssignment.booleanValue()) {
+			for (int d=0; d<this.minRegionCount; ++d) {
+				int overlap = overlaps.get(this.gtIDs[d], this.sgIDs[d]);
+				// if there is no overlap, there is no match
+				if (overlap > 0) {
+					this.matchedSegEntries[d] = d;
+					this.matchedOverlaps[d] = overlap;
+				}
+			}
+			return;
+		}
+
+		// map labels to entries
+		int [] gtEntries = new int[65536];
+		for (int i=0; i<gtNum; ++i)
+			gtEntries[this.gtIDs[i]] = i;
+		int [] sgEntries = new int[65536];
+		for (int i=0; i<sgNum; ++i)
+			sgEntries[this.sgIDs[i]] = i;
+
+		// collect edges and join overlapping regions, 
+		// nodes are groundtruth entries followed by segmentation entries
+		int edgeNum = overlaps.size();
+		int [] edgeGT = new int[edgeNum];
+		int [] edgeSG = new int[edgeNum];
+		int [] edgeOverlap = new int[edgeNum];
+		int [] parents = new int[gtNum + sgNum];
+		for (int i=0; i<parents.length; ++i)
+			parents[i] = i;
+		int e = 0;
+		for (int slot=0; slot<overlaps.capacity(); ++slot) {
+			if (overlaps.isEmpty(slot))
+				continue;
+			edgeGT[e] = gtEntries[overlaps.getGroundtruthLabel(slot)];
+			edgeSG[e] = sgEntries[overlaps.getSegmentationLabel(slot)];
+			edgeOverlap[e] = overlaps.getCount(slot);
+			int rootGT = UnionFind.findRoot(parents, edgeGT[e]);
+			int rootSG = UnionFind.findRoot(parents, gtNum + edgeSG[e]);
+			if (rootGT != rootSG)
+				parents[rootSG] = rootGT;
+			++e;
+		}
+
+		// enumerate components and count their nodes and edges
+		int [] componentIDs = new int[gtNum + sgNum];
+		int componentNum = 0;
+		for (int i=0; i<parents.length; ++i)
+			componentIDs[i] = -1;
+		for (int i=0; i<parents.length; ++i) {
+			int root = UnionFind.findRoot(parents, i);
+			if (componentIDs[root] == -1) {
+				componentIDs[root] = componentNum;
+				++componentNum;
+			}
+			componentIDs[i] = componentIDs[root];
+		}
+		int [] componentGTNum = new int[componentNum];
+		int [] componentSGNum = new int[componentNum];
+		int [] localIndices = new int[gtNum + sgNum];
+		for (int i=0; i<gtNum; ++i) {
+			localIndices[i] = componentGTNum[componentIDs[i]];
+			++componentGTNum[componentIDs[i]];
+		}
+		for (int i=0; i<sgNum; ++i) {
+			localIndices[gtNum + i] = componentSGNum[componentIDs[gtNum + i]];
+			++componentSGNum[componentIDs[gtNum + i]];
+		}
+
+		// set up matchers for all components with more than one pair,
+		// single pairs are matched directly
+		ComponentMatcher [] matchers = new ComponentMatcher[componentNum];
+		int [][] componentGTEntries = new int[componentNum][];
+		int [][] componentSGEntries = new int[componentNum][];
+		for (e=0; e<edgeNum; ++e) {
+			int c = componentIDs[edgeGT[e]];
+			if (componentGTNum[c] == 1 && componentSGNum[c] == 1) {
+				this.matchedSegEntries[edgeGT[e]] = edgeSG[e];
+				this.matchedOverlaps[edgeGT[e]] = edgeOverlap[e];
+				continue;
+			}
+			if (matchers[c] == null) {
+				int size = Math.max(componentGTNum[c], componentSGNum[c]);
+				matchers[c] = new ComponentMatcher(new double[size][size]);
+				componentGTEntries[c] = new int[componentGTNum[c]];
+				componentSGEntries[c] = new int[componentSGNum[c]];
+			}
+			int r = localIndices[edgeGT[e]];
+			int col = localIndices[gtNum + edgeSG[e]];
+			matchers[c].setScore(r, col, edgeOverlap[e]);
+			componentGTEntries[c][r] = edgeGT[e];
+			componentSGEntries[c][col] = edgeSG[e];
+		}
+
+		// match components in parallel
+		IntStream.range(0, componentNum).parallel().forEach(c -> {
+			if (matchers[c] != null)
+				matchers[c].match();
+		});
+
+		// collect results, pairs without overlap are not matched
+		for (int c=0; c<componentNum; ++c) {
+			if (matchers[c] == null)
+				continue;
+			byte [][] result = matchers[c].getMatching();
+			double [][] scores = matchers[c].getScores();
+			for (int r=0; r<componentGTNum[c]; ++r) {
+				for (int col=0; col<componentSGNum[c]; ++col) {
+					if (result[r][col] == 1 && scores[r][col] > 0) {
+						int gtEntry = componentGTEntries[c][r];
+						this.matchedSegEntries[gtEntry] = componentSGEntries[c][col];
+						this.matchedOverlaps[gtEntry] = (int)scores[r][col];
+					}
+				}
+			}
+		}
+	}
+
 	/**
 	 * Calculates evaluation measures.
 	 * @return	Evaluation measures.
@@ -531,6 +842,11 @@ public class GroundtruthEvaluation extends MTBOperator {
 					this.segLabelImage, this.gtLabelImage, segContours, gtContours,
 					this.labelListSG, this.labelListGT, this.matchingMatrix);
 			hausdorff.setVerbose(this.verbose);
+			hausdorff.setNearestDistanceMode(this.distanceMode);
+			hausdorff.setThreadNum(this.threadNum.intValue());
+			if (this.matchedSegEntries != null)
+				hausdorff.setSparseMatching(
+						this.matchedSegEntries, this.matchedOverlaps);
 			hausdorff.runOp();
 			HashMap< String, HashMap<Integer, Double> > resultData =
 					hausdorff.getResult().getResultData();
@@ -546,6 +862,11 @@ public class GroundtruthEvaluation extends MTBOperator {
 					this.segLabelImage, this.gtLabelImage, segContours, gtContours,
 					this.labelListSG, this.labelListGT, this.matchingMatrix);
 			detection.setVerbose(this.verbose);
+			detection.setNearestDistanceMode(this.distanceMode);
+			detection.setThreadNum(this.threadNum.intValue());
+			if (this.matchedSegEntries != null)
+				detection.setSparseMatching(
+						this.matchedSegEntries, this.matchedOverlaps);
 			detection.runOp();
 			HashMap< String, HashMap<Integer, Double> > resultData =
 					detection.getResult().getResultData();
@@ -561,6 +882,11 @@ public class GroundtruthEvaluation extends MTBOperator {
 					this.segLabelImage, this.gtLabelImage,	segContours, gtContours,
 					this.labelListSG, this.labelListGT, this.matchingMatrix);
 			pratt.setVerbose(this.verbose);
+			pratt.setNearestDistanceMode(this.distanceMode);
+			pratt.setThreadNum(this.threadNum.intValue());
+			if (this.matchedSegEntries != null)
+				pratt.setSparseMatching(
+						this.matchedSegEntries, this.matchedOverlaps);
 			pratt.runOp();
 			HashMap< String, HashMap<Integer, Double> > resultData =
 					pratt.getResult().getResultData();
@@ -575,6 +901,11 @@ public class GroundtruthEvaluation extends MTBOperator {
 					this.segLabelImage, this.gtLabelImage, segContours, gtContours,
 					this.labelListSG, this.labelListGT, this.matchingMatrix, this.n);
 			odet.setVerbose(this.verbose);
+			odet.setNearestDistanceMode(this.distanceMode);
+			odet.setThreadNum(this.threadNum.intValue());
+			if (this.matchedSegEntries != null)
+				odet.setSparseMatching(
+						this.matchedSegEntries, this.matchedOverlaps);
 			odet.runOp();
 			HashMap< String, HashMap<Integer, Double> > resultData =
 					odet.getResult().getResultData();
@@ -592,6 +923,9 @@ public class GroundtruthEvaluation extends MTBOperator {
 					this.minRegionCount, this.maxRegionCount,
 					this.scoreMatrix, this.matchingMatrix);
 			rpf.setVerbose(this.verbose);
+			if (this.matchedSegEntries != null)
+				rpf.setSparseMatching(
+						this.matchedSegEntries, this.matchedOverlaps);
 			rpf.runOp();
 			HashMap< String, HashMap<Integer, Double> > resultData =
 					rpf.getResult().getResultData();
@@ -617,10 +951,15 @@ public class GroundtruthEvaluation extends MTBOperator {
 		int line = 0;
 		for (int j=0; j<this.labelListGT.size(); ++j) {
 			int segID = -1;
-			for (int i = 0; i < this.labelListSG.size(); i++) {
-				if (this.matchingMatrix[j][i] == 1) {
-					segID = i;
-					break;
+			if (this.matchedSegEntries != null) {
+				segID = this.matchedSegEntries[j];
+			}
+			else {
+				for (int i = 0; i < this.labelListSG.size(); i++) {
+					if (this.matchingMatrix[j][i] == 1) {
+						segID = i;
+						break;
+					}
 				}
 			}
 			this.resultTable.setValueAt(this.labelListGT.get(j),line, 0);
@@ -733,4 +1072,201 @@ public class GroundtruthEvaluation extends MTBOperator {
 
 		this.resultTable = new MTBTableModel(this.labelListGT.size(), col, header);
 	}
+
+	/**
+	 * Open-addressing hash map counting overlaps of pairs of labels.
+	 * <p>
+	 * Keys are combined from both 16-bit labels, hence no boxing is required.
+	 */
+	protected static class OverlapCounter {
+
+		/**
+		 * Marker for empty slots.
+		 */
+		private static final long EMPTY = -1;
+
+		/**
+		 * Keys of the map.
+		 */
+		private long [] keys;
+
+		/**
+		 * Counts of the map.
+		 */
+		private int [] counts;
+
+		/**
+		 * Number of entries in the map.
+		 */
+		private int entryNum = 0;
+
+		/**
+		 * Default constructor.
+		 */
+		public OverlapCounter() {
+			this.keys = new long[1024];
+			this.counts = new int[1024];
+			Arrays.fill(this.keys, EMPTY);
+		}
+
+		/**
+		 * Adds the given count to a pair of labels.
+		 * @param gtLabel		Groundtruth label.
+		 * @param sgLabel		Segmentation label.
+		 * @param count			Count to add.
+		 */
+		public void add(int gtLabel, int sgLabel, int count) {
+			long key = ((long)gtLabel << 16) | sgLabel;
+			int slot = this.findSlot(key);
+			if (this.keys[slot] == EMPTY) {
+				this.keys[slot] = key;
+				++this.entryNum;
+				this.counts[slot] = count;
+				if (2 * this.entryNum > this.keys.length)
+					this.grow();
+			}
+			else {
+				this.counts[slot] += count;
+			}
+		}
+
+		/**
+		 * Get the count of a pair of labels.
+		 * @param gtLabel		Groundtruth label.
+		 * @param sgLabel		Segmentation label.
+		 * @return	Count of the pair, zero if not present.
+		 */
+		public int get(int gtLabel, int sgLabel) {
+			int slot = this.findSlot(((long)gtLabel << 16) | sgLabel);
+			return (this.keys[slot] == EMPTY) ? 0 : this.counts[slot];
+		}
+
+		/**
+		 * Get the number of pairs in the map.
+		 * @return	Number of entries.
+		 */
+		public int size() {
+			return this.entryNum;
+		}
+
+		/**
+		 * Get the number of slots of the map.
+		 * @return	Number of slots.
+		 */
+		public int capacity() {
+			return this.keys.length;
+		}
+
+		/**
+		 * Check if a slot is empty.
+		 * @param slot	Slot index.
+		 * @return	True if slot is empty.
+		 */
+		public boolean isEmpty(int slot) {
+			return this.keys[slot] == EMPTY;
+		}
+
+		/**
+		 * Get the groundtruth label of a slot.
+		 * @param slot	Slot index.
+		 * @return	Groundtruth label.
+		 */
+		public int getGroundtruthLabel(int slot) {
+			return (int)(this.keys[slot] >>> 16);
+		}
+
+		/**
+		 * Get the segmentation label of a slot.
+		 * @param slot	Slot index.
+		 * @return	Segmentation label.
+		 */
+		public int getSegmentationLabel(int slot) {
+			return (int)(this.keys[slot] & 0xFFFF);
+		}
+
+		/**
+		 * Get the count of a slot.
+		 * @param slot	Slot index.
+		 * @return	Count.
+		 */
+		public int getCount(int slot) {
+			return this.counts[slot];
+		}
+
+		/**
+		 * Searches the slot of a key with linear probing.
+		 * @param key	Key to search.
+		 * @return	Slot holding the key or empty slot where to insert it.
+		 */
+		private int findSlot(long key) {
+			int mask = this.keys.length - 1;
+			int slot = (int)((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+			while (this.keys[slot] != EMPTY && this.keys[slot] != key)
+				slot = (slot + 1) & mask;
+			return slot;
+		}
+
+		/**
+		 * Doubles the capacity of the map.
+		 */
+		private void grow() {
+			long [] oldKeys = this.keys;
+			int [] oldCounts = this.counts;
+			this.keys = new long[2 * oldKeys.length];
+			this.counts = new int[2 * oldKeys.length];
+			Arrays.fill(this.keys, EMPTY);
+			for (int i=0; i<oldKeys.length; ++i) {
+				if (oldKeys[i] != EMPTY) {
+					int slot = this.findSlot(oldKeys[i]);
+					this.keys[slot] = oldKeys[i];
+					this.counts[slot] = oldCounts[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hungarian matcher for a single component of the overlap graph.
+	 * <p>
+	 * The matching is calculated directly without invoking the operator, 
+	 * hence several instances may safely run in parallel.
+	 */
+	private static class ComponentMatcher 
+		extends MatchingBipartite_HungarianAlgorithm {
+
+		/**
+		 * Default constructor.
+		 * @param scores	Square score matrix of the component.
+		 * @throws ALDOperatorException	Thrown in case of failure.
+		 */
+		public ComponentMatcher(double [][] scores) 
+				throws ALDOperatorException {
+			super(scores, ScoreInterpretation.MAXIMUM_IS_BEST);
+		}
+
+		/**
+		 * Sets the score of a pair of regions.
+		 * @param r			Local groundtruth index.
+		 * @param c			Local segmentation index.
+		 * @param score	Score of the pair.
+		 */
+		public void setScore(int r, int c, double score) {
+			this.scoreMatrix[r][c] = score;
+		}
+
+		/**
+		 * Get the score matrix of the component.
+		 * @return	Score matrix.
+		 */
+		public double [][] getScores() {
+			return this.scoreMatrix;
+		}
+
+		/**
+		 * Calculates the matching.
+		 */
+		public void match() {
+			this.calcMatching();
+		}
+	}
 }
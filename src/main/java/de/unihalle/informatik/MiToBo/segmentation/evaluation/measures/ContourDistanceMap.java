@@ -0,0 +1,245 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.segmentation.evaluation.measures;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exact squared Euclidean distance map of a contour on a rectangular window.
+ * <p>
+ * The map is computed with the separable linear-time algorithm from
+ * <p>
+ * P. F. Felzenszwalb and D. P. Huttenlocher, "Distance Transforms of 
+ * Sampled Functions", Theory of Computing, vol. 8, pp. 415-428, 2012.
+ * <p>
+ * In contrast to the Chamfer distances of 
+ * {@link de.unihalle.informatik.MiToBo.morphology.DistanceTransform} 
+ * the resulting distances are exact, i.e. for each pixel of the window 
+ * they equal the distance to the nearest contour point. Queries outside of 
+ * the window are answered by exhaustive search over the contour points.
+ * 
+ * @author agent
+ */
+public class ContourDistanceMap {
+
+	/**
+	 * Value used for pixels without contour points.
+	 */
+	private static final double INF = 1e20;
+
+	/**
+	 * Contour points.
+	 */
+	private final List<Point> contour;
+
+	/**
+	 * Minimal x-coordinate of window.
+	 */
+	private final int xMin;
+
+	/**
+	 * Minimal y-coordinate of window.
+	 */
+	private final int yMin;
+
+	/**
+	 * Width of window.
+	 */
+	private final int width;
+
+	/**
+	 * Height of window.
+	 */
+	private final int height;
+
+	/**
+	 * Squared distances, row-major within the window.
+	 */
+	private final double [] sqDists;
+
+	/**
+	 * Default constructor.
+	 * @param points	Contour points.
+	 * @param x0			Minimal x-coordinate of window.
+	 * @param y0			Minimal y-coordinate of window.
+	 * @param w				Width of window.
+	 * @param h				Height of window.
+	 */
+	public ContourDistanceMap(List<Point> points, int x0, int y0, int w, int h) {
+		this.contour = points;
+		this.xMin = x0;
+		this.yMin = y0;
+		this.width = w;
+		this.height = h;
+		this.sqDists = new double[w*h];
+		if (points.isEmpty()) {
+			Arrays.fill(this.sqDists, Double.MAX_VALUE);
+			return;
+		}
+		Arrays.fill(this.sqDists, INF);
+		for (Point p: points) {
+			if (   p.x >= x0 && p.x < x0 + w 
+					&& p.y >= y0 && p.y < y0 + h)
+				this.sqDists[(p.y - y0)*w + p.x - x0] = 0;
+		}
+		int n = Math.max(w, h);
+		double [] f = new double[n];
+		double [] d = new double[n];
+		int [] v = new int[n];
+		double [] z = new double[n+1];
+		// transform columns
+		for (int x=0; x<w; ++x) {
+			for (int y=0; y<h; ++y)
+				f[y] = this.sqDists[y*w + x];
+			transform1D(f, h, d, v, z);
+			for (int y=0; y<h; ++y)
+				this.sqDists[y*w + x] = d[y];
+		}
+		// transform rows
+		for (int y=0; y<h; ++y) {
+			System.arraycopy(this.sqDists, y*w, f, 0, w);
+			transform1D(f, w, d, v, z);
+			System.arraycopy(d, 0, this.sqDists, y*w, w);
+		}
+	}
+
+	/**
+	 * Constructor with window covering the given point sets.
+	 * @param points	Contour points.
+	 * @param others	Further points to be covered by the window.
+	 */
+	public ContourDistanceMap(List<Point> points, List<Point> others) {
+		this(points, minX(points, others), minY(points, others), 
+			maxX(points, others) - minX(points, others) + 1, 
+			maxY(points, others) - minY(points, others) + 1);
+	}
+
+	/**
+	 * Get the squared distance of a position to the nearest contour point.
+	 * @param x	x-coordinate.
+	 * @param y	y-coordinate.
+	 * @return	Squared distance, Double.MAX_VALUE if contour is empty.
+	 */
+	public double getSquaredDistance(int x, int y) {
+		int wx = x - this.xMin;
+		int wy = y - this.yMin;
+		if (wx >= 0 && wx < this.width && wy >= 0 && wy < this.height)
+			return this.sqDists[wy*this.width + wx];
+		double min = Double.MAX_VALUE;
+		for (Point p: this.contour) {
+			double dx = p.x - x;
+			double dy = p.y - y;
+			min = Math.min(min, dx*dx + dy*dy);
+		}
+		return min;
+	}
+
+	/**
+	 * Lower envelope transform of a sampled 1D function.
+	 * @param f	Function values.
+	 * @param n	Number of samples.
+	 * @param d	Result array.
+	 * @param v	Helper array for parabola locations.
+	 * @param z	Helper array for envelope boundaries.
+	 */
+	private static void transform1D(double [] f, int n, double [] d, 
+			int [] v, double [] z) {
+		int k = 0;
+		v[0] = 0;
+		z[0] = Double.NEGATIVE_INFINITY;
+		z[1] = Double.POSITIVE_INFINITY;
+		for (int q=1; q<n; ++q) {
+			double s = ((f[q] + q*q) - (f[v[k]] + v[k]*v[k])) / (2*q - 2*v[k]);
+			while (s <= z[k]) {
+				--k;
+				s = ((f[q] + q*q) - (f[v[k]] + v[k]*v[k])) / (2*q - 2*v[k]);
+			}
+			++k;
+			v[k] = q;
+			z[k] = s;
+			z[k+1] = Double.POSITIVE_INFINITY;
+		}
+		k = 0;
+		for (int q=0; q<n; ++q) {
+			while (z[k+1] < q)
+				++k;
+			d[q] = (q - v[k])*(q - v[k]) + f[v[k]];
+		}
+	}
+
+	/**
+	 * Minimal x-coordinate of two point sets.
+	 * @param a	First set.
+	 * @param b	Second set.
+	 * @return	Minimal coordinate, zero if both sets are empty.
+	 */
+	private static int minX(List<Point> a, List<Point> b) {
+		int m = Integer.MAX_VALUE;
+		for (Point p: a) m = Math.min(m, p.x);
+		for (Point p: b) m = Math.min(m, p.x);
+		return (m == Integer.MAX_VALUE) ? 0 : m;
+	}
+
+	/**
+	 * Minimal y-coordinate of two point sets.
+	 * @param a	First set.
+	 * @param b	Second set.
+	 * @return	Minimal coordinate, zero if both sets are empty.
+	 */
+	private static int minY(List<Point> a, List<Point> b) {
+		int m = Integer.MAX_VALUE;
+		for (Point p: a) m = Math.min(m, p.y);
+		for (Point p: b) m = Math.min(m, p.y);
+		return (m == Integer.MAX_VALUE) ? 0 : m;
+	}
+
+	/**
+	 * Maximal x-coordinate of two point sets.
+	 * @param a	First set.
+	 * @param b	Second set.
+	 * @return	Maximal coordinate, zero if both sets are empty.
+	 */
+	private static int maxX(List<Point> a, List<Point> b) {
+		int m = Integer.MIN_VALUE;
+		for (Point p: a) m = Math.max(m, p.x);
+		for (Point p: b) m = Math.max(m, p.x);
+		return (m == Integer.MIN_VALUE) ? 0 : m;
+	}
+
+	/**
+	 * Maximal y-coordinate of two point sets.
+	 * @param a	First set.
+	 * @param b	Second set.
+	 * @return	Maximal coordinate, zero if both sets are empty.
+	 */
+	private static int maxY(List<Point> a, List<Point> b) {
+		int m = Integer.MIN_VALUE;
+		for (Point p: a) m = Math.max(m, p.y);
+		for (Point p: b) m = Math.max(m, p.y);
+		return (m == Integer.MIN_VALUE) ? 0 : m;
+	}
+}
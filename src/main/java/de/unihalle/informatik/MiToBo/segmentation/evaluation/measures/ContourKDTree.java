@@ -0,0 +1,176 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.segmentation.evaluation.measures;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+
+/**
+ * 2D kd-tree for nearest neighbor queries on contour points.
+ * <p>
+ * The tree is stored implicitly in two coordinate arrays, i.e. each 
+ * subarray is split at its median along alternating axes. In contrast to 
+ * {@link ContourDistanceMap} the points are not required to lie on an 
+ * image grid, e.g., for contours with sub-pixel coordinates.
+ * 
+ * @author agent
+ */
+public class ContourKDTree {
+
+	/**
+	 * x-coordinates of points in tree order.
+	 */
+	private final double [] xs;
+
+	/**
+	 * y-coordinates of points in tree order.
+	 */
+	private final double [] ys;
+
+	/**
+	 * Default constructor.
+	 * @param points	Points to be stored in the tree.
+	 */
+	public ContourKDTree(List<? extends Point2D> points) {
+		int n = points.size();
+		this.xs = new double[n];
+		this.ys = new double[n];
+		for (int i=0; i<n; ++i) {
+			this.xs[i] = points.get(i).getX();
+			this.ys[i] = points.get(i).getY();
+		}
+		this.build(0, n, 0);
+	}
+
+	/**
+	 * Get the number of points in the tree.
+	 * @return	Number of points.
+	 */
+	public int size() {
+		return this.xs.length;
+	}
+
+	/**
+	 * Get the squared distance of a position to the nearest point.
+	 * @param x	x-coordinate.
+	 * @param y	y-coordinate.
+	 * @return	Squared distance, Double.MAX_VALUE if tree is empty.
+	 */
+	public double getNearestSquaredDistance(double x, double y) {
+		return this.search(0, this.xs.length, 0, x, y, Double.MAX_VALUE);
+	}
+
+	/**
+	 * Recursively splits the given subarray at its median.
+	 * @param lo		First index of subarray.
+	 * @param hi		Index after the last element of subarray.
+	 * @param axis	Split axis, 0 for x and 1 for y.
+	 */
+	private void build(int lo, int hi, int axis) {
+		if (hi - lo <= 1)
+			return;
+		int mid = (lo + hi) >>> 1;
+		this.select(lo, hi - 1, mid, axis);
+		this.build(lo, mid, 1 - axis);
+		this.build(mid + 1, hi, 1 - axis);
+	}
+
+	/**
+	 * Searches the nearest point in the given subtree.
+	 * @param lo		First index of subtree.
+	 * @param hi		Index after the last element of subtree.
+	 * @param axis	Split axis of subtree.
+	 * @param x			x-coordinate of query.
+	 * @param y			y-coordinate of query.
+	 * @param best	Best squared distance found so far.
+	 * @return	Best squared distance including the subtree.
+	 */
+	private double search(int lo, int hi, int axis, double x, double y, 
+			double best) {
+		if (lo >= hi)
+			return best;
+		int mid = (lo + hi) >>> 1;
+		double dx = this.xs[mid] - x;
+		double dy = this.ys[mid] - y;
+		double result = Math.min(best, dx*dx + dy*dy);
+		double diff = (axis == 0) ? x - this.xs[mid] : y - this.ys[mid];
+		if (diff < 0) {
+			result = this.search(lo, mid, 1 - axis, x, y, result);
+			if (diff*diff < result)
+				result = this.search(mid + 1, hi, 1 - axis, x, y, result);
+		}
+		else {
+			result = this.search(mid + 1, hi, 1 - axis, x, y, result);
+			if (diff*diff < result)
+				result = this.search(lo, mid, 1 - axis, x, y, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Partially sorts a subarray so that the k-th element is in place.
+	 * @param left	First index of subarray.
+	 * @param right	Last index of subarray.
+	 * @param k			Index of element to place.
+	 * @param axis	Axis of coordinate to compare.
+	 */
+	private void select(int left, int right, int k, int axis) {
+		double [] keys = (axis == 0) ? this.xs : this.ys;
+		int l = left, r = right;
+		while (r > l) {
+			double pivot = keys[(l + r) >>> 1];
+			int i = l, j = r;
+			while (i <= j) {
+				while (keys[i] < pivot) ++i;
+				while (keys[j] > pivot) --j;
+				if (i <= j) {
+					this.swap(i, j);
+					++i;
+					--j;
+				}
+			}
+			if (k <= j)
+				r = j;
+			else if (k >= i)
+				l = i;
+			else
+				return;
+		}
+	}
+
+	/**
+	 * Swaps two points.
+	 * @param i	Index of first point.
+	 * @param j	Index of second point.
+	 */
+	private void swap(int i, int j) {
+		double t = this.xs[i];
+		this.xs[i] = this.xs[j];
+		this.xs[j] = t;
+		t = this.ys[i];
+		this.ys[i] = this.ys[j];
+		this.ys[j] = t;
+	}
+}
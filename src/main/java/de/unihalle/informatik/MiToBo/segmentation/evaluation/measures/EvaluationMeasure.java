@@ -108,6 +108,19 @@ public abstract class EvaluationMeasure extends MTBOperator {
 	 */
 	protected byte [][] matchingMatrix = null;
 
+	/**
+	 * Sparse matching, i.e. index of matched segmentation entry per 
+	 * groundtruth entry or -1 if unmatched.
+	 * <p>
+	 * If set, it is used instead of the matching matrix.
+	 */
+	protected int [] matchedSegEntries = null;
+
+	/**
+	 * Pixel overlaps of sparsely matched pairs per groundtruth entry.
+	 */
+	protected int [] matchedOverlaps = null;
+
 	/*
 	 * some internal helpers
 	 */
@@ -175,6 +188,46 @@ public abstract class EvaluationMeasure extends MTBOperator {
 	protected abstract void doEvaluation()
 			throws ALDOperatorException, ALDProcessingDAGException;
 	
+	/**
+	 * Specify a sparse matching to be used instead of the matching matrix.
+	 * @param matches		Matched segmentation entry per groundtruth entry or -1.
+	 * @param overlaps	Overlaps of matched pairs, may be null.
+	 */
+	public void setSparseMatching(int [] matches, int [] overlaps) {
+		this.matchedSegEntries = matches;
+		this.matchedOverlaps = overlaps;
+	}
+
+	/**
+	 * Get the segmentation entry matched to the given groundtruth entry.
+	 * @param gtEntry		Index of groundtruth entry.
+	 * @param segCount	Number of segmentation entries to search.
+	 * @return	Index of matched segmentation entry, -1 if not matched.
+	 */
+	protected int getMatchedSegEntry(int gtEntry, int segCount) {
+		if (this.matchedSegEntries != null) {
+			int segEntry = this.matchedSegEntries[gtEntry];
+			return (segEntry < segCount) ? segEntry : -1;
+		}
+		for (int c=0; c<segCount; ++c) {
+			if (this.matchingMatrix[gtEntry][c] == 1)
+				return c;
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the pixel overlap of a matched pair of regions.
+	 * @param gtEntry		Index of groundtruth entry.
+	 * @param segEntry	Index of matched segmentation entry.
+	 * @return	Number of pixels in overlap.
+	 */
+	protected int getMatchedOverlap(int gtEntry, int segEntry) {
+		if (this.matchedOverlaps != null)
+			return this.matchedOverlaps[gtEntry];
+		return (int)this.scoreMatrix[gtEntry][segEntry];
+	}
+
 	/**
 	 * Returns evaluation result data.
 	 * @return Result data object.
@@ -25,10 +25,17 @@
 package de.unihalle.informatik.MiToBo.segmentation.evaluation.measures;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.awt.Point;
 
 import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
+import de.unihalle.informatik.Alida.exceptions.ALDOperatorException.OperatorExceptionType;
 import de.unihalle.informatik.Alida.annotations.Parameter;
+import de.unihalle.informatik.Alida.annotations.Parameter.ExpertMode;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.*;
 
 /**
@@ -52,6 +59,25 @@ import de.unihalle.informatik.MiToBo.core.datatypes.images.*;
  */
 public abstract class EvaluationMeasureContours extends EvaluationMeasure {
 
+	/**
+	 * Methods to calculate nearest distances between contours.
+	 */
+	public static enum NearestDistanceMode {
+		/**
+		 * Compare all pairs of contour points.
+		 */
+		EXHAUSTIVE_SEARCH,
+		/**
+		 * Exact distance transform of target contour, see 
+		 * {@link ContourDistanceMap}.
+		 */
+		DISTANCE_TRANSFORM,
+		/**
+		 * Kd-tree of target contour, see {@link ContourKDTree}.
+		 */
+		KD_TREE
+	}
+
 	/**
 	 * List of point-wise segmented contours.
 	 */
@@ -90,6 +116,40 @@ public abstract class EvaluationMeasureContours extends EvaluationMeasure {
 	@Parameter( label= "Result Image", dataIOOrder = 0,
 		direction = Parameter.Direction.OUT, description = "Result image.")
 	protected MTBImage resultImg = null;
+
+	/**
+	 * Method to calculate nearest distances between contours.
+	 */
+	@Parameter( label= "Nearest distance mode", required = false, 
+		direction=Parameter.Direction.IN, dataIOOrder = 4,
+		mode=ExpertMode.ADVANCED,
+		description = "Method to calculate nearest contour point distances.")
+	protected NearestDistanceMode distanceMode = 
+		NearestDistanceMode.DISTANCE_TRANSFORM;
+
+	/**
+	 * Number of threads to evaluate matched pairs of regions.
+	 * <p>
+	 * If zero or negative, all available processors are used.
+	 */
+	@Parameter( label= "Number of threads", required = false, 
+		direction=Parameter.Direction.IN, dataIOOrder = 5,
+		mode=ExpertMode.ADVANCED,
+		description = "Number of threads, if <= 0 all available cores are used.")
+	protected Integer threadNum = Integer.valueOf(1);
+
+	/**
+	 * Interface for measures evaluated on a matched pair of regions.
+	 */
+	protected interface PairEvaluator {
+		/**
+		 * Evaluates a matched pair.
+		 * @param gtIndex		Index of groundtruth region.
+		 * @param segIndex	Index of matched segmented region.
+		 * @return	Measure values of the pair.
+		 */
+		double [] evaluate(int gtIndex, int segIndex);
+	}
 	
 	/**
 	 * Default constructor.
@@ -99,6 +159,121 @@ public abstract class EvaluationMeasureContours extends EvaluationMeasure {
 		// nothing to do here
 	}		
 
+	/**
+	 * Set the method to calculate nearest distances.
+	 * @param mode	Distance calculation mode.
+	 */
+	public void setNearestDistanceMode(NearestDistanceMode mode) {
+		this.distanceMode = mode;
+	}
+
+	/**
+	 * Set the number of threads for evaluating matched pairs.
+	 * @param num	Number of threads, if <= 0 all cores are used.
+	 */
+	public void setThreadNum(int num) {
+		this.threadNum = Integer.valueOf(num);
+	}
+
+	/**
+	 * Calculates for all source points the squared distance to the nearest 
+	 * point of the target contour.
+	 * @param source	Source points.
+	 * @param target	Target contour.
+	 * @return	Squared distances, Double.MAX_VALUE if target is empty.
+	 */
+	protected double [] getNearestSquaredDistances(List<Point> source, 
+			List<Point> target) {
+		double [] dists = new double[source.size()];
+		int i = 0;
+		switch(this.distanceMode)
+		{
+		case DISTANCE_TRANSFORM:
+			ContourDistanceMap distMap = new ContourDistanceMap(target, source);
+			for (Point p: source) {
+				dists[i] = distMap.getSquaredDistance(p.x, p.y);
+				++i;
+			}
+			break;
+		case KD_TREE:
+			ContourKDTree tree = new ContourKDTree(target);
+			for (Point p: source) {
+				dists[i] = tree.getNearestSquaredDistance(p.x, p.y);
+				++i;
+			}
+			break;
+		case EXHAUSTIVE_SEARCH:
+		default:
+			for (Point p: source) {
+				double min = Double.MAX_VALUE;
+				for (Point q: target) {
+					double dx = p.x - q.x;
+					double dy = p.y - q.y;
+					min = Math.min(min, dx*dx + dy*dy);
+				}
+				dists[i] = min;
+				++i;
+			}
+			break;
+		}
+		return dists;
+	}
+
+	/**
+	 * Evaluates all matched pairs of regions, optionally in parallel.
+	 * @param evaluator	Measure to evaluate on each pair.
+	 * @return	Measure values per groundtruth region, null if not matched.
+	 * @throws ALDOperatorException	Thrown in case of failure.
+	 */
+	protected double [][] evaluateMatchedPairs(final PairEvaluator evaluator) 
+			throws ALDOperatorException {
+		final int gtNum = this.gtRegionLabels.size();
+		final int [] matches = new int[gtNum];
+		for (int j=0; j<gtNum; ++j)
+			matches[j] = this.getMatchedSegEntry(j, this.segRegionLabels.size());
+		final double [][] values = new double[gtNum][];
+		int threads = (this.threadNum == null || this.threadNum.intValue() <= 0)
+				? Runtime.getRuntime().availableProcessors() 
+				: this.threadNum.intValue();
+		threads = Math.max(1, Math.min(threads, gtNum));
+		if (threads == 1) {
+			for (int j=0; j<gtNum; ++j)
+				if (matches[j] >= 0)
+					values[j] = evaluator.evaluate(j, matches[j]);
+			return values;
+		}
+		final int workerNum = threads;
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int k=0; k<workerNum; ++k) {
+			final int worker = k;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int j=worker; j<gtNum; j+=workerNum)
+						if (matches[j] >= 0)
+							values[j] = evaluator.evaluate(j, matches[j]);
+					return null;
+				}
+			});
+		}
+		ForkJoinPool pool = new ForkJoinPool(workerNum);
+		try {
+			for (Future<Void> f: pool.invokeAll(tasks))
+				f.get();
+		} catch (ExecutionException e) {
+			throw new ALDOperatorException(OperatorExceptionType.OPERATE_FAILED, 
+				"[EvaluationMeasureContours] evaluation of pairs failed: " 
+					+ e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ALDOperatorException(OperatorExceptionType.OPERATE_FAILED, 
+				"[EvaluationMeasureContours] evaluation interrupted!");
+		} finally {
+			pool.shutdown();
+		}
+		return values;
+	}
+
 	/**
 	 * This method shows the contour pixel on a given image.
 	 * 
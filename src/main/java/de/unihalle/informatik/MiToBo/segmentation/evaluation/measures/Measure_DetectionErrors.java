@@ -90,22 +90,22 @@ public class Measure_DetectionErrors extends EvaluationMeasureContours {
 	 * This method is the implementation of the Detection Errors.
 	 * @return Evaluation data object.
 	 */
-	private MTBGroundtruthEvaluationData ComputeDetectionErrors () {
+	private MTBGroundtruthEvaluationData ComputeDetectionErrors () 
+			throws ALDOperatorException {
 		HashMap<Integer, Double> mapODE = new HashMap<Integer,Double>();
 		HashMap<Integer, Double> mapUDE = new HashMap<Integer,Double>();
 		HashMap<Integer, Double> mapLE = new HashMap<Integer,Double>();
-		int i;
+		// evaluate all pairs of groundtruth and corresponding segmented regions
+		double [][] values = this.evaluateMatchedPairs((j, i) -> new double[]{
+				this.ODE(j, i), this.UDE(j, i), this.LE(j, i)});
 		for (int j = 0; j < this.gtRegionLabels.size(); j++) {
-			for (i = 0; i < this.segRegionLabels.size(); i++) {
-				if (this.matchingMatrix[j][i] == 1) {
-					mapODE.put(this.gtRegionLabels.get(j), new Double(this.ODE(j, i)));
-					mapUDE.put(this.gtRegionLabels.get(j), new Double(this.UDE(j, i)));
-					mapLE.put(this.gtRegionLabels.get(j), new Double(this.LE(j, i)));
-					break;
-				}
+			if (values[j] != null) {
+				mapODE.put(this.gtRegionLabels.get(j), new Double(values[j][0]));
+				mapUDE.put(this.gtRegionLabels.get(j), new Double(values[j][1]));
+				mapLE.put(this.gtRegionLabels.get(j), new Double(values[j][2]));
 			}
 			// region not matched
-			if (i == this.segRegionLabels.size()) {
+			else {
 				mapODE.put(this.gtRegionLabels.get(j), Double.NaN);
 				mapUDE.put(this.gtRegionLabels.get(j), Double.NaN);
 				mapLE.put(this.gtRegionLabels.get(j), Double.NaN);
@@ -137,12 +137,8 @@ public class Measure_DetectionErrors extends EvaluationMeasureContours {
 	 * @return	Overdetection error.
 	 */
 	private double ODE (int gtIndex, int segIndex) {
-		int count = 0;
-
-		for (Point point: this.segContours.get(segIndex)) {
-			if (!this.gtContours.get(gtIndex).contains(point))
-				count++;
-		}
+		int count = this.countMissedPoints(
+				this.segContours.get(segIndex), this.gtContours.get(gtIndex));
 		// old implementation
 		//return count / 	( (double)this.segLabels.getSizeX()
 		//		            * (double)this.segLabels.getSizeY()
@@ -160,12 +156,8 @@ public class Measure_DetectionErrors extends EvaluationMeasureContours {
 	 * @return	Underdetection error.
 	 */
 	private double UDE (int gtIndex, int segIndex) {
-		int count = 0;
-
-		for (Point point: this.gtContours.get(gtIndex)) {
-			if (!this.segContours.get(segIndex).contains(point))
-				count++;
-		}
+		int count = this.countMissedPoints(
+				this.gtContours.get(gtIndex), this.segContours.get(segIndex));
 		if((double)this.gtContours.get(gtIndex).size() == 0)
 			return 1;
 		return (double)count / (double)this.gtContours.get(gtIndex).size();
@@ -179,17 +171,10 @@ public class Measure_DetectionErrors extends EvaluationMeasureContours {
 	 * @return	Localization error.
 	 */
 	private double LE (int gtIndex, int segIndex) {
-		int count1 = 0;
-		for (Point point: this.segContours.get(segIndex)) {
-			if (!this.gtContours.get(gtIndex).contains(point))
-				count1++;
-		}
-
-		int count2 = 0;
-		for (Point point: this.gtContours.get(gtIndex)) {
-			if (!this.segContours.get(segIndex).contains(point))
-				count2++;
-		}
+		int count1 = this.countMissedPoints(
+				this.segContours.get(segIndex), this.gtContours.get(gtIndex));
+		int count2 = this.countMissedPoints(
+				this.gtContours.get(gtIndex), this.segContours.get(segIndex));
 		// old implementation
 		//return ((double)count1 + (double)count2) /
 		//		 ((double)this.segLabels.getSizeX()
@@ -201,4 +186,21 @@ public class Measure_DetectionErrors extends EvaluationMeasureContours {
 				(			(double)this.gtContours.get(gtIndex).size() 
 						+ (double)this.segContours.get(segIndex).size());
 	}
+
+	/**
+	 * Counts the points of a contour not located on another contour.
+	 * 
+	 * @param source	Contour whose points are checked.
+	 * @param target	Contour to check against.
+	 * @return	Number of source points with non-zero distance to target.
+	 */
+	private int countMissedPoints(ArrayList<Point> source, 
+			ArrayList<Point> target) {
+		int count = 0;
+		for (double sqDist: this.getNearestSquaredDistances(source, target)) {
+			if (sqDist > 0)
+				count++;
+		}
+		return count;
+	}
 }
@@ -85,23 +85,18 @@ public class Measure_HausdorffDistance extends EvaluationMeasureContours {
 	 * This method is the implementation of the Hausdorff Distance
 	 * @return Evaluation data object.
 	 */
-	private MTBGroundtruthEvaluationData HAU () {
+	private MTBGroundtruthEvaluationData HAU () throws ALDOperatorException {
 		HashMap<Integer, Double> mapHausdorff = new HashMap<Integer,Double>();
-		int i;
+		// evaluate all pairs of groundtruth and corresponding segmented regions
+		double [][] values = this.evaluateMatchedPairs((j, i) -> new double[]{
+				Math.max(h(this.segContours.get(i), this.gtContours.get(j)), 
+					h(this.gtContours.get(j),	this.segContours.get(i)))});
 		for (int j = 0; j < this.gtRegionLabels.size(); j++) {
-			// search for corresponding segmented region
-			for (i = 0; i < this.segRegionLabels.size(); i++) {
-				if (this.matchingMatrix[j][i] == 1) {
-					mapHausdorff.put(this.gtRegionLabels.get(j), 
-							new Double(Math.max(
-								h(this.segContours.get(i), this.gtContours.get(j)), 
-									h(this.gtContours.get(j),	this.segContours.get(i)))));
-					// leave the loop
-					break;
-				}
+			if (values[j] != null) {
+				mapHausdorff.put(this.gtRegionLabels.get(j), new Double(values[j][0]));
 			}
 			// region not matched!
-			if (i == this.segRegionLabels.size()) {
+			else {
 				mapHausdorff.put(this.gtRegionLabels.get(j), Double.NaN);
 			}
 		}
@@ -130,17 +125,8 @@ public class Measure_HausdorffDistance extends EvaluationMeasureContours {
 	 */
 	protected double h (ArrayList<Point> list1, ArrayList<Point> list2) {
 		double max = Double.MIN_VALUE;
-		double min = Double.MAX_VALUE;
-		
-		for (Point point1: list1) {
-			for (Point point2: list2) {
-				min = Math.min(min, Math.sqrt(
-															Math.pow(point1.x - point2.x, 2) 
-														+ Math.pow(point1.y - point2.y, 2)));
-			}
-			max = Math.max(max, min);
-			min = Double.MAX_VALUE;
-		}
+		for (double sqDist: this.getNearestSquaredDistances(list1, list2))
+			max = Math.max(max, Math.sqrt(sqDist));
 		return max;
 	}
 }
@@ -99,20 +99,20 @@ public class Measure_OdetsCriteria extends EvaluationMeasureContours {
 	 * This method is the implementation of Odet's criteria.
 	 * @return Evaluation data object.
 	 */
-	private MTBGroundtruthEvaluationData ComputeOdetsCriteria () {
+	private MTBGroundtruthEvaluationData ComputeOdetsCriteria () 
+			throws ALDOperatorException {
 		HashMap<Integer, Double> mapOCO = new HashMap<Integer,Double>();
 		HashMap<Integer, Double> mapOCU = new HashMap<Integer,Double>();
-		int i;
+		// evaluate all pairs of groundtruth and corresponding segmented regions
+		double [][] values = this.evaluateMatchedPairs(
+				(j, i) -> new double[]{this.OCO(j, i), this.OCU(j, i)});
 		for (int j = 0; j < this.gtRegionLabels.size(); j++) {
-			for (i = 0; i < this.segRegionLabels.size(); i++) {
-				if (this.matchingMatrix[j][i] == 1) {
-					mapOCO.put(this.gtRegionLabels.get(j), new Double(this.OCO(j, i)));
-					mapOCU.put(this.gtRegionLabels.get(j), new Double(this.OCU(j, i)));
-					break;
-				}
+			if (values[j] != null) {
+				mapOCO.put(this.gtRegionLabels.get(j), new Double(values[j][0]));
+				mapOCU.put(this.gtRegionLabels.get(j), new Double(values[j][1]));
 			}
 			// region not matched!
-			if (i ==  this.segRegionLabels.size()) {
+			else {
 				mapOCO.put(this.gtRegionLabels.get(j), Double.NaN);
 				mapOCU.put(this.gtRegionLabels.get(j), Double.NaN);
 			}
@@ -134,27 +134,21 @@ public class Measure_OdetsCriteria extends EvaluationMeasureContours {
 	 * @return	Odet's oversegmentation error.
 	 */
 	protected double OCO (int gtIndex, int segIndex) {
-		ArrayList<Point> oversegPixel = new ArrayList<Point>();
+		int oversegPixel = 0;
 		double sum = 0;
 		double max = 5.0;
-		double min = Double.MAX_VALUE;
 
-		// detection of all oversegmentated pixels
-		for (Point point: this.segContours.get(segIndex)) {
-			if (!this.gtContours.get(gtIndex).contains(point))
-				oversegPixel.add(point);
-		}
-
-		// compute the sum formula of Odet's criterion
-		for (Point point1: oversegPixel) {
-			for (Point point2: this.gtContours.get(gtIndex)) {
-				min = Math.min(min, Math.sqrt(Math.pow(point1.x - point2.x, 2) 
-						+ Math.pow(point1.y - point2.y, 2)));
+		// oversegmented pixels are segmented contour pixels not located on 
+		// the groundtruth contour, i.e. with non-zero distance to it
+		for (double sqDist: this.getNearestSquaredDistances(
+				this.segContours.get(segIndex), this.gtContours.get(gtIndex))) {
+			if (sqDist > 0) {
+				// compute the sum formula of Odet's criterion
+				sum += Math.pow((Math.sqrt(sqDist) / max), this.n);
+				++oversegPixel;
 			}
-			sum += Math.pow((min / max), this.n);
-			min = Double.MAX_VALUE;
 		}
-		return sum / oversegPixel.size();
+		return sum / oversegPixel;
 	}
 	
 	/**
@@ -165,26 +159,20 @@ public class Measure_OdetsCriteria extends EvaluationMeasureContours {
 	 * @return	Odet's undersegmentation error.
 	 */
 	protected double OCU (int gtIndex, int segIndex) {
-		ArrayList<Point> undersegPixel = new ArrayList<Point>();
+		int undersegPixel = 0;
 		double sum = 0;
 		double max = 5.0;
-		double min = Double.MAX_VALUE;
-
-		// detection of all undersegmentated pixels
-		for (Point point: this.gtContours.get(gtIndex)) {
-			if (!this.segContours.get(segIndex).contains(point))
-				undersegPixel.add(point);
-		}
 
-		// compute the sum formula of Odet's criterion
-		for (Point point1: undersegPixel) {
-			for (Point point2: this.segContours.get(segIndex)) {
-				min = Math.min(min, Math.sqrt(Math.pow(point1.x - point2.x, 2)
-						+ Math.pow(point1.y - point2.y, 2)));
+		// undersegmented pixels are groundtruth contour pixels not located on 
+		// the segmented contour, i.e. with non-zero distance to it
+		for (double sqDist: this.getNearestSquaredDistances(
+				this.gtContours.get(gtIndex), this.segContours.get(segIndex))) {
+			if (sqDist > 0) {
+				// compute the sum formula of Odet's criterion
+				sum += Math.pow(Math.sqrt(sqDist) / max, this.n);
+				++undersegPixel;
 			}
-			sum += Math.pow(min / max, this.n);
-			min = Double.MAX_VALUE;
 		}
-		return sum / undersegPixel.size();
+		return sum / undersegPixel;
 	}
 }
\ No newline at end of file
@@ -83,19 +83,17 @@ public class Measure_PrattsFigureOfMerit extends EvaluationMeasureContours {
 	 * This method is the implementation of Pratt's figure of merit.
 	 * @return Evaluation data object.
 	 */
-	protected MTBGroundtruthEvaluationData PRA () {
+	protected MTBGroundtruthEvaluationData PRA () throws ALDOperatorException {
 		HashMap<Integer, Double> mapPratt = new HashMap<Integer,Double>();
-		int i;
+		// evaluate all pairs of groundtruth and corresponding segmented regions
+		double [][] values = this.evaluateMatchedPairs(
+				(j, i) -> new double[]{this.compute(j, i)});
 		for (int j = 0; j < this.gtRegionLabels.size(); j++) {
-			for (i = 0; i < this.segRegionLabels.size(); i++) {
-				if (this.matchingMatrix[j][i] == 1) {
-					mapPratt.put(
-						this.gtRegionLabels.get(j), new Double(this.compute(j, i)));
-					break;
-				}
+			if (values[j] != null) {
+				mapPratt.put(this.gtRegionLabels.get(j), new Double(values[j][0]));
 			}
 			// region not matched
-			if (i == this.segRegionLabels.size()) {
+			else {
 				mapPratt.put(this.gtRegionLabels.get(j), Double.NaN);
 			}
 		}
@@ -116,24 +114,15 @@ public class Measure_PrattsFigureOfMerit extends EvaluationMeasureContours {
 	 */
 	protected double compute (int gtIndex, int segIndex) {
 		double sum = 0;
-		double min = Double.MAX_VALUE;
 
 		/* 
 		 * computes the sum formula of Pratt's figure of merit by calculating the 
 		 * squared distance for each
 		 * segmentation contour pixel to the nearest ground truth contour pixel
 		 */
-		for (Point point1: this.segContours.get(segIndex)) {
-			for (Point point2: this.gtContours.get(gtIndex)) {
-//				min = Math.min(min, 
-//						Math.sqrt(Math.pow(point1.x - point2.x, 2) 
-//												+ Math.pow(point1.y - point2.y, 2)));
-				min = Math.min(min, 
-								Math.pow(point1.x - point2.x, 2) 
-									+ Math.pow(point1.y - point2.y, 2));
-			}
+		for (double min: this.getNearestSquaredDistances(
+				this.segContours.get(segIndex), this.gtContours.get(gtIndex))) {
 			sum += (1.0 / (1.0 + min));
-			min = Double.MAX_VALUE;
 		}
 		return sum * 1.0 / Math.max(
 									(double)this.gtContours.get(gtIndex).size(), 
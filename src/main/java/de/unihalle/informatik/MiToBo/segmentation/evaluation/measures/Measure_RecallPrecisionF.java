@@ -116,13 +116,7 @@ public class Measure_RecallPrecisionF extends EvaluationMeasure {
 			// get corresponding groundtruth label
 			Integer gtLab = new Integer(this.gtIDs[entry]);
 			// get label of matched segmented region
-			int segEntry = -1;
-			for (int c=0;c<this.maxRegionCount;++c) {
-				if (this.matchingMatrix[entry][c] == 1) {
-					segEntry = c;
-					break;
-				}
-			}
+			int segEntry = this.getMatchedSegEntry(entry, this.maxRegionCount);
 			// region not matched
 			if (segEntry == -1) {
 				if (this.verbose.booleanValue())
@@ -159,7 +153,7 @@ public class Measure_RecallPrecisionF extends EvaluationMeasure {
 				Integer sgLab = new Integer(this.sgIDs[segEntry]);
 				// fill result data objects:
 				// TP = overlap
-				int tp = (int)this.scoreMatrix[entry][segEntry];
+				int tp = this.getMatchedOverlap(entry, segEntry);
 				mapTruePositives.put(gtLab, new Double(tp));
 				// FP = SegRegionSize - TP
 				int fp = this.sizesSG.get(sgLab).intValue() - tp;
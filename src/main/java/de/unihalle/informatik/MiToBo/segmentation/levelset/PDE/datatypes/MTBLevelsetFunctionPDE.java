@@ -24,8 +24,9 @@
 
 package de.unihalle.informatik.MiToBo.segmentation.levelset.PDE.datatypes;
 
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.ArrayList;
+import java.util.NoSuchElementException;
 
 import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
 import de.unihalle.informatik.Alida.exceptions.ALDProcessingDAGException;
@@ -36,12 +37,11 @@ import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImageByte;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImageRGB;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImageShort;
+import de.unihalle.informatik.MiToBo.math.graphs.IndexedMinHeap;
 import de.unihalle.informatik.MiToBo.segmentation.basics.MTBSegmentationInterface;
 import de.unihalle.informatik.MiToBo.segmentation.levelset.core.MTBLevelsetFunctionDerivable;
 import de.unihalle.informatik.MiToBo.visualization.colormappings.ArrayToColorMapImage;
 
-import java.util.HashMap;
-
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBPoint3D;
 
 /**
@@ -54,6 +54,17 @@ import de.unihalle.informatik.MiToBo.core.datatypes.MTBPoint3D;
  * domain with function values larger than zero.
  * <p>
  * The levelset function can be transformed into a signed-distance function.
+ * Distances are computed by the fast marching method, i.e. the eikonal 
+ * equation is solved with a first order upwind scheme starting from the 
+ * pixels next to the zero level. 
+ * <p>
+ * Function values and visibility flags are stored in flat arrays where 
+ * position <code>(x,y,z)</code> is mapped to index 
+ * <code>(z*height + y)*width + x</code>. The narrow band and the precursors
+ * on the zero level are likewise stored as integer indices. If the 
+ * signed distance function is restricted to a narrow band, the band is 
+ * reused on subsequent transformations and only rebuilt from scratch if 
+ * the zero level reached the edge of the band.
  * 
  * @author Martin Scharm
  * @author Michael Schneider
@@ -68,13 +79,13 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	public static final double MAX_VALUE = Integer.MAX_VALUE / 2;
 
 	/**
-	 * The level set function.
+	 * The level set function, index <code>(z*height + y)*width + x</code>.
 	 */
-	protected double[][][] phi;
+	protected double[] phi;
 	/**
-	 * Visibility array.
+	 * Visibility array, same layout as {@link #phi}.
 	 */
-	protected boolean[][][] visible;
+	protected boolean[] visible;
 	/**
 	 * Flag to indicate if function is signed or not.
 	 */
@@ -98,18 +109,43 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 */
 	protected int borderDist = 2;
 	/**
-	 * Pixels in narrow-band.
+	 * Indices of pixels in narrow-band excluding the safety border.
+	 * <p>
+	 * Only the first {@link #narrowSize} entries are valid. 
+	 * The array is updated on transforming the function into a SDF.
+	 */
+	protected int[] narrow;
+	/**
+	 * Number of valid entries in {@link #narrow}.
+	 */
+	protected int narrowSize;
+	/**
+	 * Index of precursor on contour for each pixel in band.
 	 * <p>
+	 * Entries are only valid for pixels flagged in {@link #inBand}.
 	 * The array is updated on transforming the function into a SDF.
 	 */
-	protected ArrayList<MTBPoint3D> narrow;
+	protected int[] predecessors;
 	/**
-	 * Map of precursors on contour for each pixel in narrow-band.
+	 * Indices of all pixels with finite signed distance, 
+	 * i.e. including the safety border.
 	 * <p>
-	 * The map is updated on transforming the function into a SDF.
+	 * Only the first {@link #bandSize} entries are valid.
+	 */
+	protected int[] band;
+	/**
+	 * Number of valid entries in {@link #band}.
+	 */
+	protected int bandSize;
+	/**
+	 * Flags pixels contained in {@link #band}.
+	 */
+	protected boolean[] inBand;
+	/**
+	 * Band width used in last transformation into a SDF, 
+	 * negative if the band cannot be reused.
 	 */
-	protected HashMap<MTBPoint3D,MTBPoint3D> predecessors = 
-		new HashMap<MTBPoint3D, MTBPoint3D>();
+	private double lastBandwidth = -1;
 	
 	/* local helpers to save memory */
 	
@@ -118,6 +154,20 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 */
 	private double[][] helperArray;
 
+	/**
+	 * Tentative distances of pixels during fast marching.
+	 */
+	private double[] marchKeys;
+	
+	/**
+	 * Heap of pixels with tentative distances during fast marching.
+	 */
+	private IndexedMinHeap marchHeap;
+	
+	/**
+	 * Indices of zero level pixels, recycled for efficiency.
+	 */
+	private int[] seeds;
 	
 	private boolean DEFAULT_FALL_BACK;
 
@@ -132,21 +182,7 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 * @param d		Depth of function.
 	 */
 	public MTBLevelsetFunctionPDE(int w, int h, int d) {
-		this.DEFAULT_FALL_BACK = true;
-		this.width = w;
-		this.height = h;
-		this.depth = d;
-		this.narrow = null;
-		//		this.signed = false;
-		this.phi = new double[w][h][d];
-		this.visible = new boolean[w][h][d];
-		for (int x = 0; x < w; x++) {
-			for (int y = 0; y < h; y++) {
-				for (int z = 0; z < d; z++) {
-					this.visible[x][y][z] = true;
-				}
-			}
-		} 
+		this(w, h, d, true);
 	}
 
 	/**
@@ -178,15 +214,11 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 		this.DEFAULT_FALL_BACK = default_fallback;
 		this.narrow = null;
 //		this.signed = false;
-		this.phi = new double[this.width][this.height][this.depth];
-		this.visible = new boolean[this.width][this.height][this.depth];
-		for (int x = 0; x < this.width; x++) {
-			for (int y = 0; y < this.height; y++) {
-				for (int z = 0; z < this.depth; z++) {
-					this.visible[x][y][z] = true;
-				}
-			}
-		}
+		this.phi = new double[w * h * d];
+		this.visible = new boolean[w * h * d];
+		Arrays.fill(this.visible, true);
+		this.predecessors = new int[w * h * d];
+		this.inBand = new boolean[w * h * d];
 	}
 
 	/**
@@ -199,21 +231,7 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 * false -> cancel with NaN
 	 */
 	public MTBLevelsetFunctionPDE(boolean nb_diag, int w, int h, int d) {
-		this.DEFAULT_FALL_BACK = true;
-		this.width = w;
-		this.height = h;
-		this.depth = d;
-		this.narrow = null;
-//		this.signed = false;
-		this.phi = new double[this.width][this.height][this.depth];
-		this.visible = new boolean[this.width][this.height][this.depth];
-		for (int x = 0; x < this.width; x++) {
-			for (int y = 0; y < this.height; y++) {
-				for (int z = 0; z < this.depth; z++) {
-					this.visible[x][y][z] = true;
-				}
-			}
-		}
+		this(w, h, d, true);
 	}
 
 	/**
@@ -227,21 +245,7 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 * false -> cancel with NaN
 	 */
 	public MTBLevelsetFunctionPDE(boolean nb_diag, int w, int h, int d, boolean default_fallback) {
-		this.DEFAULT_FALL_BACK = default_fallback;
-		this.width = w;
-		this.height = h;
-		this.depth = d;
-		this.narrow = null;
-//		this.signed = false;
-		this.phi = new double[this.width][this.height][this.depth];
-		this.visible = new boolean[this.width][this.height][this.depth];
-		for (int x = 0; x < this.width; x++) {
-			for (int y = 0; y < this.height; y++) {
-				for (int z = 0; z < this.depth; z++) {
-					this.visible[x][y][z] = true;
-				}
-			}
-		}
+		this(w, h, d, default_fallback);
 	}
 
 	/**
@@ -260,30 +264,14 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 */
 	public MTBLevelsetFunctionPDE(int w, int h, int d,
 			MTBSegmentationInterface seg,	boolean default_fallback) {
-		
-		this.width = w;
-		this.height = h;
-		this.depth = d;
-		
-		this.DEFAULT_FALL_BACK = default_fallback;
-		this.narrow = null;
-//		this.signed = false;
-		this.phi = new double[w][h][d];
-		this.visible = new boolean[w][h][d];
-		for (int x = 0; x < w; ++x) {
+		this(w, h, d, default_fallback);
+		for (int z = 0; z < d; ++z) {
 			for (int y = 0; y < h; ++y) {
-				for (int z = 0; z < d; ++z) {
-					this.visible[x][y][z] = true;
-				}
-			}
-		}
-		for (int x = 0; x < w; ++x) {
-			for (int y = 0; y < h; ++y) {
-				for (int z = 0; z < d; ++z) {
+				for (int x = 0; x < w; ++x) {
 					if (x < seg.getSizeX() && y < seg.getSizeY() && z < seg.getSizeZ())
-						this.phi[x][y][z] = seg.getClass(x, y, z) == 0 ? -1 : 1;
+						this.phi[this.index(x, y, z)] = seg.getClass(x, y, z) == 0 ? -1 : 1;
 					else
-						this.phi[x][y][z] = -1;
+						this.phi[this.index(x, y, z)] = -1;
 				}
 			}
 		}
@@ -310,6 +298,17 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 		this.borderDist = border;
 	}
 
+	/**
+	 * Get index of position in internal arrays.
+	 * @param x	x coordinate.
+	 * @param y	y coordinate.
+	 * @param z	z coordinate.
+	 * @return	Index of (x,y,z).
+	 */
+	private int index(int x, int y, int z) {
+		return (z * this.height + y) * this.width + x;
+	}
+
 	/**
 	 * Set visibility of positions.
 	 * @param mask		Visibility mask.
@@ -328,7 +327,7 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 		for (int x = 0; x < this.width; ++x) {
 			for (int y = 0; y < this.height; ++y) {
 				for (int z = 0; z < this.depth; ++z) {
-					this.visible[x][y][z] = mask[x][y][z];
+					this.visible[this.index(x, y, z)] = mask[x][y][z];
 				}
 			}
 		}
@@ -349,7 +348,7 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 		//  without predecessor:     return this.phi[x][y][z];
 		// get predecessor of (x,y,z)
 		//System.out.println("punkt: " + x + " " + y + " " + z);
-		return this.phi[x][y][z];
+		return this.phi[this.index(x, y, z)];
 	}
 
 	/**
@@ -357,12 +356,42 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 * @param x
 	 * @param y
 	 * @param z
-	 * @return
+	 * @return Nearest point on contour, null if (x,y,z) is not in the band.
 	 */
 	public MTBPoint3D getPredecessorOnContour(int x, int y, int z)
 	{
-		MTBPoint3D pred = this.predecessors.get(new MTBPoint3D(x,y,z));
-		return  pred;
+		int pred = this.getPredecessorIndexOnContour(x, y, z);
+		if (pred < 0)
+			return null;
+		return new MTBPoint3D(pred % this.width, (pred / this.width) % this.height,
+			pred / (this.width * this.height));
+	}
+
+	/**
+	 * Get index of the nearest contour point to point (x,y,z).
+	 * <p>
+	 * The index refers to position <code>(z*height + y)*width + x</code>.
+	 * 
+	 * @param x	x coordinate.
+	 * @param y	y coordinate.
+	 * @param z	z coordinate.
+	 * @return Index of nearest point on contour, -1 if (x,y,z) is not in band.
+	 */
+	public int getPredecessorIndexOnContour(int x, int y, int z) {
+		int i = this.index(x, y, z);
+		return this.inBand[i] ? this.predecessors[i] : -1;
+	}
+
+	/**
+	 * Get index of the predecessor, falling back to the position itself.
+	 * @param x	x coordinate.
+	 * @param y	y coordinate.
+	 * @param z	z coordinate.
+	 * @return	Index of predecessor.
+	 */
+	private int pred(int x, int y, int z) {
+		int i = this.index(x, y, z);
+		return this.inBand[i] ? this.predecessors[i] : i;
 	}
 
 	/**
@@ -374,7 +403,11 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 * @param value value to save an this position
 	 */
 	public void set(int x, int y, int z, double value) {
-		this.phi[x][y][z] = value;
+		int i = this.index(x, y, z);
+		this.phi[i] = value;
+		// changes outside of the band require a complete rebuild
+		if (!this.inBand[i])
+			this.lastBandwidth = -1;
 //		this.signed = false;
 	}
 
@@ -460,19 +493,21 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 */
 	public double forwardDifferencing_X(int x, int y, int z, boolean fallback) {
 
-		MTBPoint3D pred = this.predecessors.get(new MTBPoint3D(x,y,z));
+		int p = this.pred(x, y, z);
+		int px = p % this.width, py = (p / this.width) % this.height, 
+				pz = p / (this.width * this.height);
 
-		if (pred.getX() + 1 >= this.phi.length || !valid((int)pred.getX() + 1, (int)pred.getY(), (int)pred.getZ())) {
-			if (fallback && pred.getX() > 0) {
-				return backwardDifferencing_X((int)pred.getX(), (int)pred.getY(), (int)pred.getZ(), false);
+		if (px + 1 >= this.width || !valid(px + 1, py, pz)) {
+			if (fallback && px > 0) {
+				return backwardDifferencing_X(px, py, pz, false);
 			}
 			return Double.NaN;
 		}
-		if (!valid((int)pred.getX(), (int)pred.getY(), (int)pred.getZ())) {
+		if (!valid(px, py, pz)) {
 			return Double.NaN;
 		}
 
-		return this.phi[(int)pred.getX() + 1][(int)pred.getY()][(int)pred.getZ()] - this.phi[(int)pred.getX()][(int)pred.getY()][(int)pred.getZ()];
+		return this.phi[p + 1] - this.phi[p];
 	}
 
 	/**
@@ -488,19 +523,21 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 */
 	public double forwardDifferencing_Y(int x, int y, int z, boolean fallback) {
 
-		MTBPoint3D pred = this.predecessors.get(new MTBPoint3D(x,y,z));
+		int p = this.pred(x, y, z);
+		int px = p % this.width, py = (p / this.width) % this.height, 
+				pz = p / (this.width * this.height);
 
-		if (pred.getY() + 1 >= this.phi[0].length || !valid((int)pred.getX(), (int)pred.getY() + 1, (int)pred.getZ())) {
-			if (fallback && (int)pred.getY() > 0) {
-				return backwardDifferencing_Y((int)pred.getX(), (int)pred.getY(), (int)pred.getZ(), false);
+		if (py + 1 >= this.height || !valid(px, py + 1, pz)) {
+			if (fallback && py > 0) {
+				return backwardDifferencing_Y(px, py, pz, false);
 			}
 			return Double.NaN;
 		}
-		if (!valid((int)pred.getX(), (int)pred.getY(), (int)pred.getZ())) {
+		if (!valid(px, py, pz)) {
 			return Double.NaN;
 		}
 
-		return this.phi[(int)pred.getX()][(int)pred.getY() + 1][(int)pred.getZ()] - this.phi[(int)pred.getX()][(int)pred.getY()][(int)pred.getZ()];
+		return this.phi[p + this.width] - this.phi[p];
 	}
 
 	/**
@@ -516,19 +553,21 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 */
 	public double forwardDifferencing_Z(int x, int y, int z, boolean fallback) {
 
-		MTBPoint3D pred = this.predecessors.get(new MTBPoint3D(x,y,z));
+		int p = this.pred(x, y, z);
+		int px = p % this.width, py = (p / this.width) % this.height, 
+				pz = p / (this.width * this.height);
 
-		if (pred.getZ() + 1 >= this.phi[0][0].length || !valid((int)pred.getX(), (int)pred.getY(), (int)pred.getZ() + 1)) {
-			if (fallback && (int)pred.getZ() > 0) {
-				return backwardDifferencing_Z((int)pred.getX(), (int)pred.getY(), (int)pred.getZ(), false);
+		if (pz + 1 >= this.depth || !valid(px, py, pz + 1)) {
+			if (fallback && pz > 0) {
+				return backwardDifferencing_Z(px, py, pz, false);
 			}
 			return Double.NaN;
 		}
-		if (!valid((int)pred.getX(), (int)pred.getY(), (int)pred.getZ())) {
+		if (!valid(px, py, pz)) {
 			return Double.NaN;
 		}
 
-		return this.phi[(int)pred.getX()][(int)pred.getY()][(int)pred.getZ() + 1] - this.phi[(int)pred.getX()][(int)pred.getY()][(int)pred.getZ()];
+		return this.phi[p + this.width * this.height] - this.phi[p];
 	}
 
 	/**
@@ -583,19 +622,21 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 */
 	public double backwardDifferencing_X(int x, int y, int z, boolean fallback) {
 
-		MTBPoint3D pred = this.predecessors.get(new MTBPoint3D(x,y,z));
+		int p = this.pred(x, y, z);
+		int px = p % this.width, py = (p / this.width) % this.height, 
+				pz = p / (this.width * this.height);
 
-		if ((int)pred.getX() <= 0 || !valid((int)pred.getX() - 1, (int)pred.getY(), (int)pred.getZ())) {
-			if (fallback && x < this.phi.length) {
-				return forwardDifferencing_X((int)pred.getX(), (int)pred.getY(), (int)pred.getZ(), false);
+		if (px <= 0 || !valid(px - 1, py, pz)) {
+			if (fallback && x < this.width) {
+				return forwardDifferencing_X(px, py, pz, false);
 			}
 			return Double.NaN;
 		}
-		if (!valid((int)pred.getX(), (int)pred.getY(), (int)pred.getZ())) {
+		if (!valid(px, py, pz)) {
 			return Double.NaN;
 		}
 
-		return this.phi[(int)pred.getX()][(int)pred.getY()][(int)pred.getZ()] - this.phi[(int)pred.getX() - 1][(int)pred.getY()][(int)pred.getZ()];
+		return this.phi[p] - this.phi[p - 1];
 	}
 
 	/**
@@ -611,19 +652,21 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 */
 	public double backwardDifferencing_Y(int x, int y, int z, boolean fallback) {
 
-		MTBPoint3D pred = this.predecessors.get(new MTBPoint3D(x,y,z));
+		int p = this.pred(x, y, z);
+		int px = p % this.width, py = (p / this.width) % this.height, 
+				pz = p / (this.width * this.height);
 
-		if (pred.getY() <= 0 || !valid((int)pred.getX(), (int)pred.getY() - 1, (int)pred.getZ())) {
-			if (fallback && (int)pred.getY() < this.phi[0].length) {
-				return forwardDifferencing_Y((int)pred.getX(), (int)pred.getY(), (int)pred.getZ(), false);
+		if (py <= 0 || !valid(px, py - 1, pz)) {
+			if (fallback && py < this.height) {
+				return forwardDifferencing_Y(px, py, pz, false);
 			}
 			return Double.NaN;
 		}
-		if (!valid((int)pred.getX(), (int)pred.getY(), (int)pred.getZ())) {
+		if (!valid(px, py, pz)) {
 			return Double.NaN;
 		}
 
-		return this.phi[(int)pred.getX()][(int)pred.getY()][(int)pred.getZ()] - this.phi[(int)pred.getX()][(int)pred.getY() - 1][(int)pred.getZ()];
+		return this.phi[p] - this.phi[p - this.width];
 	}
 
 	/**
@@ -639,19 +682,21 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 */
 	public double backwardDifferencing_Z(int x, int y, int z, boolean fallback) {
 
-		MTBPoint3D pred = this.predecessors.get(new MTBPoint3D(x,y,z));
+		int p = this.pred(x, y, z);
+		int px = p % this.width, py = (p / this.width) % this.height, 
+				pz = p / (this.width * this.height);
 
-		if (pred.getZ() <= 0 || !valid((int)pred.getX(), (int)pred.getY(), (int)pred.getZ() - 1)) {
-			if (fallback && pred.getZ() < this.phi[0][0].length) {
-				return forwardDifferencing_Z((int)pred.getX(), (int)pred.getY(), (int)pred.getZ(), false);
+		if (pz <= 0 || !valid(px, py, pz - 1)) {
+			if (fallback && pz < this.depth) {
+				return forwardDifferencing_Z(px, py, pz, false);
 			}
 			return Double.NaN;
 		}
-		if (!valid((int)pred.getX(), (int)pred.getY(), (int)pred.getZ())) {
+		if (!valid(px, py, pz)) {
 			return Double.NaN;
 		}
 
-		return this.phi[(int)pred.getX()][(int)pred.getY()][(int)pred.getZ()] - this.phi[(int)pred.getX()][(int)pred.getY()][(int)pred.getZ() - 1];
+		return this.phi[p] - this.phi[p - this.width * this.height];
 	}
 
 	/**
@@ -664,8 +709,8 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	@Override
   public double getDerivativeXX(int x, int y, int z)
 	{
-		MTBPoint3D pred = this.predecessors.get(new MTBPoint3D(x,y,z));
-		double phixx =  this.phi[(int)pred.getX() - 1][(int)pred.getY()][(int)pred.getZ()] - 2 * this.phi[(int)pred.getX()][(int)pred.getY()][(int)pred.getZ()] + this.phi[(int)pred.getX() + 1][(int)pred.getY()][(int)pred.getZ()];
+		int p = this.pred(x, y, z);
+		double phixx = this.phi[p - 1] - 2 * this.phi[p] + this.phi[p + 1];
 		return  phixx;
 	}
 
@@ -679,8 +724,9 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	@Override
   public double getDerivativeYY(int x, int y, int z)
 	{
-		MTBPoint3D pred = this.predecessors.get(new MTBPoint3D(x,y,z));
-		double phiyy =  this.phi[(int)pred.getX()][(int)pred.getY() - 1][(int)pred.getZ()] - 2 * this.phi[(int)pred.getX()][(int)pred.getY()][(int)pred.getZ()] + this.phi[(int)pred.getX()][(int)pred.getY() - 1][(int)pred.getZ()];
+		int p = this.pred(x, y, z);
+		int dy = this.width;
+		double phiyy = this.phi[p - dy] - 2 * this.phi[p] + this.phi[p - dy];
 		return  phiyy;
 	}
 
@@ -694,8 +740,9 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	@Override
   public double getDerivativeZZ(int x, int y, int z)
 	{
-		MTBPoint3D pred = this.predecessors.get(new MTBPoint3D(x,y,z));
-		double phizz =  this.phi[(int)pred.getX()][(int)pred.getY()][(int)pred.getZ() - 1] - 2 * this.phi[(int)pred.getX()][(int)pred.getY()][(int)pred.getZ()] + this.phi[(int)pred.getX()][(int)pred.getY()][(int)pred.getZ() + 1];
+		int p = this.pred(x, y, z);
+		int dz = this.width * this.height;
+		double phizz = this.phi[p - dz] - 2 * this.phi[p] + this.phi[p + dz];
 		return  phizz;
 	}
 
@@ -709,8 +756,10 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	@Override
   public double getDerivativeXY(int x, int y, int z)
 	{
-		MTBPoint3D pred = this.predecessors.get(new MTBPoint3D(x,y,z));
-		double phixy = (this.phi[(int)pred.getX() - 1][(int)pred.getY() - 1][(int)pred.getZ()] + this.phi[(int)pred.getX() + 1][(int)pred.getY() + 1][(int)pred.getZ()] - this.phi[(int)pred.getX() + 1][(int)pred.getY() - 1][(int)pred.getZ()] - this.phi[(int)pred.getX() - 1][(int)pred.getY() + 1][(int)pred.getZ()])/4.0;
+		int p = this.pred(x, y, z);
+		int dy = this.width;
+		double phixy = (this.phi[p - 1 - dy] + this.phi[p + 1 + dy] 
+				- this.phi[p + 1 - dy] - this.phi[p - 1 + dy])/4.0;
 		return  phixy;
 	}
 
@@ -724,8 +773,10 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	@Override
   public double getDerivativeXZ(int x, int y, int z)
 	{
-		MTBPoint3D pred = this.predecessors.get(new MTBPoint3D(x,y,z));
-		double phixz = (this.phi[(int)pred.getX() - 1][(int)pred.getY()][(int)pred.getZ() - 1] + this.phi[(int)pred.getX() + 1][(int)pred.getY()][(int)pred.getZ() + 1] - this.phi[(int)pred.getX() + 1][(int)pred.getY()][(int)pred.getZ() - 1] - this.phi[(int)pred.getX() - 1][(int)pred.getY()][(int)pred.getZ() + 1])/4.0;
+		int p = this.pred(x, y, z);
+		int dz = this.width * this.height;
+		double phixz = (this.phi[p - 1 - dz] + this.phi[p + 1 + dz] 
+				- this.phi[p + 1 - dz] - this.phi[p - 1 + dz])/4.0;
 		return  phixz;
 	}
 
@@ -739,8 +790,11 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	@Override
   public double getDerivativeYZ(int x, int y, int z)
 	{
-		MTBPoint3D pred = this.predecessors.get(new MTBPoint3D(x,y,z));
-		double phiyz = (this.phi[(int)pred.getX()][(int)pred.getY() - 1][(int)pred.getZ() - 1] + this.phi[(int)pred.getX()][(int)pred.getY() + 1][(int)pred.getZ() + 1] - this.phi[(int)pred.getX()][(int)pred.getY() + 1][(int)pred.getZ() - 1] - this.phi[(int)pred.getX()][(int)pred.getY() - 1][(int)pred.getZ() + 1])/4.0;
+		int p = this.pred(x, y, z);
+		int dy = this.width;
+		int dz = this.width * this.height;
+		double phiyz = (this.phi[p - dy - dz] + this.phi[p + dy + dz] 
+				- this.phi[p + dy - dz] - this.phi[p - dy + dz])/4.0;
 		return  phiyz;
 	}
 
@@ -807,6 +861,7 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 		return result;
 	}
 
+
 	/**
 	 * is this pixel valid?
 	 *
@@ -818,13 +873,15 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 */
 	@Override
   public boolean valid(int x, int y, int z) {
-		if (x < 0 || y < 0 || z < 0 || x >= this.phi.length || y >= this.phi[x].length || z >= this.phi[x][y].length) {
+		if (   x < 0 || y < 0 || z < 0 
+				|| x >= this.width || y >= this.height || z >= this.depth) {
 			return false;
 		}
-		if (!this.visible[x][y][z]) {
+		int i = this.index(x, y, z);
+		if (!this.visible[i]) {
 			return false;
 		}
-		if (Math.abs(this.phi[x][y][z]) >= MAX_VALUE) {
+		if (Math.abs(this.phi[i]) >= MAX_VALUE) {
 			return false;
 		}
 		return true;
@@ -841,7 +898,7 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 */
 	@Override
 	public boolean isVisible(int x, int y, int z) {
-		return this.visible[x][y][z];
+		return this.visible[this.index(x, y, z)];
 	}
 
 	/**
@@ -858,6 +915,10 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 * <p>
 	 * The transformation can be restricted to a narrow-band around the zero 
 	 * level by setting the width parameter to a value larger or equal to one.
+	 * In this case the band of the previous call is reused if the band width
+	 * did not change and if the zero level still lies inside of the band, 
+	 * i.e. if no pixel of the zero level has a neighbor outside of the band.
+	 * Otherwise the whole domain is scanned for the zero level.
 	 *
 	 * @param b 	Width of narrow-band around zero level.
 	 */
@@ -869,216 +930,281 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 		if (bandwidth < 1) {
 			bandwidth = maximum;
 		}
-		
-		// initialize new narrow band
-		this.narrow = new ArrayList<MTBPoint3D>();
-
-		// lists of inner and outer pixels
-		MTBLevelsetFunctionPDE.SortedList<MTBPoint3D> out = 
-			new MTBLevelsetFunctionPDE.SortedList<MTBPoint3D>();
-		MTBLevelsetFunctionPDE.SortedList<MTBPoint3D> in = 
-			new MTBLevelsetFunctionPDE.SortedList<MTBPoint3D>();
-		// map of precursors of each pixel in the narrow band
-		this.predecessors = new HashMap<MTBPoint3D, MTBPoint3D>();
-
-		// reset phi to binary values, extract zero level
-		for (int x = 0; x < this.phi.length; x++) {
-			for (int y = 0; y < this.phi[x].length; y++) {
-				for (int z = 0; z < this.phi[x][y].length; z++) {
-					if (this.nearZero(x, y, z)) {
-						if (this.phi[x][y][z] > 0) {
-							this.phi[x][y][z] = 0.5 + sgnSum(x, y, z);
-							in.offer(new MTBPoint3D(x, y, z), Math.abs(this.phi[x][y][z]));
-							this.narrow.add(new MTBPoint3D(x, y, z));
-							// the precursor of a zero-level point is the point itself
-							this.predecessors.put(
-								new MTBPoint3D(x, y, z), new MTBPoint3D(x, y, z));
+
+		int size = this.width * this.height * this.depth;
+		if (this.marchKeys == null) {
+			this.marchKeys = new double[size];
+			this.marchHeap = new IndexedMinHeap(size, this.marchKeys);
+			this.seeds = new int[Math.min(size, 1024)];
+		}
+		if (this.band == null) {
+			this.band = new int[Math.min(size, 1024)];
+			this.narrow = new int[Math.min(size, 1024)];
+		}
+
+		int numSeeds = -1;
+		if (bandwidth < maximum && bandwidth == this.lastBandwidth)
+			numSeeds = this.findZeroLevelInBand();
+
+		if (numSeeds >= 0) {
+			// reset band, zero level pixels get values in [-0.5,0.5]
+			for (int k = 0; k < this.bandSize; ++k) {
+				int i = this.band[k];
+				this.inBand[i] = false;
+				if (this.phi[i] > 0)
+					this.phi[i] = maximum;
+				else if (this.phi[i] < 0)
+					this.phi[i] = -maximum;
+			}
+			for (int k = 0; k < numSeeds; ++k) {
+				int i = this.seeds[k];
+				int x = i % this.width, y = (i / this.width) % this.height, 
+						z = i / (this.width * this.height);
+				this.phi[i] = this.zeroLevelValue(x, y, z);
+			}
+		}
+		else {
+			// reset phi to binary values, extract zero level
+			numSeeds = 0;
+			Arrays.fill(this.inBand, false);
+			for (int z = 0; z < this.depth; z++) {
+				for (int y = 0; y < this.height; y++) {
+					for (int x = 0; x < this.width; x++) {
+						int i = this.index(x, y, z);
+						if (this.nearZero(x, y, z)) {
+							this.phi[i] = this.zeroLevelValue(x, y, z);
+							numSeeds = this.addSeed(numSeeds, i);
+						} else if (this.phi[i] > 0) {
+							this.phi[i] = maximum;
 						} else {
-							this.phi[x][y][z] = -0.5 + sgnSum(x, y, z);
-							out.offer(new MTBPoint3D(x, y, z), Math.abs(this.phi[x][y][z]));
-							this.narrow.add(new MTBPoint3D(x, y, z));
-							// the precursor of a zero-level point is the point itself
-							this.predecessors.put(
-								new MTBPoint3D(x, y, z), new MTBPoint3D(x, y, z));
+							this.phi[i] = -maximum;
 						}
-					} else if (this.phi[x][y][z] > 0) {
-						this.phi[x][y][z] = maximum;
-					} else {
-						this.phi[x][y][z] = -maximum;
 					}
 				}
 			}
 		}
-		// perform sign expansion in inner and outer direction
-		this.signedExpandation(in, bandwidth, 1);
-		this.signedExpandation(out, bandwidth, -1);
-	}
-
-//	/**
-//	 * Checks if a one point is close to the zero level.
-//	 *
-//	 * @param x x coord of point.
-//	 * @param y y coord of point.
-//	 * @param z z coord of point.
-//	 * @return True, if point is close to zero-level, false otherwise.
-//	 */
-//	public boolean nearZero(int x, int y, int z) {
-//		if (   x > 0 
-//				&& sgn(this.phi[x][y][z]) != sgn(this.phi[x - 1][y][z])) {
-//			return true;
-//		}
-//		if (   x < this.phi.length - 1 
-//				&& sgn(this.phi[x][y][z]) != sgn(this.phi[x + 1][y][z])) {
-//			return true;
-//		}
-//		if (   y > 0 
-//				&& sgn(this.phi[x][y][z]) != sgn(this.phi[x][y - 1][z])) {
-//			return true;
-//		}
-//		if (   y < this.phi[0].length - 1 
-//				&& sgn(this.phi[x][y][z]) != sgn(this.phi[x][y + 1][z])) {
-//			return true;
-//		}
-//		if (   z > 0 
-//				&& sgn(this.phi[x][y][z]) != sgn(this.phi[x][y][z - 1])) {
-//			return true;
-//		}
-//		if (   z < this.phi[0][0].length - 1 
-//				&& sgn(this.phi[x][y][z]) != sgn(this.phi[x][y][z + 1])) {
-//			return true;
-//		}
-//		return false;
-//	}
+		this.fastMarching(numSeeds, bandwidth);
+		this.lastBandwidth = bandwidth;
+	}
+
+	/**
+	 * Compute initial value of a pixel next to the zero level.
+	 * @param x	x coordinate.
+	 * @param y	y coordinate.
+	 * @param z	z coordinate.
+	 * @return	Value with unchanged sign and absolute value smaller than one.
+	 */
+	private double zeroLevelValue(int x, int y, int z) {
+		if (this.phi[this.index(x, y, z)] > 0)
+			return 0.5 + this.sgnSum(x, y, z);
+		return -0.5 + this.sgnSum(x, y, z);
+	}
+
+	/**
+	 * Append a pixel to the list of zero level pixels.
+	 * @param numSeeds	Current number of zero level pixels.
+	 * @param i	Index of pixel.
+	 * @return	New number of zero level pixels.
+	 */
+	private int addSeed(int numSeeds, int i) {
+		if (numSeeds == this.seeds.length)
+			this.seeds = Arrays.copyOf(this.seeds, 2 * numSeeds);
+		this.seeds[numSeeds] = i;
+		return numSeeds + 1;
+	}
 
 	/**
-	 * Expand signed distances around zero-level.
+	 * Collect pixels of the zero level from the current band.
 	 * <p>
-	 * Helper function for method {@link signDistance}.
-	 *
-	 * @param slist 		Dynamic sorted list of points to expand.
-	 * @param maximum 	Maximal distance value, just for narrow-band.
-	 * @param toAdd 		Value to add to next level value, usually 1.
+	 * As long as the sign only changed inside of the band, the complete zero
+	 * level is found in the band. If a zero level pixel has a neighbor outside
+	 * of the band, the front reached the edge of the band and the band needs 
+	 * to be rebuilt.
+	 * 
+	 * @return	Number of zero level pixels, -1 if band needs to be rebuilt.
 	 */
-	private void signedExpandation(
-			MTBLevelsetFunctionPDE.SortedList<MTBPoint3D> slist, double maximum, 
-			double toAdd) {
-		
-		MTBPoint3D p;
-		while (slist.getSize() > 0) {
-			
-			// process next point
-			p = slist.poll();
-			double val = 
-				this.phi[(int)p.getX()][(int)p.getY()][(int)p.getZ()] + toAdd;
-			double v = Math.abs(val);
-			
-			// if value lies out of band-width, skip pixel
-			if (v > maximum) {
+	private int findZeroLevelInBand() {
+		int numSeeds = 0;
+		for (int k = 0; k < this.bandSize; ++k) {
+			int i = this.band[k];
+			int x = i % this.width, y = (i / this.width) % this.height, 
+					z = i / (this.width * this.height);
+			if (!this.nearZero(x, y, z))
 				continue;
-			}
-
-			/* propagate distances to neighbors */
-			
-			// point on the left
-			if (     p.getX() > 0 
-					&&	(Math.abs(this.phi[(int)p.getX() - 1]
-							                   [(int)p.getY()]
-							                   [(int)p.getZ()]) > v)) {
-				this.phi[(int)p.getX() - 1][(int)p.getY()][(int)p.getZ()] = val;
-				slist.offer(new MTBPoint3D(p.getX() - 1, p.getY(), p.getZ()), v);
-				if (   p.getX()-1 >= this.borderDist 
-						&& p.getY()   >= this.borderDist 
-						&& p.getX()-1 < this.phi.length - this.borderDist
-						&& p.getY()   < this.phi[0].length - this.borderDist) {
-					this.narrow.add(new MTBPoint3D(p.getX() - 1, p.getY(), p.getZ()));
-				}
-				// propagate precursor
-				this.predecessors.put(new MTBPoint3D(p.getX() - 1, p.getY(), p.getZ()),
-					this.predecessors.get(new MTBPoint3D(p.getX(), p.getY(), p.getZ())));
-			}
+			if (   (x > 0 && !this.inBand[i - 1])
+					|| (x < this.width - 1 && !this.inBand[i + 1])
+					|| (y > 0 && !this.inBand[i - this.width])
+					|| (y < this.height - 1 && !this.inBand[i + this.width])
+					|| (z > 0 && !this.inBand[i - this.width * this.height])
+					|| (z < this.depth - 1 && !this.inBand[i + this.width * this.height]))
+				return -1;
+			numSeeds = this.addSeed(numSeeds, i);
+		}
+		return numSeeds;
+	}
 
-			// point at the top
-			if (    p.getY() > 0 
-					&& (Math.abs(this.phi[(int)p.getX()]
-							                  [(int)p.getY() - 1]
-							                  [(int)p.getZ()]) > v)) {
-				this.phi[(int)p.getX()][(int)p.getY() - 1][(int)p.getZ()] = val;
-				slist.offer(new MTBPoint3D(p.getX(), p.getY() - 1, p.getZ()), v);
-				if (   p.getX()   >= this.borderDist 
-						&& p.getY()-1 >= this.borderDist 
-						&& p.getX()   < this.phi.length - this.borderDist
-						&& p.getY()-1 < this.phi[0].length - this.borderDist) {
-					this.narrow.add(new MTBPoint3D(p.getX(), p.getY() - 1, p.getZ()));
-				}
-				// propagate precursor
-				this.predecessors.put(new MTBPoint3D(p.getX(), p.getY() - 1, p.getZ()),
-					this.predecessors.get(new MTBPoint3D(p.getX(), p.getY(), p.getZ())));
-			}
+	/**
+	 * Compute signed distances by fast marching starting from the zero level.
+	 * <p>
+	 * Values of pixels with a distance larger than the band width are left
+	 * unchanged, i.e. are kept at <code>+/-MAX_VALUE</code>.
+	 * Helper function for method {@link #signDistance(double)}.
+	 * 
+	 * @param numSeeds	Number of zero level pixels in {@link #seeds}.
+	 * @param maximum 	Maximal distance value, just for narrow-band.
+	 */
+	private void fastMarching(int numSeeds, double maximum) {
+		this.bandSize = 0;
+		this.narrowSize = 0;
+
+		// the precursor of a zero-level point is the point itself
+		for (int k = 0; k < numSeeds; ++k) {
+			int i = this.seeds[k];
+			this.inBand[i] = true;
+			this.predecessors[i] = i;
+			this.addToBand(i);
+		}
+		for (int k = 0; k < numSeeds; ++k)
+			this.updateNeighbors(this.seeds[k]);
+
+		// accept pixels in order of increasing distance
+		while (!this.marchHeap.isEmpty()) {
+			int i = this.marchHeap.pop();
+			double dist = this.marchKeys[i];
+			if (dist > maximum)
+				break;
+			this.phi[i] = this.phi[i] > 0 ? dist : -dist;
+			this.inBand[i] = true;
+			this.addToBand(i);
+			this.updateNeighbors(i);
+		}
+		this.marchHeap.clear();
+	}
 
-			// point on the right
-			if (    p.getX() < this.phi.length - 1 
-					&& (Math.abs(this.phi[(int)p.getX() + 1]
-							                  [(int)p.getY()]
-							                  [(int)p.getZ()]) > v)) {
-				this.phi[(int)p.getX() + 1][(int)p.getY()][(int)p.getZ()] = val;
-				slist.offer(new MTBPoint3D(p.getX() + 1, p.getY(), p.getZ()), v);
-				if (   p.getX()+1 >= this.borderDist 
-						&& p.getY()   >= this.borderDist 
-						&& p.getX()+1 < this.phi.length - this.borderDist
-						&& p.getY()   < this.phi[0].length - this.borderDist) {
-					this.narrow.add(new MTBPoint3D(p.getX() + 1, p.getY(), p.getZ()));
-				}
-				// propagate precursor
-				this.predecessors.put(new MTBPoint3D(p.getX() + 1, p.getY(), p.getZ()),
-					this.predecessors.get(new MTBPoint3D(p.getX(), p.getY(), p.getZ())));
-			}
+	/**
+	 * Add pixel to band and, if not within the safety border, to narrow band.
+	 * @param i	Index of pixel.
+	 */
+	private void addToBand(int i) {
+		if (this.bandSize == this.band.length)
+			this.band = Arrays.copyOf(this.band, 2 * this.bandSize);
+		this.band[this.bandSize++] = i;
+
+		int x = i % this.width, y = (i / this.width) % this.height, 
+				z = i / (this.width * this.height);
+		if (   x < this.borderDist || x >= this.width - this.borderDist
+				|| y < this.borderDist || y >= this.height - this.borderDist)
+			return;
+		// the border in z is only considered for 3D functions
+		if (   this.depth > 1 
+				&& (z < this.borderDist || z >= this.depth - this.borderDist))
+			return;
+		if (this.narrowSize == this.narrow.length)
+			this.narrow = Arrays.copyOf(this.narrow, 2 * this.narrowSize);
+		this.narrow[this.narrowSize++] = i;
+	}
 
-			// point at the bottom
-			if (    p.getY() < this.phi[0].length - 1 
-					&& (Math.abs(this.phi[(int)p.getX()]
-							                  [(int)p.getY() + 1]
-							                  [(int)p.getZ()]) > v)) {
-				this.phi[(int)p.getX()][(int)p.getY() + 1][(int)p.getZ()] = val;
-				slist.offer(new MTBPoint3D(p.getX(), p.getY() + 1, p.getZ()), v);
-				if (   p.getX()   >= this.borderDist 
-						&& p.getY()+1 >= this.borderDist 
-						&& p.getX()   < this.phi.length - this.borderDist
-						&& p.getY()+1 < this.phi[0].length - this.borderDist) {
-					this.narrow.add(new MTBPoint3D(p.getX(), p.getY() + 1, p.getZ()));
-				}
-				// propagate precursor
-				this.predecessors.put(new MTBPoint3D(p.getX(), p.getY() + 1, p.getZ()),
-					this.predecessors.get(new MTBPoint3D(p.getX(), p.getY(), p.getZ())));
-			}
+	/**
+	 * Update tentative distances of neighbors not yet accepted.
+	 * @param i	Index of accepted pixel.
+	 */
+	private void updateNeighbors(int i) {
+		int x = i % this.width, y = (i / this.width) % this.height, 
+				z = i / (this.width * this.height);
+		int dz = this.width * this.height;
+		if (x > 0 && !this.inBand[i - 1])
+			this.updateTentative(i - 1, x - 1, y, z);
+		if (x < this.width - 1 && !this.inBand[i + 1])
+			this.updateTentative(i + 1, x + 1, y, z);
+		if (y > 0 && !this.inBand[i - this.width])
+			this.updateTentative(i - this.width, x, y - 1, z);
+		if (y < this.height - 1 && !this.inBand[i + this.width])
+			this.updateTentative(i + this.width, x, y + 1, z);
+		if (z > 0 && !this.inBand[i - dz])
+			this.updateTentative(i - dz, x, y, z - 1);
+		if (z < this.depth - 1 && !this.inBand[i + dz])
+			this.updateTentative(i + dz, x, y, z + 1);
+	}
 
-			/* additional points in 3D - untested so far!!! */
-			
-			//check fronter point
-			if (p.getZ() > 0 && (Math.abs(this.phi[(int)p.getX()][(int)p.getY()][(int)p.getZ() - 1]) > v)) {
-				this.phi[(int)p.getX()][(int)p.getY()][(int)p.getZ() - 1] = val;
-				slist.offer(new MTBPoint3D(p.getX(), p.getY(), p.getZ() - 1), v);
-				if (p.getZ() > this.borderDist)
-				{
-					this.narrow.add(new MTBPoint3D(p.getX(), p.getY(), p.getZ() - 1));
-				}
-				this.predecessors.put(new MTBPoint3D(p.getX(), p.getY(), p.getZ() - 1),
-						this.predecessors.get(new MTBPoint3D(p.getX(), p.getY(), p.getZ())));
+	/**
+	 * Compute tentative distance of a pixel from its accepted neighbors by
+	 * the first order upwind discretization of the eikonal equation.
+	 * <p>
+	 * The precursor of the pixel is taken from the accepted neighbor with
+	 * smallest distance.
+	 * 
+	 * @param i	Index of pixel.
+	 * @param x	x coordinate.
+	 * @param y	y coordinate.
+	 * @param z	z coordinate.
+	 */
+	private void updateTentative(int i, int x, int y, int z) {
+		int dz = this.width * this.height;
+		int best = -1;
+		double a = MAX_VALUE, b = MAX_VALUE, c = MAX_VALUE;
+		
+		// smallest accepted distance along each axis
+		int n = this.minNeighbor(x > 0 ? i - 1 : -1, 
+				x < this.width - 1 ? i + 1 : -1);
+		if (n >= 0) {
+			a = Math.abs(this.phi[n]);
+			best = n;
+		}
+		n = this.minNeighbor(y > 0 ? i - this.width : -1, 
+				y < this.height - 1 ? i + this.width : -1);
+		if (n >= 0) {
+			b = Math.abs(this.phi[n]);
+			if (best < 0 || b < Math.abs(this.phi[best]))
+				best = n;
+		}
+		n = this.minNeighbor(z > 0 ? i - dz : -1, z < this.depth - 1 ? i + dz : -1);
+		if (n >= 0) {
+			c = Math.abs(this.phi[n]);
+			if (best < 0 || c < Math.abs(this.phi[best]))
+				best = n;
+		}
+		
+		// sort distances such that a <= b <= c
+		double t;
+		if (a > b) { t = a; a = b; b = t; }
+		if (b > c) { t = b; b = c; c = t; }
+		if (a > b) { t = a; a = b; b = t; }
+
+		double dist = a + 1;
+		if (dist > b) {
+			dist = 0.5 * (a + b + Math.sqrt(2 - (a - b) * (a - b)));
+			if (dist > c) {
+				double s = a + b + c;
+				double q = a * a + b * b + c * c;
+				dist = (s + Math.sqrt(s * s - 3 * (q - 1))) / 3.0;
 			}
+		}
 
-			//check back
-			if (p.getZ() < this.phi[0][0].length - 1 && (Math.abs(this.phi[(int)p.getX()][(int)p.getY()][(int)p.getZ() + 1]) > v)) {
-				this.phi[(int)p.getX()][(int)p.getY()][(int)p.getZ() + 1] = val;
-				slist.offer(new MTBPoint3D(p.getX(), p.getY(), p.getZ() + 1), v);
-				if (p.getZ() > this.phi[0][0].length - this.borderDist + 1)
-				{
-					this.narrow.add(new MTBPoint3D(p.getX(), p.getY(), p.getZ() + 1));
-				}
-				this.predecessors.put(new MTBPoint3D(p.getX(), p.getY(), p.getZ() + 1),
-						this.predecessors.get(new MTBPoint3D(p.getX(), p.getY(), p.getZ())));
-			}
+		if (!this.marchHeap.contains(i) || dist < this.marchKeys[i]) {
+			this.marchKeys[i] = dist;
+			this.predecessors[i] = this.predecessors[best];
+			this.marchHeap.insertOrUpdate(i);
 		}
 	}
 
+	/**
+	 * Select accepted neighbor with smaller absolute value.
+	 * @param n1	Index of first neighbor, -1 if not existing.
+	 * @param n2	Index of second neighbor, -1 if not existing.
+	 * @return	Index of neighbor, -1 if none is accepted.
+	 */
+	private int minNeighbor(int n1, int n2) {
+		boolean ok1 = n1 >= 0 && this.inBand[n1];
+		boolean ok2 = n2 >= 0 && this.inBand[n2];
+		if (ok1 && ok2)
+			return Math.abs(this.phi[n1]) <= Math.abs(this.phi[n2]) ? n1 : n2;
+		if (ok1)
+			return n1;
+		if (ok2)
+			return n2;
+		return -1;
+	}
+
 	/**
 	 * Computes scaled sign in neighborhood.
 	 *
@@ -1089,7 +1215,7 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 * @return Scaled sign in neighborhood.
 	 */
 	private double sgnSum(int x, int y, int z) {
-		double sum = -2 * sgn(this.phi[x][y][z]);
+		double sum = -2 * sgn(this.phi[this.index(x, y, z)]);
 		int cnt = 1;
 		for (int i = -1; i < 2; i++) {
 			for (int j = -1; j < 2; j++) {
@@ -1097,12 +1223,14 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 					if (   x + i >= 0 
 							&& y + j >= 0 
 							&& z + k >= 0 
-							&& x + i < this.phi.length 
-							&& y + j < this.phi[x].length 
-							&& z + k < this.phi[x][y].length 
-							&& this.visible[x + i][y + j][z + k]) {
-						sum += sgn(this.phi[x + i][y + j][z + k]);
-						cnt++;
+							&& x + i < this.width 
+							&& y + j < this.height 
+							&& z + k < this.depth) {
+						int n = this.index(x + i, y + j, z + k);
+						if (this.visible[n]) {
+							sum += sgn(this.phi[n]);
+							cnt++;
+						}
 					}
 				}
 			}
@@ -1122,18 +1250,20 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 		try {
 			MTBLevelsetFunctionPDE gecloned = (MTBLevelsetFunctionPDE) super.clone();
 
-			gecloned.phi = new double[this.phi.length][this.phi[0].length][this.phi[0][0].length];
-			for (int x = 0; x < this.phi.length; x++) {
-				for (int y = 0; y < this.phi[x].length; y++) {
-					for (int z = 0; z < this.phi[x][y].length; z++) {
-						gecloned.phi[x][y][z] = this.phi[x][y][z];
-					}
-				}
-			}
+			gecloned.phi = this.phi.clone();
+			gecloned.visible = this.visible.clone();
 //			gecloned.signed = this.signed;
-			//gecloned.narrow = (ArrayList<MTBPoint3D>) ((List) narrow).clone ();
-			gecloned.narrow = new ArrayList<MTBPoint3D>(this.narrow);
-			gecloned.predecessors = (HashMap<MTBPoint3D, MTBPoint3D>) this.predecessors.clone();
+			gecloned.predecessors = this.predecessors.clone();
+			gecloned.inBand = this.inBand.clone();
+			if (this.narrow != null) {
+				gecloned.narrow = Arrays.copyOf(this.narrow, this.narrowSize);
+				gecloned.band = Arrays.copyOf(this.band, this.bandSize);
+			}
+			// helpers for fast marching are not shared
+			gecloned.marchKeys = null;
+			gecloned.marchHeap = null;
+			gecloned.seeds = null;
+			gecloned.helperArray = null;
 			return gecloned;
 		} catch (CloneNotSupportedException cnse) {
 			return null;
@@ -1142,27 +1272,44 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 
 	/**
 	 * copy this object to another one
+	 * <p>
+	 * Arrays of the target object are reused if their size matches.
 	 */
 	public void copyTo(MTBLevelsetFunctionPDE two) {
-		two.phi = new double[this.phi.length][this.phi[0].length][this.phi[0][0].length];
-		two.visible = new boolean[this.visible.length][this.visible[0].length][this.visible[0][0].length];
-		for (int x = 0; x < this.phi.length; x++) {
-			for (int y = 0; y < this.phi[x].length; y++) {
-				for (int z = 0; z < this.phi[x][y].length; z++) {
-					two.phi[x][y][z] = this.phi[x][y][z];
-					two.visible[x][y][z] = this.visible[x][y][z];
-				}
-			}
+		int size = this.phi.length;
+		if (two.phi == null || two.phi.length != size) {
+			two.phi = new double[size];
+			two.visible = new boolean[size];
+			two.predecessors = new int[size];
+			two.inBand = new boolean[size];
+			two.marchKeys = null;
+			two.marchHeap = null;
 		}
+		two.width = this.width;
+		two.height = this.height;
+		two.depth = this.depth;
+		two.borderDist = this.borderDist;
+		System.arraycopy(this.phi, 0, two.phi, 0, size);
+		System.arraycopy(this.visible, 0, two.visible, 0, size);
+		System.arraycopy(this.predecessors, 0, two.predecessors, 0, size);
+		System.arraycopy(this.inBand, 0, two.inBand, 0, size);
 //		two.signed = this.signed;
 		two.DEFAULT_FALL_BACK = this.DEFAULT_FALL_BACK;
-		two.narrow = new ArrayList<MTBPoint3D>();
 		if (this.narrow != null) {
-			for (int i = 0; i < this.narrow.size(); i++) {
-				two.narrow.add(new MTBPoint3D(this.narrow.get(i)));
-			}
+			if (two.narrow == null || two.narrow.length < this.narrowSize)
+				two.narrow = new int[this.narrow.length];
+			System.arraycopy(this.narrow, 0, two.narrow, 0, this.narrowSize);
+			if (two.band == null || two.band.length < this.bandSize)
+				two.band = new int[this.band.length];
+			System.arraycopy(this.band, 0, two.band, 0, this.bandSize);
+		}
+		else {
+			two.narrow = null;
+			two.band = null;
 		}
-		two.predecessors = (HashMap<MTBPoint3D, MTBPoint3D>) this.predecessors.clone();
+		two.narrowSize = this.narrowSize;
+		two.bandSize = this.bandSize;
+		two.lastBandwidth = this.lastBandwidth;
 	}
 
 	/**
@@ -1173,30 +1320,21 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 * @return true if this functions equals the other, false otherwise
 	 */
 	public boolean equals(MTBLevelsetFunctionPDE ls2d) {
-		if (ls2d.phi.length != this.phi.length) {
+		if (   ls2d.width != this.width || ls2d.height != this.height 
+				|| ls2d.depth != this.depth) {
 			return false;
 		}
-		if (ls2d.phi[0].length != this.phi[0].length) {
+		if (!Arrays.equals(ls2d.phi, this.phi)) {
 			return false;
 		}
-		if (ls2d.phi[0][0].length != this.phi[0][0].length) {
+		if (ls2d.narrowSize != this.narrowSize) {
 			return false;
 		}
-
-		for (int x = 0; x < this.phi.length; x++) {
-			for (int y = 0; y < this.phi[x].length; y++) {
-				for (int z = 0; z < this.phi[x][y].length; z++) {
-					if (ls2d.phi[x][y][z] != this.phi[x][y][z]) {
-						return false;
-					}
-				}
+		for (int k = 0; k < this.narrowSize; ++k) {
+			if (ls2d.narrow[k] != this.narrow[k]) {
+				return false;
 			}
 		}
-
-		if (!this.narrow.equals(ls2d.narrow)) {
-			return false;
-		}
-
 		return true;
 	}
 
@@ -1206,7 +1344,48 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 	 * @return iterator through narrow band
 	 */
 	public Iterator<MTBPoint3D> getNarrowIterator() {
-		return this.narrow.iterator();
+		return new Iterator<MTBPoint3D>() {
+			private int k = 0;
+
+			@Override
+			public boolean hasNext() {
+				return this.k < MTBLevelsetFunctionPDE.this.narrowSize;
+			}
+
+			@Override
+			public MTBPoint3D next() {
+				if (!this.hasNext())
+					throw new NoSuchElementException();
+				int i = MTBLevelsetFunctionPDE.this.narrow[this.k++];
+				int w = MTBLevelsetFunctionPDE.this.width;
+				int h = MTBLevelsetFunctionPDE.this.height;
+				return new MTBPoint3D(i % w, (i / w) % h, i / (w * h));
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Get number of pixels in narrow band.
+	 * @return	Size of narrow band.
+	 */
+	public int getNarrowBandSize() {
+		return this.narrowSize;
+	}
+
+	/**
+	 * Get index of a pixel in narrow band.
+	 * <p>
+	 * The index refers to position <code>(z*height + y)*width + x</code>.
+	 * @param k	Position in narrow band, from 0 to {@link #getNarrowBandSize()}-1.
+	 * @return	Index of pixel.
+	 */
+	public int getNarrowBandIndex(int k) {
+		return this.narrow[k];
 	}
 
 	/**
@@ -1219,7 +1398,7 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 		for (int x = 0; x < this.width; ++x) {
 			for (int y = 0; y < this.height; ++y) {
 				for (int z = 0; z < this.depth; ++z) {
-					if (this.phi[x][y][z] > 0) {
+					if (this.phi[this.index(x, y, z)] > 0) {
 						image.putValueInt(x, y, z, 0, 0, 255);
 					} else {
 						image.putValueInt(x, y, z, 0, 0, 0);
@@ -1243,14 +1422,12 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 		double maxVal = Double.MIN_VALUE;
 		double minVal = Double.MAX_VALUE;
 
-		for (int x = 0; x < this.width; ++x) {
-			for (int y = 0; y < this.height; ++y) {
-				if (this.phi[x][y][0] < minVal && this.phi[x][y][0] != -MAX_VALUE) {
-					minVal = this.phi[x][y][0];
-				}
-				if (this.phi[x][y][0] > maxVal && this.phi[x][y][0] != MAX_VALUE) {
-					maxVal = this.phi[x][y][0];
-				}
+		for (int i = 0; i < this.width * this.height; ++i) {
+			if (this.phi[i] < minVal && this.phi[i] != -MAX_VALUE) {
+				minVal = this.phi[i];
+			}
+			if (this.phi[i] > maxVal && this.phi[i] != MAX_VALUE) {
+				maxVal = this.phi[i];
 			}
 		}
 
@@ -1261,12 +1438,11 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 		// fill 2D array
 		for (int y = 0; y < this.height; ++y) {
 			for (int x = 0; x < this.width; ++x) {
-				if (this.phi[x][y][0] > 0)
-					this.helperArray[y][x] = 
-						(this.phi[x][y][0] > maxVal) ? maxVal : this.phi[x][y][0];
+				double v = this.phi[y * this.width + x];
+				if (v > 0)
+					this.helperArray[y][x] = (v > maxVal) ? maxVal : v;
 				else
-					this.helperArray[y][x] = 
-						(this.phi[x][y][0] < minVal) ? minVal : this.phi[x][y][0];
+					this.helperArray[y][x] = (v < minVal) ? minVal : v;
 			}
 		}
 		
@@ -1299,44 +1475,18 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 			this.width, this.height, this.depth, 1, 1, MTBImageType.MTB_SHORT);
 
 		double maxVal = Double.MIN_VALUE;
-//		double minVal = Double.MAX_VALUE;
-//
-		for (int x = 0; x < this.width; ++x) {
-			for (int y = 0; y < this.height; ++y) {
-				for (int z = 0; z < this.depth; ++z) {
-//					if (phi[x][y][z] < minVal && phi[x][y][z] != -MAX_VALUE) {
-//						minVal = phi[x][y][z];
-//					}
-					if (   Math.abs(this.phi[x][y][z]) > maxVal 
-							&& this.phi[x][y][z] != MAX_VALUE) {
-						maxVal = Math.abs(this.phi[x][y][z]);
-					}
-					//                    System.out.println("maxVal: " + maxVal);
-				}
+		for (int i = 0; i < this.phi.length; ++i) {
+			if (   Math.abs(this.phi[i]) > maxVal 
+					&& this.phi[i] != MAX_VALUE) {
+				maxVal = Math.abs(this.phi[i]);
 			}
 		}
 
-		//        if(minVal < 0)
-		//        {
-		//            maxVal += Math.abs(minVal);
-		//           // minVal = 0;
-		//        }
-		//        System.out.println("minVal: " + minVal + " ,maxVal: " + maxVal);
-
 		for (int x = 0; x < this.width; ++x) {
 			for (int y = 0; y < this.height; ++y) {
 				for (int z = 0; z < this.depth; ++z) {
-//					if (Math.abs(this.phi[x][y][z]) == MAX_VALUE) {
-//						phiImage.putValueDouble(x, y, z, 0, 0, 255);
-//					} else {
-//						if (this.phi[x][y][z] < 0) {
-//							phiImage.putValueDouble(x, y, z, 0, 0, ((this.phi[x][y][z]) / minVal) * 255);
-//						}
-//						if (this.phi[x][y][z] >= 0) {
-//							phiImage.putValueDouble(x, y, z, 0, 0, ((this.phi[x][y][z]) / maxVal) * 255);
-//						}
 					phiImage.putValueDouble(x, y, z, 0, 0, 
-						Math.abs(this.phi[x][y][z])/maxVal*phiImage.getTypeMax());
+						Math.abs(this.phi[this.index(x, y, z)])/maxVal*phiImage.getTypeMax());
 				}
 			}
 		}
@@ -1385,7 +1535,7 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 
 	@Override
 	public void setVisible(int x, int y, int z) {
-		this.visible[x][y][z] = true;
+		this.visible[this.index(x, y, z)] = true;
 	}
 
 	@Override
@@ -1395,7 +1545,7 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 
 	@Override
 	public void setInvisible(int x, int y, int z) {
-		this.visible[x][y][z] = false;
+		this.visible[this.index(x, y, z)] = false;
 	}
 
 	@Override
@@ -1423,124 +1573,6 @@ public class MTBLevelsetFunctionPDE extends MTBLevelsetFunctionDerivable
 		System.err.println("MTBLevelSegmentation::setClass() - without function!");
 	}
 
-	/**
-	 * A genric class representing a sorted list
-	 *
-	 * @author martin scharm
-	 * @version 1.0
-	 * @param <EType> type of the element
-	 */
-	protected class SortedList<EType> {
-
-		private SortedListElement<EType> head, tail;
-		private int size;
-
-		/**
-		 * create empty SortetList
-		 */
-		public SortedList() {
-			this.head = null;
-			this.tail = null;
-			this.size = 0;
-		}
-
-		/**
-		 * count number of elements
-		 *
-		 * @return number of elements
-		 */
-		public int getSize() {
-			return this.size;
-		}
-
-		/**
-		 * add an element to List
-		 *
-		 * @param element element to add
-		 * @param priority priority of this element
-		 *
-		 * @return was adding successfull?
-		 */
-		public boolean offer(EType element, double priority) {
-			if (this.size == 0) {
-				this.head = new MTBLevelsetFunctionPDE.SortedListElement<EType>(element, priority);
-				this.tail = this.head;
-				this.size++;
-				return true;
-			}
-
-			MTBLevelsetFunctionPDE.SortedListElement<EType> neu = new MTBLevelsetFunctionPDE.SortedListElement<EType>(element, priority);
-			double p = priority;
-			if (p < this.head.priority) {
-				neu.next = this.head;
-				this.head.prev = neu;
-				this.head = neu;
-				this.size++;
-				return true;
-			}
-
-			if (p >= this.tail.priority) {
-				neu.prev = this.tail;
-				this.tail.next = neu;
-				this.tail = neu;
-				this.size++;
-				return true;
-			}
-
-			MTBLevelsetFunctionPDE.SortedListElement<EType> akt = this.tail.prev;
-			while (p < akt.priority) {
-				akt = akt.prev;
-			}
-
-			akt.next.prev = neu;
-			neu.next = akt.next;
-			neu.prev = akt;
-			akt.next = neu;
-			this.size++;
-			return true;
-		}
-
-		/**
-		 * retrieve element with highest priority
-		 *
-		 * @return element with highest priority in list
-		 */
-		public EType poll() {
-			if (this.size == 0) {
-				return null;
-			}
-
-			EType r = this.head.value;
-			this.head = this.head.next;
-			if (this.head != null) {
-				this.head.prev = null;
-			} else {
-				this.tail = null;
-			}
-
-			this.size--;
-
-			return r;
-		}
-	}
-
-	/**
-	 * internal representation of elements
-	 */
-	protected class SortedListElement<EType> {
-
-		public EType value;
-		public double priority;
-		public SortedListElement<EType> next, prev;
-
-		public SortedListElement(EType _value, double _priority) {
-			this.value = _value;
-			this.priority = _priority;
-			this.next = null;
-			this.prev = null;
-		}
-	}
-
 	@Override
 	public double getWeight(int x, int y) {
 		return 1;
@@ -37,10 +37,8 @@ import de.unihalle.informatik.MiToBo.segmentation.activecontours.exceptions.MTBL
 import de.unihalle.informatik.MiToBo.segmentation.levelset.PDE.datatypes.MTBLevelsetFunctionPDE;
 import de.unihalle.informatik.MiToBo.segmentation.levelset.core.LevelsetSolverDerivatives;
 
-import java.util.Iterator;
 import java.util.Vector;
 
-import de.unihalle.informatik.MiToBo.core.datatypes.MTBPoint3D;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2DSet;
 import de.unihalle.informatik.MiToBo.topology.MTBTopologicalNumber2DN4;
 import de.unihalle.informatik.MiToBo.topology.MTBTopologicalNumber2DN8;
@@ -454,21 +452,24 @@ public class LevelsetSolverPDE extends LevelsetSolverDerivatives {
 		// update all points
 		int newSgn, oldSgn;
 		double newValue, update;
-		Iterator<MTBPoint3D> list; 
-		MTBPoint3D veloSource;
-		for (list = ((MTBLevelsetFunctionPDE)this.phi).getNarrowIterator(); 
-						list.hasNext();) {
-			MTBPoint3D p = list.next();
+		MTBLevelsetFunctionPDE phiPDE = (MTBLevelsetFunctionPDE)this.phi;
+		int sizeX = phiPDE.getSizeX(), sizeY = phiPDE.getSizeY();
+		int px, py, pz, vx, vy, vz;
+		for (int n = 0; n < phiPDE.getNarrowBandSize(); ++n) {
+			int index = phiPDE.getNarrowBandIndex(n);
+			px = index % sizeX;
+			py = (index / sizeX) % sizeY;
+			pz = index / (sizeX * sizeY);
 
 			// depending on selected velocity expansion mode, request precursor
 			// on zero level or use directly approximate velocities
+			vx = px; vy = py; vz = pz;
 			if (this.vExpandMode == VelocityExpansionMode.ZERO_LEVEL_EXTRAPOLATION) {
 				// get precursor of pixel on current contour, i.e. zero-level
-				veloSource = this.phi_old.getPredecessorOnContour(
-					(int)p.getX(), (int)p.getY(), (int)p.getZ());
-			}
-			else {
-				veloSource = p; 
+				int pred = this.phi_old.getPredecessorIndexOnContour(px, py, pz);
+				vx = pred % sizeX;
+				vy = (pred / sizeX) % sizeY;
+				vz = pred / (sizeX * sizeY);
 			}
 
 			// energyset
@@ -476,16 +477,13 @@ public class LevelsetSolverPDE extends LevelsetSolverDerivatives {
 			for (int i = 0; i < this.energySet.getEnergyList().size(); i++) {
 				update += this.energySet.getWeight(i).doubleValue() 
 						* this.energySet.getEnergyList().get(i).getDerivative(
-								this.phi_old, (int)veloSource.getX(), (int)veloSource.getY(), 
-									(int)veloSource.getZ());
+								this.phi_old, vx, vy, vz);
 			}
 
 			// check if update is valid
 			if (!Double.isNaN(update)) {
-				oldSgn = this.sgn(
-					this.phi_old.get((int)p.getX(), (int)p.getY(), (int)p.getZ()));
-				newValue = this.phi_old.get(
-					(int)p.getX(), (int)p.getY(), (int)p.getZ()) - this.deltaT * update;
+				oldSgn = this.sgn(this.phi_old.get(px, py, pz));
+				newValue = this.phi_old.get(px, py, pz) - this.deltaT * update;
 				newSgn = this.sgn(newValue);
 				
 				// if sign changes check topologypreservation
@@ -494,32 +492,30 @@ public class LevelsetSolverPDE extends LevelsetSolverDerivatives {
 				{
 					if(this.topologyPreservation)
 					{
-						if(this.phi.getClass((int)p.getX(),(int)p.getY(),(int)p.getZ()) == 0 && this.topologicalNumber2DN4.topoNumberIsOne(this.phi,(int)p.getX(),(int)p.getY(),(int)p.getZ(),1))
+						if(this.phi.getClass(px,py,pz) == 0 && this.topologicalNumber2DN4.topoNumberIsOne(this.phi,px,py,pz,1))
 						{
-							((MTBLevelsetFunctionPDE)this.phi).set((int)p.getX(), (int)p.getY(), (int)p.getZ(), newValue);
+							phiPDE.set(px, py, pz, newValue);
 							changed++;
 						}
 						else
-							if(this.phi.getClass((int)p.getX(),(int)p.getY(),(int)p.getZ()) == 1 && this.topologicalNumber2DN4.topoNumberIsOne(this.phi,(int)p.getX(),(int)p.getY(),(int)p.getZ(),0))
+							if(this.phi.getClass(px,py,pz) == 1 && this.topologicalNumber2DN4.topoNumberIsOne(this.phi,px,py,pz,0))
 							{
-								((MTBLevelsetFunctionPDE)this.phi).set((int)p.getX(), (int)p.getY(), (int)p.getZ(), newValue);
+								phiPDE.set(px, py, pz, newValue);
 								changed++;
 							}
 							else
 							{
-								((MTBLevelsetFunctionPDE)this.phi).set((int)p.getX(), (int)p.getY(), (int)p.getZ(), oldSgn * eps);
+								phiPDE.set(px, py, pz, oldSgn * eps);
 							}
 					}
 					else {
-						((MTBLevelsetFunctionPDE)this.phi).set(
-							(int)p.getX(), (int)p.getY(), (int)p.getZ(), newValue);
+						phiPDE.set(px, py, pz, newValue);
 						++changed;
 					}
 				}
 				// if sign did not change, just set value 
 				else {
-					((MTBLevelsetFunctionPDE)this.phi).set(
-						(int)p.getX(), (int)p.getY(), (int)p.getZ(), newValue);
+					phiPDE.set(px, py, pz, newValue);
 				}
 			}
 		} // end of for-loop over all pixels in narrow band
@@ -26,6 +26,7 @@ package de.unihalle.informatik.MiToBo.segmentation.levelset.nonPDE;
 
 
 import java.util.*;
+import java.util.stream.IntStream;
 import java.io.*;
 
 import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
@@ -38,6 +39,7 @@ import de.unihalle.informatik.Alida.annotations.Parameter;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.*;
 import de.unihalle.informatik.MiToBo.core.operator.*;
 import de.unihalle.informatik.MiToBo.tools.system.UserTime;
+import de.unihalle.informatik.MiToBo.topology.MTBTopologicalNumber3D;
 
 /**
  * Implements a level set solver which may optionally perserve the topology 
@@ -54,7 +56,25 @@ import de.unihalle.informatik.MiToBo.tools.system.UserTime;
  * NOTE: if verbose is turned on runtime will typically be  increase considerably
  * due to outputting (and consequently computing) the complete energy.
  * <p>
- * Currently only 2D images are supported.
+ * If active set scheduling is enabled, after an initial full sweep only pixels
+ * adjacent to pixels flipped in the previous sweep are re-examined. As the energy 
+ * may depend on global parameters, convergence is confirmed by a final full sweep.
+ * Note that each sweep counts as one iteration.
+ * <p>
+ * 2D as well as 3D level set functions are supported. In 3D each phase is
+ * considered as 6-connected if topology is to be preserved, i.e. a voxel
+ * may only change its phase if it is a simple point with respect to
+ * its old and new phase using the 26-neighborhood for the complement.
+ * <p>
+ * If checkerboard sweeps are enabled, the pixels/voxels of a sweep are 
+ * partitioned into 4 (2D) or 8 (3D) colours according to the parity of 
+ * their coordinates. Pixels of identical colour are not neighbors of each 
+ * other. Within each colour phase the pixels are first examined 
+ * concurrently against the level set function and energy parameters 
+ * at the start of this phase. The pixels found to decrease the energy 
+ * are subsequently re-examined and flipped sequentially while updating 
+ * the parameters of the energy. Hence, the energy is still decreased 
+ * monotonically and the result does not depend on the number of threads.
  *
  * @author Stefan Posch, partially bases on code by Markus Glass
  *
@@ -89,6 +109,14 @@ public class LevelsetSolveNonPDE extends MTBOperator {
                 description = "Topology preserving mode?")
 	private Boolean preserveTopology;
 
+	@Parameter( label= "activeSetScheduling", required = false, direction = Parameter.Direction.IN,
+                description = "Only re-examine pixels adjacent to pixels flipped in the previous sweep?")
+	private Boolean activeSetScheduling = false;
+
+	@Parameter( label= "checkerboardSweeps", required = false, direction = Parameter.Direction.IN,
+                description = "Examine pixels of each colour of a checkerboard partition concurrently?")
+	private Boolean checkerboardSweeps = false;
+
 	@Parameter( label= "debug", direction = Parameter.Direction.IN, supplemental = true,
                 description = "Additional dubugging informaton")
 	private Integer debug = 0;
@@ -105,20 +133,26 @@ public class LevelsetSolveNonPDE extends MTBOperator {
                 description = "Number of iterations performed")
 	private Integer numIterations;
 
-    /** Phases the current pixel is (topologically) allowed to change to.
-	 * This vector is recycled for efficiency.
+    /** Scratch arrays to examine pixels in the main thread.
+	 */
+    private PixelWorkspace workspace = new PixelWorkspace();
+
+    /** Pixels/voxels to visit in the next sweep if active set scheduling is used,
+	 * only the first <code>nextActiveSetSize</code> entries are valid.
 	 */
-    private Vector<Short> potentialNewPhases = new Vector<Short>();
+    private int[] nextActiveSet;
 
-    /** Non redudant phases in the neighborhood of the current pixel. 
-	 * This vector is recycled for efficiency.
+    /** Number of valid entries in <code>nextActiveSet</code>.
 	 */
-    private Vector<Short> nbPhasesNonredundant = new Vector<Short>();
+    private int nextActiveSetSize;
 
-    /** Phases of the 8-neighbors of the current pixel.
-	 * This array is recycled for efficiency.
+    /** Flags pixels/voxels already contained in <code>nextActiveSet</code>.
 	 */
-    private short[] nbPhases = new short[8]; 
+    private boolean[] inNextActiveSet;
+
+    /** Change of energy accumulated during the current sweep.
+	 */
+    private double sweepDeltaE;
        
     /**
      * Constructor. 
@@ -158,16 +192,12 @@ public class LevelsetSolveNonPDE extends MTBOperator {
 
     /**
      * This function does the actual work, i.e. optimization of the energy.
-	 * NOTE: Currently only 2D level set functions are supported
 	 * NOTE: if debug & FLAG_SOLVER, then for debugging purposes the complete energy
 	 * is computed in each iteration, which is expensive
      */
     
 	@Override
     protected void operate() throws ALDOperatorException {
-		if ( phi.getSizeZ() != 1 )
-			throw new ALDOperatorException( OperatorExceptionType.OPERATE_FAILED, "LevelsetSolveNonPDE.operate() failed: currently only 2D level set functions are suported");
-		
 		if ( solve()  ) {
             // set the resulting image 
         	
@@ -212,60 +242,57 @@ public class LevelsetSolveNonPDE extends MTBOperator {
             System.out.println( "LevelsetSolveNonPDE: Start optimization\n");
         }
 
+        // active set of pixels to visit in the next sweep (if requested),
+        // a full sweep is done initially and to confirm convergence
+        boolean useActiveSet = activeSetScheduling != null && activeSetScheduling;
+        boolean useCheckerboard = checkerboardSweeps != null && checkerboardSweeps;
+        boolean fullSweep = true;
+        int numPixel = phi.getSizeX() * phi.getSizeY() * phi.getSizeZ();
+        int[] activeSet = null;
+        int activeSetSize = 0;
+        nextActiveSet = null;
+        nextActiveSetSize = 0;
+        inNextActiveSet = null;
+        if ( useActiveSet ) {
+            activeSet = new int[Math.min( numPixel, 1024)];
+            nextActiveSet = new int[Math.min( numPixel, 1024)];
+            inNextActiveSet = new boolean[numPixel];
+        }
+
         // now do the iterations
         do {
             iter++;
-            numFlipedPixel = 0;
             oldE = E;
 
-            // TODO: add support for 3D images (topology, getPotentialNewPhases)
-
 			LevelsetIterator itr;
-			if ( preserveTopology )
+			if ( ! fullSweep )
+				itr = new LevelsetIteratorActiveSet( activeSet, activeSetSize);
+			else if ( preserveTopology )
 				itr = new LevelsetIteratorContourPoints();
 			else
 				itr = new LevelsetIteratorScan();
 		
-			while ( itr.hasNext() ) {
-				CoordInt3D coord = itr.next();
-				int x = coord.x;
-				int y = coord.y;
-				int z = coord.z;
-
-                potentialNewPhases = getPotentialNewPhases2D( preserveTopology, x, y);
-
-                // for all phases the pixel is allowed to change to 
-                if ( potentialNewPhases.size() > 0 ) {
-					//System.out.println( "flippable (" + x + "," + y + "|" + phi.getPhase( x,y) + 
-                    //                 ") potentialNewPhases: " + potentialNewPhases);
-
-                    // find energetically best phase
-                    double bestDeltaE = Float.POSITIVE_INFINITY;
-                    short    bestNewPhase = 0;
-                    for ( int i = 0 ; i < potentialNewPhases.size() ; i++ ) {
-                        //System.out.println( "newPhase: " + (short)potentialNewPhases.elementAt(i));
-                        double delta = energy.deltaE( x, y, z, (short)potentialNewPhases.elementAt(i), phi);
-				      //System.out.println( "       deltaE for new phase " + (short)potentialNewPhases.elementAt(i) + ": " + delta);
-                        if ( delta < bestDeltaE ) {
-                            bestDeltaE = delta;
-                            bestNewPhase = potentialNewPhases.elementAt(i);
-                        }
-                    }
-
-                    // does best phase decrease the energy, than flip
-                    if (  bestDeltaE < 0 ) {
-						if ( (debug & FLAG_SOLVER2) != 0 ) {
-                        	System.out.println( "    change phase @ (" + x + "," + y + ") to: " 
-														+ bestNewPhase + " delta: "  
-														+ String.format("%12.10e",bestDeltaE));
-						}
-		                  
-                        E += bestDeltaE;
-                        numFlipedPixel++;
-                        energy.updateParams( x, y, 0, bestNewPhase, phi);
-                        phi.changePhase( x, y, 0, bestNewPhase);
-                    }
-                }
+			sweepDeltaE = 0;
+			if ( useCheckerboard )
+				numFlipedPixel = sweepCheckerboard( itr, useActiveSet);
+			else
+				numFlipedPixel = sweepSequential( itr, useActiveSet);
+			E += sweepDeltaE;
+
+            if ( useActiveSet ) {
+                // swap active sets and keep scan order
+                int[] tmp = activeSet;
+                activeSet = nextActiveSet;
+                nextActiveSet = tmp;
+                activeSetSize = nextActiveSetSize;
+                nextActiveSetSize = 0;
+                Arrays.sort( activeSet, 0, activeSetSize);
+                for ( int i = 0 ; i < activeSetSize ; i++ ) 
+                    inNextActiveSet[activeSet[i]] = false;
+
+                // energies may depend on global parameters, hence if nothing
+                // changed in a partial sweep, confirm with a full one
+                fullSweep = ( numFlipedPixel == 0 && ! fullSweep );
             }
 		
 			// add intermediate results if asked for
@@ -290,7 +317,7 @@ public class LevelsetSolveNonPDE extends MTBOperator {
             }
 
 
-        } while ( numFlipedPixel != 0 && iter < maxIterations );
+        } while ( (numFlipedPixel != 0 || (useActiveSet && fullSweep)) && iter < maxIterations );
 
 		if ( verbose ) {
             System.out.println( "======================");
@@ -314,10 +341,207 @@ public class LevelsetSolveNonPDE extends MTBOperator {
         return true;
     }
 
+    /**
+     * Examine all pixels/voxels of the iterator in turn and flip each 
+     * immediately if this decreases the energy.
+     *
+     * @param itr	Pixels/voxels to examine
+     * @param useActiveSet	Schedule neighbors of flipped pixels for the next sweep?
+     * @return Number of flipped pixels/voxels
+     */
+    private int sweepSequential( LevelsetIterator itr, boolean useActiveSet) {
+        int numFlipedPixel = 0;
+        while ( itr.hasNext() ) {
+            CoordInt3D coord = itr.next();
+
+            double bestDeltaE = updatePixel( workspace, coord.x, coord.y, coord.z);
+            if ( bestDeltaE < 0 ) {
+                sweepDeltaE += bestDeltaE;
+                numFlipedPixel++;
+                if ( useActiveSet )
+                    scheduleNeighbors( coord.x, coord.y, coord.z);
+            }
+        }
+        return numFlipedPixel;
+    }
+
+    /**
+     * Examine all pixels/voxels of the iterator colour by colour. 
+     * <p>
+     * The pixels of one colour are first examined concurrently without
+     * changing the level set function or the energy. Pixels which would
+     * decrease the energy are then re-examined and flipped sequentially
+     * in scan order, where the energy parameters are updated as usual.
+     *
+     * @param itr	Pixels/voxels to examine
+     * @param useActiveSet	Schedule neighbors of flipped pixels for the next sweep?
+     * @return Number of flipped pixels/voxels
+     */
+    private int sweepCheckerboard( LevelsetIterator itr, boolean useActiveSet) {
+        final int sizeX = phi.getSizeX();
+        final int sizeY = phi.getSizeY();
+        int numColours = ( phi.getSizeZ() > 1 ? 8 : 4);
+
+        // partition pixels according to parity of their coordinates
+        int[][] colourPixels = new int[numColours][16];
+        int[] colourSize = new int[numColours];
+        while ( itr.hasNext() ) {
+            CoordInt3D coord = itr.next();
+            int colour = (coord.x & 1) + 2 * (coord.y & 1) + 4 * (coord.z & 1);
+            if ( colourSize[colour] == colourPixels[colour].length )
+                colourPixels[colour] = Arrays.copyOf( colourPixels[colour], 2*colourSize[colour]);
+            colourPixels[colour][colourSize[colour]++] = (coord.z * sizeY + coord.y) * sizeX + coord.x;
+        }
+
+        int numFlipedPixel = 0;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        for ( int colour = 0 ; colour < numColours ; colour++ ) {
+            final int[] pixels = colourPixels[colour];
+            final int size = colourSize[colour];
+            if ( size == 0 )
+                continue;
+
+            // examine pixels concurrently, phi and energy are not modified
+            final int numChunks = Math.min( size, 4*numThreads);
+            final int chunkSize = (size + numChunks - 1) / numChunks;
+            final int[][] candidates = new int[numChunks][];
+            IntStream.range( 0, numChunks).parallel().forEach( chunk -> {
+                PixelWorkspace ws = new PixelWorkspace();
+                int from = chunk * chunkSize;
+                int to = Math.min( size, from + chunkSize);
+                int[] cand = new int[Math.max( 0, to - from)];
+                int numCand = 0;
+                for ( int i = from ; i < to ; i++ ) {
+                    int index = pixels[i];
+                    if ( findBestNewPhase( ws, index % sizeX, (index / sizeX) % sizeY, 
+                                           index / (sizeX * sizeY)) < 0 )
+                        cand[numCand++] = index;
+                }
+                candidates[chunk] = Arrays.copyOf( cand, numCand);
+            });
+
+            // flip candidates sequentially with updated energy parameters
+            for ( int chunk = 0 ; chunk < numChunks ; chunk++ ) {
+                for ( int index : candidates[chunk] ) {
+                    int x = index % sizeX;
+                    int y = (index / sizeX) % sizeY;
+                    int z = index / (sizeX * sizeY);
+                    double bestDeltaE = updatePixel( workspace, x, y, z);
+                    if ( bestDeltaE < 0 ) {
+                        sweepDeltaE += bestDeltaE;
+                        numFlipedPixel++;
+                        if ( useActiveSet )
+                            scheduleNeighbors( x, y, z);
+                    }
+                }
+            }
+        }
+        return numFlipedPixel;
+    }
+
+    /**
+     * Add the pixel/voxel (x,y,z) and its 8- or 26-neighbors to the active 
+     * set of the next sweep.
+     *
+     * @param x	x coordinate
+     * @param y	y coordinate
+     * @param z	z coordinate
+     */
+    private void scheduleNeighbors( int x, int y, int z) {
+        int numPixel = inNextActiveSet.length;
+        for ( int dz = -1 ; dz <= 1 ; dz++ ) {
+            int nz = z + dz;
+            if ( nz < 0 || nz >= phi.getSizeZ() )
+                continue;
+            for ( int dy = -1 ; dy <= 1 ; dy++ ) {
+                int ny = y + dy;
+                if ( ny < 0 || ny >= phi.getSizeY() )
+                    continue;
+                for ( int dx = -1 ; dx <= 1 ; dx++ ) {
+                    int nx = x + dx;
+                    if ( nx < 0 || nx >= phi.getSizeX() )
+                        continue;
+                    int index = (nz * phi.getSizeY() + ny) * phi.getSizeX() + nx;
+                    if ( ! inNextActiveSet[index] ) {
+                        inNextActiveSet[index] = true;
+                        if ( nextActiveSetSize == nextActiveSet.length )
+                            nextActiveSet = Arrays.copyOf( nextActiveSet, 
+                                               Math.min( numPixel, 2*nextActiveSetSize));
+                        nextActiveSet[nextActiveSetSize++] = index;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the energetically best phase the pixel/voxel (x,y,z) may change to
+     * and flip it if this decreases the energy.
+     *
+     * @param ws	Scratch arrays to use
+     * @param x	x coordinate
+     * @param y	y coordinate
+     * @param z	z coordinate
+     * @return Change of energy if the pixel was flipped, otherwise a value &gt;= 0
+     */
+    private double updatePixel( PixelWorkspace ws, int x, int y, int z) {
+        double bestDeltaE = findBestNewPhase( ws, x, y, z);
+
+        // does best phase decrease the energy, than flip
+        if (  bestDeltaE < 0 ) {
+			if ( (debug & FLAG_SOLVER2) != 0 ) {
+            	System.out.println( "    change phase @ (" + x + "," + y + "," + z + ") to: " 
+											+ ws.bestNewPhase + " delta: "  
+											+ String.format("%12.10e",bestDeltaE));
+			}
+            energy.updateParams( x, y, z, ws.bestNewPhase, phi);
+            phi.changePhase( x, y, z, ws.bestNewPhase);
+        }
+        return bestDeltaE;
+    }
+
+    /**
+     * Find the energetically best phase the pixel/voxel (x,y,z) may change to
+     * without modifying the level set function or the energy.
+     * The best phase is stored in <code>ws.bestNewPhase</code>.
+     * <p>
+     * This method may be called concurrently for different pixels/voxels 
+     * using different workspaces.
+     *
+     * @param ws	Scratch arrays to use
+     * @param x	x coordinate
+     * @param y	y coordinate
+     * @param z	z coordinate
+     * @return Change of energy for the best phase, zero if no phase is allowed
+     */
+    private double findBestNewPhase( PixelWorkspace ws, int x, int y, int z) {
+        int numPhases;
+        if ( phi.getSizeZ() > 1 )
+            numPhases = getPotentialNewPhases3D( ws, preserveTopology, x, y, z);
+        else
+            numPhases = getPotentialNewPhases2D( ws, preserveTopology, x, y);
+
+        // for all phases the pixel is allowed to change to 
+        if ( numPhases == 0 )
+            return 0;
+
+        // find energetically best phase
+        double bestDeltaE = Float.POSITIVE_INFINITY;
+        ws.bestNewPhase = 0;
+        for ( int i = 0 ; i < numPhases ; i++ ) {
+            double delta = energy.deltaE( x, y, z, ws.potentialNewPhases[i], phi);
+            if ( delta < bestDeltaE ) {
+                bestDeltaE = delta;
+                ws.bestNewPhase = ws.potentialNewPhases[i];
+            }
+        }
+        return bestDeltaE;
+    }
+
     /*
-	 * Return all phases a pixel may change to for the 2D case. 
-	 * As a side effect member field <code>potentialNewPhases</code> is modified
-	 * (efficiency).
+	 * Return the number of phases a pixel may change to for the 2D case. 
+	 * The phases are stored in the first entries of  
+	 * <code>ws.potentialNewPhases</code> (efficiency).
      * <br>
      * If preserveTopology is true, then
      * find all phases in (x,y)'s 4-neighborhood to which (x,y) may be changed
@@ -328,48 +552,50 @@ public class LevelsetSolveNonPDE extends MTBOperator {
      * If preserveTopology is false then return all phases from nbphases (except invalid phase)
      */
 
-    private Vector<Short>  getPotentialNewPhases2D( boolean preserveTopology,
+    private int getPotentialNewPhases2D( PixelWorkspace ws, boolean preserveTopology,
                                  int x, int y) {
 		
+        short[] nbPhases = ws.nbPhases;
+        short[] nbPhasesNonredundant = ws.nbPhasesNonredundant;
         get8NeighborsPhase(x,y, nbPhases); // phases for 8 neighbors
 
-        potentialNewPhases.clear();
+        ws.numPotentialNewPhases = 0;
 
         short r = phi.getPhase( x,y); // phase of (x,y)
         if ( preserveTopology ) {
 			// first find all phases in the 4 neighborhood
-			nbPhasesNonredundant.clear();
+			int numNbPhases = 0;
             for (int k = 0; k < nbPhases.length; k += 2 ) {
-				if ( ! nbPhasesNonredundant.contains( nbPhases[k]) )
-					nbPhasesNonredundant.add( nbPhases[k]);
+				int i = 0;
+				while ( i < numNbPhases && nbPhasesNonredundant[i] != nbPhases[k] )
+					i++;
+				if ( i == numNbPhases )
+					nbPhasesNonredundant[numNbPhases++] = nbPhases[k];
 			}
 
             if ( r == MTBLevelsetMembership.BG_PHASE )  {  // current pixel belongs to background
-				for ( int i = 0 ; i < nbPhasesNonredundant.size() ; i++ ) {
-					short p = (short)nbPhasesNonredundant.elementAt(i);
+				for ( int i = 0 ; i < numNbPhases ; i++ ) {
+					short p = nbPhasesNonredundant[i];
 
                     if (p != MTBLevelsetMembership.INVALID_PHASE && p != r) {
-                        if ( numBlockChange( nbPhases, p) == 1) {
-                            if ( ! potentialNewPhases.contains( p) )
-                                potentialNewPhases.add(p);
+                        if ( singleBlockChange( nbPhases, p) ) {
+                            ws.addPotentialNewPhase( p);
                         }
                     }
                 }
                 
             } else {   // current pixel belongs not to background
-				for ( int i = 0 ; i < nbPhasesNonredundant.size() ; i++ ) {
-					short p = (short)nbPhasesNonredundant.elementAt(i);
+				for ( int i = 0 ; i < numNbPhases ; i++ ) {
+					short p = nbPhasesNonredundant[i];
 
                     if (p != MTBLevelsetMembership.INVALID_PHASE && p != r) {
-                        if ( numBlockChange(nbPhases, r) == 1) {
+                        if ( singleBlockChange( nbPhases, r) ) {
                             if (p != MTBLevelsetMembership.BG_PHASE) {
-                                if ( numBlockChange( nbPhases, p) == 1) {
-                                    if ( ! potentialNewPhases.contains( p) )
-                                        potentialNewPhases.add(p);
+                                if ( singleBlockChange( nbPhases, p) ) {
+                                    ws.addPotentialNewPhase( p);
                                 }
                             } else {
-                                if ( ! potentialNewPhases.contains( p) )
-                                    potentialNewPhases.add(MTBLevelsetMembership.BG_PHASE);
+                                ws.addPotentialNewPhase( MTBLevelsetMembership.BG_PHASE);
                             }
                         }    
                     }
@@ -378,13 +604,102 @@ public class LevelsetSolveNonPDE extends MTBOperator {
         } else {
 			// we may change phase to all other phases
 			for (short p = phi.BG_PHASE; p <= phi.getNumPhases(); p++ ) {
-                if ( p != r && ! potentialNewPhases.contains( p) )
-                    potentialNewPhases.add( p);
+                if ( p != r )
+                    ws.addPotentialNewPhase( p);
 
             }
         }
 
-		return potentialNewPhases;
+		return ws.numPotentialNewPhases;
+    }
+
+    /*
+	 * Return the number of phases a voxel may change to for the 3D case. 
+	 * The phases are stored in the first entries of  
+	 * <code>ws.potentialNewPhases</code> (efficiency).
+     * <br>
+     * If preserveTopology is true, then
+     * find all phases in (x,y,z)'s 6-neighborhood to which (x,y,z) may be changed
+     * without changing the topology, i.e. (x,y,z) has to be a simple point
+     * of its old phase (unless this is the background) and of its new phase, 
+     * where phases are 6-connected and their complements 26-connected.
+     * Voxels outside of the image are considered as background.
+     * <br>
+     * If preserveTopology is false then return all phases (except invalid phase)
+     */
+
+    private int getPotentialNewPhases3D( PixelWorkspace ws, boolean preserveTopology,
+                                 int x, int y, int z) {
+        ws.numPotentialNewPhases = 0;
+
+        short r = phi.getPhase( x,y,z); // phase of (x,y,z)
+        if ( preserveTopology ) {
+            // phases in 3x3x3 neighborhood, bit 9*dz + 3*dy + dx
+            short[] nb = ws.nbPhases3D;
+            for ( int dz = 0 ; dz < 3 ; dz++ ) {
+                int nz = z + dz - 1;
+                for ( int dy = 0 ; dy < 3 ; dy++ ) {
+                    int ny = y + dy - 1;
+                    for ( int dx = 0 ; dx < 3 ; dx++ ) {
+                        int nx = x + dx - 1;
+                        if ( nx < 0 || nx >= phi.getSizeX() || ny < 0 || ny >= phi.getSizeY() 
+                                || nz < 0 || nz >= phi.getSizeZ() )
+                            nb[9*dz + 3*dy + dx] = MTBLevelsetMembership.BG_PHASE;
+                        else
+                            nb[9*dz + 3*dy + dx] = phi.getPhase( nx, ny, nz);
+                    }
+                }
+            }
+
+            // removing the voxel must not change the topology of its phase
+            if ( r != MTBLevelsetMembership.BG_PHASE && ! isSimple6( nb, r) )
+                return 0;
+
+            for ( int k = 0 ; k < N6_BITS.length ; k++ ) {
+                short p = nb[N6_BITS[k]];
+                if ( p == MTBLevelsetMembership.INVALID_PHASE || p == r )
+                    continue;
+                if ( p == MTBLevelsetMembership.BG_PHASE || isSimple6( nb, p) )
+                    ws.addPotentialNewPhase( p);
+            }
+        } else {
+			// we may change phase to all other phases
+			for (short p = MTBLevelsetMembership.BG_PHASE; p <= phi.getNumPhases(); p++ ) {
+                if ( p != r )
+                    ws.addPotentialNewPhase( p);
+            }
+        }
+
+		return ws.numPotentialNewPhases;
+    }
+
+    /**
+     * Bits of the 6-neighbors in a 3x3x3 neighborhood.
+     */
+    private static final int[] N6_BITS = new int[]{4, 10, 12, 14, 16, 22};
+
+    /**
+     * Mask of all 26 neighbors in a 3x3x3 neighborhood.
+     */
+    private static final int MASK_N26 = 
+    		((1 << 27) - 1) & ~(1 << MTBTopologicalNumber3D.CENTER_BIT);
+
+    /**
+     * Check if the center voxel is a simple point of the 6-connected phase 
+     * <code>p</code>. As simplicity is symmetric with regard to foreground and
+     * background this is checked for the 26-connected complement of the phase.
+     *
+     * @param nb	Phases in the 3x3x3 neighborhood
+     * @param p	Phase to check
+     * @return True if the voxel is simple
+     */
+    private static boolean isSimple6( short[] nb, short p) {
+        int mask = 0;
+        for ( int bit = 0 ; bit < 27 ; bit++ ) {
+            if ( nb[bit] == p )
+                mask |= 1 << bit;
+        }
+        return MTBTopologicalNumber3D.isSimplePoint( MASK_N26 & ~mask);
     }
 
     /**
@@ -405,6 +720,78 @@ public class LevelsetSolveNonPDE extends MTBOperator {
         return has;
     }
 
+    /**
+     * Check whether the voxel (x,y,z) has a 6-neighbor of different/foreign,
+     * but valid phase. Voxels outside of the image are considered as background.
+     *
+     * @param x	x coordinate
+     * @param y	y coordinate
+     * @param z	z coordinate
+     * @return True if there is a foreign 6-neighbor
+     */
+    private boolean hasForeign6Neighbor( int x, int y, int z) {
+        short phase = phi.getPhase( x, y, z);
+        for ( int k = 0 ; k < N6_BITS.length ; k++ ) {
+            int nx = x + N6_BITS[k] % 3 - 1;
+            int ny = y + (N6_BITS[k] / 3) % 3 - 1;
+            int nz = z + N6_BITS[k] / 9 - 1;
+            short p;
+            if ( nx < 0 || nx >= phi.getSizeX() || ny < 0 || ny >= phi.getSizeY() 
+                    || nz < 0 || nz >= phi.getSizeZ() )
+                p = MTBLevelsetMembership.BG_PHASE;
+            else
+                p = phi.getPhase( nx, ny, nz);
+            if ( p != phase && p != MTBLevelsetMembership.INVALID_PHASE )
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lookup table for {@link #numBlockChange(short[], int)} being one.
+     * <p>
+     * The result only depends on which neighbors have phase <code>r</code>
+     * and which are invalid. Hence, the table is indexed by 
+     * <code>(invalidMask << 8) | phaseMask</code> where bit <code>k</code>
+     * of each mask refers to <code>nbPhases[k]</code>.
+     */
+    private static final boolean[] singleBlockChangeTable = new boolean[1 << 16];
+
+    static {
+        short[] nb = new short[8];
+        short r = 2, other = 1;
+        for ( int index = 0 ; index < (1 << 16) ; index++ ) {
+            for ( int k = 0 ; k < 8 ; k++ ) {
+                if ( ((index >> k) & 1) != 0 )
+                    nb[k] = r;
+                else if ( ((index >> (k+8)) & 1) != 0 )
+                    nb[k] = MTBLevelsetMembership.INVALID_PHASE;
+                else
+                    nb[k] = other;
+            }
+            singleBlockChangeTable[index] = ( numBlockChange( nb, r) == 1);
+        }
+    }
+
+    /**
+     * Check if {@link #numBlockChange(short[], int)} is one by a single
+     * table lookup.
+     *
+     * @param nbPhases	Phases in the 8 neighborhood of current pixel
+     * @param r	Phase to check
+     * @return True if there is exactly one component
+     */
+    private static boolean singleBlockChange(short[] nbPhases, int r) {
+        int index = 0;
+        for ( int k = 0 ; k < 8 ; k++ ) {
+            if ( nbPhases[k] == r )
+                index |= 1 << k;
+            else if ( nbPhases[k] == MTBLevelsetMembership.INVALID_PHASE )
+                index |= 1 << (k+8);
+        }
+        return singleBlockChangeTable[index];
+    }
+
     /**
      * Return number of connected components of different/foreign phase then <code>r</code>
 	 * in the 8 neighborhood <code>nbPhases</code>,
@@ -419,7 +806,7 @@ public class LevelsetSolveNonPDE extends MTBOperator {
      * @param r	Phase of current pixel
      * @return Number of components 
      */
-    private int numBlockChange(short[] nbPhases, int r) {
+    private static int numBlockChange(short[] nbPhases, int r) {
         int chgCount = 0;
         int l = nbPhases.length;
 
@@ -587,7 +974,7 @@ public class LevelsetSolveNonPDE extends MTBOperator {
 	 * of the level set function,
 	 * The 4 neighborhood is used, e.g. a pixel/voxel is consider a contour pixel, if
 	 * it has a 4 neighbor with a different phase.
-	 * Note: currently only for 2D level set functions.
+	 * For 3D level set functions the 6 neighborhood is used accordingly.
 	 */
 	private class LevelsetIteratorContourPoints extends LevelsetIterator implements Iterator<CoordInt3D> {
 		int n;
@@ -599,8 +986,15 @@ public class LevelsetSolveNonPDE extends MTBOperator {
 			ctrPoints = new Vector<CoordInt3D>();
         	nbPhases = new short[8]; 
 
-			if ( phi.getSizeZ() != 1 ) 
-				throw new ArrayIndexOutOfBoundsException("LevelsetIteratorContourPoints: not yet implemented for 3D");
+			if ( phi.getSizeZ() > 1 ) {
+				for ( int z = 0 ; z < phi.getSizeZ() ; z++ ) 
+					for ( int y = 0 ; y < phi.getSizeY() ; y++ ) 
+						for ( int x = 0 ; x < phi.getSizeX() ; x++ ) 
+							if ( phi.getPhase( x,y,z) != phi.INVALID_PHASE 
+									&& hasForeign6Neighbor( x, y, z) ) 
+								ctrPoints.add( new CoordInt3D( x, y, z));
+				return;
+			}
 				
             int z = 0; 
             for ( int y = 0 ; y < phi.getSizeY() ; y++ ) {
@@ -636,6 +1030,98 @@ public class LevelsetSolveNonPDE extends MTBOperator {
 
     }
 
+    /** Iterator for the pixels/voxels of an active set given by their 
+	 * linear indices, excluding invalid pixels/voxels.
+	 */
+	private class LevelsetIteratorActiveSet extends LevelsetIterator implements Iterator<CoordInt3D> {
+		int n;
+		int[] indices;
+		int size;
+
+		LevelsetIteratorActiveSet( int[] indices, int size) {
+			this.indices = indices;
+			this.size = size;
+			n = 0;
+			skipInvalid();
+		}
+
+		private void skipInvalid() {
+			while ( n < size ) {
+				int index = indices[n];
+				int x = index % phi.getSizeX();
+				int y = (index / phi.getSizeX()) % phi.getSizeY();
+				int z = index / (phi.getSizeX() * phi.getSizeY());
+				if ( phi.getPhase( x, y, z) != phi.INVALID_PHASE )
+					break;
+				n++;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return  n < size;
+		}
+
+		@Override
+		public CoordInt3D next() {
+			if ( n == size ) 
+				throw new java.util.NoSuchElementException( "LevelsetIteratorActiveSet");
+
+			int index = indices[n];
+			CoordInt3D coord = new CoordInt3D( index % phi.getSizeX(), 
+					(index / phi.getSizeX()) % phi.getSizeY(), 
+					index / (phi.getSizeX() * phi.getSizeY()));
+			n++;
+			skipInvalid();
+			return coord;
+		}
+	}
+
+	/** Scratch arrays to examine a single pixel/voxel. 
+	 * Each thread examining pixels uses its own instance.
+	 */
+	private static class PixelWorkspace {
+	    /** Phases the current pixel is (topologically) allowed to change to,
+		 * only the first <code>numPotentialNewPhases</code> entries are valid.
+		 */
+	    short[] potentialNewPhases = new short[8];
+
+	    /** Number of valid entries in <code>potentialNewPhases</code>.
+		 */
+	    int numPotentialNewPhases;
+
+	    /** Energetically best phase found for the current pixel.
+		 */
+	    short bestNewPhase;
+
+	    /** Non redudant phases in the 4 neighborhood of the current pixel. 
+		 */
+	    short[] nbPhasesNonredundant = new short[4];
+
+	    /** Phases of the 8-neighbors of the current pixel.
+		 */
+	    short[] nbPhases = new short[8]; 
+
+	    /** Phases of the 3x3x3 neighborhood of the current voxel.
+		 */
+	    short[] nbPhases3D = new short[27]; 
+
+	    /**
+	     * Add a phase to <code>potentialNewPhases</code> if not already contained.
+	     *
+	     * @param p	Phase to add
+	     */
+	    void addPotentialNewPhase( short p) {
+	        for ( int i = 0 ; i < numPotentialNewPhases ; i++ ) {
+	            if ( potentialNewPhases[i] == p )
+	                return;
+	        }
+	        if ( numPotentialNewPhases == potentialNewPhases.length )
+	            potentialNewPhases = Arrays.copyOf( potentialNewPhases, 2*numPotentialNewPhases);
+	        potentialNewPhases[numPotentialNewPhases++] = p;
+	    }
+	}
+
 	/** Just to hold 3D coordinate and nothing else
 	 */
 	private class CoordInt3D {
@@ -648,6 +1134,38 @@ public class LevelsetSolveNonPDE extends MTBOperator {
 		}
 	}
 
+	/** Get value of activeSetScheduling.
+	  * Explanation: Only re-examine pixels adjacent to pixels flipped in the previous sweep?.
+	  * @return value of activeSetScheduling
+	  */
+	public java.lang.Boolean getActiveSetScheduling(){
+		return activeSetScheduling;
+	}
+	
+	/** Set value of activeSetScheduling.
+	  * Explanation: Only re-examine pixels adjacent to pixels flipped in the previous sweep?.
+	  * @param value New value of activeSetScheduling
+	  */
+	public void setActiveSetScheduling( java.lang.Boolean value){
+		this.activeSetScheduling = value;
+	}
+	
+	/** Get value of checkerboardSweeps.
+	  * Explanation: Examine pixels of each colour of a checkerboard partition concurrently?.
+	  * @return value of checkerboardSweeps
+	  */
+	public java.lang.Boolean getCheckerboardSweeps(){
+		return checkerboardSweeps;
+	}
+	
+	/** Set value of checkerboardSweeps.
+	  * Explanation: Examine pixels of each colour of a checkerboard partition concurrently?.
+	  * @param value New value of checkerboardSweeps
+	  */
+	public void setCheckerboardSweeps( java.lang.Boolean value){
+		this.checkerboardSweeps = value;
+	}
+	
 	/** Get value of maxIterations.
 	  * Explanation: Maximal number of iterations.
 	  * @return value of maxIterations
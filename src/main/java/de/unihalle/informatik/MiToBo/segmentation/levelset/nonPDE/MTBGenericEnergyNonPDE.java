@@ -72,6 +72,13 @@ import java.io.PrintStream;
  * is conducted immediately to again have both energy function and 
  * level set function in compatible states.
  * <p>
+ * If checkerboard sweeps are enabled in {@link LevelsetSolveNonPDE},
+ * <code>deltaE</code> is called concurrently from several threads for 
+ * pixels/voxels which are not neighbors of each other. Hence, implementations
+ * of <code>deltaE</code> must not modify the state of the energy object.
+ * Calls of <code>updateParams</code> are still issued sequentially from 
+ * a single thread in between the concurrent evaluations.
+ * <p>
  * In order for an extending energy class to be used as a parameter of
  * an operator intended to be used for generic execution, 
  * e.g. {@link de.unihalle.informatik.MiToBo.segmentation.levelset.nonPDE.ui.LevelsetSegmentationNonPDE}
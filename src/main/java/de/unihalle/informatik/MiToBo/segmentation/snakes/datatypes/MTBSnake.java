@@ -627,6 +627,31 @@ public class MTBSnake extends MTBPolygon2D implements MTBSegmentationInterface {
 				return null;
 		}
 
+		/**
+		 * Get pixel spans of the region enclosed by the snake.
+		 * <p>
+		 * In contrast to {@link #getPixelSpans(int, int, boolean)} the snake 
+		 * points are rescaled to image coordinates first, i.e., the spans cover
+		 * exactly the pixels set in {@link #getBinaryMask(int, int)}. The spans
+		 * are not cached, the costs are proportional to the number of snake 
+		 * points and covered rows.
+		 * 
+		 * @param w	Width of the image.
+		 * @param h	Height of the image.
+		 * @return	Row-wise pixel spans of the snake interior.
+		 */
+		public PixelSpans getScaledPixelSpans(int w, int h) {
+			int n = this.getPointNum();
+			int[] xps = new int[n];
+			int[] yps = new int[n];
+			for (int i = 0; i < n; ++i) {
+				Point2D.Double p = this.points.elementAt(i);
+				xps[i] = (int) (p.x * this.scaleFactor + 0.5);
+				yps[i] = (int) (p.y * this.scaleFactor + 0.5);
+			}
+			return MTBPolygon2D.rasterize(xps, yps, n, 0, 0, w - 1, h - 1, false);
+		}
+
 		@Override
 		public void makeSimple() {
 			// save the old points
@@ -1357,6 +1382,18 @@ public class MTBSnake extends MTBPolygon2D implements MTBSegmentationInterface {
 			return this.visiblemap[y-this.visibleMapMinY][x-this.visibleMapMinX];
 		}
 
+		/**
+		 * Returns the class label of the region enclosed by the snake.
+		 * <p>
+		 * The label depends on the orientation of the snake, i.e., it is 1 for
+		 * counter-clockwise and 0 for clockwise ordered points.
+		 * 
+		 * @return	Label of the snake interior.
+		 */
+		public int getInsideLabel() {
+			return this.labelInside;
+		}
+
 		@Override
 		public int getClass(int x, int y, int z) {
 				return this.getClass(x, y);
@@ -0,0 +1,220 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes;
+
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2D.PixelSpans;
+
+/**
+ * Immutable snapshot of the regions covered by a set of snakes.
+ * <p>
+ * Instead of a single overlap mask covering the whole image each snake
+ * contributes a tile, i.e., the pixel spans of its interior together with
+ * their bounding box. The number of snakes covering a pixel is obtained by
+ * checking only the tiles whose bounding box contains the pixel. A 
+ * full-frame overlap mask or the union of all tiles as pixel spans are 
+ * only created on request and cached afterwards.
+ * <p>
+ * As the snapshot is never modified after construction it can safely be 
+ * shared among threads optimizing different snakes concurrently.
+ * 
+ * @author agent
+ */
+public class MTBSnakeOverlapTiles {
+
+	/**
+	 * Width of the image domain.
+	 */
+	private final int width;
+
+	/**
+	 * Height of the image domain.
+	 */
+	private final int height;
+
+	/**
+	 * Pixel spans per snake, null entries refer to snakes not contributing.
+	 */
+	private final PixelSpans[] tiles;
+
+	/**
+	 * Bounding boxes of the tiles, each given by minimal x, minimal y, 
+	 * maximal x and maximal y.
+	 */
+	private final int[][] boxes;
+
+	/**
+	 * Full-frame overlap mask, created on first request.
+	 */
+	private int[][] overlapMask = null;
+
+	/**
+	 * Pixels covered by any snake as spans per row, created on first request.
+	 */
+	private int[][] coveredSpans = null;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param w			Width of the image domain.
+	 * @param h			Height of the image domain.
+	 * @param spans	Pixel spans per snake, clipped to the image domain, 
+	 * 							entries may be null.
+	 */
+	public MTBSnakeOverlapTiles(int w, int h, PixelSpans[] spans) {
+		this.width = w;
+		this.height = h;
+		this.tiles = spans.clone();
+		this.boxes = new int[this.tiles.length][];
+		for (int n = 0; n < this.tiles.length; ++n) {
+			PixelSpans s = this.tiles[n];
+			if (s == null)
+				continue;
+			int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+			int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+			for (int y = s.getFirstRow(); y <= s.getLastRow(); ++y) {
+				int[] row = s.getSpans(y);
+				if (row.length == 0)
+					continue;
+				minX = Math.min(minX, row[0]);
+				maxX = Math.max(maxX, row[row.length - 1]);
+				minY = Math.min(minY, y);
+				maxY = y;
+			}
+			// tiles without any pixel are ignored
+			if (minX > maxX) {
+				this.tiles[n] = null;
+				continue;
+			}
+			this.boxes[n] = new int[]{minX, minY, maxX, maxY};
+		}
+	}
+
+	/**
+	 * Get width of the image domain.
+	 * @return	Width.
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/**
+	 * Get height of the image domain.
+	 * @return	Height.
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Get number of tiles, i.e., snakes.
+	 * @return	Number of tiles including empty ones.
+	 */
+	public int getTileNum() {
+		return this.tiles.length;
+	}
+
+	/**
+	 * Get pixel spans of a snake.
+	 * @param n	Index of snake.
+	 * @return	Pixel spans, null if the snake does not cover any pixel.
+	 */
+	public PixelSpans getTile(int n) {
+		return this.tiles[n];
+	}
+
+	/**
+	 * Get bounding box of a tile.
+	 * @param n	Index of snake.
+	 * @return	Minimal x, minimal y, maximal x and maximal y, null if empty.
+	 */
+	public int[] getBoundingBox(int n) {
+		return (this.boxes[n] == null) ? null : this.boxes[n].clone();
+	}
+
+	/**
+	 * Counts the snakes covering the given pixel.
+	 * @param x	x-coordinate of pixel.
+	 * @param y	y-coordinate of pixel.
+	 * @return	Number of snakes, zero for pixels outside of the image.
+	 */
+	public int getOverlapCount(int x, int y) {
+		int count = 0;
+		for (int n = 0; n < this.tiles.length; ++n) {
+			int[] box = this.boxes[n];
+			if (   box == null 
+					|| x < box[0] || y < box[1] || x > box[2] || y > box[3])
+				continue;
+			if (this.tiles[n].contains(x, y))
+				++count;
+		}
+		return count;
+	}
+
+	/**
+	 * Get full-frame overlap mask.
+	 * <p>
+	 * The mask is created on first request. It must not be modified as it is
+	 * shared by all callers.
+	 * 
+	 * @return	Mask with the number of covering snakes per pixel, indexed 
+	 * 					as [y][x].
+	 */
+	public synchronized int[][] getOverlapMask() {
+		if (this.overlapMask == null) {
+			int[][] mask = new int[this.height][this.width];
+			for (PixelSpans s : this.tiles) {
+				if (s == null)
+					continue;
+				for (int y = s.getFirstRow(); y <= s.getLastRow(); ++y) {
+					int[] row = s.getSpans(y);
+					int[] maskRow = mask[y];
+					for (int k = 0; k < row.length; k += 2)
+						for (int x = row[k]; x <= row[k+1]; ++x)
+							maskRow[x]++;
+				}
+			}
+			this.overlapMask = mask;
+		}
+		return this.overlapMask;
+	}
+
+	/**
+	 * Get the pixels covered by at least one snake as spans per row.
+	 * <p>
+	 * The spans of all tiles are merged, hence, the effort is proportional 
+	 * to the number of spans rather than the size of the image. The result 
+	 * is created on first request and must not be modified as it is shared 
+	 * by all callers.
+	 * 
+	 * @return	Array indexed by row, each entry contains start and end 
+	 * 					x-coordinates of disjoint spans in ascending order, rows not
+	 * 					covered by any snake refer to empty arrays.
+	 */
+	public synchronized int[][] getCoveredSpans() {
+		if (this.coveredSpans == null)
+			this.coveredSpans = PixelSpans.union(this.tiles, this.height);
+		return this.coveredSpans;
+	}
+}
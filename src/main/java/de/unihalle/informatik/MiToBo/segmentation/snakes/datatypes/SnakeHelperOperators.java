@@ -24,10 +24,6 @@
 
 package de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes;
 
-import ij.ImagePlus;
-import ij.gui.NewImage;
-import ij.process.ImageProcessor;
-import java.awt.Polygon;
 import java.awt.geom.*;
 import java.util.Vector;
 
@@ -152,25 +148,13 @@ class SnakeHelperOperators {
 				yps[n] = (int) (p.y * scaleFactor + 0.5);
 				n++;
 			}
-			Polygon awtPoly = new Polygon(xps, yps, this.inSnake.getPointNum());
-
-			// plot filled polygon in black on white background
-			ImagePlus img = 
-				NewImage.createByteImage("", this.maskWidth + this.xOffset, 
-						this.maskHeight + this.yOffset, 1, 
-						NewImage.FILL_WHITE);
-			ImageProcessor ip = img.getProcessor();
-			ip.fillPolygon(awtPoly);
-
-			// copy image data to mask
+			// rasterize polygon, the window of the mask is given by the offsets
+			MTBPolygon2D.PixelSpans spans = MTBPolygon2D.rasterize(xps, yps, n,
+					this.xOffset, this.yOffset, 
+					this.xOffset + this.maskWidth - 1, 
+					this.yOffset + this.maskHeight - 1, false);
 			this.outMask = new int[this.maskHeight][this.maskWidth];
-			for (int y = 0; y < this.maskHeight; ++y) {
-				for (int x = 0; x < this.maskWidth; ++x) {
-					if (ip.getPixel(x+this.xOffset, y+this.yOffset) == 0)
-						// polygon inner area
-						this.outMask[y][x] = 1;
-				}
-			}
+			spans.fillMask(this.outMask, this.xOffset, this.yOffset, 1);
 		}
 
 		/**
@@ -32,8 +32,10 @@ import Jama.Matrix;
 import de.unihalle.informatik.Alida.annotations.ALDDerivedClass;
 import de.unihalle.informatik.Alida.annotations.ALDParametrizedClass;
 import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2D.PixelSpans;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2DSet;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage;
+import de.unihalle.informatik.MiToBo.math.linearalgebra.MTBCyclicBandMatrix;
 import de.unihalle.informatik.MiToBo.segmentation.activecontours.energies.MTBActiveContourEnergy_CVRegionFit;
 import de.unihalle.informatik.MiToBo.segmentation.activecontours.exceptions.*;
 import de.unihalle.informatik.MiToBo.segmentation.activecontours.exceptions.MTBActiveContourException.ExceptionType;
@@ -79,6 +81,18 @@ import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.SnakeOptimizer
  * Vector-Valued Images</i>, Journal of Visual Communications and Image
  * Representation, vol. 11, pp. 130-141, 2000.
  * </ul>
+ * Region statistics and energy values are not computed by scanning the 
+ * whole image. Instead cumulative row sums of the image intensities are 
+ * precomputed once, and sums over the snake interior are obtained by 
+ * evaluating them at the boundaries of the pixel spans of the snake, i.e., 
+ * a discrete version of a line integral along the contour according to 
+ * Green's theorem. Excluded pixels are masked out in the precomputed sums 
+ * which are only updated if the exclude mask changes. In joint 
+ * optimization the pixels covered by other snakes are subtracted by 
+ * evaluating the precomputed sums on the merged pixel spans of all snakes 
+ * as provided by {@link SnakeOptimizerCoupled#getCurrentCoveredSpans()}. 
+ * Thus, the costs per iteration are proportional to the size of the 
+ * contours rather than the image.
  * 
  * @see MTBActiveContourEnergy_CVRegionFit
  * @author moeller
@@ -87,8 +101,8 @@ import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.SnakeOptimizer
 @ALDParametrizedClass
 public class MTBSnakeEnergyCD_CVRegionFit 
 	extends MTBActiveContourEnergy_CVRegionFit 
-		implements MTBSnakeEnergyDerivable, MTBSnakeEnergyComputable,
-			MTBSnakeEnergyCoupled {
+		implements MTBSnakeEnergyDerivableBlockBanded, MTBSnakeEnergyComputable,
+			MTBSnakeEnergyCoupled, MTBSnakeEnergyCloneable {
 
 	/**
 	 * Interval boundaries of adapted energy interval.
@@ -141,9 +155,58 @@ public class MTBSnakeEnergyCD_CVRegionFit
 	private transient SnakeOptimizerCoupled cSnakeOpt = null;
 	
 	/**
-	 * Current overlap mask for joint optimization of multiple snakes.
+	 * Pixels covered by any snake as spans per row for joint optimization 
+	 * of multiple snakes.
 	 */
-	private int[][] overlapMask;
+	private transient int[][] coveredSpans = null;
+
+	/**
+	 * Normalized image and cumulative sums shared with all clones.
+	 */
+	private transient SharedImageData shared = new SharedImageData();
+
+	/**
+	 * Cumulative row sums over all pixels not excluded.
+	 */
+	private transient CumulativeRowSums validSums = null;
+
+	/**
+	 * Cumulative row sums over all pixels, only used for the background 
+	 * energy in joint optimization of multiple snakes.
+	 */
+	private transient CumulativeRowSums allSums = null;
+
+	/**
+	 * Intensity sums over all pixels not excluded, but covered by any snake.
+	 * <p>
+	 * The array contains the pixel count, the intensity sums per channel and
+	 * the sums of squared intensities per channel. It refers to 
+	 * {@link #coveredTotalsSpans} and {@link #coveredTotalsSums}.
+	 */
+	private transient double[] coveredTotals = null;
+
+	/**
+	 * Covered spans the covered totals refer to.
+	 */
+	private transient int[][] coveredTotalsSpans = null;
+
+	/**
+	 * Cumulative sums the covered totals refer to.
+	 */
+	private transient CumulativeRowSums coveredTotalsSums = null;
+
+	/**
+	 * Intensity sums over all pixels not covered by any snake.
+	 * <p>
+	 * The array is only used for the energy in joint optimization and 
+	 * refers to {@link #backgroundSpans}.
+	 */
+	private transient double[] backgroundTotals = null;
+
+	/**
+	 * Covered spans the background totals refer to.
+	 */
+	private transient int[][] backgroundSpans = null;
 	
 	/**
 	 * Default constructor.
@@ -166,6 +229,30 @@ public class MTBSnakeEnergyCD_CVRegionFit
   	super(im, lin, lout);
   }
   
+	/**
+	 * Clones this object.
+	 * <p>
+	 * Image and precomputed cumulative sums are shared with the clone as 
+	 * they are never modified, region statistics of the current snake are
+	 * not copied. If the clone is initialized for the same input image, 
+	 * it reuses the normalized image and the sums of this object instead 
+	 * of computing its own copies.
+	 */
+	/* (non-Javadoc)
+	 * @see java.lang.Object#clone()
+	 */
+	@Override
+	public MTBSnakeEnergyCD_CVRegionFit clone() 
+		throws CloneNotSupportedException {
+		MTBSnakeEnergyCD_CVRegionFit newObj = 
+			(MTBSnakeEnergyCD_CVRegionFit)super.clone();
+		newObj.energyRange = this.energyRange.clone();
+		newObj.currentSnk = null;
+		newObj.areas = null;
+		newObj.means = null;
+		return newObj;
+	}
+
 	@SuppressWarnings("unused")
   @Override
   public boolean initEnergy(SnakeOptimizerCoupled opt) 
@@ -177,14 +264,10 @@ public class MTBSnakeEnergyCD_CVRegionFit
 	@Override
   public boolean initEnergy(SnakeOptimizerSingle opt) 
 		throws MTBSnakeException {
-		if (this.inImg == null) {
-			// get normalized (!) image from snake optimizer
-			this.inImg = opt.getWorkingImage();
-		}
-		else {
-			// make sure that the input image intensities are normalized
-			this.inImg = opt.normalizeInputImage(this.inImg);
-		}
+		if (this.shared == null)
+			this.shared = new SharedImageData();
+		// get normalized (!) image, clones share a single copy
+		this.inImg = this.shared.getNormalizedImage(this.inImg, opt);
 		try {
 	    super.init();
     } catch (MTBActiveContourException e) {
@@ -195,6 +278,11 @@ public class MTBSnakeEnergyCD_CVRegionFit
   	this.iWidth = this.inImg.getSizeX();
   	this.iHeight = this.inImg.getSizeY();
   	this.normMode = opt.getNormalizationMode();
+  	// sums of the shared data are fetched again on next update
+  	this.validSums = null;
+  	this.allSums = null;
+  	this.coveredTotalsSums = null;
+  	this.backgroundTotals = null;
 		// get energy minimum and maximum; minimum of Chan-Vese energy is 
   	// always smaller than zero and maximum always larger
 		double eMin = this.getEnergyDerivativeMinVal();
@@ -213,7 +301,7 @@ public class MTBSnakeEnergyCD_CVRegionFit
 	
   @Override
   public void updateStatus(SnakeOptimizerCoupled opt) {
-  	this.overlapMask = opt.getCurrentOverlapMask();
+  	this.coveredSpans = opt.getCurrentCoveredSpans();
 	}
 	
 	@Override
@@ -226,51 +314,95 @@ public class MTBSnakeEnergyCD_CVRegionFit
 		if (   this.cSnakeOpt != null 
 				&& opt instanceof SnakeOptimizerSingleGreedy) {
 			this.cSnakeOpt.updateOverlapMask();
-			this.overlapMask = this.cSnakeOpt.getCurrentOverlapMask();
+			this.coveredSpans = this.cSnakeOpt.getCurrentCoveredSpans();
 		}
 		this.currentSnk = opt.getCurrentSnake();
 		this.excludeMask = opt.getExcludeMask();
-		// set excluded pixels invalid - if there are some...
-    boolean [][] vMask = new boolean[this.iHeight][this.iWidth];
-    if (this.excludeMask != null) {
-    	for (int y=0;y<this.iHeight;++y) {
-    		for (int x=0;x<this.iWidth;++x) {
-    			vMask[y][x] = !this.excludeMask[y][x];
-    		}
-    	}
-    }
-    else {
-    	// all pixels are valid, non is excluded
-    	for (int y=0;y<this.iHeight;++y) {
-    		for (int x=0;x<this.iWidth;++x) {
-    			vMask[y][x] = true;
-    		}
-    	}    	
-    }
-		// fetch current overlap mask
-    if (this.overlapMask != null) {
-    	int[][] snakeMask = this.currentSnk.getBinaryMask(
-    		opt.getWorkingImage().getSizeX(),	
-    			opt.getWorkingImage().getSizeY());	    
-    	for (int y=0;y<this.iHeight;++y) {
-    		for (int x=0;x<this.iWidth;++x) {
-    			if (snakeMask[y][x] == 0 && this.overlapMask[y][x] != 0)
-    				vMask[y][x] = false;
-    		}
-    	}
-    }
-		this.currentSnk.setVisibilityMask(vMask, 0, 0, 
-			this.iWidth-1, this.iHeight-1);
-		try {
-			// do the actual update
-	    this.updateParameters(this.currentSnk);
-    } catch (MTBActiveContourException e) {
-    	throw new MTBSnakeException(ExceptionType.INITIALIZATION_ERROR,
-    		"MTBSnakeEnergyCD_CVRegionFit - " +
-    			"update failed! Reason: " + e.getCommentString());
-    }
+		// update precomputed sums if exclude mask changed
+		this.updateCumulativeSums();
+		// inner pixels are always visible if not excluded, outer pixels only 
+		// if they do not belong to any other snake
+		PixelSpans spans = 
+			this.currentSnk.getScaledPixelSpans(this.iWidth, this.iHeight);
+		double[] inStats = this.validSums.sumOverSpans(spans);
+		double[] outStats = this.sumOverFreeComplement(spans);
+		int labelIn = this.currentSnk.getInsideLabel();
+		this.areas = new int[2];
+		this.means = new double[this.iChannels][2];
+		this.setRegionStatistics(labelIn, inStats);
+		this.setRegionStatistics(1 - labelIn, outStats);
 	}
-	
+
+	/**
+	 * (Re-)computes cumulative row sums if the exclude mask has changed.
+	 * <p>
+	 * The sums over pixels covered by snakes are updated if the covered 
+	 * spans changed, which requires time proportional to the number of 
+	 * pixel spans of all snakes only.
+	 */
+	private void updateCumulativeSums() {
+		if (   this.validSums == null 
+				|| this.validSums.excluded != this.excludeMask)
+			this.validSums = this.shared.getValidSums(this.excludeMask);
+		if (   this.coveredSpans != null 
+				&& (   this.coveredTotalsSpans != this.coveredSpans 
+						|| this.coveredTotalsSums != this.validSums)) {
+			this.coveredTotals = this.validSums.sumOverRows(this.coveredSpans);
+			this.coveredTotalsSpans = this.coveredSpans;
+			this.coveredTotalsSums = this.validSums;
+		}
+	}
+
+	/**
+	 * Sums up pixels outside of the given spans which are neither excluded 
+	 * nor covered by any snake.
+	 * <p>
+	 * Pixels covered by the union of the spans and the covered spans of all
+	 * snakes are subtracted from the totals, pixels in their intersection 
+	 * are only subtracted once.
+	 * 
+	 * @param spans	Pixel spans.
+	 * @return	Pixel count, intensity sums and squared intensity sums.
+	 */
+	private double[] sumOverFreeComplement(PixelSpans spans) {
+		double[] result = this.validSums.sumOverComplement(spans);
+		if (this.coveredSpans == null)
+			return result;
+		double[] shared = 
+			this.validSums.sumOverIntersection(spans, this.coveredSpans);
+		for (int i = 0; i < result.length; ++i)
+			result[i] += shared[i] - this.coveredTotals[i];
+		return result;
+	}
+
+	/**
+	 * Sets size and mean values of a region from accumulated sums.
+	 * @param label	Label of the region.
+	 * @param stats	Pixel count, followed by intensity sums per channel.
+	 */
+	private void setRegionStatistics(int label, double[] stats) {
+		this.areas[label] = (int)stats[0];
+		for (int c = 0; c < this.iChannels; ++c)
+			this.means[c][label] = (stats[0] > 0) ? stats[1 + c] / stats[0] : 0;
+	}
+
+	/**
+	 * Computes the sum of squared deviations from the given means.
+	 * 
+	 * @param stats	Pixel count, intensity sums and squared intensity sums.
+	 * @param label	Label of the region the means refer to.
+	 * @return	Sum of squared deviations per channel.
+	 */
+	private double[] squaredDeviations(double[] stats, int label) {
+		double[] dev = new double[this.iChannels];
+		for (int c = 0; c < this.iChannels; ++c) {
+			double m = this.means[c][label];
+			dev[c] = stats[1 + this.iChannels + c] - 2 * m * stats[1 + c] 
+				+ stats[0] * m * m;
+		}
+		return dev;
+	}
+
 	/**
    * Updates the fitting term based on new region average values.
    */
@@ -279,69 +411,71 @@ public class MTBSnakeEnergyCD_CVRegionFit
   		SnakeOptimizerSingleVarCalc opt) {
 		
 		int snakePointNum = this.currentSnk.getPointNum();
-		Vector<Point2D.Double> polyPoints = this.currentSnk.getPoints();
+		double[] tau = this.getNormalizedDerivatives();
 		
 		Matrix A = new Matrix(snakePointNum * 2, snakePointNum * 2);
-		for (int counter = 0; counter < snakePointNum - 1; ++counter) {
+		for (int counter = 0; counter < snakePointNum; ++counter) {
+			// successor of last point is the first one
+			int next = (counter + 1) % snakePointNum;
+			// fill matrix - upper right block
+			A.set(counter, snakePointNum + counter, - tau[counter]);
+			A.set(counter, snakePointNum + next, tau[counter]);
+			// fill matrix - lower left block
+			A.set(snakePointNum + counter, counter, tau[counter]);
+			A.set(snakePointNum + counter, next, - tau[counter]);
+		}
+		return A;
+	}
+
+	@Override
+	public int getDerivative_MatrixPartBlockBandwidth() {
+		return 1;
+	}
+
+	@Override
+	public void addDerivative_MatrixPart(SnakeOptimizerSingleVarCalc opt,
+			MTBCyclicBandMatrix[][] blocks, double weight) {
+		double[] tau = this.getNormalizedDerivatives();
+		for (int counter = 0; counter < tau.length; ++counter) {
+			double t = weight * tau[counter];
+			blocks[0][1].add(counter, counter, -t);
+			blocks[0][1].add(counter, counter + 1, t);
+			blocks[1][0].add(counter, counter, t);
+			blocks[1][0].add(counter, counter + 1, -t);
+		}
+	}
+
+	/**
+	 * Calculates the normalized derivative values at all snake points.
+	 * <p>
+	 * The values form the entries of the matrix part of the energy.
+	 * 
+	 * @return	Derivative value for each snake point.
+	 */
+	private double[] getNormalizedDerivatives() {
+		int snakePointNum = this.currentSnk.getPointNum();
+		Vector<Point2D.Double> polyPoints = this.currentSnk.getPoints();
+		double[] tau = new double[snakePointNum];
+		for (int counter = 0; counter < snakePointNum; ++counter) {
 			Point2D.Double p = polyPoints.get(counter);
-			double eDerive = 0.0;
 			int px = (int)(p.x*this.scaleFactor);
 			int py = (int)(p.y*this.scaleFactor);
-			eDerive = this.getDerivative(this.currentSnk, px, py, 0);
-			double tau_i = 0.0;
+			double eDerive = this.getDerivative(this.currentSnk, px, py, 0);
 			switch(this.normMode)
 			{
 			case NORM_BALANCED_DERIVATIVES:
 				// calculate normalized final derivative value
-				tau_i = (eDerive - this.energyRange[0])/this.energyRange[2]                                              
+				tau[counter] = (eDerive - this.energyRange[0])/this.energyRange[2]
 						* MTBSnakeEnergyDerivable.targetEnergyRange[2] 
 								+ MTBSnakeEnergyDerivable.targetEnergyRange[0];
 				break;
 			case NORM_NONE:
 			default:
-				tau_i = eDerive;
+				tau[counter] = eDerive;
 				break;
 			}
-//			double oldVal= A.get(counter, snakePointNum + counter);
-			A.set(counter, snakePointNum + counter, - tau_i);
-//			oldVal= A.get(counter, snakePointNum + counter + 1);
-			A.set(counter, snakePointNum + counter + 1, tau_i);
-//			oldVal= A.get(snakePointNum + counter, counter);
-			A.set(snakePointNum + counter, counter, tau_i);
-//			oldVal= A.get(snakePointNum + counter, counter + 1);
-			A.set(snakePointNum + counter, counter + 1, - tau_i);
-		}
-		// add last point
-		Point2D.Double p = polyPoints.get(snakePointNum - 1);
-		double eDerive = 0.0;
-		int px = (int)(p.x*this.scaleFactor);
-		int py = (int)(p.y*this.scaleFactor);
-		eDerive = this.getDerivative(this.currentSnk, px, py, 0);
-		double tau_i = 0.0;
-		switch(this.normMode)
-		{
-		case NORM_BALANCED_DERIVATIVES:
-			// calculate normalized final derivative value
-			tau_i = (eDerive - this.energyRange[0])/this.energyRange[2]                                              
-					* MTBSnakeEnergyDerivable.targetEnergyRange[2] 
-							+ MTBSnakeEnergyDerivable.targetEnergyRange[0];
-			break;
-		case NORM_NONE:
-		default:
-			tau_i = eDerive;
-			break;
 		}
-		// fill matrix - upper right block
-//		double oldVal = A.get(snakePointNum - 1, snakePointNum);
-		A.set(snakePointNum - 1, snakePointNum, tau_i);
-//		oldVal = A.get(snakePointNum - 1, snakePointNum * 2 - 1);
-		A.set(snakePointNum - 1, snakePointNum * 2 - 1, - tau_i);
-		// fill matrix - lower left block
-//		oldVal = A.get(2 * snakePointNum - 1, 0);
-		A.set(2 * snakePointNum - 1, 0, - tau_i);
-//		oldVal = A.get(2 * snakePointNum - 1, snakePointNum - 1);
-		A.set(2 * snakePointNum - 1, snakePointNum - 1, tau_i);
-		return A;
+		return tau;
 	}
 
 	@Override
@@ -352,33 +486,60 @@ public class MTBSnakeEnergyCD_CVRegionFit
 
   @Override
   public double calcEnergy(SnakeOptimizerSingle opt) {
+  	this.updateCumulativeSums();
   	// distinguish between single snake and joint optimization of many 
   	// snakes
   	if (this.cSnakeOpt == null) {
   		// get current snake
   		MTBSnake snake= opt.getCurrentSnake();
+  		PixelSpans spans = snake.getScaledPixelSpans(this.iWidth, this.iHeight);
+  		int labelIn = snake.getInsideLabel();
+  		double[][] dev = new double[2][];
+  		dev[labelIn] = this.squaredDeviations(
+  			this.validSums.sumOverSpans(spans), labelIn);
+  		dev[1 - labelIn] = this.squaredDeviations(
+  			this.validSums.sumOverComplement(spans), 1 - labelIn);
   		// calculate energy
-  		return super.calcEnergy(snake);
+  		double regionHomoTerm = 0.0;
+  		for (int c = 0; c < this.iChannels; ++c) {
+  			regionHomoTerm += this.lambda_out[c] * dev[0][c];
+  			regionHomoTerm += this.lambda_in[c] * dev[1][c];
+  		}
+  		return 1.0/this.iChannels * regionHomoTerm;
   	}
   	double inEnergy = 0.0;
   	// calculate energy fractions added by snake interiors
   	int snakeNum = this.cSnakeOpt.getSnakeNumber();
   	MTBPolygon2DSet snakes = this.cSnakeOpt.getCurrentSnakes();
   	for (int i=0; i<snakeNum; ++i) {
-  		inEnergy += 
-  			super.calcInteriorEnergy((MTBSnake)snakes.elementAt(i));
+  		MTBSnake snake = (MTBSnake)snakes.elementAt(i);
+  		PixelSpans spans = snake.getScaledPixelSpans(this.iWidth, this.iHeight);
+  		double[] stats = (snake.getInsideLabel() == 1) ? 
+  			this.validSums.sumOverSpans(spans) : 
+  			this.sumOverFreeComplement(spans);
+  		double[] dev = this.squaredDeviations(stats, 1);
+  		double regionHomoTerm = 0.0;
+  		for (int c = 0; c < this.iChannels; ++c)
+  			regionHomoTerm += this.lambda_in[c] * dev[c];
+  		inEnergy += 1.0/this.iChannels * regionHomoTerm;
+  	}
+  	// sums over background are shared by all snakes
+  	if (this.allSums == null)
+  		this.allSums = this.shared.getAllSums();
+  	if (   this.backgroundTotals == null 
+  			|| this.backgroundSpans != this.coveredSpans) {
+  		this.backgroundTotals = this.allSums.totals.clone();
+  		if (this.coveredSpans != null) {
+  			double[] covered = this.allSums.sumOverRows(this.coveredSpans);
+  			for (int i = 0; i < covered.length; ++i)
+  				this.backgroundTotals[i] -= covered[i];
+  		}
+  		this.backgroundSpans = this.coveredSpans;
   	}
 		double outEnergy = 0;
+		double[] dev = this.squaredDeviations(this.backgroundTotals, 0);
   	for (int c=0; c<this.iChannels; ++c) {
-  		for (int y=0; y<this.iHeight; ++y) {
-  			for (int x=0; x<this.iWidth; ++x) {
-		  		if (this.overlapMask[y][x] == 0) {
-		  			outEnergy += 
-	  					(this.inImg.getValueInt(x, y, 0, 0, c) - this.means[c][0])
-	  				* (this.inImg.getValueInt(x, y, 0, 0, c) - this.means[c][0]);
-		  		}
-				}
-			}
+  		outEnergy += dev[c];
 		}
 		return this.lambda_out[0] * outEnergy + inEnergy;
   }
@@ -420,4 +581,271 @@ public class MTBSnakeEnergyCD_CVRegionFit
   public  boolean requiresOverlapMask() {
 		return true;
 	}
+
+	/**
+	 * Normalized input image and cumulative sums shared by an energy and 
+	 * all its clones.
+	 * <p>
+	 * In joint optimization of multiple snakes each snake gets its own 
+	 * clone of the energy. As the data only depends on the input image and 
+	 * the exclude mask, it is computed once for all clones.
+	 */
+	private static class SharedImageData {
+
+		/**
+		 * Image the normalized image was derived from, may be null.
+		 */
+		private MTBImage source = null;
+
+		/**
+		 * Normalized image.
+		 */
+		private MTBImage image = null;
+
+		/**
+		 * Cumulative row sums over all pixels not excluded.
+		 */
+		private CumulativeRowSums validSums = null;
+
+		/**
+		 * Cumulative row sums over all pixels.
+		 */
+		private CumulativeRowSums allSums = null;
+
+		/**
+		 * Get the normalized image for the given input image.
+		 * <p>
+		 * If the image differs from the one of the previous call, it is 
+		 * normalized again and all sums are discarded.
+		 * 
+		 * @param src		Input image, if null the working image is used.
+		 * @param opt		Snake optimizer providing the normalization.
+		 * @return	Normalized image.
+		 */
+		protected synchronized MTBImage getNormalizedImage(MTBImage src,
+				SnakeOptimizerSingle opt) {
+			if (this.image == null || this.source != src) {
+				this.source = src;
+				if (src == null)
+					// image of the optimizer is already normalized
+					this.image = opt.getWorkingImage();
+				else
+					this.image = opt.normalizeInputImage(src);
+				this.validSums = null;
+				this.allSums = null;
+			}
+			return this.image;
+		}
+
+		/**
+		 * Get sums over all pixels not excluded by the given mask.
+		 * @param exclude		Excluded pixels, may be null.
+		 * @return	Cumulative row sums.
+		 */
+		protected synchronized CumulativeRowSums getValidSums(
+				boolean[][] exclude) {
+			if (this.validSums == null || this.validSums.excluded != exclude)
+				this.validSums = new CumulativeRowSums(this.image, exclude);
+			return this.validSums;
+		}
+
+		/**
+		 * Get sums over all pixels.
+		 * @return	Cumulative row sums.
+		 */
+		protected synchronized CumulativeRowSums getAllSums() {
+			if (this.allSums == null)
+				this.allSums = new CumulativeRowSums(this.image, null);
+			return this.allSums;
+		}
+	}
+
+	/**
+	 * Cumulative row sums of image intensities over a subset of pixels.
+	 * <p>
+	 * For each row y and column x the number of pixels, the sum of 
+	 * intensities and the sum of squared intensities of all pixels in row y 
+	 * left of x are stored. Hence, sums over a span of pixels in a row are 
+	 * obtained from two look-ups. Pixels which are excluded according to 
+	 * the given mask do not contribute. Intensities are 
+	 * accessed as integer values like in the segmentation statistics 
+	 * operator used by the super class.
+	 */
+	private static class CumulativeRowSums {
+
+		/**
+		 * Exclude mask the sums refer to, may be null.
+		 */
+		protected final boolean[][] excluded;
+
+		/**
+		 * Width of the image.
+		 */
+		private final int width;
+
+		/**
+		 * Number of channels.
+		 */
+		private final int channels;
+
+		/**
+		 * Cumulative pixel counts, indexed by y*(width+1)+x.
+		 */
+		private final int[] counts;
+
+		/**
+		 * Cumulative intensity sums per channel.
+		 */
+		private final double[][] sums;
+
+		/**
+		 * Cumulative sums of squared intensities per channel.
+		 */
+		private final double[][] sumsSq;
+
+		/**
+		 * Total pixel count, intensity sums and squared sums.
+		 */
+		protected final double[] totals;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param img				Image to process.
+		 * @param exclude		Excluded pixels, may be null.
+		 */
+		protected CumulativeRowSums(MTBImage img, boolean[][] exclude) {
+			this.excluded = exclude;
+			this.width = img.getSizeX();
+			int height = img.getSizeY();
+			this.channels = img.getSizeC();
+			int rowLength = this.width + 1;
+			this.counts = new int[rowLength * height];
+			this.sums = new double[this.channels][rowLength * height];
+			this.sumsSq = new double[this.channels][rowLength * height];
+			for (int y = 0; y < height; ++y) {
+				int base = y * rowLength;
+				for (int x = 0; x < this.width; ++x) {
+					boolean use = (exclude == null || !exclude[y][x]);
+					this.counts[base + x + 1] = this.counts[base + x] + (use ? 1 : 0);
+				}
+			}
+			for (int c = 0; c < this.channels; ++c) {
+				double[] s = this.sums[c], sq = this.sumsSq[c];
+				for (int y = 0; y < height; ++y) {
+					int base = y * rowLength;
+					for (int x = 0; x < this.width; ++x) {
+						double v = 0;
+						if (this.counts[base + x + 1] != this.counts[base + x])
+							v = img.getValueInt(x, y, 0, 0, c);
+						s[base + x + 1] = s[base + x] + v;
+						sq[base + x + 1] = sq[base + x] + v * v;
+					}
+				}
+			}
+			this.totals = new double[1 + 2 * this.channels];
+			for (int y = 0; y < height; ++y) {
+				int end = y * rowLength + this.width;
+				this.totals[0] += this.counts[end];
+				for (int c = 0; c < this.channels; ++c) {
+					this.totals[1 + c] += this.sums[c][end];
+					this.totals[1 + this.channels + c] += this.sumsSq[c][end];
+				}
+			}
+		}
+
+		/**
+		 * Sums up pixels covered by the given spans.
+		 * <p>
+		 * The spans have to be clipped to the image domain.
+		 * 
+		 * @param spans	Pixel spans.
+		 * @return	Pixel count, intensity sums and squared intensity sums.
+		 */
+		protected double[] sumOverSpans(PixelSpans spans) {
+			double[] result = new double[1 + 2 * this.channels];
+			for (int y = spans.getFirstRow(); y <= spans.getLastRow(); ++y) {
+				int[] row = spans.getSpans(y);
+				for (int k = 0; k < row.length; k += 2)
+					this.addSpan(y, row[k], row[k+1], result);
+			}
+			return result;
+		}
+
+		/**
+		 * Sums up pixels covered by the given spans per row.
+		 * 
+		 * @param rows	Start and end x-coordinates of spans indexed by row.
+		 * @return	Pixel count, intensity sums and squared intensity sums.
+		 */
+		protected double[] sumOverRows(int[][] rows) {
+			double[] result = new double[1 + 2 * this.channels];
+			for (int y = 0; y < rows.length; ++y) {
+				int[] row = rows[y];
+				for (int k = 0; k < row.length; k += 2)
+					this.addSpan(y, row[k], row[k+1], result);
+			}
+			return result;
+		}
+
+		/**
+		 * Sums up pixels covered by the given spans as well as by the spans
+		 * per row.
+		 * <p>
+		 * The spans in each row have to be disjoint and sorted.
+		 * 
+		 * @param spans	Pixel spans.
+		 * @param rows	Start and end x-coordinates of spans indexed by row.
+		 * @return	Pixel count, intensity sums and squared intensity sums.
+		 */
+		protected double[] sumOverIntersection(PixelSpans spans, int[][] rows) {
+			double[] result = new double[1 + 2 * this.channels];
+			for (int y = spans.getFirstRow(); y <= spans.getLastRow(); ++y) {
+				int[] a = spans.getSpans(y), b = rows[y];
+				int i = 0, j = 0;
+				while (i < a.length && j < b.length) {
+					int start = Math.max(a[i], b[j]), end = Math.min(a[i+1], b[j+1]);
+					if (start <= end)
+						this.addSpan(y, start, end, result);
+					if (a[i+1] < b[j+1])
+						i += 2;
+					else
+						j += 2;
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Adds the sums over a single span to the given result array.
+		 * 
+		 * @param y				Row of the span.
+		 * @param start		First x-coordinate of the span.
+		 * @param end			Last x-coordinate of the span.
+		 * @param result	Pixel count, intensity sums and squared intensity sums.
+		 */
+		private void addSpan(int y, int start, int end, double[] result) {
+			int base = y * (this.width + 1);
+			int first = base + start, last = base + end + 1;
+			result[0] += this.counts[last] - this.counts[first];
+			for (int c = 0; c < this.channels; ++c) {
+				result[1 + c] += this.sums[c][last] - this.sums[c][first];
+				result[1 + this.channels + c] += 
+					this.sumsSq[c][last] - this.sumsSq[c][first];
+			}
+		}
+
+		/**
+		 * Sums up pixels not covered by the given spans.
+		 * 
+		 * @param spans	Pixel spans.
+		 * @return	Pixel count, intensity sums and squared intensity sums.
+		 */
+		protected double[] sumOverComplement(PixelSpans spans) {
+			double[] result = this.sumOverSpans(spans);
+			for (int i = 0; i < result.length; ++i)
+				result[i] = this.totals[i] - result[i];
+			return result;
+		}
+	}
 }
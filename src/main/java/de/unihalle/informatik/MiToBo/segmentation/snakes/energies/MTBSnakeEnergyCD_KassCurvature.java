@@ -29,6 +29,7 @@ import de.unihalle.informatik.Alida.annotations.ALDClassParameter;
 import de.unihalle.informatik.Alida.annotations.ALDDerivedClass;
 import de.unihalle.informatik.Alida.annotations.ALDParametrizedClass;
 import de.unihalle.informatik.MiToBo.core.datatypes.defines.MTBConstants;
+import de.unihalle.informatik.MiToBo.math.linearalgebra.MTBCyclicBandMatrix;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes.MTBSnake;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.energies.paramAdapt.*;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.*;
@@ -59,7 +60,8 @@ import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.SnakeOptimizer
 @ALDDerivedClass
 @ALDParametrizedClass
 public class MTBSnakeEnergyCD_KassCurvature 
-	implements MTBSnakeEnergyDerivable, MTBSnakeEnergyComputable {
+	implements MTBSnakeEnergyDerivableBanded, MTBSnakeEnergyComputable,
+		MTBSnakeEnergyCloneable {
 
 	/**
 	 * Weighting factor for the curvature term, should always be > 0.
@@ -358,6 +360,34 @@ public class MTBSnakeEnergyCD_KassCurvature
 		return A;
 	}
 
+	@Override
+	public int getDerivative_MatrixPartBandwidth() {
+		return 2;
+	}
+
+	/**
+	 * Adds the pentadiagonal curvature term to a block of matrix A.
+	 * <p>
+	 * The block is identical for x- and y-coordinates and equal to the upper 
+	 * left block of the matrix returned by 
+	 * {@link #getDerivative_MatrixPart(SnakeOptimizerSingleVarCalc)}.
+	 */
+	@Override
+	public void addDerivative_MatrixPart(SnakeOptimizerSingleVarCalc opt,
+			MTBCyclicBandMatrix block, double weight) {
+		if (this.betas == null)
+			return;
+		double normFac = this.getNormalizationFactor(opt) * weight;
+		int snakePointNum = block.getSize();
+		for (int l = 0; l < snakePointNum; ++l) {
+			block.add(l, l-2,       this.betas[l]*normFac);
+			block.add(l, l-1, - 4 * this.betas[l]*normFac);
+			block.add(l,   l,   6 * this.betas[l]*normFac);
+			block.add(l, l+1, - 4 * this.betas[l]*normFac);
+			block.add(l, l+2,       this.betas[l]*normFac);
+		}
+	}
+
 	private double getNormalizationFactor(SnakeOptimizerSingle opt) {
 		double normFac = 0.0;
 		switch(opt.getNormalizationMode())
@@ -394,6 +424,25 @@ public class MTBSnakeEnergyCD_KassCurvature
 		this.betas = this.pUpdater.betaUpdate(o, this.betas);
 	}
 
+	/**
+	 * Clones this object.
+	 * <p>
+	 * The parameter updater is shared with the clone, the point-specific 
+	 * weights are copied.
+	 */
+	/* (non-Javadoc)
+	 * @see java.lang.Object#clone()
+	 */
+	@Override
+	public MTBSnakeEnergyCD_KassCurvature clone() 
+		throws CloneNotSupportedException {
+		MTBSnakeEnergyCD_KassCurvature newObj = 
+			(MTBSnakeEnergyCD_KassCurvature)super.clone();
+		if (this.betas != null)
+			newObj.betas = this.betas.clone();
+		return newObj;
+	}
+
 	@Override
   public boolean requiresCounterClockwiseContourSorting() {
 		return false;
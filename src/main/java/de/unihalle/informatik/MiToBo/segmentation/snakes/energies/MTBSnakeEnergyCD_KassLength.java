@@ -29,6 +29,7 @@ import de.unihalle.informatik.Alida.annotations.ALDClassParameter;
 import de.unihalle.informatik.Alida.annotations.ALDDerivedClass;
 import de.unihalle.informatik.Alida.annotations.ALDParametrizedClass;
 import de.unihalle.informatik.MiToBo.core.datatypes.defines.MTBConstants;
+import de.unihalle.informatik.MiToBo.math.linearalgebra.MTBCyclicBandMatrix;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes.MTBSnake;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.energies.paramAdapt.*;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.*;
@@ -59,7 +60,8 @@ import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.SnakeOptimizer
 @ALDDerivedClass
 @ALDParametrizedClass
 public class MTBSnakeEnergyCD_KassLength 
-	implements MTBSnakeEnergyDerivable, MTBSnakeEnergyComputable {
+	implements MTBSnakeEnergyDerivableBanded, MTBSnakeEnergyComputable,
+		MTBSnakeEnergyCloneable {
 
 	/**
 	 * Initial weighting factor for the length term, should be > 0.
@@ -327,6 +329,32 @@ public class MTBSnakeEnergyCD_KassLength
 		return A;
 	}
 
+	@Override
+	public int getDerivative_MatrixPartBandwidth() {
+		return 1;
+	}
+
+	/**
+	 * Adds the tridiagonal length term to a block of matrix A.
+	 * <p>
+	 * The block is identical for x- and y-coordinates and equal to the upper 
+	 * left block of the matrix returned by 
+	 * {@link #getDerivative_MatrixPart(SnakeOptimizerSingleVarCalc)}.
+	 */
+	@Override
+	public void addDerivative_MatrixPart(SnakeOptimizerSingleVarCalc opt,
+			MTBCyclicBandMatrix block, double weight) {
+		if (this.alphas == null)
+			return;
+		double normFac = this.getNormalizationFactor(opt) * weight;
+		int snakePointNum = block.getSize();
+		for (int l = 0; l < snakePointNum; ++l) {
+			block.add(l, l-1,    -this.alphas[l]*normFac);
+			block.add(l,   l, 2 * this.alphas[l]*normFac);
+			block.add(l, l+1,    -this.alphas[l]*normFac);
+		}
+	}
+
 	private double getNormalizationFactor(SnakeOptimizerSingle opt) {
 		double normFac = 0.0;
 		switch(opt.getNormalizationMode())
@@ -363,6 +391,25 @@ public class MTBSnakeEnergyCD_KassLength
 		this.alphas = this.pUpdater.alphaUpdate(o, this.alphas);
 	}
 
+	/**
+	 * Clones this object.
+	 * <p>
+	 * The parameter updater is shared with the clone, the point-specific 
+	 * weights are copied.
+	 */
+	/* (non-Javadoc)
+	 * @see java.lang.Object#clone()
+	 */
+	@Override
+	public MTBSnakeEnergyCD_KassLength clone() 
+		throws CloneNotSupportedException {
+		MTBSnakeEnergyCD_KassLength newObj = 
+			(MTBSnakeEnergyCD_KassLength)super.clone();
+		if (this.alphas != null)
+			newObj.alphas = this.alphas.clone();
+		return newObj;
+	}
+
 	@Override
   public boolean requiresCounterClockwiseContourSorting() {
 		return false;
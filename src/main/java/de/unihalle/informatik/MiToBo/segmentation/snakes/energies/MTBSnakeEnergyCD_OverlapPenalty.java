@@ -31,9 +31,12 @@ import Jama.Matrix;
 import de.unihalle.informatik.Alida.annotations.ALDClassParameter;
 import de.unihalle.informatik.Alida.annotations.ALDDerivedClass;
 import de.unihalle.informatik.Alida.annotations.ALDParametrizedClass;
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2D;
 import de.unihalle.informatik.MiToBo.core.datatypes.defines.MTBConstants;
 import de.unihalle.informatik.MiToBo.math.MathX;
+import de.unihalle.informatik.MiToBo.math.linearalgebra.MTBCyclicBandMatrix;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes.MTBSnake;
+import de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes.MTBSnakeOverlapTiles;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.SnakeOptimizerCoupled;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.SnakeOptimizerSingle;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.SnakeOptimizerSingleGreedy;
@@ -65,7 +68,7 @@ import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.SnakeOptimizer
 @ALDDerivedClass
 @ALDParametrizedClass
 public class MTBSnakeEnergyCD_OverlapPenalty 
-	implements MTBSnakeEnergyDerivable, MTBSnakeEnergyComputable, 
+	implements MTBSnakeEnergyDerivableBlockBanded, MTBSnakeEnergyComputable, 
 		MTBSnakeEnergyCoupled {
 
 	/**
@@ -100,9 +103,9 @@ public class MTBSnakeEnergyCD_OverlapPenalty
 	protected double scaleFactor = 1.0;
 
 	/**
-	 * Overlap mask of current snake configuration, updated in each iteration.
+	 * Overlap tiles of current snake configuration, updated in each iteration.
 	 */
-	protected int[][] currentOverlapMask = null;
+	protected MTBSnakeOverlapTiles currentOverlapTiles = null;
 	
 	/**
 	 * Pre-computed factorial values.
@@ -177,7 +180,7 @@ public class MTBSnakeEnergyCD_OverlapPenalty
 
   @Override
   public void updateStatus(SnakeOptimizerCoupled o) {
-  	this.currentOverlapMask = o.getCurrentOverlapMask();
+  	this.currentOverlapTiles = o.getCurrentOverlapTiles();
   }
 
   @Override
@@ -187,7 +190,7 @@ public class MTBSnakeEnergyCD_OverlapPenalty
   	// have to be updated (which would usually happen only once per iteration)
 		if (this.cSnakeOpt != null && o instanceof SnakeOptimizerSingleGreedy) {
 			this.cSnakeOpt.updateOverlapMask();
-			this.currentOverlapMask = this.cSnakeOpt.getCurrentOverlapMask();
+			this.currentOverlapTiles = this.cSnakeOpt.getCurrentOverlapTiles();
 		}
   }
 
@@ -197,50 +200,75 @@ public class MTBSnakeEnergyCD_OverlapPenalty
 	@Override
   public Matrix getDerivative_MatrixPart(SnakeOptimizerSingleVarCalc opt) {
 
+		double[] entries = this.getMatrixEntries(opt);
+		int snakePointNum = entries.length;
+		Matrix A = new Matrix(snakePointNum * 2, snakePointNum * 2);
+    for (int counter = 0; counter < snakePointNum; ++counter) {
+    	// successor of last point is the first one
+    	int next = (counter + 1) % snakePointNum;
+    	A.set(counter, snakePointNum + counter, -entries[counter]);
+    	A.set(counter, snakePointNum + next, entries[counter]);
+    	A.set(snakePointNum + counter, counter, entries[counter]);
+    	A.set(snakePointNum + counter, next, -entries[counter]);
+    }
+    return A;
+	}
+
+	@Override
+	public int getDerivative_MatrixPartBlockBandwidth() {
+		return 1;
+	}
+
+	@Override
+	public void addDerivative_MatrixPart(SnakeOptimizerSingleVarCalc opt,
+			MTBCyclicBandMatrix[][] blocks, double weight) {
+		double[] entries = this.getMatrixEntries(opt);
+		for (int counter = 0; counter < entries.length; ++counter) {
+			double e = weight * entries[counter];
+			blocks[0][1].add(counter, counter, -e);
+			blocks[0][1].add(counter, counter + 1, e);
+			blocks[1][0].add(counter, counter, e);
+			blocks[1][0].add(counter, counter + 1, -e);
+		}
+	}
+
+	/**
+	 * Calculates the matrix entries for all snake points.
+	 * <p>
+	 * The entry of a point is proportional to the number of other snakes 
+	 * in which the point lies. If no overlap data is available, all entries
+	 * are zero.
+	 * 
+	 * @param opt	Calling snake optimizer.
+	 * @return	Matrix entry for each snake point.
+	 */
+	private double[] getMatrixEntries(SnakeOptimizerSingleVarCalc opt) {
 		// get snake data
 		MTBSnake snake = (MTBSnake)opt.getCurrentSnakes().elementAt(0);
     Vector<Point2D.Double> polyPoints = snake.getPoints();
     int snakePointNum = polyPoints.size();
-		Matrix A = new Matrix(snakePointNum * 2, snakePointNum * 2);
+    double[] entries = new double[snakePointNum];
 
-		// if there is no overlap mask available, we can do nothing...
-	  if (this.currentOverlapMask == null) {
-	  	return A;
+		// if there is no overlap data available, we can do nothing...
+	  if (this.currentOverlapTiles == null) {
+	  	return entries;
 	  }
 	  	
 	  // get mask of this snake
-	  int[][] snakeMask;
-    snakeMask = snake.getBinaryMask(opt.getWorkingImage().getSizeX(),
-    		                            opt.getWorkingImage().getSizeY());	    
-    // update matrix A
-    for (int counter = 0; counter < snakePointNum - 1; ++counter) {
+	  MTBPolygon2D.PixelSpans snakeMask;
+    snakeMask = snake.getScaledPixelSpans(opt.getWorkingImage().getSizeX(),
+    		                                  opt.getWorkingImage().getSizeY());	    
+    for (int counter = 0; counter < snakePointNum; ++counter) {
     	Point2D.Double p = polyPoints.get(counter);
     	// check in how many other snakes the point actually lies
     	double overlapCount = 
-    		this.currentOverlapMask[(int)(p.y*this.scaleFactor)]
-    				                   [(int)(p.x*this.scaleFactor)]
-      - snakeMask[(int)(p.y*this.scaleFactor)][(int)(p.x*this.scaleFactor)];
-//	    	double oldEntryA = -A.get(counter, snakePointNum + counter);
-    	double newEntryA = (this.rho * overlapCount)/this.maxEnergyVal;
-    	A.set(counter, snakePointNum + counter, -newEntryA);
-    	A.set(counter, snakePointNum + counter + 1, newEntryA);
-    	A.set(snakePointNum + counter, counter, newEntryA);
-    	A.set(snakePointNum + counter, counter + 1, -newEntryA);
+    		this.currentOverlapTiles.getOverlapCount((int)(p.x*this.scaleFactor), 
+    				                                     (int)(p.y*this.scaleFactor))
+      - (snakeMask.contains((int)(p.x*this.scaleFactor), 
+      		                  (int)(p.y*this.scaleFactor)) ? 1 : 0);
+    	entries[counter] = (this.rho * overlapCount)/this.maxEnergyVal;
     }
-    // add last point
-    Point2D.Double p = polyPoints.get(snakePointNum - 1);
-    // check in how many other snakes the point actually lies
-    double overlapCount = 
-     	  this.currentOverlapMask[(int)(p.y*this.scaleFactor)]
-     	  		                   [(int)(p.x*this.scaleFactor)] 
-      - snakeMask[(int)(p.y*this.scaleFactor)][(int)(p.x*this.scaleFactor)];
-//	    double oldEntryA = A.get(snakePointNum - 1, snakePointNum);
-  	double newEntryA = (this.rho * overlapCount)/this.maxEnergyVal;
-    A.set(snakePointNum - 1, snakePointNum, newEntryA);
-    A.set(snakePointNum - 1, snakePointNum * 2 - 1, -newEntryA);
-    A.set(2 * snakePointNum - 1, 0, -newEntryA);
-    A.set(2 * snakePointNum - 1, snakePointNum - 1, newEntryA);
-    return A;
+    return entries;
 	}
 
 	@Override
@@ -262,22 +290,23 @@ public class MTBSnakeEnergyCD_OverlapPenalty
 	@Override
   public double calcEnergy(SnakeOptimizerSingle opt) {
 		// if no overlap mask is given, we cannot do anything...
-	  if (this.currentOverlapMask == null) {
+	  if (this.currentOverlapTiles == null) {
 	  	System.err.println("Overlap mask is null!");
 	  	return 0;
 	  }
+	  int[][] overlapMask = this.currentOverlapTiles.getOverlapMask();
 	  // get size of mask
-	  int height = this.currentOverlapMask.length;
-	  int width = this.currentOverlapMask[0].length;
+	  int height = overlapMask.length;
+	  int width = overlapMask[0].length;
 	  
 	  // calculate energy
 	  double energy = 0;
 	  for (int y=0;y<height;++y) {
 	  	for (int x=0;x<width;++x) {
-	  		if (this.currentOverlapMask[y][x] <= 1)
+	  		if (overlapMask[y][x] <= 1)
 	  			continue;
-	  		energy += factorialVals[this.currentOverlapMask[y][x]] 
-	  				/ (2 * factorialVals[this.currentOverlapMask[y][x] - 2]);
+	  		energy += factorialVals[overlapMask[y][x]] 
+	  				/ (2 * factorialVals[overlapMask[y][x] - 2]);
 	  	}
 	  }
 	  return this.rho * energy;
@@ -0,0 +1,58 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.segmentation.snakes.energies;
+
+import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.SnakeOptimizerCoupled;
+import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.SnakeOptimizerSingle;
+
+/**
+ * Interface for snake energies which can be cloned.
+ * <p>
+ * Most energies store data of the snake currently optimized between the 
+ * call of {@link #updateStatus(SnakeOptimizerSingle)} and the subsequent
+ * evaluation of derivatives. If several snakes are optimized concurrently,
+ * e.g., by {@link SnakeOptimizerCoupled}, each worker thread requires its
+ * own instance of such an energy. Energies not implementing this interface
+ * are shared among all worker threads and must not keep any snake-specific 
+ * data.
+ * 
+ * @author agent
+ */
+public interface MTBSnakeEnergyCloneable 
+	extends MTBSnakeEnergyDerivable, Cloneable {
+
+	/**
+	 * Clones this object.
+	 * <p>
+	 * Configuration parameters and read-only data derived from the image may 
+	 * be shared with the clone, snake-specific data has to be copied. The
+	 * clone is initialized by calling 
+	 * {@link #initEnergy(SnakeOptimizerSingle)} before it is used.
+	 */
+	/* (non-Javadoc)
+	 * @see java.lang.Object#clone()
+	 */
+	public MTBSnakeEnergyCloneable clone() throws CloneNotSupportedException;
+}
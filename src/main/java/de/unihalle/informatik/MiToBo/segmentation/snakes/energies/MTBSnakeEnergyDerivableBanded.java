@@ -0,0 +1,73 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+
+package de.unihalle.informatik.MiToBo.segmentation.snakes.energies;
+
+import de.unihalle.informatik.MiToBo.math.linearalgebra.MTBCyclicBandMatrix;
+import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.SnakeOptimizerSingleVarCalc;
+
+/**
+ * Interface for snake energies with cyclic banded matrix part.
+ * <p>
+ * Many internal energies, e.g., the length and curvature terms of Kass et 
+ * al., yield optimization matrices which are block-diagonal with identical
+ * blocks for x- and y-coordinates, and each block only couples neighboring 
+ * snake points. Energies implementing this interface provide their matrix
+ * part directly in terms of a single such block stored as 
+ * {@link MTBCyclicBandMatrix}. If all energies of an optimization do so,
+ * {@link SnakeOptimizerSingleVarCalc} solves the linear systems in linear 
+ * time instead of using dense matrices.
+ * <p>
+ * Note that {@link #getDerivative_MatrixPart(SnakeOptimizerSingleVarCalc)}
+ * still has to return the equivalent dense matrix.
+ * 
+ * @author agent
+ */
+public interface MTBSnakeEnergyDerivableBanded 
+	extends MTBSnakeEnergyDerivable {
+
+	/**
+	 * Returns the half bandwidth of the matrix part.
+	 * <p>
+	 * The matrix block has non-zero entries only for pairs of snake points
+	 * with cyclic index distance not larger than the returned value.
+	 * 
+	 * @return	Half bandwidth of the matrix block.
+	 */
+	public int getDerivative_MatrixPartBandwidth();
+
+	/**
+	 * Adds the weighted matrix block of this energy to the given matrix.
+	 * <p>
+	 * The block is of size N x N where N is the number of snake points, and
+	 * applies to x- and y-coordinates likewise.
+	 * 
+	 * @param o				Calling snake optimizer.
+	 * @param block		Matrix block to which entries are added.
+	 * @param weight	Weight of the energy.
+	 */
+	public void addDerivative_MatrixPart(SnakeOptimizerSingleVarCalc o,
+		MTBCyclicBandMatrix block, double weight);
+}
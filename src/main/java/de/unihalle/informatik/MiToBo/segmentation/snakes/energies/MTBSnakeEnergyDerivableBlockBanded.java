@@ -0,0 +1,76 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.segmentation.snakes.energies;
+
+import de.unihalle.informatik.MiToBo.math.linearalgebra.MTBCyclicBandMatrix;
+import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.SnakeOptimizerSingleVarCalc;
+
+/**
+ * Interface for snake energies with cyclic banded matrix part coupling 
+ * x- and y-coordinates.
+ * <p>
+ * Region-based energies like the Chan-Vese region fit or the overlap 
+ * penalty of coupled snakes yield optimization matrices where the row of 
+ * a coordinate of a snake point has non-zero entries for both coordinates 
+ * of neighboring snake points. Energies implementing this interface 
+ * provide their matrix part as 2 x 2 blocks of type 
+ * {@link MTBCyclicBandMatrix}, i.e., the blocks coupling x with x, x with 
+ * y, y with x and y with y. {@link SnakeOptimizerSingleVarCalc} combines 
+ * them with the blocks of {@link MTBSnakeEnergyDerivableBanded} energies 
+ * into a single cyclic band matrix with interleaved coordinates, and still 
+ * solves the linear systems in linear time.
+ * <p>
+ * Note that {@link #getDerivative_MatrixPart(SnakeOptimizerSingleVarCalc)}
+ * still has to return the equivalent dense matrix.
+ * 
+ * @author agent
+ */
+public interface MTBSnakeEnergyDerivableBlockBanded 
+	extends MTBSnakeEnergyDerivable {
+
+	/**
+	 * Returns the half bandwidth of the matrix blocks.
+	 * <p>
+	 * All blocks have non-zero entries only for pairs of snake points with 
+	 * cyclic index distance not larger than the returned value.
+	 * 
+	 * @return	Half bandwidth of the matrix blocks.
+	 */
+	public int getDerivative_MatrixPartBlockBandwidth();
+
+	/**
+	 * Adds the weighted matrix blocks of this energy to the given blocks.
+	 * <p>
+	 * Each block is of size N x N where N is the number of snake points. 
+	 * The first index of the array refers to the block row, the second one 
+	 * to the block column, index 0 to x- and index 1 to y-coordinates.
+	 * 
+	 * @param o				Calling snake optimizer.
+	 * @param blocks	Matrix blocks to which entries are added.
+	 * @param weight	Weight of the energy.
+	 */
+	public void addDerivative_MatrixPart(SnakeOptimizerSingleVarCalc o,
+		MTBCyclicBandMatrix[][] blocks, double weight);
+}
@@ -26,8 +26,15 @@ package de.unihalle.informatik.MiToBo.segmentation.snakes.optimize;
 
 import ij.process.ImageProcessor;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import de.unihalle.informatik.Alida.exceptions.ALDException;
 import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
@@ -37,6 +44,7 @@ import de.unihalle.informatik.Alida.operator.events.ALDControlEvent.ALDControlEv
 import de.unihalle.informatik.Alida.annotations.ALDAOperator;
 import de.unihalle.informatik.Alida.annotations.ALDDerivedClass;
 import de.unihalle.informatik.Alida.annotations.Parameter;
+import de.unihalle.informatik.Alida.annotations.Parameter.ExpertMode;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2D;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2DSet;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.*;
@@ -46,7 +54,9 @@ import de.unihalle.informatik.MiToBo.io.images.ImageWriterMTB;
 import de.unihalle.informatik.MiToBo.segmentation.activecontours.datatypes.MTBActiveContourEnergy;
 import de.unihalle.informatik.MiToBo.segmentation.activecontours.datatypes.MTBSet_ActiveContourEnergy;
 import de.unihalle.informatik.MiToBo.segmentation.activecontours.exceptions.*;
+import de.unihalle.informatik.MiToBo.segmentation.activecontours.exceptions.MTBActiveContourException.ExceptionType;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes.*;
+import de.unihalle.informatik.MiToBo.segmentation.snakes.energies.MTBSnakeEnergyCloneable;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.energies.MTBSnakeEnergyComputable;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.energies.MTBSnakeEnergyCoupled;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.energies.MTBSnakeEnergyDerivable;
@@ -58,6 +68,17 @@ import de.unihalle.informatik.MiToBo.segmentation.snakes.energies.MTBSnakeEnergy
  * based on parametric active contour models, i.e. snakes. Multiple
  * snakes may be coupled in the sense that overlap will be penalized
  * by a common energy term in the functional.
+ * <p>
+ * If the single snakes are optimized with 
+ * {@link SnakeOptimizerSingleVarCalc}, all snakes of an iteration see the 
+ * same configuration, i.e., the snakes and their overlap tiles at the 
+ * beginning of the iteration, and the new snakes are committed jointly 
+ * after all snakes have been processed. Energies implementing 
+ * {@link MTBSnakeEnergyCloneable} are cloned for each snake, all other 
+ * energies are shared among the snakes. Hence, the snakes of an iteration
+ * are independent of each other and are updated concurrently if more than
+ * one thread is configured, with results identical to sequential 
+ * processing.
  * 
  * @author Birgit Möller
  */
@@ -94,6 +115,17 @@ public class SnakeOptimizerCoupled extends SnakeOptimizer {
 			direction=Parameter.Direction.OUT, description = "Iterations per snake.")
 	protected transient int [] iterationsPerSnake = null;
 
+	/**
+	 * Number of threads for concurrent optimization of the snakes.
+	 * <p>
+	 * If zero or negative, all available processors are used.
+	 */
+	@Parameter(label="Number of threads", 
+			direction=Parameter.Direction.IN, required=false, 
+			mode=ExpertMode.ADVANCED, dataIOOrder = 4,
+			description = "Number of threads, if <= 0 all available cores are used.")
+	protected Integer threadNum = Integer.valueOf(1);
+
 	/**
 	 * Array of individual snake optimizers.
 	 */
@@ -110,9 +142,26 @@ public class SnakeOptimizerCoupled extends SnakeOptimizer {
   protected transient boolean overlapMaskRequested = false;
 
 	/**
-	 * Mask to indicate overlap regions between snakes.
+	 * Regions covered by the snakes at the beginning of the iteration.
+	 */
+	protected transient MTBSnakeOverlapTiles overlapTiles = null;
+
+	/**
+	 * Number of worker threads used for optimization.
+	 */
+	protected transient int workerNum = 1;
+
+	/**
+	 * Energy sets of the snakes, null if all snakes share the energy set of
+	 * the single snake optimizer.
 	 */
-	protected transient int[][] overlapMask = null;
+	protected transient MTBSet_SnakeEnergyDerivable[] snakeEnergySets = null;
+
+	/**
+	 * Snakes at the beginning of the current iteration, null if the snakes
+	 * are updated one after another.
+	 */
+	protected transient MTBPolygon2DSet stepSnakes = null;
 	
   /**
    * Image for displaying intermediate/final results.
@@ -176,6 +225,7 @@ public class SnakeOptimizerCoupled extends SnakeOptimizer {
 			newOpt.saveIntermediateResults= this.saveIntermediateResults;
 			newOpt.saveIntermediateResultsPath = this.saveIntermediateResultsPath;
 			newOpt.snakeOptimizer= (SnakeOptimizerSingle)this.snakeOptimizer.clone();
+			newOpt.threadNum = this.threadNum;
 			return newOpt;
     } catch (ALDOperatorException e) {
     	System.err.println("SnakeOptimizerCoupled - cloning operator failed!");
@@ -200,6 +250,14 @@ public class SnakeOptimizerCoupled extends SnakeOptimizer {
 		return this.activityArray.clone();
 	}
 
+	/**
+	 * Set number of threads used for concurrent snake optimization.
+	 * @param num	Number of threads, if zero or negative all cores are used.
+	 */
+	public void setThreadNum(int num) {
+		this.threadNum = Integer.valueOf(num);
+	}
+
 	/**
 	 * Specify pseudo-colors for snake visualization.
 	 */
@@ -268,15 +326,16 @@ public class SnakeOptimizerCoupled extends SnakeOptimizer {
 			this.activityArray = newArray;
 		}
 		
+		// set up energies of the snakes and the worker threads
+		this.initWorkers();
+
 		// init the energies of the snake optimizers in case they use additional
 		// information when used with a coupled optimization procedure
+		for (MTBSnakeEnergyCoupled e: this.getCoupledEnergies()) {
+			e.initEnergy(this);
+		}
 		MTBSet_ActiveContourEnergy eSet = this.snakeOptimizer.getEnergySet();
 		Vector<MTBActiveContourEnergy> eVec = eSet.getGenericEnergyList();
-		for (MTBActiveContourEnergy e: eVec) {
-			if (e instanceof MTBSnakeEnergyCoupled) {
-				((MTBSnakeEnergyCoupled)e).initEnergy(this);
-			}
-		}
 
 		// ask energies which additional information they require
 		this.overlapMaskRequested = false;
@@ -303,6 +362,8 @@ public class SnakeOptimizerCoupled extends SnakeOptimizer {
 				(SnakeOptimizerSingle)this.snakeOptimizer.clone();
 			topt.setInputImage(this.inImg);
 			topt.setInitialSnakes(is);
+			if (this.snakeEnergySets != null)
+				topt.setEnergySet(this.snakeEnergySets[n]);
 			try {
 	      topt.setVerbose(this.verbose);
       } catch (ALDOperatorException e) {
@@ -330,6 +391,78 @@ public class SnakeOptimizerCoupled extends SnakeOptimizer {
 		}
 	}
 	
+	/**
+	 * Determines the number of worker threads and clones the energies.
+	 * <p>
+	 * Energies are only cloned and snakes are only optimized concurrently 
+	 * if the single snake optimizer relies on variational calculus, since 
+	 * the greedy optimizer updates the global overlap mask from within its 
+	 * iterations. The first snake uses the original energies, all further
+	 * snakes use clones of energies implementing 
+	 * {@link MTBSnakeEnergyCloneable}. Thus, adaptive energy parameters 
+	 * evolve for each snake independently of the number of threads.
+	 */
+	protected void initWorkers() {
+		int threads = (this.threadNum == null || this.threadNum.intValue() <= 0)
+				? Runtime.getRuntime().availableProcessors() 
+				: this.threadNum.intValue();
+		this.workerNum = Math.max(1, Math.min(threads, this.snakeNum));
+		this.snakeEnergySets = null;
+		if (!(this.snakeOptimizer instanceof SnakeOptimizerSingleVarCalc)) {
+			this.workerNum = 1;
+			return;
+		}
+		MTBSet_SnakeEnergyDerivable eSet = 
+			((SnakeOptimizerSingleVarCalc)this.snakeOptimizer).getEnergySet();
+		this.snakeEnergySets = new MTBSet_SnakeEnergyDerivable[this.snakeNum];
+		if (this.snakeNum > 0)
+			this.snakeEnergySets[0] = eSet;
+		try {
+			for (int n=1; n<this.snakeNum; ++n) {
+				Vector<MTBSnakeEnergyDerivable> energies = 
+					new Vector<MTBSnakeEnergyDerivable>();
+				for (MTBSnakeEnergyDerivable e: eSet.getEnergyList()) {
+					if (e instanceof MTBSnakeEnergyCloneable)
+						energies.add(((MTBSnakeEnergyCloneable)e).clone());
+					else
+						energies.add(e);
+				}
+				this.snakeEnergySets[n] = new MTBSet_SnakeEnergyDerivable(
+					energies, new Vector<Double>(eSet.getWeights()));
+			}
+		} catch (CloneNotSupportedException | ALDOperatorException e) {
+			System.err.println("SnakeOptimizerCoupled - cloning energies failed, " 
+				+ "sharing energies and optimizing snakes sequentially!");
+			this.workerNum = 1;
+			this.snakeEnergySets = null;
+		}
+	}
+
+	/**
+	 * Collects the coupled energies of all snakes, each instance only once.
+	 * @return	List of coupled energies.
+	 */
+	protected List<MTBSnakeEnergyCoupled> getCoupledEnergies() {
+		Vector<MTBActiveContourEnergy> energies = 
+			new Vector<MTBActiveContourEnergy>();
+		if (this.snakeEnergySets == null)
+			energies.addAll(
+				this.snakeOptimizer.getEnergySet().getGenericEnergyList());
+		else
+			for (MTBSet_SnakeEnergyDerivable eSet: this.snakeEnergySets)
+				energies.addAll(eSet.getGenericEnergyList());
+		IdentityHashMap<MTBActiveContourEnergy, Boolean> seen = 
+			new IdentityHashMap<MTBActiveContourEnergy, Boolean>();
+		List<MTBSnakeEnergyCoupled> coupled = 
+			new ArrayList<MTBSnakeEnergyCoupled>();
+		for (MTBActiveContourEnergy e: energies) {
+			if (   e instanceof MTBSnakeEnergyCoupled 
+					&& seen.put(e, Boolean.TRUE) == null)
+				coupled.add((MTBSnakeEnergyCoupled)e);
+		}
+		return coupled;
+	}
+
 	/*******************************************************************************/
 	/*** Operator routines. ***/
 	/*******************************************************************************/
@@ -349,30 +482,31 @@ public class SnakeOptimizerCoupled extends SnakeOptimizer {
 			this.updateOverlapMask();
 		
 		// update energies that might require additional data 
-		MTBSet_ActiveContourEnergy eSet = this.snakeOptimizer.getEnergySet();
-		Vector<MTBActiveContourEnergy> eVec = eSet.getGenericEnergyList();
-		for (MTBActiveContourEnergy e: eVec) {
-			if (e instanceof MTBSnakeEnergyCoupled) {
-				((MTBSnakeEnergyCoupled)e).updateStatus(this);
-			}
+		for (MTBSnakeEnergyCoupled e: this.getCoupledEnergies()) {
+			e.updateStatus(this);
 		}
 		
 		// do one step: optimize, resample, simplify
 		SnakeOptimizer.Snake_status [] stats= 
 			new SnakeOptimizer.Snake_status[this.snakeNum];
 		MTBSnake [] resultSnakes = new MTBSnake[this.snakeNum];
-		for (int n=0; n<this.snakeNum; ++n) {
-			if (this.activityArray[n] == false)
-				// snake n is inactive
-				continue;
-			if (this.initialSnakes.elementAt(n).getPointNum() < 5)
-				continue;
-			if (this.excludeMask!=null)
-				this.snakeOpters[n].setExcludeMask(this.excludeMask);
-			if (this.verbose.booleanValue())
-				System.out.println("- running iteration for snake #" +n+ "...");
-			stats[n]= this.snakeOpters[n].doIteration();
-			resultSnakes[n] = this.snakeOpters[n].getCurrentSnake();
+		if (this.snakeEnergySets != null) {
+			// all snakes see the configuration at the beginning of the step
+			this.stepSnakes = this.getCurrentSnakes();
+			try {
+				if (this.workerNum > 1)
+					this.doConcurrentStep(stats, resultSnakes);
+				else
+					for (int n=0; n<this.snakeNum; ++n)
+						this.doSnakeStep(n, stats, resultSnakes);
+			} finally {
+				// commit new configuration
+				this.stepSnakes = null;
+			}
+		}
+		else {
+			for (int n=0; n<this.snakeNum; ++n)
+				this.doSnakeStep(n, stats, resultSnakes);
 		}
 		
 		// check failure
@@ -438,6 +572,75 @@ public class SnakeOptimizerCoupled extends SnakeOptimizer {
 		return Snake_status.SNAKE_SUCCESS;
 	}
 	
+	/**
+	 * Performs one optimization step for a single snake.
+	 * 
+	 * @param n							Index of the snake.
+	 * @param stats					Array to store the status of the snake.
+	 * @param resultSnakes	Array to store the resulting snake.
+	 * @throws MTBException	Thrown if the optimization step fails.
+	 */
+	protected void doSnakeStep(int n, SnakeOptimizer.Snake_status[] stats,
+			MTBSnake[] resultSnakes) throws MTBException {
+		if (this.activityArray[n] == false)
+			// snake n is inactive
+			return;
+		if (this.initialSnakes.elementAt(n).getPointNum() < 5)
+			return;
+		if (this.excludeMask!=null)
+			this.snakeOpters[n].setExcludeMask(this.excludeMask);
+		if (this.verbose.booleanValue())
+			System.out.println("- running iteration for snake #" +n+ "...");
+		stats[n]= this.snakeOpters[n].doIteration();
+		resultSnakes[n] = this.snakeOpters[n].getCurrentSnake();
+	}
+
+	/**
+	 * Performs one optimization step for all snakes concurrently.
+	 * <p>
+	 * Snake n is processed by worker n modulo the number of workers, each
+	 * worker processes its snakes one after another. While the workers are 
+	 * running, {@link #getCurrentSnakes()} returns the snakes at the 
+	 * beginning of the step, and the overlap tiles are not modified.
+	 * 
+	 * @param stats					Array to store the status of each snake.
+	 * @param resultSnakes	Array to store the resulting snakes.
+	 * @throws MTBException	Thrown if the optimization of a snake fails.
+	 */
+	protected void doConcurrentStep(final SnakeOptimizer.Snake_status[] stats,
+			final MTBSnake[] resultSnakes) throws MTBException {
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int k=0; k<this.workerNum; ++k) {
+			final int worker = k;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws MTBException {
+					for (int n=worker; n<SnakeOptimizerCoupled.this.snakeNum; 
+							n+=SnakeOptimizerCoupled.this.workerNum)
+						SnakeOptimizerCoupled.this.doSnakeStep(n, stats, resultSnakes);
+					return null;
+				}
+			});
+		}
+		ForkJoinPool pool = new ForkJoinPool(this.workerNum);
+		try {
+			for (Future<Void> f: pool.invokeAll(tasks))
+				f.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MTBException)
+				throw (MTBException)e.getCause();
+			throw new MTBSnakeException(ExceptionType.UPDATE_ERROR, 
+				"[SnakeOptimizerCoupled] concurrent iteration failed: "
+					+ e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MTBSnakeException(ExceptionType.UPDATE_ERROR, 
+				"[SnakeOptimizerCoupled] concurrent iteration interrupted!");
+		} finally {
+			pool.shutdown();
+		}
+	}
+
 	/**
 	 * Display input image with current snake overlayed.
 	 */
@@ -478,22 +681,22 @@ public class SnakeOptimizerCoupled extends SnakeOptimizer {
 	}
 
 	/**
-	 * Update current overlap mask for all snakes.
-	 * @return Array indicating for each pixel how many snakes overlap there.
+	 * Update current overlap tiles for all snakes.
+	 * <p>
+	 * Each snake contributes the pixel spans of its interior, a full-frame
+	 * overlap mask is only created on request.
 	 */
 	public void updateOverlapMask() {
-		this.overlapMask= new int[this.iHeight][this.iWidth];
-		for (SnakeOptimizerSingle sos : this.snakeOpters) {
-			MTBSnake s= sos.getCurrentSnake();
+		MTBPolygon2D.PixelSpans[] tiles = 
+			new MTBPolygon2D.PixelSpans[this.snakeOpters.length];
+		for (int n=0; n<this.snakeOpters.length; ++n) {
+			MTBSnake s= this.snakeOpters[n].getCurrentSnake();
 			if (s.getPointNum()<5)
 				continue;
-			int [][] sMask= s.getBinaryMask(this.iWidth, this.iHeight);
-			for (int y=0;y<this.iHeight;++y) {
-				for (int x=0;x<this.iWidth;++x) {
-					this.overlapMask[y][x]+=sMask[y][x];
-				}
-			}
+			tiles[n] = s.getScaledPixelSpans(this.iWidth, this.iHeight);
 		}
+		this.overlapTiles = 
+			new MTBSnakeOverlapTiles(this.iWidth, this.iHeight, tiles);
 	}
 	
 	/* (non-Javadoc)
@@ -506,12 +709,19 @@ public class SnakeOptimizerCoupled extends SnakeOptimizer {
 	
 	/**
 	 * Returns a copy of the set of current snakes.
+	 * <p>
+	 * While the snakes are updated in an iteration with variational calculus,
+	 * the snakes at the beginning of the iteration are returned.
 	 */
 	@Override
   public MTBPolygon2DSet getCurrentSnakes() {
 		Vector<MTBPolygon2D> polyVec = new Vector<MTBPolygon2D>();
+		MTBPolygon2DSet snapshot = this.stepSnakes;
 		for (int i=0;i<this.snakeNum;++i) {
-			polyVec.add(this.snakeOpters[i].getCurrentSnake());
+			if (snapshot != null)
+				polyVec.add(((MTBSnake)snapshot.elementAt(i)).clone());
+			else
+				polyVec.add(this.snakeOpters[i].getCurrentSnake());
 		}
 		MTBPolygon2DSet polys = 
 			new MTBPolygon2DSet(polyVec, 0, 0, this.iWidth-1, this.iHeight-1);
@@ -520,10 +730,41 @@ public class SnakeOptimizerCoupled extends SnakeOptimizer {
 
 	/**
 	 * Get the current overlap mask.
+	 * <p>
+	 * The mask is shared and must not be modified.
+	 * 
 	 * @return	Overlap mask of current snake configuration.
 	 */
 	public int[][] getCurrentOverlapMask() {
-		return this.overlapMask;
+		if (this.overlapTiles == null)
+			return null;
+		return this.overlapTiles.getOverlapMask();
+	}
+
+	/**
+	 * Get the regions covered by the snakes as tiles.
+	 * @return	Overlap tiles of current snake configuration.
+	 */
+	public MTBSnakeOverlapTiles getCurrentOverlapTiles() {
+		return this.overlapTiles;
+	}
+
+	/**
+	 * Get the pixels covered by at least one snake as spans per row.
+	 * <p>
+	 * The spans of all current overlap tiles are merged, see 
+	 * {@link MTBSnakeOverlapTiles#getCoveredSpans()}. The result is shared 
+	 * and must not be modified.
+	 * 
+	 * @return	Array indexed by row, each entry contains start and end 
+	 * 					x-coordinates of disjoint spans in ascending order, rows not
+	 * 					covered by any snake refer to empty arrays; null if there is
+	 * 					no overlap mask.
+	 */
+	public int[][] getCurrentCoveredSpans() {
+		if (this.overlapTiles == null)
+			return null;
+		return this.overlapTiles.getCoveredSpans();
 	}
 	
 	/**
@@ -542,6 +783,7 @@ public class SnakeOptimizerCoupled extends SnakeOptimizer {
 		System.out.println("Parameters of SnakeOptimizerCoupled: ");
 		System.out.println("==================================== ");
 		System.out.println("- snake number= " + this.snakeNum);
+		System.out.println("- number of threads= " + this.threadNum);
 		if (this.activityArray != null) {
 			String activityStatus = "[";
 			for (int i=0; i<this.snakeNum; ++i) {
@@ -39,6 +39,8 @@ import de.unihalle.informatik.MiToBo.core.datatypes.*;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.*;
 import de.unihalle.informatik.MiToBo.core.exceptions.MTBException;
 import de.unihalle.informatik.MiToBo.gui.MTBTableModel;
+import de.unihalle.informatik.MiToBo.math.linearalgebra.MTBCyclicBandLUDecomposition;
+import de.unihalle.informatik.MiToBo.math.linearalgebra.MTBCyclicBandMatrix;
 import de.unihalle.informatik.MiToBo.segmentation.activecontours.datatypes.MTBSet_ActiveContourEnergy;
 import de.unihalle.informatik.MiToBo.segmentation.activecontours.exceptions.*;
 import de.unihalle.informatik.MiToBo.segmentation.activecontours.exceptions.MTBActiveContourException.ExceptionType;
@@ -61,6 +63,13 @@ import de.unihalle.informatik.MiToBo.tools.system.UserTime;
  * In this class snake optimization is done by solving PDEs like in the 
  * original Kass et al. paper.
  * 
+ * If all energies with non-trivial matrix parts implement 
+ * MTBSnakeEnergyDerivableBanded, as the internal energies of Kass et al. do, 
+ * the linear systems are assembled as cyclic band matrices and solved in 
+ * linear time. Their decompositions are reused in subsequent iterations as 
+ * long as energy weights and step sizes do not change. Otherwise dense 
+ * matrices are used.
+ * 
  * TODO correct handling of not closed snakes
  * TODO adaptation of gamma for every single point
  * TODO adaptation of segment length
@@ -128,14 +137,68 @@ public class SnakeOptimizerSingleVarCalc extends SnakeOptimizerSingle {
 
 	/**
 	 * Optimization matrix A, to be modified by snake energies in each iteration.
+	 * <p>
+	 * The dense matrix is only allocated if at least one energy contributes
+	 * a matrix part not available in banded form, otherwise it is null.
 	 */
 	private transient Matrix A = null;
 
+	/**
+	 * Band block of optimization matrix A, identical for x and y.
+	 * <p>
+	 * Collects the matrix parts of all energies implementing 
+	 * {@link MTBSnakeEnergyDerivableBanded}, null if the snake has too few
+	 * points for the bandwidth of the energies.
+	 */
+	private transient MTBCyclicBandMatrix bandA = null;
+
+	/**
+	 * Blocks of optimization matrix A coupling x- and y-coordinates.
+	 * <p>
+	 * Collects the matrix parts of all energies implementing 
+	 * {@link MTBSnakeEnergyDerivableBlockBanded}, indexed by block row and 
+	 * column. Null if there are no such energies or if the snake has too 
+	 * few points for the bandwidth of the energies.
+	 */
+	private transient MTBCyclicBandMatrix[][] blockA = null;
+
 	/**
 	 * Optimization matrix with values of last calculations.
 	 */
 	private transient Matrix memA = null;
 
+	/**
+	 * Band block of optimization matrix of last calculations, if the dense
+	 * matrix was not required.
+	 */
+	private transient MTBCyclicBandMatrix memBandA = null;
+
+	/**
+	 * Coupling blocks of optimization matrix of last calculations, if the 
+	 * dense matrix was not required.
+	 */
+	private transient MTBCyclicBandMatrix[][] memBlockA = null;
+
+	/**
+	 * Banded system matrix for x-coordinates of last iteration.
+	 */
+	private transient MTBCyclicBandMatrix systemX = null;
+
+	/**
+	 * Decomposition of banded system matrix for x-coordinates.
+	 */
+	private transient MTBCyclicBandLUDecomposition systemLUX = null;
+
+	/**
+	 * Banded system matrix for y-coordinates of last iteration.
+	 */
+	private transient MTBCyclicBandMatrix systemY = null;
+
+	/**
+	 * Decomposition of banded system matrix for y-coordinates.
+	 */
+	private transient MTBCyclicBandLUDecomposition systemLUY = null;
+
 	/**
 	 * External energy vector, to be modified by snake energies.
 	 */
@@ -482,17 +545,36 @@ public class SnakeOptimizerSingleVarCalc extends SnakeOptimizerSingle {
 			MTBSnakeEnergyDerivable ener = eVec.get(i);
 			ener.updateStatus(this);
 
-			Matrix A_ener = ener.getDerivative_MatrixPart(this);
-			if (A_ener != null)
-				this.A = 
-					this.A.plus(A_ener.times(this.energyWeightsNormed[i]));
+			if (   this.bandA != null 
+					&& ener instanceof MTBSnakeEnergyDerivableBanded) {
+				((MTBSnakeEnergyDerivableBanded)ener).addDerivative_MatrixPart(
+					this, this.bandA, this.energyWeightsNormed[i]);
+			}
+			else if (   this.blockA != null
+							 && ener instanceof MTBSnakeEnergyDerivableBlockBanded) {
+				((MTBSnakeEnergyDerivableBlockBanded)ener).addDerivative_MatrixPart(
+					this, this.blockA, this.energyWeightsNormed[i]);
+			}
+			else {
+				Matrix A_ener = ener.getDerivative_MatrixPart(this);
+				if (A_ener != null)
+					this.A = (this.A == null) ?
+						A_ener.times(this.energyWeightsNormed[i]) :
+						this.A.plus(A_ener.times(this.energyWeightsNormed[i]));
+			}
 			Matrix B_ener = ener.getDerivative_VectorPart(this);
 			if (B_ener != null)
 				this.B = 
 					this.B.plus(B_ener.times(this.energyWeightsNormed[i]));
 		}
-		if (this.A == null || this.B == null)
+		if (this.B == null)
 			return Snake_status.SNAKE_FAIL;
+		// fall back to dense matrix if any energy requires it
+		int snakePointNum = this.snake.getPointNum();
+		if (this.A == null && this.bandA == null)
+			this.A = new Matrix(snakePointNum * 2, snakePointNum * 2);
+		if (this.A != null)
+			this.addBandsToDenseMatrix(this.A, this.bandA, this.blockA);
 	
 		/*
 		 * Calculate energy value for current snake if needed.
@@ -511,33 +593,9 @@ public class SnakeOptimizerSingleVarCalc extends SnakeOptimizerSingle {
 			System.out.println("    \u03B3 = " + this.gammaAdaptive[0][0]);
 		}
 		
-		// calculate new snake points
-		double[][] identMatrix = 
-			new double[this.snake.getPointNum() * 2][this.snake.getPointNum() * 2];
-		for (int i = 0; i < identMatrix.length; i++) {
-			for (int j = 0; j < identMatrix.length; j++) {
-				if (i == j)
-					identMatrix[i][j] = 1;
-				else
-					identMatrix[i][j] = 0;
-			}
-		}
-		Matrix I = new Matrix(identMatrix);
-
-		// create gamma matrix
-		double[][] oneMatrix = new double[1][2 * this.snake.getPointNum()];
-		for (int i = 0; i < 2 * this.snake.getPointNum(); ++i)
-			oneMatrix[0][i] = 1.0;
-		Matrix Ones = new Matrix(oneMatrix);
-		Matrix Gamma = (new Matrix(this.gammaAdaptive)).times(Ones);
-
-		// calculate denominator
-		Matrix H = I.plus(this.A.arrayTimes(Gamma));
-
 		// create vector with x and y coordinates
 		double[][] x_vec = new double[this.snake.getPointNum() * 2][1];
 
-		int snakePointNum = this.snake.getPointNum();
 		for (int i = 0; i < snakePointNum; i++) {
 			double xx = this.snake.getPoints().elementAt(i).getX();
 			double yy = this.snake.getPoints().elementAt(i).getY();
@@ -559,9 +617,20 @@ public class SnakeOptimizerSingleVarCalc extends SnakeOptimizerSingle {
 //		for (int i=0;i<50;++i)
 //			System.out.println(Nx.get(i, 0));
 
-		// calculate new points by matrix multiplication:
-		// changes for speed-up by omitting inversion on Oct 21, 2011
-		Matrix newPoints = H.solve(Nx);
+		// calculate new points by solving the linear system
+		double[] newPoints = null;
+		if (this.A == null && this.blockA != null)
+			newPoints = this.solveBlockBanded(Nx.getColumnPackedCopy());
+		else if (this.A == null)
+			newPoints = this.solveBanded(Nx.getColumnPackedCopy());
+		if (newPoints == null) {
+			if (this.A == null) {
+				// decomposition without pivoting failed, use dense solver
+				this.A = new Matrix(snakePointNum * 2, snakePointNum * 2);
+				this.addBandsToDenseMatrix(this.A, this.bandA, this.blockA);
+			}
+			newPoints = this.solveDense(Nx);
+		}
 
 //		System.out.println("=======");
 //		for (int i=0;i<50;++i)
@@ -580,8 +649,8 @@ public class SnakeOptimizerSingleVarCalc extends SnakeOptimizerSingle {
 		 */
 		Vector<MTBSnakePoint2D> newpoints = new Vector<MTBSnakePoint2D>();
 		for (int i = 0; i < snakePointNum; ++i) {
-			MTBSnakePoint2D po = new MTBSnakePoint2D(newPoints.get(i, 0), newPoints
-					.get(i + snakePointNum, 0));
+			MTBSnakePoint2D po = 
+				new MTBSnakePoint2D(newPoints[i], newPoints[i + snakePointNum]);
 			po.setOldId(i);
 			newpoints.add(po);
 //			 System.out.println(i + ": (" +
@@ -590,8 +659,23 @@ public class SnakeOptimizerSingleVarCalc extends SnakeOptimizerSingle {
 //			 + this.snake.getSnakePoints().elementAt(i).getOldId() + ") ; ("
 //			 + po.x + "," + po.y + "," + po.getOldId() + ")");
 		}
-		// remember matrix A
-		this.memA = (Matrix) this.A.clone();
+		// remember matrix A, dense version of banded matrix is built on demand
+		if (this.A != null) {
+			this.memA = (Matrix) this.A.clone();
+			this.memBandA = null;
+			this.memBlockA = null;
+		}
+		else {
+			this.memA = null;
+			this.memBandA = this.bandA.copy();
+			this.memBlockA = null;
+			if (this.blockA != null) {
+				this.memBlockA = new MTBCyclicBandMatrix[2][2];
+				for (int r = 0; r < 2; ++r)
+					for (int c = 0; c < 2; ++c)
+						this.memBlockA[r][c] = this.blockA[r][c].copy();
+			}
+		}
 
 		// set new snake
 		MTBSnake newSnake = new MTBSnake(newpoints, true, this.scaleFactor, true);
@@ -750,6 +834,212 @@ public class SnakeOptimizerSingleVarCalc extends SnakeOptimizerSingle {
 		return termCheckStat;
 	}
 
+	/**
+	 * Solves the linear system with dense matrices.
+	 * 
+	 * @param Nx	Right-hand side of the system.
+	 * @return	New snake coordinates, first all x, then all y.
+	 */
+	private double[] solveDense(Matrix Nx) {
+		int dim = this.snake.getPointNum() * 2;
+		double[][] identMatrix = new double[dim][dim];
+		for (int i = 0; i < identMatrix.length; i++) {
+			for (int j = 0; j < identMatrix.length; j++) {
+				if (i == j)
+					identMatrix[i][j] = 1;
+				else
+					identMatrix[i][j] = 0;
+			}
+		}
+		Matrix I = new Matrix(identMatrix);
+
+		// create gamma matrix
+		double[][] oneMatrix = new double[1][dim];
+		for (int i = 0; i < dim; ++i)
+			oneMatrix[0][i] = 1.0;
+		Matrix Ones = new Matrix(oneMatrix);
+		Matrix Gamma = (new Matrix(this.gammaAdaptive)).times(Ones);
+
+		// calculate denominator
+		Matrix H = I.plus(this.A.arrayTimes(Gamma));
+
+		// changes for speed-up by omitting inversion on Oct 21, 2011
+		return H.solve(Nx).getColumnPackedCopy();
+	}
+
+	/**
+	 * Solves the linear system with cyclic band matrices.
+	 * <p>
+	 * The system decomposes into independent systems for x- and 
+	 * y-coordinates. Decompositions of the previous iteration are reused if
+	 * the system matrices did not change, and the decomposition for x is 
+	 * reused for y if both matrices are equal.
+	 * 
+	 * @param Nx	Right-hand side of the system.
+	 * @return	New snake coordinates, first all x, then all y.
+	 */
+	private double[] solveBanded(double[] Nx) {
+		int snakePointNum = this.snake.getPointNum();
+		MTBCyclicBandMatrix Hx = this.getBandedSystemMatrix(0);
+		MTBCyclicBandMatrix Hy = this.getBandedSystemMatrix(snakePointNum);
+		if (!Hx.equals(this.systemX)) {
+			this.systemX = Hx;
+			this.systemLUX = new MTBCyclicBandLUDecomposition(Hx);
+		}
+		if (Hy.equals(this.systemX)) {
+			this.systemY = this.systemX;
+			this.systemLUY = this.systemLUX;
+		}
+		else if (!Hy.equals(this.systemY)) {
+			this.systemY = Hy;
+			this.systemLUY = new MTBCyclicBandLUDecomposition(Hy);
+		}
+		double[] rhs = new double[snakePointNum];
+		System.arraycopy(Nx, 0, rhs, 0, snakePointNum);
+		double[] newX = this.systemLUX.solve(rhs);
+		System.arraycopy(Nx, snakePointNum, rhs, 0, snakePointNum);
+		double[] newY = this.systemLUY.solve(rhs);
+		double[] newPoints = new double[2 * snakePointNum];
+		System.arraycopy(newX, 0, newPoints, 0, snakePointNum);
+		System.arraycopy(newY, 0, newPoints, snakePointNum, snakePointNum);
+		return newPoints;
+	}
+
+	/**
+	 * Solves the linear system with x- and y-coordinates coupled by banded 
+	 * blocks.
+	 * <p>
+	 * The blocks of the system matrix I + Gamma * A are combined into a 
+	 * single cyclic band matrix with interleaved x- and y-coordinates, see
+	 * {@link MTBCyclicBandMatrix#interleave(MTBCyclicBandMatrix[][])}. As 
+	 * the band part is decomposed without pivoting, the solution is only 
+	 * accepted if the decomposition is regular and the residual is small.
+	 * 
+	 * @param Nx	Right-hand side of the system.
+	 * @return	New snake coordinates, first all x, then all y, 
+	 * 					null if the system could not be solved reliably.
+	 */
+	private double[] solveBlockBanded(double[] Nx) {
+		int snakePointNum = this.snake.getPointNum();
+		int bandwidth = Math.max(this.bandA.getBandwidth(), 
+			this.blockA[0][0].getBandwidth());
+		MTBCyclicBandMatrix[][] H = new MTBCyclicBandMatrix[2][2];
+		for (int r = 0; r < 2; ++r) {
+			for (int c = 0; c < 2; ++c) {
+				H[r][c] = new MTBCyclicBandMatrix(snakePointNum, bandwidth);
+				for (int i = 0; i < snakePointNum; ++i) {
+					for (int j = i - bandwidth; j <= i + bandwidth; ++j) {
+						double v = this.blockA[r][c].get(i, j);
+						if (r == c)
+							v += this.bandA.get(i, j);
+						H[r][c].set(i, j, v);
+					}
+					H[r][c].scaleRow(i, this.gammaAdaptive[r*snakePointNum + i][0]);
+				}
+				if (r == c)
+					H[r][c].addToDiagonal(1.0);
+			}
+		}
+		MTBCyclicBandMatrix system = MTBCyclicBandMatrix.interleave(H);
+		MTBCyclicBandLUDecomposition lu = 
+			new MTBCyclicBandLUDecomposition(system);
+		if (!lu.isNonsingular())
+			return null;
+		double[] rhs = new double[2 * snakePointNum];
+		for (int i = 0; i < snakePointNum; ++i) {
+			rhs[2*i] = Nx[i];
+			rhs[2*i + 1] = Nx[snakePointNum + i];
+		}
+		double[] sol = lu.solve(rhs);
+		
+		// check residual
+		double[] res = system.times(sol);
+		double maxRes = 0, maxRhs = 0, maxSol = 0;
+		for (int i = 0; i < rhs.length; ++i) {
+			maxRes = Math.max(maxRes, Math.abs(res[i] - rhs[i]));
+			maxRhs = Math.max(maxRhs, Math.abs(rhs[i]));
+			maxSol = Math.max(maxSol, Math.abs(sol[i]));
+		}
+		if (   Double.isNaN(maxRes) 
+				|| maxRes > 1.0e-8 * (maxRhs + system.normInf() * maxSol))
+			return null;
+		
+		double[] newPoints = new double[2 * snakePointNum];
+		for (int i = 0; i < snakePointNum; ++i) {
+			newPoints[i] = sol[2*i];
+			newPoints[snakePointNum + i] = sol[2*i + 1];
+		}
+		return newPoints;
+	}
+
+	/**
+	 * Adds band block and coupling blocks to a dense matrix.
+	 * 
+	 * @param m			Dense matrix of size 2N x 2N.
+	 * @param band	Block for x and y likewise, ignored if null.
+	 * @param blocks	Coupling blocks, ignored if null.
+	 */
+	private void addBandsToDenseMatrix(Matrix m, MTBCyclicBandMatrix band,
+			MTBCyclicBandMatrix[][] blocks) {
+		int snakePointNum = m.getRowDimension() / 2;
+		if (band != null) {
+			band.addToMatrix(m, 0, 0, 1.0);
+			band.addToMatrix(m, snakePointNum, snakePointNum, 1.0);
+		}
+		if (blocks != null) {
+			for (int r = 0; r < 2; ++r)
+				for (int c = 0; c < 2; ++c)
+					blocks[r][c].addToMatrix(
+						m, r * snakePointNum, c * snakePointNum, 1.0);
+		}
+	}
+
+	/**
+	 * Builds banded system matrix I + Gamma * A for one coordinate block.
+	 * 
+	 * @param offset	Offset of the block in the gamma vector.
+	 * @return	System matrix.
+	 */
+	private MTBCyclicBandMatrix getBandedSystemMatrix(int offset) {
+		MTBCyclicBandMatrix H = this.bandA.copy();
+		for (int i = 0; i < H.getSize(); ++i)
+			H.scaleRow(i, this.gammaAdaptive[offset + i][0]);
+		H.addToDiagonal(1.0);
+		return H;
+	}
+
+	/**
+	 * Returns the maximal bandwidth of all banded energies.
+	 * 
+	 * @return	Half bandwidth, zero if there are no banded energies.
+	 */
+	private int getMatrixPartBandwidth() {
+		int bandwidth = 0;
+		for (MTBSnakeEnergyDerivable ener : this.energySet.getEnergyList()) {
+			if (ener instanceof MTBSnakeEnergyDerivableBanded)
+				bandwidth = Math.max(bandwidth, 
+					((MTBSnakeEnergyDerivableBanded)ener)
+						.getDerivative_MatrixPartBandwidth());
+		}
+		return bandwidth;
+	}
+
+	/**
+	 * Returns the maximal block bandwidth of all block banded energies.
+	 * 
+	 * @return	Half bandwidth, zero if there are no block banded energies.
+	 */
+	private int getMatrixPartBlockBandwidth() {
+		int bandwidth = 0;
+		for (MTBSnakeEnergyDerivable ener : this.energySet.getEnergyList()) {
+			if (ener instanceof MTBSnakeEnergyDerivableBlockBanded)
+				bandwidth = Math.max(bandwidth, 
+					((MTBSnakeEnergyDerivableBlockBanded)ener)
+						.getDerivative_MatrixPartBlockBandwidth());
+		}
+		return bandwidth;
+	}
+
 	/**
 	 * Resize parameter matrices.
 	 * <p>
@@ -757,6 +1047,9 @@ public class SnakeOptimizerSingleVarCalc extends SnakeOptimizerSingle {
 	 * the snake. This methods resizes the snake, if the given point number does
 	 * not coincide with the current size of the matrices. After resizing the
 	 * matrices, entries are set to zero.
+	 * <p>
+	 * The dense matrix A is released and only allocated again if required by
+	 * an energy, the band block of A is reset to zero.
 	 */
 	public void resizeMatrices() {
 		// TODO Muss noch raus, kürzere Snakes sollten kein Problem sein...
@@ -764,14 +1057,36 @@ public class SnakeOptimizerSingleVarCalc extends SnakeOptimizerSingle {
 			return;
 
 		int snakePointNum = this.snake.getPointNum();
-		if (this.A == null) {
-			this.A = new Matrix(this.snake.getPointNum() * 2, this.snake
-					.getPointNum() * 2);
-		} else if (snakePointNum * 2 != this.A.getColumnDimension())
-			this.A = new Matrix(snakePointNum * 2, snakePointNum * 2);
-		for (int i = 0; i < snakePointNum * 2; ++i)
-			for (int j = 0; j < snakePointNum * 2; ++j)
-				this.A.set(i, j, 0);
+		this.A = null;
+		int bandwidth = this.getMatrixPartBandwidth();
+		if (snakePointNum < 2 * bandwidth + 1)
+			this.bandA = null;
+		else if (   this.bandA == null 
+						 || this.bandA.getSize() != snakePointNum
+						 || this.bandA.getBandwidth() != bandwidth)
+			this.bandA = new MTBCyclicBandMatrix(snakePointNum, bandwidth);
+		else
+			this.bandA.clear();
+		
+		// coupling blocks, the interleaved system requires 2N >= 4k+3
+		int blockBandwidth = this.getMatrixPartBlockBandwidth();
+		if (   blockBandwidth == 0 || this.bandA == null
+				|| snakePointNum < 2 * Math.max(bandwidth, blockBandwidth) + 2)
+			this.blockA = null;
+		else if (   this.blockA == null 
+						 || this.blockA[0][0].getSize() != snakePointNum
+						 || this.blockA[0][0].getBandwidth() != blockBandwidth) {
+			this.blockA = new MTBCyclicBandMatrix[2][2];
+			for (int r = 0; r < 2; ++r)
+				for (int c = 0; c < 2; ++c)
+					this.blockA[r][c] = 
+						new MTBCyclicBandMatrix(snakePointNum, blockBandwidth);
+		}
+		else {
+			for (int r = 0; r < 2; ++r)
+				for (int c = 0; c < 2; ++c)
+					this.blockA[r][c].clear();
+		}
 
 		if (this.B == null) {
 			this.B = new Matrix(this.snake.getPointNum() * 2, 1);
@@ -904,6 +1219,11 @@ public class SnakeOptimizerSingleVarCalc extends SnakeOptimizerSingle {
 	 * before first run.
 	 */
 	public Matrix getMemorizedMatrixA() {
+		if (this.memA == null && this.memBandA != null) {
+			int snakePointNum = this.memBandA.getSize();
+			this.memA = new Matrix(snakePointNum * 2, snakePointNum * 2);
+			this.addBandsToDenseMatrix(this.memA, this.memBandA, this.memBlockA);
+		}
 		return this.memA;
 	}
 	
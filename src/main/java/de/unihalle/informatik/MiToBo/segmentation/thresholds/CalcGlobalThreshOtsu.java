@@ -30,6 +30,7 @@ import de.unihalle.informatik.Alida.exceptions.ALDWorkflowException;
 import de.unihalle.informatik.Alida.annotations.ALDAOperator;
 import de.unihalle.informatik.Alida.annotations.Parameter;
 import de.unihalle.informatik.Alida.annotations.Parameter.Direction;
+import de.unihalle.informatik.Alida.annotations.Parameter.ExpertMode;
 import de.unihalle.informatik.Alida.annotations.Parameter.ParameterModificationMode;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBImageHistogram;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.*;
@@ -67,6 +68,16 @@ import de.unihalle.informatik.MiToBo.core.operator.*;
  * the maximum number of possible bins is restricted to 1024 in this 
  * implementation to keep the computational effort acceptable.
  * <p>
+ * For more than two classes the between-class variance is maximized 
+ * over all combinations of thresholds by dynamic programming on 
+ * cumulative tables of the zeroth and first histogram moments, which 
+ * requires O(k * bins^2) operations for k classes.
+ * <p>
+ * For time-lapse images the thresholds can optionally be calculated for 
+ * each time frame. The histogram is then maintained incrementally over a 
+ * sliding window of frames, i.e. each frame is only added once and 
+ * removed once instead of recomputing the histogram from scratch.
+ * <p>
  * Reference: <i>Nobuyuki Otsu, "A threshold selection method from 
  * gray-level histograms", IEEE Trans. Sys., Man., Cyber. 9 (1): 62–66,
  * 1979. </i>
@@ -119,6 +130,55 @@ public class CalcGlobalThreshOtsu extends MTBOperator {
 		@Parameter(label = "Threshold", supplemental = false, direction = Direction.OUT, description = "Result threshold")
 		private MTBDoubleData threshold = null;
 
+		/**
+		 * Number of classes, i.e. number of thresholds plus one.
+		 */
+		@Parameter(label = "Number of classes", required = false, 
+			dataIOOrder = 2, direction = Direction.IN, mode = ExpertMode.ADVANCED,
+			description = "Number of classes, i.e. number of thresholds + 1.")
+		private int classNum = 2;
+
+		/**
+		 * Flag to calculate thresholds for each time frame separately.
+		 */
+		@Parameter(label = "Thresholds per frame", required = false, 
+			dataIOOrder = 3, direction = Direction.IN, mode = ExpertMode.ADVANCED,
+			description = "Calculate thresholds for each time frame of the image.")
+		private boolean perFrame = false;
+
+		/**
+		 * Number of frames considered for the thresholds of each frame.
+		 * <p>
+		 * The thresholds of frame t are calculated from the histogram of 
+		 * frames t-w+1 to t.
+		 */
+		@Parameter(label = "Frame window size", required = false, 
+			dataIOOrder = 4, direction = Direction.IN, mode = ExpertMode.ADVANCED,
+			description = "Number of frames contributing to thresholds of a frame.")
+		private int frameWindow = 1;
+
+		/**
+		 * Number of threads for histogram calculation.
+		 */
+		@Parameter(label = "Number of threads", required = false, 
+			dataIOOrder = 5, direction = Direction.IN, mode = ExpertMode.ADVANCED,
+			description = "Number of threads, if <= 0 all available cores are used.")
+		private int threadNum = 1;
+
+		/**
+		 * Result thresholds in ascending order.
+		 */
+		@Parameter(label = "Thresholds", supplemental = false, 
+			direction = Direction.OUT, description = "Result thresholds")
+		private double[] thresholds = null;
+
+		/**
+		 * Result thresholds per time frame, only in frame mode.
+		 */
+		@Parameter(label = "Thresholds per frame", supplemental = false, 
+			direction = Direction.OUT, description = "Thresholds per frame")
+		private double[][] frameThresholds = null;
+
 		/**
 		 * Default constructor.
 		 * 
@@ -164,10 +224,50 @@ public class CalcGlobalThreshOtsu extends MTBOperator {
 						throw new ALDOperatorException(OperatorExceptionType.OPERATE_FAILED,
 						    "[CalcGlobalThreshOtsu] "
 						        + "No input data, specify either an image or a histogram!");
+				if (this.classNum < 2)
+						throw new ALDOperatorException(OperatorExceptionType.VALIDATION_FAILED,
+						    "[CalcGlobalThreshOtsu] At least two classes required!");
+				if (this.perFrame && this.inImg == null)
+						throw new ALDOperatorException(OperatorExceptionType.VALIDATION_FAILED,
+						    "[CalcGlobalThreshOtsu] Thresholds per frame require an image!");
+				if (this.perFrame && this.frameWindow < 1)
+						throw new ALDOperatorException(OperatorExceptionType.VALIDATION_FAILED,
+						    "[CalcGlobalThreshOtsu] Frame window needs to contain a frame!");
+		}
+
+		/**
+		 * Set the number of classes.
+		 * 
+		 * @param num		Number of classes, i.e. number of thresholds + 1.
+		 */
+		public void setClassNum(int num) {
+				this.classNum = num;
+		}
+
+		/**
+		 * Enable or disable calculation of thresholds per time frame.
+		 * 
+		 * @param flag				If true, thresholds are calculated per frame.
+		 * @param windowSize	Number of frames contributing to each frame.
+		 */
+		public void setPerFrame(boolean flag, int windowSize) {
+				this.perFrame = flag;
+				this.frameWindow = windowSize;
+		}
+
+		/**
+		 * Set the number of threads for histogram calculation.
+		 * 
+		 * @param num		Number of threads, if <= 0 all cores are used.
+		 */
+		public void setThreadNum(int num) {
+				this.threadNum = num;
 		}
 
 		/**
 		 * Get the resulting threshold.
+		 * <p>
+		 * In frame mode the first threshold of the last frame is returned.
 		 * 
 		 * @return Otsu threshold.
 		 */
@@ -175,18 +275,241 @@ public class CalcGlobalThreshOtsu extends MTBOperator {
 				return this.threshold;
 		}
 
+		/**
+		 * Get all resulting thresholds in ascending order.
+		 * <p>
+		 * In frame mode the thresholds of the last frame are returned.
+		 * 
+		 * @return Otsu thresholds.
+		 */
+		public double[] getOtsuThresholds() {
+				return this.thresholds;
+		}
+
+		/**
+		 * Get the resulting thresholds of each time frame.
+		 * 
+		 * @return Thresholds indexed by frame, null if not in frame mode.
+		 */
+		public double[][] getOtsuThresholdsPerFrame() {
+				return this.frameThresholds;
+		}
+
 		@Override
-		protected void operate() {
+		protected void operate() throws ALDOperatorException {
 			if (this.verbose.booleanValue())
 				System.out.println("[CalcGlobalThreshOtsu] Processing image...");
-			if (this.inImg != null)
-				this.threshold = this.calcThreshold(this.inImg);
+			this.frameThresholds = null;
+			if (this.perFrame) {
+				this.calcFrameThresholds(this.inImg);
+			}
+			else if (this.inImg != null) {
+				this.thresholds = this.calcThresholds(this.inImg);
+			}
 			else {
 				// copy input histogram since histogram will be modified
 				// during Otsu calculations
 				MTBImageHistogram workHisto = this.inHisto.duplicate();
-				this.threshold = this.calcThreshold(workHisto);
+				this.thresholds = this.calcThresholds(workHisto);
 			}
+			this.threshold = new MTBDoubleData(new Double(this.thresholds[0]));
+		}
+
+		/**
+		 * Calculate Otsu thresholds on given image.
+		 * 
+		 * @param image
+		 *          MiToBo image.
+		 * @return Calculated Otsu thresholds.
+		 * @throws ALDOperatorException Thrown in case of failure.
+		 */
+		private double[] calcThresholds(MTBImage image) 
+				throws ALDOperatorException {
+				if (this.classNum == 2)
+						return new double[]{this.calcThreshold(image).getValue().doubleValue()};
+				double minBinValue = image.getMinMaxDouble()[0];
+				double maxBinValue = image.getMinMaxDouble()[1];
+				if (minBinValue == maxBinValue)
+						return this.constantThresholds(minBinValue);
+				return this.calcMultiLevelThresholds(new MTBImageHistogram(image, 
+					this.getBinCount(minBinValue, maxBinValue), minBinValue, maxBinValue,
+						this.threadNum));
+		}
+
+		/**
+		 * Calculate Otsu thresholds on given histogram.
+		 * 
+		 * @param histo
+		 *          Histogram, might be modified.
+		 * @return Calculated Otsu thresholds.
+		 * @throws ALDOperatorException Thrown in case of failure.
+		 */
+		private double[] calcThresholds(MTBImageHistogram histo) 
+				throws ALDOperatorException {
+				if (this.classNum == 2)
+						return new double[]{this.calcThreshold(histo).getValue().doubleValue()};
+				return this.calcMultiLevelThresholds(histo);
+		}
+
+		/**
+		 * Calculate Otsu thresholds for each time frame of the given image.
+		 * <p>
+		 * All frames share the binning defined by the value range of the 
+		 * whole image. The histogram is maintained over a sliding window of 
+		 * frames, i.e. for each frame the new frame is added and the frame 
+		 * leaving the window is removed.
+		 * 
+		 * @param image
+		 *          MiToBo image.
+		 * @throws ALDOperatorException Thrown in case of failure.
+		 */
+		private void calcFrameThresholds(MTBImage image) 
+				throws ALDOperatorException {
+				int sizeT = image.getSizeT();
+				this.frameThresholds = new double[sizeT][];
+				double minBinValue = image.getMinMaxDouble()[0];
+				double maxBinValue = image.getMinMaxDouble()[1];
+				if (minBinValue == maxBinValue) {
+						for (int t = 0; t < sizeT; ++t)
+								this.frameThresholds[t] = this.constantThresholds(minBinValue);
+						this.thresholds = this.frameThresholds[sizeT - 1];
+						return;
+				}
+				int binCount = this.getBinCount(minBinValue, maxBinValue);
+				MTBImageHistogram windowHisto = new MTBImageHistogram(
+					new double[binCount], minBinValue, 
+						(maxBinValue - minBinValue) / (binCount - 1));
+				for (int t = 0; t < sizeT; ++t) {
+						windowHisto.updateFrame(image, t, 1.0, this.threadNum);
+						if (t >= this.frameWindow)
+								windowHisto.updateFrame(image, t - this.frameWindow, -1.0, 
+									this.threadNum);
+						if (this.verbose.booleanValue())
+								System.out.println("[CalcGlobalThreshOtsu] Frame " + t + "...");
+						this.frameThresholds[t] = this.calcThresholds(windowHisto.duplicate());
+				}
+				this.thresholds = this.frameThresholds[sizeT - 1];
+		}
+
+		/**
+		 * Get thresholds for an image with a single value.
+		 * 
+		 * @param value		Value of the image.
+		 * @return	Thresholds all equal to the value.
+		 */
+		private double[] constantThresholds(double value) {
+				double[] result = new double[this.classNum - 1];
+				for (int i = 0; i < result.length; ++i)
+						result[i] = value;
+				return result;
+		}
+
+		/**
+		 * Get the number of histogram bins for the given value range.
+		 * 
+		 * @param minBinValue		Minimal value.
+		 * @param maxBinValue		Maximal value.
+		 * @return	Number of bins, not less than 128 neither more than 1024.
+		 */
+		private int getBinCount(double minBinValue, double maxBinValue) {
+				int binCount = (int) (maxBinValue - minBinValue + 1);
+				if (binCount < 128)
+						binCount = 128;
+				if (binCount > 1024)
+						binCount = 1024;
+				return binCount;
+		}
+
+		/**
+		 * Calculate multi-level Otsu thresholds on given histogram.
+		 * <p>
+		 * With cumulative weights P and weighted sums S the between-class 
+		 * variance of a partition is, up to a constant, given by the sum of 
+		 * S_c^2 / P_c over all classes c. The best partition into k classes of 
+		 * the first j bins is obtained from the best partitions into k-1 
+		 * classes of all shorter prefixes. 
+		 * 
+		 * @param histo
+		 *          Histogram.
+		 * @return Calculated Otsu thresholds in ascending order.
+		 * @throws ALDOperatorException Thrown if there are less bins than classes.
+		 */
+		private double[] calcMultiLevelThresholds(MTBImageHistogram histo) 
+				throws ALDOperatorException {
+				int binCount = histo.getSize();
+				int k = this.classNum;
+				if (binCount < k)
+						throw new ALDOperatorException(OperatorExceptionType.OPERATE_FAILED,
+						    "[CalcGlobalThreshOtsu] Histogram has less bins than classes!");
+
+				// cumulative moment tables, index j refers to the first j bins
+				double[] p = new double[binCount + 1];
+				double[] s = new double[binCount + 1];
+				for (int i = 0; i < binCount; ++i) {
+						p[i + 1] = p[i] + histo.getBinValue(i);
+						s[i + 1] = s[i] + histo.mapIndexToValue(i) * histo.getBinValue(i);
+				}
+				// normalize, does not change the optimal partition
+				double total = p[binCount];
+				if (total > 0) {
+						for (int j = 0; j <= binCount; ++j) {
+								p[j] /= total;
+								s[j] /= total;
+						}
+				}
+
+				// best[m][j]: best partition of first j bins into m+1 classes,
+				// split[m][j]: number of bins in the first m classes
+				double[][] best = new double[k][binCount + 1];
+				int[][] split = new int[k][binCount + 1];
+				for (int j = 1; j <= binCount; ++j)
+						best[0][j] = classScore(p, s, 0, j);
+				for (int m = 1; m < k; ++m) {
+						for (int j = m + 1; j <= binCount; ++j) {
+								double max = Double.NEGATIVE_INFINITY;
+								int arg = m;
+								for (int i = m; i < j; ++i) {
+										double score = best[m - 1][i] + classScore(p, s, i, j);
+										if (score > max) {
+												max = score;
+												arg = i;
+										}
+								}
+								best[m][j] = max;
+								split[m][j] = arg;
+						}
+				}
+
+				// backtrack, threshold is value of last bin of lower class
+				double[] result = new double[k - 1];
+				int j = binCount;
+				for (int m = k - 1; m > 0; --m) {
+						j = split[m][j];
+						result[m - 1] = histo.mapIndexToValue(j - 1);
+				}
+				if (this.verbose.booleanValue()) {
+						for (int m = 0; m < k - 1; ++m)
+								System.out.println("[CalcGlobalThreshOtsu] Otsu threshold #" 
+									+ m + " = " + result[m]);
+				}
+				return result;
+		}
+
+		/**
+		 * Score of a class in the between-class variance.
+		 * 
+		 * @param p		Cumulative weights.
+		 * @param s		Cumulative weighted sums.
+		 * @param i		Number of bins before the class.
+		 * @param j		Number of bins up to the end of the class.
+		 * @return	Squared weighted sum divided by weight, zero for empty class.
+		 */
+		private static double classScore(double[] p, double[] s, int i, int j) {
+				double w = p[j] - p[i];
+				if (w <= 0)
+						return 0;
+				double sum = s[j] - s[i];
+				return sum * sum / w;
 		}
 
 		/**
@@ -225,7 +548,7 @@ public class CalcGlobalThreshOtsu extends MTBOperator {
 						System.out.println("[CalcGlobalThreshOtsu] Using " + binCount + " bins.");
 				}
 				MTBImageHistogram histo = new MTBImageHistogram(image, binCount,
-				    minBinValue, maxBinValue);
+				    minBinValue, maxBinValue, this.threadNum);
 				return this.calcThreshold(histo);
 		}
 
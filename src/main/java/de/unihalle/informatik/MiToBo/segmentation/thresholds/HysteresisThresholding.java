@@ -22,16 +22,28 @@
  *
  */
 
+
 package de.unihalle.informatik.MiToBo.segmentation.thresholds;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
 import de.unihalle.informatik.Alida.annotations.ALDAOperator;
 import de.unihalle.informatik.Alida.annotations.ALDAOperator.Level;
 import de.unihalle.informatik.Alida.annotations.Parameter;
+import de.unihalle.informatik.Alida.annotations.Parameter.ExpertMode;
 import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
+import de.unihalle.informatik.Alida.exceptions.ALDOperatorException.OperatorExceptionType;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImageByte;
 import de.unihalle.informatik.MiToBo.core.operator.MTBOperator;
+import de.unihalle.informatik.MiToBo.math.graphs.UnionFind;
 
 /**
  * Hysteresis thresholding on gray-scale images.
@@ -44,6 +56,17 @@ import de.unihalle.informatik.MiToBo.core.operator.MTBOperator;
  * with an intensity value equal or larger than {@latex.inline $t_{h}$}. 
  * <p>
  * This thresholding heuristic is, e.g., used in the Canny edge detector.
+ * <p>
+ * Instead of global thresholds images with per-pixel lower and upper 
+ * thresholds can be specified for adaptive hysteresis thresholding.
+ * 3D stacks are processed as volumes using the 6- or 26-neighborhood, 
+ * for 2D images the 4- or 8-neighborhood is used. Time points and 
+ * channels are processed independently of each other.
+ * <p>
+ * If more than one thread is used the image is partitioned into slabs 
+ * of slices, or bands of rows for 2D images, which are labeled in 
+ * parallel. Components touching at slab borders are merged by union-find 
+ * and all components containing a strong pixel form the foreground.
  * 
  * @author moeller
  */
@@ -51,6 +74,40 @@ import de.unihalle.informatik.MiToBo.core.operator.MTBOperator;
 	level = Level.APPLICATION)
 public class HysteresisThresholding extends MTBOperator {
 
+	/**
+	 * Neighborhood used in region growing.
+	 */
+	public static enum Neighborhood {
+		/**
+		 * 4-neighborhood in 2D, 6-neighborhood in 3D.
+		 */
+		NEIGHBORHOOD_4_6,
+		/**
+		 * 8-neighborhood in 2D, 26-neighborhood in 3D.
+		 */
+		NEIGHBORHOOD_8_26
+	}
+
+	/**
+	 * State of pixels below the lower threshold.
+	 */
+	private static final byte stateBackground = 0;
+
+	/**
+	 * State of pixels between lower and upper threshold.
+	 */
+	private static final byte stateWeak = 1;
+
+	/**
+	 * State of pixels above the upper threshold.
+	 */
+	private static final byte stateStrong = 2;
+
+	/**
+	 * State of pixels assigned to the foreground.
+	 */
+	private static final byte stateForeground = 3;
+
 	/**
 	 * Image to process.
 	 */
@@ -72,6 +129,45 @@ public class HysteresisThresholding extends MTBOperator {
 		direction = Parameter.Direction.IN, description = "Lower threshold.")
 	protected Double threshLow = new Double(0);
 
+	/**
+	 * Optional image of per-pixel upper thresholds.
+	 * <p>
+	 * If given, the global upper threshold is ignored.
+	 */
+	@Parameter(label = "Upper Threshold Image", required = false, 
+		dataIOOrder = 3, direction = Parameter.Direction.IN, 
+		mode = ExpertMode.ADVANCED, 
+		description = "Optional image with upper threshold of each pixel.")
+	protected transient MTBImage threshHighImg = null;
+
+	/**
+	 * Optional image of per-pixel lower thresholds.
+	 * <p>
+	 * If given, the global lower threshold is ignored.
+	 */
+	@Parameter(label = "Lower Threshold Image", required = false, 
+		dataIOOrder = 4, direction = Parameter.Direction.IN, 
+		mode = ExpertMode.ADVANCED, 
+		description = "Optional image with lower threshold of each pixel.")
+	protected transient MTBImage threshLowImg = null;
+
+	/**
+	 * Neighborhood.
+	 */
+	@Parameter(label = "Neighborhood", required = false, dataIOOrder = 5,
+		direction = Parameter.Direction.IN, mode = ExpertMode.ADVANCED, 
+		description = "Neighborhood used in region growing.")
+	protected Neighborhood neighborhood = Neighborhood.NEIGHBORHOOD_8_26;
+
+	/**
+	 * Number of threads, if <= 0 all available cores are used.
+	 */
+	@Parameter(label = "Number of threads", required = false, 
+		dataIOOrder = 6, direction = Parameter.Direction.IN, 
+		mode = ExpertMode.ADVANCED,
+		description = "Number of threads, if <= 0 all available cores are used.")
+	protected int threadNum = 1;
+
 	/**
 	 * Resulting binarized image.
 	 */
@@ -79,6 +175,46 @@ public class HysteresisThresholding extends MTBOperator {
 		description = "Thresholded binary image.")
 	protected transient MTBImageByte resultImage = null;
 
+	/**
+	 * Width of the image.
+	 */
+	private int width;
+	
+	/**
+	 * Height of the image.
+	 */
+	private int height;
+	
+	/**
+	 * Depth of the image.
+	 */
+	private int depth;
+
+	/**
+	 * Neighbor offsets in x.
+	 */
+	private int[] dx;
+
+	/**
+	 * Neighbor offsets in y.
+	 */
+	private int[] dy;
+
+	/**
+	 * Neighbor offsets in z.
+	 */
+	private int[] dz;
+	
+	/**
+	 * Linear index offsets of neighbors.
+	 */
+	private int[] offsets;
+
+	/**
+	 * Linear start indices of the tiles, last entry is the number of pixels.
+	 */
+	private int[] tileStart;
+
 	/**
 	 * Standard constructor. A new empty operator object is initialized.
 	 */
@@ -86,48 +222,407 @@ public class HysteresisThresholding extends MTBOperator {
 		// nothing to do here
 	}
 
+	@Override
+	public void validateCustom() throws ALDOperatorException {
+		this.validateThresholdImage(this.threshHighImg, "upper");
+		this.validateThresholdImage(this.threshLowImg, "lower");
+		if (   (long)this.inImg.getSizeX() * this.inImg.getSizeY() 
+				   * this.inImg.getSizeZ() > Integer.MAX_VALUE)
+			throw new ALDOperatorException(OperatorExceptionType.VALIDATION_FAILED,
+				"[HysteresisThresholding] image stack too large!");
+	}
+
+	/**
+	 * Checks if the size of a threshold image fits the input image.
+	 * <p>
+	 * Threshold images with a single time point or channel are applied to 
+	 * all time points or channels of the input image, respectively.
+	 * 
+	 * @param img		Threshold image, may be null.
+	 * @param name	Name of the threshold for error messages.
+	 * @throws ALDOperatorException	Thrown if size does not match.
+	 */
+	private void validateThresholdImage(MTBImage img, String name) 
+			throws ALDOperatorException {
+		if (img == null)
+			return;
+		if (   img.getSizeX() != this.inImg.getSizeX()
+				|| img.getSizeY() != this.inImg.getSizeY()
+				|| img.getSizeZ() != this.inImg.getSizeZ()
+				|| (img.getSizeT() != 1 && img.getSizeT() != this.inImg.getSizeT())
+				|| (img.getSizeC() != 1 && img.getSizeC() != this.inImg.getSizeC()))
+			throw new ALDOperatorException(OperatorExceptionType.VALIDATION_FAILED,
+				"[HysteresisThresholding] size of " + name 
+					+ " threshold image does not match!");
+	}
+
 	/* (non-Javadoc)
 	 * @see de.unihalle.informatik.Alida.operator.ALDOperator#operate()
 	 */
 	@Override
-	protected void operate() {
+	protected void operate() throws ALDOperatorException {
 		
 		// define some local variables
-		int width = this.inImg.getSizeX();
-		int height = this.inImg.getSizeY();
-		double th = this.threshHigh.doubleValue();
-		double tl = this.threshLow.doubleValue();
+		this.width = this.inImg.getSizeX();
+		this.height = this.inImg.getSizeY();
+		this.depth = this.inImg.getSizeZ();
+		int sizeT = this.inImg.getSizeT();
+		int sizeC = this.inImg.getSizeC();
+		int n = this.width * this.height * this.depth;
+		this.initNeighborhood();
+
+		// partition image into slabs of slices or bands of rows
+		int threads = (this.threadNum <= 0) ? 
+				Runtime.getRuntime().availableProcessors() : this.threadNum;
+		int layerSize = (this.depth > 1) ? 
+				this.width * this.height : this.width;
+		int layerNum = (this.depth > 1) ? this.depth : this.height;
+		int tileNum = Math.max(1, Math.min(threads, layerNum));
+		this.tileStart = new int[tileNum + 1];
+		for (int i = 0; i <= tileNum; ++i)
+			this.tileStart[i] = (int)((long)layerNum * i / tileNum) * layerSize;
 
 		// allocate result image and init with zeros
 		this.resultImage = (MTBImageByte)MTBImage.createMTBImage(
-			width, height, 1, 1, 1, MTBImageType.MTB_BYTE);
-		boolean[][] procMap = new boolean[height][width];
-		// map to store which pixels have been processed already
-		for (int y=0; y<height; ++y) {
-			for (int x=0; x<width; ++x) {
-				procMap[y][x] = false;
+			this.width, this.height, this.depth, sizeT, sizeC, 
+			MTBImageType.MTB_BYTE);
+		this.resultImage.setTitle("Hysteresis thresholding result of <" 
+			+ this.inImg.getTitle() + ">");
+		
+		// pixel states, labels of components only required for tiling
+		byte[] state = new byte[n];
+		int[] labels = (tileNum > 1) ? new int[n] : null;
+		ForkJoinPool pool = (tileNum > 1) ? new ForkJoinPool(tileNum) : null;
+		try {
+			for (int t = 0; t < sizeT; ++t) {
+				for (int c = 0; c < sizeC; ++c) {
+					final int time = t, channel = c;
+					this.runPerTile(pool, 
+						(tile) -> this.classifyPixels(state, tile, time, channel));
+					if (pool == null) {
+						this.growSeeds(state);
+					}
+					else {
+						Arrays.fill(labels, 0);
+						this.growSeedsTiled(pool, state, labels);
+					}
+					this.runPerTile(pool, 
+						(tile) -> this.fillResult(state, tile, time, channel));
+				}
+			}
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+	}
+
+	/**
+	 * Initializes the neighbor offsets according to the neighborhood.
+	 */
+	private void initNeighborhood() {
+		boolean full = (this.neighborhood == Neighborhood.NEIGHBORHOOD_8_26);
+		int zr = (this.depth > 1) ? 1 : 0;
+		int[] ox = new int[26], oy = new int[26], oz = new int[26];
+		int count = 0;
+		for (int z = -zr; z <= zr; ++z) {
+			for (int y = -1; y <= 1; ++y) {
+				for (int x = -1; x <= 1; ++x) {
+					int dist = Math.abs(x) + Math.abs(y) + Math.abs(z);
+					if (dist == 0 || (!full && dist > 1))
+						continue;
+					ox[count] = x;
+					oy[count] = y;
+					oz[count] = z;
+					++count;
+				}
+			}
+		}
+		this.dx = Arrays.copyOf(ox, count);
+		this.dy = Arrays.copyOf(oy, count);
+		this.dz = Arrays.copyOf(oz, count);
+		this.offsets = new int[count];
+		for (int k = 0; k < count; ++k)
+			this.offsets[k] = (this.dz[k] * this.height + this.dy[k]) * this.width 
+				+ this.dx[k];
+	}
+
+	/**
+	 * Task to be run on a single tile.
+	 */
+	@FunctionalInterface
+	private interface TileTask {
+		/**
+		 * Processes the given tile.
+		 * @param tile	Index of the tile.
+		 */
+		void run(int tile);
+	}
+
+	/**
+	 * Runs a task for each tile, in parallel if a pool is given.
+	 * 
+	 * @param pool	Thread pool, if null tiles are processed sequentially.
+	 * @param task	Task to run.
+	 * @throws ALDOperatorException	Thrown if a task fails.
+	 */
+	private void runPerTile(ForkJoinPool pool, TileTask task) 
+			throws ALDOperatorException {
+		int tileNum = this.tileStart.length - 1;
+		if (pool == null) {
+			for (int i = 0; i < tileNum; ++i)
+				task.run(i);
+			return;
+		}
+		List<Callable<Void>> tasks = new ArrayList<>(tileNum);
+		for (int i = 0; i < tileNum; ++i) {
+			final int tile = i;
+			tasks.add(() -> {
+				task.run(tile);
+				return null;
+			});
+		}
+		try {
+			for (Future<Void> f: pool.invokeAll(tasks))
+				f.get();
+		} catch (ExecutionException e) {
+			throw new ALDOperatorException(OperatorExceptionType.OPERATE_FAILED, 
+				"[HysteresisThresholding] processing of tile failed: " 
+					+ e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ALDOperatorException(OperatorExceptionType.OPERATE_FAILED, 
+				"[HysteresisThresholding] thresholding interrupted!");
+		}
+	}
+
+	/**
+	 * Classifies the pixels of a tile into background, weak and strong ones.
+	 * 
+	 * @param state		Array of pixel states to fill.
+	 * @param tile		Index of the tile.
+	 * @param t				Time point to process.
+	 * @param c				Channel to process.
+	 */
+	private void classifyPixels(byte[] state, int tile, int t, int c) {
+		double th = this.threshHigh.doubleValue();
+		double tl = this.threshLow.doubleValue();
+		MTBImage hImg = this.threshHighImg, lImg = this.threshLowImg;
+		int ht = 0, hc = 0, lt = 0, lc = 0;
+		if (hImg != null) {
+			ht = (hImg.getSizeT() == 1) ? 0 : t;
+			hc = (hImg.getSizeC() == 1) ? 0 : c;
+		}
+		if (lImg != null) {
+			lt = (lImg.getSizeT() == 1) ? 0 : t;
+			lc = (lImg.getSizeC() == 1) ? 0 : c;
+		}
+		int start = this.tileStart[tile];
+		int x = start % this.width;
+		int y = (start / this.width) % this.height;
+		int z = start / (this.width * this.height);
+		for (int p = start; p < this.tileStart[tile + 1]; ++p) {
+			double v = this.inImg.getValueDouble(x, y, z, t, c);
+			if (hImg != null)
+				th = hImg.getValueDouble(x, y, z, ht, hc);
+			if (lImg != null)
+				tl = lImg.getValueDouble(x, y, z, lt, lc);
+			if (v >= th)
+				state[p] = stateStrong;
+			else if (v >= tl)
+				state[p] = stateWeak;
+			else
+				state[p] = stateBackground;
+			if (++x == this.width) {
+				x = 0;
+				if (++y == this.height) {
+					y = 0;
+					++z;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies the foreground pixels of a tile to the result image.
+	 * 
+	 * @param state		Array of pixel states.
+	 * @param tile		Index of the tile.
+	 * @param t				Time point to fill.
+	 * @param c				Channel to fill.
+	 */
+	private void fillResult(byte[] state, int tile, int t, int c) {
+		int start = this.tileStart[tile];
+		int x = start % this.width;
+		int y = (start / this.width) % this.height;
+		int z = start / (this.width * this.height);
+		for (int p = start; p < this.tileStart[tile + 1]; ++p) {
+			this.resultImage.putValueInt(x, y, z, t, c, 
+				(state[p] == stateForeground) ? 255 : 0);
+			if (++x == this.width) {
+				x = 0;
+				if (++y == this.height) {
+					y = 0;
+					++z;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of a neighbor if it lies inside of the image.
+	 * 
+	 * @param p		Linear index of the pixel.
+	 * @param k		Index of the neighbor offset.
+	 * @return	Linear index of the neighbor, -1 if outside of the image.
+	 */
+	private int getNeighbor(int p, int k) {
+		int x = p % this.width + this.dx[k];
+		if (x < 0 || x >= this.width)
+			return -1;
+		int y = (p / this.width) % this.height + this.dy[k];
+		if (y < 0 || y >= this.height)
+			return -1;
+		int z = p / (this.width * this.height) + this.dz[k];
+		if (z < 0 || z >= this.depth)
+			return -1;
+		return p + this.offsets[k];
+	}
+
+	/**
+	 * Grows all strong pixels into connected weak pixels.
+	 * <p>
+	 * Pixels reached from a strong pixel get the foreground state.
+	 * 
+	 * @param state		Array of pixel states.
+	 */
+	private void growSeeds(byte[] state) {
+		IntQueue queue = new IntQueue();
+		for (int s = 0; s < state.length; ++s) {
+			if (state[s] != stateStrong)
+				continue;
+			state[s] = stateForeground;
+			queue.push(s);
+			while (!queue.isEmpty()) {
+				int p = queue.pop();
+				for (int k = 0; k < this.offsets.length; ++k) {
+					int q = this.getNeighbor(p, k);
+					if (   q >= 0 
+							&& (state[q] == stateWeak || state[q] == stateStrong)) {
+						state[q] = stateForeground;
+						queue.push(q);
+					}
+				}
 			}
 		}
+	}
+
+	/**
+	 * Grows strong pixels into weak pixels with tiles processed in parallel.
+	 * <p>
+	 * Connected components of weak and strong pixels are labeled in each 
+	 * tile independently, then components touching at tile borders are 
+	 * merged. Components containing at least one strong pixel get the
+	 * foreground state.
+	 * 
+	 * @param pool		Thread pool.
+	 * @param state		Array of pixel states.
+	 * @param labels	Array for component labels, initialized with zeros.
+	 * @throws ALDOperatorException	Thrown if a task fails.
+	 */
+	private void growSeedsTiled(ForkJoinPool pool, byte[] state, int[] labels) 
+			throws ALDOperatorException {
+		int tileNum = this.tileStart.length - 1;
+		boolean[][] strong = new boolean[tileNum][];
+		this.runPerTile(pool, 
+			(tile) -> strong[tile] = this.labelComponents(state, labels, tile));
 		
-		// do hysteresis thresholding
-		for (int y=0; y<height; ++y) {
-			for (int x=0; x<width; ++x) {
-				if (this.inImg.getValueDouble(x,y) >= th) {
-					this.resultImage.putValueInt(x, y, 255);
-					// recursively label neighbours
-					labelNeighbors(this.inImg, this.resultImage, procMap, x, y, tl, th);
+		// merge components across tile borders
+		int[] base = new int[tileNum + 1];
+		for (int i = 0; i < tileNum; ++i)
+			base[i + 1] = base[i] + strong[i].length;
+		int[] parent = new int[base[tileNum]];
+		for (int i = 0; i < parent.length; ++i)
+			parent[i] = i;
+		int layerSize = (this.depth > 1) ? 
+				this.width * this.height : this.width;
+		for (int i = 0; i < tileNum - 1; ++i) {
+			int border = this.tileStart[i + 1];
+			for (int p = border - layerSize; p < border; ++p) {
+				if (labels[p] == 0)
+					continue;
+				for (int k = 0; k < this.offsets.length; ++k) {
+					int q = this.getNeighbor(p, k);
+					if (q < border || labels[q] == 0)
+						continue;
+					int r1 = UnionFind.findRoot(parent, base[i] + labels[p] - 1);
+					int r2 = UnionFind.findRoot(parent, base[i + 1] + labels[q] - 1);
+					if (r1 != r2)
+						parent[Math.max(r1, r2)] = Math.min(r1, r2);
 				}
-				else if (this.inImg.getValueDouble(x, y) < tl) {
-					this.resultImage.putValueInt(x, y, 0);	
+			}
+		}
+		
+		// components are foreground if any merged component has a strong pixel
+		boolean[] accepted = new boolean[parent.length];
+		for (int i = 0; i < tileNum; ++i)
+			for (int l = 0; l < strong[i].length; ++l)
+				if (strong[i][l])
+					accepted[UnionFind.findRoot(parent, base[i] + l)] = true;
+		for (int i = 0; i < parent.length; ++i)
+			accepted[i] = accepted[UnionFind.findRoot(parent, i)];
+		this.runPerTile(pool, (tile) -> {
+			for (int p = this.tileStart[tile]; p < this.tileStart[tile + 1]; ++p)
+				if (labels[p] > 0 && accepted[base[tile] + labels[p] - 1])
+					state[p] = stateForeground;
+		});
+	}
+
+	/**
+	 * Labels connected components of weak and strong pixels inside a tile.
+	 * 
+	 * @param state		Array of pixel states.
+	 * @param labels	Array to store labels, starting with 1 in each tile.
+	 * @param tile		Index of the tile.
+	 * @return	Flags indicating for each label if it contains a strong pixel.
+	 */
+	private boolean[] labelComponents(byte[] state, int[] labels, int tile) {
+		int start = this.tileStart[tile];
+		int end = this.tileStart[tile + 1];
+		boolean[] strong = new boolean[16];
+		int label = 0;
+		IntQueue queue = new IntQueue();
+		for (int s = start; s < end; ++s) {
+			if (state[s] == stateBackground || labels[s] != 0)
+				continue;
+			if (label == strong.length)
+				strong = Arrays.copyOf(strong, 2 * label);
+			++label;
+			labels[s] = label;
+			queue.push(s);
+			while (!queue.isEmpty()) {
+				int p = queue.pop();
+				if (state[p] == stateStrong)
+					strong[label - 1] = true;
+				for (int k = 0; k < this.offsets.length; ++k) {
+					int q = this.getNeighbor(p, k);
+					if (   q >= start && q < end 
+							&& state[q] != stateBackground && labels[q] == 0) {
+						labels[q] = label;
+						queue.push(q);
+					}
 				}
 			}
 		}
+		return Arrays.copyOf(strong, label);
 	}
 
 	/**
-	 * Function for recursive labeling of foreground pixels.
+	 * Function for labeling of foreground pixels in 2D.
 	 * <p>
-	 * Refer to the hysteresis threshold algorithm for details.
+	 * Labels all pixels connected to the given position in 8-neighborhood 
+	 * with values not below the lower threshold. The labeling is done by a
+	 * queue-based flood fill, hence, large regions no longer overflow the 
+	 * stack.
 	 * 
 	 * @param img				Input image.
 	 * @param result		Binary result image.
@@ -135,31 +630,96 @@ public class HysteresisThresholding extends MTBOperator {
 	 * @param x					Current x-position.
 	 * @param y					Current y-position.
 	 * @param tl				Lower threshold.
-	 * @param th				Higher threshold.
+	 * @param th				Higher threshold, not used.
+	 * @deprecated	The operator labels images by flood fill on flat arrays, 
+	 * 							this method is kept for subclasses only.
 	 */
+	@Deprecated
 	protected static void labelNeighbors(MTBImage img, MTBImage result,
 			boolean[][] procMap, 	int x, int y, double tl, double th) {
+		int w = img.getSizeX();
+		int h = img.getSizeY();
+		IntQueue queue = new IntQueue();
+		queue.push(y * w + x);
+		while (!queue.isEmpty()) {
+			int p = queue.pop();
+			int px = p % w;
+			int py = p / w;
+			for (int dy=-1;dy<=1;++dy) {
+				for (int dx=-1;dx<=1;++dx) {
+					int nx= px+dx;
+					int ny= py+dy;
+					if (nx<0 || nx>=w || ny<0 || ny>= h) 
+						continue;
+					if (   !procMap[ny][nx] 
+							&& img.getValueDouble(nx,ny) >= tl) {
+						result.putValueInt(nx, ny, 255);
+						procMap[ny][nx] = true;
+						queue.push(ny * w + nx);
+					}
+				}
+			}
+		}
+	}
 
-		// get size of image
-		int width= img.getSizeX();
-		int height= img.getSizeY();
-		
-		// explore neighborhood
-		for (int dy=-1;dy<=1;++dy) {
-			for (int dx=-1;dx<=1;++dx) {
-				int nx= x+dx;
-				int ny= y+dy;
-				
-				if (nx<0 || nx>=width || ny<0 || ny>= height) 
-					continue;
-				
-				if (   !procMap[ny][nx] 
-						&& img.getValueDouble(nx,ny) >= tl) {
-					result.putValueInt(nx, ny, 255);
-					procMap[ny][nx] = true;
-					labelNeighbors(img, result, procMap, nx, ny, tl, th);
+	/**
+	 * First-in first-out queue of primitive integers.
+	 */
+	private static class IntQueue {
+
+		/**
+		 * Buffer of queued elements.
+		 */
+		private int[] data = new int[1024];
+
+		/**
+		 * Index of the first element.
+		 */
+		private int head = 0;
+
+		/**
+		 * Index behind the last element.
+		 */
+		private int tail = 0;
+
+		/**
+		 * Appends an element to the queue.
+		 * @param v	Element to append.
+		 */
+		void push(int v) {
+			if (this.tail == this.data.length) {
+				if (this.head > this.data.length / 2) {
+					System.arraycopy(this.data, this.head, this.data, 0, 
+						this.tail - this.head);
+					this.tail -= this.head;
+					this.head = 0;
+				}
+				else {
+					this.data = Arrays.copyOf(this.data, 2 * this.data.length);
 				}
 			}
+			this.data[this.tail++] = v;
+		}
+
+		/**
+		 * Removes the first element from the queue.
+		 * @return	First element.
+		 */
+		int pop() {
+			int v = this.data[this.head++];
+			if (this.head == this.tail) {
+				this.head = 0;
+				this.tail = 0;
+			}
+			return v;
+		}
+
+		/**
+		 * Checks if the queue is empty.
+		 * @return	True if no elements are queued.
+		 */
+		boolean isEmpty() {
+			return this.head == this.tail;
 		}
 	}
 	
@@ -187,6 +747,38 @@ public class HysteresisThresholding extends MTBOperator {
 		this.threshHigh = new Double(d);
 	}
 
+	/**
+	 * Specify image of per-pixel lower thresholds.
+	 * @param img		Threshold image, if null the global threshold is used.
+	 */
+	public void setLowerThresholdImage(MTBImage img) {
+		this.threshLowImg = img;
+	}
+
+	/**
+	 * Specify image of per-pixel higher thresholds.
+	 * @param img		Threshold image, if null the global threshold is used.
+	 */
+	public void setHigherThresholdImage(MTBImage img) {
+		this.threshHighImg = img;
+	}
+
+	/**
+	 * Set neighborhood.
+	 * @param n	Neighborhood to use.
+	 */
+	public void setNeighborhood(Neighborhood n) {
+		this.neighborhood = n;
+	}
+
+	/**
+	 * Set number of threads.
+	 * @param num	Number of threads, if <= 0 all available cores are used.
+	 */
+	public void setThreadNum(int num) {
+		this.threadNum = num;
+	}
+
 	/**
 	 * Returns the result image.
 	 * @return	Binary result image.
@@ -26,10 +26,25 @@ package de.unihalle.informatik.MiToBo.topology;
 
 import java.util.ArrayList;
 
+import de.unihalle.informatik.MiToBo.segmentation.basics.MTBSegmentationInterface;
+
 /** An abstract class to compute topological numbers for the 2D case.
  *
  * The pixels in the neighborhood are sorted as follows:
  * First the four 4-neighbors, then the four 8- but not 4-neighbors.
+ * <p>
+ * As a 2D neighborhood has only 256 different configurations, the 
+ * topological numbers are precomputed for all of them on construction
+ * of the first object of a subclass. A configuration is encoded as 
+ * bitmask where the 8 neighbors in the 3x3 window are mapped in 
+ * row-major order, i.e. bit 0 refers to (y,x) = (0,0), bit 3 to (1,0),
+ * bit 4 to (1,2) and bit 7 to (2,2), see {@link #getNeighborhoodMask}.
+ * Then {@link #topoNumberIsOne(int)} is a single array lookup.
+ * <p>
+ * A pixel is simple with regard to 8-connectivity of the foreground 
+ * and 4-connectivity of the background if both 
+ * <code>n8.topoNumberIsOne(mask)</code> and 
+ * <code>n4.topoNumberIsOne(~mask &amp; 0xFF)</code> hold.
  */
 
 
@@ -103,8 +118,125 @@ abstract public class MTBTopologicalNumber2D extends MTBTopologicalNumber {
 		}
 	}
 
+	/**
+	 * Lookup table with one entry per neighborhood configuration, 
+	 * true if topological number of configuration is one.
+	 * <p>
+	 * The table is shared among all objects of a subclass.
+	 */
+	protected boolean[] lookupTable;
+
+	/** Bit positions of the pixels in the 3x3 window in neighborhood masks,
+	 * memory layout is <code>maskBits[y][x]</code>, center is -1.
+	 */
+	private static final int[][] maskBits = new int[][] {
+		{ 0, 1, 2}, 
+		{ 3,-1, 4}, 
+		{ 5, 6, 7}
+	};
+
+	/** Compute the topological number for all 256 neighborhood configurations.
+	 * <p>
+	 * Must be called by subclasses after neighbors have been initialized.
+	 * 
+	 * @return Lookup table indexed by neighborhood masks.
+	 */
+	protected boolean[] computeLookupTable() {
+		boolean[] table = new boolean[256];
+		int[][][] nb = new int[1][3][3];
+		for ( int mask = 0 ; mask < 256 ; mask++ ) {
+			for ( int y = 0 ; y <= 2 ; y++) {
+				for ( int x = 0 ; x <= 2 ; x++) {
+					if ( y == 1 && x == 1 )
+						nb[0][y][x] = 0;
+					else
+						nb[0][y][x] = ((mask >> maskBits[y][x]) & 1);
+				}
+			}
+			table[mask] = computeTopoNumberIsOne( nb, 1);
+		}
+		return table;
+	}
+
+	/** Check if topological number is one for the neighborhood 
+	 * configuration encoded in <code>mask</code>.
+	 * <p>
+	 * This is a single table lookup and does not allocate any memory.
+	 * 
+	 * @param mask	Neighborhood bitmask, only the lower 8 bits are used.
+	 * @return	True if topological number is one.
+	 */
+	public boolean topoNumberIsOne( int mask) {
+		return this.lookupTable[mask & 0xFF];
+	}
+
+	/** Encode all pixels in <code>nbClasses3D[0]</code> with class 
+	 * <code>c</code> as neighborhood bitmask.
+	 * 
+	 * @param nbClasses3D	3x3x3 neighborhood, only z=0 slice is considered.
+	 * @param c	Class to consider.
+	 * @return	Neighborhood bitmask.
+	 */
+	public static int getNeighborhoodMask( int[][][] nbClasses3D, int c) {
+		int[][] nb = nbClasses3D[0];
+		int mask = 0;
+		if ( nb[0][0] == c ) mask |= 0x01;
+		if ( nb[0][1] == c ) mask |= 0x02;
+		if ( nb[0][2] == c ) mask |= 0x04;
+		if ( nb[1][0] == c ) mask |= 0x08;
+		if ( nb[1][2] == c ) mask |= 0x10;
+		if ( nb[2][0] == c ) mask |= 0x20;
+		if ( nb[2][1] == c ) mask |= 0x40;
+		if ( nb[2][2] == c ) mask |= 0x80;
+		return mask;
+	}
+
+	/** Encode all pixels in the 8-neighborhood of <code>(x,y)</code> 
+	 * in <code>segmentation</code> with class <code>c</code> as 
+	 * neighborhood bitmask.
+	 * 
+	 * @param segmentation	2D segmentation.
+	 * @param x	x-coordinate of current pixel.
+	 * @param y	y-coordinate of current pixel.
+	 * @param c	Class to consider.
+	 * @return	Neighborhood bitmask.
+	 */
+	public static int getNeighborhoodMask( 
+			MTBSegmentationInterface segmentation, int x, int y, int c) {
+		int mask = 0;
+		if ( segmentation.getClass(x-1, y-1, 0) == c ) mask |= 0x01;
+		if ( segmentation.getClass(x,   y-1, 0) == c ) mask |= 0x02;
+		if ( segmentation.getClass(x+1, y-1, 0) == c ) mask |= 0x04;
+		if ( segmentation.getClass(x-1, y,   0) == c ) mask |= 0x08;
+		if ( segmentation.getClass(x+1, y,   0) == c ) mask |= 0x10;
+		if ( segmentation.getClass(x-1, y+1, 0) == c ) mask |= 0x20;
+		if ( segmentation.getClass(x,   y+1, 0) == c ) mask |= 0x40;
+		if ( segmentation.getClass(x+1, y+1, 0) == c ) mask |= 0x80;
+		return mask;
+	}
+
+	@Override
+	public boolean topoNumberIsOne( MTBSegmentationInterface segmentation, 
+			int x, int y, int z, int c) {
+		if ( segmentation.getSizeZ() != 1 || debug )
+			return super.topoNumberIsOne( segmentation, x, y, z, c);
+		return this.lookupTable[ getNeighborhoodMask( segmentation, x, y, c)];
+	}
+
 	@Override
 	public boolean topoNumberIsOne( int [][][] nbPhases3D, int p) {
+		if ( debug ) 
+			return computeTopoNumberIsOne( nbPhases3D, p);
+		return this.lookupTable[ getNeighborhoodMask( nbPhases3D, p)];
+	}
+
+	/** Compute if topological number is one by explicitly labeling the 
+	 * connected components in the neighborhood, see 
+	 * {@link #topoNumberIsOne(int[][][], int)} for parameters.
+	 * <p>
+	 * This is used to fill the lookup table.
+	 */
+	protected boolean computeTopoNumberIsOne( int [][][] nbPhases3D, int p) {
 
 		// build the set X
 		for ( int y = 0 ; y <= 2 ; y++) {
@@ -32,6 +32,10 @@ package de.unihalle.informatik.MiToBo.topology;
 
 public class MTBTopologicalNumber2DN4 extends MTBTopologicalNumber2D {
 	
+	/** Lookup table shared by all objects of this class.
+	 */
+	private static volatile boolean[] lookupTableN4 = null;
+
 	/** Construct a class for this neighborhood definitions
 	 */
 	public MTBTopologicalNumber2DN4() {
@@ -40,6 +44,10 @@ public class MTBTopologicalNumber2DN4 extends MTBTopologicalNumber2D {
 		// dist == 1 gives 4-neighborhood
 		maxDist = 1.0f;
 		initNeighbors();
+		// concurrent constructors may compute the table twice, but identically
+		if ( lookupTableN4 == null )
+			lookupTableN4 = computeLookupTable();
+		lookupTable = lookupTableN4;
 	}
 
 	@Override
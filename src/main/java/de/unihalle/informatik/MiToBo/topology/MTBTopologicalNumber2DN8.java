@@ -30,6 +30,11 @@ package de.unihalle.informatik.MiToBo.topology;
  */
 
 public class MTBTopologicalNumber2DN8 extends MTBTopologicalNumber2D {
+
+	/** Lookup table shared by all objects of this class.
+	 */
+	private static volatile boolean[] lookupTableN8 = null;
+
 	/** Construct a class for this neighborhood definition
 	  */
 	public MTBTopologicalNumber2DN8() {
@@ -38,6 +43,10 @@ public class MTBTopologicalNumber2DN8 extends MTBTopologicalNumber2D {
 		// dist == 1.5 gives 8-neighborhood
 		maxDist = 1.5f;
 		initNeighbors();
+		// concurrent constructors may compute the table twice, but identically
+		if ( lookupTableN8 == null )
+			lookupTableN8 = computeLookupTable();
+		lookupTable = lookupTableN8;
 	}
 
 	@Override
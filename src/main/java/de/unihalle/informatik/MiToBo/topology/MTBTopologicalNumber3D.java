@@ -0,0 +1,352 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.topology;
+
+import java.util.ArrayList;
+
+import de.unihalle.informatik.MiToBo.segmentation.basics.MTBSegmentationInterface;
+
+/** An abstract class to compute topological numbers for the 3D case.
+ * <p>
+ * The voxels in the neighborhood are sorted as follows:
+ * First the six 6-neighbors, then the twelve 18- but not 6-neighbors,
+ * and finally the eight 26- but not 18-neighbors. Subclasses only
+ * use as many of these as relevant for their topological number, 
+ * i.e. 18 for the 6-neighborhood and 26 for the 26-neighborhood.
+ * <p>
+ * As there are 2^26 configurations of a 3D neighborhood, no full lookup 
+ * table is used. Instead, neighborhoods are encoded as bitmasks where 
+ * the voxel at <code>(z,y,x)</code> in the 3x3x3 window is mapped to 
+ * bit <code>9*z + 3*y + x</code>, see {@link #getNeighborhoodMask}. 
+ * The bit of the center voxel (bit 13) is ignored. 
+ * Connected components are then labeled by bit operations on the masks
+ * using precomputed adjacency masks, which does not allocate memory.
+ * <p>
+ * In addition, {@link #isSimplePoint(int)} checks if a voxel is simple 
+ * with regard to 26-connectivity of the foreground and 6-connectivity 
+ * of the background. It first checks Euler invariance using a table with
+ * 128 entries indexed by octant configurations and only then labels the
+ * 26-components of the neighborhood, see
+ * <p>
+ * Lee, T.-C. and Kashyap, R. L. and Chu, C.-N., Building skeleton models 
+ * via 3-D medial surface/axis thinning algorithms, CVGIP: Graphical Models
+ * and Image Processing, 56(6), pages 462-478, 1994.
+ *
+ * @author agent
+ */
+abstract public class MTBTopologicalNumber3D extends MTBTopologicalNumber {
+
+	/** Bit of the center voxel in neighborhood masks.
+	 */
+	public static final int CENTER_BIT = 13;
+
+	/** Mask of the six 6-neighbors.
+	 */
+	protected static final int MASK_N6;
+
+	/** Mask of the 18-neighbors (without center).
+	 */
+	protected static final int MASK_N18;
+
+	/** Mask of the 26-neighbors (without center).
+	 */
+	protected static final int MASK_N26 = ((1 << 27) - 1) & ~(1 << CENTER_BIT);
+
+	/** For each bit the mask of its 6-neighbors within the window,
+	 * center excluded.
+	 */
+	protected static final int[] adjacency6 = new int[27];
+
+	/** For each bit the mask of its 26-neighbors within the window,
+	 * center excluded.
+	 */
+	protected static final int[] adjacency26 = new int[27];
+
+	/** For each of the eight octants around the center the bits of its 
+	 * seven non-center voxels, ordered as required by {@link #eulerDelta}.
+	 */
+	private static final int[][] octantBits = new int[8][7];
+
+	/** Change of Euler characteristic (scaled by 8) when adding the center 
+	 * voxel to an octant, indexed by the configuration of the remaining 
+	 * seven voxels of the octant.
+	 */
+	private static final int[] eulerDelta = new int[128];
+
+	static {
+		int n6 = 0, n18 = 0;
+		for ( int b = 0 ; b < 27 ; b++ ) {
+			int z = b / 9, y = (b / 3) % 3, x = b % 3;
+			int d = Math.abs(z-1) + Math.abs(y-1) + Math.abs(x-1);
+			if ( d == 1 ) n6 |= 1 << b;
+			if ( d == 1 || d == 2 ) n18 |= 1 << b;
+			for ( int c = 0 ; c < 27 ; c++ ) {
+				if ( c == b || c == CENTER_BIT ) 
+					continue;
+				int dz = Math.abs(c / 9 - z);
+				int dy = Math.abs((c / 3) % 3 - y);
+				int dx = Math.abs(c % 3 - x);
+				if ( dz <= 1 && dy <= 1 && dx <= 1 ) {
+					adjacency26[b] |= 1 << c;
+					if ( dz + dy + dx == 1 )
+						adjacency6[b] |= 1 << c;
+				}
+			}
+		}
+		MASK_N6 = n6;
+		MASK_N18 = n18;
+
+		// octant with signs (sz,sy,sx) contains voxels (1+c*sz,1+b*sy,1+a*sx) 
+		// for a,b,c in {0,1}, local index a + 2*b + 4*c, center has index 0
+		for ( int o = 0 ; o < 8 ; o++ ) {
+			int sx = ((o & 1) == 0) ? -1 : 1;
+			int sy = ((o & 2) == 0) ? -1 : 1;
+			int sz = ((o & 4) == 0) ? -1 : 1;
+			for ( int l = 1 ; l < 8 ; l++ ) {
+				int a = l & 1, b = (l >> 1) & 1, c = (l >> 2) & 1;
+				octantBits[o][l-1] = 9*(1+c*sz) + 3*(1+b*sy) + (1+a*sx);
+			}
+		}
+		for ( int conf = 0 ; conf < 128 ; conf++ ) {
+			eulerDelta[conf] = 
+				octantEuler((conf << 1) | 1) - octantEuler(conf << 1);
+		}
+	}
+
+	/** Euler characteristic (scaled by 8) contributed by the lattice vertex
+	 * shared by the eight voxels of an octant.
+	 * <p>
+	 * Voxels are considered as closed unit cubes which yields 
+	 * 26-connectivity for the foreground. Each cell of the cube complex 
+	 * incident to the vertex contributes with weight 1 (vertex), 1/2 (edge), 
+	 * 1/4 (face) and 1/8 (cube), respectively.
+	 * 
+	 * @param conf	Configuration of the octant, bit a + 2*b + 4*c.
+	 * @return	Scaled Euler characteristic.
+	 */
+	private static int octantEuler( int conf) {
+		if ( conf == 0 )
+			return 0;
+		int edges = 0, faces = 0;
+		for ( int side = 0 ; side < 2 ; side++ ) {
+			// half edges along x, y and z, each surrounded by four voxels
+			int ex = 0, ey = 0, ez = 0;
+			for ( int l = 0 ; l < 8 ; l++ ) {
+				if ( (conf & (1 << l)) == 0 )
+					continue;
+				if ( (l & 1) == side ) ex = 1;
+				if ( ((l >> 1) & 1) == side ) ey = 1;
+				if ( ((l >> 2) & 1) == side ) ez = 1;
+			}
+			edges += ex + ey + ez;
+		}
+		for ( int l = 0 ; l < 8 ; l++ ) {
+			// quarter faces perpendicular to x, y and z, each shared by the 
+			// two voxels differing only in the respective coordinate
+			if ( (l & 1) == 0 && (conf & (0x03 << l)) != 0 ) 
+				faces++;
+			if ( (l & 2) == 0 && (conf & (0x05 << l)) != 0 ) 
+				faces++;
+			if ( (l & 4) == 0 && (conf & (0x11 << l)) != 0 ) 
+				faces++;
+		}
+		return 8 - 4*edges + 2*faces - Integer.bitCount( conf);
+	}
+
+	/** Count connected components of the bits set in <code>mask</code> 
+	 * with regard to the given adjacency.
+	 * 
+	 * @param mask	Bitmask of voxels.
+	 * @param adjacency	Adjacency masks per bit.
+	 * @param limit	Counting stops if this number of components is exceeded.
+	 * @return	Number of components, at most <code>limit+1</code>.
+	 */
+	protected static int countComponents( int mask, int[] adjacency, int limit) {
+		int count = 0;
+		while ( mask != 0 && count <= limit ) {
+			int comp = mask & -mask;
+			int frontier = comp;
+			while ( frontier != 0 ) {
+				int b = Integer.numberOfTrailingZeros( frontier);
+				frontier &= frontier - 1;
+				int nb = adjacency[b] & mask & ~comp;
+				comp |= nb;
+				frontier |= nb;
+			}
+			mask &= ~comp;
+			count++;
+		}
+		return count;
+	}
+
+	/** Check if the center voxel is simple with regard to 26-connectivity
+	 * of the foreground and 6-connectivity of the background, i.e. if 
+	 * adding or removing it does not change the topology.
+	 * 
+	 * @param mask	Neighborhood bitmask of the foreground.
+	 * @return	True if center voxel is simple.
+	 */
+	public static boolean isSimplePoint( int mask) {
+		// Euler invariance
+		int delta = 0;
+		for ( int o = 0 ; o < 8 ; o++ ) {
+			int[] bits = octantBits[o];
+			int conf = 0;
+			for ( int l = 0 ; l < 7 ; l++ ) 
+				conf |= ((mask >> bits[l]) & 1) << l;
+			delta += eulerDelta[conf];
+		}
+		if ( delta != 0 )
+			return false;
+		// exactly one 26-component in the neighborhood
+		return countComponents( mask & MASK_N26, adjacency26, 1) == 1;
+	}
+
+	/** Encode all voxels in <code>nbClasses3D</code> with class 
+	 * <code>c</code> as neighborhood bitmask, the center is not set.
+	 * 
+	 * @param nbClasses3D	3x3x3 neighborhood, layout [z][y][x].
+	 * @param c	Class to consider.
+	 * @return	Neighborhood bitmask.
+	 */
+	public static int getNeighborhoodMask( int[][][] nbClasses3D, int c) {
+		int mask = 0;
+		int b = 0;
+		for ( int z = 0 ; z <= 2 ; z++ ) 
+			for ( int y = 0 ; y <= 2 ; y++ ) 
+				for ( int x = 0 ; x <= 2 ; x++, b++ ) 
+					if ( nbClasses3D[z][y][x] == c ) 
+						mask |= 1 << b;
+		return mask & ~(1 << CENTER_BIT);
+	}
+
+	/** Encode all voxels in the 26-neighborhood of <code>(x,y,z)</code> 
+	 * in <code>segmentation</code> with class <code>c</code> as 
+	 * neighborhood bitmask.
+	 * 
+	 * @param segmentation	3D segmentation.
+	 * @param x	x-coordinate of current voxel.
+	 * @param y	y-coordinate of current voxel.
+	 * @param z	z-coordinate of current voxel.
+	 * @param c	Class to consider.
+	 * @return	Neighborhood bitmask.
+	 */
+	public static int getNeighborhoodMask( 
+			MTBSegmentationInterface segmentation, int x, int y, int z, int c) {
+		int mask = 0;
+		int b = 0;
+		for ( int dz = -1 ; dz <= 1 ; dz++ ) 
+			for ( int dy = -1 ; dy <= 1 ; dy++ ) 
+				for ( int dx = -1 ; dx <= 1 ; dx++, b++ ) 
+					if ( b != CENTER_BIT && 
+							segmentation.getClass( x+dx, y+dy, z+dz) == c ) 
+						mask |= 1 << b;
+		return mask;
+	}
+
+	/** Check if topological number is one for the neighborhood 
+	 * configuration encoded in <code>mask</code>.
+	 * <p>
+	 * This method does not allocate any memory.
+	 * 
+	 * @param mask	Neighborhood bitmask.
+	 * @return	True if topological number is one.
+	 */
+	abstract public boolean topoNumberIsOne( int mask);
+
+	@Override
+	public boolean topoNumberIsOne( MTBSegmentationInterface segmentation, 
+			int x, int y, int z, int c) {
+		return this.topoNumberIsOne( 
+				getNeighborhoodMask( segmentation, x, y, z, c));
+	}
+
+	@Override
+	public boolean topoNumberIsOne( int [][][] nbPhases3D, int p) {
+		if ( debug ) 
+			return computeTopoNumberIsOne( nbPhases3D, p);
+		return this.topoNumberIsOne( getNeighborhoodMask( nbPhases3D, p));
+	}
+
+	/** Compute if topological number is one by explicitly labeling the 
+	 * connected components in the neighborhood as in the 2D case, see 
+	 * {@link #topoNumberIsOne(int[][][], int)} for parameters.
+	 */
+	protected boolean computeTopoNumberIsOne( int [][][] nbPhases3D, int p) {
+		for ( int z = 0 ; z <= 2 ; z++) 
+			for ( int y = 0 ; y <= 2 ; y++) 
+				for ( int x = 0 ; x <= 2 ; x++) 
+					X[z][y][x] = ( nbPhases3D[z][y][x] == p );
+		computeN();
+		return hasOneCC();
+	}
+
+	/** Initializes the neighbor arrays for all voxels of the 3x3x3 window 
+	 * within euclidean distance <code>windowDist</code> to the center. 
+	 * Neighbors of neighbors are restricted to this set and to 
+	 * distance <code>maxDist</code>.
+	 * 
+	 * @param windowDist	Maximal distance of voxels in neighborhood.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void initNeighbors( float windowDist) {
+		// collect neighbors ordered by their distance to the center
+		ArrayList<Point3D> nbs = new ArrayList<Point3D>();
+		for ( int d = 1 ; d <= 3 ; d++ ) {
+			if ( Math.sqrt(d) > windowDist )
+				break;
+			for ( int z = 0 ; z <= 2 ; z++ ) 
+				for ( int y = 0 ; y <= 2 ; y++ ) 
+					for ( int x = 0 ; x <= 2 ; x++ ) 
+						if ( (x-1)*(x-1) + (y-1)*(y-1) + (z-1)*(z-1) == d )
+							nbs.add( new Point3D( z, y, x));
+		}
+		int num = nbs.size();
+		coordinatesNeighbors = nbs.toArray( new Point3D[num]);
+		offsetsNeighbors = new Point3D[num];
+		coordinatesNeighborNeighbors = new ArrayList[num];
+		offsetsNeighborNeighbors = new ArrayList[num];
+		coordinatesNeighborNeighborsByCoord = new ArrayList[3][3][3];
+
+		for ( int n = 0 ; n < num ; n++ ) {
+			Point3D pt = coordinatesNeighbors[n];
+			offsetsNeighbors[n] = 
+				new Point3D( pt.getZ()-1, pt.getY()-1, pt.getX()-1);
+			coordinatesNeighborNeighbors[n] = new ArrayList<Point3D>();
+			offsetsNeighborNeighbors[n] = new ArrayList<Point3D>();
+			coordinatesNeighborNeighborsByCoord[pt.getZ()][pt.getY()][pt.getX()] = 
+				coordinatesNeighborNeighbors[n];
+
+			for ( Point3D other : coordinatesNeighbors ) {
+				if ( other != pt && other.dist( pt) <= this.maxDist ) {
+					coordinatesNeighborNeighbors[n].add( other);
+					offsetsNeighborNeighbors[n].add( new Point3D( 
+							other.getZ() - pt.getZ(), other.getY() - pt.getY(), 
+							other.getX() - pt.getX()));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.topology;
+
+
+/** Class to compute topological numbers for the 3D case.
+ * This classes define the 26-neighborhood
+ *
+ * @author agent
+ */
+
+public class MTBTopologicalNumber3DN26 extends MTBTopologicalNumber3D {
+
+	/** Construct a class for this neighborhood definition
+	  */
+	public MTBTopologicalNumber3DN26() {
+		dimension = 3;
+		sizeNeighborhood = 26;
+		// dist == 1.8 gives 26-neighborhood
+		maxDist = 1.8f;
+		initNeighbors( 1.8f);
+	}
+
+	@Override
+	protected void computeN() {
+		// nothing to be done here, as X == N_26_1
+	}
+
+	@Override
+	public boolean topoNumberIsOne( int mask) {
+		return countComponents( mask & MASK_N26, adjacency26, 1) == 1;
+	}
+	
+	/** Test
+     */
+	public static void main(String [] args) {
+		MTBTopologicalNumber3DN26 t = new MTBTopologicalNumber3DN26();
+		t.print();
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.topology;
+
+
+/** Class to compute topological numbers for the 3D case.
+ * This classes define the 6-neighborhood, the topological number is
+ * computed on the 18-neighborhood of the current voxel.
+ *
+ * @author agent
+ */
+
+public class MTBTopologicalNumber3DN6 extends MTBTopologicalNumber3D {
+	
+	/** Construct a class for this neighborhood definitions
+	 */
+	public MTBTopologicalNumber3DN6() {
+		dimension = 3;
+		sizeNeighborhood = 6;
+		// dist == 1 gives 6-neighborhood
+		maxDist = 1.0f;
+		// 6- and 18-neighbors are relevant
+		initNeighbors( 1.5f);
+	}
+
+	@Override
+	protected void computeN() {
+		// visit each 18- but not 6-neighbor in this neighborhood
+		for ( int i = 6 ; i < 18 ; i ++ ) {
+			Point3D pt = coordinatesNeighbors[i];
+			if ( X[pt.getZ()][pt.getY()][pt.getX()] ) {
+				// if this voxel is true try to find a 6-neighbor
+				// that is also true - otherwise this voxel is not element of X
+				boolean found = false;
+				for ( Point3D nn : coordinatesNeighborNeighbors[i] ) {
+					if ( X[nn.getZ()][nn.getY()][nn.getX()] ) {
+						found = true;
+						break;
+					}
+				}
+				if ( ! found ) 
+					X[pt.getZ()][pt.getY()][pt.getX()] = false;
+			}
+		}
+	}
+
+	@Override
+	public boolean topoNumberIsOne( int mask) {
+		int m = mask & MASK_N18;
+		// remove 18-neighbors not 6-adjacent to a 6-neighbor in X
+		int edges = m & ~MASK_N6;
+		while ( edges != 0 ) {
+			int b = Integer.numberOfTrailingZeros( edges);
+			edges &= edges - 1;
+			if ( (adjacency6[b] & m & MASK_N6) == 0 )
+				m &= ~(1 << b);
+		}
+		return countComponents( m, adjacency6, 1) == 1;
+	}
+	
+	/** Test
+	  */
+	public static void main(String [] args) {
+		MTBTopologicalNumber3DN6 t = new MTBTopologicalNumber3DN6();
+		t.print();
+	}
+}
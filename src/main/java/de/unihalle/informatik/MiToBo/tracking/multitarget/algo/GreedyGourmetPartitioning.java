@@ -24,6 +24,8 @@
 
 package de.unihalle.informatik.MiToBo.tracking.multitarget.algo;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.SortedSet;
@@ -33,6 +35,7 @@ import java.util.Vector;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBGraph;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBGraphEdge;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBGraphNode;
+import de.unihalle.informatik.MiToBo.math.graphs.UnionFind;
 import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.abstracts.MatchingAdjacencyMatrix;
 import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.impl.PartitGraphNodeID;
 
@@ -40,6 +43,9 @@ import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.impl.PartitG
  * greedyGourmet graph partitioning algorithm following: <br>
  * J. Kutzera, "Gruppierung von LC/MS-Pseudospektren aus multiplen Messungen", 
  * Martin Luther University Halle-Wittenberg, 2009, Diploma Thesis
+ * <p>
+ * For large graphs {@link #computeSubgraphsUnionFind()} provides a faster alternative which
+ * merges subgraphs along the edges in the order of their weights.
  * 
  * @author Oliver Gress
  *
@@ -310,6 +316,188 @@ public class GreedyGourmetPartitioning {
 	}
 	
 
+	/**
+	 * Compute subgraphs by merging along edges in the order of their weights (largest first if weights are
+	 * maximized, smallest first otherwise). Two subgraphs are merged if they do not contain nodes of the same
+	 * partition. Subgraphs are kept in a union-find forest over node indices with the partitions of each
+	 * subgraph stored in a bitset at its root, hence, edges are sorted once and each merge is checked
+	 * in time linear in the number of partitions.
+	 * In contrast to {@link #computeSubgraphs()} no empty subgraphs are returned.
+	 * @return subgraphs, each containing the edges between its nodes that pass the limit
+	 */
+	public Vector<MTBGraph> computeSubgraphsUnionFind() {
+		
+		// get available nodes
+		PartitGraphNodeID[] nodes = this.adjMatrix.getNodes();
+		int N = nodes.length;
+		
+		// map partitionIDs to consecutive indices
+		TreeSet<Integer> partitionIDs = new TreeSet<Integer>();
+		for (int n = 0; n < N; n++)
+			partitionIDs.add(nodes[n].partitionID);
+		
+		HashMap<Integer, Integer> partitionIdx = new HashMap<Integer, Integer>();
+		for (Integer partitionID : partitionIDs)
+			partitionIdx.put(partitionID, partitionIdx.size());
+		
+		int[] part = new int[N];
+		for (int n = 0; n < N; n++)
+			part[n] = partitionIdx.get(nodes[n].partitionID);
+		
+		// collect edges between nodes of different partitions with weights passing the limit
+		int E = 0;
+		int[] src = new int[Math.max(N, 1)];
+		int[] tgt = new int[Math.max(N, 1)];
+		double[] weights = new double[Math.max(N, 1)];
+		
+		for (int i = 0; i < N; i++) {
+			for (int j = i+1; j < N; j++) {
+				if (part[i] == part[j])
+					continue;
+				
+				double w = this.adjMatrix.getWeight(nodes[i], nodes[j]);
+				
+				if (this.maxWeights ? (w > this.limit) : (w < this.limit)) {
+					if (E == src.length) {
+						src = Arrays.copyOf(src, 2*E);
+						tgt = Arrays.copyOf(tgt, 2*E);
+						weights = Arrays.copyOf(weights, 2*E);
+					}
+					src[E] = i;
+					tgt[E] = j;
+					weights[E] = w;
+					E++;
+				}
+			}
+		}
+		
+		// sort edges by weight, best first
+		int[] order = new int[E];
+		for (int e = 0; e < E; e++)
+			order[e] = e;
+		sortByWeight(order, weights, this.maxWeights);
+		
+		// union-find forest, partitions of non-singleton subgraphs are stored at their roots
+		int[] parents = new int[N];
+		int[] sizes = new int[N];
+		BitSet[] rootPartitions = new BitSet[N];
+		for (int n = 0; n < N; n++) {
+			parents[n] = n;
+			sizes[n] = 1;
+		}
+		
+		for (int k = 0; k < E; k++) {
+			int e = order[k];
+			int ra = UnionFind.findRoot(parents, src[e]);
+			int rb = UnionFind.findRoot(parents, tgt[e]);
+			
+			if (ra == rb)
+				continue;
+			
+			// subgraphs must not share a partition
+			boolean conflict;
+			if (sizes[ra] == 1 && sizes[rb] == 1)
+				conflict = (part[ra] == part[rb]);
+			else if (sizes[ra] == 1)
+				conflict = rootPartitions[rb].get(part[ra]);
+			else if (sizes[rb] == 1)
+				conflict = rootPartitions[ra].get(part[rb]);
+			else
+				conflict = rootPartitions[ra].intersects(rootPartitions[rb]);
+			
+			if (conflict)
+				continue;
+			
+			// union by size
+			int big = (sizes[ra] >= sizes[rb]) ? ra : rb;
+			int small = (big == ra) ? rb : ra;
+			
+			if (rootPartitions[big] == null) {
+				rootPartitions[big] = new BitSet();
+				rootPartitions[big].set(part[big]);
+			}
+			if (rootPartitions[small] == null)
+				rootPartitions[big].set(part[small]);
+			else
+				rootPartitions[big].or(rootPartitions[small]);
+			
+			rootPartitions[small] = null;
+			parents[small] = big;
+			sizes[big] += sizes[small];
+		}
+		
+		// create subgraphs in order of their first node
+		this.subgraphs = new Vector<MTBGraph>();
+		
+		int[] subgraphIdx = new int[N];
+		Arrays.fill(subgraphIdx, -1);
+		
+		@SuppressWarnings("unchecked")
+		MTBGraphNode<PartitGraphNodeID>[] gnodes = new MTBGraphNode[N];
+		
+		for (int n = 0; n < N; n++) {
+			int r = UnionFind.findRoot(parents, n);
+			
+			if (subgraphIdx[r] == -1) {
+				subgraphIdx[r] = this.subgraphs.size();
+				this.subgraphs.add(new MTBGraph());
+			}
+			
+			nodes[n].subgraphID = subgraphIdx[r];
+			gnodes[n] = new MTBGraphNode<PartitGraphNodeID>(nodes[n]);
+			this.subgraphs.get(subgraphIdx[r]).addNode(gnodes[n]);
+		}
+		
+		for (int e = 0; e < E; e++) {
+			int r = UnionFind.findRoot(parents, src[e]);
+			
+			if (r == UnionFind.findRoot(parents, tgt[e]))
+				this.subgraphs.get(subgraphIdx[r]).addEdge(new MTBGraphEdge(gnodes[src[e]], gnodes[tgt[e]], null, weights[e]));
+		}
+		
+		return this.subgraphs;
+	}
+	
+	/**
+	 * Stable sort of edge indices by their weights (bottom-up merge sort).
+	 * @param order edge indices to sort
+	 * @param weights edge weights
+	 * @param descending sort largest weights first if true, smallest first otherwise
+	 */
+	private static void sortByWeight(int[] order, double[] weights, boolean descending) {
+		int n = order.length;
+		int[] a = order;
+		int[] b = new int[n];
+		
+		for (int width = 1; width < n; width *= 2) {
+			for (int lo = 0; lo < n; lo += 2*width) {
+				int mid = Math.min(lo + width, n);
+				int hi = Math.min(lo + 2*width, n);
+				int i = lo, j = mid, k = lo;
+				
+				while (i < mid && j < hi) {
+					double wi = weights[a[i]];
+					double wj = weights[a[j]];
+					
+					if (descending ? (wj > wi) : (wj < wi))
+						b[k++] = a[j++];
+					else
+						b[k++] = a[i++];
+				}
+				while (i < mid)
+					b[k++] = a[i++];
+				while (j < hi)
+					b[k++] = a[j++];
+			}
+			int[] tmp = a;
+			a = b;
+			b = tmp;
+		}
+		
+		if (a != order)
+			System.arraycopy(a, 0, order, 0, n);
+	}
+	
 	/**
 	 * Connect nodes if case 1
 	 */
@@ -186,6 +186,14 @@ public class MultiObservationTrackerRBMCDAIMM extends MTBOperator {
 			description="A seed for the random number generator")
 	public long randomSeed;
 	
+	@Parameter(label="Number of threads", required=false, direction=Direction.IN,
+			description="Number of threads for the update of RBMCDA samples, if <= 0 all available cores are used")
+	public int threadNum = 1;
+	
+	@Parameter(label="Union-find partitioning", required=false, direction=Direction.IN,
+			description="Extract tracks by merging along edges sorted by weight (union-find) instead of greedyGourmet partitioning")
+	public boolean unionFindPartitioning = false;
+	
 	protected Random rand;
 
 	private double[] sampleJointProb = null;
@@ -461,6 +469,7 @@ public class MultiObservationTrackerRBMCDAIMM extends MTBOperator {
 		// init RBMCDA-IMM filter
 		MultiTargetRBMCDA<MotionModelID> rbmcda = new MultiTargetRBMCDA<MotionModelID>(this.rand, rbmcdainit, this.numSamples, da);
 		rbmcda.setESSPercentage(this.essPercentage);
+		rbmcda.setThreadNum(this.threadNum);
 		rbmcda.ostream = System.err;
 		
 		DataAssociation gtAssoc = null;
@@ -584,7 +593,7 @@ public class MultiObservationTrackerRBMCDAIMM extends MTBOperator {
 		
 		// find subgraphs, i.e. tracks, with maximum one observation for each time step
 		GreedyGourmetPartitioning ggp = new GreedyGourmetPartitioning(this.obsAssocAdjacency, true, 0.0);
-		Vector<MTBGraph> trackgraphs = ggp.computeSubgraphs();
+		Vector<MTBGraph> trackgraphs = this.unionFindPartitioning ? ggp.computeSubgraphsUnionFind() : ggp.computeSubgraphs();
 		
 		// write graph and subgraphs to dot-graph-file if specified
 		if (this.trackcolors == null) {
@@ -34,6 +34,7 @@ import de.unihalle.informatik.MiToBo.math.LinearTransformGaussNoise;
 import de.unihalle.informatik.MiToBo.math.distributions.impl.ExponentialDistribution;
 import de.unihalle.informatik.MiToBo.math.distributions.impl.GaussMixDistribution;
 import de.unihalle.informatik.MiToBo.math.distributions.impl.GaussianDistribution;
+import de.unihalle.informatik.MiToBo.math.linearalgebra.MTBSmallMatrixKernels;
 import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.abstracts.AbstractMultiState;
 import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.abstracts.AbstractMultiStateFactory;
 import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.impl.DataAssociationExclusive;
@@ -92,6 +93,10 @@ public class MultiTargetIMMFilter implements
 	protected GaussMixDistribution newbornStateDistrib;
 	protected Matrix newbornStateFromObs;
 	
+	/** workspace of the Kalman update: gain factor (state DOF x observation DOF) and whitened innovation */
+	private double[][] kalmanU;
+	private double[] kalmanV;
+	
 	
 	
 	/**
@@ -398,7 +403,7 @@ public class MultiTargetIMMFilter implements
 				
 				// compute P(x_n^t | M^t = j, Z^{1:t-1}) and merge mixture components
 				gm.setWeights(mu_ij); // this method also normalizes the weights
-				gauss_j[j] = this.predictors[j].transform(new GaussianDistribution(gm.getMean(), gm.getCovariance(), this.rand));
+				gauss_j[j] = this.predictors[j].transform(gm.getMean(), gm.getCovariance());
 			}
 			
 			// P(x_n^t | Z^{1:t-1}) as Gaussian mixture
@@ -437,7 +442,13 @@ public class MultiTargetIMMFilter implements
 			int n;         // target index
 			short targetID;
 			
-			Matrix Ht = this.projector.getTransformMatrix().transpose();
+			Matrix H = this.projector.getTransformMatrix();
+			
+			if (this.kalmanU == null || this.kalmanU.length != H.getColumnDimension()
+					|| this.kalmanV.length != H.getRowDimension()) {
+				this.kalmanU = new double[H.getColumnDimension()][H.getRowDimension()];
+				this.kalmanV = new double[H.getRowDimension()];
+			}
 			
 			int born = 0;
 			int existassoc = 0;
@@ -460,21 +471,35 @@ public class MultiTargetIMMFilter implements
 						double[] mu_j = new double[gm_state.getNumOfComponents()];
 						
 						Matrix z = observation.getStateContinuous(m);
-						Matrix x,P,Sinv,K,x_upd,P_upd;
+						Matrix x,P,K,x_upd,P_upd;
+						GaussianDistribution g_obs;
+						double[][] W;
 						
 						// update each component of the Gaussian mixture state distribution
 						for (int j = 0; j < mu_j.length; j++) {
 							
 							x = ((GaussianDistribution)gm_state.getPdf(j)).getMean();
 							P = ((GaussianDistribution)gm_state.getPdf(j)).getCovariance();
-							Sinv = (((GaussianDistribution)gm_obs.getPdf(j)).getCovariance()).inverse();
+							g_obs = (GaussianDistribution)gm_obs.getPdf(j);
 							
-							mu_j[j] = gm_obs.getPdf(j).p(z) * gm_obs.getWeight(j);
+							mu_j[j] = g_obs.p(z) * gm_obs.getWeight(j);
 							
-							K = P.times(Ht.times(Sinv));
+							// inverse Cholesky factor of the innovation covariance S = H*P*H^T + R
+							W = g_obs.getInverseCholeskyFactor();
 							
-							x_upd = x.plus(K.times(z.minus(this.projector.getTransformMatrix().times(x))));
-							P_upd = P.minus(K.times(this.projector.getTransformMatrix().times(P)));
+							if (W != null) {
+								x_upd = new Matrix(x.getRowDimension(), 1);
+								P_upd = new Matrix(P.getRowDimension(), P.getColumnDimension());
+								
+								MTBSmallMatrixKernels.kalmanUpdate(x.getArray(), P.getArray(), H.getArray(), z.getArray(), W,
+										x_upd.getArray(), P_upd.getArray(), this.kalmanU, this.kalmanV);
+							}
+							else {
+								K = P.times(H.transpose().times(g_obs.getInverseCovariance()));
+								
+								x_upd = x.plus(K.times(z.minus(H.times(x))));
+								P_upd = P.minus(K.times(H.times(P)));
+							}
 	
 							// update Gaussian component
 							gm_state.setPdf(j, new GaussianDistribution(x_upd, P_upd, this.rand));
@@ -553,6 +578,11 @@ public class MultiTargetIMMFilter implements
 		return this.p_obs;
 	}
 
+	@Override
+	public void setRandomGenerator(Random rand) {
+		this.rand = rand;
+	}
+
 	/**
 	 * Let targets die randomly using the specified distribution of target death and the internal random generator.
 	 * Used by RBMCDA!!
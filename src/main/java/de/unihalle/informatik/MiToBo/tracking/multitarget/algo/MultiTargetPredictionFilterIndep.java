@@ -24,6 +24,8 @@
 
 package de.unihalle.informatik.MiToBo.tracking.multitarget.algo;
 
+import java.util.Random;
+
 import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.abstracts.AbstractMultiState;
 import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.interfaces.Copyable;
 import de.unihalle.informatik.MiToBo.tracking.multitarget.distributions.abstracts.AbstractMultiObservationDistributionIndep;
@@ -42,4 +44,9 @@ public interface MultiTargetPredictionFilterIndep<T extends Copyable<?>> extends
 	@Override
 	public MultiTargetPredictionFilterIndep<T> copy();
 	
+	/**
+	 * Set the random generator used in prediction and update steps, e.g. to sample the death of targets
+	 */
+	public void setRandomGenerator(Random rand);
+	
 }
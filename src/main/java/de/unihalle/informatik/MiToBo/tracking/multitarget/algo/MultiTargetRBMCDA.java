@@ -29,8 +29,13 @@ import java.lang.reflect.Array;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import de.unihalle.informatik.MiToBo.math.MathX;
 import de.unihalle.informatik.MiToBo.math.distributions.impl.ParticleDistribution;
@@ -64,6 +69,12 @@ public class MultiTargetRBMCDA<T extends TargetID> extends ParticleDistribution<
 	
 	protected Vector<HashMap<Integer,Integer>> groundtruthToSampleTargetIDs;
 	
+	/** Number of threads for the update of particles, if <= 0 all available cores are used */
+	protected int threadNum = 1;
+	
+	/** Number of particles whose weights are summed up in one partial sum during parallel weight normalization */
+	protected static final int reductionChunkSize = 64;
+	
 	@SuppressWarnings("unchecked")
 	public MultiTargetRBMCDA(Random rand, RBMCDASample<T> initialState, int numParticles,
 			AssociationDistribution<T, T> assocDistrib) {
@@ -148,123 +159,336 @@ public class MultiTargetRBMCDA<T extends TargetID> extends ParticleDistribution<
 	public void update(AbstractMultiState<T> observation,
 			DataAssociation association) {
 
+		int threads = (this.threadNum <= 0) ? Runtime.getRuntime().availableProcessors() : this.threadNum;
+		if (threads == 1) {
+			this.updateSequential(observation, association);
+			return;
+		}
+		int numBlocks = Math.max(1, Math.min(threads, this.particles.length));
 		
-		HashMap<Integer,Integer> gtToSample = null;
+		// a pool is only required if more than one block is processed
+		ForkJoinPool pool = (numBlocks > 1) ? new ForkJoinPool(numBlocks) : null;
+		try {
+			this.updateParallel(pool, numBlocks, observation, association);
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Sequential update of the particles. All particles share the association distribution and draw random numbers
+	 * from the random generator of this object, i.e. results are the same as before parallel updates were available.
+	 */
+	protected void updateSequential(AbstractMultiState<T> observation, DataAssociation association) {
 		
 		// sample associations for each particle and update target state distributions accordingly
+		for (int i = 0; i < this.particles.length; i++)
+			this.updateParticle(i, this.assocDistrib, observation, observation, association);
+		
+		// normalize logarithmic weights and transform to linear scale
+		double logsum = 0;
 		for (int i = 0; i < this.particles.length; i++) {
+			logsum = MathX.logSumP(this.weights[i], logsum);
+		}
+		for (int i = 0; i < this.particles.length; i++) {
+			this.weights[i] = Math.exp(this.weights[i] - logsum);
+		}
+		
+		// resample if ESS is low
+		if (this.computeESS() < this.particles.length*this.esspercentage) {
+			this.resample();
+		}
+	}
+	
+	/**
+	 * Update of the particles in parallel. Particles are partitioned into contiguous blocks, one for each thread.
+	 * Each thread uses its own copy of the association distribution and of the observations. Associations of each
+	 * particle are sampled using a random generator seeded from a SplittableRandom, which in turn is seeded by the 
+	 * random generator of this object. Hence, results are reproducible and do not depend on the number of threads,
+	 * i.e. a single block processed in the calling thread yields the same results as several blocks in parallel.
+	 * Results differ from the sequential update with the shared random generator, though.
+	 * Weights are normalized by reduction of partial sums over chunks of particles, particles are copied in 
+	 * parallel during resampling.
+	 * @param pool pool to run the blocks in, if <code>null</code> blocks are processed in the calling thread
+	 * @param numBlocks number of blocks the particles are partitioned into
+	 */
+	protected void updateParallel(ForkJoinPool pool, final int numBlocks, 
+			final AbstractMultiState<T> observation, final DataAssociation association) {
+		
+		final int numParticles = this.particles.length;
+		
+		// seeds for the random generators of the particles
+		SplittableRandom seedGenerator = new SplittableRandom(this.rand.nextLong());
+		final long[] seeds = new long[numParticles];
+		for (int i = 0; i < numParticles; i++)
+			seeds[i] = seedGenerator.split().nextLong();
+		
+		final Vector<AbstractMultiState<T>> blockObservations = new Vector<AbstractMultiState<T>>(numBlocks);
+		blockObservations.setSize(numBlocks);
+		
+		// sample associations for each particle and update target state distributions accordingly
+		this.runBlocks(pool, numBlocks, numParticles, (block, from, to) -> {
+			AssociationDistribution<T,T> assocDistribCopy = this.assocDistrib.copyForSampling(null);
+			AbstractMultiState<T> observationCopy = observation.copy();
 			
-		//	MultiObservationTrackerRBMCDAIMM.current_i = i;
-			
-			// set the lowest targetID for newborn targets in the current particle in the association sampling distribution 
-			this.assocDistrib.letNewbornTargetIDsStartFrom(this.particles[i].maxTargetID+1);
-			
-			// give the predicted observation distribution of the current particle to the association sampling distribution
-			this.assocDistrib.setNewObservations(observation, this.particles[i].filter.getObservationDistribution());
+			for (int i = from; i < to; i++) {
+				Random particleRand = new Random(seeds[i]);
+				assocDistribCopy.setRandomGenerator(particleRand);
+				this.particles[i].filter.setRandomGenerator(particleRand);
+				
+				this.updateParticle(i, assocDistribCopy, observationCopy, observation, association);
+			}
+			blockObservations.set(block, observationCopy);
+		});
+		
+		// target IDs of the observations are set by the filter of the last particle as in sequential update
+		AbstractMultiState<T> lastObservation = blockObservations.get(numBlocks-1);
+		for (int m = 0; m < observation.getNumberOfStates(); m++)
+			observation.getStateDiscrete(m).ID = lastObservation.getStateDiscrete(m).ID;
+		
+		// normalize logarithmic weights and transform to linear scale,
+		// partial sums are computed for chunks of fixed size to be independent of the number of threads
+		final int numChunks = (numParticles + reductionChunkSize - 1) / reductionChunkSize;
+		final double[] chunkLogSums = new double[numChunks];
+		this.runBlocks(pool, Math.min(numBlocks, numChunks), numChunks, (block, from, to) -> {
+			for (int c = from; c < to; c++) {
+				double chunkLogSum = 0;
+				for (int i = c*reductionChunkSize; i < Math.min((c+1)*reductionChunkSize, numParticles); i++)
+					chunkLogSum = MathX.logSumP(this.weights[i], chunkLogSum);
+				chunkLogSums[c] = chunkLogSum;
+			}
+		});
+		double logsum = 0;
+		for (int c = 0; c < numChunks; c++)
+			logsum = MathX.logSumP(chunkLogSums[c], logsum);
+		
+		final double logsumTotal = logsum;
+		this.runBlocks(pool, numBlocks, numParticles, (block, from, to) -> {
+			for (int i = from; i < to; i++)
+				this.weights[i] = Math.exp(this.weights[i] - logsumTotal);
+		});
+		
+		// resample if ESS is low
+		if (this.computeESS() < numParticles*this.esspercentage) {
+			this.resampleParallel(pool, numBlocks);
+		}
+	}
+	
+	/**
+	 * Sample associations for a single particle and update its target state distributions accordingly.
+	 * The weight of the particle is set to the logarithmic joint probability of its data associations.
+	 * @param i index of the particle
+	 * @param assocDistrib association distribution to sample from
+	 * @param observation observations given to the association distribution and the filter of the particle
+	 * @param infoObservation observations stored in the particle's information object
+	 * @param association groundtruth association, may be null
+	 */
+	protected void updateParticle(int i, AssociationDistribution<T, T> assocDistrib, 
+			AbstractMultiState<T> observation, AbstractMultiState<T> infoObservation, 
+			DataAssociation association) {
+		
+		HashMap<Integer,Integer> gtToSample = null;
+		
+	//	MultiObservationTrackerRBMCDAIMM.current_i = i;
+		
+		// set the lowest targetID for newborn targets in the current particle in the association sampling distribution 
+		assocDistrib.letNewbornTargetIDsStartFrom(this.particles[i].maxTargetID+1);
+		
+		// give the predicted observation distribution of the current particle to the association sampling distribution
+		assocDistrib.setNewObservations(observation, this.particles[i].filter.getObservationDistribution());
+		
+		DataAssociation da = null;
+		
+		if (association != null) {
 			
-			DataAssociation da = null;
+			gtToSample = this.groundtruthToSampleTargetIDs.get(i);
 			
-			if (association != null) {
+			DataAssociation daGT = null; 
 				
-				gtToSample = this.groundtruthToSampleTargetIDs.get(i);
+			if (!gtToSample.isEmpty()) {
+				daGT = new DataAssociationExclusive();
 				
-				DataAssociation daGT = null; 
-					
-				if (!gtToSample.isEmpty()) {
-					daGT = new DataAssociationExclusive();
-					
-					for (int m = 0; m < observation.getNumberOfStates(); m++) {
-						if (association.getAssociatedTargets(m+1) != null) {
-							if (gtToSample.get(association.getAssociatedTargets(m+1)[0]) != null) {
-								try {
-									daGT.setAssociation(gtToSample.get(association.getAssociatedTargets(m+1)[0]), m+1);
-								} catch (Exception e) {
-									System.err.println(m+1 + "#X#" + association.getAssociatedTargets(m+1)[0] + "#Y#" +
-											daGT + "#1#" + gtToSample + "#2#"+ association + "#3#" + e.getMessage());
-									e.printStackTrace();
-									System.exit(1);
-								}
+				for (int m = 0; m < observation.getNumberOfStates(); m++) {
+					if (association.getAssociatedTargets(m+1) != null) {
+						if (gtToSample.get(association.getAssociatedTargets(m+1)[0]) != null) {
+							try {
+								daGT.setAssociation(gtToSample.get(association.getAssociatedTargets(m+1)[0]), m+1);
+							} catch (Exception e) {
+								System.err.println(m+1 + "#X#" + association.getAssociatedTargets(m+1)[0] + "#Y#" +
+										daGT + "#1#" + gtToSample + "#2#"+ association + "#3#" + e.getMessage());
+								e.printStackTrace();
+								System.exit(1);
 							}
 						}
 					}
 				}
-				else {
-					for (int m = 0; m < observation.getNumberOfStates(); m++) {
-						if (association.getAssociatedTargets(m+1) != null)
-							gtToSample.put(association.getAssociatedTargets(m+1)[0], association.getAssociatedTargets(m+1)[0]);
-					}
-					
-					daGT = association;
+			}
+			else {
+				for (int m = 0; m < observation.getNumberOfStates(); m++) {
+					if (association.getAssociatedTargets(m+1) != null)
+						gtToSample.put(association.getAssociatedTargets(m+1)[0], association.getAssociatedTargets(m+1)[0]);
 				}
 				
-				// sample the observation-to-target associations for this particle
-				da = this.assocDistrib.drawSampleDebug(daGT, this.ostream);
-				
-				for (int m = 0; m < observation.getNumberOfStates(); m++) {
-					if (association.getAssociatedTargets(m+1) != null && da.getAssociatedTargets(m+1) != null) {
-						if (gtToSample.containsValue(da.getAssociatedTargets(m+1)[0])) {
-							Iterator<Integer> iter = gtToSample.keySet().iterator();
+				daGT = association;
+			}
+			
+			// sample the observation-to-target associations for this particle
+			da = assocDistrib.drawSampleDebug(daGT, this.ostream);
+			
+			for (int m = 0; m < observation.getNumberOfStates(); m++) {
+				if (association.getAssociatedTargets(m+1) != null && da.getAssociatedTargets(m+1) != null) {
+					if (gtToSample.containsValue(da.getAssociatedTargets(m+1)[0])) {
+						Iterator<Integer> iter = gtToSample.keySet().iterator();
+						
+						while (iter.hasNext()) {
+							int key = iter.next();
 							
-							while (iter.hasNext()) {
-								int key = iter.next();
-								
-								if (gtToSample.get(key) != null && gtToSample.get(key) == da.getAssociatedTargets(m+1)[0]) {
-									gtToSample.put(key, null);
-									break;
-								}
+							if (gtToSample.get(key) != null && gtToSample.get(key) == da.getAssociatedTargets(m+1)[0]) {
+								gtToSample.put(key, null);
+								break;
 							}
-							
 						}
-						gtToSample.put(association.getAssociatedTargets(m+1)[0], da.getAssociatedTargets(m+1)[0]);
+						
 					}
+					gtToSample.put(association.getAssociatedTargets(m+1)[0], da.getAssociatedTargets(m+1)[0]);
 				}
 			}
-			else {
-				da = this.assocDistrib.drawSample();
-			}
+		}
+		else {
+			da = assocDistrib.drawSample();
+		}
 
-			// update the maximum targetID that ever occurred in this particle
-			int currentMaxTargetID = da.maxAssociatedTargetID();
-			if (currentMaxTargetID > this.particles[i].maxTargetID)
-				this.particles[i].maxTargetID = currentMaxTargetID;
+		// update the maximum targetID that ever occurred in this particle
+		int currentMaxTargetID = da.maxAssociatedTargetID();
+		if (currentMaxTargetID > this.particles[i].maxTargetID)
+			this.particles[i].maxTargetID = currentMaxTargetID;
+		
+		// update state distribution of targets in the current particle according to sampled associations with current observations
+		this.particles[i].filter.update(observation, da);
+		
+		// retrieve the targetIDs of targets that exist in the current particle (after update, i.e. targets may have born or died)
+		TreeSet<Short> existingTargetIDs = new TreeSet<Short>();
+		AbstractMultiState<T> X_ = this.particles[i].filter.getMean();
+		for (int n = 0; n < X_.getNumberOfStates(); n++) {
+			existingTargetIDs.add(X_.getStateDiscrete(n).ID);
+		}
 			
-			// update state distribution of targets in the current particle according to sampled associations with current observations
-			this.particles[i].filter.update(observation, da);
+		// store information on the current tracking step in the current particle's information object
+		this.particles[i].getSampleInfo().addCurrentInfo(assocDistrib.log_p(da), da, 
+				infoObservation, existingTargetIDs);
+		
+		// set weight of the current particle as the logarithmic probability of data associations
+		this.weights[i] = this.particles[i].getSampleInfo().getCLogJointProb();//assocDistrib.log_p(da);
+		//System.err.println(i+ " " + this.weights[i]);
+	}
+	
+	/**
+	 * Resampling as in {@link ParticleDistribution#resample()}, i.e. the same random numbers are drawn, 
+	 * but particles are selected by binary search on the cumulative weights and copied in parallel.
+	 */
+	protected void resampleParallel(ForkJoinPool pool, int numBlocks) {
+		
+		this.normalizeWeights();
+		
+		final int numParticles = this.particles.length;
+		final int[] selected = new int[numParticles];
+		for (int i = 0; i < numParticles; i++) {
+			double r = this.rand.nextDouble();
 			
-			// retrieve the targetIDs of targets that exist in the current particle (after update, i.e. targets may have born or died)
-			TreeSet<Short> existingTargetIDs = new TreeSet<Short>();
-			AbstractMultiState<T> X_ = this.particles[i].filter.getMean();
-			for (int n = 0; n < X_.getNumberOfStates(); n++) {
-				existingTargetIDs.add(X_.getStateDiscrete(n).ID);
+			// first particle with cumulative weight not smaller than r
+			int lo = 0, hi = numParticles-1;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (this.cweights[mid] >= r)
+					hi = mid;
+				else
+					lo = mid + 1;
 			}
-				
-			// store information on the current tracking step in the current particle's information object
-			this.particles[i].getSampleInfo().addCurrentInfo(this.assocDistrib.log_p(da), da, 
-					observation, existingTargetIDs);
-			
-			// set weight of the current particle as the logarithmic probability of data associations
-			this.weights[i] = this.particles[i].getSampleInfo().getCLogJointProb();//this.assocDistrib.log_p(da);
-			//System.err.println(i+ " " + this.weights[i]);
-		}	
-		
-		// normalize logarithmic weights and transform to linear scale
-		double logsum = 0;
-		for (int i = 0; i < this.particles.length; i++) {
-	//		System.err.print(this.weights[i] + " ");
-			logsum = MathX.logSumP(this.weights[i], logsum);
+			selected[i] = lo;
 		}
-	//	System.err.println("\n"+logsum + " " + Math.exp(logsum));
-		for (int i = 0; i < this.particles.length; i++) {
-			this.weights[i] = Math.exp(this.weights[i] - logsum);
+		
+		final RBMCDASample<T>[] resampled = this.particles.clone();
+		this.runBlocks(pool, numBlocks, numParticles, (block, from, to) -> {
+			for (int i = from; i < to; i++)
+				resampled[i] = this.particles[selected[i]].copy();
+		});
+		this.particles = resampled;
+		
+		double w = 1.0/numParticles;
+		
+		this.weights[0] = w;
+		this.cweights[0] = w;
+		
+		for (int k = 1; k < numParticles; k++) {
+			this.weights[k] = w;
+			this.cweights[k] = this.cweights[k-1] + w;
 		}
 		
+		this.equalWeights = true;
+	}
+	
+	/**
+	 * Task processing a contiguous block of items, e.g. particles.
+	 */
+	@FunctionalInterface
+	protected interface BlockTask {
+		/**
+		 * Process the items with indices in the range [from,to).
+		 */
+		void run(int block, int from, int to);
+	}
+	
+	/**
+	 * Run a task for each of <code>numBlocks</code> contiguous blocks of <code>numItems</code> items in parallel.
+	 * If no pool is given, the blocks are processed sequentially in the calling thread.
+	 */
+	protected void runBlocks(ForkJoinPool pool, int numBlocks, int numItems, BlockTask task) {
 		
-		// resample if ESS is low
-	//	System.err.println("ESS=" + this.computeESS());
-		if (this.computeESS() < this.particles.length*this.esspercentage) {
-	//		System.err.println("Resampling... ESS=" + this.computeESS());
-			this.resample();
+		if (pool == null) {
+			for (int b = 0; b < numBlocks; b++)
+				task.run(b, (int)((long)numItems*b/numBlocks), (int)((long)numItems*(b+1)/numBlocks));
+			return;
 		}
+		
+		Vector<Callable<Void>> tasks = new Vector<Callable<Void>>(numBlocks);
+		for (int b = 0; b < numBlocks; b++) {
+			final int block = b;
+			tasks.add(() -> {
+				task.run(block, (int)((long)numItems*block/numBlocks), 
+						(int)((long)numItems*(block+1)/numBlocks));
+				return null;
+			});
+		}
+		try {
+			for (Future<Void> f : pool.invokeAll(tasks))
+				f.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("MultiTargetRBMCDA: Parallel update of particles failed: " 
+					+ e.getCause(), e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("MultiTargetRBMCDA: Parallel update of particles interrupted.");
+		}
+	}
+	
+	/**
+	 * Get the number of threads used to update the particles.
+	 * @return number of threads, values &lt;= 0 refer to all available cores
+	 */
+	public int getThreadNum() {
+		return this.threadNum;
+	}
+	
+	/**
+	 * Set the number of threads used to update the particles. Default is 1, i.e. particles are updated sequentially
+	 * drawing random numbers from the shared generator as before. With more threads each particle draws random numbers
+	 * from its own generator, hence, results are reproducible and do not depend on the number of threads, but differ 
+	 * from the sequential update. 
+	 * @param threadNum number of threads, if &lt;= 0 all available cores are used
+	 */
+	public void setThreadNum(int threadNum) {
+		this.threadNum = threadNum;
 	}
 	
 	/**
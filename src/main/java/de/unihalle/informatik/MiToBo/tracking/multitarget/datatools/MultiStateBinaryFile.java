@@ -0,0 +1,361 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.tracking.multitarget.datatools;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Vector;
+
+import Jama.Matrix;
+
+import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.impl.MotionModelID;
+import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.impl.MultiState;
+import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.impl.MultiStateFactory;
+
+/**
+ * Compact binary file of a sequence of MultiState objects with random access by frame.
+ * <p>
+ * The file is organized in columns, each stored as one contiguous big-endian array:
+ * <ul>
+ * <li> header: magic number, format version, number of frames, continuous DOF, total number of states
+ * <li> frame offsets: index of the first state of each frame (long, number of frames + 1 entries)
+ * <li> time of each state (double)
+ * <li> continuous states (float, continuous DOF entries per state)
+ * <li> target IDs (short)
+ * <li> motion model IDs (byte)
+ * </ul>
+ * Columns are memory-mapped when the file is opened, hence, a frame is read without parsing the 
+ * remaining file. Each column is mapped in chunks of at most {@link #MAX_CHUNK_SIZE} bytes, since a
+ * single mapping is limited to 2 GB. Continuous states are stored in single precision.
+ * Labeled observations, i.e. the tracks computed by a tracker, are stored the same way.
+ * 
+ * @author agent
+ *
+ */
+public class MultiStateBinaryFile {
+	
+	/** magic number at the beginning of the file ("MSB1") */
+	public static final int MAGIC = 0x4D534231;
+	
+	/** format version */
+	public static final int VERSION = 1;
+	
+	/** size of the header in bytes */
+	private static final int HEADER_SIZE = 24;
+	
+	/** maximum number of bytes of a column mapped at once */
+	static final long MAX_CHUNK_SIZE = 1L << 30;
+	
+	/** file channel the columns are mapped from */
+	private FileChannel channel;
+	
+	/** number of frames */
+	private int numFrames;
+	
+	/** continuous degrees of freedom of the states */
+	private int cDOF;
+	
+	/** index of the first state of each frame */
+	private ByteBuffer[] offsets;
+	
+	/** time of the states */
+	private ByteBuffer[] times;
+	
+	/** continuous states */
+	private ByteBuffer[] states;
+	
+	/** target IDs */
+	private ByteBuffer[] ids;
+	
+	/** motion model IDs */
+	private ByteBuffer[] mmIDs;
+	
+	/** factory for the MultiState objects read from the file */
+	private MultiStateFactory<MotionModelID> factory;
+	
+	/**
+	 * Open a binary MultiState file and map its columns into memory.
+	 * @param filename filename
+	 * @throws IOException if the file cannot be read or is not a binary MultiState file
+	 */
+	public MultiStateBinaryFile(String filename) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		this.channel = file.getChannel();
+		
+		try {
+			ByteBuffer header = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC) 
+				throw new IOException("MultiStateBinaryFile: " + filename + " is not a binary MultiState file.");
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new IOException("MultiStateBinaryFile: unsupported format version " + version + ".");
+			this.numFrames = header.getInt();
+			this.cDOF = header.getInt();
+			long numStates = header.getLong();
+			
+			long pos = HEADER_SIZE;
+			this.offsets = this.mapColumn(pos, 8L * (this.numFrames + 1));
+			pos += 8L * (this.numFrames + 1);
+			this.times = this.mapColumn(pos, 8L * numStates);
+			pos += 8L * numStates;
+			this.states = this.mapColumn(pos, 4L * this.cDOF * numStates);
+			pos += 4L * this.cDOF * numStates;
+			this.ids = this.mapColumn(pos, 2L * numStates);
+			pos += 2L * numStates;
+			this.mmIDs = this.mapColumn(pos, numStates);
+		}
+		catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		
+		this.factory = new MultiStateFactory<MotionModelID>(this.cDOF);
+	}
+	
+	/**
+	 * Number of frames in the file.
+	 */
+	public int getNumberOfFrames() {
+		return this.numFrames;
+	}
+	
+	/**
+	 * Continuous degrees of freedom of the states.
+	 */
+	public int getContinuousDOF() {
+		return this.cDOF;
+	}
+	
+	/**
+	 * Number of states in frame <code>t</code>.
+	 */
+	public int getNumberOfStates(int t) {
+		ByteBuffer frameOffsets = read(this.offsets, MAX_CHUNK_SIZE, 8L * t, 16);
+		return (int)(frameOffsets.getLong(8) - frameOffsets.getLong(0));
+	}
+	
+	/**
+	 * Read the MultiState object of frame <code>t</code>.
+	 * @param t frame index
+	 * @return MultiState object of frame t
+	 */
+	@SuppressWarnings("unchecked")
+	public MultiState<MotionModelID> getMultiState(int t) {
+		ByteBuffer frameOffsets = read(this.offsets, MAX_CHUNK_SIZE, 8L * t, 16);
+		long first = frameOffsets.getLong(0);
+		int n = (int)(frameOffsets.getLong(8) - first);
+		
+		// bulk read of the frame's section of each column, positions in the file may exceed 2 GB
+		float[] x = new float[n * this.cDOF];
+		double[] time = new double[n];
+		short[] id = new short[n];
+		byte[] mmid = new byte[n];
+		read(this.states, MAX_CHUNK_SIZE, 4L * this.cDOF * first, 4 * x.length).asFloatBuffer().get(x);
+		read(this.times, MAX_CHUNK_SIZE, 8L * first, 8 * n).asDoubleBuffer().get(time);
+		read(this.ids, MAX_CHUNK_SIZE, 2L * first, 2 * n).asShortBuffer().get(id);
+		read(this.mmIDs, MAX_CHUNK_SIZE, first, n).get(mmid);
+		
+		MultiState<MotionModelID> mstate = (MultiState<MotionModelID>) this.factory.createEmptyMultiState();
+		
+		for (int i = 0; i < n; i++) {
+			double[][] xi = new double[this.cDOF][1];
+			for (int d = 0; d < this.cDOF; d++)
+				xi[d][0] = x[i*this.cDOF + d];
+			
+			MotionModelID m = new MotionModelID(id[i], mmid[i]);
+			m.time = time[i];
+			
+			mstate.insertState(new Matrix(xi, this.cDOF, 1), m);
+		}
+		
+		return mstate;
+	}
+	
+	/**
+	 * Read the MultiState objects of all frames.
+	 * @return Vector of MultiState objects
+	 */
+	public Vector<MultiState<MotionModelID>> getMultiStates() {
+		Vector<MultiState<MotionModelID>> mstates = new Vector<MultiState<MotionModelID>>(this.numFrames);
+		
+		for (int t = 0; t < this.numFrames; t++)
+			mstates.add(this.getMultiState(t));
+		
+		return mstates;
+	}
+	
+	/**
+	 * Map a column of the file in chunks of at most {@link #MAX_CHUNK_SIZE} bytes.
+	 * @param pos position of the column in the file
+	 * @param size size of the column in bytes
+	 * @return mapped chunks in ascending order
+	 * @throws IOException
+	 */
+	private ByteBuffer[] mapColumn(long pos, long size) throws IOException {
+		ByteBuffer[] chunks = new ByteBuffer[(int)((size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE)];
+		
+		for (int c = 0; c < chunks.length; c++) {
+			long start = c * MAX_CHUNK_SIZE;
+			chunks[c] = this.channel.map(FileChannel.MapMode.READ_ONLY, pos + start, Math.min(MAX_CHUNK_SIZE, size - start));
+		}
+		
+		return chunks;
+	}
+	
+	/**
+	 * Copy a section of a mapped column, the section may span several chunks.
+	 * @param chunks mapped chunks of the column
+	 * @param chunkSize size of all chunks but the last one in bytes
+	 * @param pos position of the section in the column in bytes
+	 * @param length length of the section in bytes
+	 * @return big-endian buffer containing the section
+	 */
+	static ByteBuffer read(ByteBuffer[] chunks, long chunkSize, long pos, int length) {
+		byte[] data = new byte[length];
+		
+		int done = 0;
+		while (done < length) {
+			ByteBuffer chunk = chunks[(int)((pos + done) / chunkSize)].duplicate();
+			chunk.position((int)((pos + done) % chunkSize));
+			
+			int len = Math.min(length - done, chunk.remaining());
+			chunk.get(data, done, len);
+			done += len;
+		}
+		
+		return ByteBuffer.wrap(data);
+	}
+	
+	/**
+	 * Close the file. Mapped columns are released by the garbage collector.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		this.channel.close();
+	}
+	
+	/**
+	 * Write a vector of MultiState objects to a binary file.
+	 * The file may exceed 2 GB, the continuous states of a single frame must not.
+	 * @param mstates Vector of MultiState objects with identical continuous DOF
+	 * @param filename filename
+	 * @throws IOException
+	 */
+	public static void write(Vector<MultiState<MotionModelID>> mstates, String filename) throws IOException {
+		int numFrames = mstates.size();
+		int cDOF = (numFrames > 0) ? mstates.get(0).getFactory().getContinuousDOF() : 0;
+		
+		long numStates = 0;
+		for (int t = 0; t < numFrames; t++) {
+			if (mstates.get(t).getFactory().getContinuousDOF() != cDOF)
+				throw new IllegalArgumentException("MultiStateBinaryFile: MultiState objects differ in continuous DOF.");
+			
+			// a frame is read into arrays, hence, its continuous states must not exceed the array size limit
+			if ((long)mstates.get(t).getNumberOfStates() * cDOF * 4 > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("MultiStateBinaryFile: Frame " + t + " exceeds 2 GB of continuous states.");
+			
+			numStates += mstates.get(t).getNumberOfStates();
+		}
+		
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+		
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(numFrames);
+			out.writeInt(cDOF);
+			out.writeLong(numStates);
+			
+			// frame offsets
+			long offset = 0;
+			out.writeLong(offset);
+			for (int t = 0; t < numFrames; t++) {
+				offset += mstates.get(t).getNumberOfStates();
+				out.writeLong(offset);
+			}
+			
+			// time
+			for (int t = 0; t < numFrames; t++) {
+				MultiState<MotionModelID> mstate = mstates.get(t);
+				for (int i = 0; i < mstate.getNumberOfStates(); i++)
+					out.writeDouble(mstate.getStateDiscrete(i).time);
+			}
+			
+			// continuous states
+			for (int t = 0; t < numFrames; t++) {
+				MultiState<MotionModelID> mstate = mstates.get(t);
+				for (int i = 0; i < mstate.getNumberOfStates(); i++) {
+					double[][] x = mstate.getStateContinuous(i).getArray();
+					for (int d = 0; d < cDOF; d++)
+						out.writeFloat((float)x[d][0]);
+				}
+			}
+			
+			// target IDs
+			for (int t = 0; t < numFrames; t++) {
+				MultiState<MotionModelID> mstate = mstates.get(t);
+				for (int i = 0; i < mstate.getNumberOfStates(); i++)
+					out.writeShort(mstate.getStateDiscrete(i).ID);
+			}
+			
+			// motion model IDs
+			for (int t = 0; t < numFrames; t++) {
+				MultiState<MotionModelID> mstate = mstates.get(t);
+				for (int i = 0; i < mstate.getNumberOfStates(); i++)
+					out.writeByte(mstate.getStateDiscrete(i).mmID);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Check if a file starts with the magic number of binary MultiState files.
+	 * @param filename filename
+	 * @return true if the file is a binary MultiState file
+	 */
+	public static boolean isBinaryFile(String filename) {
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(filename));
+			try {
+				return in.readInt() == MAGIC;
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+}
@@ -41,20 +41,33 @@ import de.unihalle.informatik.MiToBo_xml.MTBXMLMultiStateMMIDVectorType;
 
 /**
  * File-IO for (vectors of) MultiState objects.
+ * <p>
+ * MultiState objects are stored in their xml-beans representation or, if the filename ends with 
+ * {@link #BINARY_SUFFIX}, in the compact binary format of {@link MultiStateBinaryFile}. The format 
+ * of files to read is detected automatically.
  * 
  * @author Oliver Gress
  *
  */
 public class MultiStateIO {
+	
+	/** filename suffix of binary MultiState files */
+	public static final String BINARY_SUFFIX = ".msb";
 
 	/**
-	 * Write a vector of MultiState objects to file in its xml-beans representation.
+	 * Write a vector of MultiState objects to file. The binary format is used if the filename
+	 * ends with {@link #BINARY_SUFFIX}, the xml-beans representation otherwise.
 	 * @param mstates Vector of MultiState objects
 	 * @param filename filename
 	 */
 	public static void writeMultiStates(Vector<MultiState<MotionModelID>> mstates, String filename) 
 											throws IOException, ALDProcessingDAGException, ALDOperatorException {
 		
+		if (filename.endsWith(BINARY_SUFFIX)) {
+			writeMultiStatesBinary(mstates, filename);
+			return;
+		}
+		
 		MTBXMLMultiStateMMIDVectorDocument doc = MTBXMLMultiStateMMIDVectorDocument.Factory.newInstance();
 		
 		doc.setMTBXMLMultiStateMMIDVector(XMLTypeConverter.toXMLType(mstates));
@@ -65,12 +78,29 @@ public class MultiStateIO {
 	}
 	
 	/**
-	 * Read a vector of MultiState objects from a file with xml-beans representation.
+	 * Write a vector of MultiState objects to file in the binary format of {@link MultiStateBinaryFile}.
+	 * @param mstates Vector of MultiState objects
+	 * @param filename filename
+	 */
+	public static void writeMultiStatesBinary(Vector<MultiState<MotionModelID>> mstates, String filename) 
+											throws IOException, ALDProcessingDAGException, ALDOperatorException {
+		
+		MultiStateBinaryFile.write(mstates, filename);
+		
+		MTBOperator.writeHistory(mstates, filename);
+	}
+	
+	/**
+	 * Read a vector of MultiState objects from a file with xml-beans representation or in binary format.
 	 * @param filename filename
 	 * @return Vector of MultiState objects
 	 */
 	public static Vector<MultiState<MotionModelID>> readMultiStates(String filename) throws XmlException, IOException {
 
+		if (MultiStateBinaryFile.isBinaryFile(filename)) {
+			return readMultiStatesBinary(filename);
+		}
+		
 		MTBXMLMultiStateMMIDVectorType mstates_xml = MTBXMLMultiStateMMIDVectorDocument.Factory.parse(new File(filename)).getMTBXMLMultiStateMMIDVector();
 		
 		Vector<MultiState<MotionModelID>> mstates = XMLTypeConverter.fromXMLType(mstates_xml);
@@ -79,4 +109,27 @@ public class MultiStateIO {
 		
 		return mstates;
 	}
+	
+	/**
+	 * Read a vector of MultiState objects from a file in the binary format of {@link MultiStateBinaryFile}.
+	 * Use {@link MultiStateBinaryFile} directly to read single frames.
+	 * @param filename filename
+	 * @return Vector of MultiState objects
+	 */
+	public static Vector<MultiState<MotionModelID>> readMultiStatesBinary(String filename) throws IOException {
+		
+		MultiStateBinaryFile file = new MultiStateBinaryFile(filename);
+		
+		Vector<MultiState<MotionModelID>> mstates;
+		try {
+			mstates = file.getMultiStates();
+		}
+		finally {
+			file.close();
+		}
+		
+		MTBOperator.readHistory(mstates, filename);
+		
+		return mstates;
+	}
 }
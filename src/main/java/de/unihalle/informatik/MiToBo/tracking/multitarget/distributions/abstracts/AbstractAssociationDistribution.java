@@ -146,6 +146,13 @@ public abstract class AbstractAssociationDistribution<S extends Copyable<?>,T ex
 	}
 	
 	
+	/**
+	 * Set the random generator used for sampling
+	 */
+	public void setRandomGenerator(Random rand) {
+		this.rand = rand;
+	}
+	
 	@Override
 	public abstract DataAssociation drawSample();
 	
@@ -63,7 +63,7 @@ import de.unihalle.informatik.MiToBo.tracking.multitarget.distributions.abstract
  */
 public class AssociationDistribution<S extends TargetID,T extends TargetID> extends
 		AbstractAssociationDistribution<S, T> implements EvaluatableDistribution<DataAssociation>,
-		LogEvaluatableDistribution<DataAssociation> {
+		LogEvaluatableDistribution<DataAssociation>, Cloneable {
 
 	/** Distribution of the number of clutter observations */
 	protected LogProbabilityMassFunction mu;
@@ -203,6 +203,24 @@ public class AssociationDistribution<S extends TargetID,T extends TargetID> exte
 		this.newtargetID = minNewTargetID;
 	}
 	
+	/**
+	 * Create a copy of this distribution to draw samples independently of this object, e.g. in another thread.
+	 * Model distributions are shared with this object, observations, newborn target-IDs and the last sample
+	 * can be set in the copy without affecting this object.
+	 * @param rand random generator for sampling in the copy
+	 */
+	@SuppressWarnings("unchecked")
+	public AssociationDistribution<S,T> copyForSampling(Random rand) {
+		AssociationDistribution<S,T> cp;
+		try {
+			cp = (AssociationDistribution<S,T>) this.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		cp.rand = rand;
+		return cp;
+	}
+	
 	@Override
 	public DataAssociation drawSample() {
 		
@@ -542,9 +560,9 @@ public class AssociationDistribution<S extends TargetID,T extends TargetID> exte
 		}
 		
 		// compute binomial distribution and store in array
-		// for given N. If N does not differ from previous computations,
+		// for given N. If N and min(M,N) do not differ from previous computations,
 		// the existing array needs not to be recomputed
-		if (this.logBinom == null || this.logBinom.length != this.N+1) {
+		if (this.logBinom == null || this.lastN != this.N || this.logBinom.length != this.minMN+1) {
 			this.logBinom = new double[this.minMN+1];
 			
 			if (this.P_D < 1.0) {
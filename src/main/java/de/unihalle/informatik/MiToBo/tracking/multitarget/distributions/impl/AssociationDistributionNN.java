@@ -149,6 +149,14 @@ public class AssociationDistributionNN<S extends TargetID,T extends TargetID> ex
 		this.kNearestObs = this.kNearestObservations(this.maxNumNeighbors, this.maxDistNeighbors);
 	}
 	
+	@Override
+	public AssociationDistributionNN<S,T> copyForSampling(Random rand) {
+		AssociationDistributionNN<S,T> cp = (AssociationDistributionNN<S,T>) super.copyForSampling(rand);
+		// table of log-faculties is extended on demand and must not be shared
+		cp.logFac = new LogFaculty(this.logFac.getMaxN()-1);
+		return cp;
+	}
+	
 	@Override
 	public DataAssociation drawSample() {
 
@@ -112,18 +112,14 @@ public class MultiObsDistributionIndepGaussMix<T extends Copyable<?>>  extends A
 
 	@Override
 	public double p(AbstractMultiState<T> Z, int i, int j) {
-		Matrix z = Z.getStateContinuous(i).copy();
-		
-		z.minusEquals(this.H.times(this.condX.getStateContinuous(j)));
+		Matrix z = this.residual(Z.getStateContinuous(i), j);
 		
 		return this.gaussmixtures.get(j).p(z);
 	}
 
 	@Override
 	public double p(AbstractMultiState<T> Z, int i) {
-		Matrix z = Z.getStateContinuous(i).copy();
-		
-		z.minusEquals(this.H.times(this.condX.getStateContinuous(i)));
+		Matrix z = this.residual(Z.getStateContinuous(i), i);
 		
 		return this.gaussmixtures.get(i).p(z);
 	}
@@ -131,53 +127,58 @@ public class MultiObsDistributionIndepGaussMix<T extends Copyable<?>>  extends A
 	@Override
 	public double p(AbstractMultiState<T> Z) {
 		
-		AbstractMultiState<T> Zs = Z.copy();
-		
-		for (int i = 0; i < Z.getNumberOfStates(); i++) {
-			Zs.getStateContinuous(i).minusEquals(this.H.times(this.condX.getStateContinuous(i)));
-		}
-		
 		double p = 1;
-		for (int i = 0; i < Zs.getNumberOfStates(); i++)
-			p *= this.gaussmixtures.get(i).p(Zs.getStateContinuous(i));
+		for (int i = 0; i < Z.getNumberOfStates(); i++)
+			p *= this.gaussmixtures.get(i).p(this.residual(Z.getStateContinuous(i), i));
 		
 		return p;
 	}
 
 	@Override
 	public double log_p(AbstractMultiState<T> Z) {
-		AbstractMultiState<T> Zs = Z.copy();
-		
-		for (int i = 0; i < Z.getNumberOfStates(); i++) {
-			Zs.getStateContinuous(i).minusEquals(this.H.times(this.condX.getStateContinuous(i)));
-		}
-		
 		double logp = 0;
-		for (int i = 0; i < Zs.getNumberOfStates(); i++)
-			logp += this.gaussmixtures.get(i).log_p(Zs.getStateContinuous(i));
+		for (int i = 0; i < Z.getNumberOfStates(); i++)
+			logp += this.gaussmixtures.get(i).log_p(this.residual(Z.getStateContinuous(i), i));
 		
 		return logp;
 	}
 
 	@Override
 	public double log_p(AbstractMultiState<T> Z, int i) {
-		Matrix z = Z.getStateContinuous(i).copy();
-		
-		z.minusEquals(this.H.times(this.condX.getStateContinuous(i)));
+		Matrix z = this.residual(Z.getStateContinuous(i), i);
 		
 		return this.gaussmixtures.get(i).log_p(z);
 	}
 	
 	@Override
 	public double log_p(AbstractMultiState<T> Z, int i, int j) {
-		Matrix z = Z.getStateContinuous(i).copy();
-		
-		z.minusEquals(this.H.times(this.condX.getStateContinuous(j)));
+		Matrix z = this.residual(Z.getStateContinuous(i), j);
 		
 		return this.gaussmixtures.get(j).log_p(z);
 	}
 
 	
+	/**
+	 * Residual z - H*x_j of observation z and the j-th condition state, computed into a single new matrix.
+	 */
+	protected Matrix residual(Matrix z, int j) {
+		double[][] zz = z.getArray();
+		double[][] h = this.H.getArray();
+		double[][] x = this.condX.getStateContinuous(j).getArray();
+		
+		Matrix r = new Matrix(zz.length, 1);
+		double[][] rr = r.getArray();
+		
+		for (int i = 0; i < zz.length; i++) {
+			double s = 0;
+			for (int k = 0; k < x.length; k++)
+				s += h[i][k] * x[k][0];
+			rr[i][0] = zz[i][0] - s;
+		}
+		
+		return r;
+	}
+	
 	@Override
 	public int getNumOfIndeps() {
 		return this.gaussmixtures.size();
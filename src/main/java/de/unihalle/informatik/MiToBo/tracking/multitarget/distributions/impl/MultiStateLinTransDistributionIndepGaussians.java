@@ -31,6 +31,7 @@ import de.unihalle.informatik.MiToBo.math.distributions.interfaces.EvaluatableDi
 import de.unihalle.informatik.MiToBo.math.distributions.interfaces.FirstOrderMoment;
 import de.unihalle.informatik.MiToBo.math.distributions.interfaces.IndependentlyEvaluatableDistribution;
 import de.unihalle.informatik.MiToBo.math.distributions.interfaces.SecondOrderCentralMoment;
+import de.unihalle.informatik.MiToBo.math.linearalgebra.MTBSmallMatrixKernels;
 import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.abstracts.AbstractMultiState;
 import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.abstracts.AbstractMultiStateFactory;
 import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.interfaces.Copyable;
@@ -87,6 +88,7 @@ public class MultiStateLinTransDistributionIndepGaussians<T extends Copyable<?>>
 		
 		this.F = new Matrix[X.getNumberOfStates()];
 		this.Q = new Matrix[X.getNumberOfStates()];
+		this.gaussian = new GaussianDistribution[X.getNumberOfStates()];
 		
 		for (int i = 0; i < X.getNumberOfStates(); i++) {
 			this.F[i] = F;
@@ -120,6 +122,7 @@ public class MultiStateLinTransDistributionIndepGaussians<T extends Copyable<?>>
 		
 		this.F = new Matrix[X.getNumberOfStates()];
 		this.Q = new Matrix[X.getNumberOfStates()];
+		this.gaussian = new GaussianDistribution[X.getNumberOfStates()];
 		
 		for (int i = 0; i < X.getNumberOfStates(); i++) {
 			
@@ -171,12 +174,14 @@ public class MultiStateLinTransDistributionIndepGaussians<T extends Copyable<?>>
 		
 		this.F = new Matrix[this.condX.getNumberOfStates()];
 		this.Q = new Matrix[this.condX.getNumberOfStates()];
+		this.gaussian = new GaussianDistribution[this.condX.getNumberOfStates()];
 		
-		Matrix[] P = (Matrix[]) distribX.getCovariance().toArray();
+		Matrix[] P = distribX.getCovariance().toArray(new Matrix[0]);
 		
 		for (int i = 0; i < this.condX.getNumberOfStates(); i++) {
 			this.F[i] = F;
-			this.Q[i] = (F.times(P[i].times(F.transpose()))).plus(Q);
+			this.Q[i] = new Matrix(Q.getRowDimension(), Q.getColumnDimension());
+			MTBSmallMatrixKernels.congruence(F.getArray(), P[i].getArray(), Q.getArray(), this.Q[i].getArray());
 
 			this.gaussian[i] = new GaussianDistribution(F.times(this.condX.getStateContinuous(i)), this.Q[i], rand);
 		}
@@ -208,8 +213,9 @@ public class MultiStateLinTransDistributionIndepGaussians<T extends Copyable<?>>
 		
 		this.F = new Matrix[this.condX.getNumberOfStates()];
 		this.Q = new Matrix[this.condX.getNumberOfStates()];
+		this.gaussian = new GaussianDistribution[this.condX.getNumberOfStates()];
 
-		Matrix[] P = (Matrix[])distribX.getCovariance().toArray();
+		Matrix[] P = distribX.getCovariance().toArray(new Matrix[0]);
 		
 		for (int i = 0; i < this.condX.getNumberOfStates(); i++) {
 			
@@ -224,7 +230,8 @@ public class MultiStateLinTransDistributionIndepGaussians<T extends Copyable<?>>
 			}
 			
 			this.F[i] = F[i];
-			this.Q[i] = (F[i].times(P[i].times(F[i].transpose()))).plus(Q[i]);
+			this.Q[i] = new Matrix(Q[i].getRowDimension(), Q[i].getColumnDimension());
+			MTBSmallMatrixKernels.congruence(F[i].getArray(), P[i].getArray(), Q[i].getArray(), this.Q[i].getArray());
 
 			this.gaussian[i] = new GaussianDistribution(this.F[i].times(this.condX.getStateContinuous(i)), this.Q[i], rand);
 		}
@@ -0,0 +1,438 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.apps.singleCellTracking2D;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.Vector;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unihalle.informatik.Alida.exceptions.ALDException;
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBRegion2D;
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBRegion2DSet;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
+
+/**
+ * JUnit test class for {@link CellTrackerBipartite}.
+ * 
+ * @author agent
+ */
+public class TestCellTrackerBipartite {
+
+	private static final String IDS = "[TestCellTrackerBipartite]";
+
+	private static final double accuracy = 10e-8;
+
+	/**
+	 * Maximum distance of assigned regions.
+	 */
+	private static final double maxDist = 12;
+
+	/**
+	 * Maximum relative area change of assigned regions.
+	 */
+	private static final double maxAreaChange = 0.5;
+
+	/**
+	 * Size of the synthetic sequence.
+	 */
+	private static final int sizeX = 60, sizeY = 40, sizeT = 5;
+
+	/**
+	 * Temporary folder for trajectory files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Tracker to test.
+	 */
+	private CellTrackerBipartite tracker;
+
+	/**
+	 * Synthetic binary sequence.
+	 * <p>
+	 * Cell A is present in all frames and moves to the right, cell B is 
+	 * present in frames 0 to 2 and cell C appears in frame 2.
+	 */
+	private MTBImage sequence;
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		try {
+			this.tracker = new CellTrackerBipartite();
+			this.tracker.useAutoDistanceDetermination(false);
+			this.tracker.setMaxDistance(maxDist);
+			this.tracker.setMaxAreaChange(maxAreaChange);
+		} catch (ALDException e) {
+			fail(IDS + " could not instantiate tracker: " + e.getMessage());
+		}
+		this.sequence = MTBImage.createMTBImage(
+			sizeX, sizeY, 1, sizeT, 1, MTBImageType.MTB_BYTE);
+		for (int t = 0; t < sizeT; ++t) {
+			drawSquare(this.sequence, 15 + 3 * t, 12, 3, t);
+			if (t <= 2)
+				drawSquare(this.sequence, 40, 28 - t, 4, t);
+			if (t >= 2)
+				drawSquare(this.sequence, 12, 30 + t, 2, t);
+		}
+	}
+
+	/**
+	 * Test if tracking frame by frame yields the same labels as the batch 
+	 * mode.
+	 */
+	@Test
+	public void testStreamingEqualsBatch() {
+		try {
+			CellTrackerBipartite batch = new CellTrackerBipartite(this.sequence);
+			batch.useAutoDistanceDetermination(false);
+			batch.setMaxDistance(maxDist);
+			batch.setMaxAreaChange(maxAreaChange);
+			batch.runOp();
+			MTBImage batchResult = batch.getResultImage();
+
+			this.tracker.startStream(sizeX, sizeY, null);
+			for (int t = 0; t < sizeT; ++t) {
+				MTBImage labels = this.tracker.trackNextFrame(frame(t));
+				for (int y = 0; y < sizeY; ++y)
+					for (int x = 0; x < sizeX; ++x)
+						assertEquals(IDS + " labels differ at (" + x + "," + y + "," 
+							+ t + ")", batchResult.getValueInt(x, y, 0, t, 0), 
+							labels.getValueInt(x, y));
+			}
+			this.tracker.finishStream();
+
+			// cell A keeps its label, cell C gets a new one
+			int labelA = batchResult.getValueInt(15, 12, 0, 0, 0);
+			int labelB = batchResult.getValueInt(40, 28, 0, 0, 0);
+			int labelC = batchResult.getValueInt(12, 32, 0, 2, 0);
+			assertTrue(IDS + " cells are not labeled", 
+				labelA > 0 && labelB > 0 && labelC > 0);
+			assertTrue(IDS + " labels of cells are not unique", 
+				labelA != labelB && labelA != labelC && labelB != labelC);
+			for (int t = 0; t < sizeT; ++t)
+				assertEquals(IDS + " track of cell A interrupted in frame " + t, 
+					labelA, batchResult.getValueInt(15 + 3 * t, 12, 0, t, 0));
+			for (int t = 2; t < sizeT; ++t)
+				assertEquals(IDS + " track of cell C interrupted in frame " + t, 
+					labelC, batchResult.getValueInt(12, 30 + t, 0, t, 0));
+		} catch (ALDException e) {
+			fail(IDS + " tracking failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Test if trajectories written during tracking are read back correctly.
+	 */
+	@Test
+	public void testTrajectoryFileRoundTrip() {
+		try {
+			String path = this.trackToFile(1).getAbsolutePath();
+			ManualTrackingTrajectoryExtraction reader = 
+				new ManualTrackingTrajectoryExtraction(path, 1);
+			reader.runOp();
+			Vector<Trajectory2D> trajectories = reader.getTrajectories();
+			assertEquals(IDS + " wrong number of trajectories", 
+				3, trajectories.size());
+
+			// cell B is written first as its trajectory is closed in frame 3
+			Trajectory2D b = trajectories.get(0);
+			assertEquals(IDS + " wrong start of trajectory B", 0, b.getStartFrame());
+			assertEquals(IDS + " wrong length of trajectory B", 
+				3, b.getPoints().size());
+			for (Trajectory2D trajectory : trajectories) {
+				if (trajectory == b)
+					continue;
+				int start = trajectory.getStartFrame();
+				Vector<Point2D.Double> points = trajectory.getPoints();
+				assertEquals(IDS + " wrong length of trajectory", 
+					sizeT - start, points.size());
+				// centroids of the squares, cell A starts in frame 0, C in 2
+				for (int i = 0; i < points.size(); ++i) {
+					int t = start + i;
+					double x = (start == 0) ? 15 + 3 * t - 0.5 : 12 - 0.5;
+					double y = (start == 0) ? 12 - 0.5 : 30 + t - 0.5;
+					assertEquals(IDS + " wrong x-coordinate", x, points.get(i).x, 
+						accuracy);
+					assertEquals(IDS + " wrong y-coordinate", y, points.get(i).y, 
+						accuracy);
+				}
+			}
+		} catch (ALDException e) {
+			fail(IDS + " tracking failed: " + e.getMessage());
+		} catch (IOException e) {
+			fail(IDS + " writing trajectories failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Test if short trajectories are not written.
+	 */
+	@Test
+	public void testMinTrackLength() {
+		try {
+			String path = this.trackToFile(4).getAbsolutePath();
+			ManualTrackingTrajectoryExtraction reader = 
+				new ManualTrackingTrajectoryExtraction(path, 1);
+			reader.runOp();
+			Vector<Trajectory2D> trajectories = reader.getTrajectories();
+			assertEquals(IDS + " only trajectory of cell A should be written", 
+				1, trajectories.size());
+			assertEquals(IDS + " wrong length of trajectory", 
+				sizeT, trajectories.get(0).getPoints().size());
+		} catch (ALDException e) {
+			fail(IDS + " tracking failed: " + e.getMessage());
+		} catch (IOException e) {
+			fail(IDS + " writing trajectories failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Test if trajectories are written as soon as they miss a frame.
+	 */
+	@Test
+	public void testTrajectoryClosedOnMissedFrame() {
+		try {
+			TrajectoryStreamWriter writer = new TrajectoryStreamWriter(
+				this.folder.newFile("closed.txt").getAbsolutePath(), 1);
+			writer.addFrame(0, regions(0, 1));
+			writer.addFrame(1, regions(0, 1));
+			assertEquals(IDS + " wrong number of open tracks", 
+				2, writer.getNumberOfOpenTracks());
+			assertEquals(IDS + " no track should be written", 
+				0, writer.getNumberOfWrittenTracks());
+			// track 1 misses frame 2
+			writer.addFrame(2, regions(0, 2));
+			assertEquals(IDS + " wrong number of open tracks", 
+				2, writer.getNumberOfOpenTracks());
+			assertEquals(IDS + " track 1 should be written", 
+				1, writer.getNumberOfWrittenTracks());
+			writer.close();
+			assertEquals(IDS + " open tracks should be written on close", 
+				0, writer.getNumberOfOpenTracks());
+			assertEquals(IDS + " wrong number of written tracks", 
+				3, writer.getNumberOfWrittenTracks());
+		} catch (IOException e) {
+			fail(IDS + " writing trajectories failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Tracks the synthetic sequence frame by frame and writes trajectories.
+	 * @param minTrackLength	Minimal length of trajectories to write.
+	 * @return	File with trajectories.
+	 * @throws ALDException	Thrown if tracking fails.
+	 * @throws IOException	Thrown if the file cannot be created.
+	 */
+	private File trackToFile(int minTrackLength) 
+			throws ALDException, IOException {
+		File file = this.folder.newFile("tracks.txt");
+		TrajectoryStreamWriter writer = 
+			new TrajectoryStreamWriter(file.getAbsolutePath(), minTrackLength);
+		this.tracker.startStream(sizeX, sizeY, writer);
+		for (int t = 0; t < sizeT; ++t)
+			this.tracker.trackNextFrame(frame(t));
+		this.tracker.finishStream();
+		return file;
+	}
+
+	/**
+	 * Extracts a frame of the synthetic sequence.
+	 * @param t	Index of the frame.
+	 * @return	Frame.
+	 */
+	private MTBImage frame(int t) {
+		return this.sequence.getImagePart(0, 0, 0, t, 0, sizeX, sizeY, 1, 1, 1);
+	}
+
+	/**
+	 * Creates regions with the given ids.
+	 * @param ids	Track ids.
+	 * @return	Set of single pixel regions.
+	 */
+	private static MTBRegion2DSet regions(int... ids) {
+		MTBRegion2DSet set = new MTBRegion2DSet(0, 0, sizeX - 1, sizeY - 1);
+		for (int id : ids) {
+			MTBRegion2D region = new MTBRegion2D();
+			region.addPixel(10 * id, 10);
+			region.setID(id);
+			set.add(region);
+		}
+		return set;
+	}
+
+	/**
+	 * Draws a filled square into a frame.
+	 * @param img		Image.
+	 * @param x			x-coordinate of the center.
+	 * @param y			y-coordinate of the center.
+	 * @param size	Half of the side length.
+	 * @param t			Frame.
+	 */
+	private static void drawSquare(MTBImage img, int x, int y, int size, 
+			int t) {
+		for (int dy = -size; dy < size; ++dy)
+			for (int dx = -size; dx < size; ++dx)
+				img.putValueInt(x + dx, y + dy, 0, t, 0, 255);
+	}
+
+	/**
+	 * Test if gated assignment yields the same total cost as the assignment 
+	 * on the dense cost matrix.
+	 */
+	@Test
+	public void testGatedAssignment() {
+		Random rand = new Random(13);
+		for (int trial = 0; trial < 40; ++trial) {
+			// regions in the next frame are moved, resized, some disappear and 
+			// some new ones appear
+			int n = (trial == 0) ? 0 : rand.nextInt(40);
+			MTBRegion2DSet curr = new MTBRegion2DSet(0, 0, 199, 199);
+			MTBRegion2DSet next = new MTBRegion2DSet(0, 0, 199, 199);
+			for (int i = 0; i < n; ++i) {
+				int x = 5 + rand.nextInt(190), y = 5 + rand.nextInt(190);
+				int size = 1 + rand.nextInt(3);
+				curr.add(square(x, y, size));
+				if (rand.nextDouble() < 0.85)
+					next.add(square(x + rand.nextInt(15) - 7, y + rand.nextInt(15) - 7, 
+						Math.max(1, size + rand.nextInt(3) - 1)));
+			}
+			int born = (trial == 1) ? 0 : rand.nextInt(5);
+			for (int j = 0; j < born; ++j)
+				next.add(square(5 + rand.nextInt(190), 5 + rand.nextInt(190), 
+					1 + rand.nextInt(3)));
+
+			for (int threads : new int[]{1, 3}) {
+				this.tracker.setThreadNum(threads);
+				try {
+					int[] dense = this.tracker.assign(curr, next);
+					int[] gated = this.tracker.assignGated(curr, next);
+					checkGate(gated, curr, next);
+					assertEquals(IDS + " trial " + trial + ", " + threads 
+						+ " threads: total costs differ", totalCost(dense, curr, next),
+						totalCost(gated, curr, next), accuracy);
+				} catch (ALDException e) {
+					fail(IDS + " assignment failed: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the cost of an assignment as defined by the dense problem.
+	 * <p>
+	 * All rows of the cost matrix not assigning two regions to each other 
+	 * refer to a dummy and cost the maximum distance plus one.
+	 * 
+	 * @param a			Assignment.
+	 * @param curr	Regions of the current frame.
+	 * @param next	Regions of the next frame.
+	 * @return	Total cost.
+	 */
+	private static double totalCost(int[] a, MTBRegion2DSet curr, 
+			MTBRegion2DSet next) {
+		int n = curr.size(), m = next.size();
+		double maxDistance = 0;
+		for (int i = 0; i < n; ++i)
+			for (int j = 0; j < m; ++j)
+				maxDistance = Math.max(maxDistance, 
+					distance(curr.elementAt(i), next.elementAt(j)));
+		double cost = 0;
+		int matches = 0;
+		for (int i = 0; i < n; ++i) {
+			if (a[i] >= 0 && a[i] < m) {
+				cost += distance(curr.elementAt(i), next.elementAt(a[i]));
+				++matches;
+			}
+		}
+		return cost + (n + m - matches) * (maxDistance + 1);
+	}
+
+	/**
+	 * Checks that regions are matched at most once and only within the gate.
+	 * 
+	 * @param a			Assignment.
+	 * @param curr	Regions of the current frame.
+	 * @param next	Regions of the next frame.
+	 */
+	private static void checkGate(int[] a, MTBRegion2DSet curr, 
+			MTBRegion2DSet next) {
+		int n = curr.size(), m = next.size();
+		assertEquals(IDS + " wrong size of assignment", n + m, a.length);
+		boolean[] matched = new boolean[m];
+		for (int i = 0; i < n; ++i) {
+			if (a[i] < 0 || a[i] >= m)
+				continue;
+			assertFalse(IDS + " region " + a[i] + " matched twice", matched[a[i]]);
+			matched[a[i]] = true;
+			MTBRegion2D r = curr.elementAt(i), s = next.elementAt(a[i]);
+			assertTrue(IDS + " matched regions too far apart", 
+				distance(r, s) <= maxDist);
+			double frac = (double)s.getArea() / r.getArea();
+			assertTrue(IDS + " area change of matched regions too large", 
+				Math.max(frac, 1 / frac) <= 1 + maxAreaChange);
+		}
+	}
+
+	/**
+	 * Computes the distance between the centroids of two regions.
+	 * @param r	First region.
+	 * @param s	Second region.
+	 * @return	Euclidean distance.
+	 */
+	private static double distance(MTBRegion2D r, MTBRegion2D s) {
+		double dx = r.getCenterOfMass_X() - s.getCenterOfMass_X();
+		double dy = r.getCenterOfMass_Y() - s.getCenterOfMass_Y();
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Creates a square region.
+	 * @param x			x-coordinate of the center.
+	 * @param y			y-coordinate of the center.
+	 * @param size	Half of the side length.
+	 * @return	Region.
+	 */
+	private static MTBRegion2D square(int x, int y, int size) {
+		MTBRegion2D region = new MTBRegion2D();
+		for (int dy = -size; dy < size; ++dy)
+			for (int dx = -size; dx < size; ++dx)
+				region.addPixel(x + dx, y + dy);
+		return region;
+	}
+}
@@ -128,4 +128,53 @@ public class TestMTBPolygon2D {
 		assertFalse("Polygon should be ordered counter-clockwise...",
 			this.poly.isOrderedClockwise());
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Test scanline rasterization and point-in-polygon tests.
+	 */
+	@Test
+	public void testRasterization() {
+		this.poly = new MTBPolygon2D();
+		this.poly.addPoint(2, 2);
+		this.poly.addPoint(7, 2);
+		this.poly.addPoint(7, 6);
+		this.poly.addPoint(2, 6);
+		this.poly.setClosed();
+		
+		// pixels with centers inside of the polygon
+		MTBPolygon2D.PixelSpans spans = this.poly.getPixelSpans(10, 10, false); 
+		assertEquals("Polygon should cover 20 pixels!", 20, spans.getArea());
+		assertEquals("First row should be 2!", 2, spans.getFirstRow());
+		assertArrayEquals("Wrong spans in row 3!", 
+			new int[]{2, 6}, spans.getSpans(3));
+		int[][] mask = this.poly.getBinaryMask(10, 10, false);
+		assertEquals("Pixel (4,3) is inside!", 1, mask[3][4]);
+		assertEquals("Pixel (7,6) is outside!", 0, mask[6][7]);
+
+		// polygon pixels added, 3 corners are not yet included
+		spans = this.poly.getPixelSpans(10, 10, true); 
+		assertEquals("Polygon should cover 23 pixels!", 23, spans.getArea());
+		mask = this.poly.getBinaryMask(10, 10);
+		assertEquals("Pixel (7,6) is inside!", 1, mask[6][7]);
+		assertTrue("Pixel (7,6) is inside!", this.poly.contains(7, 6, 10, 10));
+		assertFalse("Pixel (8,4) is outside!", this.poly.contains(8, 4, 10, 10));
+		
+		// clipping to the window
+		spans = this.poly.getPixelSpans(5, 4, false);
+		assertEquals("Clipped polygon should cover 6 pixels!", 
+			6, spans.getArea());
+
+		// cached spans have to be updated if points change in place
+		this.poly.getPoints().elementAt(1).x = 9;
+		this.poly.getPoints().elementAt(2).x = 9;
+		assertTrue("Pixel (8,4) is inside!", this.poly.contains(8, 4, 10, 10));
+		
+		// analytic tests
+		assertTrue("Point is inside!", this.poly.containsPointEvenOdd(3.5, 3));
+		assertFalse("Point is outside!", this.poly.containsPointEvenOdd(1, 3));
+		assertEquals("Winding number should be 1!", 
+			1, Math.abs(this.poly.getWindingNumber(3.5, 3)));
+		assertEquals("Winding number should be 0!", 
+			0, this.poly.getWindingNumber(12, 3));
+	}
+}
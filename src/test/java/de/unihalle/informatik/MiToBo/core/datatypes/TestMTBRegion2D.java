@@ -0,0 +1,124 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.core.datatypes;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Point2D;
+import java.util.Vector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for {@link MTBRegion2D}.
+ * 
+ * @author agent
+ */
+public class TestMTBRegion2D {
+
+	/**
+	 * Accuracy for numerical comparisons.
+	 */
+	private static final double accuracy = 1.0e-6;
+	
+	/**
+	 * Test object.
+	 */
+	private MTBRegion2D region;
+	
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		// L-shaped region far away from the origin
+		this.region = new MTBRegion2D();
+		for (int y = 2000; y < 2010; ++y)
+			for (int x = 3000; x < 3004; ++x)
+				this.region.addPixel(x, y);
+		for (int y = 2006; y < 2010; ++y)
+			for (int x = 3004; x < 3012; ++x)
+				this.region.addPixel(new Point2D.Double(x, y));
+	}
+	
+	/**
+	 * Test cached moments against direct summation over the region pixels.
+	 */
+	@Test
+	public void testMoments() {
+		Vector<Point2D.Double> pts = this.region.getPoints();
+		double cx = 0, cy = 0;
+		for (Point2D.Double p: pts) {
+			cx += p.x;
+			cy += p.y;
+		}
+		cx /= pts.size();
+		cy /= pts.size();
+		for (int p = 0; p <= 3; ++p) {
+			for (int q = 0; p + q <= 3; ++q) {
+				double m = 0, mu = 0;
+				for (Point2D.Double pt: pts) {
+					m += Math.pow(pt.x, p) * Math.pow(pt.y, q);
+					mu += Math.pow(pt.x - cx, p) * Math.pow(pt.y - cy, q);
+				}
+				assertEquals("Moment (" + p + "," + q + ") is wrong!", 
+					m, this.region.getMoment(p, q), accuracy * Math.abs(m));
+				assertEquals("Central moment (" + p + "," + q + ") is wrong!", 
+					mu, this.region.getCentralMoment(p, q), 1.0e-3);
+			}
+		}
+		// moments have to be restored properly if point list is re-assigned
+		MTBRegion2D copy = this.region.clone();
+		assertEquals("Orientations of copy and original differ!",
+			this.region.getOrientation(), copy.getOrientation(), accuracy);
+		assertEquals("Central moment of copy is wrong!",
+			this.region.getCentralMoment(1, 2), copy.getCentralMoment(1, 2), 
+				1.0e-3);
+	}
+	
+	/**
+	 * Test moments of joined regions.
+	 */
+	@Test
+	public void testJoin() {
+		MTBRegion2D other = new MTBRegion2D();
+		// overlaps with the region in 4 pixels
+		for (int y = 2008; y < 2012; ++y)
+			for (int x = 3010; x < 3012; ++x)
+				other.addPixel(x, y);
+		MTBRegion2D joined = this.region.join(other);
+		assertEquals("Joined region should have 76 pixels!", 
+			76, joined.getArea());
+		MTBRegion2D reference = new MTBRegion2D(joined.getPoints());
+		for (int p = 0; p <= 3; ++p) {
+			for (int q = 0; p + q <= 3; ++q) {
+				assertEquals("Central moment (" + p + "," + q + ") is wrong!", 
+					reference.getCentralMoment(p, q), 
+						joined.getCentralMoment(p, q), 1.0e-3);
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.core.datatypes;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for {@link MTBSpatialGridIndex2D}.
+ * 
+ * @author agent
+ */
+public class TestMTBSpatialGridIndex2D {
+
+	/**
+	 * Number of random boxes.
+	 */
+	private static final int boxNum = 200;
+	
+	/**
+	 * Bounding boxes of test objects.
+	 */
+	private double[][] boxes;
+	
+	/**
+	 * Centers of test objects.
+	 */
+	private double[][] centers;
+
+	/**
+	 * Index to test.
+	 */
+	private MTBSpatialGridIndex2D index;
+	
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		Random rand = new Random(42);
+		this.boxes = new double[boxNum][];
+		this.centers = new double[boxNum][];
+		for (int i = 0; i < boxNum; ++i) {
+			double x = rand.nextDouble() * 500;
+			double y = rand.nextDouble() * 400;
+			double w = rand.nextDouble() * 30;
+			double h = rand.nextDouble() * 30;
+			this.boxes[i] = new double[] {x, y, x + w, y + h};
+			this.centers[i] = new double[] {x + w/2, y + h/2};
+		}
+		this.index = new MTBSpatialGridIndex2D(this.boxes, this.centers);
+	}
+	
+	/**
+	 * Compare query results against exhaustive search.
+	 */
+	@Test
+	public void testQueries() {
+		Random rand = new Random(7);
+		for (int q = 0; q < 100; ++q) {
+			double x = rand.nextDouble() * 600 - 50;
+			double y = rand.nextDouble() * 500 - 50;
+			
+			// point location
+			int[] res = this.index.getBoxesContaining(x, y);
+			int n = 0;
+			for (int i = 0; i < boxNum; ++i) {
+				double[] b = this.boxes[i];
+				if (b[0] <= x && x <= b[2] && b[1] <= y && y <= b[3]) {
+					assertTrue("Box " + i + " is missing!", 
+						n < res.length && res[n] == i);
+					++n;
+				}
+			}
+			assertEquals("Too many boxes found!", n, res.length);
+			
+			// overlap
+			res = this.index.getBoxesOverlapping(x, y, x + 40, y + 20);
+			n = 0;
+			for (int i = 0; i < boxNum; ++i) {
+				double[] b = this.boxes[i];
+				if (b[0] <= x + 40 && x <= b[2] && b[1] <= y + 20 && y <= b[3]) {
+					assertTrue("Box " + i + " is missing!", 
+						n < res.length && res[n] == i);
+					++n;
+				}
+			}
+			assertEquals("Too many boxes found!", n, res.length);
+			
+			// nearest neighbors, distances have to be ascending and no other 
+			// center is allowed to be closer than the k-th one
+			res = this.index.getNearestCenters(x, y, 5);
+			assertEquals("Expected 5 neighbors!", 5, res.length);
+			double lastDist = 0;
+			for (int j = 0; j < res.length; ++j) {
+				double d = this.dist(res[j], x, y);
+				assertTrue("Neighbors are not sorted!", d >= lastDist);
+				lastDist = d;
+			}
+			int closer = 0;
+			for (int i = 0; i < boxNum; ++i)
+				if (this.dist(i, x, y) < lastDist)
+					++closer;
+			assertTrue("Found neighbors are not the nearest ones!", closer < 5);
+		}
+	}
+	
+	/**
+	 * Squared distance of a center to a point.
+	 * @param i	Object index.
+	 * @param x	x-coordinate.
+	 * @param y	y-coordinate.
+	 * @return	Squared distance.
+	 */
+	private double dist(int i, double x, double y) {
+		double dx = this.centers[i][0] - x;
+		double dy = this.centers[i][1] - y;
+		return dx * dx + dy * dy;
+	}
+}
@@ -28,6 +28,11 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import de.unihalle.informatik.Alida.exceptions.ALDException;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
+import de.unihalle.informatik.MiToBo.gui.MTBTableModel;
+
 /**
  * JUnit test class for {@link MorphologyAnalyzer2D}.
  * 
@@ -293,4 +298,69 @@ public class TestMorphologyAnalyzer2D {
 					testArray[i] == expectedResult[i]);	
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Test if parallel feature extraction yields the sequential results.
+	 */
+	@Test
+	public void testParallelFeatureExtraction() {
+		
+		// label image with a 10 x 10 grid of rectangles of different size, 
+		// enough regions to be split into several chunks by the parallel path
+		MTBImage labelImg = MTBImage.createMTBImage(
+				120, 100, 1, 1, 1, MTBImageType.MTB_SHORT);
+		labelImg.fillBlack();
+		int label = 1;
+		for (int ry = 0; ry < 10; ++ry) {
+			for (int rx = 0; rx < 10; ++rx) {
+				int w = 4 + (rx + ry) % 5;
+				int h = 3 + (3 * rx + ry) % 6;
+				for (int y = 1 + ry * 10; y < 1 + ry * 10 + h; ++y)
+					for (int x = 1 + rx * 12; x < 1 + rx * 12 + w; ++x)
+						labelImg.putValueInt(x, y, label);
+				++label;
+			}
+		}
+
+		MTBTableModel seqTable = this.analyze(labelImg, 1);
+		MTBTableModel parTable = this.analyze(labelImg, 3);
+		
+		assertEquals("Wrong number of regions...", 100, seqTable.getRowCount());
+		assertEquals("Different number of regions...", 
+				seqTable.getRowCount(), parTable.getRowCount());
+		assertEquals("Different number of features...", 
+				seqTable.getColumnCount(), parTable.getColumnCount());
+		for (int r = 0; r < seqTable.getRowCount(); ++r) {
+			for (int c = 0; c < seqTable.getColumnCount(); ++c) {
+				assertEquals("Parallel result differs in row " + r + ", column " + c,
+					seqTable.getValueAt(r, c).toString(), 
+					parTable.getValueAt(r, c).toString());
+			}
+		}
+		
+		// first region is a 4 x 3 rectangle
+		assertEquals("Wrong area of first region...", 12.0, 
+			Double.parseDouble(seqTable.getValueAt(0, 1).toString().replace(',', '.')),
+			1.0e-3);
+	}
+	
+	/**
+	 * Run the analyzer on the given label image.
+	 * @param labelImg	Label image.
+	 * @param threads		Number of threads.
+	 * @return	Result table.
+	 */
+	private MTBTableModel analyze(MTBImage labelImg, int threads) {
+		try {
+			MorphologyAnalyzer2D op = new MorphologyAnalyzer2D(labelImg);
+			op.setCalcSkeletonBranchFeatures(false);
+			op.setAnalyzeProtrusionsAndIndentations(false);
+			op.setThreadNum(threads);
+			op.runOp();
+			return op.getTable();
+		} catch (ALDException e) {
+			fail("Feature extraction failed: " + e.getMessage());
+		}
+		return null;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+
+package de.unihalle.informatik.MiToBo.math.graphs;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Point2D;
+import java.util.Vector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihalle.informatik.Alida.exceptions.ALDException;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
+import de.unihalle.informatik.MiToBo.math.graphs.DijkstraShortestPixelPathFinder.SearchMode;
+
+/**
+ * JUnit test class for {@link DijkstraShortestPixelPathFinder}.
+ * 
+ * @author agent
+ */
+public class TestDijkstraShortestPixelPathFinder {
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		// nothing to do here
+	}
+	
+	/**
+	 * Test path search with Dijkstra and A* and multiple end pixels.
+	 */
+	@Test
+	public void testPathSearch() {
+		
+		// bright image with dark corridor in row 5 and a barrier in column 10
+		MTBImage img = MTBImage.createMTBImage(
+			30, 20, 1, 1, 1, MTBImageType.MTB_BYTE);
+		for (int y=0;y<20;++y)
+			for (int x=0;x<30;++x)
+				img.putValueInt(x, y, (y == 5) ? 1 : 10);
+		for (int y=0;y<20;++y)
+			if (y != 15)
+				img.putValueInt(10, y, 200);
+		
+		try {
+			DijkstraShortestPixelPathFinder op = 
+				new DijkstraShortestPixelPathFinder();
+			op.setInputImage(img);
+			op.setNodeThreshold(100);
+			op.setStartPixel(new Point2D.Double(0, 5));
+			op.setEndPixel(new Point2D.Double(9, 5));
+			op.runOp();
+			Vector<Point2D.Double> path = op.getResultPath();
+			assertNotNull("Path should have been found...", path);
+			assertEquals("Wrong path length...", 10, path.size());
+			assertEquals("Wrong path costs...", 9.0, op.getResultCosts(), 1e-10);
+			for (int i=0; i<10; ++i) {
+				assertEquals("Path should follow dark corridor...", 
+					5.0, path.get(i).y, 1e-10);
+			}
+
+			// behind the barrier the path has to pass the gap in row 15
+			op.setEndPixel(new Point2D.Double(20, 5));
+			op.runOp();
+			double costs = op.getResultCosts();
+			assertTrue("Path should pass the gap...", 
+				op.getResultPath().contains(new Point2D.Double(10, 15)));
+			op.setSearchMode(SearchMode.A_STAR);
+			op.runOp();
+			assertEquals("A* costs differ from Dijkstra...", 
+				costs, op.getResultCosts(), 1e-10);
+			
+			// multiple end pixels, one of them not reachable
+			Vector<Point2D.Double> ends = new Vector<>();
+			ends.add(new Point2D.Double(20, 5));
+			ends.add(new Point2D.Double(10, 2));
+			ends.add(new Point2D.Double(5, 5));
+			op.setSearchMode(SearchMode.DIJKSTRA);
+			op.setEndPixels(ends);
+			op.runOp();
+			double[] allCosts = op.getResultCostsAll();
+			assertEquals("Wrong number of paths...", 3, op.getResultPaths().size());
+			assertEquals("Wrong costs for first end pixel...", 
+				costs, allCosts[0], 1e-10);
+			assertNull("Barrier pixel should not be reachable...", 
+				op.getResultPaths().get(1));
+			assertTrue("Costs should be NaN...", Double.isNaN(allCosts[1]));
+			assertEquals("Wrong costs for third end pixel...", 
+				5.0, allCosts[2], 1e-10);
+			assertEquals("Cheapest path should be returned...", 
+				5.0, op.getResultCosts(), 1e-10);
+		} catch (ALDException e) {
+			fail("Path search failed: " + e.getMessage());
+		}
+	}
+}
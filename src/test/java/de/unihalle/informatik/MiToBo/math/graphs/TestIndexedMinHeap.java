@@ -0,0 +1,127 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.math.graphs;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for {@link IndexedMinHeap}.
+ *
+ * @author agent
+ */
+public class TestIndexedMinHeap {
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		// nothing to do here
+	}
+
+	/**
+	 * Test if nodes are returned sorted by keys and ties in insertion order.
+	 */
+	@Test
+	public void testOrder() {
+		int n = 500;
+		Random rand = new Random(42);
+		double[] keys = new double[n];
+		IndexedMinHeap heap = new IndexedMinHeap(n, keys);
+		for (int i = 0; i < n; ++i) {
+			keys[i] = rand.nextInt(20);
+			heap.insertOrUpdate(i);
+		}
+		assertEquals("Wrong heap size...", n, heap.size());
+		int last = -1;
+		for (int k = 0; k < n; ++k) {
+			assertFalse("Heap should not be empty...", heap.isEmpty());
+			int node = heap.pop();
+			assertTrue("Node should be settled...", heap.isSettled(node));
+			assertFalse("Node should not be in heap...", heap.contains(node));
+			if (last >= 0) {
+				assertTrue("Keys not sorted...", keys[last] <= keys[node]);
+				if (keys[last] == keys[node])
+					assertTrue("Ties not in insertion order...", last < node);
+			}
+			last = node;
+		}
+		assertTrue("Heap should be empty...", heap.isEmpty());
+	}
+
+	/**
+	 * Test changing keys of nodes in the heap and clearing the heap.
+	 */
+	@Test
+	public void testUpdate() {
+		int n = 200;
+		Random rand = new Random(7);
+		double[] keys = new double[n];
+		IndexedMinHeap heap = new IndexedMinHeap(n, keys);
+		for (int i = 0; i < n; ++i) {
+			keys[i] = rand.nextDouble();
+			heap.insertOrUpdate(i);
+		}
+		// increase and decrease keys of nodes in the heap
+		for (int k = 0; k < 500; ++k) {
+			int i = rand.nextInt(n);
+			keys[i] = rand.nextDouble();
+			heap.insertOrUpdate(i);
+		}
+		double[] sorted = keys.clone();
+		Arrays.sort(sorted);
+		for (int k = 0; k < n / 2; ++k)
+			assertEquals("Wrong key order...", sorted[k], keys[heap.pop()], 0.0);
+
+		// settled nodes can be inserted again
+		int settledNode = -1;
+		for (int i = 0; settledNode < 0; ++i)
+			if (heap.isSettled(i))
+				settledNode = i;
+		int queuedNode = -1;
+		for (int i = 0; queuedNode < 0; ++i)
+			if (heap.contains(i))
+				queuedNode = i;
+		keys[settledNode] = -1.0;
+		keys[queuedNode] = -1.0;
+		heap.insertOrUpdate(queuedNode);
+		heap.insertOrUpdate(settledNode);
+		assertEquals("Wrong heap size...", n - n / 2 + 1, heap.size());
+		assertEquals("Queued node should be first...", queuedNode, heap.pop());
+		assertEquals("Settled node should be second...", settledNode, heap.pop());
+
+		heap.clear();
+		assertTrue("Heap should be empty...", heap.isEmpty());
+		for (int i = 0; i < n; ++i)
+			assertFalse("Node should not be in heap...", heap.contains(i));
+		assertTrue("Node should remain settled...", heap.isSettled(settledNode));
+	}
+}
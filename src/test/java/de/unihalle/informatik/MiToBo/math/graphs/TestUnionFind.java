@@ -0,0 +1,79 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+
+package de.unihalle.informatik.MiToBo.math.graphs;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for {@link UnionFind}.
+ *
+ * @author agent
+ */
+public class TestUnionFind {
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		// nothing to do here
+	}
+
+	/**
+	 * Test if merged nodes share their root and paths get compressed.
+	 */
+	@Test
+	public void testFindRoot() {
+		int n = 10;
+		int[] parents = new int[n];
+		for (int i = 0; i < n; ++i)
+			parents[i] = i;
+		// chain 0 <- 1 <- ... <- 5, nodes 6 to 9 stay separate except 7-8
+		for (int i = 1; i <= 5; ++i)
+			parents[i] = i - 1;
+		int r7 = UnionFind.findRoot(parents, 7);
+		int r8 = UnionFind.findRoot(parents, 8);
+		parents[r8] = r7;
+
+		for (int i = 0; i <= 5; ++i)
+			assertEquals("Wrong root of chain node...", 
+				0, UnionFind.findRoot(parents, i));
+		assertEquals("Merged nodes should share root...", 
+			UnionFind.findRoot(parents, 7), UnionFind.findRoot(parents, 8));
+		assertEquals("Single node should be its own root...", 
+			6, UnionFind.findRoot(parents, 6));
+		assertEquals("Single node should be its own root...", 
+			9, UnionFind.findRoot(parents, 9));
+		assertTrue("Separate trees should have different roots...", 
+			UnionFind.findRoot(parents, 0) != UnionFind.findRoot(parents, 7));
+
+		// path halving shortens the chain
+		assertTrue("Path not compressed...", parents[5] < 4);
+	}
+}
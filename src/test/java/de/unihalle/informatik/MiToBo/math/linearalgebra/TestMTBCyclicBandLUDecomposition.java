@@ -0,0 +1,209 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+
+package de.unihalle.informatik.MiToBo.math.linearalgebra;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import Jama.Matrix;
+
+/**
+ * JUnit test class for {@link MTBCyclicBandLUDecomposition}.
+ * 
+ * @author agent
+ */
+public class TestMTBCyclicBandLUDecomposition {
+
+	/**
+	 * Identifier string for test class.
+	 */
+	private static final String IDS = "[TestMTBCyclicBandLUDecomposition]";
+
+	/**
+	 * Numerical accuracy for tests.
+	 */
+	private static final double accuracy = 1.0e-10;
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		// nothing to do here
+	}
+
+	/**
+	 * Compares solutions with dense solver for various sizes and bandwidths.
+	 */
+	@Test
+	public void testSolveRandomSystems() {
+		Random rand = new Random(42);
+		for (int k = 0; k <= 3; ++k) {
+			for (int n = 2*k + 1; n < 30; ++n) {
+				MTBCyclicBandMatrix M = new MTBCyclicBandMatrix(n, k);
+				for (int i = 0; i < n; ++i) {
+					for (int d = -k; d <= k; ++d)
+						M.set(i, i + d, rand.nextGaussian());
+					M.add(i, i, 2*k + 3);
+				}
+				double[] b = new double[n];
+				Matrix bDense = new Matrix(n, 1);
+				for (int i = 0; i < n; ++i) {
+					b[i] = rand.nextGaussian();
+					bDense.set(i, 0, b[i]);
+				}
+				MTBCyclicBandLUDecomposition lu = new MTBCyclicBandLUDecomposition(M);
+				assertTrue(IDS + " matrix should be nonsingular...", 
+					lu.isNonsingular());
+				double[] x = lu.solve(b);
+				Matrix xDense = M.toMatrix().solve(bDense);
+				for (int i = 0; i < n; ++i) {
+					assertEquals(IDS + " n = " + n + ", k = " + k + ", entry " + i,
+						xDense.get(i, 0), x[i], accuracy);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests pentadiagonal snake system with non-uniform step sizes.
+	 */
+	@Test
+	public void testSolveSnakeSystem() {
+		int n = 500;
+		MTBCyclicBandMatrix M = new MTBCyclicBandMatrix(n, 2);
+		for (int i = 0; i < n; ++i) {
+			M.add(i, i-2, 1);
+			M.add(i, i-1, -5);
+			M.add(i, i, 8);
+			M.add(i, i+1, -5);
+			M.add(i, i+2, 1);
+			M.scaleRow(i, 0.5 + (i % 7) * 0.1);
+		}
+		M.addToDiagonal(1.0);
+		double[] b = new double[n];
+		for (int i = 0; i < n; ++i)
+			b[i] = 100 * Math.sin(2 * Math.PI * i / n);
+		MTBCyclicBandLUDecomposition lu = new MTBCyclicBandLUDecomposition(M);
+		double[] x = lu.solve(b);
+		double[] r = M.times(x);
+		for (int i = 0; i < n; ++i)
+			assertEquals(IDS + " residual too large at " + i, b[i], r[i], accuracy);
+		// decomposition is not affected by later changes of the matrix
+		M.clear();
+		double[] y = lu.solve(b);
+		for (int i = 0; i < n; ++i)
+			assertEquals(IDS + " solution changed at " + i, x[i], y[i], 0.0);
+	}
+
+	/**
+	 * Tests snake system with x- and y-coordinates coupled by banded blocks.
+	 */
+	@Test
+	public void testSolveInterleavedSystem() {
+		Random rand = new Random(7);
+		int n = 40;
+		// pentadiagonal blocks on the diagonal, coupling blocks of bandwidth 1
+		MTBCyclicBandMatrix[][] blocks = new MTBCyclicBandMatrix[2][2];
+		for (int r = 0; r < 2; ++r) {
+			for (int c = 0; c < 2; ++c) {
+				int k = (r == c) ? 2 : 1;
+				blocks[r][c] = new MTBCyclicBandMatrix(n, k);
+				for (int i = 0; i < n; ++i) {
+					if (r == c) {
+						blocks[r][c].add(i, i-2, 1);
+						blocks[r][c].add(i, i-1, -5);
+						blocks[r][c].add(i, i, 8);
+						blocks[r][c].add(i, i+1, -5);
+						blocks[r][c].add(i, i+2, 1);
+					}
+					else {
+						double tau = rand.nextGaussian();
+						blocks[r][c].add(i, i, (r == 0) ? -tau : tau);
+						blocks[r][c].add(i, i+1, (r == 0) ? tau : -tau);
+					}
+					blocks[r][c].scaleRow(i, 0.5 + ((i + r) % 7) * 0.1);
+				}
+				if (r == c)
+					blocks[r][c].addToDiagonal(1.0);
+			}
+		}
+		MTBCyclicBandMatrix M = MTBCyclicBandMatrix.interleave(blocks);
+		assertEquals(IDS + " wrong size of interleaved matrix...", 
+			2*n, M.getSize());
+		assertEquals(IDS + " wrong bandwidth of interleaved matrix...", 
+			5, M.getBandwidth());
+		
+		// dense matrix with blocks in original order
+		Matrix dense = new Matrix(2*n, 2*n);
+		for (int r = 0; r < 2; ++r)
+			for (int c = 0; c < 2; ++c)
+				blocks[r][c].addToMatrix(dense, r*n, c*n, 1.0);
+		for (int r = 0; r < 2; ++r)
+			for (int c = 0; c < 2; ++c)
+				for (int i = 0; i < n; ++i)
+					for (int j = 0; j < n; ++j)
+						assertEquals(IDS + " wrong interleaved entry...", 
+							dense.get(r*n + i, c*n + j), M.get(2*i + r, 2*j + c), 0.0);
+		
+		double[] b = new double[2*n];
+		Matrix bDense = new Matrix(2*n, 1);
+		for (int i = 0; i < n; ++i) {
+			for (int r = 0; r < 2; ++r) {
+				b[2*i + r] = 50 * Math.sin(2 * Math.PI * i / n + r);
+				bDense.set(r*n + i, 0, b[2*i + r]);
+			}
+		}
+		MTBCyclicBandLUDecomposition lu = new MTBCyclicBandLUDecomposition(M);
+		assertTrue(IDS + " matrix should be nonsingular...", lu.isNonsingular());
+		double[] x = lu.solve(b);
+		Matrix xDense = dense.solve(bDense);
+		for (int i = 0; i < n; ++i)
+			for (int r = 0; r < 2; ++r)
+				assertEquals(IDS + " entry " + i + " of block " + r, 
+					xDense.get(r*n + i, 0), x[2*i + r], accuracy);
+	}
+
+	/**
+	 * Tests detection of singular matrices.
+	 */
+	@Test
+	public void testSingular() {
+		// cyclic second differences, vector of ones is in kernel
+		MTBCyclicBandMatrix M = new MTBCyclicBandMatrix(10, 1);
+		for (int i = 0; i < 10; ++i) {
+			M.set(i, i-1, -1);
+			M.set(i, i, 2);
+			M.set(i, i+1, -1);
+		}
+		MTBCyclicBandLUDecomposition lu = new MTBCyclicBandLUDecomposition(M);
+		assertFalse(IDS + " matrix should be singular...", lu.isNonsingular());
+	}
+}
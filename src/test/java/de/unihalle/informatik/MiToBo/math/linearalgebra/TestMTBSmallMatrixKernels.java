@@ -0,0 +1,199 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.math.linearalgebra;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import Jama.Matrix;
+
+/**
+ * JUnit test class for {@link MTBSmallMatrixKernels}.
+ * 
+ * @author agent
+ */
+public class TestMTBSmallMatrixKernels {
+
+	/**
+	 * Identifier string for test class.
+	 */
+	private static final String IDS = "[TestMTBSmallMatrixKernels]";
+
+	/**
+	 * Numerical accuracy for tests.
+	 */
+	private static final double accuracy = 1.0e-10;
+
+	/**
+	 * Random generator with fixed seed.
+	 */
+	private Random rand;
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		this.rand = new Random(42);
+	}
+
+	/**
+	 * Checks Cholesky factor, its inverse, log-determinant, inverse and 
+	 * Mahalanobis distance against Jama.
+	 */
+	@Test
+	public void testCholeskyAndMahalanobis() {
+		for (int n = 1; n <= 6; ++n) {
+			Matrix A = this.randomSPD(n);
+			double[][] l = A.getArrayCopy();
+			assertTrue(IDS + " matrix is positive definite", 
+					MTBSmallMatrixKernels.choleskyInPlace(l));
+			Matrix L = new Matrix(l).copy();
+			this.assertEqualMatrices("L L^T = A", A, L.times(L.transpose()));
+			for (int i = 0; i < n; ++i)
+				for (int j = i + 1; j < n; ++j)
+					assertEquals(IDS + " upper triangle is zero", 0, l[i][j], 0);
+			assertEquals(IDS + " log-determinant", Math.log(A.det()),
+					MTBSmallMatrixKernels.logDetCholesky(l), accuracy);
+
+			MTBSmallMatrixKernels.invertLowerInPlace(l);
+			this.assertEqualMatrices("L^-1", L.inverse(), new Matrix(l));
+			Matrix Ainv = new Matrix(n, n);
+			MTBSmallMatrixKernels.inverseFromInverseCholesky(l, Ainv.getArray());
+			this.assertEqualMatrices("A^-1", A.inverse(), Ainv);
+
+			Matrix x = this.randomMatrix(n, 1);
+			Matrix mu = this.randomMatrix(n, 1);
+			Matrix d = x.minus(mu);
+			assertEquals(IDS + " Mahalanobis distance", 
+					d.transpose().times(A.inverse()).times(d).get(0, 0),
+					MTBSmallMatrixKernels.mahalanobisSq(l, x.getArray(), 
+							mu.getArray()), accuracy);
+
+			Matrix y = x.copy();
+			MTBSmallMatrixKernels.multiplyLowerInPlace(L.getArray(), y.getArray());
+			this.assertEqualMatrices("L x", L.times(x), y);
+		}
+		double[][] indefinite = new double[][]{{1, 2}, {2, 1}};
+		assertFalse(IDS + " indefinite matrix detected", 
+				MTBSmallMatrixKernels.choleskyInPlace(indefinite));
+	}
+
+	/**
+	 * Checks Kalman prediction and update against the textbook formulas.
+	 */
+	@Test
+	public void testKalmanPredictUpdate() {
+		int n = 5, m = 3;
+		Matrix F = this.randomMatrix(n, n);
+		Matrix H = this.randomMatrix(m, n);
+		Matrix Q = this.randomSPD(n);
+		Matrix R = this.randomSPD(m);
+		Matrix P = this.randomSPD(n);
+		Matrix x = this.randomMatrix(n, 1);
+		Matrix z = this.randomMatrix(m, 1);
+
+		Matrix Fx = new Matrix(n, 1);
+		MTBSmallMatrixKernels.multiply(F.getArray(), x.getArray(), Fx.getArray());
+		this.assertEqualMatrices("F x", F.times(x), Fx);
+		Matrix Pp = new Matrix(n, n);
+		MTBSmallMatrixKernels.congruence(F.getArray(), P.getArray(), 
+				Q.getArray(), Pp.getArray());
+		this.assertEqualMatrices("F P F^T + Q", 
+				F.times(P).times(F.transpose()).plus(Q), Pp);
+
+		Matrix S = new Matrix(m, m);
+		MTBSmallMatrixKernels.congruence(H.getArray(), P.getArray(), 
+				R.getArray(), S.getArray());
+		double[][] w = S.getArrayCopy();
+		assertTrue(MTBSmallMatrixKernels.choleskyInPlace(w));
+		MTBSmallMatrixKernels.invertLowerInPlace(w);
+
+		Matrix K = P.times(H.transpose()).times(S.inverse());
+		Matrix r = z.minus(H.times(x));
+		Matrix xUpd = x.plus(K.times(r));
+		Matrix PUpd = P.minus(K.times(H).times(P));
+
+		// update in place to check aliasing of input and output
+		Matrix xk = x.copy();
+		Matrix Pk = P.copy();
+		double q = MTBSmallMatrixKernels.kalmanUpdate(xk.getArray(), 
+				Pk.getArray(), H.getArray(), z.getArray(), w, xk.getArray(), 
+				Pk.getArray(), new double[n][m], new double[m]);
+		this.assertEqualMatrices("updated mean", xUpd, xk);
+		this.assertEqualMatrices("updated covariance", PUpd, Pk);
+		assertEquals(IDS + " innovation Mahalanobis distance", 
+				r.transpose().times(S.inverse()).times(r).get(0, 0), q, accuracy);
+	}
+
+	/**
+	 * Generates a matrix with normally distributed entries.
+	 * @param r	Number of rows.
+	 * @param c	Number of columns.
+	 * @return	Random matrix.
+	 */
+	private Matrix randomMatrix(int r, int c) {
+		Matrix B = new Matrix(r, c);
+		for (int i = 0; i < r; ++i)
+			for (int j = 0; j < c; ++j)
+				B.set(i, j, this.rand.nextGaussian());
+		return B;
+	}
+
+	/**
+	 * Generates a random symmetric positive definite matrix.
+	 * @param n	Size of the matrix.
+	 * @return	Random SPD matrix.
+	 */
+	private Matrix randomSPD(int n) {
+		Matrix B = this.randomMatrix(n, n);
+		Matrix A = B.times(B.transpose());
+		for (int i = 0; i < n; ++i)
+			A.set(i, i, A.get(i, i) + 1.0);
+		return A;
+	}
+
+	/**
+	 * Compares two matrices element-wise.
+	 * @param msg				Message for failures.
+	 * @param expected	Expected matrix.
+	 * @param actual		Actual matrix.
+	 */
+	private void assertEqualMatrices(String msg, Matrix expected, 
+			Matrix actual) {
+		assertEquals(IDS + " " + msg + ": rows", 
+				expected.getRowDimension(), actual.getRowDimension());
+		assertEquals(IDS + " " + msg + ": columns", 
+				expected.getColumnDimension(), actual.getColumnDimension());
+		for (int i = 0; i < expected.getRowDimension(); ++i)
+			for (int j = 0; j < expected.getColumnDimension(); ++j)
+				assertEquals(IDS + " " + msg + ": entry (" + i + "," + j + ")",
+						expected.get(i, j), actual.get(i, j), accuracy);
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.math.optimization;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for {@link MTBSparseLinearAssignment}.
+ * 
+ * @author agent
+ */
+public class TestMTBSparseLinearAssignment {
+
+	/**
+	 * Identifier string for test class.
+	 */
+	private static final String IDS = "[TestMTBSparseLinearAssignment]";
+
+	/**
+	 * Numerical accuracy for tests.
+	 */
+	private static final double accuracy = 1.0e-10;
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		// nothing to do here
+	}
+
+	/**
+	 * Compares optimal costs with exhaustive search on small random problems.
+	 */
+	@Test
+	public void testRandomProblems() {
+		Random rand = new Random(42);
+		for (int run = 0; run < 200; ++run) {
+			int n = 1 + rand.nextInt(7);
+			double density = 0.2 + 0.8 * rand.nextDouble();
+			// undefined entries are marked by NaN
+			double[][] c = new double[n][n];
+			int[] perm = randomPermutation(n, rand);
+			for (int r = 0; r < n; ++r)
+				for (int col = 0; col < n; ++col)
+					c[r][col] = (col == perm[r] || rand.nextDouble() < density) 
+						? Math.round(20 * rand.nextDouble() - 5) : Double.NaN;
+
+			int[] rowStart = new int[n + 1];
+			int[] cols = new int[n * n];
+			double[] costs = new double[n * n];
+			int e = 0;
+			for (int r = 0; r < n; ++r) {
+				rowStart[r] = e;
+				for (int col = n - 1; col >= 0; --col) {
+					if (!Double.isNaN(c[r][col])) {
+						cols[e] = col;
+						costs[e] = c[r][col];
+						++e;
+					}
+				}
+			}
+			rowStart[n] = e;
+
+			MTBSparseLinearAssignment lap = 
+					new MTBSparseLinearAssignment(n, rowStart, cols, costs);
+			int[] sol = lap.solve();
+			boolean[] used = new boolean[n];
+			double sum = 0;
+			for (int r = 0; r < n; ++r) {
+				assertFalse(IDS + " column assigned twice", used[sol[r]]);
+				assertFalse(IDS + " undefined entry assigned", 
+						Double.isNaN(c[r][sol[r]]));
+				used[sol[r]] = true;
+				sum += c[r][sol[r]];
+			}
+			assertEquals(IDS + " total cost", sum, lap.getTotalCost(), accuracy);
+			assertEquals(IDS + " optimal cost", 
+					bruteForce(c, 0, new boolean[n]), sum, accuracy);
+		}
+	}
+
+	/**
+	 * Checks that infeasible problems are detected.
+	 */
+	@Test
+	public void testInfeasible() {
+		// both rows only have entries in column 0
+		int[] rowStart = new int[]{0, 1, 2};
+		int[] cols = new int[]{0, 0};
+		double[] costs = new double[]{1, 2};
+		boolean thrown = false;
+		try {
+			new MTBSparseLinearAssignment(2, rowStart, cols, costs).solve();
+		} catch (IllegalArgumentException e) {
+			thrown = true;
+		}
+		assertTrue(IDS + " infeasible problem not detected", thrown);
+	}
+
+	/**
+	 * Minimal cost of assigning rows from the given one on exhaustively.
+	 * @param c			Cost matrix, NaN for undefined entries.
+	 * @param row		First row to assign.
+	 * @param used	Columns already assigned.
+	 * @return	Minimal cost, infinity if no assignment exists.
+	 */
+	private static double bruteForce(double[][] c, int row, boolean[] used) {
+		if (row == c.length)
+			return 0;
+		double best = Double.POSITIVE_INFINITY;
+		for (int col = 0; col < c.length; ++col) {
+			if (used[col] || Double.isNaN(c[row][col]))
+				continue;
+			used[col] = true;
+			best = Math.min(best, c[row][col] + bruteForce(c, row + 1, used));
+			used[col] = false;
+		}
+		return best;
+	}
+
+	/**
+	 * Generates a random permutation.
+	 * @param n			Number of elements.
+	 * @param rand	Random generator.
+	 * @return	Permutation of 0,...,n-1.
+	 */
+	private static int[] randomPermutation(int n, Random rand) {
+		int[] p = new int[n];
+		for (int i = 0; i < n; ++i)
+			p[i] = i;
+		for (int i = n - 1; i > 0; --i) {
+			int j = rand.nextInt(i + 1);
+			int t = p[i];
+			p[i] = p[j];
+			p[j] = t;
+		}
+		return p;
+	}
+}
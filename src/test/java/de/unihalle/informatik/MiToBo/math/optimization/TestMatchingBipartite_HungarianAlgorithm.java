@@ -0,0 +1,160 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+package de.unihalle.informatik.MiToBo.math.optimization;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
+import de.unihalle.informatik.MiToBo.math.optimization.MatchingBipartite_HungarianAlgorithm.ScoreInterpretation;
+
+/**
+ * JUnit test class for {@link MatchingBipartite_HungarianAlgorithm}.
+ * 
+ * @author agent
+ */
+public class TestMatchingBipartite_HungarianAlgorithm {
+
+	/**
+	 * Identifier string for test class.
+	 */
+	private static final String IDS = "[TestMatchingBipartite_HungarianAlgorithm]";
+
+	/**
+	 * Numerical accuracy for tests.
+	 */
+	private static final double accuracy = 1.0e-10;
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		// nothing to do here
+	}
+
+	/**
+	 * Compares optimal scores with exhaustive search on small random square
+	 * and rectangular problems, minimizing and maximizing.
+	 */
+	@Test
+	public void testRandomProblems() throws ALDOperatorException {
+		Random rand = new Random(42);
+		for (int run = 0; run < 400; ++run) {
+			int rows = 1 + rand.nextInt(6);
+			int cols = 1 + rand.nextInt(6);
+			double[][] s = new double[rows][cols];
+			for (int r = 0; r < rows; ++r)
+				for (int c = 0; c < cols; ++c)
+					s[r][c] = Math.round(20 * rand.nextDouble());
+			ScoreInterpretation mode = (run % 2 == 0) ?
+					ScoreInterpretation.MINIMUM_IS_BEST :
+					ScoreInterpretation.MAXIMUM_IS_BEST;
+
+			MatchingBipartite_HungarianAlgorithm matcher = 
+					new MatchingBipartite_HungarianAlgorithm(s, mode);
+			matcher.validateCustom();
+			matcher.calcMatching();
+			int[] a = matcher.getAssignment();
+			byte[][] m = matcher.getMatching();
+
+			assertEquals(IDS + " assignment length", rows, a.length);
+			boolean[] used = new boolean[cols];
+			double sum = 0;
+			int matched = 0;
+			for (int r = 0; r < rows; ++r) {
+				for (int c = 0; c < cols; ++c)
+					assertEquals(IDS + " result matrix differs from assignment", 
+							a[r] == c ? 1 : 0, m[r][c]);
+				if (a[r] == -1)
+					continue;
+				assertFalse(IDS + " column assigned twice", used[a[r]]);
+				used[a[r]] = true;
+				sum += s[r][a[r]];
+				++matched;
+			}
+			assertEquals(IDS + " number of matches", Math.min(rows, cols), 
+					matched);
+			double sign = (mode == ScoreInterpretation.MAXIMUM_IS_BEST) ? -1 : 1;
+			assertEquals(IDS + " optimal score", 
+					bruteForce(s, sign, 0, new boolean[cols], rows - matched), 
+					sign * sum, accuracy);
+		}
+	}
+
+	/**
+	 * Checks a small square example.
+	 */
+	@Test
+	public void testSquareExample() throws ALDOperatorException {
+		double[][] s = new double[][]{
+				{4, 1, 3},
+				{2, 0, 5},
+				{3, 2, 2}};
+		MatchingBipartite_HungarianAlgorithm matcher = 
+				new MatchingBipartite_HungarianAlgorithm(s, 
+						ScoreInterpretation.MINIMUM_IS_BEST);
+		matcher.calcMatching();
+		assertArrayEquals(IDS + " wrong assignment", new int[]{1, 0, 2}, 
+				matcher.getAssignment());
+
+		matcher = new MatchingBipartite_HungarianAlgorithm(s, 
+				ScoreInterpretation.MAXIMUM_IS_BEST);
+		matcher.calcMatching();
+		assertArrayEquals(IDS + " wrong assignment", new int[]{0, 2, 1}, 
+				matcher.getAssignment());
+	}
+
+	/**
+	 * Optimal signed score of matching rows from the given one on 
+	 * exhaustively, rows may be skipped while skips are left.
+	 * @param s			Score matrix.
+	 * @param sign	Factor applied to scores.
+	 * @param row		First row to match.
+	 * @param used	Columns already matched.
+	 * @param skips	Number of rows that remain unmatched.
+	 * @return	Minimal signed score.
+	 */
+	private static double bruteForce(double[][] s, double sign, int row, 
+			boolean[] used, int skips) {
+		if (row == s.length)
+			return 0;
+		double best = Double.POSITIVE_INFINITY;
+		if (skips > 0)
+			best = bruteForce(s, sign, row + 1, used, skips - 1);
+		for (int c = 0; c < used.length; ++c) {
+			if (used[c])
+				continue;
+			used[c] = true;
+			best = Math.min(best, 
+					sign * s[row][c] + bruteForce(s, sign, row + 1, used, skips));
+			used[c] = false;
+		}
+		return best;
+	}
+}
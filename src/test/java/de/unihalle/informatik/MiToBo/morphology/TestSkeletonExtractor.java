@@ -0,0 +1,121 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.morphology;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihalle.informatik.Alida.exceptions.ALDException;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImageByte;
+import de.unihalle.informatik.MiToBo.morphology.SkeletonExtractor.SkeletonMode;
+
+/**
+ * JUnit test class for {@link SkeletonExtractor}.
+ * 
+ * @author agent
+ */
+public class TestSkeletonExtractor {
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		// nothing to do here
+	}
+	
+	/**
+	 * Test native Zhang-Suen thinning.
+	 */
+	@Test
+	public void testZhangSuen() {
+		
+		// horizontal bar of width 3
+		MTBImageByte img = (MTBImageByte)MTBImage.createMTBImage(
+			20, 20, 1, 1, 1, MTBImageType.MTB_BYTE);
+		img.fillBlack();
+		for (int y=5;y<8;++y)
+			for (int x=5;x<15;++x)
+				img.putValueInt(x, y, 255);
+		
+		MTBImageByte skel = this.skeletonize(img, false);
+		for (int y=0;y<20;++y) {
+			for (int x=0;x<20;++x) {
+				boolean expected = (y == 6 && x >= 6 && x <= 12);
+				assertEquals("Wrong skeleton pixel at (" + x + "," + y + ")", 
+					expected ? 255 : 0, skel.getValueInt(x, y));
+			}
+		}
+		
+		// larger image with several rectangles to get multiple row bands, 
+		// parallel and sequential processing have to yield the same result
+		img = (MTBImageByte)MTBImage.createMTBImage(
+			300, 400, 1, 1, 1, MTBImageType.MTB_BYTE);
+		img.fillBlack();
+		for (int y=0;y<400;++y)
+			for (int x=0;x<300;++x)
+				if (((x/40 + y/30) % 3) != 0)
+					img.putValueInt(x, y, 255);
+		MTBImageByte skelSeq = this.skeletonize(img, false);
+		MTBImageByte skelPar = this.skeletonize(img, true);
+		int count = 0;
+		for (int y=0;y<400;++y) {
+			for (int x=0;x<300;++x) {
+				assertEquals("Parallel result differs at (" + x + "," + y + ")", 
+					skelSeq.getValueInt(x, y), skelPar.getValueInt(x, y));
+				if (skelSeq.getValueInt(x, y) > 0) {
+					++count;
+					assertTrue("Skeleton pixel outside foreground...", 
+						img.getValueInt(x, y) > 0);
+				}
+			}
+		}
+		assertTrue("Skeleton should not be empty...", count > 0);
+	}
+
+	/**
+	 * Run native skeletonization.
+	 * @param img					Binary image.
+	 * @param parallel		Flag for parallel processing.
+	 * @return	Skeleton image.
+	 */
+	private MTBImageByte skeletonize(MTBImageByte img, boolean parallel) {
+		try {
+			SkeletonExtractor op = new SkeletonExtractor();
+			op.setInputImage(img);
+			op.setSkeletonMode(SkeletonMode.ZHANG_SUEN);
+			op.setRunParallel(parallel);
+			op.runOp();
+			return op.getResultImage();
+		} catch (ALDException e) {
+			fail("Skeletonization failed: " + e.getMessage());
+		}
+		return null;
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+
+package de.unihalle.informatik.MiToBo.morphology;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihalle.informatik.Alida.exceptions.ALDException;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImageInt;
+import de.unihalle.informatik.MiToBo.morphology.WatershedMarkerControlled.ResultMode;
+
+/**
+ * JUnit test class for {@link WatershedMarkerControlled}.
+ * 
+ * @author agent
+ */
+public class TestWatershedMarkerControlled {
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		// nothing to do here
+	}
+	
+	/**
+	 * Test flooding of 2D byte image from regional minima.
+	 */
+	@Test
+	public void testRegionalMinima() {
+		// two valleys in columns 10 and 30, ridge in column 20
+		MTBImage img = MTBImage.createMTBImage(
+			41, 12, 1, 1, 1, MTBImageType.MTB_BYTE);
+		for (int y=0;y<12;++y)
+			for (int x=0;x<41;++x)
+				img.putValueInt(x, y, Math.min(Math.abs(x-10), Math.abs(x-30)));
+		
+		for (int tileSize: new int[]{0, 8}) {
+			MTBImageInt lines = 
+				this.flood(img, null, ResultMode.WATERSHED_LINES, tileSize);
+			this.checkRidge(lines, true);
+			MTBImageInt basins = 
+				this.flood(img, null, ResultMode.LABELED_BASINS, tileSize);
+			this.checkRidge(basins, false);
+		}
+	}
+
+	/**
+	 * Test flooding of 3D float image from given markers.
+	 */
+	@Test
+	public void testMarkers3D() {
+		MTBImage img = MTBImage.createMTBImage(
+			41, 12, 4, 1, 1, MTBImageType.MTB_FLOAT);
+		MTBImage markers = MTBImage.createMTBImage(
+			41, 12, 4, 1, 1, MTBImageType.MTB_BYTE);
+		for (int z=0;z<4;++z)
+			for (int y=0;y<12;++y)
+				for (int x=0;x<41;++x)
+					img.putValueDouble(x, y, z, 
+						0.5 * Math.min(Math.abs(x-10), Math.abs(x-30)));
+		markers.putValueInt(10, 0, 0, 255);
+		markers.putValueInt(30, 11, 3, 255);
+		
+		for (int tileSize: new int[]{0, 5}) {
+			MTBImageInt lines = 
+				this.flood(img, markers, ResultMode.WATERSHED_LINES, tileSize);
+			this.checkRidge(lines, true);
+			MTBImageInt basins = 
+				this.flood(img, markers, ResultMode.LABELED_BASINS, tileSize);
+			this.checkRidge(basins, false);
+		}
+	}
+
+	/**
+	 * Checks that the image is split into two basins along column 20.
+	 * @param result			Label image.
+	 * @param withLines		If true, column 20 is expected to contain lines.
+	 */
+	private void checkRidge(MTBImageInt result, boolean withLines) {
+		int left = result.getValueInt(0, 0, 0);
+		int right = result.getValueInt(40, 0, 0);
+		assertTrue("Left basin should be labeled...", left > 0);
+		assertTrue("Right basin should be labeled...", right > 0);
+		assertTrue("Basins should have different labels...", left != right);
+		for (int z=0;z<result.getSizeZ();++z) {
+			for (int y=0;y<result.getSizeY();++y) {
+				for (int x=0;x<result.getSizeX();++x) {
+					int label = result.getValueInt(x, y, z);
+					if (x < 20)
+						assertEquals("Wrong label at (" + x + "," + y + "," + z + ")", 
+							left, label);
+					else if (x > 20)
+						assertEquals("Wrong label at (" + x + "," + y + "," + z + ")", 
+							right, label);
+					else if (withLines)
+						assertEquals("Expected line at (" + x + "," + y + "," + z + ")", 
+							0, label);
+					else
+						assertTrue("Wrong label at (" + x + "," + y + "," + z + ")", 
+							label == left || label == right);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Run the watershed transformation.
+	 * @param img				Image to flood.
+	 * @param markers		Marker image, may be null.
+	 * @param mode			Result mode.
+	 * @param tileSize	Tile size, 0 for sequential flooding.
+	 * @return	Label image.
+	 */
+	private MTBImageInt flood(MTBImage img, MTBImage markers, 
+			ResultMode mode, int tileSize) {
+		try {
+			WatershedMarkerControlled op = 
+				new WatershedMarkerControlled(img, markers);
+			op.setResultMode(mode);
+			op.setTileSize(tileSize);
+			op.runOp();
+			return op.getResultImage();
+		} catch (ALDException e) {
+			fail("Watershed transformation failed: " + e.getMessage());
+		}
+		return null;
+	}
+}
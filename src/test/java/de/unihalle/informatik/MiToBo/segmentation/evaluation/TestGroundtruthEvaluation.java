@@ -277,4 +277,38 @@ public class TestGroundtruthEvaluation {
 			    < 0.000001);
 		}
 	}
+
+	/**
+	 * Test sparse region matching against the expected matching.
+	 * 
+	 * @throws ALDOperatorException				Thrown in case of failure.
+	 * @throws ALDProcessingDAGException	Thrown in case of failure.
+	 */
+	@Test
+	public void testDoEvaluationSparse() 
+		throws ALDOperatorException, ALDProcessingDAGException {
+		
+		// run the operator
+		this.compareOp.setSparseMatching(true);
+		this.compareOp.runOp(true);
+
+		// check sparse matching
+		for (int r=0;r<24;++r) {
+			for (int c=0;c<24;++c) {
+				assertTrue(   (this.matchingMatrix[r][c] == 1)
+                   == (this.compareOp.matchedSegEntries[r] == c));
+			}
+		}	
+
+		// check the returned data object 
+		MTBTableModel resultTable = this.compareOp.getResultTable();
+		for (int i=1;i<24;++i) {
+			assertTrue(this.groundtruthFN[i-1]
+			     == ((Double)resultTable.getValueAt(i-1, 13)).intValue());
+			assertTrue(this.groundtruthFP[i-1]
+			     == ((Double)resultTable.getValueAt(i-1, 12)).intValue());
+			assertTrue(this.groundtruthTP[i-1]
+			     == ((Double)resultTable.getValueAt(i-1, 11)).intValue());
+		}
+	}
 }
@@ -0,0 +1,95 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.segmentation.evaluation.measures;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for {@link ContourDistanceMap} and {@link ContourKDTree}.
+ * 
+ * @author agent
+ */
+public class TestContourDistanceMap {
+
+	/**
+	 * Random contour points.
+	 */
+	protected ArrayList<Point> contour;
+	
+	/**
+	 * Random query points, partly outside of the contour's bounding box.
+	 */
+	protected ArrayList<Point> queries;
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		Random rand = new Random(42);
+		this.contour = new ArrayList<Point>();
+		for (int i=0; i<50; ++i)
+			this.contour.add(new Point(10 + rand.nextInt(30), 5 + rand.nextInt(20)));
+		this.queries = new ArrayList<Point>();
+		for (int i=0; i<200; ++i)
+			this.queries.add(new Point(rand.nextInt(60), rand.nextInt(40)));
+	}
+
+	/**
+	 * Test if distances are identical to exhaustive search.
+	 */
+	@Test
+	public void testNearestDistances() {
+		ContourDistanceMap distMap = 
+			new ContourDistanceMap(this.contour, this.queries);
+		ContourKDTree tree = new ContourKDTree(this.contour);
+		// query outside of window
+		ContourDistanceMap smallMap = 
+			new ContourDistanceMap(this.contour, new ArrayList<Point>());
+		for (Point q: this.queries) {
+			double min = Double.MAX_VALUE;
+			for (Point p: this.contour)
+				min = Math.min(min, 
+					(p.x - q.x)*(p.x - q.x) + (p.y - q.y)*(p.y - q.y));
+			assertEquals("Distance map, point " + q, 
+				min, distMap.getSquaredDistance(q.x, q.y), 0.0);
+			assertEquals("Small distance map, point " + q, 
+				min, smallMap.getSquaredDistance(q.x, q.y), 0.0);
+			assertEquals("Kd-tree, point " + q, 
+				min, tree.getNearestSquaredDistance(q.x, q.y), 0.0);
+		}
+		// empty contour
+		ContourKDTree emptyTree = new ContourKDTree(new ArrayList<Point>());
+		assertEquals(Double.MAX_VALUE, 
+			emptyTree.getNearestSquaredDistance(0, 0), 0.0);
+	}
+}
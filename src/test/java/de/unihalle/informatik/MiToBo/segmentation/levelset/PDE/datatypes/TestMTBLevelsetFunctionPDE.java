@@ -225,6 +225,47 @@ public class TestMTBLevelsetFunctionPDE {
 		assertFalse(IDS + " could not init circle test...", thrown);
 	}
 	
+	/**
+	 * Tests that redistancing with a reused narrow band yields the same
+	 * result as a redistancing from scratch.
+	 */
+	@Test
+	public void testNarrowBandReuse() {
+		int w = 120, h = 100;
+		MTBLevelsetFunctionPDE incremental = 
+			new MTBLevelsetFunctionPDE(w, h, 1, 2);
+		for (int y = 0; y < h; ++y)
+			for (int x = 0; x < w; ++x)
+				incremental.set(x, y, 0, 30 - Math.hypot(x - w/2.0, y - h/2.0));
+		incremental.signDistance(4);
+		for (int iteration = 0; iteration < 20; ++iteration) {
+			// move the zero level outwards in the right half of the domain
+			for (int n = 0; n < incremental.getNarrowBandSize(); ++n) {
+				int index = incremental.getNarrowBandIndex(n);
+				int x = index % w, y = index / w;
+				incremental.set(x, y, 0, incremental.get(x, y, 0) - 0.5 * x / w);
+			}
+			MTBLevelsetFunctionPDE scratch = 
+				new MTBLevelsetFunctionPDE(w, h, 1, 2);
+			for (int y = 0; y < h; ++y)
+				for (int x = 0; x < w; ++x)
+					scratch.set(x, y, 0, incremental.get(x, y, 0));
+			incremental.signDistance(4);
+			scratch.signDistance(4);
+			assertTrue(IDS + " band sizes differ in iteration " + iteration,
+				incremental.getNarrowBandSize() == scratch.getNarrowBandSize());
+			for (int y = 0; y < h; ++y) {
+				for (int x = 0; x < w; ++x) {
+					assertTrue(IDS + " values differ at (" + x + "," + y + ")",
+						incremental.get(x, y, 0) == scratch.get(x, y, 0));
+					assertTrue(IDS + " predecessors differ at (" + x + "," + y + ")",
+						incremental.getPredecessorIndexOnContour(x, y, 0) 
+						== scratch.getPredecessorIndexOnContour(x, y, 0));
+				}
+			}
+		}
+	}
+
 	/**
 	 * Initializes test image with circle from file system.
 	 */
@@ -0,0 +1,296 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.segmentation.levelset.nonPDE;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihalle.informatik.Alida.exceptions.ALDException;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImageShort;
+
+/**
+ * JUnit test class for {@link LevelsetSolveNonPDE}.
+ * 
+ * @author agent
+ */
+public class TestLevelsetSolveNonPDE {
+
+	/**
+	 * Numerical accuracy for energy comparisons.
+	 */
+	private static final double accuracy = 1.0e-6;
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		// nothing to do here
+	}
+	
+	/**
+	 * Test segmentation of a ball in a 3D stack with and without
+	 * checkerboard sweeps, preserving topology.
+	 */
+	@Test
+	public void testBall3D() {
+		int sizeX = 16, sizeY = 16, sizeZ = 12;
+		MTBImage img = MTBImage.createMTBImage(
+			sizeX, sizeY, sizeZ, 1, 1, MTBImageType.MTB_BYTE);
+		for (int z=0;z<sizeZ;++z)
+			for (int y=0;y<sizeY;++y)
+				for (int x=0;x<sizeX;++x)
+					img.putValueInt(x, y, z, 0, 0, isInBall(x, y, z) ? 200 : 50);
+
+		for (boolean checkerboard: new boolean[]{false, true}) {
+			MTBImageShort result = this.segment(img, checkerboard, 0);
+			for (int z=0;z<sizeZ;++z)
+				for (int y=0;y<sizeY;++y)
+					for (int x=0;x<sizeX;++x)
+						assertEquals("Wrong phase at (" + x + "," + y + "," + z + ")",
+							isInBall(x, y, z) ? 1 : 0, result.getValueInt(x, y, z));
+		}
+	}
+
+	/**
+	 * Test active set scheduling against full sweeps in 2D.
+	 * <p>
+	 * Without topology preservation the objects of a noise-free two-level
+	 * image are segmented exactly with and without active set, i.e. both 
+	 * results have to be identical. With topology preservation the local 
+	 * optimum depends on the order of updates, hence, only the topology
+	 * of the result is checked.
+	 */
+	@Test
+	public void testActiveSetScheduling2D() {
+		int sizeX = 40, sizeY = 30;
+		MTBImage img = MTBImage.createMTBImage(
+			sizeX, sizeY, 1, 1, 1, MTBImageType.MTB_BYTE);
+		for (int y=0;y<sizeY;++y)
+			for (int x=0;x<sizeX;++x)
+				img.putValueInt(x, y, isInObject2D(x, y) ? 180 : 40);
+
+		MTBImageShort full = this.segment(img, false, false, false, 0);
+		MTBImageShort active = this.segment(img, false, false, true, 0);
+		for (int y=0;y<sizeY;++y) {
+			for (int x=0;x<sizeX;++x) {
+				assertEquals("Wrong phase at (" + x + "," + y + ")",
+					isInObject2D(x, y) ? 1 : 0, full.getValueInt(x, y));
+				assertEquals("Results differ at (" + x + "," + y + ")",
+					full.getValueInt(x, y), active.getValueInt(x, y));
+			}
+		}
+		
+		MTBImageShort result = this.segment(img, true, false, true, 0);
+		assertEquals("Foreground split into several components", 
+			1, countComponents(result, true));
+		assertEquals("Background split into several components", 
+			1, countComponents(result, false));
+	}
+
+	/**
+	 * Test checkerboard sweeps in 2D with different numbers of threads.
+	 * <p>
+	 * With topology preservation the local optimum depends on the order of
+	 * updates, hence, the result is not compared to sequential sweeps. 
+	 * Instead the energy must not increase, the result must not depend on 
+	 * the number of threads and the single initial component must not 
+	 * split or get holes.
+	 */
+	@Test
+	public void testCheckerboard2D() {
+		int sizeX = 40, sizeY = 30;
+		MTBImage img = MTBImage.createMTBImage(
+			sizeX, sizeY, 1, 1, 1, MTBImageType.MTB_BYTE);
+		for (int y=0;y<sizeY;++y)
+			for (int x=0;x<sizeX;++x)
+				img.putValueInt(x, y, isInObject2D(x, y) ? 180 : 40);
+
+		MTBImageShort single = this.segment(img, true, 1);
+		MTBImageShort multi = this.segment(img, true, 4);
+		for (int y=0;y<sizeY;++y)
+			for (int x=0;x<sizeX;++x)
+				assertEquals("Results differ at (" + x + "," + y + ")",
+					single.getValueInt(x, y), multi.getValueInt(x, y));
+
+		// foreground is 4-connected, background 8-connected
+		assertEquals("Foreground split into several components", 
+			1, countComponents(single, true));
+		assertEquals("Background split into several components", 
+			1, countComponents(single, false));
+		
+		// the foreground has to cover the bright objects partially at least
+		assertTrue("Rectangle not segmented", single.getValueInt(11, 14) > 0);
+		assertTrue("Disk not segmented", single.getValueInt(29, 15) > 0);
+		assertEquals("Background not segmented", 0, single.getValueInt(0, 0));
+	}
+
+	/**
+	 * Segment image with Chan-Vese energy starting from a box, 
+	 * preserving topology.
+	 * @param img			Image to segment.
+	 * @param checkerboard	Use checkerboard sweeps?
+	 * @param threads		Number of threads to run the solver with, 
+	 * 										if zero the solver runs in the calling thread.
+	 * @return	Label image.
+	 */
+	private MTBImageShort segment(MTBImage img, boolean checkerboard, 
+			int threads) {
+		return this.segment(img, true, checkerboard, false, threads);
+	}
+
+	/**
+	 * Segment image with Chan-Vese energy starting from a box.
+	 * <p>
+	 * The energy of the final level set function must not exceed the 
+	 * energy of the initialization.
+	 * 
+	 * @param img			Image to segment.
+	 * @param preserveTopology	Preserve topology?
+	 * @param checkerboard	Use checkerboard sweeps?
+	 * @param activeSet		Use active set scheduling?
+	 * @param threads		Number of threads to run the solver with, 
+	 * 										if zero the solver runs in the calling thread.
+	 * @return	Label image.
+	 */
+	private MTBImageShort segment(MTBImage img, boolean preserveTopology, 
+			boolean checkerboard, boolean activeSet, int threads) {
+		int sizeX = img.getSizeX(), sizeY = img.getSizeY(), sizeZ = img.getSizeZ();
+		MTBImage init = MTBImage.createMTBImage(
+			sizeX, sizeY, sizeZ, 1, 1, MTBImageType.MTB_BYTE);
+		for (int z=(sizeZ > 1 ? 1 : 0);z<(sizeZ > 1 ? sizeZ-1 : 1);++z)
+			for (int y=1;y<sizeY-1;++y)
+				for (int x=1;x<sizeX-1;++x)
+					init.putValueInt(x, y, z, 0, 0, 1);
+		MTBLevelsetMembership phi = new MTBLevelsetMembership(init, null);
+		MTBGenericEnergyNonPDE energy = 
+			new MTBChanVeseEnergyNonPDE(img, phi, 1.0, 1.0, 0.0, 0.0).init(img, phi);
+		double initialEnergy = energy.E(phi);
+		try {
+			LevelsetSolveNonPDE solver = 
+				new LevelsetSolveNonPDE(energy, phi, 200, 0, null, preserveTopology);
+			solver.setCheckerboardSweeps(Boolean.valueOf(checkerboard));
+			solver.setActiveSetScheduling(Boolean.valueOf(activeSet));
+			if (threads > 0) {
+				// parallel streams of the solver run in the pool of the caller
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				try {
+					pool.submit(() -> { 
+						solver.runOp(); 
+						return null; 
+					}).get();
+				} finally {
+					pool.shutdown();
+				}
+			}
+			else {
+				solver.runOp();
+			}
+			assertTrue("Solver did not converge", 
+				solver.getNumIterations().intValue() < 200);
+			assertTrue("Energy increased", 
+				energy.E(solver.getPhi()) <= initialEnergy + accuracy);
+			return solver.getResultImage();
+		} catch (ALDException e) {
+			fail("Solver failed: " + e.getMessage());
+		} catch (InterruptedException e) {
+			fail("Solver interrupted: " + e.getMessage());
+		} catch (ExecutionException e) {
+			fail("Solver failed: " + e.getCause());
+		}
+		return null;
+	}
+
+	/**
+	 * Count connected components of foreground or background in 2D.
+	 * @param img					Label image, background is zero.
+	 * @param foreground	If true, count 4-connected foreground components,
+	 * 										otherwise 8-connected background components.
+	 * @return	Number of components.
+	 */
+	private static int countComponents(MTBImageShort img, boolean foreground) {
+		int sizeX = img.getSizeX(), sizeY = img.getSizeY();
+		boolean[] visited = new boolean[sizeX * sizeY];
+		int[] stack = new int[sizeX * sizeY];
+		int components = 0;
+		for (int start = 0; start < sizeX * sizeY; ++start) {
+			if (visited[start] 
+					|| (img.getValueInt(start % sizeX, start / sizeX) > 0) != foreground)
+				continue;
+			++components;
+			int top = 0;
+			stack[top++] = start;
+			visited[start] = true;
+			while (top > 0) {
+				int p = stack[--top];
+				int px = p % sizeX, py = p / sizeX;
+				for (int dy=-1;dy<=1;++dy) {
+					for (int dx=-1;dx<=1;++dx) {
+						if ((dx == 0 && dy == 0) || (foreground && dx != 0 && dy != 0))
+							continue;
+						int nx = px + dx, ny = py + dy;
+						if (nx < 0 || nx >= sizeX || ny < 0 || ny >= sizeY)
+							continue;
+						int n = ny * sizeX + nx;
+						if (!visited[n] && (img.getValueInt(nx, ny) > 0) == foreground) {
+							visited[n] = true;
+							stack[top++] = n;
+						}
+					}
+				}
+			}
+		}
+		return components;
+	}
+
+	/**
+	 * Check if pixel belongs to the rectangle or the disk of the 2D tests.
+	 * @param x	x-coordinate.
+	 * @param y	y-coordinate.
+	 * @return	True if inside.
+	 */
+	private static boolean isInObject2D(int x, int y) {
+		return (x >= 5 && x < 18 && y >= 6 && y < 22) 
+			|| (x-29)*(x-29) + (y-15)*(y-15) < 36;
+	}
+
+	/**
+	 * Check if voxel belongs to the ball.
+	 * @param x	x-coordinate.
+	 * @param y	y-coordinate.
+	 * @param z	z-coordinate.
+	 * @return	True if inside.
+	 */
+	private static boolean isInBall(int x, int y, int z) {
+		return (x-7.5)*(x-7.5) + (y-8)*(y-8) + (z-5.5)*(z-5.5) < 20;
+	}
+}
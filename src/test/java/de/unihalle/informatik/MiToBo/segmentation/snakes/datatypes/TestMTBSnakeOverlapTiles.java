@@ -0,0 +1,120 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+
+package de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2D;
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2D.PixelSpans;
+
+/**
+ * JUnit test class for {@link MTBSnakeOverlapTiles}.
+ * 
+ * @author agent
+ */
+public class TestMTBSnakeOverlapTiles {
+
+	private static final String IDS = "[MTBSnakeOverlapTiles]";
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		// nothing to do here...
+	}
+
+	/**
+	 * Test overlap counts and mask of overlapping rectangles.
+	 */
+	@Test
+	public void testOverlapCounts() {
+		int width = 30, height = 20;
+		PixelSpans[] spans = new PixelSpans[4];
+		spans[0] = rectangle(2, 3, 12, 10, width, height);
+		spans[1] = rectangle(8, 6, 20, 15, width, height);
+		// third snake does not contribute
+		spans[2] = null;
+		// fourth snake is partially outside of the image
+		spans[3] = rectangle(25, 15, 40, 30, width, height);
+		MTBSnakeOverlapTiles tiles = 
+				new MTBSnakeOverlapTiles(width, height, spans);
+
+		assertEquals(IDS + " wrong number of tiles", 4, tiles.getTileNum());
+		assertNull(IDS + " empty tile expected", tiles.getTile(2));
+		assertNull(IDS + " empty tile has no bounding box", 
+				tiles.getBoundingBox(2));
+		int[] box = tiles.getBoundingBox(1);
+		assertArrayEquals(IDS + " wrong bounding box", 
+				new int[]{8, 6, 19, 14}, box);
+		box = tiles.getBoundingBox(3);
+		assertArrayEquals(IDS + " bounding box should be clipped", 
+				new int[]{25, 15, 29, 19}, box);
+
+		// compare counts with full-frame mask and brute force
+		int[][] mask = tiles.getOverlapMask();
+		assertEquals(IDS + " wrong mask height", height, mask.length);
+		assertEquals(IDS + " wrong mask width", width, mask[0].length);
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				int expected = 0;
+				for (PixelSpans s : spans)
+					if (s != null && s.contains(x, y))
+						++expected;
+				assertEquals(IDS + " wrong count at " + x + "/" + y, 
+						expected, tiles.getOverlapCount(x, y));
+				assertEquals(IDS + " wrong mask value at " + x + "/" + y, 
+						expected, mask[y][x]);
+			}
+		}
+		assertEquals(IDS + " pixel should be covered twice", 
+				2, tiles.getOverlapCount(10, 8));
+		assertEquals(IDS + " pixels outside have count zero", 
+				0, tiles.getOverlapCount(-1, 8));
+		assertSame(IDS + " mask should be cached", 
+				mask, tiles.getOverlapMask());
+	}
+
+	/**
+	 * Rasterizes an axis-aligned rectangle.
+	 * @param x0	Minimal x-coordinate of vertices.
+	 * @param y0	Minimal y-coordinate of vertices.
+	 * @param x1	Maximal x-coordinate of vertices.
+	 * @param y1	Maximal y-coordinate of vertices.
+	 * @param w		Image width.
+	 * @param h		Image height.
+	 * @return	Pixel spans clipped to the image.
+	 */
+	private static PixelSpans rectangle(int x0, int y0, int x1, int y1, 
+			int w, int h) {
+		int[] xps = new int[]{x0, x1, x1, x0};
+		int[] yps = new int[]{y0, y0, y1, y1};
+		return MTBPolygon2D.rasterize(xps, yps, 4, 0, 0, w - 1, h - 1, false);
+	}
+}
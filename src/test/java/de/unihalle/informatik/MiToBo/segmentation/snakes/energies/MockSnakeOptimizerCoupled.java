@@ -0,0 +1,81 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.segmentation.snakes.energies;
+
+import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2D.PixelSpans;
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2DSet;
+import de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes.MTBSnake;
+import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.SnakeOptimizerCoupled;
+
+/**
+ * <pre>
+ * Mock object for testing energies in joint optimization of snakes.
+ * </pre>
+ * Note: this class does not have any reasonable functionality, it only 
+ * provides a fixed set of snakes and the pixel spans covered by them.
+ * <p> 
+ * Never use it outside of the JUnit testing framework in MiToBo!
+ * 
+ * @author agent
+ */
+public class MockSnakeOptimizerCoupled extends SnakeOptimizerCoupled {
+
+	/**
+	 * Fixed set of snakes.
+	 */
+	private MTBPolygon2DSet snakes;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param snakeSet	Set of snakes.
+	 * @param w					Width of the image.
+	 * @param h					Height of the image.
+	 * @throws ALDOperatorException
+	 */
+	public MockSnakeOptimizerCoupled(MTBPolygon2DSet snakeSet, int w, int h) 
+			throws ALDOperatorException {
+		this.snakes = snakeSet;
+		this.snakeNum = snakeSet.size();
+		this.iWidth = w;
+		this.iHeight = h;
+		this.overlapMask = new int[h][w];
+		this.overlapSpans = new PixelSpans[this.snakeNum];
+		for (int n=0; n<this.snakeNum; ++n) {
+			this.overlapSpans[n] = 
+				((MTBSnake)snakeSet.elementAt(n)).getScaledPixelSpans(w, h);
+			for (int y=0; y<h; ++y)
+				for (int x=0; x<w; ++x)
+					if (this.overlapSpans[n].contains(x, y))
+						this.overlapMask[y][x]++;
+		}
+	}
+
+	@Override
+  public MTBPolygon2DSet getCurrentSnakes() {
+		return this.snakes;
+	}
+}
@@ -27,6 +27,7 @@ package de.unihalle.informatik.MiToBo.segmentation.snakes.energies;
 import static org.junit.Assert.*;
 
 import java.awt.geom.Point2D;
+import java.util.Random;
 import java.util.Vector;
 
 import org.junit.Before;
@@ -37,6 +38,7 @@ import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2DSet;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImageByte;
+import de.unihalle.informatik.MiToBo.math.linearalgebra.MTBCyclicBandMatrix;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes.MTBSet_SnakeEnergyDerivable;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes.MTBSnake;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes.MTBSnakePoint2D;
@@ -206,10 +208,257 @@ public class TestMTBSnakeEnergyCD_CVRegionFit {
    			+ "should be " + targetValNeg + "...", 
    				Math.abs(A.get(31, 0) - targetValNeg) < accuracy); 
 
+  		/*
+  		 * banded blocks have to agree with the dense matrix
+  		 */
+  		int bw = energy.getDerivative_MatrixPartBlockBandwidth();
+  		MTBCyclicBandMatrix[][] blocks = new MTBCyclicBandMatrix[2][2];
+  		for (int r = 0; r < 2; ++r)
+  			for (int c = 0; c < 2; ++c)
+  				blocks[r][c] = new MTBCyclicBandMatrix(16, bw);
+  		energy.addDerivative_MatrixPart(opt, blocks, 1.0);
+  		for (int r = 0; r < 2; ++r)
+  			for (int c = 0; c < 2; ++c)
+  				for (int i = 0; i < 16; ++i)
+  					for (int j = 0; j < 16; ++j)
+  						assertEquals(IDS + " block entry (" + (r*16+i) + "," + (c*16+j) 
+  							+ ") differs from dense matrix...", 
+  								A.get(r*16+i, c*16+j), blocks[r][c].get(i, j), accuracy);
+
     } catch (Exception e) {
     	exceptionThrown = true;
     }
     assertFalse(IDS + " got an exception during testing the energy!!!",
     	exceptionThrown);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Compare region statistics and energy with a dense computation over all 
+	 * pixels, for a single snake with excluded pixels.
+	 */
+	@Test
+	public void testSingleSnakeAgainstDenseComputation() {
+		int w = 40, h = 30;
+		MTBImageByte img = randomImage(w, h);
+		boolean[][] exclude = new boolean[h][w];
+		for (int y=0; y<h; ++y)
+			for (int x=0; x<w; ++x)
+				exclude[y][x] = ((x * 7 + y * 3) % 11 == 0);
+		MTBSnake snake = polygonSnake(new double[]{5, 22, 28, 20, 8}, 
+			new double[]{4, 3, 15, 25, 20});
+		
+		try {
+			MTBSnakeEnergyCD_CVRegionFit energy = new MTBSnakeEnergyCD_CVRegionFit(
+				img, new double[]{0.25}, new double[]{0.75});
+			MockSnakeOptimizerSingleVarCalc opt = initSingleOptimizer(energy, snake);
+			opt.setExcludeMask(exclude);
+			energy.updateStatus(opt);
+			
+			// dense reference: excluded pixels are ignored
+			MTBSnake cur = opt.getCurrentSnake();
+			int[][] inside = cur.getBinaryMask(w, h);
+			double[] means = denseMeans(img, inside, exclude, null);
+			double expected = 0;
+			for (int y=0; y<h; ++y) {
+				for (int x=0; x<w; ++x) {
+					if (exclude[y][x])
+						continue;
+					int label = inside[y][x] > 0 ? 1 : 0;
+					double d = img.getValueInt(x, y) - means[label];
+					expected += (label == 1 ? 0.25 : 0.75) * d * d;
+				}
+			}
+			assertEquals(IDS + " wrong energy", expected, energy.calcEnergy(opt),
+				accuracy * Math.abs(expected));
+			checkDerivatives(energy.getDerivative_MatrixPart(opt), cur, img, means);
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(IDS + " got an exception: " + e);
+		}
+	}
+
+	/**
+	 * Compare region statistics and energy with a dense computation over all 
+	 * pixels in joint optimization of overlapping snakes.
+	 */
+	@Test
+	public void testCoupledSnakesAgainstDenseComputation() {
+		int w = 40, h = 30;
+		MTBImageByte img = randomImage(w, h);
+		MTBSnake first = polygonSnake(new double[]{3, 20, 24, 12, 4}, 
+			new double[]{3, 2, 14, 20, 16});
+		
+		try {
+			MTBSnakeEnergyCD_CVRegionFit energy = new MTBSnakeEnergyCD_CVRegionFit(
+				img, new double[]{0.25}, new double[]{0.75});
+			MockSnakeOptimizerSingleVarCalc opt = initSingleOptimizer(energy, first);
+			MTBSnake cur = opt.getCurrentSnake();
+			
+			// second snake overlaps the first one, third one is disjoint
+			MTBPolygon2DSet snakes = new MTBPolygon2DSet();
+			snakes.add(cur);
+			snakes.add(polygonSnake(new double[]{15, 33, 36, 18}, 
+				new double[]{10, 8, 26, 24}));
+			snakes.add(polygonSnake(new double[]{2, 10, 9, 3}, 
+				new double[]{22, 22, 28, 27}));
+			MockSnakeOptimizerCoupled copt = 
+				new MockSnakeOptimizerCoupled(snakes, w, h);
+			energy.initEnergy(copt);
+			energy.updateStatus(copt);
+			energy.updateStatus(opt);
+
+			// dense reference: pixels covered by other snakes are invisible
+			int[][] overlap = new int[h][w];
+			for (int n=0; n<snakes.size(); ++n) {
+				int[][] mask = ((MTBSnake)snakes.elementAt(n)).getBinaryMask(w, h);
+				for (int y=0; y<h; ++y)
+					for (int x=0; x<w; ++x)
+						overlap[y][x] += mask[y][x];
+			}
+			int[][] inside = cur.getBinaryMask(w, h);
+			double[] means = denseMeans(img, inside, null, overlap);
+			checkDerivatives(energy.getDerivative_MatrixPart(opt), cur, img, means);
+
+			// interiors of all snakes and the background not covered by any
+			double expected = 0;
+			for (int n=0; n<snakes.size(); ++n) {
+				int[][] mask = ((MTBSnake)snakes.elementAt(n)).getBinaryMask(w, h);
+				for (int y=0; y<h; ++y) {
+					for (int x=0; x<w; ++x) {
+						if (mask[y][x] == 0)
+							continue;
+						double d = img.getValueInt(x, y) - means[1];
+						expected += 0.25 * d * d;
+					}
+				}
+			}
+			for (int y=0; y<h; ++y) {
+				for (int x=0; x<w; ++x) {
+					if (overlap[y][x] != 0)
+						continue;
+					double d = img.getValueInt(x, y) - means[0];
+					expected += 0.75 * d * d;
+				}
+			}
+			assertEquals(IDS + " wrong energy", expected, energy.calcEnergy(opt),
+				accuracy * Math.abs(expected));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(IDS + " got an exception: " + e);
+		}
+	}
+
+	/**
+	 * Initializes a mock optimizer for a single snake and the given energy.
+	 * 
+	 * @param energy	Energy to test.
+	 * @param snake		Snake to optimize.
+	 * @return	Initialized optimizer.
+	 * @throws Exception	Thrown if initialization fails.
+	 */
+	private static MockSnakeOptimizerSingleVarCalc initSingleOptimizer(
+			MTBSnakeEnergyCD_CVRegionFit energy, MTBSnake snake) throws Exception {
+		MockSnakeOptimizerSingleVarCalc opt = 
+			new MockSnakeOptimizerSingleVarCalc();
+		MTBPolygon2DSet inSnakes = new MTBPolygon2DSet();
+		inSnakes.add(snake);
+		opt.setInitialSnakes(inSnakes);
+		opt.setNormalizationMode(EnergyNormalizationMode.NORM_NONE);
+		MTBSet_SnakeEnergyDerivable eSet = new MTBSet_SnakeEnergyDerivable();
+		eSet.addEnergy(energy);
+		opt.setEnergySet(eSet);
+		opt.initOptimizer();
+		return opt;
+	}
+
+	/**
+	 * Checks derivative matrix entries against the given region means.
+	 * <p>
+	 * The energy is expected to use weights 0.25 inside and 0.75 outside.
+	 * 
+	 * @param A				Matrix part of the derivative.
+	 * @param snake		Snake the matrix refers to.
+	 * @param img			Image.
+	 * @param means		Mean of the outer and the inner region.
+	 */
+	private static void checkDerivatives(Matrix A, MTBSnake snake, 
+			MTBImageByte img, double[] means) {
+		int n = snake.getPointNum();
+		for (int i = 0; i < n - 1; ++i) {
+			Point2D.Double p = snake.getPoints().get(i);
+			double v = img.getValueInt((int)p.x, (int)p.y);
+			double expected = 0.25 * (v - means[1]) * (v - means[1]) 
+				- 0.75 * (v - means[0]) * (v - means[0]);
+			assertEquals(IDS + " wrong derivative at point " + i, 
+				-expected, A.get(i, n + i), accuracy);
+		}
+	}
+
+	/**
+	 * Computes region means by scanning all pixels.
+	 * <p>
+	 * Inside pixels are visible if not excluded, outside pixels only if 
+	 * they are additionally not covered by any snake.
+	 * 
+	 * @param img				Image.
+	 * @param inside		Mask of the snake interior.
+	 * @param exclude		Excluded pixels, may be null.
+	 * @param overlap		Number of snakes covering each pixel, may be null.
+	 * @return	Mean of outer and inner region.
+	 */
+	private static double[] denseMeans(MTBImageByte img, int[][] inside,
+			boolean[][] exclude, int[][] overlap) {
+		double[] sums = new double[2];
+		int[] counts = new int[2];
+		for (int y=0; y<img.getSizeY(); ++y) {
+			for (int x=0; x<img.getSizeX(); ++x) {
+				if (exclude != null && exclude[y][x])
+					continue;
+				int label = inside[y][x] > 0 ? 1 : 0;
+				if (label == 0 && overlap != null && overlap[y][x] != 0)
+					continue;
+				sums[label] += img.getValueInt(x, y);
+				counts[label]++;
+			}
+		}
+		return new double[]{sums[0] / counts[0], sums[1] / counts[1]};
+	}
+
+	/**
+	 * Creates a random image with a brighter rectangle.
+	 * @param w	Width.
+	 * @param h	Height.
+	 * @return	Test image.
+	 */
+	private static MTBImageByte randomImage(int w, int h) {
+		Random rand = new Random(42);
+		MTBImageByte img = (MTBImageByte)MTBImage.createMTBImage(
+			w, h, 1, 1, 1, MTBImageType.MTB_BYTE);
+		for (int y=0; y<h; ++y)
+			for (int x=0; x<w; ++x)
+				img.putValueInt(x, y, rand.nextInt(100) 
+					+ ((x > 8 && x < 25 && y > 5 && y < 20) ? 120 : 0));
+		return img;
+	}
+
+	/**
+	 * Creates a closed snake from polygon vertices with points on the edges 
+	 * in between, the inside label of the snake is one.
+	 * @param xs	x-coordinates of vertices.
+	 * @param ys	y-coordinates of vertices.
+	 * @return	Snake.
+	 */
+	private static MTBSnake polygonSnake(double[] xs, double[] ys) {
+		Vector<MTBSnakePoint2D> points = new Vector<MTBSnakePoint2D>();
+		for (int i = 0; i < xs.length; ++i) {
+			int j = (i + 1) % xs.length;
+			for (int k = 0; k < 4; ++k)
+				points.add(new MTBSnakePoint2D(xs[i] + k * (xs[j] - xs[i]) / 4,
+					ys[i] + k * (ys[j] - ys[i]) / 4));
+		}
+		MTBSnake snake = new MTBSnake(points, true);
+		if (snake.getInsideLabel() != 1)
+			snake.reversePolypoints();
+		return snake;
+	}
+}
@@ -34,6 +34,7 @@ import org.junit.Test;
 import Jama.Matrix;
 import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
 import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2DSet;
+import de.unihalle.informatik.MiToBo.math.linearalgebra.MTBCyclicBandMatrix;
 import de.unihalle.informatik.MiToBo.segmentation.activecontours.exceptions.MTBSnakeException;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes.MTBSet_SnakeEnergyDerivable;
 import de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes.MTBSnake;
@@ -162,6 +163,20 @@ public class TestMTBSnakeEnergyCD_KassLength {
    		assertTrue(IDS + " entry ( 15, 15 ) should be 4.0...", 
    			Math.abs(A.get(15, 15) - 4.0) < accuracy); 
 
+    	/*
+    	 * banded block has to coincide with both diagonal blocks
+    	 */
+    	MTBCyclicBandMatrix block = new MTBCyclicBandMatrix(8, 1);
+    	energy.addDerivative_MatrixPart(opt, block, 1.0);
+    	for (int row = 0; row < 8; ++row) {
+    		for (int col = 0; col < 8; ++col) {
+    			assertTrue(IDS + " band entry (" +row+ "," +col+ ") differs...",
+    				Math.abs(block.get(row, col) - A.get(row, col)) < accuracy);
+    			assertTrue(IDS + " band entry (" +row+ "," +col+ ") differs...",
+    				Math.abs(block.get(row, col) - A.get(row+8, col+8)) < accuracy);
+    		}
+    	}
+
     } catch (ALDOperatorException e) {
     	exceptionThrown = true;
     }
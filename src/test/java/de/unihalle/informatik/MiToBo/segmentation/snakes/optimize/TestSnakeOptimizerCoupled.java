@@ -0,0 +1,190 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.segmentation.snakes.optimize;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Point2D;
+import java.util.Vector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihalle.informatik.Alida.exceptions.ALDException;
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBPolygon2DSet;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
+import de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes.MTBSet_SnakeEnergyDerivable;
+import de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes.MTBSnake;
+import de.unihalle.informatik.MiToBo.segmentation.snakes.datatypes.MTBSnakePoint2D;
+import de.unihalle.informatik.MiToBo.segmentation.snakes.energies.*;
+import de.unihalle.informatik.MiToBo.segmentation.snakes.energies.paramAdapt.*;
+import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.stepsize.MTBGammaNone;
+import de.unihalle.informatik.MiToBo.segmentation.snakes.optimize.termination.MTBTermMaxIterations;
+
+/**
+ * JUnit test class for {@link SnakeOptimizerCoupled}.
+ *
+ * @author agent
+ */
+public class TestSnakeOptimizerCoupled {
+
+	private static final String IDS = "[TestSnakeOptimizerCoupled]";
+
+	/**
+	 * Width of the test image.
+	 */
+	private static final int width = 64;
+
+	/**
+	 * Height of the test image.
+	 */
+	private static final int height = 48;
+
+	/**
+	 * Centers and radii of the bright blobs, also used to place the snakes.
+	 */
+	private static final double[][] blobs = new double[][]{
+		{20, 22, 10}, {34, 20, 9}, {44, 28, 10}};
+
+	private MTBImage testImg;
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		this.testImg = MTBImage.createMTBImage(
+			width, height, 1, 1, 1, MTBImageType.MTB_BYTE);
+		for (int y=0; y<height; ++y) {
+			for (int x=0; x<width; ++x) {
+				int value = 30 + (x*7 + y*13) % 11;
+				for (double[] b: blobs) {
+					double dx = x - b[0], dy = y - b[1];
+					if (dx*dx + dy*dy <= b[2]*b[2])
+						value = 200 + (x*5 + y*3) % 13;
+				}
+				this.testImg.putValueInt(x, y, value);
+			}
+		}
+	}
+
+	/**
+	 * Test if optimizing overlapping snakes concurrently yields exactly
+	 * the same snakes as optimizing them in a single thread.
+	 * <p>
+	 * The energies include adaptive parameters, hence, the test also
+	 * checks that parameter adaptation does not depend on the number of
+	 * threads.
+	 */
+	@Test
+	public void testConcurrentEqualsSequential() {
+		MTBPolygon2DSet sequential = this.optimize(1);
+		MTBPolygon2DSet concurrent = this.optimize(3);
+		assertEquals(IDS + " number of snakes differs...",
+			sequential.size(), concurrent.size());
+		for (int n=0; n<sequential.size(); ++n) {
+			Vector<Point2D.Double> sPoints =
+				sequential.elementAt(n).getPoints();
+			Vector<Point2D.Double> cPoints =
+				concurrent.elementAt(n).getPoints();
+			assertEquals(IDS + " number of points of snake " + n + " differs...",
+				sPoints.size(), cPoints.size());
+			for (int i=0; i<sPoints.size(); ++i) {
+				assertEquals(IDS + " snake " + n + ", point " + i + ", x differs...",
+					sPoints.elementAt(i).x, cPoints.elementAt(i).x, 0.0);
+				assertEquals(IDS + " snake " + n + ", point " + i + ", y differs...",
+					sPoints.elementAt(i).y, cPoints.elementAt(i).y, 0.0);
+			}
+		}
+	}
+
+	/**
+	 * Optimize overlapping snakes with the energies used for nucleus
+	 * separation.
+	 * @param threads	Number of threads.
+	 * @return	Resulting snakes.
+	 */
+	private MTBPolygon2DSet optimize(int threads) {
+		MTBPolygon2DSet poly = new MTBPolygon2DSet(0, 0, width-1, height-1);
+		for (double[] b: blobs)
+			poly.add(circle(b[0], b[1], b[2] + 3));
+
+		Vector<MTBSnakeEnergyDerivable> es =
+			new Vector<MTBSnakeEnergyDerivable>();
+		Vector<Double> ws = new Vector<Double>();
+		es.add(new MTBSnakeEnergyCD_OverlapPenalty(3, poly.size()));
+		ws.add(new Double(2.5 * poly.size()));
+		es.add(new MTBSnakeEnergyCD_KassLength(0.1,
+				new MTBSnakeEnergyCD_KassLength_ParamAdaptFix(0.1, 0.005)));
+		ws.add(new Double(1.0));
+		es.add(new MTBSnakeEnergyCD_KassCurvature(0.3,
+				new MTBSnakeEnergyCD_KassCurvature_ParamAdaptNone()));
+		ws.add(new Double(1.0));
+		es.add(new MTBSnakeEnergyCD_CVRegionFit(this.testImg,
+			new double[]{0.4}, new double[]{0.9}));
+		ws.add(new Double(6.0));
+		boolean[] activity = new boolean[poly.size()];
+		for (int n=0; n<activity.length; ++n)
+			activity[n] = true;
+
+		try {
+			MTBSet_SnakeEnergyDerivable envec =
+				new MTBSet_SnakeEnergyDerivable(es, ws);
+			SnakeOptimizerSingleVarCalc singleOpt =
+				new SnakeOptimizerSingleVarCalc(this.testImg, poly, envec,
+					new MTBGammaNone(), new Double(5.0),
+					new MTBTermMaxIterations(15), new Boolean(true),
+					new Double(2.0));
+			SnakeOptimizerCoupled opt =
+				new SnakeOptimizerCoupled(this.testImg, poly, singleOpt, activity);
+			opt.setThreadNum(threads);
+			opt.runOp(false);
+			return opt.getResultSnakes();
+		} catch (ALDException e) {
+			fail(IDS + " optimization with " + threads + " threads failed: "
+				+ e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Generate a closed snake approximating a circle.
+	 * @param cx	x-coordinate of center.
+	 * @param cy	y-coordinate of center.
+	 * @param r		Radius.
+	 * @return	Closed snake.
+	 */
+	private static MTBSnake circle(double cx, double cy, double r) {
+		Vector<MTBSnakePoint2D> points = new Vector<MTBSnakePoint2D>();
+		int num = 24;
+		for (int i=0; i<num; ++i) {
+			double phi = 2.0 * Math.PI * i / num;
+			points.add(new MTBSnakePoint2D(
+				cx + r * Math.cos(phi), cy + r * Math.sin(phi)));
+		}
+		return new MTBSnake(points, true);
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.segmentation.thresholds;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihalle.informatik.Alida.exceptions.ALDException;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage;
+import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
+
+/**
+ * JUnit test class for {@link CalcGlobalThreshOtsu}.
+ * 
+ * @author agent
+ */
+public class TestCalcGlobalThreshOtsu {
+
+	/**
+	 * Test image with two frames.
+	 */
+	private MTBImage testImage;
+	
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		// frame 0 contains values 10 and 100, frame 1 values 100 and 200
+		this.testImage = MTBImage.createMTBImage(
+			20, 20, 1, 2, 1, MTBImageType.MTB_BYTE);
+		for (int y=0; y<20; ++y) {
+			for (int x=0; x<20; ++x) {
+				this.testImage.putValueInt(x, y, 0, 0, 0, (x < 10) ? 10 : 100);
+				this.testImage.putValueInt(x, y, 0, 1, 0, (x < 10) ? 100 : 200);
+			}
+		}
+	}
+
+	/**
+	 * Test calculation of multiple thresholds.
+	 */
+	@Test
+	public void testMultiLevelThresholds() {
+		boolean success = true;
+		try {
+			CalcGlobalThreshOtsu otsuOp = new CalcGlobalThreshOtsu(this.testImage);
+			otsuOp.setClassNum(3);
+			otsuOp.setThreadNum(2);
+			otsuOp.runOp();
+			double[] thresholds = otsuOp.getOtsuThresholds();
+			assertEquals(2, thresholds.length);
+			assertTrue("Got threshold " + thresholds[0], 
+				thresholds[0] >= 10 && thresholds[0] < 100);
+			assertTrue("Got threshold " + thresholds[1], 
+				thresholds[1] >= 100 && thresholds[1] < 200);
+			assertEquals(thresholds[0], 
+				otsuOp.getOtsuThreshold().getValue().doubleValue(), 0.0);
+		} catch (ALDException e) {
+			success = false;
+		}
+		assertTrue("[TestCalcGlobalThreshOtsu] running operator failed!", 
+			success);
+	}
+
+	/**
+	 * Test calculation of thresholds per frame.
+	 */
+	@Test
+	public void testFrameThresholds() {
+		boolean success = true;
+		try {
+			CalcGlobalThreshOtsu otsuOp = new CalcGlobalThreshOtsu(this.testImage);
+			otsuOp.setPerFrame(true, 1);
+			otsuOp.runOp();
+			double[][] thresholds = otsuOp.getOtsuThresholdsPerFrame();
+			assertEquals(2, thresholds.length);
+			assertTrue("Got threshold " + thresholds[0][0], 
+				thresholds[0][0] >= 10 && thresholds[0][0] < 100);
+			assertTrue("Got threshold " + thresholds[1][0], 
+				thresholds[1][0] >= 100 && thresholds[1][0] < 200);
+			// single threshold refers to the last frame
+			assertEquals(thresholds[1][0], 
+				otsuOp.getOtsuThreshold().getValue().doubleValue(), 0.0);
+		} catch (ALDException e) {
+			success = false;
+		}
+		assertTrue("[TestCalcGlobalThreshOtsu] running operator failed!", 
+			success);
+	}
+}
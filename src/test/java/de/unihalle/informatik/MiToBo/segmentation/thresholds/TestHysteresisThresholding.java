@@ -26,6 +26,8 @@ package de.unihalle.informatik.MiToBo.segmentation.thresholds;
 
 import static org.junit.Assert.*;
 
+import java.util.Random;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -34,6 +36,7 @@ import de.unihalle.informatik.Alida.exceptions.ALDOperatorException;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImageByte;
 import de.unihalle.informatik.MiToBo.core.datatypes.images.MTBImage.MTBImageType;
+import de.unihalle.informatik.MiToBo.segmentation.thresholds.HysteresisThresholding.Neighborhood;
 
 /**
  * JUnit test class for {@link HysteresisThresholding}.
@@ -147,4 +150,130 @@ public class TestHysteresisThresholding {
 		assertTrue("[TestHysteresisThresholding] running operator failed!",success);
 
 	}
+
+	/**
+	 * Test thresholding of 3D stacks with 6- and 26-neighborhood.
+	 */
+	@Test
+	public void testThresholding3D() {
+		
+		// strong seed in slice 0, weak pixels linked diagonally across slices
+		MTBImageByte testImage = (MTBImageByte)MTBImage.createMTBImage(
+			5, 5, 3, 1, 1, MTBImageType.MTB_BYTE);
+		testImage.putValueInt(1, 1, 0, 200);
+		testImage.putValueInt(1, 1, 1, 100);
+		testImage.putValueInt(2, 2, 2, 100);
+		testImage.putValueInt(3, 3, 2, 100);
+		testImage.putValueInt(4, 4, 0, 100);
+		
+		this.testObject.setInputImage(testImage);
+		this.testObject.setLowerThreshold(50);
+		this.testObject.setHigherThreshold(150);
+		boolean success = true;
+		try {
+			this.testObject.setNeighborhood(Neighborhood.NEIGHBORHOOD_4_6);
+	    this.testObject.runOp();
+	    MTBImage result = this.testObject.getResultImage();
+	    assertEquals(3, result.getSizeZ());
+	    assertEquals(255, result.getValueInt(1, 1, 0));
+	    assertEquals(255, result.getValueInt(1, 1, 1));
+	    assertEquals(0, result.getValueInt(2, 2, 2));
+	    assertEquals(0, result.getValueInt(3, 3, 2));
+	    assertEquals(0, result.getValueInt(4, 4, 0));
+
+			this.testObject.setNeighborhood(Neighborhood.NEIGHBORHOOD_8_26);
+	    this.testObject.runOp();
+	    result = this.testObject.getResultImage();
+	    assertEquals(255, result.getValueInt(1, 1, 0));
+	    assertEquals(255, result.getValueInt(1, 1, 1));
+	    assertEquals(255, result.getValueInt(2, 2, 2));
+	    assertEquals(255, result.getValueInt(3, 3, 2));
+	    assertEquals(0, result.getValueInt(4, 4, 0));
+    } catch (ALDException e) {
+    	success = false;
+    }
+		assertTrue("[TestHysteresisThresholding] running operator failed!",success);
+	}
+
+	/**
+	 * Test thresholding with per-pixel threshold images.
+	 */
+	@Test
+	public void testThresholdImages() {
+		
+		// ramp with thresholds increasing along with the intensities
+		MTBImageByte testImage = (MTBImageByte)MTBImage.createMTBImage(
+			6, 1, 1, 1, 1, MTBImageType.MTB_BYTE);
+		MTBImageByte lowImage = (MTBImageByte)MTBImage.createMTBImage(
+			6, 1, 1, 1, 1, MTBImageType.MTB_BYTE);
+		MTBImageByte highImage = (MTBImageByte)MTBImage.createMTBImage(
+			6, 1, 1, 1, 1, MTBImageType.MTB_BYTE);
+		int[] values = new int[]{ 10,  60, 110, 160, 100, 250};
+		int[] lows =   new int[]{  0,  50, 100, 150, 200, 200};
+		int[] highs =  new int[]{ 10, 100, 150, 200, 250, 250};
+		for (int x=0; x<6; ++x) {
+			testImage.putValueInt(x, 0, values[x]);
+			lowImage.putValueInt(x, 0, lows[x]);
+			highImage.putValueInt(x, 0, highs[x]);
+		}
+		int[] expected = new int[]{255, 255, 255, 255, 0, 255};
+
+		this.testObject.setInputImage(testImage);
+		this.testObject.setLowerThresholdImage(lowImage);
+		this.testObject.setHigherThresholdImage(highImage);
+		boolean success = true;
+		try {
+	    this.testObject.runOp();
+	    MTBImage result = this.testObject.getResultImage();
+			for (int x=0; x<6; ++x)
+				assertEquals("x = " + x, expected[x], result.getValueInt(x, 0));
+    } catch (ALDException e) {
+    	success = false;
+    }
+		assertTrue("[TestHysteresisThresholding] running operator failed!",success);
+	}
+
+	/**
+	 * Test if parallel processing of tiles yields the sequential result.
+	 */
+	@Test
+	public void testTiledThresholding() {
+		Random rand = new Random(42);
+		int[][] sizes = new int[][]{{40, 37, 1}, {17, 13, 11}};
+		for (int[] size: sizes) {
+			MTBImageByte testImage = (MTBImageByte)MTBImage.createMTBImage(
+				size[0], size[1], size[2], 1, 1, MTBImageType.MTB_BYTE);
+			for (int z=0; z<size[2]; ++z)
+				for (int y=0; y<size[1]; ++y)
+					for (int x=0; x<size[0]; ++x)
+						testImage.putValueInt(x, y, z, rand.nextInt(256));
+			for (Neighborhood n: Neighborhood.values()) {
+				boolean success = true;
+				try {
+					this.testObject.setInputImage(testImage);
+					this.testObject.setLowerThreshold(120);
+					this.testObject.setHigherThreshold(250);
+					this.testObject.setNeighborhood(n);
+					this.testObject.setThreadNum(1);
+			    this.testObject.runOp();
+			    MTBImage seqResult = this.testObject.getResultImage();
+			    for (int threads: new int[]{2, 3, 8}) {
+			    	this.testObject.setThreadNum(threads);
+			    	this.testObject.runOp();
+			    	MTBImage result = this.testObject.getResultImage();
+						for (int z=0; z<size[2]; ++z)
+							for (int y=0; y<size[1]; ++y)
+								for (int x=0; x<size[0]; ++x)
+									assertEquals(n + ", " + threads + " threads", 
+										seqResult.getValueInt(x, y, z), 
+										result.getValueInt(x, y, z));
+			    }
+		    } catch (ALDException e) {
+		    	success = false;
+		    }
+				assertTrue("[TestHysteresisThresholding] running operator failed!",
+					success);
+			}
+		}
+	}
 }
\ No newline at end of file
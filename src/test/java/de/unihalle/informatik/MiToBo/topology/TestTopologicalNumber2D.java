@@ -101,6 +101,52 @@ public class TestTopologicalNumber2D {
 	}
 
 
+	@Test
+	public void testLookupTable() {
+		MTBTopologicalNumber2D[] topos = new MTBTopologicalNumber2D[] {
+				new MTBTopologicalNumber2DN4(), new MTBTopologicalNumber2DN8() };
+		int[][][] nb = new int[3][3][3];
+		for ( MTBTopologicalNumber2D topo : topos ) {
+			for ( int mask = 0 ; mask < 256 ; mask++ ) {
+				// encode mask in a neighborhood with classes 1 (set) and 2
+				int bit = 0;
+				for ( int y = 0 ; y < 3 ; y++ ) {
+					for ( int x = 0 ; x < 3 ; x++ ) {
+						if ( y == 1 && x == 1 ) {
+							nb[0][y][x] = 0;
+							continue;
+						}
+						nb[0][y][x] = ((mask >> bit) & 1) == 1 ? 1 : 2;
+						++bit;
+					}
+				}
+				assertEquals( "mask mismatch", mask, 
+						MTBTopologicalNumber2D.getNeighborhoodMask( nb, 1));
+				assertEquals( topo.getClass().getSimpleName() + 
+						": lookup differs from labeling for mask " + mask,
+						topo.computeTopoNumberIsOne( nb, 1), 
+						topo.topoNumberIsOne( mask));
+				assertEquals( topo.getClass().getSimpleName() + 
+						": lookup differs from labeling for mask " + mask,
+						topo.computeTopoNumberIsOne( nb, 1), 
+						topo.topoNumberIsOne( nb, 1));
+			}
+		}
+		
+		// some explicit configurations
+		MTBTopologicalNumber2D n4 = new MTBTopologicalNumber2DN4();
+		MTBTopologicalNumber2D n8 = new MTBTopologicalNumber2DN8();
+		// only upper left corner: 8-connected, but not 4-connected
+		assertTrue( n8.topoNumberIsOne( 0x01));
+		assertFalse( n4.topoNumberIsOne( 0x01));
+		// upper and lower neighbor: two components in both cases
+		assertFalse( n8.topoNumberIsOne( 0x42));
+		assertFalse( n4.topoNumberIsOne( 0x42));
+		// upper row: one component in both cases
+		assertTrue( n8.topoNumberIsOne( 0x07));
+		assertTrue( n4.topoNumberIsOne( 0x07));
+	}
+
 	/**
 	 * @param topo
 	 * @param size
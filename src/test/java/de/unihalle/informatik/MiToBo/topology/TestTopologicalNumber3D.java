@@ -0,0 +1,120 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.topology;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for {@link MTBTopologicalNumber3D}.
+ * 
+ * @author agent
+ */
+public class TestTopologicalNumber3D {
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		// nothing to do here
+	}
+
+	/**
+	 * Test neighborhood sizes.
+	 */
+	@Test
+	public void testNeighbors() {
+		MTBTopologicalNumber3D topo = new MTBTopologicalNumber3DN6();
+		assertEquals( 6, topo.getSizeNeighborhood());
+		assertEquals( 4, topo.getCoordinatesNeighborNeighbors(1, 1, 0).size());
+		topo = new MTBTopologicalNumber3DN26();
+		assertEquals( 26, topo.getSizeNeighborhood());
+		assertEquals( 6, topo.getCoordinatesNeighborNeighbors(0, 0, 0).size());
+	}
+
+	/**
+	 * Compare bitmask-based results with explicit component labeling.
+	 */
+	@Test
+	public void testBitmaskTopologicalNumbers() {
+		MTBTopologicalNumber3D[] topos = new MTBTopologicalNumber3D[] {
+				new MTBTopologicalNumber3DN6(), new MTBTopologicalNumber3DN26() };
+		Random rand = new Random(42);
+		int[][][] nb = new int[3][3][3];
+		for ( int t = 0 ; t < 20000 ; t++ ) {
+			for ( int z = 0 ; z < 3 ; z++ ) 
+				for ( int y = 0 ; y < 3 ; y++ ) 
+					for ( int x = 0 ; x < 3 ; x++ ) 
+						nb[z][y][x] = rand.nextInt(3);
+			for ( MTBTopologicalNumber3D topo : topos ) {
+				for ( int c = 0 ; c < 3 ; c++ ) {
+					assertEquals( topo.getClass().getSimpleName() + 
+							": bitmask result differs from labeling",
+						topo.computeTopoNumberIsOne( nb, c), 
+						topo.topoNumberIsOne( 
+								MTBTopologicalNumber3D.getNeighborhoodMask( nb, c)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test simple point check based on Euler invariance.
+	 */
+	@Test
+	public void testSimplePoints() {
+		MTBTopologicalNumber3D n6 = new MTBTopologicalNumber3DN6();
+		MTBTopologicalNumber3D n26 = new MTBTopologicalNumber3DN26();
+		int all = ((1 << 27) - 1) & ~(1 << MTBTopologicalNumber3D.CENTER_BIT);
+		
+		// isolated voxel and interior voxel are not simple
+		assertFalse( MTBTopologicalNumber3D.isSimplePoint( 0));
+		assertFalse( MTBTopologicalNumber3D.isSimplePoint( all));
+		// end of a line is simple, middle of a line not
+		assertTrue( MTBTopologicalNumber3D.isSimplePoint( 1 << 12));
+		assertFalse( MTBTopologicalNumber3D.isSimplePoint( 
+				(1 << 12) | (1 << 14)));
+		// voxel on a planar surface, removal creates no hole
+		int halfSpace = 0;
+		for ( int b = 0 ; b < 9 ; ++b )
+			halfSpace |= 1 << b;
+		assertTrue( MTBTopologicalNumber3D.isSimplePoint( halfSpace));
+		
+		// compare with definition via topological numbers
+		Random rand = new Random(42);
+		for ( int t = 0 ; t < 100000 ; t++ ) {
+			int mask = rand.nextInt() & all;
+			boolean expected = n26.topoNumberIsOne( mask) 
+					&& n6.topoNumberIsOne( ~mask & all);
+			assertEquals( "simple point check failed for mask " + mask, 
+					expected, MTBTopologicalNumber3D.isSimplePoint( mask));
+		}
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.tracking.multitarget.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Vector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBGraph;
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBGraphEdge;
+import de.unihalle.informatik.MiToBo.core.datatypes.MTBGraphNode;
+import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.abstracts.MatchingAdjacencyMatrix;
+import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.impl.PartitGraphNodeID;
+
+/**
+ * JUnit test class for 
+ * {@link GreedyGourmetPartitioning#computeSubgraphsUnionFind()}.
+ * <p>
+ * The graph consists of the nodes a0, a1 in partition 0, b0, b1 in 
+ * partition 1 and c0 in partition 2.
+ * 
+ * @author agent
+ */
+public class TestGreedyGourmetPartitioning {
+
+	private static final String IDS = "[TestGreedyGourmetPartitioning]";
+
+	/**
+	 * Node indices.
+	 */
+	private static final int a0 = 0, a1 = 1, b0 = 2, b1 = 3, c0 = 4;
+
+	/**
+	 * Partition of each node.
+	 */
+	private static final int[] partitions = new int[]{0, 0, 1, 1, 2};
+
+	/**
+	 * Graph nodes.
+	 */
+	private PartitGraphNodeID[] nodes;
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		this.nodes = new PartitGraphNodeID[partitions.length];
+		for (int n = 0; n < partitions.length; ++n)
+			this.nodes[n] = new PartitGraphNodeID(partitions[n], n);
+	}
+
+	/**
+	 * Test merging along the largest weights first.
+	 */
+	@Test
+	public void testMaximizeWeights() {
+		TestAdjacency adj = new TestAdjacency(this.nodes, 0.0);
+		// edge within a partition, to be ignored
+		adj.setWeight(this.nodes[a0], this.nodes[a1], 0.95);
+		adj.setWeight(this.nodes[a0], this.nodes[b0], 0.9);
+		// conflicts with a0 merged before
+		adj.setWeight(this.nodes[a1], this.nodes[b0], 0.8);
+		adj.setWeight(this.nodes[b0], this.nodes[c0], 0.7);
+		// conflicts with b0 merged before
+		adj.setWeight(this.nodes[b1], this.nodes[c0], 0.6);
+		adj.setWeight(this.nodes[a1], this.nodes[b1], 0.5);
+		adj.setWeight(this.nodes[a1], this.nodes[c0], 0.2);
+
+		Vector<MTBGraph> subgraphs = 
+			new GreedyGourmetPartitioning(adj, true, 0.0).computeSubgraphsUnionFind();
+		assertSubgraphs(subgraphs, new int[][]{{a0, b0, c0}, {a1, b1}});
+		assertEdgeNum(subgraphs, new int[]{2, 1});
+
+		// edges not larger than the limit are not merged
+		subgraphs = 
+			new GreedyGourmetPartitioning(adj, true, 0.65).computeSubgraphsUnionFind();
+		assertSubgraphs(subgraphs, new int[][]{{a0, b0, c0}, {a1}, {b1}});
+		assertEdgeNum(subgraphs, new int[]{2, 0, 0});
+
+		subgraphs = 
+			new GreedyGourmetPartitioning(adj, true, 0.95).computeSubgraphsUnionFind();
+		assertSubgraphs(subgraphs, new int[][]{{a0}, {a1}, {b0}, {b1}, {c0}});
+	}
+
+	/**
+	 * Test merging along the smallest weights first.
+	 */
+	@Test
+	public void testMinimizeWeights() {
+		TestAdjacency adj = new TestAdjacency(this.nodes, 10.0);
+		adj.setWeight(this.nodes[a0], this.nodes[a1], 0.05);
+		adj.setWeight(this.nodes[a1], this.nodes[b0], 0.1);
+		adj.setWeight(this.nodes[b0], this.nodes[c0], 0.3);
+		// conflicts with b0 merged before
+		adj.setWeight(this.nodes[b1], this.nodes[c0], 0.4);
+		adj.setWeight(this.nodes[a1], this.nodes[b1], 0.5);
+		// within the subgraph already
+		adj.setWeight(this.nodes[a1], this.nodes[c0], 0.8);
+		// conflicts with a1 merged before
+		adj.setWeight(this.nodes[a0], this.nodes[b0], 0.9);
+
+		Vector<MTBGraph> subgraphs = 
+			new GreedyGourmetPartitioning(adj, false, 1.0).computeSubgraphsUnionFind();
+		assertSubgraphs(subgraphs, new int[][]{{a0}, {a1, b0, c0}, {b1}});
+		assertEdgeNum(subgraphs, new int[]{0, 3, 0});
+
+		// edges not smaller than the limit are not merged
+		subgraphs = 
+			new GreedyGourmetPartitioning(adj, false, 0.2).computeSubgraphsUnionFind();
+		assertSubgraphs(subgraphs, new int[][]{{a0}, {a1, b0}, {b1}, {c0}});
+		assertEdgeNum(subgraphs, new int[]{0, 1, 0, 0});
+	}
+
+	/**
+	 * Checks if the subgraphs contain the expected nodes, do not contain 
+	 * two nodes of the same partition and if subgraph IDs are set.
+	 * @param subgraphs	Computed subgraphs.
+	 * @param expected	Expected node indices of each subgraph.
+	 */
+	private void assertSubgraphs(Vector<MTBGraph> subgraphs, int[][] expected) {
+		assertEquals(IDS + " number of subgraphs differs", 
+			expected.length, subgraphs.size());
+		for (int s = 0; s < expected.length; ++s) {
+			HashSet<Integer> nodeIDs = new HashSet<Integer>();
+			HashSet<Integer> partitionIDs = new HashSet<Integer>();
+			for (MTBGraphNode<?> node : subgraphs.get(s).getNodes()) {
+				PartitGraphNodeID id = (PartitGraphNodeID)node.getData();
+				assertTrue(IDS + " partition " + id.partitionID 
+					+ " occurs twice in subgraph " + s, 
+					partitionIDs.add(id.partitionID));
+				assertEquals(IDS + " subgraph ID of node " + id.nodeID + " differs", 
+					s, id.subgraphID);
+				nodeIDs.add(id.nodeID);
+			}
+			HashSet<Integer> expectedIDs = new HashSet<Integer>();
+			for (int n : expected[s])
+				expectedIDs.add(this.nodes[n].nodeID);
+			assertEquals(IDS + " nodes of subgraph " + s + " differ", 
+				expectedIDs, nodeIDs);
+		}
+	}
+
+	/**
+	 * Checks the number of edges of each subgraph and that edges connect 
+	 * nodes of the subgraph.
+	 * @param subgraphs	Computed subgraphs.
+	 * @param expected	Expected number of edges of each subgraph.
+	 */
+	private static void assertEdgeNum(Vector<MTBGraph> subgraphs, int[] expected) {
+		for (int s = 0; s < expected.length; ++s) {
+			MTBGraph subgraph = subgraphs.get(s);
+			assertEquals(IDS + " number of edges of subgraph " + s + " differs", 
+				expected[s], subgraph.getEdgeNum());
+			for (MTBGraphEdge edge : subgraph.getEdges()) {
+				assertTrue(IDS + " edge leaves subgraph " + s, 
+					subgraph.getNodes().contains(edge.getSrcNode()) 
+					&& subgraph.getNodes().contains(edge.getTgtNode()));
+			}
+		}
+	}
+
+	/**
+	 * Symmetric adjacency matrix with a default weight for missing edges.
+	 */
+	private static class TestAdjacency extends MatchingAdjacencyMatrix {
+
+		/**
+		 * Graph nodes.
+		 */
+		private PartitGraphNodeID[] graphNodes;
+
+		/**
+		 * Edge weights.
+		 */
+		private double[][] weights;
+
+		/**
+		 * Constructor.
+		 * @param graphNodes		Graph nodes.
+		 * @param defaultWeight	Weight of missing edges.
+		 */
+		public TestAdjacency(PartitGraphNodeID[] graphNodes, double defaultWeight) {
+			this.graphNodes = graphNodes;
+			this.weights = new double[graphNodes.length][graphNodes.length];
+			for (double[] row : this.weights)
+				Arrays.fill(row, defaultWeight);
+		}
+
+		@Override
+		public double getWeight(PartitGraphNodeID nodeSrc, PartitGraphNodeID nodeTgt) {
+			return this.weights[this.index(nodeSrc)][this.index(nodeTgt)];
+		}
+
+		@Override
+		public void setWeight(PartitGraphNodeID nodeSrc, PartitGraphNodeID nodeTgt, 
+				double weight) {
+			this.weights[this.index(nodeSrc)][this.index(nodeTgt)] = weight;
+			this.weights[this.index(nodeTgt)][this.index(nodeSrc)] = weight;
+		}
+
+		@Override
+		public int numOfNodes() {
+			return this.graphNodes.length;
+		}
+
+		@Override
+		public PartitGraphNodeID[] getNodes() {
+			return this.graphNodes;
+		}
+
+		@Override
+		public boolean isDirected() {
+			return false;
+		}
+
+		/**
+		 * Index of a node in the node array.
+		 */
+		private int index(PartitGraphNodeID node) {
+			for (int n = 0; n < this.graphNodes.length; ++n)
+				if (this.graphNodes[n] == node)
+					return n;
+			throw new IllegalArgumentException("Unknown node " + node);
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.tracking.multitarget.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.Vector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import Jama.Matrix;
+import de.unihalle.informatik.Alida.exceptions.ALDException;
+import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.impl.MotionModelID;
+import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.impl.MultiState;
+
+/**
+ * JUnit test class for {@link MultiTargetRBMCDA}.
+ * <p>
+ * The RBMCDA filter is run via {@link MultiObservationTrackerRBMCDAIMM} 
+ * on observations created by {@link MultiObservationGenerator}.
+ * 
+ * @author agent
+ */
+public class TestMultiTargetRBMCDA {
+
+	private static final String IDS = "[TestMultiTargetRBMCDA]";
+
+	/**
+	 * Number of RBMCDA samples, more than one chunk in weight normalization.
+	 */
+	private static final int numSamples = 100;
+
+	/**
+	 * Simulated observations.
+	 */
+	private Vector<MultiState<MotionModelID>> observations;
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		try {
+			MultiObservationGenerator generator = new MultiObservationGenerator();
+			generator.pDetect = 0.9;
+			generator.lambdaClutter = 0.5;
+			generator.lambdaBirth = 0.2;
+			generator.lambdaDeath = 0.05;
+			generator.delta_t = 1.0;
+			generator.xMin = 0; 
+			generator.yMin = 0;
+			generator.xMax = 100;
+			generator.yMax = 100;
+			generator.sqrtSizeMin = 2;
+			generator.sqrtSizeMax = 10;
+			generator.nTimesteps = 8;
+			generator.nInitialTargets = 4;
+			generator.modelTransition = modelTransition();
+			generator.qxy = 2.0;
+			generator.qxy_ = 2.0;
+			generator.qsize = 0.1;
+			generator.rxy = 1.0;
+			generator.rsize = 0.1;
+			generator.randomSeed = 7;
+			generator.runOp();
+			this.observations = generator.getObservations();
+		} catch (ALDException e) {
+			fail(IDS + " generating observations failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Test if results of parallel updates do not depend on the number of 
+	 * threads.
+	 */
+	@Test
+	public void testThreadIndependence() {
+		assertSameResults(this.track(2), this.track(3));
+	}
+
+	/**
+	 * Test if the sequential update with the shared random generator is 
+	 * reproducible.
+	 */
+	@Test
+	public void testSequentialReproducible() {
+		assertSameResults(this.track(1), this.track(1));
+	}
+
+	/**
+	 * Checks if two trackers yield identical samples and tracks.
+	 * @param first		First tracker.
+	 * @param second	Second tracker.
+	 */
+	private void assertSameResults(MultiObservationTrackerRBMCDAIMM first,
+			MultiObservationTrackerRBMCDAIMM second) {
+		// same probabilities of the samples
+		assertArrayEquals(IDS + " sample probabilities differ", 
+			first.getSampleJointProbs(), second.getSampleJointProbs(), 0.0);
+		for (int i = 0; i < numSamples; ++i) {
+			for (int t = 0; t < this.observations.size(); ++t) {
+				assertEquals(IDS + " conditional probability of sample " + i 
+					+ " at time " + t + " differs", 
+					first.getSampleConditionalProb(i, t), 
+					second.getSampleConditionalProb(i, t), 0.0);
+			}
+			assertSameIDs("sample " + i, first.getSampleObservations(i), 
+				second.getSampleObservations(i));
+		}
+		// same tracks
+		assertSameIDs("tracking result", first.getOutputObservations(),
+			second.getOutputObservations());
+	}
+
+	/**
+	 * Runs the tracker with fixed seed.
+	 * @param threads	Number of threads.
+	 * @return	Tracker after processing the observations.
+	 */
+	private MultiObservationTrackerRBMCDAIMM track(int threads) {
+		MultiObservationTrackerRBMCDAIMM tracker = null;
+		try {
+			tracker = new MultiObservationTrackerRBMCDAIMM();
+			Vector<MultiState<MotionModelID>> input = 
+				new Vector<MultiState<MotionModelID>>(this.observations.size());
+			for (MultiState<MotionModelID> Z : this.observations)
+				input.add(Z.copy());
+			tracker.setInputObservations(input);
+			tracker.pDetect = 0.9;
+			tracker.lambdaBirth = 0.2;
+			tracker.lambdaClutter = 0.5;
+			tracker.lambdaDeath = 0.05;
+			tracker.delta_t = 1.0;
+			tracker.xMin = 0;
+			tracker.yMin = 0;
+			tracker.xMax = 100;
+			tracker.yMax = 100;
+			tracker.sqrtSizeMin = 2;
+			tracker.sqrtSizeMax = 10;
+			tracker.modelTransition = modelTransition();
+			tracker.qxy = 2.0;
+			tracker.qxy_ = 2.0;
+			tracker.qsize = 0.1;
+			tracker.rxy = 1.0;
+			tracker.rsize = 0.1;
+			tracker.numSamples = numSamples;
+			tracker.essPercentage = 0.5;
+			tracker.noNeighborsOldAlgo = true;
+			tracker.randomSeed = 42;
+			tracker.threadNum = threads;
+			tracker.runOp();
+		} catch (ALDException e) {
+			fail(IDS + " tracking with " + threads + " threads failed: " 
+				+ e.getMessage());
+		}
+		return tracker;
+	}
+
+	/**
+	 * Checks if target IDs of two observation sequences are equal.
+	 * @param info	Description of the observations.
+	 * @param a			First sequence.
+	 * @param b			Second sequence.
+	 */
+	private static void assertSameIDs(String info, 
+			Vector<MultiState<MotionModelID>> a, 
+			Vector<MultiState<MotionModelID>> b) {
+		assertEquals(IDS + " " + info + ": number of frames differs", 
+			a.size(), b.size());
+		for (int t = 0; t < a.size(); ++t) {
+			assertEquals(IDS + " " + info + ": number of observations differs", 
+				a.get(t).getNumberOfStates(), b.get(t).getNumberOfStates());
+			for (int m = 0; m < a.get(t).getNumberOfStates(); ++m)
+				assertEquals(IDS + " " + info + ": ID of observation " + m 
+					+ " at time " + t + " differs", a.get(t).getStateDiscrete(m).ID, 
+					b.get(t).getStateDiscrete(m).ID);
+		}
+	}
+
+	/**
+	 * Markov matrix of the transitions between the motion models.
+	 * @return	Transition matrix.
+	 */
+	private static Matrix modelTransition() {
+		Matrix P = new Matrix(2, 2);
+		P.set(0, 0, 0.8);
+		P.set(0, 1, 0.2);
+		P.set(1, 0, 0.2);
+		P.set(1, 1, 0.8);
+		return P;
+	}
+}
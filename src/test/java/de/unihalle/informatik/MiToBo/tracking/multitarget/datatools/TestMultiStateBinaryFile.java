@@ -0,0 +1,270 @@
+/*
+ * This file is part of MiToBo, the Microscope Image Analysis Toolbox.
+ *
+ * Copyright (C) 2010 - @YEAR@
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Fore more information on MiToBo, visit
+ *
+ *    http://www.informatik.uni-halle.de/mitobo/
+ *
+ */
+
+package de.unihalle.informatik.MiToBo.tracking.multitarget.datatools;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.Vector;
+
+import org.apache.xmlbeans.XmlException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import Jama.Matrix;
+import de.unihalle.informatik.Alida.exceptions.ALDException;
+import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.impl.MotionModelID;
+import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.impl.MultiState;
+import de.unihalle.informatik.MiToBo.tracking.multitarget.datatypes.impl.MultiStateFactory;
+
+/**
+ * JUnit test class for {@link MultiStateBinaryFile}.
+ * 
+ * @author agent
+ */
+public class TestMultiStateBinaryFile {
+
+	private static final String IDS = "[TestMultiStateBinaryFile]";
+
+	/**
+	 * Relative accuracy of continuous states stored in single precision.
+	 */
+	private static final double accuracy = 1.0e-6;
+
+	/**
+	 * Continuous degrees of freedom of the states.
+	 */
+	private static final int cDOF = 3;
+
+	/**
+	 * Directory for the test files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Sequence of states including empty frames.
+	 */
+	private Vector<MultiState<MotionModelID>> mstates;
+
+	/**
+	 * Fixture.
+	 */
+	@Before
+	public void initTestClass() {
+		int[] numStates = new int[]{3, 0, 5, 1, 0, 4};
+
+		Random rand = new Random(11);
+		MultiStateFactory<MotionModelID> factory = 
+			new MultiStateFactory<MotionModelID>(cDOF);
+		this.mstates = new Vector<MultiState<MotionModelID>>(numStates.length);
+		for (int t = 0; t < numStates.length; ++t) {
+			@SuppressWarnings("unchecked")
+			MultiState<MotionModelID> mstate = 
+				(MultiState<MotionModelID>)factory.createEmptyMultiState();
+			for (int i = 0; i < numStates[t]; ++i) {
+				MotionModelID id = new MotionModelID(
+					(short)(rand.nextInt(2 * Short.MAX_VALUE) - Short.MAX_VALUE), 
+					(byte)rand.nextInt(3));
+				id.time = 0.1 * t + rand.nextDouble();
+				double[] x = new double[cDOF];
+				for (int d = 0; d < cDOF; ++d)
+					x[d] = 1000.0 * (rand.nextDouble() - 0.5);
+				mstate.insertState(new Matrix(x, cDOF), id);
+			}
+			this.mstates.add(mstate);
+		}
+	}
+
+	/**
+	 * Test if states read via {@link MultiStateIO} equal the written states.
+	 */
+	@Test
+	public void testRoundTrip() {
+		try {
+			String path = this.folder.newFile("states.msb").getAbsolutePath();
+			MultiStateIO.writeMultiStates(this.mstates, path);
+			assertTrue(IDS + " binary file not detected", 
+				MultiStateBinaryFile.isBinaryFile(path));
+			assertSameStates("read via MultiStateIO", this.mstates, 
+				MultiStateIO.readMultiStates(path));
+		} catch (ALDException e) {
+			fail(IDS + " writing states failed: " + e.getMessage());
+		} catch (XmlException e) {
+			fail(IDS + " reading states failed: " + e.getMessage());
+		} catch (IOException e) {
+			fail(IDS + " round trip failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Test random access to single frames.
+	 */
+	@Test
+	public void testRandomAccess() {
+		try {
+			String path = this.folder.newFile("random.msb").getAbsolutePath();
+			MultiStateBinaryFile.write(this.mstates, path);
+
+			MultiStateBinaryFile file = new MultiStateBinaryFile(path);
+			assertEquals(IDS + " number of frames differs", 
+				this.mstates.size(), file.getNumberOfFrames());
+			assertEquals(IDS + " continuous DOF differs", 
+				cDOF, file.getContinuousDOF());
+			int[] order = new int[]{4, 2, 5, 0, 3, 1, 2};
+			for (int t : order) {
+				assertEquals(IDS + " number of states of frame " + t + " differs", 
+					this.mstates.get(t).getNumberOfStates(), file.getNumberOfStates(t));
+				assertSameStates("frame " + t, this.mstates.get(t), 
+					file.getMultiState(t));
+			}
+			file.close();
+		} catch (IOException e) {
+			fail(IDS + " random access failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Test a file without frames.
+	 */
+	@Test
+	public void testZeroFrames() {
+		try {
+			String path = this.folder.newFile("empty.msb").getAbsolutePath();
+			MultiStateBinaryFile.write(new Vector<MultiState<MotionModelID>>(), path);
+
+			MultiStateBinaryFile file = new MultiStateBinaryFile(path);
+			assertEquals(IDS + " file without frames has frames", 
+				0, file.getNumberOfFrames());
+			assertEquals(IDS + " file without frames has states", 
+				0, file.getMultiStates().size());
+			file.close();
+			assertEquals(IDS + " file without frames read with frames", 
+				0, MultiStateIO.readMultiStates(path).size());
+		} catch (XmlException e) {
+			fail(IDS + " reading empty file failed: " + e.getMessage());
+		} catch (IOException e) {
+			fail(IDS + " empty file failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Test if XML files are not detected as binary files.
+	 */
+	@Test
+	public void testXMLFile() {
+		try {
+			String path = this.folder.newFile("states.xml").getAbsolutePath();
+			MultiStateIO.writeMultiStates(this.mstates, path);
+			assertFalse(IDS + " XML file detected as binary file", 
+				MultiStateBinaryFile.isBinaryFile(path));
+			assertEquals(IDS + " number of frames of XML file differs", 
+				this.mstates.size(), MultiStateIO.readMultiStates(path).size());
+		} catch (ALDException e) {
+			fail(IDS + " writing XML file failed: " + e.getMessage());
+		} catch (XmlException e) {
+			fail(IDS + " reading XML file failed: " + e.getMessage());
+		} catch (IOException e) {
+			fail(IDS + " XML file failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Test reading sections which span several chunks of a column.
+	 * <p>
+	 * Files larger than 2 GB are mapped in chunks, here small chunks of 
+	 * a byte array are used instead.
+	 */
+	@Test
+	public void testReadAcrossChunks() {
+		int chunkSize = 8;
+		byte[] data = new byte[29];
+		for (int i = 0; i < data.length; ++i)
+			data[i] = (byte)(3 * i + 1);
+		ByteBuffer[] chunks = new ByteBuffer[(data.length + chunkSize - 1) / chunkSize];
+		for (int c = 0; c < chunks.length; ++c)
+			chunks[c] = ByteBuffer.wrap(data, c * chunkSize, 
+				Math.min(chunkSize, data.length - c * chunkSize)).slice();
+		for (int pos = 0; pos < data.length; ++pos) {
+			for (int length = 0; pos + length <= data.length; ++length) {
+				ByteBuffer section = 
+					MultiStateBinaryFile.read(chunks, chunkSize, pos, length);
+				assertEquals(IDS + " wrong length of section", 
+					length, section.remaining());
+				for (int i = 0; i < length; ++i)
+					assertEquals(IDS + " wrong byte " + i + " of section at " + pos, 
+						data[pos + i], section.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Checks if two state sequences are equal.
+	 * @param info	Description of the sequences.
+	 * @param a			Expected sequence.
+	 * @param b			Sequence read from file.
+	 */
+	private static void assertSameStates(String info, 
+			Vector<MultiState<MotionModelID>> a, 
+			Vector<MultiState<MotionModelID>> b) {
+		assertEquals(IDS + " " + info + ": number of frames differs", 
+			a.size(), b.size());
+		for (int t = 0; t < a.size(); ++t)
+			assertSameStates(info + ", frame " + t, a.get(t), b.get(t));
+	}
+
+	/**
+	 * Checks if two MultiState objects are equal, continuous states
+	 * up to single precision.
+	 * @param info	Description of the states.
+	 * @param a			Expected states.
+	 * @param b			States read from file.
+	 */
+	private static void assertSameStates(String info, 
+			MultiState<MotionModelID> a, MultiState<MotionModelID> b) {
+		assertEquals(IDS + " " + info + ": number of states differs", 
+			a.getNumberOfStates(), b.getNumberOfStates());
+		for (int i = 0; i < a.getNumberOfStates(); ++i) {
+			MotionModelID idA = a.getStateDiscrete(i);
+			MotionModelID idB = b.getStateDiscrete(i);
+			assertEquals(IDS + " " + info + ": ID of state " + i + " differs", 
+				idA.ID, idB.ID);
+			assertEquals(IDS + " " + info + ": motion model of state " + i 
+				+ " differs", idA.mmID, idB.mmID);
+			assertEquals(IDS + " " + info + ": time of state " + i + " differs", 
+				idA.time, idB.time, 0.0);
+			for (int d = 0; d < cDOF; ++d) {
+				double x = a.getStateContinuous(i).get(d, 0);
+				assertEquals(IDS + " " + info + ": continuous state " + i 
+					+ " differs", x, b.getStateContinuous(i).get(d, 0), 
+					accuracy * Math.abs(x));
+			}
+		}
+	}
+}